@@ -0,0 +1,288 @@
+package net.agkn.field_stripe.benchmark;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.IRecordWriter;
+import net.agkn.field_stripe.record.writer.PGBinaryRecordWriter;
+import net.agkn.field_stripe.record.writer.PGTextRecordWriter;
+import net.agkn.field_stripe.stripe.TestBinaryVLenFieldStripeReaderFactory;
+import net.agkn.field_stripe.stripe.TestBinaryVLenFieldStripeWriterFactory;
+
+/**
+ * The schemas and (deterministic) records that are shared by the benchmarks.
+ * The schemas are built from Protobuf IDL with {@link SchemaBuilder} just as
+ * they are in the unit tests. The records are generated as JSON arrays and are
+ * transcoded (through field-stripes) into the other formats.
+ *
+ * @author rgrzywinski
+ */
+public class BenchmarkRecords {
+    /**
+     * The number of records in each benchmark invocation. Benchmarks are
+     * annotated with <code>@OperationsPerInvocation(RECORD_COUNT)</code> so
+     * that their throughput is reported in records per second and their
+     * normalized allocation (<code>-prof gc</code>) in bytes per record.
+     */
+    public static final int RECORD_COUNT = 10000;
+
+    // the seed used to generate the records so that runs are comparable
+    private static final long SEED = 0x5EEDL;
+
+    // ************************************************************************
+    /**
+     * The shapes of schema that are benchmarked.
+     */
+    public static enum Shape {
+        /**
+         * A single level of (mostly optional) primitive fields.
+         */
+        FLAT(
+            "package benchmark;\n" +
+            "message Flat {\n" +
+            "    required int64    id = 1;\n" +
+            "    optional int32    count = 2;\n" +
+            "    optional double   score = 3;\n" +
+            "    optional bool     flag = 4;\n" +
+            "    optional string   name = 5;\n" +
+            "    optional float    ratio = 6;\n" +
+            "}\n", "Flat"),
+
+        /**
+         * Optional structures nested four deep.
+         */
+        NESTED(
+            "package benchmark;\n" +
+            "message Nested {\n" +
+            "    required int64    id = 1;\n" +
+            "    message Level1 {\n" +
+            "        optional string   name = 1;\n" +
+            "        message Level2 {\n" +
+            "            optional int32    value = 1;\n" +
+            "            message Level3 {\n" +
+            "                optional double   score = 1;\n" +
+            "                optional string   tag = 2;\n" +
+            "            }\n" +
+            "            optional Level3 level3 = 2;\n" +
+            "        }\n" +
+            "        optional Level2 level2 = 2;\n" +
+            "    }\n" +
+            "    optional Level1 level1 = 2;\n" +
+            "}\n", "Nested"),
+
+        /**
+         * Repeated primitives and repeated structures that contain repeated
+         * primitives.
+         */
+        REPEATED(
+            "package benchmark;\n" +
+            "message Repeated {\n" +
+            "    required int64    id = 1;\n" +
+            "    repeated int32    values = 2;\n" +
+            "    message Entry {\n" +
+            "        optional string   key = 1;\n" +
+            "        repeated int64    counts = 2;\n" +
+            "    }\n" +
+            "    repeated Entry entries = 3;\n" +
+            "}\n", "Repeated");
+
+        // ....................................................................
+        private final String protobufText;
+        private final String messageName;
+
+        private Shape(final String protobufText, final String messageName) {
+            this.protobufText = protobufText;
+            this.messageName = messageName;
+        }
+    };
+
+    // ========================================================================
+    /**
+     * @return the schema for the specified shape. This will never be <code>null</code>.
+     */
+    public static ICompositeType createSchema(final Shape shape) {
+        return new SchemaBuilder().createSchema(shape.protobufText, shape.messageName);
+    }
+
+    /**
+     * @return {@link #RECORD_COUNT} newline-delimited JSON-array records of the
+     *         specified shape. The same records are returned for each call.
+     */
+    public static String createJsonRecords(final Shape shape) {
+        final Random random = new Random(SEED);
+        final StringBuilder json = new StringBuilder();
+        for(int i=0; i<RECORD_COUNT; i++) {
+            if(i > 0) json.append('\n');
+            switch(shape) {
+                case FLAT:
+                    json.append('[').append(i).append(',');
+                    appendOptional(json, random, random.nextInt()).append(',');
+                    appendOptional(json, random, random.nextDouble()).append(',');
+                    appendOptional(json, random, random.nextBoolean()).append(',');
+                    appendOptional(json, random, "\"name-" + random.nextInt(1000) + "\"").append(',');
+                    appendOptional(json, random, random.nextFloat()).append(']');
+                    break;
+                case NESTED:
+                    json.append('[').append(i).append(',');
+                    if(random.nextInt(10) == 0) json.append("null");
+                    else {
+                        json.append("[\"name-").append(random.nextInt(1000)).append("\",");
+                        if(random.nextInt(10) == 0) json.append("null");
+                        else {
+                            json.append('[').append(random.nextInt()).append(',');
+                            if(random.nextInt(10) == 0) json.append("null");
+                            else json.append('[').append(random.nextDouble()).append(",\"tag-").append(random.nextInt(100)).append("\"]");
+                            json.append(']');
+                        }
+                        json.append(']');
+                    }
+                    json.append(']');
+                    break;
+                case REPEATED:
+                    json.append('[').append(i).append(",[");
+                    final int valueCount = random.nextInt(9);
+                    for(int j=0; j<valueCount; j++) {
+                        if(j > 0) json.append(',');
+                        json.append(random.nextInt());
+                    }
+                    json.append("],[");
+                    final int entryCount = random.nextInt(5);
+                    for(int j=0; j<entryCount; j++) {
+                        if(j > 0) json.append(',');
+                        json.append("[\"key-").append(random.nextInt(100)).append("\",[");
+                        final int countCount = random.nextInt(5);
+                        for(int k=0; k<countCount; k++) {
+                            if(k > 0) json.append(',');
+                            json.append(random.nextLong());
+                        }
+                        json.append("]]");
+                    }
+                    json.append("]]");
+                    break;
+            }
+        }
+        return json.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Encodes the specified JSON records into binary field-stripes.
+     *
+     * @return the field-stripe of each leaf field. This will never be <code>null</code>.
+     */
+    public static Map<IField, byte[]> encodeStripes(final ICompositeType schema, final String jsonRecords)
+            throws OperationFailedException {
+        final TestBinaryVLenFieldStripeWriterFactory writerFactory = new TestBinaryVLenFieldStripeWriterFactory(64 * 1024/*buffer size*/);
+        final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory).createEncoderTree(schema);
+        final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(jsonRecords));
+        while(rootEncoder.encode(recordReader));
+        writerFactory.closeAllWriters();
+
+        final Map<IField, byte[]> fieldToStripeMap = new HashMap<IField, byte[]>();
+        for(final IField field : getLeafFields(schema))
+            fieldToStripeMap.put(field, writerFactory.getByteArray(field));
+        return fieldToStripeMap;
+    }
+
+    /**
+     * @return a decoder tree that reads the specified field-stripes. This will
+     *         never be <code>null</code>.
+     */
+    public static RootFieldStripeDecoder createDecoderTree(final ICompositeType schema, final Map<IField, byte[]> fieldToStripeMap)
+            throws OperationFailedException {
+        final Map<IField, InputStream> fieldToInputStreamMap = new HashMap<IField, InputStream>();
+        for(final Map.Entry<IField, byte[]> entry : fieldToStripeMap.entrySet())
+            fieldToInputStreamMap.put(entry.getKey(), new ByteArrayInputStream(entry.getValue()));
+        return new FieldStripeDecoderFactory(new TestBinaryVLenFieldStripeReaderFactory(fieldToInputStreamMap)).createDecoderTree(schema);
+    }
+
+    /**
+     * @return the specified field-stripes decoded into PostgreSQL 'text' COPY
+     *         format records. This will never be <code>null</code>.
+     */
+    public static String decodePGText(final ICompositeType schema, final Map<IField, byte[]> fieldToStripeMap)
+            throws OperationFailedException {
+        final StringWriter writer = new StringWriter();
+        final IRecordWriter recordWriter = new PGTextRecordWriter(writer);
+        final RootFieldStripeDecoder rootDecoder = createDecoderTree(schema, fieldToStripeMap);
+        while(rootDecoder.decode(recordWriter));
+        recordWriter.close();
+        return writer.toString();
+    }
+
+    /**
+     * @return the specified field-stripes decoded into PostgreSQL 'binary' COPY
+     *         format records. This will never be <code>null</code>.
+     */
+    public static byte[] decodePGBinary(final ICompositeType schema, final Map<IField, byte[]> fieldToStripeMap)
+            throws OperationFailedException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final IRecordWriter recordWriter = new PGBinaryRecordWriter(outputStream);
+        final RootFieldStripeDecoder rootDecoder = createDecoderTree(schema, fieldToStripeMap);
+        while(rootDecoder.decode(recordWriter));
+        recordWriter.close();
+        return outputStream.toByteArray();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the leaf (primitive) fields of the specified type in depth-first
+     *         order. This will never be <code>null</code>.
+     */
+    public static List<IField> getLeafFields(final ICompositeType type) {
+        final List<IField> leafFields = new ArrayList<IField>();
+        collectLeafFields(type, leafFields);
+        return leafFields;
+    }
+
+    private static void collectLeafFields(final ICompositeType type, final List<IField> leafFields) {
+        for(final IField field : type.getFields()) {
+            if(field.getType().isComposite())
+                collectLeafFields((ICompositeType)field.getType(), leafFields);
+            else
+                leafFields.add(field);
+        }
+    }
+
+    /**
+     * Appends the specified value or (one time in five) <code>null</code>.
+     */
+    private static StringBuilder appendOptional(final StringBuilder json, final Random random, final Object value) {
+        if(random.nextInt(5) == 0) return json.append("null");
+        return json.append(value);
+    }
+}
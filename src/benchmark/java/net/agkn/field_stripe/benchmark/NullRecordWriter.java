@@ -0,0 +1,60 @@
+package net.agkn.field_stripe.benchmark;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.writer.IRecordWriter;
+
+/**
+ * A {@link IRecordWriter} that discards everything written to it so that the
+ * decoders can be benchmarked without the cost of an output format. A running
+ * {@link #getChecksum() checksum} of the values is kept so that the values
+ * cannot be optimized away.
+ *
+ * @author rgrzywinski
+ */
+public class NullRecordWriter implements IRecordWriter {
+    private long checksum = 0L;
+
+    // ========================================================================
+    /**
+     * @return a checksum of all values written. It has no meaning other than
+     *         to be consumed by the benchmark.
+     */
+    public long getChecksum() { return checksum; }
+
+    // ========================================================================
+    @Override public void startRecord() { checksum++; }
+    @Override public void endRecord() { /*nothing to do*/ }
+    @Override public void startStructure(final IField field) { checksum++; }
+    @Override public void endStructure() { /*nothing to do*/ }
+    @Override public void startArray(final IField field) { checksum++; }
+    @Override public void endArray() { /*nothing to do*/ }
+    @Override public void writeUnsetField(final IField field) { checksum++; }
+    @Override public void writeField(final IField field, final byte value) { checksum += value; }
+    @Override public void writeField(final IField field, final short value) { checksum += value; }
+    @Override public void writeField(final IField field, final int value) { checksum += value; }
+    @Override public void writeField(final IField field, final long value) { checksum += value; }
+    @Override public void writeField(final IField field, final float value) { checksum += Float.floatToRawIntBits(value); }
+    @Override public void writeField(final IField field, final double value) { checksum += Double.doubleToRawLongBits(value); }
+    @Override public void writeField(final IField field, final boolean value) { checksum += (value ? 1 : 0); }
+    @Override public void writeField(final IField field, final String value) { checksum += value.length(); }
+    @Override public void writeField(final IField field, final ByteBuffer value) { checksum += value.remaining(); }
+    @Override public void close() { /*nothing to do*/ }
+}
@@ -0,0 +1,99 @@
+package net.agkn.field_stripe.encode;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static net.agkn.field_stripe.benchmark.BenchmarkRecords.RECORD_COUNT;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.agkn.field_stripe.benchmark.BenchmarkRecords;
+import net.agkn.field_stripe.benchmark.BenchmarkRecords.Shape;
+import net.agkn.field_stripe.benchmark.NullRecordWriter;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.PGBinaryRecordReader;
+import net.agkn.field_stripe.stripe.NullFieldStripeWriterFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the throughput of the encoder ({@link RootFieldStripeEncoder})
+ * and decoder ({@link RootFieldStripeDecoder}) trees for flat, deeply nested
+ * and heavily repeated {@link Shape schemas}.<p/>
+ *
+ * So that the cost of parsing text is not included, the encoder reads its
+ * records from the PostgreSQL 'binary' format (the cheapest {@link IRecordReader}
+ * to parse) and writes to field-stripes that are discarded. The decoder reads
+ * from in-memory field-stripes and writes to a {@link NullRecordWriter}.
+ *
+ * @author rgrzywinski
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FieldStripeCodecBenchmark {
+    @Param({ "FLAT", "NESTED", "REPEATED" })
+    public Shape shape;
+
+    // ------------------------------------------------------------------------
+    private ICompositeType schema;
+    private Map<IField, byte[]> fieldToStripeMap;
+    private byte[] pgBinaryRecords;
+
+    // ========================================================================
+    @Setup
+    public void setup() throws Exception {
+        schema = BenchmarkRecords.createSchema(shape);
+        fieldToStripeMap = BenchmarkRecords.encodeStripes(schema, BenchmarkRecords.createJsonRecords(shape));
+        pgBinaryRecords = BenchmarkRecords.decodePGBinary(schema, fieldToStripeMap);
+    }
+
+    // ========================================================================
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    public int encode() throws Exception {
+        final NullFieldStripeWriterFactory writerFactory = new NullFieldStripeWriterFactory();
+        final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory).createEncoderTree(schema);
+        final IRecordReader recordReader = new PGBinaryRecordReader(new ByteArrayInputStream(pgBinaryRecords));
+        int recordCount = 0;
+        while(rootEncoder.encode(recordReader))
+            recordCount++;
+        writerFactory.closeAllWriters();
+        return recordCount;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    public long decode() throws Exception {
+        final RootFieldStripeDecoder rootDecoder = BenchmarkRecords.createDecoderTree(schema, fieldToStripeMap);
+        final NullRecordWriter recordWriter = new NullRecordWriter();
+        while(rootDecoder.decode(recordWriter));
+        return recordWriter.getChecksum();
+    }
+}
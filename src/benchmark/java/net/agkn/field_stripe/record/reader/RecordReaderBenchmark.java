@@ -0,0 +1,156 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static net.agkn.field_stripe.benchmark.BenchmarkRecords.RECORD_COUNT;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import net.agkn.field_stripe.benchmark.BenchmarkRecords;
+import net.agkn.field_stripe.benchmark.BenchmarkRecords.Shape;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.PrimitiveType;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the parse rate of {@link SmartJsonArrayRecordReader} and
+ * {@link PGTextRecordReader} for flat, deeply nested and heavily repeated
+ * {@link Shape schemas}. Each record is walked in schema order (as the encoder
+ * would) and every value is consumed.
+ *
+ * @author rgrzywinski
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RecordReaderBenchmark {
+    @Param({ "FLAT", "NESTED", "REPEATED" })
+    public Shape shape;
+
+    // ------------------------------------------------------------------------
+    private ICompositeType schema;
+    private String jsonRecords;
+    private String pgTextRecords;
+
+    // ========================================================================
+    @Setup
+    public void setup() throws Exception {
+        schema = BenchmarkRecords.createSchema(shape);
+        jsonRecords = BenchmarkRecords.createJsonRecords(shape);
+        pgTextRecords = BenchmarkRecords.decodePGText(schema, BenchmarkRecords.encodeStripes(schema, jsonRecords));
+    }
+
+    // ========================================================================
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    public void json(final Blackhole blackhole) throws Exception {
+        readRecords(new SmartJsonArrayRecordReader(new StringReader(jsonRecords)), blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    public void pgText(final Blackhole blackhole) throws Exception {
+        readRecords(new PGTextRecordReader(new StringReader(pgTextRecords)), blackhole);
+    }
+
+    // ========================================================================
+    /**
+     * Reads all records from the specified reader.
+     */
+    private void readRecords(final IRecordReader recordReader, final Blackhole blackhole)
+            throws OperationFailedException {
+        final MutableBoolean isSet = new MutableBoolean();
+        while(recordReader.hasMoreRecords()) {
+            recordReader.startRecord();
+            readFields(recordReader, schema, isSet, blackhole);
+            recordReader.endRecord();
+        }
+    }
+
+    /**
+     * Reads each field of the specified type.
+     */
+    private static void readFields(final IRecordReader recordReader, final ICompositeType type, final MutableBoolean isSet, final Blackhole blackhole)
+            throws OperationFailedException {
+        for(final IField field : type.getFields()) {
+            if(field.getQualifier().isMultiValue()) {
+                recordReader.startArray();
+                while(recordReader.hasMoreElements())
+                    readValue(recordReader, field, isSet, blackhole);
+                recordReader.endArray()/*by contract*/;
+            } else/*single-valued*/
+                readValue(recordReader, field, isSet, blackhole);
+        }
+    }
+
+    /**
+     * Reads a single value of the specified field.
+     */
+    private static void readValue(final IRecordReader recordReader, final IField field, final MutableBoolean isSet, final Blackhole blackhole)
+            throws OperationFailedException {
+        if(field.getType().isComposite()) {
+            if(!recordReader.startStructure()) return/*unset structure*/;
+            readFields(recordReader, (ICompositeType)field.getType(), isSet, blackhole);
+            recordReader.endStructure();
+            return;
+        } /* else -- a primitive */
+
+        switch((PrimitiveType)field.getType()) {
+            case BOOLEAN:
+                blackhole.consume(recordReader.readBooleanField(isSet));
+                break;
+            case BYTE:
+                blackhole.consume(recordReader.readByteField(isSet));
+                break;
+            case SHORT:
+                blackhole.consume(recordReader.readShortField(isSet));
+                break;
+            case INT:
+                blackhole.consume(recordReader.readIntField(isSet));
+                break;
+            case LONG:
+                blackhole.consume(recordReader.readLongField(isSet));
+                break;
+            case FLOAT:
+                blackhole.consume(recordReader.readFloatField(isSet));
+                break;
+            case DOUBLE:
+                blackhole.consume(recordReader.readDoubleField(isSet));
+                break;
+            case STRING:
+                blackhole.consume(recordReader.readStringField(isSet));
+                break;
+            case BYTES:
+                blackhole.consume(recordReader.readBytesField(isSet));
+                break;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static net.agkn.field_stripe.benchmark.BenchmarkRecords.RECORD_COUNT;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.agkn.field_stripe.record.FieldQualifier;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.Path;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.agkn.field_stripe.record.protobuf.ProtobufCompositeType;
+import net.agkn.field_stripe.record.protobuf.ProtobufField;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the throughput of {@link BinaryVLenFieldStripeWriter} and
+ * {@link BinaryVLenFieldStripeReader} for a single optional field of each
+ * {@link PrimitiveType}. One in ten values is unset. (This is in the
+ * <code>stripe</code> package as the writer and reader constructors are
+ * package-private.)
+ *
+ * @author rgrzywinski
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BinaryVLenFieldStripeBenchmark {
+    @Param({ "BOOLEAN", "BYTE", "SHORT", "INT", "LONG", "FLOAT", "DOUBLE", "STRING" })
+    public PrimitiveType type;
+
+    // ------------------------------------------------------------------------
+    private IField field;
+
+    // the values (as longs or strings) to be written and whether each is set
+    private final long[] values = new long[RECORD_COUNT];
+    private final String[] strings = new String[RECORD_COUNT];
+    private final boolean[] isSet = new boolean[RECORD_COUNT];
+
+    // the encoded field-stripe (for reading)
+    private byte[] stripe;
+
+    // ========================================================================
+    @Setup
+    public void setup() throws Exception {
+        field = new ProtobufField(1/*index*/, FieldQualifier.ZERO_OR_ONE, type, "field");
+        new ProtobufCompositeType("Message", Collections.singletonList(field)).resolve(new Path()/*root*/)/*resolve by contract*/;
+
+        final Random random = new Random(0x5EEDL);
+        for(int i=0; i<RECORD_COUNT; i++) {
+            isSet[i] = (random.nextInt(10) != 0);
+            values[i] = random.nextLong();
+            strings[i] = "value-" + random.nextInt(1000);
+        }
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final BinaryVLenFieldStripeWriter writer = new BinaryVLenFieldStripeWriter(outputStream, field);
+        writeValues(writer);
+        writer.close();
+        stripe = outputStream.toByteArray();
+    }
+
+    // ========================================================================
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    public void write() throws Exception {
+        final BinaryVLenFieldStripeWriter writer = new BinaryVLenFieldStripeWriter(NullOutputStream.NULL_OUTPUT_STREAM, field);
+        writeValues(writer);
+        writer.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    public void read(final Blackhole blackhole) throws Exception {
+        final BinaryVLenFieldStripeReader reader = new BinaryVLenFieldStripeReader(new ByteArrayInputStream(stripe), field);
+        for(int i=0; i<RECORD_COUNT; i++)
+            blackhole.consume(reader.readInstruction());
+    }
+
+    // ========================================================================
+    /**
+     * Writes all of the values to the specified writer.
+     */
+    private void writeValues(final BinaryVLenFieldStripeWriter writer) throws Exception {
+        for(int i=0; i<RECORD_COUNT; i++) {
+            if(!isSet[i]) {
+                writer.writeUnset();
+                continue;
+            } /* else -- the value is set */
+            final long value = values[i];
+            switch(type) {
+                case BOOLEAN:
+                    writer.writeValue((value & 1) != 0);
+                    break;
+                case BYTE:
+                    writer.writeValue((byte)value);
+                    break;
+                case SHORT:
+                    writer.writeValue((short)value);
+                    break;
+                case INT:
+                    writer.writeValue((int)value);
+                    break;
+                case LONG:
+                    writer.writeValue(value);
+                    break;
+                case FLOAT:
+                    writer.writeValue((float)value);
+                    break;
+                case DOUBLE:
+                    writer.writeValue((double)value);
+                    break;
+                case STRING:
+                    writer.writeValue(strings[i]);
+                    break;
+            }
+        }
+    }
+}
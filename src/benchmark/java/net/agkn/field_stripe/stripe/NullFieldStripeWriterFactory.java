@@ -0,0 +1,58 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.IField;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ * A {@link IFieldStripeWriterFactory} that creates {@link BinaryVLenFieldStripeWriter}s
+ * that discard their output so that the encoders can be benchmarked without
+ * the cost of I/O (or of a growing buffer).
+ *
+ * @author rgrzywinski
+ */
+public class NullFieldStripeWriterFactory implements IFieldStripeWriterFactory {
+    private final List<IFieldStripeWriter> writers = new ArrayList<IFieldStripeWriter>();
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriterFactory#createFieldStripeWriter(net.agkn.field_stripe.record.IField)
+     */
+    @Override
+    public IFieldStripeWriter createFieldStripeWriter(final IField field)
+            throws OperationFailedException {
+        final IFieldStripeWriter writer = new BinaryVLenFieldStripeWriter(NullOutputStream.NULL_OUTPUT_STREAM, field);
+        writers.add(writer);
+        return writer;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriterFactory#closeAllWriters()
+     */
+    @Override
+    public void closeAllWriters()
+            throws OperationFailedException {
+        for(final IFieldStripeWriter writer : writers)
+            writer.close();
+    }
+}
@@ -16,13 +16,18 @@ package net.agkn.field_stripe;
  * limitations under the License. 
  */
 
+import static net.agkn.field_stripe.FileRecordEncoder.JSON_FORMAT;
+import static net.agkn.field_stripe.FileRecordEncoder.PG_BINARY_FORMAT;
+import static net.agkn.field_stripe.FileRecordEncoder.PG_TEXT_FORMAT;
+import static net.agkn.field_stripe.FileRecordEncoder.PROTOBUF_FORMAT;
 import static net.agkn.field_stripe.FileRecordEncoder.createSchema;
+import static net.agkn.field_stripe.FileRecordEncoder.isSparseSubtrees;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.Writer;
 
 import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
 import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
@@ -30,13 +35,20 @@ import net.agkn.field_stripe.exception.OperationFailedException;
 import net.agkn.field_stripe.record.ICompositeType;
 import net.agkn.field_stripe.record.writer.IRecordWriter;
 import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+import net.agkn.field_stripe.record.writer.PGBinaryRecordWriter;
+import net.agkn.field_stripe.record.writer.PGTextRecordWriter;
+import net.agkn.field_stripe.record.writer.ProtobufRecordWriter;
 import net.agkn.field_stripe.stripe.BinaryVLenFieldStripeReader;
+import net.agkn.field_stripe.stripe.ChunkSetManifest;
 import net.agkn.field_stripe.stripe.IFieldStripeReader;
 import net.agkn.field_stripe.stripe.IFieldStripeReaderFactory;
+import net.agkn.field_stripe.stripe.ReadAheadExecutor;
+import net.agkn.field_stripe.stripe.StripeSetManifest;
 
 /**
  * An command-line entry point into a file-based record decoder that uses 
- * Protobuf-based IDL to define the schema and outputs JSON-array-based records. 
+ * Protobuf-based IDL to define the schema and outputs JSON-array-based (by
+ * default), PostgreSQL 'text' COPY format or Protobuf binary records.
  * The following information is passed:<p/>
  * <ul>
  *   <li>The base path to the schema IDL (*.proto). This directory must exist
@@ -48,54 +60,116 @@ import net.agkn.field_stripe.stripe.IFieldStripeReaderFactory;
  * </ul>
  * 
  * An optional fourth parameter specifies an output file. If the output file is
- * not specified then the decoded records are written to standard out.
+ * not specified (or is "<code>-</code>") then the decoded records are written
+ * to standard out. An optional fifth parameter specifies the output format:
+ * <code>json</code> (the default), <code>pgtext</code>, <code>pgbinary</code> or <code>protobuf</code>
+ * (length-delimited messages of the message definition).<p/>
+ * 
+ * If the field-stripe path has a {@link StripeSetManifest manifest} then the 
+ * IDL base path and message name may be omitted (i.e. the field-stripe path is
+ * the first parameter) in which case the schema (and if the field-stripes 
+ * were encoded with sparse subtrees) is read from the manifest. Likewise if
+ * the field-stripe path was encoded in chunks (and so has a {@link ChunkSetManifest})
+ * then the chunks are decoded in order as one data set. Otherwise the
+ * <code>net.agkn.field_stripe.sparseSubtrees</code> system property must match
+ * that used when encoding.<p/>
+ *
+ * If the <code>net.agkn.field_stripe.readAheadThreads</code> system property
+ * is greater than zero then the field-stripes are read ahead in chunks by
+ * that many background I/O threads. The <code>net.agkn.field_stripe.readAheadChunkSize</code>
+ * system property sets the size in bytes of each chunk (by default {@link ReadAheadExecutor#DEFAULT_CHUNK_SIZE})
+ * and the <code>net.agkn.field_stripe.readAheadDepth</code> system property
+ * sets the number of chunks per field-stripe (by default {@link ReadAheadExecutor#DEFAULT_DEPTH})
+ * (see {@link BinaryVLenFieldStripeReader#createFactory(File, ReadAheadExecutor)}).
  *
  * @author rgrzywinski
  * @see FileRecordEncoder
  */
 public class FileRecordDecoder {
+    // the output filename that specifies standard out
+    public static final String STANDARD_OUT = "-";
+
+    // the system properties that enable and size the read-ahead
+    public static final String READ_AHEAD_THREADS_PROPERTY = "net.agkn.field_stripe.readAheadThreads";
+    public static final String READ_AHEAD_CHUNK_SIZE_PROPERTY = "net.agkn.field_stripe.readAheadChunkSize";
+    public static final String READ_AHEAD_DEPTH_PROPERTY = "net.agkn.field_stripe.readAheadDepth";
+
     /**
      * @param  args refer to the {@link FileRecordEncoder class JavaDoc} for the
      *         required parameters. This can never be <code>null</code>.
      */
     public static void main(final String[] args) {
-        if((args.length != 3) && (args.length != 4)) {
+        // NOTE:  the IDL base path and message name are omitted if the field-
+        //        stripe path has a manifest
+        final boolean fromManifest = (args.length >= 1) && (args.length <= 3) && (StripeSetManifest.exists(new File(args[0])) || ChunkSetManifest.exists(new File(args[0])));
+        final int offset = fromManifest ? 0 : 2/*IDL base path and message name*/;
+        if(!fromManifest && ((args.length < 3) || (args.length > 5))) {
             showUsage();
             System.exit(1/*EXIT_FAILURE*/);
             return;
         } /* else -- there are the expected number of arguments */
 
         // validate all input parameters
-        final File idlBasePath = new File(args[0]);
-        if(!idlBasePath.exists()) { System.err.println("The IDL base path does not exist: " + args[0]); System.exit(1/*EXIT_FAILURE*/); }
-        if(!idlBasePath.isDirectory()) { System.err.println("The IDL base path is not a directory: " + args[0]); System.exit(1/*EXIT_FAILURE*/); }
-        final String fqMessageName = args[1];
-        final File fieldStripePath = new File(args[2]);
-        if(!fieldStripePath.exists()) { System.err.println("The field stripe path does not exist: " + args[2]); System.exit(1/*EXIT_FAILURE*/); }
-        if(!fieldStripePath.isDirectory()) { System.err.println("The field stripe path is not a directory: " + args[2]); System.exit(1/*EXIT_FAILURE*/); }
-
-        // creates the output writer based on the presence of the 4th arg
-        final Writer outputWriter;
+        final File fieldStripePath = new File(args[offset]);
+        if(!fieldStripePath.exists()) { System.err.println("The field stripe path does not exist: " + args[offset]); System.exit(1/*EXIT_FAILURE*/); }
+        if(!fieldStripePath.isDirectory()) { System.err.println("The field stripe path is not a directory: " + args[offset]); System.exit(1/*EXIT_FAILURE*/); }
+
+        final String outputFormat = (args.length > (offset + 2)) ? args[offset + 2] : JSON_FORMAT;
+        if(!JSON_FORMAT.equals(outputFormat) && !PG_TEXT_FORMAT.equals(outputFormat) && !PG_BINARY_FORMAT.equals(outputFormat) && !PROTOBUF_FORMAT.equals(outputFormat)) { System.err.println("Unknown output format: " + args[offset + 2]); System.exit(1/*EXIT_FAILURE*/); }
+
+        final ReadAheadExecutor readAheadExecutor = createReadAheadExecutor();
+        final ICompositeType schema;
+        final IFieldStripeReaderFactory fieldStripeReaderFactory;
+        final boolean sparseSubtrees;
+        ChunkSetManifest chunkManifest = null/*not chunked unless found*/;
+        if(fromManifest && ChunkSetManifest.exists(fieldStripePath)) {
+            chunkManifest = readChunkManifest(fieldStripePath);
+            schema = chunkManifest.getSchema();
+            fieldStripeReaderFactory = null/*one per chunk*/;
+            sparseSubtrees = chunkManifest.isSparseSubtrees();
+        } else if(fromManifest) {
+            final StripeSetManifest manifest = readManifest(fieldStripePath);
+            schema = manifest.getSchema();
+            fieldStripeReaderFactory = manifest.createReaderFactory(fieldStripePath, readAheadExecutor);
+            sparseSubtrees = manifest.isSparseSubtrees();
+        } else/*from the IDL*/ {
+            final File idlBasePath = new File(args[0]);
+            if(!idlBasePath.exists()) { System.err.println("The IDL base path does not exist: " + args[0]); System.exit(1/*EXIT_FAILURE*/); }
+            if(!idlBasePath.isDirectory()) { System.err.println("The IDL base path is not a directory: " + args[0]); System.exit(1/*EXIT_FAILURE*/); }
+            final String fqMessageName = args[1];
+            schema = createSchema(idlBasePath, fqMessageName);
+            fieldStripeReaderFactory = createFieldStripeReaderFactory(fieldStripePath, readAheadExecutor);
+            sparseSubtrees = isSparseSubtrees();
+        }
+
+        // creates the output stream based on the presence of the output arg
+        final OutputStream outputStream;
         try {
-            if(args.length == 4) {
-                outputWriter = new FileWriter(args[3]);
+            if((args.length > (offset + 1)) && !STANDARD_OUT.equals(args[offset + 1])) {
+                outputStream = new FileOutputStream(args[offset + 1]);
             } else/*output to standard out*/
-                outputWriter = new OutputStreamWriter(System.out);
+                outputStream = System.out;
         } catch(final IOException ioe) {
-            System.err.println("Could not write to output file: " + args[3]);
+            System.err.println("Could not write to output file: " + args[offset + 1]);
             System.exit(1/*EXIT_FAILURE*/);
             return/*not reached*/;
         }
 
-        IFieldStripeReaderFactory fieldStripeReaderFactory = null/*none to start*/; 
         try {
-            final ICompositeType schema = createSchema(idlBasePath, fqMessageName);
-            fieldStripeReaderFactory = createFieldStripeReaderFactory(fieldStripePath);
-            final RootFieldStripeDecoder rootDecoder = createDecoderTree(schema, fieldStripeReaderFactory);
-            final IRecordWriter recordWriter = new JsonArrayRecordWriter(outputWriter, false/*no pretty-print*/);
-
-            // decode each record
-            while(rootDecoder.decode(recordWriter));
+            final IRecordWriter recordWriter = createRecordWriter(outputStream, outputFormat);
+            if(chunkManifest != null) {
+                decodeChunks(fieldStripePath, chunkManifest, readAheadExecutor, recordWriter);
+            } else {/*a single stripe set*/
+                final RootFieldStripeDecoder rootDecoder = createDecoderTree(schema, fieldStripeReaderFactory, sparseSubtrees);
+                boolean decoded = false/*until all records are decoded*/;
+                try {
+                    // decode each record
+                    while(rootDecoder.decode(recordWriter));
+                    decoded = true;
+                } finally {
+                    closeAllReaders(fieldStripeReaderFactory, decoded);
+                }
+            }
 
             recordWriter.close()/*close to flush by contract*/;
         } catch(final OperationFailedException ofe) {
@@ -109,13 +183,98 @@ public class FileRecordDecoder {
     }
 
     // ------------------------------------------------------------------------
+    /**
+     * Decodes the records of each chunk of the specified chunk set in order
+     * to the specified writer. The stripes of a chunk are only opened once the
+     * previous chunk is decoded and are closed once the chunk is decoded (or
+     * fails to decode) so that at most one chunk's stripes are open at a time.
+     *
+     * @param  fieldStripePath the base path of the chunk set. This cannot be
+     *         <code>null</code>.
+     * @param  chunkManifest the {@link ChunkSetManifest} of the chunk set. This
+     *         cannot be <code>null</code>.
+     * @param  readAheadExecutor the {@link ReadAheadExecutor} that reads the
+     *         stripes ahead. If <code>null</code> then the stripes are read
+     *         synchronously.
+     * @param  recordWriter the {@link IRecordWriter} to which the records are
+     *         written. This cannot be <code>null</code>. It is not closed.
+     * @throws OperationFailedException if a chunk could not be read or decoded.
+     *         Subclasses may provide more information as to the nature of the
+     *         failure.
+     */
+    /*package*/ static void decodeChunks(final File fieldStripePath, final ChunkSetManifest chunkManifest, final ReadAheadExecutor readAheadExecutor, final IRecordWriter recordWriter)
+            throws OperationFailedException {
+        for(final ChunkSetManifest.Chunk chunk : chunkManifest.getChunks()) {
+            final StripeSetManifest manifest = chunkManifest.readChunkManifest(fieldStripePath, chunk);
+            final IFieldStripeReaderFactory readerFactory = manifest.createReaderFactory(chunk.getPath(fieldStripePath), readAheadExecutor);
+            boolean decoded = false/*until all records of the chunk are decoded*/;
+            try {
+                final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(readerFactory, chunkManifest.isSparseSubtrees()).createDecoderTree(chunkManifest.getSchema());
+                while(rootDecoder.decode(recordWriter));
+                decoded = true;
+            } finally {
+                closeAllReaders(readerFactory, decoded);
+            }
+        }
+    }
+
+    /**
+     * {@link IFieldStripeReaderFactory#closeAllReaders() Closes} the readers of
+     * the specified factory. A failure to close is only thrown if the decode
+     * succeeded so that it never replaces the failure of the decode.
+     */
+    private static void closeAllReaders(final IFieldStripeReaderFactory readerFactory, final boolean decoded)
+            throws OperationFailedException {
+        try {
+            readerFactory.closeAllReaders();
+        } catch(final OperationFailedException ofe) {
+            if(decoded) throw ofe;
+            /* else -- the failure of the decode is thrown */
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Creates and returns a {@link IRecordWriter} for the specified format that
+     * writes to the specified <code>OutputStream</code>.
+     */
+    /*package*/ static IRecordWriter createRecordWriter(final OutputStream outputStream, final String outputFormat) {
+        if(PG_TEXT_FORMAT.equals(outputFormat))
+            return new PGTextRecordWriter(new OutputStreamWriter(outputStream));
+        if(PG_BINARY_FORMAT.equals(outputFormat))
+            return new PGBinaryRecordWriter(outputStream);
+        if(PROTOBUF_FORMAT.equals(outputFormat))
+            return new ProtobufRecordWriter(outputStream);
+        /* else -- JSON (the default) */
+        return new JsonArrayRecordWriter(new OutputStreamWriter(outputStream), false/*no pretty-print*/);
+    }
+
+    /**
+     * Creates the {@link ReadAheadExecutor} if enabled by the {@link #READ_AHEAD_THREADS_PROPERTY
+     * system property} and sized by the {@link #READ_AHEAD_CHUNK_SIZE_PROPERTY}
+     * and {@link #READ_AHEAD_DEPTH_PROPERTY} system properties. (The I/O
+     * threads are daemon threads that end with the process.)
+     *
+     * @return <code>null</code> if the field-stripes are read synchronously
+     */
+    private static ReadAheadExecutor createReadAheadExecutor() {
+        final int readAheadThreads = Integer.getInteger(READ_AHEAD_THREADS_PROPERTY, 0/*synchronous*/);
+        if(readAheadThreads <= 0) return null/*synchronous*/;
+        final int chunkSize = Integer.getInteger(READ_AHEAD_CHUNK_SIZE_PROPERTY, ReadAheadExecutor.DEFAULT_CHUNK_SIZE);
+        if(chunkSize < 1) { System.err.println("The read-ahead chunk size must be greater than zero: " + chunkSize); System.exit(1/*EXIT_FAILURE*/); }
+        final int depth = Integer.getInteger(READ_AHEAD_DEPTH_PROPERTY, ReadAheadExecutor.DEFAULT_DEPTH);
+        if(depth < 1) { System.err.println("The read-ahead depth must be at least 1: " + depth); System.exit(1/*EXIT_FAILURE*/); }
+        return new ReadAheadExecutor(readAheadThreads, chunkSize, depth);
+    }
+
     /**
      * Creates the {@link IFieldStripeReaderFactory} for the specified field-
-     * stripe path.
+     * stripe path whose field-stripes are read ahead by the specified executor
+     * (if not <code>null</code>).
      */
-    private static IFieldStripeReaderFactory createFieldStripeReaderFactory(final File inputPath) {
+    private static IFieldStripeReaderFactory createFieldStripeReaderFactory(final File inputPath, final ReadAheadExecutor readAheadExecutor) {
         try {
-            return BinaryVLenFieldStripeReader.createFactory(inputPath);
+            return BinaryVLenFieldStripeReader.createFactory(inputPath, readAheadExecutor);
         } catch(final OperationFailedException ofe) {
             // NOTE:  the only way that this could occur is if the file was 
             //        moved / deleted between the earlier check and this call
@@ -125,14 +284,44 @@ public class FileRecordDecoder {
         }
     }
 
+    /**
+     * Reads and {@link StripeSetManifest#validate(File) validates} the manifest
+     * of the specified field-stripe path.
+     */
+    private static StripeSetManifest readManifest(final File inputPath) {
+        try {
+            final StripeSetManifest manifest = StripeSetManifest.read(inputPath);
+            manifest.validate(inputPath);
+            return manifest;
+        } catch(final OperationFailedException ofe) {
+            System.err.println("An error occurred while reading the field-stripe manifest: " + ofe.getLocalizedMessage());
+            System.exit(1/*EXIT_FAILURE*/);
+            return null/*never occurs*/;
+        }
+    }
+
+    /**
+     * Reads the {@link ChunkSetManifest chunk manifest} of the specified
+     * field-stripe path.
+     */
+    private static ChunkSetManifest readChunkManifest(final File inputPath) {
+        try {
+            return ChunkSetManifest.read(inputPath);
+        } catch(final OperationFailedException ofe) {
+            System.err.println("An error occurred while reading the chunk manifest: " + ofe.getLocalizedMessage());
+            System.exit(1/*EXIT_FAILURE*/);
+            return null/*never occurs*/;
+        }
+    }
+
     /**
      * Creates the tree of {@link IFieldStripeReader field-stripe readers} using  
      * the specified {@link IFieldStripeREaderFactory} based on the specified 
      * {@link ICompositeType schema} and returns the {@link RootFieldStripeDecoder}. 
      */
-    private static RootFieldStripeDecoder createDecoderTree(final ICompositeType schema, final IFieldStripeReaderFactory fieldStripeReaderFactory) {
+    private static RootFieldStripeDecoder createDecoderTree(final ICompositeType schema, final IFieldStripeReaderFactory fieldStripeReaderFactory, final boolean sparseSubtrees) {
         try {
-            final FieldStripeDecoderFactory decoderFactory = new FieldStripeDecoderFactory(fieldStripeReaderFactory);
+            final FieldStripeDecoderFactory decoderFactory = new FieldStripeDecoderFactory(fieldStripeReaderFactory, sparseSubtrees);
             return decoderFactory.createDecoderTree(schema);
         } catch(final OperationFailedException ofe) {
             System.err.println("An error occurred creating the field stripe readers: " + ofe.getLocalizedMessage());
@@ -147,6 +336,7 @@ public class FileRecordDecoder {
      */
     public static void showUsage() {
         System.out.println("Usage:");
-        System.out.println("\tFileRecordDecoder <IDL base path> <fully-qualified message definition> <field-stripe path> [<output filename>]");
+        System.out.println("\tFileRecordDecoder <IDL base path> <fully-qualified message definition> <field-stripe path> [<output filename>|- [json|pgtext|pgbinary|protobuf]]");
+        System.out.println("\tFileRecordDecoder <field-stripe path with manifest or chunk manifest> [<output filename>|- [json|pgtext|pgbinary|protobuf]]");
     }
 }
\ No newline at end of file
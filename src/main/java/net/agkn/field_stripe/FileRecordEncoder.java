@@ -17,24 +17,45 @@ package net.agkn.field_stripe;
  */
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.ParallelRecordEncoder;
 import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
 import net.agkn.field_stripe.exception.NoSuchObjectException;
 import net.agkn.field_stripe.exception.OperationFailedException;
 import net.agkn.field_stripe.record.ICompositeType;
 import net.agkn.field_stripe.record.IFieldType;
+import net.agkn.field_stripe.record.protobuf.CompiledSchemaCache;
 import net.agkn.field_stripe.record.protobuf.ProtobufFieldTypeFactory;
+import net.agkn.field_stripe.record.reader.FileChunk;
 import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.IRecordReaderFactory;
+import net.agkn.field_stripe.record.reader.MappedFileChunker;
+import net.agkn.field_stripe.record.reader.PGBinaryRecordReader;
+import net.agkn.field_stripe.record.reader.PGTextRecordReader;
+import net.agkn.field_stripe.record.reader.PooledPGTextRecordReader;
+import net.agkn.field_stripe.record.reader.ProtobufRecordReader;
 import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.record.reader.StreamingJsonArrayRecordReader;
 import net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter;
+import net.agkn.field_stripe.stripe.BufferedChannelOutput;
+import net.agkn.field_stripe.stripe.ChunkSetManifest;
 import net.agkn.field_stripe.stripe.IFieldStripeWriter;
 import net.agkn.field_stripe.stripe.IFieldStripeWriterFactory;
+import net.agkn.field_stripe.stripe.IStripeSetWriterFactory;
+import net.agkn.field_stripe.stripe.StripeSetManifest;
+import net.agkn.field_stripe.stripe.WriteBehindExecutor;
+import net.agkn.field_stripe.stripe.WriteBufferPool;
 
 import org.apache.commons.io.FileUtils;
 
@@ -49,21 +70,95 @@ import com.dyuproject.protostuff.parser.ProtoUtil;
  *       (and be a directory);</li>
  *   <li>The fully qualified name of the message definition (within the Protobuf
  *       IDL) for the encoded data;</li>
- *   <li>The path and filename to the JSON record data to be encoded;</li>
+ *   <li>The path and filename to the record data to be encoded;</li>
  *   <li>The base path to the output encoded field stripes. This directory must
  *       exist (and be a directory);</li>
+ *   <li>Optionally, the format of the record data: <code>json</code> (the
+ *       default) for JSON arrays, <code>json-stream</code> for JSON arrays
+ *       that are tokenized as they are read (see {@link StreamingJsonArrayRecordReader})
+ *       so that records larger than memory can be encoded, <code>pgtext</code> for PostgreSQL 'text'
+ *       COPY format, <code>pgtext-pooled</code> for the same format read
+ *       without per-record allocations (see {@link PooledPGTextRecordReader}), <code>pgbinary</code> for PostgreSQL 'binary' COPY format
+ *       or <code>protobuf</code> for length-delimited Protobuf
+ *       binary messages of the message definition;</li>
  * </ul>
+ * 
+ * The compiled schema is cached (see {@link CompiledSchemaCache}) in the path
+ * specified by the <code>net.agkn.field_stripe.schemaCachePath</code> system
+ * property (by default in <code>.field_stripe/schema_cache</code> in the
+ * user's home directory). An empty path disables the cache. A cache path that
+ * is not owned by the user is ignored.<p/>
+ * 
+ * If the <code>net.agkn.field_stripe.sparseSubtrees</code> system property is
+ * <code>true</code> then the field-stripes are encoded with sparse subtrees 
+ * (see {@link FieldStripeEncoderFactory#FieldStripeEncoderFactory(IFieldStripeWriterFactory, boolean)})
+ * which is recorded in the stripe set's manifest. If the
+ * <code>net.agkn.field_stripe.fixedWidth</code> system property is <code>true</code>
+ * then the field-stripes of the numeric fields that support it are written
+ * fixed-width for random access (see {@link BinaryVLenFieldStripeWriter#createFactory(File, boolean)}).
+ * The <code>net.agkn.field_stripe.bufferSize</code> system property sets the
+ * size in bytes of the output buffer of each field-stripe (by default
+ * {@link BinaryVLenFieldStripeWriter#DEFAULT_BUFFER_SIZE}) and if the
+ * <code>net.agkn.field_stripe.directBuffers</code> system property is <code>true</code>
+ * then those buffers are direct (see {@link BinaryVLenFieldStripeWriter#createFactory(File, boolean, int, boolean)}).
+ * If the <code>net.agkn.field_stripe.bufferBudget</code> system property is
+ * set then the buffers are taken from a {@link WriteBufferPool} with that
+ * total size in bytes. The buffers then start at {@link WriteBufferPool#DEFAULT_MINIMUM_BUFFER_SIZE}
+ * and grow to the buffer size within the budget (see {@link BinaryVLenFieldStripeWriter#createFactory(File, boolean, WriteBufferPool)}).
+ * If the <code>net.agkn.field_stripe.writeBehindThreads</code> system property
+ * is greater than zero then full buffers are written by that many background
+ * I/O threads while the encoding continues with another buffer. The
+ * <code>net.agkn.field_stripe.writeBehindDepth</code> system property sets the
+ * number of buffers per field-stripe (2 for double buffering, the default, or
+ * 3 for triple buffering) (see {@link BinaryVLenFieldStripeWriter#createFactory(File, boolean, WriteBufferPool, WriteBehindExecutor)}).<p/>
+ *
+ * If the <code>net.agkn.field_stripe.encodeThreads</code> system property is
+ * greater than one then the record file is split into chunks of about the
+ * size in bytes set by the <code>net.agkn.field_stripe.chunkSize</code> system
+ * property (by default {@link #DEFAULT_CHUNK_SIZE}) which are encoded by that
+ * many threads (see {@link ParallelRecordEncoder}). Each chunk is its own
+ * stripe set in the output path (written with the options above and with its
+ * share of the buffer budget) and a {@link ChunkSetManifest} lists the chunks
+ * so that {@link FileRecordDecoder} decodes them as one data set. Only the
+ * newline-delimited text formats can be split (and each JSON record must be
+ * on its own line).
  *
  * @author rgrzywinski
  * @see FileRecordDecoder
  */
 public class FileRecordEncoder {
+    // the supported input formats
+    public static final String JSON_FORMAT = "json";
+    public static final String JSON_STREAM_FORMAT = "json-stream";
+    public static final String PG_TEXT_FORMAT = "pgtext";
+    public static final String PG_TEXT_POOLED_FORMAT = "pgtext-pooled";
+    public static final String PG_BINARY_FORMAT = "pgbinary";
+    public static final String PROTOBUF_FORMAT = "protobuf";
+
+    // the system property that enables sparse subtrees
+    public static final String SPARSE_SUBTREES_PROPERTY = "net.agkn.field_stripe.sparseSubtrees";
+    // the system property that enables fixed-width field-stripes
+    public static final String FIXED_WIDTH_PROPERTY = "net.agkn.field_stripe.fixedWidth";
+    // the system properties of the output buffers of the field-stripes
+    public static final String BUFFER_SIZE_PROPERTY = "net.agkn.field_stripe.bufferSize";
+    public static final String DIRECT_BUFFERS_PROPERTY = "net.agkn.field_stripe.directBuffers";
+    public static final String BUFFER_BUDGET_PROPERTY = "net.agkn.field_stripe.bufferBudget";
+    // the system properties of writing behind
+    public static final String WRITE_BEHIND_THREADS_PROPERTY = "net.agkn.field_stripe.writeBehindThreads";
+    public static final String WRITE_BEHIND_DEPTH_PROPERTY = "net.agkn.field_stripe.writeBehindDepth";
+    // the system properties of encoding in parallel
+    public static final String ENCODE_THREADS_PROPERTY = "net.agkn.field_stripe.encodeThreads";
+    public static final String CHUNK_SIZE_PROPERTY = "net.agkn.field_stripe.chunkSize";
+
+    // the default target size in bytes of each chunk when encoding in parallel
+    public static final long DEFAULT_CHUNK_SIZE = 64L * 1024L * 1024L;
+
     /**
      * @param  args refer to the {@link FileRecordEncoder class JavaDoc} for the
      *         required parameters. This can never be <code>null</code>.
      */
     public static void main(final String[] args) {
-        if(args.length != 4) {
+        if((args.length != 4) && (args.length != 5)) {
             showUsage();
             System.exit(1/*EXIT_FAILURE*/);
             return;
@@ -74,22 +169,36 @@ public class FileRecordEncoder {
         if(!idlBasePath.exists()) { System.err.println("The IDL base path does not exist: " + args[0]); System.exit(1/*EXIT_FAILURE*/); }
         if(!idlBasePath.isDirectory()) { System.err.println("The IDL base path is not a directory: " + args[0]); System.exit(1/*EXIT_FAILURE*/); }
         final String fqMessageName = args[1];
-        final File jsonInputRecord = new File(args[2]);
-        if(!jsonInputRecord.exists()) { System.err.println("The input JSON record file does not exist: " + args[2]); System.exit(1/*EXIT_FAILURE*/); }
-        if(jsonInputRecord.isDirectory()) { System.err.println("The input JSON record is not a file: " + args[2]); System.exit(1/*EXIT_FAILURE*/); }
+        final File inputRecord = new File(args[2]);
+        if(!inputRecord.exists()) { System.err.println("The input record file does not exist: " + args[2]); System.exit(1/*EXIT_FAILURE*/); }
+        if(inputRecord.isDirectory()) { System.err.println("The input record is not a file: " + args[2]); System.exit(1/*EXIT_FAILURE*/); }
         final File outputPath = new File(args[3]);
         if(!outputPath.exists()) { System.err.println("The output base path does not exist: " + args[3]); System.exit(1/*EXIT_FAILURE*/); }
         if(!outputPath.isDirectory()) { System.err.println("The output base path is not a directory: " + args[3]); System.exit(1/*EXIT_FAILURE*/); }
+        final String inputFormat = (args.length > 4) ? args[4] : JSON_FORMAT;
+        if(!JSON_FORMAT.equals(inputFormat) && !JSON_STREAM_FORMAT.equals(inputFormat) && !PG_TEXT_FORMAT.equals(inputFormat) && !PG_TEXT_POOLED_FORMAT.equals(inputFormat) && !PG_BINARY_FORMAT.equals(inputFormat) && !PROTOBUF_FORMAT.equals(inputFormat)) { System.err.println("Unknown input format: " + args[4]); System.exit(1/*EXIT_FAILURE*/); }
+
+        final int encodeThreads = Integer.getInteger(ENCODE_THREADS_PROPERTY, 1/*single-threaded*/);
+        if(encodeThreads < 1) { System.err.println("There must be at least one encode thread: " + encodeThreads); System.exit(1/*EXIT_FAILURE*/); }
+        if((encodeThreads > 1) && (PG_BINARY_FORMAT.equals(inputFormat) || PROTOBUF_FORMAT.equals(inputFormat))) { System.err.println("Only newline-delimited input formats can be encoded in parallel: " + inputFormat); System.exit(1/*EXIT_FAILURE*/); }
+
+        final ICompositeType schema = createSchema(idlBasePath, fqMessageName);
+        if(encodeThreads > 1) {
+            encodeChunks(inputRecord, inputFormat, schema, outputPath, encodeThreads);
+            System.exit(0/*EXIT_SUCCESS*/);
+            return;
+        } /* else -- the records are encoded on this thread */
 
         IFieldStripeWriterFactory fieldStripeWriterFactory = null/*none to start*/; 
+        long recordCount = 0L;
         try {
-            final ICompositeType schema = createSchema(idlBasePath, fqMessageName);
-            final IRecordReader recordReader = createRecordReader(jsonInputRecord);
+            final IRecordReader recordReader = createRecordReader(inputRecord, inputFormat, schema);
             fieldStripeWriterFactory = createFieldStripeWriterFactory(outputPath);
             final RootFieldStripeEncoder rootEncoder = createEncoderTree(schema, fieldStripeWriterFactory);
 
             // encode each record
-            while(rootEncoder.encode(recordReader));
+            while(rootEncoder.encode(recordReader))
+                recordCount++;
         } catch(final OperationFailedException ofe) {
             System.err.println("An error occurred while encoding records into field-stripes: " + ofe.getLocalizedMessage());
             System.exit(1/*EXIT_FAILURE*/);
@@ -101,6 +210,7 @@ public class FileRecordEncoder {
                 System.exit(1/*EXIT_FAILURE*/);
             }
         }
+        writeManifest(outputPath, schema, recordCount);
 
         System.exit(0/*EXIT_SUCCESS*/);
     }
@@ -109,9 +219,26 @@ public class FileRecordEncoder {
     /**
      * Parses the IDL at the specified path and finds the message definition 
      * with the specified fully-qualified name. This is converted into a
-     * {@link ICompositeType schema} and returned.
+     * {@link ICompositeType schema} and returned. The schema is read from the
+     * {@link CompiledSchemaCache#createDefault() default compiled-schema cache}
+     * if the IDL has not changed since it was cached (in which case the IDL is
+     * not parsed).
      */
     public static ICompositeType createSchema(final File protobufPath, final String fqMessageName) {
+        final CompiledSchemaCache schemaCache = CompiledSchemaCache.createDefault();
+        String cacheKey = null/*none if there is no cache*/;
+        if(schemaCache != null) {
+            try {
+                cacheKey = schemaCache.computeKey(protobufPath, fqMessageName);
+                final ICompositeType schema = schemaCache.get(cacheKey);
+                if(schema != null) return schema/*cache hit*/;
+                /* else -- cache miss */
+            } catch(final OperationFailedException ofe) {
+                // NOTE:  the IDL will fail to parse for the same reason
+                cacheKey = null/*do not cache*/;
+            }
+        } /* else -- caching is disabled */
+
         final List<Proto> protobufDefinitions = parseProtobufDefinitions(protobufPath);
         final ProtobufFieldTypeFactory fieldTypeFactory = new ProtobufFieldTypeFactory();
         try {
@@ -121,6 +248,7 @@ public class FileRecordEncoder {
                 System.exit(1/*EXIT_FAILURE*/);
                 return null/*never occurs*/;
             } /* else -- the message was of the expected type */
+            if(cacheKey != null) schemaCache.put(cacheKey, (ICompositeType)fieldType);
             return (ICompositeType)fieldType;
         } catch(final NoSuchObjectException nsoe) {
             System.err.println("The message definition could not be found: " + fqMessageName);
@@ -156,29 +284,81 @@ public class FileRecordEncoder {
 
     // ------------------------------------------------------------------------
     /**
-     * Creates and returns a {@link IRecordReader} from the specified JSON-array-based
-     * file.
+     * Splits the specified record file into chunks and encodes them in
+     * parallel into the specified output path with the specified number of
+     * threads. The {@link ChunkSetManifest} of the chunks is written once all
+     * of the chunks are encoded.
+     */
+    private static void encodeChunks(final File inputRecord, final String inputFormat, final ICompositeType schema, final File outputPath, final int encodeThreads) {
+        final long chunkSize = Long.getLong(CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE);
+        if(chunkSize < 1L) { System.err.println("The chunk size must be greater than zero: " + chunkSize); System.exit(1/*EXIT_FAILURE*/); }
+
+        final IStripeSetWriterFactory stripeSetWriterFactory = createStripeSetWriterFactory(encodeThreads);
+        final ExecutorService executor = Executors.newFixedThreadPool(encodeThreads);
+        try {
+            // NOTE:  the chunks are read in the same (default) charset as the
+            //        unchunked file is by FileReader
+            final List<FileChunk> chunks = MappedFileChunker.split(inputRecord, chunkSize);
+            final ParallelRecordEncoder encoder = new ParallelRecordEncoder(schema, createRecordReaderFactory(inputFormat), Charset.defaultCharset(), stripeSetWriterFactory, isSparseSubtrees(), executor);
+            encoder.encode(chunks, outputPath);
+        } catch(final OperationFailedException ofe) {
+            System.err.println("An error occurred while encoding records into field-stripes: " + ofe.getLocalizedMessage());
+            System.exit(1/*EXIT_FAILURE*/);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Creates and returns a {@link IRecordReader} from the specified file in
+     * the specified format.
      */
-    private static IRecordReader createRecordReader(final File jsonInputRecord) {
+    private static IRecordReader createRecordReader(final File inputRecord, final String inputFormat, final ICompositeType schema)
+            throws OperationFailedException {
         try {
-            return new SmartJsonArrayRecordReader(new FileReader(jsonInputRecord));
+            if(PG_BINARY_FORMAT.equals(inputFormat))
+                return new PGBinaryRecordReader(new FileInputStream(inputRecord));
+            if(PROTOBUF_FORMAT.equals(inputFormat))
+                return new ProtobufRecordReader(schema, new FileInputStream(inputRecord));
+            /* else -- a text format */
+            return createRecordReaderFactory(inputFormat).createRecordReader(new FileReader(inputRecord));
         } catch(final FileNotFoundException fnfe) {
             // NOTE:  the only way that this could occur is if the file was 
             //        moved / deleted between the earlier check and this call
-            System.err.println("JSON record file moved / deleted: " + jsonInputRecord.getAbsolutePath());
+            System.err.println("Record file moved / deleted: " + inputRecord.getAbsolutePath());
             System.exit(1/*EXIT_FAILURE*/);
             return null/*never occurs*/;
         }
     }
 
+    /**
+     * Creates the {@link IRecordReaderFactory} of the specified text (i.e. not
+     * {@link #PG_BINARY_FORMAT} or {@link #PROTOBUF_FORMAT}) format.
+     */
+    private static IRecordReaderFactory createRecordReaderFactory(final String inputFormat) {
+        return new IRecordReaderFactory() {
+            @Override
+            public IRecordReader createRecordReader(final Reader reader) {
+                if(JSON_STREAM_FORMAT.equals(inputFormat))
+                    return new StreamingJsonArrayRecordReader(reader);
+                if(PG_TEXT_FORMAT.equals(inputFormat))
+                    return new PGTextRecordReader(reader);
+                if(PG_TEXT_POOLED_FORMAT.equals(inputFormat))
+                    return new PooledPGTextRecordReader(reader);
+                /* else -- JSON (the default) */
+                return new SmartJsonArrayRecordReader(reader);
+            }
+        };
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Creates the {@link IFieldStripeWriterFactory} for the specified output
-     * path.
+     * path (see {@link #createStripeSetWriterFactory(int)}).
      */
-    private static IFieldStripeWriterFactory createFieldStripeWriterFactory(final File outputPath) {
+    /*package*/ static IFieldStripeWriterFactory createFieldStripeWriterFactory(final File outputPath) {
         try {
-            return BinaryVLenFieldStripeWriter.createFactory(outputPath);
+            return createStripeSetWriterFactory(1/*single stripe set*/).createWriterFactory(outputPath);
         } catch(final OperationFailedException ofe) {
             // NOTE:  the only way that this could occur is if the file was 
             //        moved / deleted between the earlier check and this call
@@ -188,14 +368,83 @@ public class FileRecordEncoder {
         }
     }
 
+    /**
+     * Creates the {@link IStripeSetWriterFactory} for the specified number of
+     * concurrently written stripe sets. The field-stripes are fixed-width if
+     * enabled by the {@link #FIXED_WIDTH_PROPERTY system property} and their
+     * output buffers are sized and allocated by the {@link #BUFFER_SIZE_PROPERTY},
+     * {@link #DIRECT_BUFFERS_PROPERTY} and {@link #BUFFER_BUDGET_PROPERTY}
+     * system properties. Each stripe set has its own {@link WriteBufferPool}
+     * (as a pool is used by a single thread) with an equal share of the budget.
+     * They are written behind if enabled by the {@link #WRITE_BEHIND_THREADS_PROPERTY}
+     * system property by I/O threads that are shared by all of the stripe sets.
+     * (The I/O threads are daemon threads that end with the process.)
+     */
+    /*package*/ static IStripeSetWriterFactory createStripeSetWriterFactory(final int concurrency) {
+        final int bufferSize = Integer.getInteger(BUFFER_SIZE_PROPERTY, BinaryVLenFieldStripeWriter.DEFAULT_BUFFER_SIZE);
+        if(bufferSize < BufferedChannelOutput.MINIMUM_BUFFER_SIZE) {
+            System.err.println("The buffer size must be at least " + BufferedChannelOutput.MINIMUM_BUFFER_SIZE + " bytes: " + bufferSize);
+            System.exit(1/*EXIT_FAILURE*/);
+        } /* else -- the buffer size is valid */
+        final long bufferBudget = Long.getLong(BUFFER_BUDGET_PROPERTY, 0L/*none*/);
+        final int minimumBufferSize = Math.min(WriteBufferPool.DEFAULT_MINIMUM_BUFFER_SIZE, bufferSize);
+        if((bufferBudget != 0L) && ((bufferBudget / concurrency) < minimumBufferSize)) {
+            System.err.println("The buffer budget must be at least " + ((long)minimumBufferSize * concurrency) + " bytes: " + bufferBudget);
+            System.exit(1/*EXIT_FAILURE*/);
+        } /* else -- there is no budget or it is valid */
+        final int writeBehindThreads = Integer.getInteger(WRITE_BEHIND_THREADS_PROPERTY, 0/*synchronous*/);
+        final int writeBehindDepth = Integer.getInteger(WRITE_BEHIND_DEPTH_PROPERTY, WriteBehindExecutor.DEFAULT_DEPTH);
+        if((writeBehindThreads > 0) && (writeBehindDepth < 2)) {
+            System.err.println("The write-behind depth must be at least 2: " + writeBehindDepth);
+            System.exit(1/*EXIT_FAILURE*/);
+        } /* else -- synchronous or the depth is valid */
+
+        final boolean fixedWidth = Boolean.getBoolean(FIXED_WIDTH_PROPERTY);
+        final boolean directBuffers = Boolean.getBoolean(DIRECT_BUFFERS_PROPERTY);
+        final WriteBehindExecutor writeBehindExecutor = (writeBehindThreads > 0) ? new WriteBehindExecutor(writeBehindThreads, writeBehindDepth) : null/*synchronous*/;
+        return new IStripeSetWriterFactory() {
+            @Override
+            public IFieldStripeWriterFactory createWriterFactory(final File fsPath)
+                    throws OperationFailedException {
+                final WriteBufferPool bufferPool;
+                if(bufferBudget == 0L)
+                    bufferPool = new WriteBufferPool(Long.MAX_VALUE/*unbounded*/, bufferSize, bufferSize, directBuffers);
+                else/*the buffers are pooled within the stripe set's share of the budget*/
+                    bufferPool = new WriteBufferPool((bufferBudget / concurrency), minimumBufferSize, bufferSize, directBuffers);
+                return BinaryVLenFieldStripeWriter.createFactory(fsPath, fixedWidth, bufferPool, writeBehindExecutor);
+            }
+        };
+    }
+
+    /**
+     * @return <code>true</code> if and only if sparse subtrees are enabled by
+     *         the {@link #SPARSE_SUBTREES_PROPERTY system property}
+     */
+    /*package*/ static boolean isSparseSubtrees() {
+        return Boolean.getBoolean(SPARSE_SUBTREES_PROPERTY);
+    }
+
+    /**
+     * Writes the {@link StripeSetManifest manifest} of the closed field-stripes
+     * in the specified output path.
+     */
+    /*package*/ static void writeManifest(final File outputPath, final ICompositeType schema, final long recordCount) {
+        try {
+            StripeSetManifest.create(outputPath, schema, recordCount, isSparseSubtrees()).write(outputPath);
+        } catch(final OperationFailedException ofe) {
+            System.err.println("An error occurred while writing the field-stripe manifest: " + ofe.getLocalizedMessage());
+            System.exit(1/*EXIT_FAILURE*/);
+        }
+    }
+
     /**
      * Creates the tree of {@link IFieldStripeWriter field-stripe writers} using  
      * the specified {@link IFieldStripeWriterFactory} based on the specified 
      * {@link ICompositeType schema} and returns the {@link RootFieldStripeEncoder}. 
      */
-    private static RootFieldStripeEncoder createEncoderTree(final ICompositeType schema, final IFieldStripeWriterFactory fieldStripeWriterFactory) {
+    /*package*/ static RootFieldStripeEncoder createEncoderTree(final ICompositeType schema, final IFieldStripeWriterFactory fieldStripeWriterFactory) {
         try {
-            final FieldStripeEncoderFactory encoderFactory = new FieldStripeEncoderFactory(fieldStripeWriterFactory);
+            final FieldStripeEncoderFactory encoderFactory = new FieldStripeEncoderFactory(fieldStripeWriterFactory, isSparseSubtrees());
             return encoderFactory.createEncoderTree(schema);
         } catch(final OperationFailedException ofe) {
             System.err.println("An error occurred creating the output field stripe writers: " + ofe.getLocalizedMessage());
@@ -210,6 +459,6 @@ public class FileRecordEncoder {
      */
     public static void showUsage() {
         System.out.println("Usage:");
-        System.out.println("\tFileRecordEncoder <IDL base path> <fully-qualified message definition> <JSON input filename> <output field-stripe path>");
+        System.out.println("\tFileRecordEncoder <IDL base path> <fully-qualified message definition> <input filename> <output field-stripe path> [json|json-stream|pgtext|pgtext-pooled|pgbinary|protobuf]");
     }
 }
\ No newline at end of file
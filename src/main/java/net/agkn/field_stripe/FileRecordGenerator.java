@@ -0,0 +1,196 @@
+package net.agkn.field_stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static net.agkn.field_stripe.FileRecordDecoder.STANDARD_OUT;
+import static net.agkn.field_stripe.FileRecordDecoder.createRecordWriter;
+import static net.agkn.field_stripe.FileRecordEncoder.JSON_FORMAT;
+import static net.agkn.field_stripe.FileRecordEncoder.PG_BINARY_FORMAT;
+import static net.agkn.field_stripe.FileRecordEncoder.PG_TEXT_FORMAT;
+import static net.agkn.field_stripe.FileRecordEncoder.PROTOBUF_FORMAT;
+import static net.agkn.field_stripe.FileRecordEncoder.createEncoderTree;
+import static net.agkn.field_stripe.FileRecordEncoder.createFieldStripeWriterFactory;
+import static net.agkn.field_stripe.FileRecordEncoder.createSchema;
+import static net.agkn.field_stripe.FileRecordEncoder.writeManifest;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.generator.RecordTranscoder;
+import net.agkn.field_stripe.record.generator.SyntheticRecordConfig;
+import net.agkn.field_stripe.record.generator.SyntheticRecordReader;
+import net.agkn.field_stripe.record.writer.IRecordWriter;
+import net.agkn.field_stripe.stripe.IFieldStripeWriterFactory;
+
+/**
+ * An command-line entry point into a generator of synthetic records (for load
+ * and scale testing) that uses Protobuf-based IDL to define the schema. The
+ * records are generated with the {@link SyntheticRecordConfig default configuration}.
+ * The following information is passed:<p/>
+ * <ul>
+ *   <li>The base path to the schema IDL (*.proto). This directory must exist
+ *       (and be a directory);</li>
+ *   <li>The fully qualified name of the message definition (within the Protobuf
+ *       IDL) for the generated data;</li>
+ *   <li>The number of records to generate;</li>
+ *   <li>The seed from which the records are generated. The same seed always
+ *       generates the same records;</li>
+ *   <li>The output: the base path to the encoded field stripes (which must
+ *       exist and be a directory) for the <code>stripe</code> format or the
+ *       output filename (or "<code>-</code>" for standard out) for all other
+ *       formats;</li>
+ *   <li>Optionally, the output format: <code>stripe</code> (the default),
+ *       <code>json</code>, <code>pgtext</code>, <code>pgbinary</code> or
+ *       <code>protobuf</code>;</li>
+ *   <li>Optionally, the (zero-based) index of the first record so that a
+ *       range of records can be generated independently.</li>
+ * </ul>
+ *
+ * @author rgrzywinski
+ * @see SyntheticRecordReader
+ */
+public class FileRecordGenerator {
+    // the output format that encodes the records directly into field-stripes
+    public static final String STRIPE_FORMAT = "stripe";
+
+    /**
+     * @param  args refer to the {@link FileRecordGenerator class JavaDoc} for
+     *         the required parameters. This can never be <code>null</code>.
+     */
+    public static void main(final String[] args) {
+        if((args.length < 5) || (args.length > 7)) {
+            showUsage();
+            System.exit(1/*EXIT_FAILURE*/);
+            return;
+        } /* else -- there are the expected number of arguments */
+
+        // validate all input parameters
+        final File idlBasePath = new File(args[0]);
+        if(!idlBasePath.exists()) { System.err.println("The IDL base path does not exist: " + args[0]); System.exit(1/*EXIT_FAILURE*/); }
+        if(!idlBasePath.isDirectory()) { System.err.println("The IDL base path is not a directory: " + args[0]); System.exit(1/*EXIT_FAILURE*/); }
+        final String fqMessageName = args[1];
+        final long recordCount = parseLong(args[2], "record count");
+        if(recordCount < 0L) { System.err.println("The record count must be non-negative: " + args[2]); System.exit(1/*EXIT_FAILURE*/); }
+        final long seed = parseLong(args[3], "seed");
+        final String outputFormat = (args.length > 5) ? args[5] : STRIPE_FORMAT;
+        if(!STRIPE_FORMAT.equals(outputFormat) && !JSON_FORMAT.equals(outputFormat) && !PG_TEXT_FORMAT.equals(outputFormat) && !PG_BINARY_FORMAT.equals(outputFormat) && !PROTOBUF_FORMAT.equals(outputFormat)) { System.err.println("Unknown output format: " + args[5]); System.exit(1/*EXIT_FAILURE*/); }
+        final long firstRecordIndex = (args.length > 6) ? parseLong(args[6], "first record index") : 0L;
+        if(firstRecordIndex < 0L) { System.err.println("The first record index must be non-negative: " + args[6]); System.exit(1/*EXIT_FAILURE*/); }
+
+        final ICompositeType schema = createSchema(idlBasePath, fqMessageName);
+        final SyntheticRecordReader recordReader = new SyntheticRecordReader(schema, new SyntheticRecordConfig(), seed, firstRecordIndex, recordCount);
+        if(STRIPE_FORMAT.equals(outputFormat))
+            generateFieldStripes(schema, recordReader, args[4]);
+        else/*a record format*/
+            generateRecords(schema, recordReader, args[4], outputFormat);
+
+        System.exit(0/*EXIT_SUCCESS*/);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Encodes the records from the specified reader into field-stripes in the
+     * specified output path.
+     */
+    private static void generateFieldStripes(final ICompositeType schema, final SyntheticRecordReader recordReader, final String outputPathname) {
+        final File outputPath = new File(outputPathname);
+        if(!outputPath.exists()) { System.err.println("The output base path does not exist: " + outputPathname); System.exit(1/*EXIT_FAILURE*/); }
+        if(!outputPath.isDirectory()) { System.err.println("The output base path is not a directory: " + outputPathname); System.exit(1/*EXIT_FAILURE*/); }
+
+        IFieldStripeWriterFactory fieldStripeWriterFactory = null/*none to start*/;
+        long recordCount = 0L;
+        try {
+            fieldStripeWriterFactory = createFieldStripeWriterFactory(outputPath);
+            final RootFieldStripeEncoder rootEncoder = createEncoderTree(schema, fieldStripeWriterFactory);
+
+            // encode each record
+            while(rootEncoder.encode(recordReader))
+                recordCount++;
+        } catch(final OperationFailedException ofe) {
+            System.err.println("An error occurred while encoding records into field-stripes: " + ofe.getLocalizedMessage());
+            System.exit(1/*EXIT_FAILURE*/);
+        } finally {
+            try {
+                if(fieldStripeWriterFactory != null) fieldStripeWriterFactory.closeAllWriters();
+            } catch(final OperationFailedException ofe) {
+                System.err.println("An error occurred while closing field-stripe writers: " + ofe.getLocalizedMessage());
+                System.exit(1/*EXIT_FAILURE*/);
+            }
+        }
+        writeManifest(outputPath, schema, recordCount);
+    }
+
+    /**
+     * Writes the records from the specified reader in the specified format to
+     * the specified output file (or standard out).
+     */
+    private static void generateRecords(final ICompositeType schema, final SyntheticRecordReader recordReader, final String outputFilename, final String outputFormat) {
+        final OutputStream outputStream;
+        try {
+            if(!STANDARD_OUT.equals(outputFilename)) {
+                outputStream = new BufferedOutputStream(new FileOutputStream(outputFilename));
+            } else/*output to standard out*/
+                outputStream = System.out;
+        } catch(final IOException ioe) {
+            System.err.println("Could not write to output file: " + outputFilename);
+            System.exit(1/*EXIT_FAILURE*/);
+            return/*not reached*/;
+        }
+
+        try {
+            final RecordTranscoder transcoder = new RecordTranscoder(schema);
+            final IRecordWriter recordWriter = createRecordWriter(outputStream, outputFormat);
+
+            // write each record
+            while(transcoder.transcode(recordReader, recordWriter));
+
+            recordWriter.close()/*close to flush by contract*/;
+        } catch(final OperationFailedException ofe) {
+            System.err.println("An error occurred while generating records: " + ofe.getLocalizedMessage());
+            System.exit(1/*EXIT_FAILURE*/);
+        }
+    }
+
+    /**
+     * Parses the specified argument as a <code>long</code> exiting with an
+     * error if it is not a number.
+     */
+    private static long parseLong(final String argument, final String description) {
+        try {
+            return Long.parseLong(argument);
+        } catch(final NumberFormatException nfe) {
+            System.err.println("The " + description + " is not a number: " + argument);
+            System.exit(1/*EXIT_FAILURE*/);
+            return 0L/*never occurs*/;
+        }
+    }
+
+    // ========================================================================
+    /**
+     * Writes the CLI usage to standard out.
+     */
+    public static void showUsage() {
+        System.out.println("Usage:");
+        System.out.println("\tFileRecordGenerator <IDL base path> <fully-qualified message definition> <record count> <seed> <output field-stripe path>|<output filename>|- [stripe|json|pgtext|pgbinary|protobuf [<first record index>]]");
+    }
+}
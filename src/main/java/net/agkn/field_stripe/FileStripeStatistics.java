@@ -0,0 +1,133 @@
+package net.agkn.field_stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static net.agkn.field_stripe.FileRecordEncoder.createSchema;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.stripe.BinaryVLenFieldStripeReader;
+import net.agkn.field_stripe.stripe.Instruction.Kind;
+import net.agkn.field_stripe.stripe.StripeStatistics;
+
+/**
+ * An command-line entry point (<code>stripe stats</code>) that prints the
+ * {@link StripeStatistics statistics} of each leaf field-stripe of a record.
+ * Only the statistics are read (not the field-stripes themselves). The
+ * following information is passed:<p/>
+ * <ul>
+ *   <li>The base path to the schema IDL (*.proto). This directory must exist
+ *       (and be a directory);</li>
+ *   <li>The fully qualified name of the message definition (within the Protobuf
+ *       IDL) for the encoded data;</li>
+ *   <li>The base path to the encoded field stripes. This directory must exist
+ *       (and be a directory).</li>
+ * </ul>
+ *
+ * One tab-separated line is written to standard out for each leaf field (in
+ * schema order) after a header line.
+ *
+ * @author rgrzywinski
+ * @see BinaryVLenFieldStripeReader#readStatistics(File, IField)
+ */
+public class FileStripeStatistics {
+    /**
+     * @param  args refer to the {@link FileStripeStatistics class JavaDoc} for
+     *         the required parameters. This can never be <code>null</code>.
+     */
+    public static void main(final String[] args) {
+        if(args.length != 3) {
+            showUsage();
+            System.exit(1/*EXIT_FAILURE*/);
+            return;
+        } /* else -- there are the expected number of arguments */
+
+        // validate all input parameters
+        final File idlBasePath = new File(args[0]);
+        if(!idlBasePath.exists()) { System.err.println("The IDL base path does not exist: " + args[0]); System.exit(1/*EXIT_FAILURE*/); }
+        if(!idlBasePath.isDirectory()) { System.err.println("The IDL base path is not a directory: " + args[0]); System.exit(1/*EXIT_FAILURE*/); }
+        final String fqMessageName = args[1];
+        final File fieldStripePath = new File(args[2]);
+        if(!fieldStripePath.exists()) { System.err.println("The field stripe path does not exist: " + args[2]); System.exit(1/*EXIT_FAILURE*/); }
+        if(!fieldStripePath.isDirectory()) { System.err.println("The field stripe path is not a directory: " + args[2]); System.exit(1/*EXIT_FAILURE*/); }
+
+        final ICompositeType schema = createSchema(idlBasePath, fqMessageName);
+        final List<IField> leafFields = new ArrayList<IField>();
+        collectLeafFields(schema, leafFields);
+        try {
+            printStatistics(fieldStripePath, leafFields, System.out);
+        } catch(final OperationFailedException ofe) {
+            System.err.println("An error occurred while reading field-stripe statistics: " + ofe.getLocalizedMessage());
+            System.exit(1/*EXIT_FAILURE*/);
+        }
+
+        System.exit(0/*EXIT_SUCCESS*/);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Adds the leaf (primitive) fields of the specified type (in order) to the
+     * specified list.
+     */
+    private static void collectLeafFields(final ICompositeType type, final List<IField> leafFields) {
+        for(final IField field : type.getFields()) {
+            if(field.getType() instanceof ICompositeType)
+                collectLeafFields((ICompositeType)field.getType(), leafFields);
+            else/*primitive*/
+                leafFields.add(field);
+        }
+    }
+
+    /**
+     * Prints the header and the statistics of each of the specified leaf
+     * fields to the specified stream.
+     */
+    private static void printStatistics(final File fieldStripePath, final List<IField> leafFields, final PrintStream output)
+            throws OperationFailedException {
+        output.println("path\ttype\tbytes\tinstructions\tvalues\tunset\tunset_parent\trepeated_value\trepeated_parent\tmin\tmax\tdistinct");
+        for(final IField field : leafFields) {
+            final StripeStatistics statistics = BinaryVLenFieldStripeReader.readStatistics(fieldStripePath, field);
+            output.println(field.getPath() + "\t" +
+                           statistics.getType() + "\t" +
+                           statistics.getByteCount() + "\t" +
+                           statistics.getInstructionCount() + "\t" +
+                           statistics.getInstructionCount(Kind.VALUE) + "\t" +
+                           statistics.getInstructionCount(Kind.UNSET) + "\t" +
+                           statistics.getInstructionCount(Kind.UNSET_PARENT) + "\t" +
+                           statistics.getInstructionCount(Kind.REPEATED_VALUE) + "\t" +
+                           statistics.getInstructionCount(Kind.REPEATED_PARENT) + "\t" +
+                           statistics.getMinValue()/*"null" if no values*/ + "\t" +
+                           statistics.getMaxValue()/*"null" if no values*/ + "\t" +
+                           statistics.getDistinctCount());
+        }
+    }
+
+    // ========================================================================
+    /**
+     * Writes the CLI usage to standard out.
+     */
+    public static void showUsage() {
+        System.out.println("Usage:");
+        System.out.println("\tFileStripeStatistics <IDL base path> <fully-qualified message definition> <field-stripe path>");
+    }
+}
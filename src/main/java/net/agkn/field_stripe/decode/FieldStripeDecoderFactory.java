@@ -26,16 +26,25 @@ import net.agkn.field_stripe.record.IFieldType;
 import net.agkn.field_stripe.record.PrimitiveType;
 import net.agkn.field_stripe.stripe.IFieldStripeReader;
 import net.agkn.field_stripe.stripe.IFieldStripeReaderFactory;
+import net.agkn.field_stripe.stripe.StructureField;
 
 /**
  * A combination factory and builder for {@link IFieldStripeDecoder field-stripe decoders}
- * from a {@link IFieldType#isComposite() composite} {@link IFieldType field type}.
+ * from a {@link IFieldType#isComposite() composite} {@link IFieldType field type}.<p/>
+ * 
+ * Sparse subtrees must be enabled if and only if they were enabled when the
+ * field-stripes were {@link net.agkn.field_stripe.encode.FieldStripeEncoderFactory encoded}.
+ * If enabled, each {@link StructureField#isSparse(IField) sparse} node is
+ * decoded by a {@link SparseNodeFieldStripeDecoder}.
  *
  * @author rgrzywinski
  */
 public class FieldStripeDecoderFactory {
     private final IFieldStripeReaderFactory fieldStripeReaderFactory;
 
+    // do sparse nodes have their own structure stripe?
+    private final boolean sparseSubtrees;
+
     // ========================================================================
     /**
      * @param  fieldStripeReaderFactory the {@link IFieldStripeReaderFactory}
@@ -44,7 +53,21 @@ public class FieldStripeDecoderFactory {
      *         This cannot be <code>null</code>.
      */
     public FieldStripeDecoderFactory(final IFieldStripeReaderFactory fieldStripeReaderFactory) {
+        this(fieldStripeReaderFactory, false/*not sparse*/);
+    }
+
+    /**
+     * @param  fieldStripeReaderFactory the {@link IFieldStripeReaderFactory}
+     *         that will be used to create {@link IFieldStripeReader field-stripe readers}
+     *         for specified {@link PrimitiveType primitive-type} (leaf) {@link IField fields}
+     *         (and for the {@link StructureField structure stripes} if sparse
+     *         subtrees are enabled). This cannot be <code>null</code>.
+     * @param  sparseSubtrees <code>true</code> if and only if the field-stripes
+     *         were encoded with sparse subtrees enabled
+     */
+    public FieldStripeDecoderFactory(final IFieldStripeReaderFactory fieldStripeReaderFactory, final boolean sparseSubtrees) {
         this.fieldStripeReaderFactory = fieldStripeReaderFactory;
+        this.sparseSubtrees = sparseSubtrees;
     }
 
     // ========================================================================
@@ -119,6 +142,10 @@ public class FieldStripeDecoderFactory {
         for(final IField childField : type.getFields())
             childDecoders.add(build(childField));
 
+        if(sparseSubtrees && StructureField.isSparse(field)) {
+            final IFieldStripeReader structureReader = fieldStripeReaderFactory.createFieldStripeReader(new StructureField(field));
+            return new SparseNodeFieldStripeDecoder(childDecoders, structureReader, field);
+        } /* else -- not sparse */
         return new NodeFieldStripeDecoder(childDecoders, field);
     }
 
@@ -16,6 +16,8 @@ package net.agkn.field_stripe.decode;
  * limitations under the License. 
  */
 
+import java.nio.ByteBuffer;
+
 import net.agkn.field_stripe.exception.DeveloperException;
 import net.agkn.field_stripe.exception.OperationFailedException;
 import net.agkn.field_stripe.record.IField;
@@ -23,13 +25,15 @@ import net.agkn.field_stripe.record.IFieldType;
 import net.agkn.field_stripe.record.PrimitiveType;
 import net.agkn.field_stripe.record.writer.IRecordWriter;
 import net.agkn.field_stripe.stripe.IFieldStripeReader;
+import net.agkn.field_stripe.stripe.IRepeatedValueReader;
 import net.agkn.field_stripe.stripe.Instruction;
 
 /**
  * A leaf element corresponding to a {@link PrimitiveType primitive-typed} 
  * {@link IField field} in a tree of {@link IFieldStripeDecoder field stripe decoders}.
  * This decoder is generic in that it handles repeated, optional and required
- * parents and fields.<p/>
+ * parents and fields. If the field is repeated and the reader is an {@link IRepeatedValueReader}
+ * then the values of each occurrence are read all at once.<p/>
  *
  * @author rgrzywinski
  */
@@ -39,6 +43,9 @@ import net.agkn.field_stripe.stripe.Instruction;
 public class LeafFieldStripeDecoder extends AbstractDecoder
                                  implements IFieldStripeDecoder {
     private final IFieldStripeReader reader;
+    // the reader as an IRepeatedValueReader if the field is repeated and the
+    // reader supports it. This will be null otherwise.
+    private final IRepeatedValueReader repeatedValueReader;
 
     // ------------------------------------------------------------------------
     // local state
@@ -55,6 +62,7 @@ public class LeafFieldStripeDecoder extends AbstractDecoder
     public LeafFieldStripeDecoder(final IFieldStripeReader reader, final IField field) {
         super(field, field.getPath().getDepth());
         this.reader = reader;
+        this.repeatedValueReader = (multiValue && (reader instanceof IRepeatedValueReader)) ? (IRepeatedValueReader)reader : null/*one value at a time*/;
     }
 
     // ========================================================================
@@ -111,7 +119,13 @@ public class LeafFieldStripeDecoder extends AbstractDecoder
                         recordWriter.startArray(field);
                         arrayStarted = true/*by definition*/;
                     } /* else -- either it's not a multi-valued field or the array has already been started */
-                    writeValue(instruction, recordWriter);
+                    writeValue(instruction.value, recordWriter);
+                    if(repeatedValueReader != null) {
+                        // NOTE:  any remaining values of the occurrence are
+                        //        read at once rather than as instructions
+                        for(final Object value : repeatedValueReader.readRepeatedValues())
+                            writeValue(value, recordWriter);
+                    } /* else -- the values are read one at a time */
                     break;
 
                 case UNSET:
@@ -180,44 +194,48 @@ public class LeafFieldStripeDecoder extends AbstractDecoder
 
     // ========================================================================
     /**
-     * Extracts the value from the specified non-<code>null</code> {@link Instruction instruction}
-     * and writes it to specified non-<code>null</code> {@link IRecordWriter}. 
-     * The <var>UNSET</var> case is handled by the caller.
+     * Writes the specified non-<code>null</code> value (of an {@link Instruction instruction})
+     * to specified non-<code>null</code> {@link IRecordWriter}. The <var>UNSET</var>
+     * case is handled by the caller.
      */
-    private void writeValue(final Instruction instruction, final IRecordWriter recordWriter)
+    private void writeValue(final Object value, final IRecordWriter recordWriter)
             throws OperationFailedException {
         final IFieldType type = field.getType();
         switch((PrimitiveType)type) {
             case BYTE:
-                recordWriter.writeField(field, (Byte)instruction.value);
+                recordWriter.writeField(field, (Byte)value);
                 break;
 
             case SHORT:
-                recordWriter.writeField(field, (Short)instruction.value);
+                recordWriter.writeField(field, (Short)value);
                 break;
 
             case INT:
-                recordWriter.writeField(field, (Integer)instruction.value);
+                recordWriter.writeField(field, (Integer)value);
                 break;
 
             case LONG:
-                recordWriter.writeField(field, (Long)instruction.value);
+                recordWriter.writeField(field, (Long)value);
                 break;
 
             case FLOAT:
-                recordWriter.writeField(field, (Float)instruction.value);
+                recordWriter.writeField(field, (Float)value);
                 break;
 
             case DOUBLE:
-                recordWriter.writeField(field, (Double)instruction.value);
+                recordWriter.writeField(field, (Double)value);
                 break;
 
             case BOOLEAN:
-                recordWriter.writeField(field, (Boolean)instruction.value);
+                recordWriter.writeField(field, (Boolean)value);
                 break;
 
             case STRING:
-                recordWriter.writeField(field, (String)instruction.value);
+                recordWriter.writeField(field, (String)value);
+                break;
+
+            case BYTES:
+                recordWriter.writeField(field, (ByteBuffer)value);
                 break;
 
             default:
@@ -72,7 +72,10 @@ public class NodeFieldStripeDecoder extends AbstractDecoder
     @SuppressWarnings("null") /*'childResult'*/
     public ReadResult decode(final IRecordWriter recordWriter)
             throws OperationFailedException {
-        final int unsetParentDepth = getUnsetParentDepth();
+        int unsetParentDepth = getUnsetParentDepth();
+        // NOTE:  an unset field deeper than this node (e.g. this node's first
+        //        child is an unset optional node) says that this node is set
+        if(unsetParentDepth > fieldDepth) unsetParentDepth = 0/*set parent*/;
         if(unsetParentDepth < 0)
             return null/*no record to read*/;
         else if(unsetParentDepth == 0/*set parent*/) {
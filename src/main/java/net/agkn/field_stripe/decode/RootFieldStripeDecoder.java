@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.jfr.FlightRecorderEvents;
+import net.agkn.field_stripe.jfr.RecordEventSampler;
 import net.agkn.field_stripe.record.writer.IRecordWriter;
 
 /**
@@ -47,6 +49,9 @@ public class RootFieldStripeDecoder {
     // the first child decoder provided for convenience
     private final IFieldStripeDecoder firstChild;
 
+    // samples the JFR per-record events
+    private final RecordEventSampler eventSampler = new RecordEventSampler(FlightRecorderEvents.RECORD_DECODE);
+
     // ========================================================================
     /**
      * @param  childDecoders the list of child {@link IFieldStripeDecoder decoders}
@@ -82,18 +87,23 @@ public class RootFieldStripeDecoder {
         // NOTE:  the primary goal of this is call is to determine if there are  
         //        any records to be read
         final int unsetParentDepth = firstChild.getUnsetParentDepth();
+        // NOTE:  the root record cannot be unset so any unset parent is a field
+        //        beneath the root (e.g. the first child is an unset optional
+        //        node) which says that the record is set
         if(unsetParentDepth < 0)
             return false/*no records*/;
-        else if(unsetParentDepth != 0)/*unset parent*/
-            throw new OperationFailedException("The root record cannot be unset.");
         /* else -- there is a set parent */
 
         // NOTE:  no results are kept since by design there is no way for the
         //        root record to be null or repeated (which only leaves "read value")
+        // NOTE:  the time to read the unset parent of the first child is not
+        //        included in the event
+        final Object event = eventSampler.startRecord();
         recordWriter.startRecord();
         for(final IFieldStripeDecoder decoder : childDecoders) 
             decoder.decode(recordWriter);
         recordWriter.endRecord();
+        eventSampler.endRecord(event);
 
         return true/*a record was read*/;
     }
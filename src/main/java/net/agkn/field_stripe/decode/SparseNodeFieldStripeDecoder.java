@@ -0,0 +1,185 @@
+package net.agkn.field_stripe.decode;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.writer.IRecordWriter;
+import net.agkn.field_stripe.stripe.IFieldStripeReader;
+import net.agkn.field_stripe.stripe.Instruction;
+import net.agkn.field_stripe.stripe.StructureField;
+
+/**
+ * A sparse node {@link IFieldStripeDecoder}. In contrast to {@link NodeFieldStripeDecoder},
+ * the presence of the node is read from its {@link StructureField structure stripe}
+ * (which is read as if it were a leaf at the position of the node) and the
+ * children are only decoded for the occurrences of the node that exist.
+ *
+ * @author rgrzywinski
+ * @see net.agkn.field_stripe.encode.SparseNodeFieldStripeEncoder
+ */
+public class SparseNodeFieldStripeDecoder extends AbstractDecoder
+                                       implements IFieldStripeDecoder {
+    // the list (in the order that matches the fields for this encoder) of child
+    // decoders. This will never be null or empty.
+    private final List<IFieldStripeDecoder> childDecoders;
+
+    // the reader of the structure stripe of the node
+    private final IFieldStripeReader structureReader;
+
+    // ------------------------------------------------------------------------
+    // local state
+
+    // the look-ahead instruction. If null then either there is no data or the
+    // look-ahead hasn't been read yet (both cases mean "read the next instruction").
+    private Instruction lookAhead = null/*none to start*/;
+
+    // ========================================================================
+    /**
+     * @param  childDecoders the decoders of the children of the node. This
+     *         cannot be <code>null</code> or empty.
+     * @param  structureReader the {@link IFieldStripeReader reader} of the
+     *         {@link StructureField structure stripe} of the node. This cannot
+     *         be <code>null</code>.
+     * @param  field the node field. This cannot be <code>null</code> and must
+     *         be {@link StructureField#isSparse(IField) sparse}.
+     */
+    public SparseNodeFieldStripeDecoder(final List<IFieldStripeDecoder> childDecoders, final IFieldStripeReader structureReader, final IField field) {
+        super(field, field.getPath().getDepth());
+
+        this.childDecoders = new ArrayList<IFieldStripeDecoder>(childDecoders)/*copy for sanity*/;
+        this.structureReader = structureReader;
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.decode.IFieldStripeDecoder#getUnsetParentDepth()
+     */
+    @Override
+    public int getUnsetParentDepth()
+            throws OperationFailedException {
+        final Instruction instruction;
+        if(lookAhead == null)
+            instruction = lookAhead = structureReader.readInstruction();
+        else /*there is a look-ahead instruction, simply use it*/
+            instruction = lookAhead;
+
+        if(instruction == null) return -1/*no more data*/;
+        switch(instruction.kind) {
+            case UNSET_PARENT:
+                return instruction.parentDepth;
+
+            default:
+                // all other cases say nothing about if there's an unset parent
+                return 0/*set parent*/;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.decode.IFieldStripeDecoder#decode(net.agkn.field_stripe.record.writer.IRecordWriter)
+     */
+    @Override
+    public ReadResult decode(final IRecordWriter recordWriter)
+            throws OperationFailedException {
+        // SEE:  LeafFieldStripeDecoder#decode()
+        boolean arrayStarted = false/*set to true if IRecordWriter#startArray() was called*/;
+        int repeatedParentDepth = -1/*default to none-repeated*/;
+        int unsetParentDepth = -1/*  >0: depth of unset parent
+                                  * <=0: not an unset parent*/;
+
+        do {
+            final Instruction instruction = (lookAhead == null) ? structureReader.readInstruction() : lookAhead;
+            lookAhead = null/*clear/reset always (since either just used or already null)*/;
+            if(instruction == null) return null/*no record to read*/;
+            switch(instruction.kind) {
+                case VALUE:
+                    if(multiValue && !arrayStarted) {
+                        recordWriter.startArray(field);
+                        arrayStarted = true/*by definition*/;
+                    } /* else -- either it's not a multi-valued field or the array has already been started */
+
+                    // the occurrence exists so each child has its values
+                    recordWriter.startStructure(field);
+                    for(final IFieldStripeDecoder decoder : childDecoders) {
+                        if(decoder.decode(recordWriter) == null) throw new InvalidDataException("The children of sparse field \"" + field.getPath() + "\" have fewer values than its structure.");
+                    }
+                    recordWriter.endStructure();
+                    break;
+
+                case UNSET:
+                    // NOTE:  by definition there can be only be one unset value
+                    //        if multi-valued
+                    recordWriter.writeUnsetField(field);
+                    break;
+
+                case UNSET_PARENT:
+                    // NOTE:  can't exit early as the look-ahead for repeated
+                    //        values is still necessary
+                    unsetParentDepth = instruction.parentDepth;
+                    break;
+
+                default:
+                    throw new OperationFailedException("Unexpected field stripe decoder instruction: " + instruction);
+            }
+        } while((repeatedParentDepth = getRepeatedParentDepth()) == 0/*node is repeated*/);
+
+        if(arrayStarted) recordWriter.endArray();
+
+        return new ReadResult(unsetParentDepth, repeatedParentDepth);
+    }
+
+    /**
+     * @return <code>&gt;0</code> the depth of the repeated parent; <code>0</code>
+     *         if this node is repeated; <code>&lt;0</code> if there is no
+     *         repetition.
+     */
+    private int getRepeatedParentDepth()
+            throws OperationFailedException {
+        int repeatedParentDepth = -1/*default to none-repeated*/;
+
+        // look ahead to determine if there is a repeated occurrence
+        final Instruction instruction = structureReader.readInstruction();
+        if(instruction != null) {
+            switch(instruction.kind) {
+                case REPEATED_VALUE:
+                    repeatedParentDepth = 0/*this node*/;
+                    break;
+
+                case REPEATED_PARENT:
+                    repeatedParentDepth = instruction.parentDepth;
+                    break;
+
+                case VALUE:
+                case UNSET:
+                case UNSET_PARENT:
+                    // implies the next record (i.e. that there isn't a repeated
+                    // occurrence). Keep as a look-ahead.
+                    lookAhead = instruction;
+                    break;
+
+                default:
+                    throw new OperationFailedException("Unknown field stripe decoder instruction: " + instruction);
+            }
+        } /* else -- there are no more instructions */
+
+        return repeatedParentDepth;
+    }
+}
@@ -26,16 +26,25 @@ import net.agkn.field_stripe.record.IFieldType;
 import net.agkn.field_stripe.record.PrimitiveType;
 import net.agkn.field_stripe.stripe.IFieldStripeWriter;
 import net.agkn.field_stripe.stripe.IFieldStripeWriterFactory;
+import net.agkn.field_stripe.stripe.StructureField;
 
 /**
  * A combination factory and builder for {@link IFieldStripeEncoder field-stripe encoders}
- * from a {@link IFieldType#isComposite() composite} {@link IFieldType field type}.
+ * from a {@link IFieldType#isComposite() composite} {@link IFieldType field type}.<p/>
+ * 
+ * If sparse subtrees are enabled then each {@link StructureField#isSparse(IField) sparse}
+ * node is encoded by a {@link SparseNodeFieldStripeEncoder} (which has its own
+ * {@link StructureField structure stripe}) rather than a {@link NodeFieldStripeEncoder}.
+ * The stripes must be decoded with sparse subtrees enabled.
  *
  * @author rgrzywinski
  */
 public class FieldStripeEncoderFactory {
     private final IFieldStripeWriterFactory fieldStripeWriterFactory;
 
+    // are sparse nodes encoded with their own structure stripe?
+    private final boolean sparseSubtrees;
+
     // ========================================================================
     /**
      * @param  fieldStripeWriterFactory the {@link IFieldStripeWriterFactory}
@@ -44,7 +53,22 @@ public class FieldStripeEncoderFactory {
      *         This cannot be <code>null</code>.
      */
     public FieldStripeEncoderFactory(final IFieldStripeWriterFactory fieldStripeWriterFactory) {
+        this(fieldStripeWriterFactory, false/*not sparse*/);
+    }
+
+    /**
+     * @param  fieldStripeWriterFactory the {@link IFieldStripeWriterFactory}
+     *         that will be used to create {@link IFieldStripeWriter field-stripe writers}
+     *         for all {@link PrimitiveType primitive-type} (leaf) {@link IField fields}
+     *         (and for the {@link StructureField structure stripes} if sparse
+     *         subtrees are enabled). This cannot be <code>null</code>.
+     * @param  sparseSubtrees if <code>true</code> then each {@link StructureField#isSparse(IField) sparse}
+     *         node writes its presence to its own structure stripe rather than 
+     *         to each of its leaves.
+     */
+    public FieldStripeEncoderFactory(final IFieldStripeWriterFactory fieldStripeWriterFactory, final boolean sparseSubtrees) {
         this.fieldStripeWriterFactory = fieldStripeWriterFactory;
+        this.sparseSubtrees = sparseSubtrees;
     }
 
     // ========================================================================
@@ -118,6 +142,10 @@ public class FieldStripeEncoderFactory {
         for(final IField childField : type.getFields())
             childEncoders.add(build(childField));
 
+        if(sparseSubtrees && StructureField.isSparse(field)) {
+            final IFieldStripeWriter structureWriter = fieldStripeWriterFactory.createFieldStripeWriter(new StructureField(field));
+            return new SparseNodeFieldStripeEncoder(childEncoders, structureWriter, field);
+        } /* else -- not sparse */
         return new NodeFieldStripeEncoder(childEncoders, field);
     }
 
@@ -16,6 +16,8 @@ package net.agkn.field_stripe.encode;
  * limitations under the License. 
  */
 
+import java.nio.ByteBuffer;
+
 import net.agkn.field_stripe.exception.DeveloperException;
 import net.agkn.field_stripe.exception.OperationFailedException;
 import net.agkn.field_stripe.record.IField;
@@ -51,12 +53,13 @@ import org.apache.commons.lang.mutable.MutableBoolean;
 @NotThreadSafe
 public class LeafFieldStripeEncoder extends AbstractEncoder 
                                  implements IFieldStripeEncoder {
-    // the "is set" parameter passed to IRecordReader#readXYZField()
-    private static final MutableBoolean IS_SET = new MutableBoolean();
-
-    // ************************************************************************
     private final IFieldStripeWriter writer;
 
+    // the "is set" parameter passed to IRecordReader#readXYZField()
+    // NOTE:  this is per-encoder (rather than shared) since encoder trees may
+    //        encode concurrently (e.g. one per chunk of a record file)
+    private final MutableBoolean isSet = new MutableBoolean();
+
     // ========================================================================
     /**
      * {@inheritDoc}
@@ -111,8 +114,8 @@ public class LeafFieldStripeEncoder extends AbstractEncoder
         final IFieldType type = field.getType();
         switch((PrimitiveType)type) {
             case BYTE: {
-                final byte value = recordReader.readByteField(IS_SET);
-                if(IS_SET.isTrue()) {
+                final byte value = recordReader.readByteField(isSet);
+                if(isSet.isTrue()) {
                     writer.writeValue(value);
                     return true/*value is set*/;
                 } else {/*the value is unset*/
@@ -121,8 +124,8 @@ public class LeafFieldStripeEncoder extends AbstractEncoder
                 }
             }
             case SHORT: {
-                final short value = recordReader.readShortField(IS_SET);
-                if(IS_SET.isTrue()) {
+                final short value = recordReader.readShortField(isSet);
+                if(isSet.isTrue()) {
                     writer.writeValue(value);
                     return true/*value is set*/;
                 } else {/*the value is unset*/
@@ -131,8 +134,8 @@ public class LeafFieldStripeEncoder extends AbstractEncoder
                 }
             }
             case INT: {
-                final int value = recordReader.readIntField(IS_SET);
-                if(IS_SET.isTrue()) {
+                final int value = recordReader.readIntField(isSet);
+                if(isSet.isTrue()) {
                     writer.writeValue(value);
                     return true/*value is set*/;
                 } else {/*the value is unset*/
@@ -141,8 +144,8 @@ public class LeafFieldStripeEncoder extends AbstractEncoder
                 }
             }
             case LONG: {
-                final long value = recordReader.readLongField(IS_SET);
-                if(IS_SET.isTrue()) {
+                final long value = recordReader.readLongField(isSet);
+                if(isSet.isTrue()) {
                     writer.writeValue(value);
                     return true/*value is set*/;
                 } else {/*the value is unset*/
@@ -151,8 +154,8 @@ public class LeafFieldStripeEncoder extends AbstractEncoder
                 }
             }
             case FLOAT: {
-                final float value = recordReader.readFloatField(IS_SET);
-                if(IS_SET.isTrue()) {
+                final float value = recordReader.readFloatField(isSet);
+                if(isSet.isTrue()) {
                     writer.writeValue(value);
                     return true/*value is set*/;
                 } else {/*the value is unset*/
@@ -161,8 +164,8 @@ public class LeafFieldStripeEncoder extends AbstractEncoder
                 }
             }
             case DOUBLE: {
-                final double value = recordReader.readDoubleField(IS_SET);
-                if(IS_SET.isTrue()) {
+                final double value = recordReader.readDoubleField(isSet);
+                if(isSet.isTrue()) {
                     writer.writeValue(value);
                     return true/*value is set*/;
                 } else {/*the value is unset*/
@@ -171,8 +174,8 @@ public class LeafFieldStripeEncoder extends AbstractEncoder
                 }
             }
             case BOOLEAN: {
-                final boolean value = recordReader.readBooleanField(IS_SET);
-                if(IS_SET.isTrue()) {
+                final boolean value = recordReader.readBooleanField(isSet);
+                if(isSet.isTrue()) {
                     writer.writeValue(value);
                     return true/*value is set*/;
                 } else {/*the value is unset*/
@@ -181,8 +184,18 @@ public class LeafFieldStripeEncoder extends AbstractEncoder
                 }
             }
             case STRING: {
-                final String value = recordReader.readStringField(IS_SET);
-                if(IS_SET.isTrue()) {
+                final String value = recordReader.readStringField(isSet);
+                if(isSet.isTrue()) {
+                    writer.writeValue(value);
+                    return true/*value is set*/;
+                } else {/*the value is unset*/
+                    writer.writeUnset();
+                    return false/*value is unset*/;
+                }
+            }
+            case BYTES: {
+                final ByteBuffer value = recordReader.readBytesField(isSet);
+                if(isSet.isTrue()) {
                     writer.writeValue(value);
                     return true/*value is set*/;
                 } else {/*the value is unset*/
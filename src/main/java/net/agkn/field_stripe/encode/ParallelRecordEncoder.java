@@ -0,0 +1,231 @@
+package net.agkn.field_stripe.encode;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.reader.FileChunk;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.IRecordReaderFactory;
+import net.agkn.field_stripe.record.reader.MappedFileChunker;
+import net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter;
+import net.agkn.field_stripe.stripe.ChunkSetManifest;
+import net.agkn.field_stripe.stripe.IFieldStripeWriterFactory;
+import net.agkn.field_stripe.stripe.IStripeSetWriterFactory;
+import net.agkn.field_stripe.stripe.StripeSetManifest;
+
+/**
+ * Encodes the {@link FileChunk chunks} of a record file concurrently. Each
+ * chunk is read by its own {@link IRecordReader} (created by the specified
+ * {@link IRecordReaderFactory}) and is encoded by its own encoder tree into
+ * its own stripe set (with its own {@link StripeSetManifest manifest}) within
+ * a sub-directory of the output path named by {@link #getChunkDirectoryName(int)}.
+ * The writers of each stripe set are created by the specified {@link IStripeSetWriterFactory}
+ * so that the stripes of each chunk are written with the same options. Since
+ * the chunks are in file order, reading the chunk directories in name order
+ * yields the records in file order. Once all of the chunks are encoded a
+ * {@link ChunkSetManifest} that lists them is written in the output path so
+ * that the chunks can be decoded as one data set.
+ *
+ * @author rgrzywinski
+ * @see MappedFileChunker
+ */
+public class ParallelRecordEncoder {
+    private final ICompositeType schema;
+    private final IRecordReaderFactory recordReaderFactory;
+    private final Charset charset;
+    private final IStripeSetWriterFactory stripeSetWriterFactory;
+    private final boolean sparseSubtrees;
+    private final ExecutorService executor;
+
+    // the default writers of each chunk
+    private static final IStripeSetWriterFactory BINARY_VLEN_WRITER_FACTORY = new IStripeSetWriterFactory() {
+        @Override
+        public IFieldStripeWriterFactory createWriterFactory(final File fsPath)
+                throws OperationFailedException {
+            return BinaryVLenFieldStripeWriter.createFactory(fsPath);
+        }
+    };
+
+    // ========================================================================
+    /**
+     * Each chunk is encoded into (densely encoded) {@link BinaryVLenFieldStripeWriter binary field-stripes}
+     * with the default options.
+     *
+     * @param  schema the schema of the records that are encoded. This cannot
+     *         be <code>null</code>.
+     * @param  recordReaderFactory the factory for the record reader of each
+     *         chunk. This cannot be <code>null</code>.
+     * @param  charset the <code>Charset</code> of the chunked file. This cannot
+     *         be <code>null</code>.
+     * @param  executor the <code>ExecutorService</code> on which each chunk is
+     *         encoded. This cannot be <code>null</code>. The executor is not
+     *         shut down by this encoder.
+     * @see #ParallelRecordEncoder(ICompositeType, IRecordReaderFactory, Charset, IStripeSetWriterFactory, boolean, ExecutorService)
+     */
+    public ParallelRecordEncoder(final ICompositeType schema, final IRecordReaderFactory recordReaderFactory, final Charset charset, final ExecutorService executor) {
+        this(schema, recordReaderFactory, charset, BINARY_VLEN_WRITER_FACTORY, false/*dense*/, executor);
+    }
+
+    /**
+     * @param  schema the schema of the records that are encoded. This cannot
+     *         be <code>null</code>.
+     * @param  recordReaderFactory the factory for the record reader of each
+     *         chunk. This cannot be <code>null</code>.
+     * @param  charset the <code>Charset</code> of the chunked file. This cannot
+     *         be <code>null</code>.
+     * @param  stripeSetWriterFactory the factory for the writers of the stripe
+     *         set of each chunk. This cannot be <code>null</code>.
+     * @param  sparseSubtrees <code>true</code> if the chunks are encoded with
+     *         sparse subtrees (see {@link FieldStripeEncoderFactory#FieldStripeEncoderFactory(IFieldStripeWriterFactory, boolean)}).
+     * @param  executor the <code>ExecutorService</code> on which each chunk is
+     *         encoded. This cannot be <code>null</code>. The executor is not
+     *         shut down by this encoder.
+     */
+    public ParallelRecordEncoder(final ICompositeType schema, final IRecordReaderFactory recordReaderFactory, final Charset charset, final IStripeSetWriterFactory stripeSetWriterFactory, final boolean sparseSubtrees, final ExecutorService executor) {
+        this.schema = schema;
+        this.recordReaderFactory = recordReaderFactory;
+        this.charset = charset;
+        this.stripeSetWriterFactory = stripeSetWriterFactory;
+        this.sparseSubtrees = sparseSubtrees;
+        this.executor = executor;
+    }
+
+    // ========================================================================
+    /**
+     * Encodes each of the specified chunks into its own directory within the
+     * specified output path, waits for all chunks to complete and then writes
+     * the {@link ChunkSetManifest} of the chunks.
+     *
+     * @param  chunks the chunks to be encoded. This cannot be <code>null</code>
+     *         but may be empty.
+     * @param  outputPath the base path to the encoded field-stripes. This must
+     *         exist and be a directory.
+     * @return the total number of records encoded across all chunks
+     * @throws OperationFailedException if any chunk could not be encoded. The
+     *         failure of the first chunk (in file order) that failed is
+     *         reported. All chunks are waited upon before this is thrown.
+     */
+    public long encode(final List<FileChunk> chunks, final File outputPath)
+            throws OperationFailedException {
+        if(!outputPath.isDirectory()) throw new OperationFailedException("The path does not exist or is file: " + outputPath);
+
+        final List<Future<Long>> results = new ArrayList<Future<Long>>(chunks.size());
+        for(final FileChunk chunk : chunks) {
+            final File chunkPath = new File(outputPath, getChunkDirectoryName(chunk.getIndex()));
+            results.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws OperationFailedException {
+                    return encode(chunk, chunkPath);
+                }
+            }));
+        }
+
+        // wait for all chunks so that no chunk is still writing when this returns
+        long recordCount = 0L;
+        OperationFailedException failure = null/*none to start*/;
+        for(int i=0; i<results.size(); i++) {
+            try {
+                recordCount += results.get(i).get();
+            } catch(final InterruptedException ie) {
+                Thread.currentThread().interrupt()/*preserve the interrupt*/;
+                if(failure == null) failure = new OperationFailedException("Interrupted while encoding " + chunks.get(i), ie);
+            } catch(final ExecutionException ee) {
+                if(failure != null) continue/*only the first is reported*/;
+                final Throwable cause = ee.getCause();
+                if(cause instanceof OperationFailedException)
+                    failure = (OperationFailedException)cause;
+                else
+                    failure = new OperationFailedException("Could not encode " + chunks.get(i), cause);
+            }
+        }
+        if(failure != null) throw failure;
+
+        final List<String> locations = new ArrayList<String>(chunks.size());
+        for(final FileChunk chunk : chunks)
+            locations.add(getChunkDirectoryName(chunk.getIndex()));
+        ChunkSetManifest.create(outputPath, schema, sparseSubtrees, locations).write(outputPath);
+        return recordCount;
+    }
+
+    /**
+     * Encodes a single chunk into the specified path (which is created if it
+     * does not exist).
+     *
+     * @return the number of records encoded
+     */
+    private long encode(final FileChunk chunk, final File chunkPath)
+            throws OperationFailedException {
+        if(!chunkPath.isDirectory() && !chunkPath.mkdir()) throw new OperationFailedException("Could not create the chunk path: " + chunkPath);
+
+        // NOTE:  each chunk has its own writers, encoder tree and reader as
+        //        none of them are thread-safe
+        final IFieldStripeWriterFactory fieldStripeWriterFactory = stripeSetWriterFactory.createWriterFactory(chunkPath);
+        Reader reader = null/*none to start*/;
+        long recordCount = 0L;
+        boolean encoded = false/*until all records of the chunk are encoded*/;
+        try {
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(fieldStripeWriterFactory, sparseSubtrees).createEncoderTree(schema);
+            reader = chunk.openReader(charset);
+            final IRecordReader recordReader = recordReaderFactory.createRecordReader(reader);
+
+            while(rootEncoder.encode(recordReader))
+                recordCount++;
+            encoded = true;
+        } finally {
+            try {
+                if(reader != null) reader.close();
+            } catch(final IOException ioe) {
+                /* ignore -- the chunk has already been read */
+            }
+            // NOTE:  a failure to close the writers must not replace the
+            //        failure of the encode (which is the one reported)
+            try {
+                fieldStripeWriterFactory.closeAllWriters();
+            } catch(final OperationFailedException ofe) {
+                if(encoded) throw ofe;
+                /* else -- the failure of the encode is thrown */
+            }
+        }
+
+        // each chunk is its own (self-describing) stripe set
+        StripeSetManifest.create(chunkPath, schema, recordCount, sparseSubtrees).write(chunkPath);
+        return recordCount;
+    }
+
+    // ========================================================================
+    /**
+     * @param  chunkIndex the zero-based index of the chunk
+     * @return the name of the directory (within the output path) into which the
+     *         chunk with the specified index is encoded. Names sort in chunk
+     *         order (the index is padded to the ten digits of any <code>int</code>).
+     */
+    public static String getChunkDirectoryName(final int chunkIndex) {
+        return String.format("chunk-%010d", chunkIndex);
+    }
+}
@@ -19,6 +19,8 @@ package net.agkn.field_stripe.encode;
 import java.util.List;
 
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.jfr.FlightRecorderEvents;
+import net.agkn.field_stripe.jfr.RecordEventSampler;
 import net.agkn.field_stripe.record.reader.IRecordReader;
 
 /**
@@ -38,6 +40,9 @@ public class RootFieldStripeEncoder {
     // encoders. This will never be null or empty.
     private final List<IFieldStripeEncoder> childEncoders;
 
+    // samples the JFR per-record events
+    private final RecordEventSampler eventSampler = new RecordEventSampler(FlightRecorderEvents.RECORD_ENCODE);
+
     // ========================================================================
     /**
      * @param  childEncoders the children {@link IFieldStripeEncoder} for this
@@ -69,12 +74,14 @@ public class RootFieldStripeEncoder {
             throws OperationFailedException {
         if(!recordReader.hasMoreRecords()) return false/*no record to encode*/;
 
+        final Object event = eventSampler.startRecord();
         recordReader.startRecord();
 
         for(final IFieldStripeEncoder encoder : childEncoders)
             encoder.encode(recordReader);
 
         recordReader.endRecord();
+        eventSampler.endRecord(event);
 
         return true/*a record was encoded*/;
     }
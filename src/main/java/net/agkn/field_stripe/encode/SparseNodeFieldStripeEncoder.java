@@ -0,0 +1,149 @@
+package net.agkn.field_stripe.encode;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.stripe.IFieldStripeWriter;
+import net.agkn.field_stripe.stripe.StructureField;
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A field-stripe encoder for a sparse node field -- an optional or repeated
+ * field whose {@link IField#getType() type} is {@link ICompositeType}. In
+ * contrast to {@link NodeFieldStripeEncoder}, the presence of the node is
+ * written once to its {@link StructureField structure stripe} rather than
+ * to every leaf beneath it. The children are only encoded for the occurrences
+ * of the node that exist. The structure stripe is written as if it were a
+ * leaf at the position of the node:
+ * <ul>
+ *   <li><var>value</var>: an occurrence of the node exists (and its children
+ *       follow in their own stripes);</li>
+ *   <li><var>UNSET</var>: the node is unset (or has no elements if repeated);</li>
+ *   <li><var>repeated-value</var>: precedes each <i>repeated</i> occurrence;</li>
+ *   <li><var>parent-is-UNSET #</var> and <var>repeated-parent #</var>: as
+ *       propagated from the parents of the node. These are not propagated to
+ *       the children.</li>
+ * </ul>
+ *
+ * @author rgrzywinski
+ * @see FieldStripeEncoderFactory#FieldStripeEncoderFactory(net.agkn.field_stripe.stripe.IFieldStripeWriterFactory, boolean)
+ */
+@NotThreadSafe
+public class SparseNodeFieldStripeEncoder extends AbstractEncoder
+                                       implements IFieldStripeEncoder {
+    // the list (in the order that matches the fields for this encoder) of child
+    // encoders. This will never be null or empty.
+    private final List<IFieldStripeEncoder> childEncoders;
+
+    // the writer of the structure stripe of the node
+    private final IFieldStripeWriter structureWriter;
+
+    // ========================================================================
+    /**
+     * @param  childEncoders the encoders of the children of the node. This
+     *         cannot be <code>null</code> or empty.
+     * @param  structureWriter the {@link IFieldStripeWriter writer} of the
+     *         {@link StructureField structure stripe} of the node. This cannot
+     *         be <code>null</code>.
+     * @param  field the node field. This cannot be <code>null</code> and must
+     *         be {@link StructureField#isSparse(IField) sparse}.
+     */
+    public SparseNodeFieldStripeEncoder(final List<IFieldStripeEncoder> childEncoders, final IFieldStripeWriter structureWriter, final IField field) {
+        super(field, field.getPath().getDepth());
+        this.childEncoders = childEncoders;
+        this.structureWriter = structureWriter;
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.encode.IFieldStripeEncoder#encode(net.agkn.field_stripe.record.reader.IRecordReader)
+     */
+    @Override
+    public void encode(final IRecordReader recordReader)
+            throws OperationFailedException {
+        if(multiValue) {
+            // SEE:  NodeFieldStripeEncoder#encode() and LeafFieldStripeEncoder#encode()
+            final boolean hasArray = recordReader.startArray();
+            if(!hasArray || !recordReader.hasMoreElements())
+                structureWriter.writeUnset()/*explicit 'unset' if there are no values*/;
+            else {/*there is at least one value*/
+                // NOTE:  by contract 'null' values are not allowed within a
+                //        repeated field. An error is thrown if they're encountered.
+                if(!writeChildren(recordReader)) throw new OperationFailedException("Repeated nested field \"" + field.getName() + "\" has an unset value in its collection.");
+                while(recordReader.hasMoreElements()) {
+                    structureWriter.writeRepeated();
+                    if(!writeChildren(recordReader)) throw new OperationFailedException("Repeated nested field \"" + field.getName() + "\" has an unset value in its collection.");
+                }
+            }
+            recordReader.endArray()/*by contract*/;
+        } else {/*single-valued*/
+            writeChildren(recordReader);
+        }
+    }
+
+    /**
+     * Writes the presence of the structure followed by its children and returns
+     * <code>true</code> if a structure was written. An unset value is written
+     * only to the structure stripe and <code>false</code> is returned.
+     */
+    private boolean writeChildren(final IRecordReader recordReader)
+            throws OperationFailedException {
+        final boolean hasStructure = recordReader.startStructure();
+        if(hasStructure) {
+            structureWriter.writeValue(true/*present*/);
+
+            // allow each child to write out its own value(s)
+            for(final IFieldStripeEncoder childEncoder : childEncoders)
+                childEncoder.encode(recordReader);
+
+            recordReader.endStructure()/*by contract*/;
+
+            return true/*value is set*/;
+        } else {/*the structure is unset (i.e. it doesn't exist)*/
+            structureWriter.writeUnset();
+            return false/*value is unset*/;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}<p/>
+     *
+     * The unset parent is only written to the structure stripe.
+     */
+    @Override
+    public void writeUnsetParent(final int fieldDepth)
+            throws OperationFailedException {
+        structureWriter.writeUnsetParent(fieldDepth);
+    }
+
+    /**
+     * {@inheritDoc}<p/>
+     *
+     * The repeated parent is only written to the structure stripe.
+     */
+    @Override
+    public void writeRepeatedParent(final int fieldDepth)
+            throws OperationFailedException {
+        structureWriter.writeRepeatedParent(fieldDepth);
+    }
+}
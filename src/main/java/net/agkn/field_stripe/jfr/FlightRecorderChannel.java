@@ -0,0 +1,107 @@
+package net.agkn.field_stripe.jfr;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A {@link WritableByteChannel} that records a {@link FlightRecorderEvents#BLOCK_FLUSH}
+ * event for each block written to the underlying channel. The stripe writers
+ * buffer their output so each block is a (full) buffer (along with a large
+ * value in the case of a gathering write).
+ *
+ * @author rgrzywinski
+ * @see FlightRecorderEvents#instrument(WritableByteChannel, net.agkn.field_stripe.record.IField)
+ */
+@NotThreadSafe
+/*package*/ class FlightRecorderChannel implements GatheringByteChannel {
+    private final WritableByteChannel channel;
+    private final String path;
+
+    // ========================================================================
+    /**
+     * @param  channel the underlying channel. This cannot be <code>null</code>.
+     * @param  path the dot-separated path of the field of the stripe. This
+     *         cannot be <code>null</code>.
+     */
+    public FlightRecorderChannel(final WritableByteChannel channel, final String path) {
+        this.channel = channel;
+        this.path = path;
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see java.nio.channels.WritableByteChannel#write(java.nio.ByteBuffer)
+     */
+    @Override
+    public int write(final ByteBuffer source)
+            throws IOException {
+        final Object event = FlightRecorderEvents.BLOCK_FLUSH.begin();
+        final int length = channel.write(source);
+        FlightRecorderEvents.BLOCK_FLUSH.commit(event, path, (long)length);
+        return length;
+    }
+
+    /* (non-Javadoc)
+     * @see java.nio.channels.GatheringByteChannel#write(java.nio.ByteBuffer[])
+     */
+    @Override
+    public long write(final ByteBuffer[] sources)
+            throws IOException {
+        return write(sources, 0, sources.length);
+    }
+
+    /* (non-Javadoc)
+     * @see java.nio.channels.GatheringByteChannel#write(java.nio.ByteBuffer[], int, int)
+     */
+    @Override
+    public long write(final ByteBuffer[] sources, final int offset, final int length)
+            throws IOException {
+        final Object event = FlightRecorderEvents.BLOCK_FLUSH.begin();
+        long byteCount = 0L;
+        if(channel instanceof GatheringByteChannel)
+            byteCount = ((GatheringByteChannel)channel).write(sources, offset, length);
+        else {/*not gathering*/
+            for(int i=offset; i<(offset + length); i++)
+                while(sources[i].hasRemaining())
+                    byteCount += channel.write(sources[i]);
+        }
+        FlightRecorderEvents.BLOCK_FLUSH.commit(event, path, byteCount);
+        return byteCount;
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see java.nio.channels.Channel#isOpen()
+     */
+    @Override
+    public boolean isOpen() { return channel.isOpen(); }
+
+    /* (non-Javadoc)
+     * @see java.nio.channels.Channel#close()
+     */
+    @Override
+    public void close()
+            throws IOException {
+        channel.close();
+    }
+}
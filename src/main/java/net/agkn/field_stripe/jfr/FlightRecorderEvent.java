@@ -0,0 +1,245 @@
+package net.agkn.field_stripe.jfr;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A Java Flight Recorder (JFR) event type. Since this code must run on JVMs
+ * that do not have JFR (which was added to OpenJDK in Java 11), the event type
+ * is created dynamically (with <code>jdk.jfr.EventFactory</code>) and used
+ * reflectively. If JFR is not available then the event type is never
+ * {@link #isEnabled() enabled} and all methods have no effect.<p/>
+ *
+ * Each event records its duration (from {@link #begin()} to {@link #commit(Object, Object...)})
+ * and the values of the fields specified on construction. Events are only
+ * created while a recording that enables the event type is running:<p/>
+ * <pre>
+ *   final Object event = EVENT_TYPE.begin();
+ *   ...
+ *   if(event != null) EVENT_TYPE.commit(event, value0, value1);
+ * </pre>
+ *
+ * @author rgrzywinski
+ * @see FlightRecorderEvents
+ */
+@ThreadSafe
+public class FlightRecorderEvent {
+    private static final Logger LOGGER = Logger.getLogger(FlightRecorderEvent.class);
+
+    // the reflected JFR API (all null if JFR is not available)
+    private static final Constructor<?> ANNOTATION_ELEMENT;/*(Class, Object)*/
+    private static final Constructor<?> VALUE_DESCRIPTOR;/*(Class, String, List)*/
+    private static final Method CREATE;/*EventFactory.create(List, List)*/
+    private static final Method NEW_EVENT;/*EventFactory#newEvent()*/
+    private static final Method GET_EVENT_TYPE;/*EventFactory#getEventType()*/
+    private static final Method IS_ENABLED;/*EventType#isEnabled()*/
+    private static final Method BEGIN;/*Event#begin()*/
+    private static final Method END;/*Event#end()*/
+    private static final Method SET;/*Event#set(int, Object)*/
+    private static final Method COMMIT;/*Event#commit()*/
+    private static final Class<?> NAME, LABEL, DESCRIPTION, CATEGORY, DATA_AMOUNT;
+    static {
+        Constructor<?> annotationElement = null, valueDescriptor = null;
+        Method create = null, newEvent = null, getEventType = null, isEnabled = null, begin = null, end = null, set = null, commit = null;
+        Class<?> name = null, label = null, description = null, category = null, dataAmount = null;
+        try {
+            final Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+            final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            annotationElement = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+            valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+            create = eventFactoryClass.getMethod("create", List.class, List.class);
+            newEvent = eventFactoryClass.getMethod("newEvent");
+            getEventType = eventFactoryClass.getMethod("getEventType");
+            isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+            begin = eventClass.getMethod("begin");
+            end = eventClass.getMethod("end");
+            set = eventClass.getMethod("set", int.class, Object.class);
+            commit = eventClass.getMethod("commit");
+            name = Class.forName("jdk.jfr.Name");
+            label = Class.forName("jdk.jfr.Label");
+            description = Class.forName("jdk.jfr.Description");
+            category = Class.forName("jdk.jfr.Category");
+            dataAmount = Class.forName("jdk.jfr.DataAmount");
+        } catch(final Exception e) {
+            // NOTE:  JFR isn't available (or isn't accessible) so all events
+            //        are disabled
+            create = null/*by definition*/;
+        }
+        ANNOTATION_ELEMENT = annotationElement;
+        VALUE_DESCRIPTOR = valueDescriptor;
+        CREATE = create;
+        NEW_EVENT = newEvent;
+        GET_EVENT_TYPE = getEventType;
+        IS_ENABLED = isEnabled;
+        BEGIN = begin;
+        END = end;
+        SET = set;
+        COMMIT = commit;
+        NAME = name;
+        LABEL = label;
+        DESCRIPTION = description;
+        CATEGORY = category;
+        DATA_AMOUNT = dataAmount;
+    }
+
+    /**
+     * @return <code>true</code> if and only if JFR is available in this JVM
+     */
+    public static boolean isAvailable() { return (CREATE != null); }
+
+    // ************************************************************************
+    /**
+     * The definition of a field of an event.
+     */
+    public static class Field {
+        /*package*/ final Class<?> type;
+        /*package*/ final String name;
+        /*package*/ final String label;
+        /*package*/ final boolean isBytes;
+
+        /**
+         * @param  type the type of the field. This must be a primitive type or
+         *         <code>String</code>.
+         * @param  name the (Java identifier) name of the field
+         * @param  label the human-readable label of the field
+         * @param  isBytes <code>true</code> if the field is an amount of bytes
+         */
+        public Field(final Class<?> type, final String name, final String label, final boolean isBytes) {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+            this.isBytes = isBytes;
+        }
+    }
+
+    // ************************************************************************
+    private final String name;
+
+    // the dynamically created event factory (null if JFR is not available or
+    // the event type could not be created)
+    private final Object eventFactory;
+    private final Object eventType;
+
+    // ========================================================================
+    /**
+     * @param  name the fully-qualified name of the event type. This cannot be
+     *         <code>null</code>.
+     * @param  label the human-readable label of the event type. This cannot
+     *         be <code>null</code>.
+     * @param  description the description of the event type. This cannot be
+     *         <code>null</code>.
+     * @param  fields the fields of the event type. This cannot be <code>null</code>
+     *         but may be empty.
+     */
+    public FlightRecorderEvent(final String name, final String label, final String description, final Field... fields) {
+        this.name = name;
+
+        Object eventFactory = null, eventType = null;
+        if(isAvailable()) {
+            try {
+                final List<Object> annotations = new ArrayList<Object>();
+                annotations.add(ANNOTATION_ELEMENT.newInstance(NAME, name));
+                annotations.add(ANNOTATION_ELEMENT.newInstance(LABEL, label));
+                annotations.add(ANNOTATION_ELEMENT.newInstance(DESCRIPTION, description));
+                annotations.add(ANNOTATION_ELEMENT.newInstance(CATEGORY, new String[] { "Field Stripe" }));
+
+                final List<Object> valueDescriptors = new ArrayList<Object>();
+                for(final Field field : fields) {
+                    final List<Object> fieldAnnotations = new ArrayList<Object>();
+                    fieldAnnotations.add(ANNOTATION_ELEMENT.newInstance(LABEL, field.label));
+                    if(field.isBytes) fieldAnnotations.add(ANNOTATION_ELEMENT.newInstance(DATA_AMOUNT, "BYTES"));
+                    valueDescriptors.add(VALUE_DESCRIPTOR.newInstance(field.type, field.name, fieldAnnotations));
+                }
+
+                eventFactory = CREATE.invoke(null, annotations, valueDescriptors);
+                eventType = GET_EVENT_TYPE.invoke(eventFactory);
+            } catch(final Exception e) {
+                LOGGER.warn("Could not create the JFR event type \"" + name + "\". The events will not be recorded.", e);
+                eventFactory = null/*disabled*/;
+            }
+        } /* else -- JFR is not available */
+        this.eventFactory = eventFactory;
+        this.eventType = eventType;
+    }
+
+    // ========================================================================
+    /**
+     * @return the fully-qualified name of the event type
+     */
+    public String getName() { return name; }
+
+    /**
+     * @return <code>true</code> if and only if a running recording enables
+     *         this event type
+     */
+    public boolean isEnabled() {
+        if(eventFactory == null) return false/*JFR not available*/;
+        try {
+            return (Boolean)IS_ENABLED.invoke(eventType);
+        } catch(final Exception e) {
+            return false/*treat as disabled*/;
+        }
+    }
+
+    /**
+     * Begins timing an event if this event type is {@link #isEnabled() enabled}.
+     *
+     * @return the event that must be passed to {@link #commit(Object, Object...)}
+     *         or <code>null</code> if this event type is not enabled (in which
+     *         case there is nothing to commit)
+     */
+    public Object begin() {
+        if(!isEnabled()) return null/*nothing to record*/;
+        try {
+            final Object event = NEW_EVENT.invoke(eventFactory);
+            BEGIN.invoke(event);
+            return event;
+        } catch(final Exception e) {
+            return null/*treat as disabled*/;
+        }
+    }
+
+    /**
+     * Ends timing and commits the specified event with the specified field
+     * values.
+     *
+     * @param  event the event returned from {@link #begin()}. If <code>null</code>
+     *         then this has no effect.
+     * @param  values the values of the fields in the order that they were
+     *         specified on construction
+     */
+    public void commit(final Object event, final Object... values) {
+        if(event == null) return/*not enabled when begun*/;
+        try {
+            END.invoke(event);
+            for(int i=0; i<values.length; i++)
+                SET.invoke(event, i, values[i]);
+            COMMIT.invoke(event);
+        } catch(final Exception e) {
+            // NOTE:  a failed event is simply dropped
+            LOGGER.debug("Could not commit JFR event \"" + name + "\".", e);
+        }
+    }
+}
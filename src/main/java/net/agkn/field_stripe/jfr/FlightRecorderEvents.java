@@ -0,0 +1,135 @@
+package net.agkn.field_stripe.jfr;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+
+import net.agkn.field_stripe.jfr.FlightRecorderEvent.Field;
+import net.agkn.field_stripe.record.IField;
+
+/**
+ * The Java Flight Recorder (JFR) {@link FlightRecorderEvent event types} of
+ * field-stripe encoding and decoding. All event types are in the "Field Stripe"
+ * category and are disabled by default (as are all JFR events) until enabled
+ * by a recording's settings (e.g. <code>jdk.jfr</code> settings file or
+ * <code>jcmd &lt;pid&gt; JFR.start settings=...</code>).<p/>
+ *
+ * The per-record events are sampled: only one in every {@link #RECORD_SAMPLE_INTERVAL}
+ * records is recorded (see {@link RecordEventSampler}). The interval is set
+ * with the {@value #RECORD_SAMPLE_INTERVAL_PROPERTY} system property.
+ *
+ * @author rgrzywinski
+ */
+public class FlightRecorderEvents {
+    // operations of the stripe events
+    public static final String WRITE = "write";
+    public static final String READ = "read";
+
+    // the system property that specifies the record sample interval
+    public static final String RECORD_SAMPLE_INTERVAL_PROPERTY = "net.agkn.field_stripe.jfr.recordSampleInterval";
+    public static final int DEFAULT_RECORD_SAMPLE_INTERVAL = 1024;
+
+    /**
+     * One in every this many records has a {@link #RECORD_ENCODE} or
+     * {@link #RECORD_DECODE} event. This is always at least one.
+     */
+    public static final int RECORD_SAMPLE_INTERVAL = Math.max(1, Integer.getInteger(RECORD_SAMPLE_INTERVAL_PROPERTY, DEFAULT_RECORD_SAMPLE_INTERVAL));
+
+    // ------------------------------------------------------------------------
+    // fields common to many events
+    private static final Field PATH = new Field(String.class, "path", "Path", false/*not bytes*/);
+    private static final Field OPERATION = new Field(String.class, "operation", "Operation", false/*not bytes*/);
+    private static final Field BYTES = new Field(long.class, "bytes", "Bytes", true/*bytes*/);
+    private static final Field RECORD_INDEX = new Field(long.class, "recordIndex", "Record Index", false/*not bytes*/);
+    private static final Field SAMPLE_INTERVAL = new Field(int.class, "sampleInterval", "Sample Interval", false/*not bytes*/);
+
+    // ........................................................................
+    /**
+     * A stripe was opened for writing or reading. The duration is the time
+     * taken to write or read the stripe header. The values are: path, operation.
+     */
+    public static final FlightRecorderEvent STRIPE_OPEN =
+        new FlightRecorderEvent("net.agkn.field_stripe.StripeOpen", "Stripe Open", "A field stripe was opened and its header written or read.", PATH, OPERATION);
+
+    /**
+     * A stripe was closed (written) or was read to its end. The duration is
+     * the time taken to flush and close the stripe. The values are: path,
+     * operation, bytes (the total number of bytes in the stripe).
+     */
+    public static final FlightRecorderEvent STRIPE_CLOSE =
+        new FlightRecorderEvent("net.agkn.field_stripe.StripeClose", "Stripe Close", "A field stripe was closed or read to its end.", PATH, OPERATION, BYTES);
+
+    /**
+     * A buffered block of a stripe was written to the underlying stream. The
+     * values are: path, bytes.
+     */
+    public static final FlightRecorderEvent BLOCK_FLUSH =
+        new FlightRecorderEvent("net.agkn.field_stripe.BlockFlush", "Stripe Block Flush", "A buffered block of a field stripe was written to the underlying stream.", PATH, BYTES);
+
+    /**
+     * A block of a stripe was read from the underlying stream into the buffer.
+     * The values are: path, bytes.
+     */
+    public static final FlightRecorderEvent BLOCK_FILL =
+        new FlightRecorderEvent("net.agkn.field_stripe.BlockFill", "Stripe Block Fill", "A block of a field stripe was read from the underlying stream into the buffer.", PATH, BYTES);
+
+    /**
+     * A (sampled) record was encoded into field stripes. The values are:
+     * record index, sample interval.
+     */
+    public static final FlightRecorderEvent RECORD_ENCODE =
+        new FlightRecorderEvent("net.agkn.field_stripe.RecordEncode", "Record Encode", "A record was read and encoded into field stripes (sampled).", RECORD_INDEX, SAMPLE_INTERVAL);
+
+    /**
+     * A (sampled) record was decoded (assembled) from field stripes. The values
+     * are: record index, sample interval.
+     */
+    public static final FlightRecorderEvent RECORD_DECODE =
+        new FlightRecorderEvent("net.agkn.field_stripe.RecordDecode", "Record Decode", "A record was decoded from field stripes and written (sampled).", RECORD_INDEX, SAMPLE_INTERVAL);
+
+    // ========================================================================
+    /**
+     * @param  channel the underlying channel of the stripe of the specified
+     *         field. This cannot be <code>null</code>.
+     * @param  field the {@link IField field} of the stripe. This cannot be
+     *         <code>null</code>.
+     * @return a channel that records a {@link #BLOCK_FLUSH} event for each block
+     *         written to the specified channel or the specified channel itself
+     *         if JFR is not {@link FlightRecorderEvent#isAvailable() available}.
+     *         This will never be <code>null</code>.
+     */
+    public static WritableByteChannel instrument(final WritableByteChannel channel, final IField field) {
+        if(!FlightRecorderEvent.isAvailable()) return channel/*nothing to record*/;
+        return new FlightRecorderChannel(channel, field.getPath().toString());
+    }
+
+    /**
+     * @param  inputStream the underlying stream of the stripe of the specified
+     *         field. This cannot be <code>null</code>.
+     * @param  field the {@link IField field} of the stripe. This cannot be
+     *         <code>null</code>.
+     * @return a stream that records a {@link #BLOCK_FILL} event for each block
+     *         read from the specified stream or the specified stream itself
+     *         if JFR is not {@link FlightRecorderEvent#isAvailable() available}.
+     *         This will never be <code>null</code>.
+     */
+    public static InputStream instrument(final InputStream inputStream, final IField field) {
+        if(!FlightRecorderEvent.isAvailable()) return inputStream/*nothing to record*/;
+        return new FlightRecorderInputStream(inputStream, field.getPath().toString());
+    }
+}
@@ -0,0 +1,61 @@
+package net.agkn.field_stripe.jfr;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * An {@link InputStream} that records a {@link FlightRecorderEvents#BLOCK_FILL}
+ * event for each block read from the underlying stream. The stripe readers
+ * buffer their input so each block is a (full, if available) buffer.
+ *
+ * @author rgrzywinski
+ * @see FlightRecorderEvents#instrument(InputStream, net.agkn.field_stripe.record.IField)
+ */
+@NotThreadSafe
+/*package*/ class FlightRecorderInputStream extends FilterInputStream {
+    private final String path;
+
+    // ========================================================================
+    /**
+     * @param  inputStream the underlying stream. This cannot be <code>null</code>.
+     * @param  path the dot-separated path of the field of the stripe. This
+     *         cannot be <code>null</code>.
+     */
+    public FlightRecorderInputStream(final InputStream inputStream, final String path) {
+        super(inputStream);
+        this.path = path;
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see java.io.FilterInputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length)
+            throws IOException {
+        final Object event = FlightRecorderEvents.BLOCK_FILL.begin();
+        final int count = in.read(bytes, offset, length);
+        if(count > 0) FlightRecorderEvents.BLOCK_FILL.commit(event, path, (long)count);
+        /* else -- end-of-stream so there was no block */
+        return count;
+    }
+}
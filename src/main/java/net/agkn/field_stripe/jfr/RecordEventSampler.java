@@ -0,0 +1,84 @@
+package net.agkn.field_stripe.jfr;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Samples the per-record {@link FlightRecorderEvent events} (e.g. {@link FlightRecorderEvents#RECORD_ENCODE})
+ * so that only one in every {@link FlightRecorderEvents#RECORD_SAMPLE_INTERVAL}
+ * records is recorded. Records that are not sampled cost a decrement and a
+ * comparison. The sampled events carry the index of the record (from zero)
+ * and the sample interval.
+ *
+ * @author rgrzywinski
+ */
+@NotThreadSafe
+public class RecordEventSampler {
+    private final FlightRecorderEvent eventType;
+    private final int sampleInterval;
+
+    // the index of the next record
+    private long recordIndex = 0L;
+    // the number of records until the next sample. The first record is sampled.
+    private int recordsUntilSample = 1;
+
+    // ========================================================================
+    /**
+     * @param  eventType the {@link FlightRecorderEvent event type} of the
+     *         sampled records. This cannot be <code>null</code>.
+     */
+    public RecordEventSampler(final FlightRecorderEvent eventType) {
+        this(eventType, FlightRecorderEvents.RECORD_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * @param  eventType the {@link FlightRecorderEvent event type} of the
+     *         sampled records. This cannot be <code>null</code>.
+     * @param  sampleInterval one in every this many records is sampled. This
+     *         must be greater than zero.
+     */
+    public RecordEventSampler(final FlightRecorderEvent eventType, final int sampleInterval) {
+        if(sampleInterval < 1) throw new IllegalArgumentException("The sample interval must be greater than zero (" + sampleInterval + ").");
+        this.eventType = eventType;
+        this.sampleInterval = sampleInterval;
+    }
+
+    // ========================================================================
+    /**
+     * Called when a record is started.
+     *
+     * @return the event that must be passed to {@link #endRecord(Object)} or
+     *         <code>null</code> if the record is not sampled
+     */
+    public Object startRecord() {
+        if(--recordsUntilSample > 0) return null/*not sampled*/;
+        recordsUntilSample = sampleInterval;
+        return eventType.begin()/*null if not enabled*/;
+    }
+
+    /**
+     * Called when the record is ended.
+     *
+     * @param  event the event returned from {@link #startRecord()}. This may
+     *         be <code>null</code>.
+     */
+    public void endRecord(final Object event) {
+        if(event != null) eventType.commit(event, recordIndex, sampleInterval);
+        recordIndex++;
+    }
+}
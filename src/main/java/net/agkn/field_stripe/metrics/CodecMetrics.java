@@ -0,0 +1,357 @@
+package net.agkn.field_stripe.metrics;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.writer.IRecordWriter;
+import net.agkn.field_stripe.stripe.IFieldStripeReader;
+import net.agkn.field_stripe.stripe.IFieldStripeReaderFactory;
+import net.agkn.field_stripe.stripe.IFieldStripeWriter;
+import net.agkn.field_stripe.stripe.IFieldStripeWriterFactory;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Instrumentation of the encoder and decoder: the number of records encoded
+ * and decoded, the time spent in the record reader, in traversing the encoder
+ * and decoder trees and in field-stripe I/O and, per {@link FieldStripeMetrics stripe},
+ * the instructions of each kind and the bytes written or read.<p/>
+ *
+ * The metrics are collected by decorating the factories and reader that make
+ * up an encoder or decoder so there is no cost when they are not used:<p/>
+ * <pre>
+ *   final CodecMetrics metrics = new CodecMetrics("name");
+ *   final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(metrics.decorate(writerFactory)).createEncoderTree(schema);
+ *   final IRecordReader recordReader = metrics.decorate(reader);
+ *   while(metrics.encode(rootEncoder, recordReader));
+ * </pre>
+ *
+ * The metrics are available {@link #snapshot() programmatically} and through
+ * JMX once {@link #register(MBeanServer) registered}. An instance may only be
+ * updated by a single thread at a time (i.e. use an instance per encoding or
+ * decoding thread) but may be read by any thread.
+ *
+ * @author rgrzywinski
+ */
+@ThreadSafe
+public class CodecMetrics implements CodecMetricsMBean {
+    // the JMX domain of all metrics
+    public static final String DOMAIN = "net.agkn.field_stripe";
+
+    // the operations of stripe metrics
+    public static final String ENCODE = "encode";
+    public static final String DECODE = "decode";
+
+    // ************************************************************************
+    private final String name;
+
+    private final AtomicLong recordsEncoded = new AtomicLong();
+    private final AtomicLong recordsDecoded = new AtomicLong();
+    private final AtomicLong encodeTimeNanos = new AtomicLong();
+    private final AtomicLong decodeTimeNanos = new AtomicLong();
+    private final AtomicLong readerParseTimeNanos = new AtomicLong();
+
+    // the metrics of each stripe in the order in which they were created
+    private final List<FieldStripeMetrics> stripeMetrics = new CopyOnWriteArrayList<FieldStripeMetrics>();
+
+    // the server with which the metrics are registered (null if not registered)
+    private MBeanServer mBeanServer;
+
+    // ========================================================================
+    /**
+     * @param  name the name of the metrics (used to identify the metrics in
+     *         JMX). This cannot be <code>null</code>.
+     */
+    public CodecMetrics(final String name) {
+        this.name = name;
+    }
+
+    // ========================================================================
+    /**
+     * @param  writerFactory the {@link IFieldStripeWriterFactory} whose writers
+     *         are instrumented. This cannot be <code>null</code>.
+     * @return a {@link IFieldStripeWriterFactory} whose writers update these
+     *         metrics. This will never be <code>null</code>.
+     * @see #encode(RootFieldStripeEncoder, IRecordReader)
+     */
+    public IFieldStripeWriterFactory decorate(final IFieldStripeWriterFactory writerFactory) {
+        return new IFieldStripeWriterFactory() {
+            private final List<MeteredFieldStripeWriter> writers = new ArrayList<MeteredFieldStripeWriter>();
+            @Override
+            public IFieldStripeWriter createFieldStripeWriter(final IField field)
+                    throws OperationFailedException {
+                final MeteredFieldStripeWriter writer = new MeteredFieldStripeWriter(writerFactory.createFieldStripeWriter(field), createStripeMetrics(field, ENCODE));
+                writers.add(writer);
+                return writer;
+            }
+
+            @Override
+            public void closeAllWriters()
+                    throws OperationFailedException {
+                writerFactory.closeAllWriters();
+
+                // NOTE:  the delegate closes its own writers (bypassing the
+                //        metered writers) so their bytes are updated here
+                for(final MeteredFieldStripeWriter writer : writers)
+                    writer.updateByteCount();
+            }
+        };
+    }
+
+    /**
+     * @param  readerFactory the {@link IFieldStripeReaderFactory} whose readers
+     *         are instrumented. This cannot be <code>null</code>.
+     * @return a {@link IFieldStripeReaderFactory} whose readers update these
+     *         metrics. This will never be <code>null</code>.
+     * @see #decode(RootFieldStripeDecoder, IRecordWriter)
+     */
+    public IFieldStripeReaderFactory decorate(final IFieldStripeReaderFactory readerFactory) {
+        return new IFieldStripeReaderFactory() {
+            @Override
+            public IFieldStripeReader createFieldStripeReader(final IField field)
+                    throws OperationFailedException {
+                return new MeteredFieldStripeReader(readerFactory.createFieldStripeReader(field), createStripeMetrics(field, DECODE));
+            }
+
+            @Override
+            public void closeAllReaders() throws OperationFailedException {
+                readerFactory.closeAllReaders();
+            }
+        };
+    }
+
+    /**
+     * @param  recordReader the {@link IRecordReader} whose parse time is
+     *         measured. This cannot be <code>null</code>.
+     * @return a {@link IRecordReader} that updates these metrics. This will
+     *         never be <code>null</code>.
+     */
+    public IRecordReader decorate(final IRecordReader recordReader) {
+        return new MeteredRecordReader(recordReader, this);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * {@link RootFieldStripeEncoder#encode(IRecordReader) Encodes} a record
+     * measuring the time taken.
+     *
+     * @return <code>true</code> if and only if a record was encoded
+     * @throws OperationFailedException if the record could not be encoded.
+     * @see RootFieldStripeEncoder#encode(IRecordReader)
+     */
+    public boolean encode(final RootFieldStripeEncoder rootEncoder, final IRecordReader recordReader)
+            throws OperationFailedException {
+        final long start = System.nanoTime();
+        final boolean encoded = rootEncoder.encode(recordReader);
+        encodeTimeNanos.lazySet(encodeTimeNanos.get() + (System.nanoTime() - start));
+        if(encoded) recordsEncoded.lazySet(recordsEncoded.get() + 1);
+        return encoded;
+    }
+
+    /**
+     * {@link RootFieldStripeDecoder#decode(IRecordWriter) Decodes} a record
+     * measuring the time taken.
+     *
+     * @return <code>true</code> if and only if a record was decoded
+     * @throws OperationFailedException if the record could not be decoded.
+     * @see RootFieldStripeDecoder#decode(IRecordWriter)
+     */
+    public boolean decode(final RootFieldStripeDecoder rootDecoder, final IRecordWriter recordWriter)
+            throws OperationFailedException {
+        final long start = System.nanoTime();
+        final boolean decoded = rootDecoder.decode(recordWriter);
+        decodeTimeNanos.lazySet(decodeTimeNanos.get() + (System.nanoTime() - start));
+        if(decoded) recordsDecoded.lazySet(recordsDecoded.get() + 1);
+        return decoded;
+    }
+
+    /**
+     * Records time spent in the record reader.
+     */
+    /*package*/ void readerParse(final long nanos) {
+        readerParseTimeNanos.lazySet(readerParseTimeNanos.get() + nanos);
+    }
+
+    // ========================================================================
+    /**
+     * Registers these metrics and the metrics of all current and future stripes
+     * with the specified <code>MBeanServer</code>. The metrics are named
+     * <code>net.agkn.field_stripe:type=Codec,name=&lt;name&gt;</code> and
+     * <code>net.agkn.field_stripe:type=FieldStripe,codec=&lt;name&gt;,operation=&lt;encode|decode&gt;,path=&lt;path&gt;</code>.
+     *
+     * @param  mBeanServer the <code>MBeanServer</code> with which the metrics
+     *         are registered. This cannot be <code>null</code>.
+     * @throws OperationFailedException if the metrics could not be registered
+     *         (e.g. if metrics with the same name are already registered).
+     */
+    public synchronized void register(final MBeanServer mBeanServer)
+            throws OperationFailedException {
+        if(this.mBeanServer != null) throw new IllegalStateException("The metrics are already registered.");
+        try {
+            mBeanServer.registerMBean(this, getObjectName());
+            this.mBeanServer = mBeanServer;
+            for(final FieldStripeMetrics metrics : stripeMetrics)
+                mBeanServer.registerMBean(metrics, getObjectName(metrics));
+        } catch(final JMException jme) {
+            throw new OperationFailedException("Could not register the metrics \"" + name + "\".", jme);
+        }
+    }
+
+    /**
+     * Unregisters these metrics and the metrics of all stripes. Unregistering
+     * metrics that are not registered has no effect.
+     *
+     * @throws OperationFailedException if the metrics could not be unregistered.
+     */
+    public synchronized void unregister()
+            throws OperationFailedException {
+        if(mBeanServer == null) return/*not registered*/;
+        try {
+            for(final FieldStripeMetrics metrics : stripeMetrics)
+                mBeanServer.unregisterMBean(getObjectName(metrics));
+            mBeanServer.unregisterMBean(getObjectName());
+        } catch(final JMException jme) {
+            throw new OperationFailedException("Could not unregister the metrics \"" + name + "\".", jme);
+        } finally {
+            mBeanServer = null/*by definition*/;
+        }
+    }
+
+    /**
+     * @return a point-in-time copy of all metrics. This will never be <code>null</code>.
+     */
+    public CodecMetricsSnapshot snapshot() {
+        return new CodecMetricsSnapshot(this, stripeMetrics);
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.metrics.CodecMetricsMBean#getName()
+     */
+    @Override
+    public String getName() { return name; }
+
+    @Override
+    public long getRecordsEncoded() { return recordsEncoded.get(); }
+    @Override
+    public long getRecordsDecoded() { return recordsDecoded.get(); }
+
+    // ------------------------------------------------------------------------
+    @Override
+    public long getEncodeTimeNanos() { return encodeTimeNanos.get(); }
+    @Override
+    public long getReaderParseTimeNanos() { return readerParseTimeNanos.get(); }
+    @Override
+    public long getStripeWriteTimeNanos() { return sumIoTimeNanos(ENCODE); }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.metrics.CodecMetricsMBean#getEncoderTraversalTimeNanos()
+     */
+    @Override
+    public long getEncoderTraversalTimeNanos() {
+        // NOTE:  the components are read at slightly different times so the
+        //        difference is clamped
+        return Math.max(0L, getEncodeTimeNanos() - getReaderParseTimeNanos() - getStripeWriteTimeNanos());
+    }
+
+    // ------------------------------------------------------------------------
+    @Override
+    public long getDecodeTimeNanos() { return decodeTimeNanos.get(); }
+    @Override
+    public long getStripeReadTimeNanos() { return sumIoTimeNanos(DECODE); }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.metrics.CodecMetricsMBean#getDecoderTraversalTimeNanos()
+     */
+    @Override
+    public long getDecoderTraversalTimeNanos() {
+        return Math.max(0L, getDecodeTimeNanos() - getStripeReadTimeNanos());
+    }
+
+    // ------------------------------------------------------------------------
+    @Override
+    public long getBytesWritten() { return sumByteCount(ENCODE); }
+    @Override
+    public long getBytesRead() { return sumByteCount(DECODE); }
+
+    // ========================================================================
+    /**
+     * Creates the metrics for the stripe of the specified field (registering
+     * them if these metrics are registered).
+     */
+    private synchronized FieldStripeMetrics createStripeMetrics(final IField field, final String operation)
+            throws OperationFailedException {
+        final FieldStripeMetrics metrics = new FieldStripeMetrics(field, operation);
+        if(mBeanServer != null) {
+            try {
+                mBeanServer.registerMBean(metrics, getObjectName(metrics));
+            } catch(final JMException jme) {
+                throw new OperationFailedException("Could not register the metrics of stripe \"" + metrics.getPath() + "\".", jme);
+            }
+        } /* else -- not registered */
+        stripeMetrics.add(metrics);
+        return metrics;
+    }
+
+    /**
+     * @return the JMX name of these metrics
+     */
+    private ObjectName getObjectName()
+            throws JMException {
+        return new ObjectName(DOMAIN + ":type=Codec,name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * @return the JMX name of the specified stripe metrics
+     */
+    private ObjectName getObjectName(final FieldStripeMetrics metrics)
+            throws JMException {
+        return new ObjectName(DOMAIN + ":type=FieldStripe,codec=" + ObjectName.quote(name) + ",operation=" + metrics.getOperation() + ",path=" + ObjectName.quote(metrics.getPath()));
+    }
+
+    /**
+     * @return the sum of the I/O time of the stripes of the specified operation
+     */
+    private long sumIoTimeNanos(final String operation) {
+        long sum = 0L;
+        for(final FieldStripeMetrics metrics : stripeMetrics)
+            if(operation.equals(metrics.getOperation())) sum += metrics.getIoTimeNanos();
+        return sum;
+    }
+
+    /**
+     * @return the sum of the bytes of the stripes of the specified operation
+     */
+    private long sumByteCount(final String operation) {
+        long sum = 0L;
+        for(final FieldStripeMetrics metrics : stripeMetrics)
+            if(operation.equals(metrics.getOperation())) sum += metrics.getByteCount();
+        return sum;
+    }
+}
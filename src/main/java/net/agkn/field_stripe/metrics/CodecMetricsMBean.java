@@ -0,0 +1,87 @@
+package net.agkn.field_stripe.metrics;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The JMX management interface of {@link CodecMetrics}. All times are in
+ * nanoseconds.
+ *
+ * @author rgrzywinski
+ */
+public interface CodecMetricsMBean {
+    /**
+     * @return the name of the metrics as specified on construction
+     */
+    String getName();
+
+    // ------------------------------------------------------------------------
+    long getRecordsEncoded();
+    long getRecordsDecoded();
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the total time spent encoding records
+     */
+    long getEncodeTimeNanos();
+
+    /**
+     * @return the time spent parsing records in the record reader
+     */
+    long getReaderParseTimeNanos();
+
+    /**
+     * @return the time spent writing field-stripes
+     */
+    long getStripeWriteTimeNanos();
+
+    /**
+     * @return the time spent traversing the encoder tree (the total encode 
+     *         time less the reader parse and stripe write time)
+     */
+    long getEncoderTraversalTimeNanos();
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the total time spent decoding records (including the time spent
+     *         in the record writer)
+     */
+    long getDecodeTimeNanos();
+
+    /**
+     * @return the time spent reading field-stripes
+     */
+    long getStripeReadTimeNanos();
+
+    /**
+     * @return the time spent traversing the decoder tree (the total decode
+     *         time less the stripe read time)
+     */
+    long getDecoderTraversalTimeNanos();
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the total number of bytes written to all field-stripes
+     * @see FieldStripeMetricsMBean#getByteCount()
+     */
+    long getBytesWritten();
+
+    /**
+     * @return the total number of bytes read from all field-stripes
+     * @see FieldStripeMetricsMBean#getByteCount()
+     */
+    long getBytesRead();
+}
@@ -0,0 +1,121 @@
+package net.agkn.field_stripe.metrics;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.agkn.field_stripe.stripe.Instruction.Kind;
+import net.jcip.annotations.Immutable;
+
+/**
+ * A point-in-time copy of {@link CodecMetrics} and of the {@link FieldStripeMetrics}
+ * of each of its stripes. All times are in nanoseconds.
+ *
+ * @author rgrzywinski
+ * @see CodecMetrics#snapshot()
+ */
+@Immutable
+public class CodecMetricsSnapshot {
+    /**
+     * A point-in-time copy of {@link FieldStripeMetrics}.
+     */
+    @Immutable
+    public static class FieldStripe {
+        public final String path;
+        public final String operation;
+        private final long[] instructionCounts;
+        public final long byteCount;
+        public final long ioTimeNanos;
+
+        /*package*/ FieldStripe(final FieldStripeMetrics metrics) {
+            this.path = metrics.getPath();
+            this.operation = metrics.getOperation();
+            final Kind[] kinds = Kind.values();
+            this.instructionCounts = new long[kinds.length];
+            for(final Kind kind : kinds)
+                instructionCounts[kind.ordinal()] = metrics.getInstructionCount(kind);
+            this.byteCount = metrics.getByteCount();
+            this.ioTimeNanos = metrics.getIoTimeNanos();
+        }
+
+        /**
+         * @param  kind the {@link Kind} of instruction for which the count is
+         *         desired. This cannot be <code>null</code>.
+         * @return the number of instructions of the specified kind
+         */
+        public long getInstructionCount(final Kind kind) { return instructionCounts[kind.ordinal()]; }
+    }
+
+    // ************************************************************************
+    public final String name;
+
+    public final long recordsEncoded;
+    public final long recordsDecoded;
+
+    public final long encodeTimeNanos;
+    public final long readerParseTimeNanos;
+    public final long stripeWriteTimeNanos;
+    public final long encoderTraversalTimeNanos;
+
+    public final long decodeTimeNanos;
+    public final long stripeReadTimeNanos;
+    public final long decoderTraversalTimeNanos;
+
+    public final long bytesWritten;
+    public final long bytesRead;
+
+    // the stripes in the order in which they were created
+    public final List<FieldStripe> fieldStripes;
+
+    // ========================================================================
+    /*package*/ CodecMetricsSnapshot(final CodecMetrics metrics, final List<FieldStripeMetrics> stripeMetrics) {
+        this.name = metrics.getName();
+        this.recordsEncoded = metrics.getRecordsEncoded();
+        this.recordsDecoded = metrics.getRecordsDecoded();
+        this.encodeTimeNanos = metrics.getEncodeTimeNanos();
+        this.readerParseTimeNanos = metrics.getReaderParseTimeNanos();
+        this.stripeWriteTimeNanos = metrics.getStripeWriteTimeNanos();
+        this.encoderTraversalTimeNanos = metrics.getEncoderTraversalTimeNanos();
+        this.decodeTimeNanos = metrics.getDecodeTimeNanos();
+        this.stripeReadTimeNanos = metrics.getStripeReadTimeNanos();
+        this.decoderTraversalTimeNanos = metrics.getDecoderTraversalTimeNanos();
+        this.bytesWritten = metrics.getBytesWritten();
+        this.bytesRead = metrics.getBytesRead();
+
+        final List<FieldStripe> fieldStripes = new ArrayList<FieldStripe>(stripeMetrics.size());
+        for(final FieldStripeMetrics stripe : stripeMetrics)
+            fieldStripes.add(new FieldStripe(stripe));
+        this.fieldStripes = Collections.unmodifiableList(fieldStripes);
+    }
+
+    // ========================================================================
+    /**
+     * @param  path the dot-separated path of the field of the stripe. This
+     *         cannot be <code>null</code>.
+     * @param  operation either {@link CodecMetrics#ENCODE} or {@link CodecMetrics#DECODE}.
+     *         This cannot be <code>null</code>.
+     * @return the stripe with the specified path and operation or <code>null</code>
+     *         if there is no such stripe
+     */
+    public FieldStripe getFieldStripe(final String path, final String operation) {
+        for(final FieldStripe fieldStripe : fieldStripes)
+            if(fieldStripe.path.equals(path) && fieldStripe.operation.equals(operation)) return fieldStripe;
+        return null/*not found*/;
+    }
+}
@@ -0,0 +1,132 @@
+package net.agkn.field_stripe.metrics;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.stripe.Instruction.Kind;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * The metrics of a single (leaf) field-stripe: the number of instructions of
+ * each {@link Kind} written or read, the number of bytes in the stripe and the
+ * time spent writing or reading.<p/>
+ *
+ * The metrics are updated by the single thread that writes or reads the stripe
+ * and may be read by any thread (e.g. by JMX). The counters are updated with
+ * {@link AtomicLong#lazySet(long) lazy sets} so that updating them does not
+ * cost a memory barrier.
+ *
+ * @author rgrzywinski
+ * @see CodecMetrics
+ */
+@ThreadSafe
+public class FieldStripeMetrics implements FieldStripeMetricsMBean {
+    private final String path;
+    private final String operation;
+
+    // the number of instructions of each kind indexed by Kind#ordinal()
+    private final AtomicLongArray instructionCounts = new AtomicLongArray(Kind.values().length);
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong ioTimeNanos = new AtomicLong();
+
+    // ========================================================================
+    /**
+     * @param  field the {@link IField field} of the stripe. This cannot be
+     *         <code>null</code>.
+     * @param  operation either {@link CodecMetrics#ENCODE} or {@link CodecMetrics#DECODE}.
+     *         This cannot be <code>null</code>.
+     */
+    /*package*/ FieldStripeMetrics(final IField field, final String operation) {
+        this.path = field.getPath().toString()/*dot-separated*/;
+        this.operation = operation;
+    }
+
+    // ========================================================================
+    /**
+     * Records that an instruction of the specified kind was written or read
+     * in the specified time.
+     */
+    /*package*/ void instruction(final Kind kind, final long nanos) {
+        // NOTE:  there is a single updating thread by contract
+        final int index = kind.ordinal();
+        instructionCounts.lazySet(index, instructionCounts.get(index) + 1);
+        ioTimeNanos.lazySet(ioTimeNanos.get() + nanos);
+    }
+
+    /**
+     * Records time spent on I/O that is not associated with an instruction
+     * (e.g. flushing on close).
+     */
+    /*package*/ void io(final long nanos) {
+        ioTimeNanos.lazySet(ioTimeNanos.get() + nanos);
+    }
+
+    /**
+     * @param  byteCount the number of bytes in the stripe
+     */
+    /*package*/ void setByteCount(final long byteCount) {
+        this.byteCount.lazySet(byteCount);
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.metrics.FieldStripeMetricsMBean#getPath()
+     */
+    @Override
+    public String getPath() { return path; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.metrics.FieldStripeMetricsMBean#getOperation()
+     */
+    @Override
+    public String getOperation() { return operation; }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @param  kind the {@link Kind} of instruction for which the count is
+     *         desired. This cannot be <code>null</code>.
+     * @return the number of instructions of the specified kind
+     */
+    public long getInstructionCount(final Kind kind) { return instructionCounts.get(kind.ordinal()); }
+
+    @Override
+    public long getValueCount() { return getInstructionCount(Kind.VALUE); }
+    @Override
+    public long getUnsetCount() { return getInstructionCount(Kind.UNSET); }
+    @Override
+    public long getUnsetParentCount() { return getInstructionCount(Kind.UNSET_PARENT); }
+    @Override
+    public long getRepeatedValueCount() { return getInstructionCount(Kind.REPEATED_VALUE); }
+    @Override
+    public long getRepeatedParentCount() { return getInstructionCount(Kind.REPEATED_PARENT); }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.metrics.FieldStripeMetricsMBean#getByteCount()
+     */
+    @Override
+    public long getByteCount() { return byteCount.get(); }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.metrics.FieldStripeMetricsMBean#getIoTimeNanos()
+     */
+    @Override
+    public long getIoTimeNanos() { return ioTimeNanos.get(); }
+}
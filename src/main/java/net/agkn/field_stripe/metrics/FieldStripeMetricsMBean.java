@@ -0,0 +1,57 @@
+package net.agkn.field_stripe.metrics;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The JMX management interface of {@link FieldStripeMetrics}. All times are
+ * in nanoseconds.
+ *
+ * @author rgrzywinski
+ */
+public interface FieldStripeMetricsMBean {
+    /**
+     * @return the dot-separated path of the field of the stripe (e.g.
+     *         <code>nested_field.string_field</code>)
+     */
+    String getPath();
+
+    /**
+     * @return <code>encode</code> if the stripe is written or <code>decode</code>
+     *         if the stripe is read
+     */
+    String getOperation();
+
+    // ------------------------------------------------------------------------
+    long getValueCount();
+    long getUnsetCount();
+    long getUnsetParentCount();
+    long getRepeatedValueCount();
+    long getRepeatedParentCount();
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the number of bytes written to or read from the stripe. This is
+     *         only known once the stripe has been closed (written) or read to
+     *         its end and is zero for stripes that do not count their bytes.
+     */
+    long getByteCount();
+
+    /**
+     * @return the time spent writing or reading instructions
+     */
+    long getIoTimeNanos();
+}
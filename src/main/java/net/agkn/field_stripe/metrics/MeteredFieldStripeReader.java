@@ -0,0 +1,80 @@
+package net.agkn.field_stripe.metrics;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.stripe.IByteCounted;
+import net.agkn.field_stripe.stripe.IFieldStripeReader;
+import net.agkn.field_stripe.stripe.Instruction;
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * An {@link IFieldStripeReader} that records the number of instructions read,
+ * the time spent reading them and (if the delegate is {@link IByteCounted})
+ * the number of bytes read into a {@link FieldStripeMetrics}.
+ *
+ * @author rgrzywinski
+ * @see CodecMetrics#decorate(net.agkn.field_stripe.stripe.IFieldStripeReaderFactory)
+ */
+@NotThreadSafe
+/*package*/ class MeteredFieldStripeReader implements IFieldStripeReader {
+    private final IFieldStripeReader delegate;
+    private final FieldStripeMetrics metrics;
+
+    // ========================================================================
+    /**
+     * @param  delegate the {@link IFieldStripeReader} to which all reads are
+     *         delegated. This cannot be <code>null</code>.
+     * @param  metrics the {@link FieldStripeMetrics} that are updated. This 
+     *         cannot be <code>null</code>.
+     */
+    public MeteredFieldStripeReader(final IFieldStripeReader delegate, final FieldStripeMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeReader#readInstruction()
+     */
+    @Override
+    public Instruction readInstruction()
+            throws OperationFailedException {
+        final long start = System.nanoTime();
+        final Instruction instruction = delegate.readInstruction();
+        final long nanos = System.nanoTime() - start;
+        if(instruction != null) {
+            metrics.instruction(instruction.kind, nanos);
+        } else/*end of the stripe*/ {
+            metrics.io(nanos);
+            // NOTE:  the bytes are only updated at the end of the stripe so
+            //        that there is no per-instruction cost
+            if(delegate instanceof IByteCounted) metrics.setByteCount(((IByteCounted)delegate).getByteCount());
+            /* else -- the bytes are not known */
+        }
+        return instruction;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeReader#close()
+     */
+    @Override
+    public void close()
+            throws OperationFailedException {
+        delegate.close();
+    }
+}
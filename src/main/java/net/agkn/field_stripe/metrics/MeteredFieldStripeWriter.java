@@ -0,0 +1,225 @@
+package net.agkn.field_stripe.metrics;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.stripe.IByteCounted;
+import net.agkn.field_stripe.stripe.IFieldStripeWriter;
+import net.agkn.field_stripe.stripe.Instruction.Kind;
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * An {@link IFieldStripeWriter} that records the number of instructions
+ * written, the time spent writing them and (if the delegate is {@link IByteCounted})
+ * the number of bytes written into a {@link FieldStripeMetrics}.
+ *
+ * @author rgrzywinski
+ * @see CodecMetrics#decorate(net.agkn.field_stripe.stripe.IFieldStripeWriterFactory)
+ */
+@NotThreadSafe
+/*package*/ class MeteredFieldStripeWriter implements IFieldStripeWriter {
+    private final IFieldStripeWriter delegate;
+    private final FieldStripeMetrics metrics;
+
+    // ========================================================================
+    /**
+     * @param  delegate the {@link IFieldStripeWriter} to which all writes are
+     *         delegated. This cannot be <code>null</code>.
+     * @param  metrics the {@link FieldStripeMetrics} that are updated. This 
+     *         cannot be <code>null</code>.
+     */
+    public MeteredFieldStripeWriter(final IFieldStripeWriter delegate, final FieldStripeMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    // ========================================================================
+    // life-cycle
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#close()
+     */
+    @Override
+    public void close()
+            throws OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.close();
+        metrics.io(System.nanoTime() - start);
+        updateByteCount();
+    }
+
+    /**
+     * Updates the byte count of the metrics from the delegate (if it counts
+     * its bytes). This is called after the delegate is closed (since buffered
+     * bytes aren't counted until they're flushed).
+     */
+    /*package*/ void updateByteCount() {
+        if(delegate instanceof IByteCounted) metrics.setByteCount(((IByteCounted)delegate).getByteCount());
+        /* else -- the bytes are not known */
+    }
+
+    // ========================================================================
+    // meta-data
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeUnset()
+     */
+    @Override
+    public void writeUnset()
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeUnset();
+        metrics.instruction(Kind.UNSET, (System.nanoTime() - start));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeUnsetParent(int)
+     */
+    @Override
+    public void writeUnsetParent(final int fieldDepth)
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeUnsetParent(fieldDepth);
+        metrics.instruction(Kind.UNSET_PARENT, (System.nanoTime() - start));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeRepeated()
+     */
+    @Override
+    public void writeRepeated()
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeRepeated();
+        metrics.instruction(Kind.REPEATED_VALUE, (System.nanoTime() - start));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeRepeatedParent(int)
+     */
+    @Override
+    public void writeRepeatedParent(final int fieldDepth)
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeRepeatedParent(fieldDepth);
+        metrics.instruction(Kind.REPEATED_PARENT, (System.nanoTime() - start));
+    }
+
+    // ========================================================================
+    // primitive values
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeValue(byte)
+     */
+    @Override
+    public void writeValue(final byte value)
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeValue(value);
+        metrics.instruction(Kind.VALUE, (System.nanoTime() - start));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeValue(short)
+     */
+    @Override
+    public void writeValue(final short value)
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeValue(value);
+        metrics.instruction(Kind.VALUE, (System.nanoTime() - start));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeValue(int)
+     */
+    @Override
+    public void writeValue(final int value)
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeValue(value);
+        metrics.instruction(Kind.VALUE, (System.nanoTime() - start));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeValue(long)
+     */
+    @Override
+    public void writeValue(final long value)
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeValue(value);
+        metrics.instruction(Kind.VALUE, (System.nanoTime() - start));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeValue(float)
+     */
+    @Override
+    public void writeValue(final float value)
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeValue(value);
+        metrics.instruction(Kind.VALUE, (System.nanoTime() - start));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeValue(double)
+     */
+    @Override
+    public void writeValue(final double value)
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeValue(value);
+        metrics.instruction(Kind.VALUE, (System.nanoTime() - start));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeValue(boolean)
+     */
+    @Override
+    public void writeValue(final boolean value)
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeValue(value);
+        metrics.instruction(Kind.VALUE, (System.nanoTime() - start));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeValue(java.lang.String)
+     */
+    @Override
+    public void writeValue(final String value)
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeValue(value);
+        metrics.instruction(Kind.VALUE, (System.nanoTime() - start));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeValue(java.nio.ByteBuffer)
+     */
+    @Override
+    public void writeValue(final ByteBuffer value)
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.writeValue(value);
+        metrics.instruction(Kind.VALUE, (System.nanoTime() - start));
+    }
+}
@@ -0,0 +1,277 @@
+package net.agkn.field_stripe.metrics;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.jcip.annotations.NotThreadSafe;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+
+/**
+ * An {@link IRecordReader} that records the time spent in the delegate reader
+ * (i.e. the time spent parsing records) into a {@link CodecMetrics}.
+ *
+ * @author rgrzywinski
+ * @see CodecMetrics#decorate(IRecordReader)
+ */
+@NotThreadSafe
+/*package*/ class MeteredRecordReader implements IRecordReader {
+    private final IRecordReader delegate;
+    private final CodecMetrics metrics;
+
+    // ========================================================================
+    /**
+     * @param  delegate the {@link IRecordReader} to which all reads are 
+     *         delegated. This cannot be <code>null</code>.
+     * @param  metrics the {@link CodecMetrics} that are updated. This cannot
+     *         be <code>null</code>.
+     */
+    public MeteredRecordReader(final IRecordReader delegate, final CodecMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startRecord()
+     */
+    @Override
+    public void startRecord()
+            throws IllegalStateException, OperationFailedException {
+        final long start = System.nanoTime();
+        delegate.startRecord();
+        metrics.readerParse(System.nanoTime() - start);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endRecord()
+     */
+    @Override
+    public void endRecord()
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        delegate.endRecord();
+        metrics.readerParse(System.nanoTime() - start);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreRecords()
+     */
+    @Override
+    public boolean hasMoreRecords()
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final boolean value = delegate.hasMoreRecords();
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startStructure()
+     */
+    @Override
+    public boolean startStructure()
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final boolean value = delegate.startStructure();
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endStructure()
+     */
+    @Override
+    public void endStructure()
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        delegate.endStructure();
+        metrics.readerParse(System.nanoTime() - start);
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startArray()
+     */
+    @Override
+    public boolean startArray()
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final boolean value = delegate.startArray();
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreElements()
+     */
+    @Override
+    public boolean hasMoreElements()
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final boolean value = delegate.hasMoreElements();
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endArray()
+     */
+    @Override
+    public void endArray()
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        delegate.endArray();
+        metrics.readerParse(System.nanoTime() - start);
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readByteField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public byte readByteField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final byte value = delegate.readByteField(isSet);
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readShortField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public short readShortField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final short value = delegate.readShortField(isSet);
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readIntField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public int readIntField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final int value = delegate.readIntField(isSet);
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readLongField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public long readLongField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final long value = delegate.readLongField(isSet);
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readFloatField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public float readFloatField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final float value = delegate.readFloatField(isSet);
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readDoubleField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public double readDoubleField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final double value = delegate.readDoubleField(isSet);
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readBooleanField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public boolean readBooleanField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final boolean value = delegate.readBooleanField(isSet);
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readStringField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public String readStringField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final String value = delegate.readStringField(isSet);
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readBytesField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public ByteBuffer readBytesField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        final ByteBuffer value = delegate.readBytesField(isSet);
+        metrics.readerParse(System.nanoTime() - start);
+        return value;
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#skipField()
+     */
+    @Override
+    public void skipField()
+            throws IllegalStateException, InvalidDataException {
+        final long start = System.nanoTime();
+        delegate.skipField();
+        metrics.readerParse(System.nanoTime() - start);
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#close()
+     */
+    @Override
+    public void close()
+            throws OperationFailedException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,130 @@
+package net.agkn.field_stripe.record;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * The symbols of an enumerated {@link IField field}. The value of an enumerated
+ * field is the {@link PrimitiveType#STRING string} name of one of its symbols.
+ * Each symbol has an ordinal (its 0-based position in the declaration) and a
+ * number (its declared value, e.g. the Protobuf enum value number). The ordinals
+ * are dense and small which allows for the values to be stored compactly.<p/>
+ *
+ * This object is read-only / immutable.
+ *
+ * @author rgrzywinski
+ * @see IField#getEnumSymbolTable()
+ */
+@Immutable
+public class EnumSymbolTable {
+    // the value returned when there is no such symbol
+    public static final int NONE = -1;
+
+    // ************************************************************************
+    private final List<String> names;
+    private final int[] numbers;
+
+    // the lookups from name and from number to ordinal
+    private final Map<String, Integer> nameToOrdinalMap;
+    private final Map<Integer, Integer> numberToOrdinalMap;
+
+    // ========================================================================
+    /**
+     * @param  names the names of the symbols in declaration (ordinal) order.
+     *         This cannot be <code>null</code> or empty and the names must be
+     *         unique. (A copy is made.)
+     * @param  numbers the declared numbers of the symbols in declaration (ordinal)
+     *         order. This cannot be <code>null</code> and must be the same
+     *         length as the names. (A copy is made.) Numbers may be repeated
+     *         (e.g. aliases) in which case the first symbol is used for the
+     *         number.
+     */
+    public EnumSymbolTable(final List<String> names, final int[] numbers) {
+        this.names = Collections.unmodifiableList(new ArrayList<String>(names));
+        this.numbers = numbers.clone();
+
+        this.nameToOrdinalMap = new HashMap<String, Integer>(names.size());
+        this.numberToOrdinalMap = new HashMap<Integer, Integer>(names.size());
+        for(int i=0; i<names.size(); i++) {
+            nameToOrdinalMap.put(names.get(i), i);
+            if(!numberToOrdinalMap.containsKey(numbers[i])) numberToOrdinalMap.put(numbers[i], i)/*first symbol wins*/;
+            /* else -- an alias of an earlier symbol */
+        }
+    }
+
+    // ========================================================================
+    /**
+     * @return the number of symbols. This will always be greater than zero.
+     */
+    public int getSymbolCount() { return names.size(); }
+
+    /**
+     * @return the names of the symbols in ordinal order. This will never be
+     *         <code>null</code> or empty. The list cannot be modified.
+     */
+    public List<String> getNames() { return names; }
+
+    /**
+     * @param  ordinal the ordinal of the desired symbol. This must be within
+     *         [0, {@link #getSymbolCount()}).
+     * @return the name of the symbol with the specified ordinal. This will
+     *         never be <code>null</code>.
+     */
+    public String getName(final int ordinal) { return names.get(ordinal); }
+
+    /**
+     * @param  ordinal the ordinal of the desired symbol. This must be within
+     *         [0, {@link #getSymbolCount()}).
+     * @return the declared number of the symbol with the specified ordinal.
+     */
+    public int getNumber(final int ordinal) { return numbers[ordinal]; }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @param  name the name of the desired symbol. This may be <code>null</code>.
+     * @return the ordinal of the symbol with the specified name or {@link #NONE}
+     *         if there is no such symbol.
+     */
+    public int getOrdinalForName(final String name) {
+        final Integer ordinal = nameToOrdinalMap.get(name);
+        return (ordinal == null) ? NONE : ordinal;
+    }
+
+    /**
+     * @param  number the declared number of the desired symbol.
+     * @return the ordinal of the (first) symbol with the specified number or
+     *         {@link #NONE} if there is no such symbol.
+     */
+    public int getOrdinalForNumber(final int number) {
+        final Integer ordinal = numberToOrdinalMap.get(number);
+        return (ordinal == null) ? NONE : ordinal;
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() { return names.toString(); }
+}
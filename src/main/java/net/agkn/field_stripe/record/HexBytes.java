@@ -0,0 +1,132 @@
+package net.agkn.field_stripe.record;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+
+/**
+ * Converts {@link PrimitiveType#BYTES bytes} values to and from their textual
+ * (lower-case hexadecimal, two characters per byte) representation. This is
+ * used by the text-based readers and writers (e.g. JSON and XML).<p/>
+ *
+ * The bytes of a {@link ByteBuffer} are those between its position and its
+ * limit. The position of a buffer is never changed.
+ *
+ * @author rgrzywinski
+ */
+public final class HexBytes {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    // ========================================================================
+    /**
+     * @param  value the bytes to be converted. This cannot be <code>null</code>.
+     * @return the hexadecimal representation of the specified bytes. This
+     *         will never be <code>null</code> though it may be empty.
+     */
+    public static String toHex(final ByteBuffer value) {
+        final StringBuilder builder = new StringBuilder(value.remaining() << 1);
+        appendHex(builder, value);
+        return builder.toString();
+    }
+
+    /**
+     * Appends the hexadecimal representation of the specified bytes to the
+     * specified builder.
+     *
+     * @param  builder the <code>StringBuilder</code> to which the representation
+     *         is appended. This cannot be <code>null</code>.
+     * @param  value the bytes to be converted. This cannot be <code>null</code>.
+     */
+    public static void appendHex(final StringBuilder builder, final ByteBuffer value) {
+        final int limit = value.limit();
+        for(int i=value.position(); i<limit; i++) {
+            final int b = value.get(i)/*absolute*/;
+            builder.append(DIGITS[(b >>> 4) & 0x0F]).append(DIGITS[b & 0x0F]);
+        }
+    }
+
+    /**
+     * @param  hex the hexadecimal representation (either case) of the bytes.
+     *         This cannot be <code>null</code> and must have an even length.
+     * @return the bytes represented by the specified string. This will never
+     *         be <code>null</code> though it may be empty.
+     * @throws InvalidDataException if the specified string is not a valid
+     *         hexadecimal representation.
+     */
+    public static ByteBuffer fromHex(final CharSequence hex)
+            throws InvalidDataException {
+        final int length = hex.length();
+        if((length & 1) != 0) throw new InvalidDataException("Hexadecimal bytes must have an even length (" + length + ").");
+        final byte[] bytes = new byte[length >> 1];
+        for(int i=0; i<bytes.length; i++)
+            bytes[i] = (byte)((digit(hex.charAt(i << 1)) << 4) | digit(hex.charAt((i << 1) + 1)));
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Decodes the specified range of hexadecimal characters into the specified
+     * array without any intermediate allocation.
+     *
+     * @param  hex the array containing the hexadecimal representation (either
+     *         case) of the bytes. This cannot be <code>null</code>.
+     * @param  offset the index of the first character to be decoded
+     * @param  length the number of characters to be decoded. This must be even.
+     * @param  bytes the array into which the bytes are decoded starting at
+     *         index zero. This cannot be <code>null</code> and must have at
+     *         least <code>length / 2</code> elements.
+     * @return the number of bytes decoded
+     * @throws InvalidDataException if the specified range is not a valid
+     *         hexadecimal representation.
+     */
+    public static int fromHex(final char[] hex, final int offset, final int length, final byte[] bytes)
+            throws InvalidDataException {
+        if((length & 1) != 0) throw new InvalidDataException("Hexadecimal bytes must have an even length (" + length + ").");
+        final int byteCount = (length >> 1);
+        for(int i=0; i<byteCount; i++)
+            bytes[i] = (byte)((digit(hex[offset + (i << 1)]) << 4) | digit(hex[offset + (i << 1) + 1]));
+        return byteCount;
+    }
+
+    /**
+     * @return the value of the specified hexadecimal digit
+     */
+    private static int digit(final char c)
+            throws InvalidDataException {
+        final int digit = Character.digit(c, 16/*radix*/);
+        if(digit < 0) throw new InvalidDataException("Invalid hexadecimal digit '" + c + "'.");
+        return digit;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @param  value the bytes to be copied. This cannot be <code>null</code>.
+     * @return a copy of the bytes. This is only for those destinations that
+     *         require an array and cannot otherwise use the buffer. This will
+     *         never be <code>null</code> though it may be empty.
+     */
+    public static byte[] toArray(final ByteBuffer value) {
+        final byte[] bytes = new byte[value.remaining()];
+        value.duplicate().get(bytes)/*position unchanged*/;
+        return bytes;
+    }
+
+    // ========================================================================
+    // NOTE:  there are no instances
+    private HexBytes() {}
+}
@@ -65,4 +65,21 @@ public interface IField {
      * @see ICompositeType#getFields()
      */
     String getName();
+
+    /**
+     * @return the declared {@link IntegerEncoding encoding} of the values of
+     *         this field. This is only meaningful if the field's {@link #getType() type}
+     *         is {@link PrimitiveType#INT} or {@link PrimitiveType#LONG}. This
+     *         will never be <code>null</code>.
+     */
+    IntegerEncoding getIntegerEncoding();
+
+    /**
+     * @return the {@link EnumSymbolTable symbols} of this field if it is an
+     *         enumerated field (in which case its {@link #getType() type} is
+     *         {@link PrimitiveType#STRING} and its values are the names of the
+     *         symbols). This will be <code>null</code> if the field is not an
+     *         enumerated field.
+     */
+    EnumSymbolTable getEnumSymbolTable();
 }
\ No newline at end of file
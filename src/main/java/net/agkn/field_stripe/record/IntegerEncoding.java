@@ -0,0 +1,47 @@
+package net.agkn.field_stripe.record;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The enumeration of the declared encodings of the values of an integral
+ * ({@link PrimitiveType#INT int} or {@link PrimitiveType#LONG long}) {@link IField field}.
+ * The encoding describes the expected distribution of the values so that
+ * they may be stored in the cheapest form. It does not change the values
+ * themselves.
+ *
+ * @author rgrzywinski
+ * @see IField#getIntegerEncoding()
+ */
+public enum IntegerEncoding {
+    // NOTE:  this order cannot be changed without possibly affecting the
+    //        serialization format
+    /**
+     * The values may be negative and are small in magnitude (zigzag variable
+     * length). This is the default.
+     */
+    SIGNED,
+    /**
+     * The values are unsigned (i.e. never negative or are to be interpreted
+     * as unsigned) and are small in magnitude (variable length).
+     */
+    UNSIGNED,
+    /**
+     * The values are uniformly distributed (e.g. hashes and random identifiers)
+     * and are therefore cheapest in fixed width.
+     */
+    FIXED;
+}
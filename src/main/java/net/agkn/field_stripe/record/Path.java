@@ -26,19 +26,42 @@ import java.util.List;
  * can always be implied. Depth and length are used interchangeably throughout.
  * This object is read-only / immutable. No effort is made in this class to 
  * ensure that the path is valid (e.g. ensuring that all parents are nodes or
- * that a leaf is not a node).
+ * that a leaf is not a node).<p/>
+ * 
+ * Since a path is immutable, its {@link #getParentPath() parent path} and
+ * {@link #getParentQualifierCount(FieldQualifier) parent qualifier counts} are
+ * computed once (on construction) rather than each time that they're requested.
+ * This makes the per-field descriptors that the field-stripe readers and writers 
+ * derive from the path O(1) regardless of the size or depth of the schema.
  *
  * @author rgrzywinski
  */
 public class Path implements Iterable<IField> {
+    // the (shared) empty path that is the parent of all paths of depth <= 1
+    private static final Path EMPTY = new Path();
+
+    // ************************************************************************
     private final ArrayList<IField> fieldPath;
 
+    // the number of parent fields with each qualifier indexed by the ordinal 
+    // of the FieldQualifier
+    private final int[] parentQualifierCounts;
+
+    // NOTE:  the parent path is computed lazily since a path created from a 
+    //        list has no parent path available. There is a benign race in 
+    //        computing it since a path is immutable.
+    private Path parentPath;
+
+    // lazily computed for the same reason as the parent path
+    private String name;
+
     // ========================================================================
     /**
      * Creates an empty (root only) path.
      */
     public Path() {
         this.fieldPath = new ArrayList<IField>()/*empty*/;
+        this.parentQualifierCounts = new int[FieldQualifier.values().length]/*none*/;
     }
 
     /**
@@ -52,6 +75,14 @@ public class Path implements Iterable<IField> {
         this.fieldPath = new ArrayList<IField>(parentPath.getDepth() + 1/*field*/);
         this.fieldPath.addAll(parentPath.fieldPath);
         this.fieldPath.add(field)/*added last*/;
+
+        // the parent qualifier counts are those of the parent path plus the
+        // last field of the parent path (which is now a parent)
+        this.parentQualifierCounts = parentPath.parentQualifierCounts.clone();
+        if(parentPath.getDepth() > 0)
+            this.parentQualifierCounts[parentPath.getField(parentPath.getDepth() - 1).getQualifier().ordinal()]++;
+        /* else -- the parent path is empty so the field has no parents */
+        this.parentPath = parentPath;
     }
 
     /**
@@ -66,6 +97,7 @@ public class Path implements Iterable<IField> {
         this.fieldPath = new ArrayList<IField>(parentPath.size() + 1/*field*/);
         this.fieldPath.addAll(parentPath);
         this.fieldPath.add(field)/*added last*/;
+        this.parentQualifierCounts = countParentQualifiers(fieldPath);
     }
 
     /**
@@ -75,6 +107,22 @@ public class Path implements Iterable<IField> {
      */
     public Path(final List<IField> path) {
         this.fieldPath = new ArrayList<IField>(path);
+        this.parentQualifierCounts = countParentQualifiers(fieldPath);
+    }
+
+    /**
+     * @param  fieldPath the list of {@link IField fields} that composes a path.
+     *         This cannot be <code>null</code> though it may be empty.
+     * @return the number of parent fields (i.e. excluding the last field) with 
+     *         each {@link FieldQualifier} indexed by its ordinal. This will 
+     *         never be <code>null</code>.
+     */
+    private static int[] countParentQualifiers(final List<IField> fieldPath) {
+        final int[] parentQualifierCounts = new int[FieldQualifier.values().length];
+        final int parentLength = fieldPath.size() - 1/*excluding the last field (i.e. only parents)*/;
+        for(int i=0; i<parentLength; i++)
+            parentQualifierCounts[fieldPath.get(i).getQualifier().ordinal()]++;
+        return parentQualifierCounts;
     }
 
     // ========================================================================
@@ -150,11 +198,17 @@ public class Path implements Iterable<IField> {
      * @return the {@link Path} that is the parent to this path. If this path
      *         is an empty path then an empty path is returned. If this path
      *         only contains one field then an empty path is returned. This will
-     *         never be <code>null</code>.
+     *         never be <code>null</code>. The same instance is returned on each
+     *         call.
      */
     public Path getParentPath() {
-        if(getDepth() <= 1) return new Path()/*new/empty path by contract*/;
-        return new Path(fieldPath.subList(0, (getDepth() - 1/*remove last*/)));
+        if(parentPath == null) {
+            if(getDepth() <= 1)
+                parentPath = EMPTY;
+            else/*there is a parent*/
+                parentPath = new Path(fieldPath.subList(0, (getDepth() - 1/*remove last*/)));
+        } /* else -- the parent path was already computed */
+        return parentPath;
     }
 
     /**
@@ -163,15 +217,7 @@ public class Path implements Iterable<IField> {
      *         {@link FieldQualifier field qualifier}. This will never be negative.
      */
     public int getParentQualifierCount(final FieldQualifier fieldQualifier) {
-        int count = 0/*none to start*/;
-        final int parentLength = getDepth() - 1/*excluding the last field (i.e. only parents)*/;
-        for(int i=0; i<parentLength; i++) {
-            final IField parentField = fieldPath.get(i);
-            if(parentField.getQualifier() == fieldQualifier)
-                count++;
-            /* else -- not the desired qualifier */
-        }
-        return count;
+        return parentQualifierCounts[fieldQualifier.ordinal()];
     }
 
     // ========================================================================
@@ -194,4 +240,23 @@ public class Path implements Iterable<IField> {
         final Path path = (Path)object;
         return fieldPath.equals(path.fieldPath); 
     }
+
+    /**
+     * @return the names of the fields of this path separated by '.' (e.g.
+     *         "parent.child.leaf"). This will never be <code>null</code> but
+     *         may be empty if this path is empty.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        if(name == null) {
+            final StringBuilder path = new StringBuilder();
+            for(final IField field : fieldPath) {
+                if(path.length() > 0) path.append('.');
+                path.append(field.getName());
+            }
+            name = path.toString();
+        } /* else -- the name was already computed */
+        return name;
+    }
 }
\ No newline at end of file
@@ -31,7 +31,10 @@ public enum PrimitiveType implements IFieldType {
     LONG,
     FLOAT,
     DOUBLE,
-    STRING;
+    STRING,
+    // NOTE:  a value is a java.nio.ByteBuffer whose bytes are those between
+    //        its position and limit
+    BYTES;
 
     // ************************************************************************
     /**
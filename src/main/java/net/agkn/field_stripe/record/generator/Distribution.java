@@ -0,0 +1,91 @@
+package net.agkn.field_stripe.record.generator;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The distributions from which generated values (repetition lengths, numeric
+ * values and string indexes) are drawn. Each distribution produces a sample
+ * in <code>[0, 1)</code> that is then scaled to the configured range.
+ *
+ * @author rgrzywinski
+ * @see SyntheticRecordConfig
+ */
+public enum Distribution {
+    /**
+     * Every value in the range is equally likely.
+     */
+    UNIFORM {
+        @Override
+        public double sample(final SplitMix64 random) { return random.nextDouble(); }
+    },
+
+    /**
+     * Values are normally distributed about the middle of the range with
+     * (roughly) three standard deviations to either end. Samples beyond the
+     * range are clamped.
+     */
+    GAUSSIAN {
+        @Override
+        public double sample(final SplitMix64 random) {
+            final double sample = 0.5 + (random.nextGaussian() / 6.0);
+            if(sample < 0.0) return 0.0;
+            if(sample >= 1.0) return MAXIMUM_SAMPLE;
+            return sample;
+        }
+    },
+
+    /**
+     * Small values (the start of the range) are much more likely than large
+     * values -- the cube of a uniform sample. This approximates the long-tailed
+     * distributions (e.g. of repetition lengths and string frequencies) that
+     * are typical of real data.
+     */
+    SKEWED {
+        @Override
+        public double sample(final SplitMix64 random) {
+            final double sample = random.nextDouble();
+            return sample * sample * sample;
+        }
+    };
+
+    // the largest double that is less than one
+    private static final double MAXIMUM_SAMPLE = 1.0 - (1.0 / (1L << 53));
+
+    // ========================================================================
+    /**
+     * @param  random the generator from which the sample is drawn. This cannot
+     *         be <code>null</code>.
+     * @return a sample in <code>[0, 1)</code>
+     */
+    public abstract double sample(SplitMix64 random);
+
+    /**
+     * @param  random the generator from which the sample is drawn. This cannot
+     *         be <code>null</code>.
+     * @param  minimum the smallest value that may be returned
+     * @param  maximum the largest value that may be returned. This must be
+     *         greater than or equal to the minimum.
+     * @return a sample in <code>[minimum, maximum]</code>
+     */
+    public long sample(final SplitMix64 random, final long minimum, final long maximum) {
+        // NOTE:  the range is computed in double precision so that it cannot
+        //        overflow (at the cost of precision for very large ranges)
+        final double range = ((double)maximum - (double)minimum) + 1.0;
+        final long value = minimum + (long)(sample(random) * range);
+        return ((value > maximum) || (value < minimum)) ? maximum : value;
+    }
+}
@@ -0,0 +1,169 @@
+package net.agkn.field_stripe.record.generator;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.writer.IRecordWriter;
+import net.jcip.annotations.NotThreadSafe;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+
+/**
+ * Copies records from an {@link IRecordReader} to an {@link IRecordWriter}
+ * by walking the {@link ICompositeType schema} (without going through field-
+ * stripes). This is used to write {@link SyntheticRecordReader synthetic records}
+ * in any of the record formats. Unset fields (including unset or empty arrays)
+ * are written as {@link IRecordWriter#writeUnsetField(IField) unset} (as the
+ * field-stripe decoder does).
+ *
+ * @author rgrzywinski
+ */
+@NotThreadSafe
+public class RecordTranscoder {
+    private final ICompositeType schema;
+
+    // a reused flag for reading values
+    private final MutableBoolean isSet = new MutableBoolean();
+
+    // ========================================================================
+    /**
+     * @param  schema the {@link ICompositeType schema} of the records that are
+     *         copied. This cannot be <code>null</code>.
+     */
+    public RecordTranscoder(final ICompositeType schema) {
+        this.schema = schema;
+    }
+
+    // ========================================================================
+    /**
+     * Copies the next record from the specified reader to the specified writer.
+     *
+     * @param  recordReader the {@link IRecordReader reader} from which the
+     *         record is read. This cannot be <code>null</code>.
+     * @param  recordWriter the {@link IRecordWriter writer} to which the record
+     *         is written. This cannot be <code>null</code>.
+     * @return <code>true</code> if and only if a record was copied. <code>false</code>
+     *         if there were no records to copy.
+     * @throws OperationFailedException if there was an error reading or writing
+     *         the record.
+     */
+    public boolean transcode(final IRecordReader recordReader, final IRecordWriter recordWriter)
+            throws OperationFailedException {
+        if(!recordReader.hasMoreRecords()) return false/*no record to copy*/;
+
+        recordReader.startRecord();
+        recordWriter.startRecord();
+        copyFields(recordReader, schema, recordWriter);
+        recordWriter.endRecord();
+        recordReader.endRecord();
+
+        return true/*a record was copied*/;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Copies each field of the specified type.
+     */
+    private void copyFields(final IRecordReader recordReader, final ICompositeType type, final IRecordWriter recordWriter)
+            throws OperationFailedException {
+        for(final IField field : type.getFields()) {
+            if(field.getQualifier().isMultiValue()) {
+                if(recordReader.startArray() && recordReader.hasMoreElements()) {
+                    recordWriter.startArray(field);
+                    while(recordReader.hasMoreElements())
+                        copyValue(recordReader, field, recordWriter);
+                    recordWriter.endArray();
+                } else/*unset or empty array*/
+                    recordWriter.writeUnsetField(field);
+                recordReader.endArray()/*by contract*/;
+            } else/*single-valued*/
+                copyValue(recordReader, field, recordWriter);
+        }
+    }
+
+    /**
+     * Copies a single value of the specified field.
+     */
+    private void copyValue(final IRecordReader recordReader, final IField field, final IRecordWriter recordWriter)
+            throws OperationFailedException {
+        if(field.getType().isComposite()) {
+            if(!recordReader.startStructure()) {
+                recordWriter.writeUnsetField(field);
+                return/*unset structure*/;
+            } /* else -- the structure is set */
+            recordWriter.startStructure(field);
+            copyFields(recordReader, (ICompositeType)field.getType(), recordWriter);
+            recordWriter.endStructure();
+            recordReader.endStructure();
+            return;
+        } /* else -- a primitive */
+
+        switch((PrimitiveType)field.getType()) {
+            case BOOLEAN: {
+                final boolean value = recordReader.readBooleanField(isSet);
+                if(isSet.booleanValue()) recordWriter.writeField(field, value); else recordWriter.writeUnsetField(field);
+                break;
+            }
+            case BYTE: {
+                final byte value = recordReader.readByteField(isSet);
+                if(isSet.booleanValue()) recordWriter.writeField(field, value); else recordWriter.writeUnsetField(field);
+                break;
+            }
+            case SHORT: {
+                final short value = recordReader.readShortField(isSet);
+                if(isSet.booleanValue()) recordWriter.writeField(field, value); else recordWriter.writeUnsetField(field);
+                break;
+            }
+            case INT: {
+                final int value = recordReader.readIntField(isSet);
+                if(isSet.booleanValue()) recordWriter.writeField(field, value); else recordWriter.writeUnsetField(field);
+                break;
+            }
+            case LONG: {
+                final long value = recordReader.readLongField(isSet);
+                if(isSet.booleanValue()) recordWriter.writeField(field, value); else recordWriter.writeUnsetField(field);
+                break;
+            }
+            case FLOAT: {
+                final float value = recordReader.readFloatField(isSet);
+                if(isSet.booleanValue()) recordWriter.writeField(field, value); else recordWriter.writeUnsetField(field);
+                break;
+            }
+            case DOUBLE: {
+                final double value = recordReader.readDoubleField(isSet);
+                if(isSet.booleanValue()) recordWriter.writeField(field, value); else recordWriter.writeUnsetField(field);
+                break;
+            }
+            case STRING: {
+                final String value = recordReader.readStringField(isSet);
+                if(isSet.booleanValue()) recordWriter.writeField(field, value); else recordWriter.writeUnsetField(field);
+                break;
+            }
+            case BYTES: {
+                final ByteBuffer value = recordReader.readBytesField(isSet);
+                if(isSet.booleanValue()) recordWriter.writeField(field, value); else recordWriter.writeUnsetField(field);
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.agkn.field_stripe.record.generator;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A small, fast, unsynchronized pseudo-random number generator (Steele, Lea
+ * and Flood's SplitMix64). Unlike <code>java.util.Random</code> it can be
+ * {@link #reseed(long, long) reseeded} from a seed and a stream index (e.g. a
+ * record number) so that any position in a generated sequence can be reached
+ * directly without generating everything before it.
+ *
+ * @author rgrzywinski
+ */
+@NotThreadSafe
+public class SplitMix64 {
+    // the "golden gamma" -- the odd increment of the Weyl sequence
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // the scale from 53 random bits to a double in [0, 1)
+    private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+    // ************************************************************************
+    private long state;
+
+    // the second Gaussian produced by the polar method (if any)
+    private double nextGaussian;
+    private boolean hasNextGaussian = false;
+
+    // ========================================================================
+    /**
+     * @param  seed the initial seed
+     */
+    public SplitMix64(final long seed) {
+        reseed(seed, 0L/*first stream*/);
+    }
+
+    // ========================================================================
+    /**
+     * Resets this generator to the start of the specified stream of the
+     * specified seed. Distinct streams of a seed are statistically independent.
+     *
+     * @param  seed the seed
+     * @param  stream the index of the stream (e.g. a record number)
+     */
+    public void reseed(final long seed, final long stream) {
+        state = mix(seed + mix(stream * GOLDEN_GAMMA));
+        hasNextGaussian = false;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the next pseudo-random <code>long</code> (uniform over all values)
+     */
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    /**
+     * @return the next pseudo-random <code>double</code> uniform in <code>[0, 1)</code>
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * @return the next pseudo-random normally distributed <code>double</code>
+     *         with a mean of zero and a standard deviation of one
+     */
+    // SEE:  Knuth, TAOCP Vol. 2, 3.4.1 Algorithm P (the polar method)
+    public double nextGaussian() {
+        if(hasNextGaussian) {
+            hasNextGaussian = false;
+            return nextGaussian;
+        } /* else -- generate a new pair */
+        double v1, v2, s;
+        do {
+            v1 = 2.0 * nextDouble() - 1.0;
+            v2 = 2.0 * nextDouble() - 1.0;
+            s = v1 * v1 + v2 * v2;
+        } while((s >= 1.0) || (s == 0.0));
+        final double multiplier = StrictMath.sqrt(-2.0 * StrictMath.log(s) / s);
+        nextGaussian = v2 * multiplier;
+        hasNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    // ========================================================================
+    /**
+     * The SplitMix64 finalizer (a variant of MurmurHash3's <code>fmix64</code>).
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,285 @@
+package net.agkn.field_stripe.record.generator;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.agkn.field_stripe.record.FieldQualifier;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.Path;
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * The configuration of the shape of the records generated by a
+ * {@link SyntheticRecordReader}:<p/>
+ * <ul>
+ *   <li>the ratio of unset (<code>null</code>) values for each {@link FieldQualifier}.
+ *       The ratio for a {@link FieldQualifier#ZERO_OR_MORE repeated} field is
+ *       the ratio of unset arrays (array elements are never unset);</li>
+ *   <li>the minimum and maximum number of elements in an array (repeated field)
+ *       and the {@link Distribution} of the lengths;</li>
+ *   <li>the minimum and maximum numeric value and the {@link Distribution}
+ *       of the values. The range is clamped to that of the type of the field;</li>
+ *   <li>the number of distinct values (cardinality) of each string field and
+ *       the {@link Distribution} of those values. Both may be overridden for
+ *       individual fields by their {@link Path}.</li>
+ * </ul>
+ *
+ * The configuration must not be modified while a reader is using it.
+ *
+ * @author rgrzywinski
+ */
+@NotThreadSafe
+public class SyntheticRecordConfig {
+    // the ratio of unset values indexed by FieldQualifier#ordinal()
+    private final double[] nullRatios = new double[FieldQualifier.values().length];
+
+    // the number of elements in an array
+    private int minimumRepetitions = 0;
+    private int maximumRepetitions = 5;
+    private Distribution repetitionDistribution = Distribution.SKEWED;
+
+    // numeric (and boolean) values
+    private long minimumValue = 0L;
+    private long maximumValue = 1000000L;
+    private Distribution valueDistribution = Distribution.UNIFORM;
+
+    // string values
+    private long stringCardinality = 1000L;
+    private Distribution stringDistribution = Distribution.SKEWED;
+    // per-field overrides of the above
+    // NOTE:  a path matches only the fields of the schema from which it came
+    //        since fields are compared by identity
+    private final Map<Path, Long> stringCardinalities = new HashMap<Path, Long>();
+    private final Map<Path, Distribution> stringDistributions = new HashMap<Path, Distribution>();
+
+    // ========================================================================
+    /**
+     * Creates a configuration with the default values: no unset required
+     * fields, 10% unset optional and repeated fields, 0 to 5 (skewed)
+     * elements per array, uniform values in [0, 1000000] and 1000 (skewed)
+     * distinct values per string field.
+     */
+    public SyntheticRecordConfig() {
+        nullRatios[FieldQualifier.ONE.ordinal()] = 0.0;
+        nullRatios[FieldQualifier.ZERO_OR_ONE.ordinal()] = 0.1;
+        nullRatios[FieldQualifier.ZERO_OR_MORE.ordinal()] = 0.1;
+    }
+
+    // ========================================================================
+    /**
+     * @param  qualifier the {@link FieldQualifier} for which the ratio is
+     *         desired. This cannot be <code>null</code>.
+     * @return the ratio in <code>[0, 1]</code> of unset values of fields with
+     *         the specified qualifier
+     */
+    public double getNullRatio(final FieldQualifier qualifier) {
+        return nullRatios[qualifier.ordinal()];
+    }
+
+    /**
+     * @param  qualifier the {@link FieldQualifier} for which the ratio is
+     *         set. This cannot be <code>null</code>.
+     * @param  nullRatio the ratio in <code>[0, 1]</code> of unset values of
+     *         fields with the specified qualifier
+     * @return this configuration for chaining
+     * @throws IllegalArgumentException if the ratio is not in <code>[0, 1]</code>
+     */
+    public SyntheticRecordConfig setNullRatio(final FieldQualifier qualifier, final double nullRatio) {
+        if(!((nullRatio >= 0.0) && (nullRatio <= 1.0))/*also catches NaN*/) throw new IllegalArgumentException("The null ratio must be in [0, 1] (" + nullRatio + ").");
+        nullRatios[qualifier.ordinal()] = nullRatio;
+        return this;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the minimum number of elements in a (set) array
+     */
+    public int getMinimumRepetitions() { return minimumRepetitions; }
+
+    /**
+     * @return the maximum number of elements in an array
+     */
+    public int getMaximumRepetitions() { return maximumRepetitions; }
+
+    /**
+     * @param  minimumRepetitions the minimum number of elements in a (set)
+     *         array. This must be non-negative.
+     * @param  maximumRepetitions the maximum number of elements in an array.
+     *         This must be greater than or equal to the minimum.
+     * @return this configuration for chaining
+     * @throws IllegalArgumentException if the minimum is negative or greater
+     *         than the maximum
+     */
+    public SyntheticRecordConfig setRepetitions(final int minimumRepetitions, final int maximumRepetitions) {
+        if(minimumRepetitions < 0) throw new IllegalArgumentException("The minimum repetitions must be non-negative (" + minimumRepetitions + ").");
+        if(minimumRepetitions > maximumRepetitions) throw new IllegalArgumentException("The minimum repetitions (" + minimumRepetitions + ") must be less than or equal to the maximum (" + maximumRepetitions + ").");
+        this.minimumRepetitions = minimumRepetitions;
+        this.maximumRepetitions = maximumRepetitions;
+        return this;
+    }
+
+    /**
+     * @return the {@link Distribution} of the number of elements in an array.
+     *         This will never be <code>null</code>.
+     */
+    public Distribution getRepetitionDistribution() { return repetitionDistribution; }
+
+    /**
+     * @param  repetitionDistribution the {@link Distribution} of the number of
+     *         elements in an array. This cannot be <code>null</code>.
+     * @return this configuration for chaining
+     */
+    public SyntheticRecordConfig setRepetitionDistribution(final Distribution repetitionDistribution) {
+        if(repetitionDistribution == null) throw new IllegalArgumentException("The repetition distribution cannot be null.");
+        this.repetitionDistribution = repetitionDistribution;
+        return this;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the minimum numeric value
+     */
+    public long getMinimumValue() { return minimumValue; }
+
+    /**
+     * @return the maximum numeric value
+     */
+    public long getMaximumValue() { return maximumValue; }
+
+    /**
+     * @param  minimumValue the minimum numeric value. Values of integral types
+     *         whose range does not include this are clamped.
+     * @param  maximumValue the maximum numeric value. This must be greater
+     *         than or equal to the minimum. Values of integral types whose
+     *         range does not include this are clamped.
+     * @return this configuration for chaining
+     * @throws IllegalArgumentException if the minimum is greater than the maximum
+     */
+    public SyntheticRecordConfig setValues(final long minimumValue, final long maximumValue) {
+        if(minimumValue > maximumValue) throw new IllegalArgumentException("The minimum value (" + minimumValue + ") must be less than or equal to the maximum (" + maximumValue + ").");
+        this.minimumValue = minimumValue;
+        this.maximumValue = maximumValue;
+        return this;
+    }
+
+    /**
+     * @return the {@link Distribution} of numeric and boolean values. This
+     *         will never be <code>null</code>.
+     */
+    public Distribution getValueDistribution() { return valueDistribution; }
+
+    /**
+     * @param  valueDistribution the {@link Distribution} of numeric and
+     *         boolean values. This cannot be <code>null</code>.
+     * @return this configuration for chaining
+     */
+    public SyntheticRecordConfig setValueDistribution(final Distribution valueDistribution) {
+        if(valueDistribution == null) throw new IllegalArgumentException("The value distribution cannot be null.");
+        this.valueDistribution = valueDistribution;
+        return this;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the number of distinct values of each string field
+     */
+    public long getStringCardinality() { return stringCardinality; }
+
+    /**
+     * @param  stringCardinality the number of distinct values of each string
+     *         field. This must be positive.
+     * @return this configuration for chaining
+     * @throws IllegalArgumentException if the cardinality is not positive
+     */
+    public SyntheticRecordConfig setStringCardinality(final long stringCardinality) {
+        if(stringCardinality <= 0L) throw new IllegalArgumentException("The string cardinality must be positive (" + stringCardinality + ").");
+        this.stringCardinality = stringCardinality;
+        return this;
+    }
+
+    /**
+     * @param  field the string (or bytes) field for which the cardinality is
+     *         desired. This cannot be <code>null</code>.
+     * @return the number of distinct values of the specified field. This is
+     *         the {@link #setStringCardinality(Path, long) override} of its
+     *         path if there is one and the {@link #getStringCardinality() default}
+     *         otherwise.
+     */
+    public long getStringCardinality(final IField field) {
+        final Long stringCardinality = stringCardinalities.get(field.getPath());
+        return (stringCardinality == null) ? this.stringCardinality : stringCardinality.longValue();
+    }
+
+    /**
+     * @param  path the {@link Path} of the string (or bytes) field whose
+     *         cardinality is overridden. This cannot be <code>null</code>.
+     * @param  stringCardinality the number of distinct values of the field.
+     *         This must be positive.
+     * @return this configuration for chaining
+     * @throws IllegalArgumentException if the cardinality is not positive
+     */
+    public SyntheticRecordConfig setStringCardinality(final Path path, final long stringCardinality) {
+        if(stringCardinality <= 0L) throw new IllegalArgumentException("The string cardinality of \"" + path + "\" must be positive (" + stringCardinality + ").");
+        stringCardinalities.put(path, stringCardinality);
+        return this;
+    }
+
+    /**
+     * @return the {@link Distribution} of string values. This will never be
+     *         <code>null</code>.
+     */
+    public Distribution getStringDistribution() { return stringDistribution; }
+
+    /**
+     * @param  stringDistribution the {@link Distribution} of string values.
+     *         This cannot be <code>null</code>.
+     * @return this configuration for chaining
+     */
+    public SyntheticRecordConfig setStringDistribution(final Distribution stringDistribution) {
+        if(stringDistribution == null) throw new IllegalArgumentException("The string distribution cannot be null.");
+        this.stringDistribution = stringDistribution;
+        return this;
+    }
+
+    /**
+     * @param  field the string (or bytes) field for which the distribution is
+     *         desired. This cannot be <code>null</code>.
+     * @return the {@link Distribution} of the values of the specified field.
+     *         This is the {@link #setStringDistribution(Path, Distribution) override}
+     *         of its path if there is one and the {@link #getStringDistribution() default}
+     *         otherwise. This will never be <code>null</code>.
+     */
+    public Distribution getStringDistribution(final IField field) {
+        final Distribution stringDistribution = stringDistributions.get(field.getPath());
+        return (stringDistribution == null) ? this.stringDistribution : stringDistribution;
+    }
+
+    /**
+     * @param  path the {@link Path} of the string (or bytes) field whose
+     *         distribution is overridden. This cannot be <code>null</code>.
+     * @param  stringDistribution the {@link Distribution} of the values of the
+     *         field. This cannot be <code>null</code>.
+     * @return this configuration for chaining
+     */
+    public SyntheticRecordConfig setStringDistribution(final Path path, final Distribution stringDistribution) {
+        if(stringDistribution == null) throw new IllegalArgumentException("The string distribution of \"" + path + "\" cannot be null.");
+        stringDistributions.put(path, stringDistribution);
+        return this;
+    }
+}
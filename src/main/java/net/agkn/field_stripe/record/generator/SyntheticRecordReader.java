@@ -0,0 +1,523 @@
+package net.agkn.field_stripe.record.generator;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.EnumSymbolTable;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.jcip.annotations.NotThreadSafe;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+
+/**
+ * An {@link IRecordReader} that generates synthetic records of a {@link ICompositeType schema}
+ * whose shape (unset ratios, array lengths and values) is defined by a
+ * {@link SyntheticRecordConfig}. Because the values are generated as they are
+ * read, this can be used to drive a {@link RootFieldStripeEncoder} (or a
+ * {@link RecordTranscoder} to any record format) directly with an arbitrarily
+ * large number of records without holding them in memory.<p/>
+ *
+ * Generation is deterministic: the generator is {@link SplitMix64#reseed(long, long) reseeded}
+ * at the start of each record from the seed and the index of the record. The
+ * same seed, schema and configuration always produce the same records and any
+ * range of records (e.g. one per parallel task) can be generated independently
+ * by specifying the index of the first record. Records must be read in schema
+ * order (as an encoder does). Fields that are {@link #skipField() skipped} are
+ * generated (and discarded) so that skipping does not change any other value.
+ *
+ * @author rgrzywinski
+ */
+@NotThreadSafe
+public class SyntheticRecordReader implements IRecordReader {
+    // the initial nesting depth (grown as needed)
+    private static final int INITIAL_DEPTH = 8;
+
+    // ************************************************************************
+    private final ICompositeType schema;
+    private final SyntheticRecordConfig config;
+    private final long seed;
+
+    // the index of the first record and the number of records to generate
+    private final long firstRecordIndex;
+    private final long recordCount;
+
+    private final SplitMix64 random;
+    private boolean isClosed = false/*by default not closed*/;
+
+    // the number of records that have been started
+    private long recordsStarted = 0L;
+
+    // the (reused) value of bytes fields
+    private final ByteBuffer bytesValue = ByteBuffer.allocate(8/*a long*/);
+
+    // ------------------------------------------------------------------------
+    // the kind of each nesting level. Records and structures have their type
+    // and the position of the next field. Arrays have their (repeated) field
+    // and the number of elements remaining. The depth is -1 if no record has
+    // been started.
+    private static enum Kind { RECORD, STRUCTURE, ARRAY };
+    private Kind[] kinds = new Kind[INITIAL_DEPTH];
+    private ICompositeType[] types = new ICompositeType[INITIAL_DEPTH];
+    private IField[] arrayFields = new IField[INITIAL_DEPTH];
+    private int[] positions = new int[INITIAL_DEPTH];
+    private int depth = -1/*no record to start*/;
+
+    // ========================================================================
+    /**
+     * @param  schema the {@link ICompositeType schema} of the generated records.
+     *         This cannot be <code>null</code>.
+     * @param  config the {@link SyntheticRecordConfig configuration} of the
+     *         generated records. This cannot be <code>null</code> and must not
+     *         be modified while this reader is in use.
+     * @param  seed the seed from which the records are generated
+     * @param  firstRecordIndex the (zero-based) index of the first generated
+     *         record. This must be non-negative.
+     * @param  recordCount the number of records to generate. This must be
+     *         non-negative.
+     */
+    public SyntheticRecordReader(final ICompositeType schema, final SyntheticRecordConfig config, final long seed, final long firstRecordIndex, final long recordCount) {
+        if(firstRecordIndex < 0L) throw new IllegalArgumentException("The first record index must be non-negative (" + firstRecordIndex + ").");
+        if(recordCount < 0L) throw new IllegalArgumentException("The record count must be non-negative (" + recordCount + ").");
+        this.schema = schema;
+        this.config = config;
+        this.seed = seed;
+        this.firstRecordIndex = firstRecordIndex;
+        this.recordCount = recordCount;
+        this.random = new SplitMix64(seed);
+    }
+
+    /**
+     * Convenience constructor that generates the specified number of records
+     * starting with the first (zero-th) record.
+     *
+     * @see #SyntheticRecordReader(ICompositeType, SyntheticRecordConfig, long, long, long)
+     */
+    public SyntheticRecordReader(final ICompositeType schema, final SyntheticRecordConfig config, final long seed, final long recordCount) {
+        this(schema, config, seed, 0L/*first record*/, recordCount);
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startRecord()
+     */
+    @Override
+    public void startRecord()
+            throws IllegalStateException, OperationFailedException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth >= 0) throw new IllegalStateException("A record has already been started in the record reader.")/*by contract*/;
+        if(!hasMoreRecords()) throw new InvalidDataException("There are no more records.");
+
+        random.reseed(seed, firstRecordIndex + recordsStarted);
+        recordsStarted++;
+        push(Kind.RECORD, schema, null/*not an array*/, 0/*first field*/);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endRecord()
+     */
+    @Override
+    public void endRecord()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if((depth != 0) || (kinds[depth] != Kind.RECORD)) throw new IllegalStateException("A record has not been started or is nested in the record reader.")/*by contract*/;
+        final int unreadFieldCount = schema.getFields().size() - positions[depth];
+        if(unreadFieldCount > 0) throw new InvalidDataException("The record has " + unreadFieldCount + " unread field(s).");
+        depth--;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreRecords()
+     */
+    @Override
+    public boolean hasMoreRecords()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth >= 0) throw new IllegalStateException("A record has been started in the record reader. This can only be called after a record has finished.")/*by contract*/;
+        return (recordsStarted < recordCount);
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startStructure()
+     */
+    @Override
+    public boolean startStructure()
+            throws IllegalStateException, InvalidDataException {
+        final boolean isElement = isInArray();
+        final IField field = nextField();
+        if(!field.getType().isComposite()) throw new InvalidDataException("Expected a structure but field \"" + field.getName() + "\" is a " + field.getType() + ".");
+        if(!isElement && field.getQualifier().isMultiValue()) throw new InvalidDataException("Expected a structure but field \"" + field.getName() + "\" is repeated.");
+        if(!isElement && isUnset(field)) return false/*by contract*/;
+
+        push(Kind.STRUCTURE, (ICompositeType)field.getType(), null/*not an array*/, 0/*first field*/);
+        return true/*set structure*/;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endStructure()
+     */
+    @Override
+    public void endStructure()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if((depth < 0) || (kinds[depth] != Kind.STRUCTURE)) throw new IllegalStateException("A structure has not been started in the record reader.")/*by contract*/;
+        final int unreadFieldCount = types[depth].getFields().size() - positions[depth];
+        if(unreadFieldCount > 0) throw new InvalidDataException("The structure has " + unreadFieldCount + " unread field(s).");
+        depth--;
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startArray()
+     */
+    @Override
+    public boolean startArray()
+            throws IllegalStateException, InvalidDataException {
+        if(isInArray()) throw new InvalidDataException("Arrays cannot be directly nested.");
+        final IField field = nextField();
+        if(!field.getQualifier().isMultiValue()) throw new InvalidDataException("Expected an array but field \"" + field.getName() + "\" is not repeated.");
+
+        // NOTE:  an unset array is read as an empty array (endArray() must
+        //        always be called by contract)
+        final int elementCount;
+        if(isUnset(field))
+            elementCount = 0/*unset*/;
+        else/*set*/
+            elementCount = (int)config.getRepetitionDistribution().sample(random, config.getMinimumRepetitions(), config.getMaximumRepetitions());
+        push(Kind.ARRAY, null/*not a structure*/, field, elementCount);
+        return (elementCount > 0);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreElements()
+     */
+    @Override
+    public boolean hasMoreElements()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if((depth < 0) || (kinds[depth] != Kind.ARRAY)) throw new IllegalStateException("An array has not been started in the record reader.")/*by contract*/;
+        return (positions[depth] > 0);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endArray()
+     */
+    @Override
+    public void endArray()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if((depth < 0) || (kinds[depth] != Kind.ARRAY)) throw new IllegalStateException("An array has not been started in the record reader.")/*by contract*/;
+        if(positions[depth] > 0) throw new InvalidDataException("The array has " + positions[depth] + " unread element(s).");
+        depth--;
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readByteField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public byte readByteField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!nextPrimitive(PrimitiveType.BYTE, isSet)) return 0/*unset*/;
+        return (byte)nextIntegral(Byte.MIN_VALUE, Byte.MAX_VALUE);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readShortField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public short readShortField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!nextPrimitive(PrimitiveType.SHORT, isSet)) return 0/*unset*/;
+        return (short)nextIntegral(Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readIntField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public int readIntField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!nextPrimitive(PrimitiveType.INT, isSet)) return 0/*unset*/;
+        return (int)nextIntegral(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readLongField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public long readLongField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!nextPrimitive(PrimitiveType.LONG, isSet)) return 0L/*unset*/;
+        return nextIntegral(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readFloatField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public float readFloatField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!nextPrimitive(PrimitiveType.FLOAT, isSet)) return 0.0f/*unset*/;
+        return (float)nextReal();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readDoubleField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public double readDoubleField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!nextPrimitive(PrimitiveType.DOUBLE, isSet)) return 0.0/*unset*/;
+        return nextReal();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readBooleanField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public boolean readBooleanField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!nextPrimitive(PrimitiveType.BOOLEAN, isSet)) return false/*unset*/;
+        return (config.getValueDistribution().sample(random) >= 0.5);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readStringField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public String readStringField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final IField field = peekField();
+        if(!nextPrimitive(PrimitiveType.STRING, isSet)) return null/*unset*/;
+        final EnumSymbolTable enumSymbolTable = field.getEnumSymbolTable();
+        if(enumSymbolTable != null) /*enumerated*/
+            return enumSymbolTable.getName((int)config.getStringDistribution(field).sample(random, 0L, enumSymbolTable.getSymbolCount() - 1L));
+        /* else -- not enumerated */
+        final long index = config.getStringDistribution(field).sample(random, 0L, config.getStringCardinality(field) - 1L);
+        return field.getName() + "-" + index;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readBytesField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public ByteBuffer readBytesField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final IField field = peekField();
+        if(!nextPrimitive(PrimitiveType.BYTES, isSet)) return null/*unset*/;
+        // NOTE:  bytes have the same cardinality and distribution as strings.
+        //        The buffer is reused (by contract it is only valid until the
+        //        next value is read).
+        final long index = config.getStringDistribution(field).sample(random, 0L, config.getStringCardinality(field) - 1L);
+        bytesValue.clear();
+        bytesValue.putLong(0, index);
+        return bytesValue;
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#skipField()
+     */
+    @Override
+    public void skipField()
+            throws IllegalStateException, InvalidDataException {
+        // NOTE:  the skipped field is read in its entirety so that exactly the
+        //        same values are drawn as if it had been read
+        final boolean isElement = isInArray();
+        final IField field = peekField();
+        if(!isElement && field.getQualifier().isMultiValue()) {
+            startArray();
+            while(hasMoreElements())
+                skipField();
+            endArray();
+            return;
+        } /* else -- a single value (or an array element) */
+
+        if(field.getType().isComposite()) {
+            if(!startStructure()) return/*unset structure*/;
+            while(positions[depth] < types[depth].getFields().size())
+                skipField();
+            endStructure();
+            return;
+        } /* else -- a primitive */
+
+        final MutableBoolean isSet = new MutableBoolean();
+        switch((PrimitiveType)field.getType()) {
+            case BOOLEAN:
+                readBooleanField(isSet);
+                break;
+            case BYTE:
+                readByteField(isSet);
+                break;
+            case SHORT:
+                readShortField(isSet);
+                break;
+            case INT:
+                readIntField(isSet);
+                break;
+            case LONG:
+                readLongField(isSet);
+                break;
+            case FLOAT:
+                readFloatField(isSet);
+                break;
+            case DOUBLE:
+                readDoubleField(isSet);
+                break;
+            case STRING:
+                readStringField(isSet);
+                break;
+            case BYTES:
+                readBytesField(isSet);
+                break;
+        }
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#close()
+     */
+    @Override
+    public void close()
+            throws OperationFailedException {
+        isClosed = true/*by definition*/;
+    }
+
+    // ========================================================================
+    /**
+     * @return <code>true</code> if the current nesting level is an array (i.e.
+     *         the next value is an element of a repeated field).
+     */
+    private boolean isInArray() {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth < 0) throw new IllegalStateException("A record has not been started in the record reader.")/*by contract*/;
+        return (kinds[depth] == Kind.ARRAY);
+    }
+
+    /**
+     * @return the field of the next value without consuming it. This will
+     *         never be <code>null</code>.
+     */
+    private IField peekField()
+            throws IllegalStateException, InvalidDataException {
+        if(isInArray()) {
+            if(positions[depth] <= 0) throw new InvalidDataException("There are no more elements in the array.");
+            return arrayFields[depth];
+        } /* else -- a record or structure */
+
+        final List<IField> fields = types[depth].getFields();
+        if(positions[depth] >= fields.size()) throw new InvalidDataException("There are no more fields to read.");
+        return fields.get(positions[depth]);
+    }
+
+    /**
+     * @return the field of the next value and consumes it. This will never be
+     *         <code>null</code>.
+     */
+    private IField nextField()
+            throws IllegalStateException, InvalidDataException {
+        final IField field = peekField();
+        if(kinds[depth] == Kind.ARRAY)
+            positions[depth]--/*one less element*/;
+        else/*a record or structure*/
+            positions[depth]++/*next field*/;
+        return field;
+    }
+
+    /**
+     * Consumes the next value which must be a primitive of the specified type
+     * and determines if it is set.
+     *
+     * @return <code>true</code> if the value is set (and should be generated).
+     *         <code>false</code> otherwise.
+     */
+    private boolean nextPrimitive(final PrimitiveType type, final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final boolean isElement = isInArray();
+        final IField field = nextField();
+        if(field.getType() != type) throw new InvalidDataException("Expected a " + type + " but field \"" + field.getName() + "\" is a " + field.getType() + ".");
+        if(!isElement && field.getQualifier().isMultiValue()) throw new InvalidDataException("Expected a " + type + " but field \"" + field.getName() + "\" is repeated.");
+
+        // NOTE:  array elements are never unset
+        final boolean set = isElement || !isUnset(field);
+        isSet.setValue(set);
+        return set;
+    }
+
+    /**
+     * @return <code>true</code> if the (non-element) value of the specified
+     *         field is to be unset
+     */
+    private boolean isUnset(final IField field) {
+        // NOTE:  a sample is always drawn (even if the ratio is zero) so that
+        //        changing a ratio does not shift every subsequent value
+        return (random.nextDouble() < config.getNullRatio(field.getQualifier()));
+    }
+
+    /**
+     * @return the next integral value clamped to the specified type range
+     */
+    private long nextIntegral(final long typeMinimum, final long typeMaximum) {
+        final long minimum = Math.min(Math.max(config.getMinimumValue(), typeMinimum), typeMaximum);
+        final long maximum = Math.min(Math.max(config.getMaximumValue(), typeMinimum), typeMaximum);
+        return config.getValueDistribution().sample(random, minimum, maximum);
+    }
+
+    /**
+     * @return the next real value in the configured range
+     */
+    private double nextReal() {
+        final double minimum = config.getMinimumValue();
+        final double maximum = config.getMaximumValue();
+        return minimum + (config.getValueDistribution().sample(random) * (maximum - minimum));
+    }
+
+    /**
+     * Pushes a new nesting level (growing the stack as needed).
+     */
+    private void push(final Kind kind, final ICompositeType type, final IField arrayField, final int position) {
+        depth++;
+        if(depth >= kinds.length) {
+            final int newLength = kinds.length << 1;
+            final Kind[] newKinds = new Kind[newLength];
+            final ICompositeType[] newTypes = new ICompositeType[newLength];
+            final IField[] newArrayFields = new IField[newLength];
+            final int[] newPositions = new int[newLength];
+            System.arraycopy(kinds, 0, newKinds, 0, kinds.length);
+            System.arraycopy(types, 0, newTypes, 0, types.length);
+            System.arraycopy(arrayFields, 0, newArrayFields, 0, arrayFields.length);
+            System.arraycopy(positions, 0, newPositions, 0, positions.length);
+            kinds = newKinds;
+            types = newTypes;
+            arrayFields = newArrayFields;
+            positions = newPositions;
+        } /* else -- there is room */
+        kinds[depth] = kind;
+        types[depth] = type;
+        arrayFields[depth] = arrayField;
+        positions[depth] = position;
+    }
+}
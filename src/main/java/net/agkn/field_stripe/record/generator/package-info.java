@@ -0,0 +1,28 @@
+package net.agkn.field_stripe.record.generator;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A deterministic generator of synthetic records for load and scale testing.
+ * The primary entry point is {@link SyntheticRecordReader} which is an
+ * {@link net.agkn.field_stripe.record.reader.IRecordReader record reader} that
+ * generates the records of any {@link net.agkn.field_stripe.record.ICompositeType schema}
+ * as they are read. Its records can be encoded directly into field-stripes or
+ * {@link RecordTranscoder copied} to any {@link net.agkn.field_stripe.record.writer.IRecordWriter record writer}.
+ *
+ * @author rgrzywinski
+ */
@@ -0,0 +1,458 @@
+package net.agkn.field_stripe.record.protobuf;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import net.agkn.field_stripe.exception.DeveloperException;
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.EnumSymbolTable;
+import net.agkn.field_stripe.record.FieldQualifier;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.IFieldType;
+import net.agkn.field_stripe.record.Path;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.jcip.annotations.ThreadSafe;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * A cache of compiled (resolved) {@link ICompositeType schemas} so that the
+ * Protobuf IDL (*.proto) does not need to be parsed and the schema does not
+ * need to be built on each run. Each schema is cached in its own file in the
+ * cache path which is named by its {@link #computeKey(File, String) key}: a
+ * SHA-1 hash of the contents and (relative) names of all Protobuf files in the
+ * IDL base path and of the message name. A change to any Protobuf file results
+ * in a new key and therefore a cache miss.<p/>
+ *
+ * The structure of a cached schema is:<p/>
+ * <pre>
+ *   5 bytes: magic number ('fschm')
+ *   1 byte: version number (0 is reserved)
+ *   composite type:
+ *     string: name
+ *     vlen uint32: number of fields
+ *     for each field:
+ *       vlen uint32: index
+ *       1 byte: {@link FieldQualifier} ordinal
+ *       string: name
+ *       1 byte: {@link ProtobufType} ordinal
+ *       if not {@link ProtobufType#MESSAGE}: 1 byte: {@link PrimitiveType} ordinal
+ *       if {@link ProtobufType#MESSAGE}: composite type (recursively)
+ *       if {@link ProtobufType#ENUM}:
+ *         vlen uint32: number of symbols
+ *         for each symbol: string: name, vlen int32: number
+ * </pre>
+ *
+ * Paths are not stored since they are {@link ProtobufCompositeType#resolve(Path) resolved}
+ * when the schema is read. All values are written using the
+ * <a href="https://developers.google.com/protocol-buffers/docs/encoding">Protobuf encoding format</a>.<p/>
+ *
+ * The cache is best-effort: a cached schema that cannot be read is treated as
+ * a miss and a schema that cannot be written is simply not cached. Schemas
+ * are written to a temporary file which is then renamed so that concurrent
+ * runs never see a partially written schema.<p/>
+ *
+ * Since a key can be computed by anyone with the IDL, a cached schema is only
+ * trusted if it (and the cache path) is owned by the current user: otherwise
+ * another user could plant a schema for a key. A cache path that is not owned
+ * by the current user (or whose owner cannot be determined, e.g. before Java 7)
+ * is never read or written. By default the cache is in the current user's
+ * home directory.
+ *
+ * @author rgrzywinski
+ */
+@ThreadSafe
+public class CompiledSchemaCache {
+    // the system property that specifies the cache path. If the property is
+    // empty then the cache is disabled. If the property is not set then the
+    // default path is used.
+    public static final String CACHE_PATH_PROPERTY = "net.agkn.field_stripe.schemaCachePath";
+    public static final String DEFAULT_CACHE_DIRECTORY = ".field_stripe/schema_cache"/*in user.home*/;
+
+    // the magic number used to identify cached schemas
+    public static final byte[] MAGIC = { 'f', 's', 'c', 'h', 'm' };
+
+    // the version of the cached schemas. This is included in the key so that
+    // a change in version results in a cache miss.
+    public static final byte VERSION = 1/*0 is reserved*/;
+
+    // the name of the file extension
+    public static final String EXTENSION = ".fschema";
+
+    // the reflected Java 7 file owner API (all null if it is not available)
+    private static final Method TO_PATH;/*File#toPath()*/
+    private static final Method GET_OWNER;/*Files.getOwner(Path, LinkOption...)*/
+    private static final Object NO_LINK_OPTIONS;/*LinkOption[0]*/
+    static {
+        Method toPath = null, getOwner = null;
+        Object noLinkOptions = null;
+        try {
+            final Class<?> linkOptionClass = Class.forName("java.nio.file.LinkOption");
+            noLinkOptions = Array.newInstance(linkOptionClass, 0);
+            toPath = File.class.getMethod("toPath");
+            getOwner = Class.forName("java.nio.file.Files").getMethod("getOwner", Class.forName("java.nio.file.Path"), noLinkOptions.getClass());
+        } catch(final Exception e) {
+            // NOTE:  the owner of a file cannot be determined so nothing is
+            //        cached
+            getOwner = null/*by definition*/;
+        }
+        TO_PATH = toPath;
+        GET_OWNER = getOwner;
+        NO_LINK_OPTIONS = noLinkOptions;
+    }
+
+    // ************************************************************************
+    private final File cachePath;
+
+    // ========================================================================
+    /**
+     * @return the cache in the path specified by the {@value #CACHE_PATH_PROPERTY}
+     *         system property (or the {@link #DEFAULT_CACHE_DIRECTORY default directory}
+     *         in the current user's home directory if not set). This will be
+     *         <code>null</code> if the property is empty (i.e. caching is disabled)
+     *         or if it is not set and there is no home directory.
+     */
+    public static CompiledSchemaCache createDefault() {
+        final String cachePathname = System.getProperty(CACHE_PATH_PROPERTY);
+        if(cachePathname == null) {
+            final String homePathname = System.getProperty("user.home");
+            if((homePathname == null) || (homePathname.trim().length() < 1)) return null/*no per-user path*/;
+            return new CompiledSchemaCache(new File(homePathname, DEFAULT_CACHE_DIRECTORY));
+        } /* else -- the path is specified */
+        if(cachePathname.trim().length() < 1) return null/*disabled*/;
+        return new CompiledSchemaCache(new File(cachePathname));
+    }
+
+    /**
+     * @param  cachePath the path in which the compiled schemas are cached.
+     *         This cannot be <code>null</code>. It is created (if possible)
+     *         when a schema is first {@link #put(String, ICompositeType) cached}.
+     *         It is only used if it is owned by the current user.
+     */
+    public CompiledSchemaCache(final File cachePath) {
+        this.cachePath = cachePath;
+    }
+
+    // ========================================================================
+    /**
+     * @return the path in which the compiled schemas are cached. This will
+     *         never be <code>null</code>.
+     */
+    public File getCachePath() { return cachePath; }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @param  protobufPath the IDL base path. All Protobuf (*.proto) files in
+     *         this path (recursively) contribute to the key. This cannot be
+     *         <code>null</code>.
+     * @param  fqMessageName the fully-qualified name of the message definition
+     *         of the schema. This cannot be <code>null</code>.
+     * @return the key of the schema. This will never be <code>null</code>.
+     * @throws OperationFailedException if any Protobuf file could not be read.
+     */
+    public String computeKey(final File protobufPath, final String fqMessageName)
+            throws OperationFailedException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch(final NoSuchAlgorithmException nsae) {
+            throw new DeveloperException("SHA-1 must be supported by all JVMs.");
+        }
+        digest.update(VERSION);
+        update(digest, fqMessageName);
+
+        // NOTE:  the files are sorted by relative name so that the key does
+        //        not depend on the order of the directory listing
+        final String basePathname = protobufPath.getAbsolutePath();
+        final List<String> relativeNames = new ArrayList<String>();
+        final Iterator<File> protobufFiles = FileUtils.iterateFiles(protobufPath, new String[] { "proto" }, true/*recursively*/);
+        while(protobufFiles.hasNext()) {
+            final File protobufFile = protobufFiles.next();
+            if(protobufFile.isDirectory()) continue/*ignore directories*/;
+            relativeNames.add(protobufFile.getAbsolutePath().substring(basePathname.length()));
+        }
+        Collections.sort(relativeNames);
+        try {
+            for(final String relativeName : relativeNames) {
+                final byte[] contents = FileUtils.readFileToByteArray(new File(basePathname + relativeName));
+                update(digest, relativeName);
+                update(digest, Integer.toString(contents.length));
+                digest.update(contents);
+            }
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+
+        final StringBuilder key = new StringBuilder();
+        for(final byte b : digest.digest())
+            key.append(Character.forDigit((b >> 4) & 0x0F, 16)).append(Character.forDigit(b & 0x0F, 16));
+        return key.toString();
+    }
+
+    /**
+     * Updates the digest with the specified string and a terminator (so that
+     * adjacent strings cannot be confused).
+     */
+    private static void update(final MessageDigest digest, final String string) {
+        try {
+            digest.update(string.getBytes("UTF-8"));
+        } catch(final IOException ioe) {
+            throw new DeveloperException("UTF-8 must be supported by all JVMs.");
+        }
+        digest.update((byte)0/*terminator*/);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @param  key the {@link #computeKey(File, String) key} of the schema. This
+     *         cannot be <code>null</code>.
+     * @return the cached (and resolved) schema for the specified key or <code>null</code>
+     *         if there is no valid schema cached for the key (or if the cached
+     *         schema or the cache path is not owned by the current user).
+     */
+    public ICompositeType get(final String key) {
+        final File cacheFile = getCacheFile(key);
+        if(!cacheFile.isFile()) return null/*cache miss*/;
+        if(!isOwnedByCurrentUser(cachePath) || !isOwnedByCurrentUser(cacheFile)) return null/*not trusted*/;
+
+        InputStream inputStream = null;
+        try {
+            inputStream = new BufferedInputStream(new FileInputStream(cacheFile));
+            return read(inputStream);
+        } catch(final IOException ioe) {
+            return null/*treat as a cache miss*/;
+        } catch(final OperationFailedException ofe) {
+            return null/*treat as a cache miss*/;
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Caches the specified schema. Any failure to cache the schema is ignored
+     * as is a cache path that is not owned by the current user.
+     *
+     * @param  key the {@link #computeKey(File, String) key} of the schema. This
+     *         cannot be <code>null</code>.
+     * @param  schema the schema to be cached. This cannot be <code>null</code>.
+     */
+    public void put(final String key, final ICompositeType schema) {
+        if(!cachePath.isDirectory() && !cachePath.mkdirs()) return/*cannot cache*/;
+        if(!isOwnedByCurrentUser(cachePath)) return/*not trusted*/;
+
+        final File cacheFile = getCacheFile(key);
+        File temporaryFile = null;
+        OutputStream outputStream = null;
+        try {
+            temporaryFile = File.createTempFile(key, ".tmp", cachePath);
+            outputStream = new BufferedOutputStream(new FileOutputStream(temporaryFile));
+            write(schema, outputStream);
+            outputStream.close();
+            outputStream = null/*closed*/;
+
+            // NOTE:  if another run has cached the same schema concurrently then
+            //        the rename may fail which is fine as the schemas are equal
+            if(!temporaryFile.renameTo(cacheFile)) temporaryFile.delete();
+            temporaryFile = null/*renamed or deleted*/;
+        } catch(final IOException ioe) {
+            /* ignore -- the schema is simply not cached */
+        } catch(final OperationFailedException ofe) {
+            /* ignore -- the schema is simply not cached */
+        } finally {
+            IOUtils.closeQuietly(outputStream);
+            if(temporaryFile != null) temporaryFile.delete();
+        }
+    }
+
+    /**
+     * @return the file in which the schema with the specified key is cached.
+     *         This will never be <code>null</code>.
+     */
+    private File getCacheFile(final String key) {
+        return new File(cachePath, (key + EXTENSION));
+    }
+
+    /**
+     * @return <code>true</code> if the specified file is owned by the current
+     *         user (i.e. the <code>user.name</code> system property). <code>false</code>
+     *         if it is not or if its owner cannot be determined.
+     */
+    /*package*/ static boolean isOwnedByCurrentUser(final File file) {
+        if(GET_OWNER == null) return false/*cannot be determined*/;
+        final String userName = System.getProperty("user.name");
+        if(userName == null) return false/*cannot be determined*/;
+        final String ownerName;
+        try {
+            ownerName = ((Principal)GET_OWNER.invoke(null/*static*/, TO_PATH.invoke(file), NO_LINK_OPTIONS)).getName();
+        } catch(final Exception e) {
+            return false/*cannot be determined (e.g. I/O error or unsupported)*/;
+        }
+        // NOTE:  on Windows the owner is qualified by its domain (separated by
+        //        a backslash)
+        return ownerName.equals(userName) || ownerName.endsWith("\\" + userName);
+    }
+
+    // ========================================================================
+    /**
+     * Writes the specified schema to the specified stream. The stream is
+     * flushed but not closed.
+     *
+     * @param  schema the schema to be written. This cannot be <code>null</code>.
+     * @param  outputStream the stream to which the schema is written. This
+     *         cannot be <code>null</code>.
+     * @throws OperationFailedException if the schema could not be written for
+     *         any reason. Subclasses may contain additional information as to
+     *         the nature of the failure.
+     */
+    public static void write(final ICompositeType schema, final OutputStream outputStream)
+            throws OperationFailedException {
+        final CodedOutputStream protobufOutput = CodedOutputStream.newInstance(outputStream);
+        try {
+            protobufOutput.writeRawBytes(MAGIC);
+            protobufOutput.writeRawByte(VERSION);
+            writeCompositeType(protobufOutput, schema);
+            protobufOutput.flush();
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    /**
+     * Recursively writes the specified composite type.
+     */
+    private static void writeCompositeType(final CodedOutputStream protobufOutput, final ICompositeType compositeType)
+            throws IOException {
+        protobufOutput.writeStringNoTag(compositeType.getName());
+        final List<IField> fields = compositeType.getFields();
+        protobufOutput.writeUInt32NoTag(fields.size());
+        for(final IField field : fields) {
+            final ProtobufType protobufType = ProtobufType.forField(field);
+            protobufOutput.writeUInt32NoTag(field.getIndex());
+            protobufOutput.writeRawByte(field.getQualifier().ordinal());
+            protobufOutput.writeStringNoTag(field.getName());
+            protobufOutput.writeRawByte(protobufType.ordinal());
+            if(protobufType == ProtobufType.MESSAGE)
+                writeCompositeType(protobufOutput, (ICompositeType)field.getType());
+            else/*primitive*/
+                protobufOutput.writeRawByte(((PrimitiveType)field.getType()).ordinal());
+            if(protobufType == ProtobufType.ENUM) {
+                final EnumSymbolTable enumSymbolTable = field.getEnumSymbolTable();
+                protobufOutput.writeUInt32NoTag(enumSymbolTable.getSymbolCount());
+                for(int j=0; j<enumSymbolTable.getSymbolCount(); j++) {
+                    protobufOutput.writeStringNoTag(enumSymbolTable.getName(j));
+                    protobufOutput.writeInt32NoTag(enumSymbolTable.getNumber(j));
+                }
+            } /* else -- not an enum */
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @param  inputStream the stream from which the schema is read. This cannot
+     *         be <code>null</code>. It is not closed.
+     * @return the schema read from the specified stream. Its {@link IField#getPath() paths}
+     *         are resolved. This will never be <code>null</code>.
+     * @throws OperationFailedException if the schema could not be read for any
+     *         reason. Subclasses may contain additional information as to the
+     *         nature of the failure.
+     */
+    public static ProtobufCompositeType read(final InputStream inputStream)
+            throws OperationFailedException {
+        final CodedInputStream protobufInput = CodedInputStream.newInstance(inputStream);
+        try {
+            final byte[] magicNumber = protobufInput.readRawBytes(MAGIC.length/*length*/);
+            if(!Arrays.equals(magicNumber, MAGIC)) throw new InvalidDataException("Unexpected compiled schema header.");
+            final int version = protobufInput.readRawByte();
+            if(version != VERSION) throw new InvalidDataException("Unknown version number (" + version + " != " + VERSION + ").");
+
+            final ProtobufCompositeType schema = readCompositeType(protobufInput);
+            schema.resolve(new Path(/*root path*/));
+            return schema;
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    /**
+     * Recursively reads a composite type.
+     */
+    private static ProtobufCompositeType readCompositeType(final CodedInputStream protobufInput)
+            throws IOException, InvalidDataException {
+        final String name = protobufInput.readString();
+        final int fieldCount = protobufInput.readRawVarint32();
+        if(fieldCount < 1) throw new InvalidDataException("A composite type must have at least one field (" + fieldCount + ").");
+        final List<IField> fields = new ArrayList<IField>(fieldCount);
+        for(int i=0; i<fieldCount; i++) {
+            final int index = protobufInput.readRawVarint32();
+            final FieldQualifier qualifier = readEnum(protobufInput, FieldQualifier.values(), "field qualifier");
+            final String fieldName = protobufInput.readString();
+            final ProtobufType protobufType = readEnum(protobufInput, ProtobufType.values(), "Protobuf type");
+            final IFieldType fieldType;
+            if(protobufType == ProtobufType.MESSAGE)
+                fieldType = readCompositeType(protobufInput);
+            else/*primitive*/
+                fieldType = readEnum(protobufInput, PrimitiveType.values(), "primitive type");
+            if(protobufType == ProtobufType.ENUM) {
+                final int symbolCount = protobufInput.readRawVarint32();
+                if(symbolCount < 1) throw new InvalidDataException("An enum must have at least one symbol (" + symbolCount + ").");
+                final List<String> names = new ArrayList<String>(symbolCount);
+                final int[] numbers = new int[symbolCount];
+                for(int j=0; j<symbolCount; j++) {
+                    names.add(protobufInput.readString());
+                    numbers[j] = protobufInput.readInt32();
+                }
+                fields.add(new ProtobufField(index, qualifier, fieldName, new EnumSymbolTable(names, numbers)));
+            } else/*not an enum*/
+                fields.add(new ProtobufField(index, qualifier, fieldType, fieldName, protobufType));
+        }
+        return new ProtobufCompositeType(name, fields);
+    }
+
+    /**
+     * @return the enum value whose ordinal is read from the specified stream
+     */
+    private static <T extends Enum<T>> T readEnum(final CodedInputStream protobufInput, final T[] values, final String description)
+            throws IOException, InvalidDataException {
+        final int ordinal = protobufInput.readRawByte();
+        if((ordinal < 0) || (ordinal >= values.length)) throw new InvalidDataException("Unknown " + description + " ordinal (" + ordinal + ").");
+        return values[ordinal];
+    }
+}
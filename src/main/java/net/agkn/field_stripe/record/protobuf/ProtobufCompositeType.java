@@ -98,14 +98,17 @@ public final class ProtobufCompositeType implements ICompositeType {
     public void resolve(final Path path) {
         for(final IField childField : fields) {
             if(!(childField instanceof ProtobufField)) throw new DeveloperException("A ProtobufCompositeType must have ProtobufField children.");
-            ((ProtobufField)childField).setPath(new Path(path, childField)/*path must include field*/);
+            // NOTE:  the child's path is shared with its children as their
+            //        parent path so that it's only computed once
+            final Path childPath = new Path(path, childField)/*path must include field*/;
+            ((ProtobufField)childField).setPath(childPath);
 
             // NOTE:  the recursion is done here in the composite type rather
             //        the cluttering / obfuscating the field implementation
             final IFieldType childFieldType = childField.getType(); 
             if(childFieldType.isComposite()) {
                 if(!(childFieldType instanceof ProtobufCompositeType)) throw new DeveloperException("A composite ProtobufField must have a ProtobufCompositeType.");
-                ((ProtobufCompositeType)childFieldType).resolve(new Path(path, childField));
+                ((ProtobufCompositeType)childFieldType).resolve(childPath);
             } /* else -- the field is a leaf */
         }
     }
@@ -17,10 +17,13 @@ package net.agkn.field_stripe.record.protobuf;
  */
 
 import net.agkn.field_stripe.exception.DeveloperException;
+import net.agkn.field_stripe.record.EnumSymbolTable;
 import net.agkn.field_stripe.record.FieldQualifier;
 import net.agkn.field_stripe.record.IField;
 import net.agkn.field_stripe.record.IFieldType;
+import net.agkn.field_stripe.record.IntegerEncoding;
 import net.agkn.field_stripe.record.Path;
+import net.agkn.field_stripe.record.PrimitiveType;
 
 /**
  * A {@link IField} used with Protobuf types. This is a simple container (POJO)
@@ -43,20 +46,66 @@ public final class ProtobufField implements IField {
     private final IFieldType type;
     private final String name;
 
+    private final ProtobufType protobufType;
+    private final EnumSymbolTable enumSymbolTable;
+
     // ========================================================================
     /**
+     * The {@link ProtobufType} is the {@link ProtobufType#forPrimitiveType(PrimitiveType) default}
+     * for the specified type.
+     *
      * @param  index refer to {@link IField#getIndex()} for more information 
      * @param  qualifier refer to {@link IField#getQualifier()} for more information 
      * @param  type refer to {@link IField#getType()} for more information 
      * @param  name refer to {@link IField#getName()} for more information
      * @see #setPath(Path) 
+     * @see #ProtobufField(int, FieldQualifier, IFieldType, String, ProtobufType)
      */
     public ProtobufField(final int index, final FieldQualifier qualifier,
                          final IFieldType type, final String name) {
+        this(index, qualifier, type, name, ProtobufType.forPrimitiveType(type.isComposite() ? null/*message*/ : (PrimitiveType)type));
+    }
+
+    /**
+     * @param  index refer to {@link IField#getIndex()} for more information 
+     * @param  qualifier refer to {@link IField#getQualifier()} for more information 
+     * @param  type refer to {@link IField#getType()} for more information 
+     * @param  name refer to {@link IField#getName()} for more information
+     * @param  protobufType refer to {@link #getProtobufType()} for more information
+     * @see #setPath(Path) 
+     * @see #ProtobufField(int, FieldQualifier, String, EnumSymbolTable)
+     */
+    public ProtobufField(final int index, final FieldQualifier qualifier,
+                         final IFieldType type, final String name,
+                         final ProtobufType protobufType) {
+        this(index, qualifier, type, name, protobufType, null/*not an enum*/);
+    }
+
+    /**
+     * Creates an {@link ProtobufType#ENUM enum} field.
+     *
+     * @param  index refer to {@link IField#getIndex()} for more information 
+     * @param  qualifier refer to {@link IField#getQualifier()} for more information 
+     * @param  name refer to {@link IField#getName()} for more information
+     * @param  enumSymbolTable refer to {@link IField#getEnumSymbolTable()} for
+     *         more information. This cannot be <code>null</code>.
+     * @see #setPath(Path) 
+     */
+    public ProtobufField(final int index, final FieldQualifier qualifier,
+                         final String name, final EnumSymbolTable enumSymbolTable) {
+        this(index, qualifier, PrimitiveType.STRING, name, ProtobufType.ENUM, enumSymbolTable);
+    }
+
+    // NOTE:  private since the enum symbol table is only valid for an enum
+    private ProtobufField(final int index, final FieldQualifier qualifier,
+                          final IFieldType type, final String name,
+                          final ProtobufType protobufType, final EnumSymbolTable enumSymbolTable) {
         this.index = index;
         this.qualifier = qualifier;
         this.type = type;
         this.name = name;
+        this.protobufType = protobufType;
+        this.enumSymbolTable = enumSymbolTable;
     }
 
     // ========================================================================
@@ -67,6 +116,15 @@ public final class ProtobufField implements IField {
     @Override public final FieldQualifier getQualifier() { return qualifier; }
     @Override public final IFieldType getType() { return type; }
     @Override public final String getName() { return name; }
+    @Override public final IntegerEncoding getIntegerEncoding() { return protobufType.getIntegerEncoding(); }
+    @Override public final EnumSymbolTable getEnumSymbolTable() { return enumSymbolTable; }
+
+    /**
+     * @return the {@link ProtobufType} of this field as declared in the IDL.
+     *         This determines the wire encoding of the field's values. This
+     *         will never be <code>null</code>.
+     */
+    public final ProtobufType getProtobufType() { return protobufType; }
 
     // ========================================================================
     /**
@@ -79,6 +137,6 @@ public final class ProtobufField implements IField {
     public ProtobufField clone() {
         if(path != null) throw new DeveloperException("Protobuf fields can only be cloned before their paths are resolved.");
         final IFieldType clonedFieldType = type.isComposite() ? ((ProtobufCompositeType)type).clone() : type/*don't need to clone primitives*/;
-        return new ProtobufField(index, qualifier, clonedFieldType, name);
+        return new ProtobufField(index, qualifier, clonedFieldType, name, protobufType, enumSymbolTable/*immutable*/);
     }
 }
\ No newline at end of file
@@ -25,6 +25,7 @@ import net.agkn.field_stripe.exception.DeveloperException;
 import net.agkn.field_stripe.exception.InvalidDataException;
 import net.agkn.field_stripe.exception.NoSuchObjectException;
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.EnumSymbolTable;
 import net.agkn.field_stripe.record.FieldQualifier;
 import net.agkn.field_stripe.record.ICompositeType;
 import net.agkn.field_stripe.record.IField;
@@ -32,6 +33,8 @@ import net.agkn.field_stripe.record.IFieldType;
 import net.agkn.field_stripe.record.Path;
 import net.agkn.field_stripe.record.PrimitiveType;
 
+import com.dyuproject.protostuff.parser.EnumField;
+import com.dyuproject.protostuff.parser.EnumGroup;
 import com.dyuproject.protostuff.parser.Field;
 import com.dyuproject.protostuff.parser.Field.Modifier;
 import com.dyuproject.protostuff.parser.Message;
@@ -196,19 +199,41 @@ public class ProtobufFieldTypeFactory {
         // resolve each message definition field
         final List<IField> fields = new ArrayList<IField>(messageDefinition.getFieldCount());
         for(final Field<?> field : messageDefinition.getFields()) {
+            if(field instanceof EnumField) {
+                fields.add(new ProtobufField(field.getNumber()/*index*/, mapFieldModifier(field.getModifier()), field.getName(), buildEnumSymbolTable(((EnumField)field).getEnumGroup())));
+                continue;
+            } /* else -- not an enum */
+
             final IFieldType resolvedFieldType;
+            final ProtobufType protobufType;
             if(field.isMessageField()) {/*composite*/
                 final MessageField messageField = (MessageField)field/*by #isMessageField() definition*/;
                 resolvedFieldType = build(messageToFieldTypeMap, messageField.getMessage());
+                protobufType = ProtobufType.MESSAGE;
             } else { /*primitive*/
-                resolvedFieldType = mapPrimitiveType(field.getClass());
+                protobufType = mapProtobufType(field.getClass());
+                resolvedFieldType = protobufType.getPrimitiveType();
             }
-            fields.add(new ProtobufField(field.getNumber()/*index*/, mapFieldModifier(field.getModifier()), resolvedFieldType, field.getName())); 
+            fields.add(new ProtobufField(field.getNumber()/*index*/, mapFieldModifier(field.getModifier()), resolvedFieldType, field.getName(), protobufType)); 
         }
 
         return fields;
     }
 
+    /**
+     * Builds the {@link EnumSymbolTable} from the values of the specified
+     * {@link EnumGroup enum definition} in declaration order.
+     */
+    private static EnumSymbolTable buildEnumSymbolTable(final EnumGroup enumDefinition) {
+        final List<String> names = new ArrayList<String>(enumDefinition.getValueCount());
+        final int[] numbers = new int[enumDefinition.getValueCount()];
+        for(final EnumGroup.Value value : enumDefinition.getValues()) {
+            numbers[names.size()] = value.getNumber();
+            names.add(value.getName());
+        }
+        return new EnumSymbolTable(names, numbers);
+    }
+
     // ========================================================================
     /**
      * A convenience method that maps a {@link Field.Modifier field modifier}
@@ -229,43 +254,51 @@ public class ProtobufFieldTypeFactory {
     }
 
     /**
-     * A convenience method that maps a primitive field type to a {@link PrimitiveType}. 
-     * Conversion is performed according to the
-     * <a href="https://developers.google.com/protocol-buffers/docs/proto">Scalar Value Types</a>
+     * A convenience method that maps a primitive field type to a {@link ProtobufType}
+     * (and from it a {@link PrimitiveType}). Conversion is performed according 
+     * to the <a href="https://developers.google.com/protocol-buffers/docs/proto">Scalar Value Types</a>
      * section.
      * 
-     * @param  fieldType the type of field for which the {@link PrimitiveType} 
+     * @param  fieldType the type of field for which the {@link ProtobufType} 
      *         is desired. This cannot be <code>null</code>.
-     * @return the {@link PrimitiveType} for the specified field type. This 
+     * @return the {@link ProtobufType} for the specified field type. This 
      *         will never be <code>null</code>.
      */
-    private static PrimitiveType mapPrimitiveType(final Class<?> fieldType) {
+    private static ProtobufType mapProtobufType(final Class<?> fieldType) {
         if(Field.Double.class.isAssignableFrom(fieldType))
-            return PrimitiveType.DOUBLE;
+            return ProtobufType.DOUBLE;
         if(Field.Float.class.isAssignableFrom(fieldType))
-            return PrimitiveType.FLOAT;
+            return ProtobufType.FLOAT;
 
-        if(Field.Int32.class.isAssignableFrom(fieldType) ||
-           Field.UInt32.class.isAssignableFrom(fieldType) ||
-           Field.SInt32.class.isAssignableFrom(fieldType) ||
-           Field.Fixed32.class.isAssignableFrom(fieldType) ||
-           Field.SFixed32.class.isAssignableFrom(fieldType) )
-            return PrimitiveType.INT;
+        if(Field.Int32.class.isAssignableFrom(fieldType))
+            return ProtobufType.INT32;
+        if(Field.UInt32.class.isAssignableFrom(fieldType))
+            return ProtobufType.UINT32;
+        if(Field.SInt32.class.isAssignableFrom(fieldType))
+            return ProtobufType.SINT32;
+        if(Field.Fixed32.class.isAssignableFrom(fieldType))
+            return ProtobufType.FIXED32;
+        if(Field.SFixed32.class.isAssignableFrom(fieldType))
+            return ProtobufType.SFIXED32;
 
-        if(Field.Int64.class.isAssignableFrom(fieldType) ||
-           Field.UInt64.class.isAssignableFrom(fieldType) ||
-           Field.SInt64.class.isAssignableFrom(fieldType) ||
-           Field.Fixed64.class.isAssignableFrom(fieldType) ||
-           Field.SFixed64.class.isAssignableFrom(fieldType) )
-            return PrimitiveType.LONG;
+        if(Field.Int64.class.isAssignableFrom(fieldType))
+            return ProtobufType.INT64;
+        if(Field.UInt64.class.isAssignableFrom(fieldType))
+            return ProtobufType.UINT64;
+        if(Field.SInt64.class.isAssignableFrom(fieldType))
+            return ProtobufType.SINT64;
+        if(Field.Fixed64.class.isAssignableFrom(fieldType))
+            return ProtobufType.FIXED64;
+        if(Field.SFixed64.class.isAssignableFrom(fieldType))
+            return ProtobufType.SFIXED64;
 
         if(Field.Bool.class.isAssignableFrom(fieldType))
-            return PrimitiveType.BOOLEAN;
+            return ProtobufType.BOOL;
         if(Field.String.class.isAssignableFrom(fieldType))
-            return PrimitiveType.STRING;
+            return ProtobufType.STRING;
         if(Field.Bytes.class.isAssignableFrom(fieldType))
-            throw new UnsupportedOperationException("Protobuf FieldType \"bytes\" is not currently supported.");
+            return ProtobufType.BYTES;
 
         throw new DeveloperException("Unknown Protobuf FieldType \"" + fieldType + "\".");
     }
-}
\ No newline at end of file
+}
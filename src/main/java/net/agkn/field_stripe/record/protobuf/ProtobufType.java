@@ -0,0 +1,146 @@
+package net.agkn.field_stripe.record.protobuf;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import net.agkn.field_stripe.exception.DeveloperException;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.IntegerEncoding;
+import net.agkn.field_stripe.record.PrimitiveType;
+
+/**
+ * The Protobuf field types as declared in the IDL. Several Protobuf types map
+ * to the same {@link PrimitiveType} but differ in their wire encoding (e.g.
+ * <code>int32</code>, <code>sint32</code> and <code>sfixed32</code> are all
+ * {@link PrimitiveType#INT ints}). See <a href="https://developers.google.com/protocol-buffers/docs/encoding">Encoding</a>
+ * for more information.
+ *
+ * @author rgrzywinski
+ * @see ProtobufField#getProtobufType()
+ */
+public enum ProtobufType {
+    // NOTE:  int32 and int64 may be negative and so are SIGNED (even though
+    //        Protobuf itself doesn't zigzag them)
+    DOUBLE(PrimitiveType.DOUBLE, ProtobufType.WIRETYPE_FIXED64, IntegerEncoding.SIGNED),
+    FLOAT(PrimitiveType.FLOAT, ProtobufType.WIRETYPE_FIXED32, IntegerEncoding.SIGNED),
+    INT32(PrimitiveType.INT, ProtobufType.WIRETYPE_VARINT, IntegerEncoding.SIGNED),
+    INT64(PrimitiveType.LONG, ProtobufType.WIRETYPE_VARINT, IntegerEncoding.SIGNED),
+    UINT32(PrimitiveType.INT, ProtobufType.WIRETYPE_VARINT, IntegerEncoding.UNSIGNED),
+    UINT64(PrimitiveType.LONG, ProtobufType.WIRETYPE_VARINT, IntegerEncoding.UNSIGNED),
+    SINT32(PrimitiveType.INT, ProtobufType.WIRETYPE_VARINT, IntegerEncoding.SIGNED),
+    SINT64(PrimitiveType.LONG, ProtobufType.WIRETYPE_VARINT, IntegerEncoding.SIGNED),
+    FIXED32(PrimitiveType.INT, ProtobufType.WIRETYPE_FIXED32, IntegerEncoding.FIXED),
+    FIXED64(PrimitiveType.LONG, ProtobufType.WIRETYPE_FIXED64, IntegerEncoding.FIXED),
+    SFIXED32(PrimitiveType.INT, ProtobufType.WIRETYPE_FIXED32, IntegerEncoding.FIXED),
+    SFIXED64(PrimitiveType.LONG, ProtobufType.WIRETYPE_FIXED64, IntegerEncoding.FIXED),
+    BOOL(PrimitiveType.BOOLEAN, ProtobufType.WIRETYPE_VARINT, IntegerEncoding.SIGNED),
+    STRING(PrimitiveType.STRING, ProtobufType.WIRETYPE_LENGTH_DELIMITED, IntegerEncoding.SIGNED),
+    MESSAGE(null/*composite*/, ProtobufType.WIRETYPE_LENGTH_DELIMITED, IntegerEncoding.SIGNED),
+    // NOTE:  the value of an enum is the name of its symbol (see ProtobufField#getEnumSymbolTable())
+    ENUM(PrimitiveType.STRING, ProtobufType.WIRETYPE_VARINT, IntegerEncoding.SIGNED),
+    BYTES(PrimitiveType.BYTES, ProtobufType.WIRETYPE_LENGTH_DELIMITED, IntegerEncoding.SIGNED);
+
+    // NOTE:  com.google.protobuf.WireFormat's constants are package-private
+    public static final int WIRETYPE_VARINT = 0;
+    public static final int WIRETYPE_FIXED64 = 1;
+    public static final int WIRETYPE_LENGTH_DELIMITED = 2;
+    public static final int WIRETYPE_START_GROUP = 3;
+    public static final int WIRETYPE_END_GROUP = 4;
+    public static final int WIRETYPE_FIXED32 = 5;
+
+    public static final int TAG_TYPE_BITS = 3;
+    public static final int TAG_TYPE_MASK = (1 << TAG_TYPE_BITS) - 1;
+
+    // ************************************************************************
+    private final PrimitiveType primitiveType/*null for messages*/;
+    private final int wireType;
+    private final IntegerEncoding integerEncoding;
+
+    // ========================================================================
+    private ProtobufType(final PrimitiveType primitiveType, final int wireType, final IntegerEncoding integerEncoding) {
+        this.primitiveType = primitiveType;
+        this.wireType = wireType;
+        this.integerEncoding = integerEncoding;
+    }
+
+    // ========================================================================
+    /**
+     * @return the {@link PrimitiveType} to which this type maps. This will be
+     *         <code>null</code> if and only if this is {@link #MESSAGE}.
+     */
+    public PrimitiveType getPrimitiveType() { return primitiveType; }
+
+    /**
+     * @return the wire type with which a single (non-packed) value of this
+     *         type is encoded
+     */
+    public int getWireType() { return wireType; }
+
+    /**
+     * @return the {@link IntegerEncoding} that corresponds to this type. This
+     *         is only meaningful for the integral types. This will never be
+     *         <code>null</code>.
+     */
+    public IntegerEncoding getIntegerEncoding() { return integerEncoding; }
+
+    // ========================================================================
+    /**
+     * @param  field the <code>IField</code> whose Protobuf type is desired.
+     *         This cannot be <code>null</code>.
+     * @return the {@link ProtobufField#getProtobufType() Protobuf type} of the
+     *         specified field. Fields that are not {@link ProtobufField}s use
+     *         the {@link #forPrimitiveType(PrimitiveType) default} for their
+     *         type. This will never be <code>null</code>.
+     */
+    public static ProtobufType forField(final IField field) {
+        if(field instanceof ProtobufField) return ((ProtobufField)field).getProtobufType();
+        return forPrimitiveType(field.getType().isComposite() ? null/*message*/ : (PrimitiveType)field.getType());
+    }
+
+    /**
+     * @param  primitiveType the <code>PrimitiveType</code> for which the default
+     *         Protobuf type is desired. This may be <code>null</code> in which
+     *         case the field is a composite.
+     * @return the Protobuf type used for a field of the specified primitive
+     *         type when no explicit Protobuf type is known. This is the
+     *         plain (varint, non-zigzag) type for integral types. This will
+     *         never be <code>null</code>.
+     */
+    public static ProtobufType forPrimitiveType(final PrimitiveType primitiveType) {
+        if(primitiveType == null) return MESSAGE;
+        switch(primitiveType) {
+            case BOOLEAN:
+                return BOOL;
+            case BYTE:
+            case SHORT:
+            case INT:
+                return INT32;
+            case LONG:
+                return INT64;
+            case FLOAT:
+                return FLOAT;
+            case DOUBLE:
+                return DOUBLE;
+            case STRING:
+                return STRING;
+            case BYTES:
+                return BYTES;
+
+            default:
+                throw new DeveloperException("Unknown primitive type \"" + primitiveType + "\".");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A <code>Reader</code> that decodes characters directly from a <code>ByteBuffer</code>
+ * (typically a memory-mapped region of a file) without an intermediate
+ * <code>InputStream</code> or byte buffer. Malformed input is reported as an
+ * <code>IOException</code> rather than being replaced.
+ *
+ * @author rgrzywinski
+ * @see FileChunk#openReader(Charset)
+ */
+@NotThreadSafe
+public class ByteBufferReader extends Reader {
+    private ByteBuffer input/*null once closed*/;
+    private final CharsetDecoder decoder;
+
+    // true once the decoder has been flushed (after all input is consumed)
+    private boolean isFlushed = false;
+
+    // ========================================================================
+    /**
+     * @param  input the buffer from which the bytes are decoded. This cannot
+     *         be <code>null</code>. The buffer's position is advanced as
+     *         characters are read.
+     * @param  charset the <code>Charset</code> of the bytes. This cannot be
+     *         <code>null</code>.
+     */
+    public ByteBufferReader(final ByteBuffer input, final Charset charset) {
+        this.input = input;
+        this.decoder = charset.newDecoder()
+                              .onMalformedInput(CodingErrorAction.REPORT)
+                              .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see java.io.Reader#read(char[], int, int)
+     */
+    @Override
+    public int read(final char[] buffer, final int offset, final int length)
+            throws IOException {
+        if(input == null) throw new IOException("The reader has already been closed.");
+        if(length == 0) return 0/*by contract*/;
+        if(isFlushed) return -1/*end-of-stream*/;
+
+        final CharBuffer output = CharBuffer.wrap(buffer, offset, length);
+        final CoderResult result = decoder.decode(input, output, true/*all input is available*/);
+        if(result.isError()) result.throwException();
+        if(result.isUnderflow()) {
+            // all input has been consumed so flush any remaining characters
+            final CoderResult flushResult = decoder.flush(output);
+            if(flushResult.isError()) flushResult.throwException();
+            isFlushed = flushResult.isUnderflow();
+        } /* else -- overflow (the output buffer is full) */
+
+        final int count = output.position() - offset;
+        return ((count == 0) && isFlushed) ? -1/*end-of-stream*/ : count;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Reader#close()
+     */
+    @Override
+    public void close() {
+        // NOTE:  a mapped buffer is unmapped when it is garbage collected
+        input = null/*release the reference*/;
+    }
+}
@@ -0,0 +1,133 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.jcip.annotations.Immutable;
+
+/**
+ * A contiguous byte range of a file that starts and ends on a record boundary.
+ * Chunks are created by {@link MappedFileChunker} and each may be read
+ * independently (and concurrently) of all others.
+ *
+ * @author rgrzywinski
+ * @see MappedFileChunker#split(File, long)
+ */
+@Immutable
+public class FileChunk {
+    private final File file;
+    private final int index/*zero-based position of the chunk within the file*/;
+    private final long offset;
+    private final int length/*a mapping is limited to Integer.MAX_VALUE*/;
+
+    // ========================================================================
+    /**
+     * @param  file the file that contains the chunk. This cannot be <code>null</code>.
+     * @param  index the zero-based index of the chunk within the file
+     * @param  offset the byte offset of the start of the chunk within the file
+     * @param  length the length of the chunk in bytes
+     */
+    public FileChunk(final File file, final int index, final long offset, final int length) {
+        this.file = file;
+        this.index = index;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    // ========================================================================
+    /**
+     * @return the file that contains this chunk. This will never be <code>null</code>.
+     */
+    public File getFile() { return file; }
+
+    /**
+     * @return the zero-based index of this chunk within its file
+     */
+    public int getIndex() { return index; }
+
+    /**
+     * @return the byte offset of the start of this chunk within its file
+     */
+    public long getOffset() { return offset; }
+
+    /**
+     * @return the length of this chunk in bytes
+     */
+    public int getLength() { return length; }
+
+    // ========================================================================
+    /**
+     * Memory-maps (read-only) the bytes of this chunk. The underlying file is
+     * closed before returning as the mapping remains valid until it is garbage
+     * collected.
+     *
+     * @return the mapped bytes of this chunk. This will never be <code>null</code>.
+     * @throws OperationFailedException if the file could not be mapped for any
+     *         reason.
+     */
+    public MappedByteBuffer map()
+            throws OperationFailedException {
+        RandomAccessFile randomAccessFile = null/*none to start*/;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } catch(final IOException ioe) {
+            throw new OperationFailedException("Could not map chunk " + index + " of " + file.getAbsolutePath(), ioe);
+        } finally {
+            try {
+                if(randomAccessFile != null) randomAccessFile.close();
+            } catch(final IOException ioe) {
+                /* ignore -- the mapping (if any) is unaffected */
+            }
+        }
+    }
+
+    /**
+     * Memory-maps this chunk and returns a <code>Reader</code> that decodes
+     * it using the specified <code>Charset</code>.
+     *
+     * @param  charset the <code>Charset</code> of the file. This cannot be
+     *         <code>null</code>. Since chunks are split on the byte value of
+     *         the newline character, this must be ASCII-compatible (e.g.
+     *         UTF-8 or ISO-8859-1).
+     * @return the <code>Reader</code> for this chunk. This will never be <code>null</code>.
+     * @throws OperationFailedException if the file could not be mapped for any
+     *         reason.
+     * @see #map()
+     */
+    public Reader openReader(final Charset charset)
+            throws OperationFailedException {
+        return new ByteBufferReader(map(), charset);
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return file.getName() + "[" + index + "]@" + offset + "+" + length;
+    }
+}
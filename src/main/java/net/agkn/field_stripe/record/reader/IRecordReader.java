@@ -16,9 +16,12 @@ package net.agkn.field_stripe.record.reader;
  * limitations under the License. 
  */
 
+import java.nio.ByteBuffer;
+
 import net.agkn.field_stripe.exception.InvalidDataException;
 import net.agkn.field_stripe.exception.OperationFailedException;
 import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.PrimitiveType;
 import net.agkn.field_stripe.record.writer.IRecordWriter;
 
 import org.apache.commons.lang.mutable.MutableBoolean;
@@ -321,6 +324,29 @@ public interface IRecordReader {
     String readStringField(MutableBoolean isSet)
         throws IllegalStateException, InvalidDataException;
 
+    /**
+     * Reads and returns the next {@link PrimitiveType#BYTES bytes} field (column). 
+     * A {@link MutableBoolean mutable boolean} is used to indicate if the value
+     * was set or not.<p/>
+     * 
+     * Where possible the returned buffer is a (read-only) view of the reader's
+     * own buffer rather than a copy. It is therefore only valid until the next
+     * value is read. The bytes are those between its position and its limit. 
+     * 
+     * @param  isSet a {@link MutableBoolean mutable boolean} that indicates
+     *         if the read value was set or not. This cannot be <code>null</code> 
+     *         and the existing boolean value will be overridden.
+     * @return the next field as a <code>ByteBuffer</code>. If <code>isSet</code> 
+     *         is <code>false</code> then this value has no meaning and may be
+     *         (but isn't necessarily) <code>null</code>.
+     * @throws IllegalStateException if called after {@link #close()} has been
+     *         called.
+     * @throws InvalidDataException if there are no more fields to be read or
+     *         if the field could not be converted into bytes.
+     */
+    ByteBuffer readBytesField(MutableBoolean isSet)
+        throws IllegalStateException, InvalidDataException;
+
     // ........................................................................
     /**
      * Skips the next field (column) in the record regardless of its type. This 
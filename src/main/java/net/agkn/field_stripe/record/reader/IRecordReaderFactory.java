@@ -0,0 +1,45 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Reader;
+
+import net.agkn.field_stripe.exception.OperationFailedException;
+
+/**
+ * A factory for creating text-based {@link IRecordReader record readers} over
+ * a <code>Reader</code>. This allows the same input format to be read from
+ * many independent sources (e.g. each {@link FileChunk chunk} of a large
+ * file).
+ *
+ * @author rgrzywinski
+ * @see MappedFileChunker
+ */
+public interface IRecordReaderFactory {
+    /**
+     * @param  reader the <code>Reader</code> from which the records are read.
+     *         This will never be <code>null</code>. The caller remains
+     *         responsible for closing the reader.
+     * @return the {@link IRecordReader} for the specified reader. This will
+     *         never be <code>null</code>.
+     * @throws OperationFailedException if the record reader could not be created
+     *         for any reason. Subclasses may provide more information as to the
+     *         nature of the failure.
+     */
+    IRecordReader createRecordReader(Reader reader)
+        throws OperationFailedException;
+}
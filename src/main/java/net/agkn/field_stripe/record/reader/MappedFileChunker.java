@@ -0,0 +1,195 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Splits a newline-delimited record file (PostgreSQL <code>COPY</code> text
+ * or one JSON array per line) into {@link FileChunk chunks} of approximately
+ * a target size, each of which starts and ends on a record boundary. Each
+ * chunk can then be given to its own {@link IRecordReader} and read on its
+ * own thread.<p/>
+ *
+ * A record boundary is a CR, LF or CRLF that is not escaped, i.e. that is not
+ * preceded by an odd number of backslashes. (In <code>COPY</code> text a
+ * backslash followed by a literal newline is a data newline. JSON does not
+ * allow a literal newline within a string.) Only the bytes surrounding each
+ * split point are read so splitting is cheap regardless of the size of the
+ * file. Since the split is done on byte values, the file's character set must
+ * be ASCII-compatible (e.g. UTF-8).
+ *
+ * @author rgrzywinski
+ * @see FileChunk
+ */
+@NotThreadSafe
+public class MappedFileChunker {
+    // the size of the window that is read around each split point
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte BACKSLASH = '\\';
+
+    // ************************************************************************
+    private final FileChannel channel;
+    private final long size;
+
+    // the window of bytes that is currently read from the file
+    private final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    private long windowStart = 0L;
+    private int windowLength = 0/*nothing read to start*/;
+
+    // ========================================================================
+    /**
+     * @param  channel the channel of the file to be split. This cannot be
+     *         <code>null</code>.
+     */
+    private MappedFileChunker(final FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    // ========================================================================
+    /**
+     * Splits the specified file into {@link FileChunk chunks} of approximately
+     * the specified size. A chunk will be larger than the target size by the
+     * remainder of the record that straddles the split point.
+     *
+     * @param  file the file to be split. This cannot be <code>null</code>.
+     * @param  targetChunkSize the target size of each chunk in bytes. This
+     *         must be greater than zero. This is limited to <code>Integer.MAX_VALUE</code>
+     *         since that is the maximum size of a mapped region.
+     * @return the chunks of the file in file order. This will never be <code>null</code>
+     *         but will be empty if the file is empty.
+     * @throws InvalidDataException if a single record would result in a chunk
+     *         that exceeds <code>Integer.MAX_VALUE</code> bytes.
+     * @throws OperationFailedException if the file could not be read for any
+     *         other reason.
+     */
+    public static List<FileChunk> split(final File file, final long targetChunkSize)
+            throws OperationFailedException {
+        if(targetChunkSize <= 0L) throw new IllegalArgumentException("The target chunk size must be greater than zero.");
+
+        RandomAccessFile randomAccessFile = null/*none to start*/;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            final MappedFileChunker chunker = new MappedFileChunker(randomAccessFile.getChannel());
+            return chunker.splitChunks(file, Math.min(targetChunkSize, Integer.MAX_VALUE));
+        } catch(final IOException ioe) {
+            throw new OperationFailedException("Could not split " + file.getAbsolutePath(), ioe);
+        } finally {
+            try {
+                if(randomAccessFile != null) randomAccessFile.close();
+            } catch(final IOException ioe) {
+                /* ignore -- nothing more can be done */
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see #split(File, long)
+     */
+    private List<FileChunk> splitChunks(final File file, final long targetChunkSize)
+            throws IOException, InvalidDataException {
+        final List<FileChunk> chunks = new ArrayList<FileChunk>();
+        long start = 0L;
+        while(start < size) {
+            final long end;
+            if((size - start) <= targetChunkSize)
+                end = size/*remainder of the file*/;
+            else
+                end = nextBoundary(start + targetChunkSize);
+
+            final long length = end - start;
+            if(length > Integer.MAX_VALUE) throw new InvalidDataException("A record starting before offset " + start + " exceeds the maximum chunk size.");
+            chunks.add(new FileChunk(file, chunks.size(), start, (int)length));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * @param  position the position from which a record boundary is searched
+     * @return the position immediately after the first record boundary at or
+     *         after the specified position. If there is no further record
+     *         boundary then the size of the file is returned.
+     */
+    private long nextBoundary(long position)
+            throws IOException {
+        for(; position < size; position++) {
+            final byte value = byteAt(position);
+            if((value != LF) && (value != CR)) continue/*not a boundary*/;
+            if(isEscaped(position)) continue/*data newline*/;
+
+            // NOTE:  CRLF is a single boundary
+            if((value == CR) && ((position + 1) < size) && (byteAt(position + 1) == LF))
+                return position + 2;
+            /* else -- a lone CR or LF */
+            return position + 1;
+        }
+        return size/*no further boundary*/;
+    }
+
+    /**
+     * @return <code>true</code> if and only if the byte at the specified
+     *         position is preceded by an odd number of backslashes.
+     *         <code>false</code> otherwise.
+     */
+    private boolean isEscaped(final long position)
+            throws IOException {
+        long backslashCount = 0L;
+        for(long i=position - 1; (i >= 0L) && (byteAt(i) == BACKSLASH); i--)
+            backslashCount++;
+        return ((backslashCount & 1L) == 1L);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the byte at the specified position (which must be less than the
+     *         size of the file). The window is moved as necessary.
+     */
+    private byte byteAt(final long position)
+            throws IOException {
+        if((position < windowStart) || (position >= (windowStart + windowLength))) {
+            // center the window on the position so that scans in either
+            // direction remain within the window
+            final long start = Math.max(0L, position - (WINDOW_SIZE / 2));
+            window.clear();
+            int length = 0;
+            while(window.hasRemaining()) {
+                final int count = channel.read(window, start + length);
+                if(count < 0) break/*end-of-file*/;
+                length += count;
+            }
+            windowStart = start;
+            windowLength = length;
+        } /* else -- the position is within the current window */
+        return window.get((int)(position - windowStart));
+    }
+}
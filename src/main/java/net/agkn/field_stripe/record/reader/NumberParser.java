@@ -0,0 +1,230 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Parses numeric values directly from a range of a <code>char[]</code> so
+ * that the text-based {@link IRecordReader readers} do not need to create an
+ * intermediate <code>String</code> for each numeric field.<p/>
+ *
+ * Floating-point values are parsed using the classic "fast path" (a mantissa
+ * that fits exactly within the floating-point type and a power of ten that is
+ * itself exact) which covers the vast majority of real-world values. All other
+ * values (including those with a syntax that is only accepted by the JDK such
+ * as <code>Infinity</code> or <code>NaN</code>) fall back to {@link Double#parseDouble(String)}
+ * or {@link Float#parseFloat(String)} so that the result is always correctly
+ * rounded and is identical to that of the JDK.<p/>
+ *
+ * Floating-point parsing uses scratch state so an instance should be owned by
+ * a single reader. This is <i>not</i> thread-safe.
+ *
+ * @author rgrzywinski
+ */
+@NotThreadSafe
+/*package*/ final class NumberParser {
+    // the largest mantissa that can be exactly represented by a double (2^53)
+    private static final long MAX_EXACT_MANTISSA = (1L << 53);
+
+    // all powers of ten that are exactly representable by a double
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+                                                    1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+                                                    1e21, 1e22 };
+
+    // the largest mantissa that can be exactly represented by a float (2^24)
+    private static final long MAX_EXACT_FLOAT_MANTISSA = (1L << 24);
+
+    // all powers of ten that are exactly representable by a float
+    private static final float[] FLOAT_POWERS_OF_TEN = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+    // ------------------------------------------------------------------------
+    // the decimal value in the form (+|-) mantissa * 10^exponent from the most
+    // recent #scan()
+    private boolean isNegative;
+    private long mantissa/*only valid if at most MAX_EXACT_MANTISSA*/;
+    private int exponent;
+
+    // ========================================================================
+    /**
+     * @return <code>true</code> if and only if the specified range contains
+     *         only an optional sign followed by digits (i.e. there is no
+     *         decimal point or exponent). The range is not otherwise validated.
+     */
+    public static boolean isIntegral(final char[] chars, final int start, final int end) {
+        for(int i=start; i<end; i++) {
+            final char c = chars[i];
+            if((c == '.') || (c == 'e') || (c == 'E')) return false;
+            /* else -- keep looking */
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parses a base-10 <code>long</code> from the specified range. An optional
+     * leading sign (<code>+</code> or <code>-</code>) is allowed.
+     *
+     * @param  chars the characters from which the value is parsed. This cannot
+     *         be <code>null</code>.
+     * @param  start the inclusive start index of the range
+     * @param  end the exclusive end index of the range
+     * @return the parsed value
+     * @throws NumberFormatException if the range is empty, contains a non-digit
+     *         or if the value does not fit in a <code>long</code>.
+     */
+    public static long parseLong(final char[] chars, final int start, final int end)
+            throws NumberFormatException {
+        int index = start;
+        if(index >= end) throw new NumberFormatException("An empty value cannot be parsed as a number.");
+        final boolean isNegative = (chars[index] == '-');
+        if(isNegative || (chars[index] == '+')) index++;
+        if(index >= end) throw new NumberFormatException("A sign must be followed by digits: \"" + new String(chars, start, (end - start)) + "\".");
+
+        // accumulate negatively (as Long#parseLong() does) so that
+        // Long.MIN_VALUE can be represented
+        final long limit = isNegative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multiplyLimit = limit / 10;
+        long result = 0L;
+        for(; index<end; index++) {
+            final int digit = chars[index] - '0';
+            if((digit < 0) || (digit > 9)) throw new NumberFormatException("Unexpected character in number: \"" + new String(chars, start, (end - start)) + "\".");
+            if(result < multiplyLimit) throw new NumberFormatException("Number out of range: \"" + new String(chars, start, (end - start)) + "\".");
+            result *= 10;
+            if(result < (limit + digit)) throw new NumberFormatException("Number out of range: \"" + new String(chars, start, (end - start)) + "\".");
+            result -= digit;
+        }
+        return isNegative ? result : -result;
+    }
+
+    /**
+     * Parses a base-10 <code>double</code> from the specified range. The fast
+     * path handles an optional sign, digits, an optional fraction and an optional
+     * exponent. Anything else is delegated to {@link Double#parseDouble(String)}.
+     *
+     * @param  chars the characters from which the value is parsed. This cannot
+     *         be <code>null</code>.
+     * @param  start the inclusive start index of the range
+     * @param  end the exclusive end index of the range
+     * @return the parsed value
+     * @throws NumberFormatException if the range does not contain a valid number.
+     */
+    public double parseDouble(final char[] chars, final int start, final int end)
+            throws NumberFormatException {
+        if(scan(chars, start, end) && (mantissa <= MAX_EXACT_MANTISSA)) {
+            // NOTE:  both the mantissa and the power of ten are exact so a single
+            //        multiplication or division is correctly rounded
+            final double value;
+            if(mantissa == 0L)
+                value = 0.0;
+            else if((exponent >= 0) && (exponent < POWERS_OF_TEN.length))
+                value = mantissa * POWERS_OF_TEN[exponent];
+            else if((exponent < 0) && (-exponent < POWERS_OF_TEN.length))
+                value = mantissa / POWERS_OF_TEN[-exponent];
+            else
+                return Double.parseDouble(new String(chars, start, (end - start)));
+            return isNegative ? -value : value;
+        } /* else -- not a candidate for the fast path */
+        return Double.parseDouble(new String(chars, start, (end - start)));
+    }
+
+    /**
+     * Parses a base-10 <code>float</code> from the specified range. The fast
+     * path handles an optional sign, digits, an optional fraction and an optional
+     * exponent. Anything else is delegated to {@link Float#parseFloat(String)}.
+     * (A <code>double</code> is not narrowed as that would round twice.)
+     *
+     * @param  chars the characters from which the value is parsed. This cannot
+     *         be <code>null</code>.
+     * @param  start the inclusive start index of the range
+     * @param  end the exclusive end index of the range
+     * @return the parsed value
+     * @throws NumberFormatException if the range does not contain a valid number.
+     */
+    public float parseFloat(final char[] chars, final int start, final int end)
+            throws NumberFormatException {
+        if(scan(chars, start, end) && (mantissa <= MAX_EXACT_FLOAT_MANTISSA)) {
+            // NOTE:  both the mantissa and the power of ten are exact so a single
+            //        multiplication or division is correctly rounded
+            final float value;
+            if(mantissa == 0L)
+                value = 0.0f;
+            else if((exponent >= 0) && (exponent < FLOAT_POWERS_OF_TEN.length))
+                value = mantissa * FLOAT_POWERS_OF_TEN[exponent];
+            else if((exponent < 0) && (-exponent < FLOAT_POWERS_OF_TEN.length))
+                value = mantissa / FLOAT_POWERS_OF_TEN[-exponent];
+            else
+                return Float.parseFloat(new String(chars, start, (end - start)));
+            return isNegative ? -value : value;
+        } /* else -- not a candidate for the fast path */
+        return Float.parseFloat(new String(chars, start, (end - start)));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Scans the specified range.
+     *
+     * @return <code>true</code> if the range is a simple decimal number
+     *         and <code>false</code> if it contains any other syntax (in
+     *         which case the JDK should be used to parse the value).
+     */
+    private boolean scan(final char[] chars, final int start, final int end) {
+        int index = start;
+        if(index >= end) return false;
+        isNegative = (chars[index] == '-');
+        if(isNegative || (chars[index] == '+')) index++;
+
+        mantissa = 0L;
+        int digitCount = 0;
+        int fractionDigitCount = 0;
+        boolean inFraction = false;
+        for(; index<end; index++) {
+            final char c = chars[index];
+            if(c == '.') {
+                if(inFraction) return false;
+                inFraction = true;
+                continue;
+            } /* else -- not a decimal point */
+            final int digit = c - '0';
+            if((digit < 0) || (digit > 9)) break/*possibly an exponent*/;
+            digitCount++;
+            if(inFraction) fractionDigitCount++;
+            if(mantissa <= MAX_EXACT_MANTISSA) mantissa = (mantissa * 10) + digit;
+            /* else -- the mantissa is already too large for the fast path */
+        }
+        if(digitCount == 0) return false;
+
+        exponent = 0;
+        if(index < end) {
+            final char c = chars[index];
+            if((c != 'e') && (c != 'E')) return false;
+            index++;
+            if(index >= end) return false;
+            final boolean isNegativeExponent = (chars[index] == '-');
+            if(isNegativeExponent || (chars[index] == '+')) index++;
+            if(index >= end) return false;
+            for(; index<end; index++) {
+                final int digit = chars[index] - '0';
+                if((digit < 0) || (digit > 9)) return false;
+                if(exponent < 10000/*prevents overflow -- any such value is not exact*/) exponent = (exponent * 10) + digit;
+            }
+            if(isNegativeExponent) exponent = -exponent;
+        } /* else -- there is no exponent */
+        exponent -= fractionDigitCount;
+        return true;
+    }
+}
@@ -0,0 +1,533 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static net.agkn.field_stripe.record.writer.PGBinaryRecordWriter.BOOL_OID;
+import static net.agkn.field_stripe.record.writer.PGBinaryRecordWriter.BYTEA_OID;
+import static net.agkn.field_stripe.record.writer.PGBinaryRecordWriter.FLOAT4_OID;
+import static net.agkn.field_stripe.record.writer.PGBinaryRecordWriter.FLOAT8_OID;
+import static net.agkn.field_stripe.record.writer.PGBinaryRecordWriter.INT2_OID;
+import static net.agkn.field_stripe.record.writer.PGBinaryRecordWriter.INT4_OID;
+import static net.agkn.field_stripe.record.writer.PGBinaryRecordWriter.INT8_OID;
+import static net.agkn.field_stripe.record.writer.PGBinaryRecordWriter.NULL_LENGTH;
+import static net.agkn.field_stripe.record.writer.PGBinaryRecordWriter.SIGNATURE;
+import static net.agkn.field_stripe.record.writer.PGBinaryRecordWriter.TRAILER;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.writer.PGBinaryRecordWriter;
+import net.jcip.annotations.NotThreadSafe;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+
+/**
+ * A {@link IRecordReader reader} for records that are in the PostgreSQL 'binary'
+ * COPY format. See <a href="http://www.postgresql.org/docs/9.0/static/sql-copy.html"><code>COPY</code></a>
+ * for more information on the format. Structures are read as records
+ * (<code>record_send()</code>) and arrays as arrays of at most one dimension
+ * (<code>array_send()</code>). Since every value is prefixed by its length the
+ * stream is read value-by-value through a fixed-size buffer. Only string and
+ * bytes values are copied (into a reused buffer). The <code>ByteBuffer</code>
+ * returned from {@link #readBytesField(MutableBoolean)} is a view of that reused
+ * buffer.<p/>
+ *
+ * The width of each value must match that of the type that is read (e.g. an
+ * <code>int4</code> must be read with {@link #readIntField(MutableBoolean)}).
+ * The OIDs of the numeric and boolean columns of a structure and of the
+ * elements of an array are also checked. Strings are accepted from any textual
+ * type as they all share the same representation.<p/>
+ *
+ * Note that this reader is <i>not</i> thread-safe. Also note that no exceptions
+ * are logged.
+ *
+ * @author rgrzywinski
+ * @see PGBinaryRecordWriter
+ */
+@NotThreadSafe
+public class PGBinaryRecordReader implements IRecordReader {
+    // the size of the input buffer
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+    // the initial sizes of the string buffer and nesting depth (both grown as
+    // needed)
+    private static final int INITIAL_STRING_SIZE = 256;
+    private static final int INITIAL_DEPTH = 8;
+
+    private static final int ANY_OID = 0/*InvalidOid -- the OID is not checked*/;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // ************************************************************************
+    private final DataInputStream input;
+    private boolean isClosed = false/*by default not closed*/;
+
+    // 'isHeaderRead' is true once the header has been read. 'isRecordPending'
+    // is true if the field count of the next record has been read (by
+    // #hasMoreRecords()) but the record has not been started. 'isTrailerRead'
+    // is true once the trailer has been read.
+    private boolean isHeaderRead = false;
+    private boolean isRecordPending = false;
+    private boolean isTrailerRead = false;
+    private int pendingFieldCount;
+
+    // a reused buffer for string and bytes values and the view of it that is
+    // returned for bytes values
+    private byte[] stringBuffer = new byte[INITIAL_STRING_SIZE];
+    private ByteBuffer bytesValue = ByteBuffer.wrap(stringBuffer);
+
+    // ------------------------------------------------------------------------
+    // the kind of each nesting level, the number of values (fields, columns or
+    // elements) remaining and, for arrays, the element OID. The depth is -1 if
+    // no record has been started.
+    private static enum Kind { RECORD, STRUCTURE, ARRAY };
+    private Kind[] kinds = new Kind[INITIAL_DEPTH];
+    private int[] remaining = new int[INITIAL_DEPTH];
+    private int[] elementOids = new int[INITIAL_DEPTH];
+    private int depth = -1/*no record to start*/;
+
+    // ========================================================================
+    /**
+     * @param  inputStream the <code>InputStream</code> from which the records
+     *         are read. This cannot be <code>null</code>. It does not need to
+     *         be buffered.
+     */
+    public PGBinaryRecordReader(final InputStream inputStream) {
+        this.input = new DataInputStream(new BufferedInputStream(inputStream, INPUT_BUFFER_SIZE));
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startRecord()
+     */
+    @Override
+    public final void startRecord()
+            throws IllegalStateException, OperationFailedException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth >= 0) throw new IllegalStateException("A record has already been started in the record reader.")/*by contract*/;
+        if(!hasMoreRecords()) throw new InvalidDataException("There are no more records.");
+        isRecordPending = false/*the record is consumed*/;
+
+        push(Kind.RECORD, pendingFieldCount);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endRecord()
+     */
+    @Override
+    public final void endRecord()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if((depth != 0) || (kinds[depth] != Kind.RECORD)) throw new IllegalStateException("A record has not been started or is nested in the record reader.")/*by contract*/;
+        if(remaining[depth] > 0) throw new InvalidDataException("The record has " + remaining[depth] + " unread field(s).");
+        depth--;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreRecords()
+     */
+    @Override
+    public final boolean hasMoreRecords()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth >= 0) throw new IllegalStateException("A record has been started in the record reader. This can only be called after a record has finished.")/*by contract*/;
+        if(isRecordPending) return true/*already read*/;
+        if(isTrailerRead) return false/*no more records*/;
+
+        try {
+            if(!isHeaderRead) readHeader();
+
+            final short fieldCount = input.readShort();
+            if(fieldCount == TRAILER) {
+                isTrailerRead = true/*by definition*/;
+                return false/*no more records*/;
+            } /* else -- there is another record */
+            if(fieldCount < 0) throw new InvalidDataException("Invalid field count (" + fieldCount + ").");
+            pendingFieldCount = fieldCount;
+            isRecordPending = true/*by definition*/;
+            return true/*there are more records*/;
+        } catch(final EOFException eofe) {
+            throw new InvalidDataException("The stream ended before the trailer.", eofe);
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not read the next record.", ioe);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startStructure()
+     */
+    @Override
+    public final boolean startStructure()
+            throws IllegalStateException, InvalidDataException {
+        // NOTE:  named composite types each have their own OID so it is not checked
+        if(readValueLength(ANY_OID) == NULL_LENGTH) return false/*by contract*/;
+        push(Kind.STRUCTURE, readInt()/*column count*/);
+        return true/*non-null structure*/;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endStructure()
+     */
+    @Override
+    public final void endStructure()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if((depth < 0) || (kinds[depth] != Kind.STRUCTURE)) throw new IllegalStateException("A structure has not been started in the record reader.")/*by contract*/;
+        if(remaining[depth] > 0) throw new InvalidDataException("The structure has " + remaining[depth] + " unread column(s).");
+        depth--;
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startArray()
+     */
+    @Override
+    public final boolean startArray()
+            throws IllegalStateException, InvalidDataException {
+        if(readValueLength(ANY_OID) == NULL_LENGTH) {
+            push(Kind.ARRAY, 0/*no elements*/)/*#endArray() is called regardless*/;
+            return false/*by contract*/;
+        } /* else -- there is an array */
+
+        final int dimensionCount = readInt();
+        readInt()/*has nulls -- not needed*/;
+        final int elementOid = readInt();
+        final int elementCount;
+        if(dimensionCount == 0) {
+            elementCount = 0/*an empty array*/;
+        } else if(dimensionCount == 1) {
+            elementCount = readInt();
+            readInt()/*lower bound -- not needed*/;
+        } else/*multi-dimensional*/
+            throw new InvalidDataException("Only single dimension arrays are supported (" + dimensionCount + " dimensions).");
+
+        push(Kind.ARRAY, elementCount);
+        elementOids[depth] = elementOid;
+        return true/*non-null array*/;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreElements()
+     */
+    @Override
+    public final boolean hasMoreElements()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if((depth < 0) || (kinds[depth] != Kind.ARRAY)) throw new IllegalStateException("An array has not been started in the record reader.")/*by contract*/;
+        return (remaining[depth] > 0);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endArray()
+     */
+    @Override
+    public final void endArray()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if((depth < 0) || (kinds[depth] != Kind.ARRAY)) throw new IllegalStateException("An array has not been started in the record reader.")/*by contract*/;
+        if(remaining[depth] > 0) throw new InvalidDataException("The array has " + remaining[depth] + " unread element(s).");
+        depth--;
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readByteField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public final byte readByteField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final short value = readShortField(isSet);
+        if((value < Byte.MIN_VALUE) || (value > Byte.MAX_VALUE)) throw new InvalidDataException("Byte value out of range (" + value + ").");
+        return (byte)value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readShortField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public final short readShortField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readFixedValueLength(INT2_OID, 2, isSet)) return 0/*unset*/;
+        try {
+            return input.readShort();
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not read the value.", ioe);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readIntField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public final int readIntField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readFixedValueLength(INT4_OID, 4, isSet)) return 0/*unset*/;
+        return readInt();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readLongField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public final long readLongField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readFixedValueLength(INT8_OID, 8, isSet)) return 0L/*unset*/;
+        return readLong();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readFloatField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public final float readFloatField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readFixedValueLength(FLOAT4_OID, 4, isSet)) return 0.0f/*unset*/;
+        return Float.intBitsToFloat(readInt());
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readDoubleField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public final double readDoubleField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readFixedValueLength(FLOAT8_OID, 8, isSet)) return 0.0/*unset*/;
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readBooleanField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public final boolean readBooleanField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readFixedValueLength(BOOL_OID, 1, isSet)) return false/*unset*/;
+        try {
+            return (input.readByte() != 0);
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not read the value.", ioe);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readStringField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public final String readStringField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int length = readValueLength(ANY_OID);
+        isSet.setValue(length != NULL_LENGTH);
+        if(length == NULL_LENGTH) return null/*unset*/;
+
+        readIntoBuffer(length);
+        return new String(stringBuffer, 0, length, UTF8);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readBytesField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public final ByteBuffer readBytesField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int length = readValueLength(BYTEA_OID);
+        isSet.setValue(length != NULL_LENGTH);
+        if(length == NULL_LENGTH) return null/*unset*/;
+
+        readIntoBuffer(length);
+        bytesValue.clear();
+        bytesValue.limit(length);
+        return bytesValue;
+    }
+
+    /**
+     * Reads the specified number of bytes into the (reused) string buffer
+     * growing it as necessary.
+     */
+    private void readIntoBuffer(final int length)
+            throws InvalidDataException {
+        if(length > stringBuffer.length) {
+            stringBuffer = new byte[Math.max(length, stringBuffer.length << 1)];
+            bytesValue = ByteBuffer.wrap(stringBuffer);
+        } /* else -- there is sufficient space */
+        try {
+            input.readFully(stringBuffer, 0, length);
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not read the value.", ioe);
+        }
+    }
+
+    // ........................................................................
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#skipField()
+     */
+    @Override
+    public final void skipField()
+            throws IllegalStateException, InvalidDataException {
+        final int length = readValueLength(ANY_OID);
+        if(length == NULL_LENGTH) return/*nothing to skip*/;
+        try {
+            skip(length);
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not skip the value.", ioe);
+        }
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#close()
+     */
+    @Override
+    public void close()
+            throws OperationFailedException {
+        if(isClosed) return/*by contract*/;
+        isClosed = true/*by definition*/;
+
+        try {
+            input.close();
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    // ========================================================================
+    /**
+     * Reads and validates the header (signature, flags and header extension).
+     */
+    private void readHeader()
+            throws IOException, InvalidDataException {
+        isHeaderRead = true/*by definition*/;
+
+        for(int i=0; i<SIGNATURE.length; i++) {
+            if(input.readByte() != SIGNATURE[i]) throw new InvalidDataException("The stream is not in the binary COPY format.");
+        }
+
+        // SEE:  http://www.postgresql.org/docs/9.0/static/sql-copy.html#AEN58860
+        final int flags = input.readInt();
+        if((flags & (1 << 16)) != 0) throw new InvalidDataException("OIDs in the data are not supported.");
+        if((flags & 0xFFFE0000) != 0) throw new InvalidDataException("Unrecognized critical flags in the header (" + Integer.toHexString(flags) + ").");
+        final int extensionLength = input.readInt();
+        if(extensionLength < 0) throw new InvalidDataException("Invalid header extension length (" + extensionLength + ").");
+        skip(extensionLength);
+    }
+
+    /**
+     * Accounts for the next value (field, column or element) in the current
+     * nesting level, checks its OID (if known) and reads its length.
+     *
+     * @param  expectedOid the OID of the type that is expected or {@link #ANY_OID}
+     *         if the OID is not to be checked
+     * @return the length of the value or {@link PGBinaryRecordWriter#NULL_LENGTH}
+     *         if it is <code>NULL</code>
+     */
+    private int readValueLength(final int expectedOid)
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth < 0) throw new IllegalStateException("A record has not been started in the record reader.")/*by contract*/;
+        if(remaining[depth] <= 0) throw new InvalidDataException("There are no more values in the " + kinds[depth].name().toLowerCase() + ".");
+        remaining[depth]--;
+
+        if(kinds[depth] == Kind.STRUCTURE) {
+            final int oid = readInt();
+            if((expectedOid != ANY_OID) && (oid != expectedOid)) throw new InvalidDataException("Expected a column of type OID " + expectedOid + " but found OID " + oid + ".");
+        } else if(kinds[depth] == Kind.ARRAY) {
+            final int oid = elementOids[depth];
+            if((expectedOid != ANY_OID) && (oid != expectedOid)) throw new InvalidDataException("Expected elements of type OID " + expectedOid + " but found OID " + oid + ".");
+        } /* else -- the fields of a record have no OID */
+
+        final int length = readInt();
+        if(length < NULL_LENGTH) throw new InvalidDataException("Invalid value length (" + length + ").");
+        return length;
+    }
+
+    /**
+     * Reads the length of a fixed-width value and sets whether the value is set.
+     *
+     * @return <code>true</code> if the value is set. <code>false</code> otherwise.
+     */
+    private boolean readFixedValueLength(final int expectedOid, final int expectedLength, final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int length = readValueLength(expectedOid);
+        if(length == NULL_LENGTH) {
+            isSet.setValue(false);
+            return false/*unset*/;
+        } /* else -- the value is set */
+        if(length != expectedLength) throw new InvalidDataException("Expected a value of " + expectedLength + " byte(s) but found " + length + " byte(s).");
+        isSet.setValue(true);
+        return true/*set*/;
+    }
+
+    /**
+     * Skips exactly the specified number of bytes.
+     */
+    private void skip(final int length)
+            throws IOException {
+        int skipped = 0;
+        while(skipped < length) {
+            final int count = input.skipBytes(length - skipped);
+            if(count <= 0) throw new EOFException();
+            skipped += count;
+        }
+    }
+
+    private int readInt()
+            throws InvalidDataException {
+        try {
+            return input.readInt();
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not read the value.", ioe);
+        }
+    }
+
+    private long readLong()
+            throws InvalidDataException {
+        try {
+            return input.readLong();
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not read the value.", ioe);
+        }
+    }
+
+    /**
+     * Pushes the specified kind of nesting (growing the stack as necessary).
+     */
+    private void push(final Kind kind, final int valueCount)
+            throws InvalidDataException {
+        if(valueCount < 0) throw new InvalidDataException("Invalid " + kind.name().toLowerCase() + " value count (" + valueCount + ").");
+        depth++;
+        if(depth == kinds.length) {
+            final Kind[] newKinds = new Kind[kinds.length << 1];
+            System.arraycopy(kinds, 0, newKinds, 0, kinds.length);
+            kinds = newKinds;
+            final int[] newRemaining = new int[remaining.length << 1];
+            System.arraycopy(remaining, 0, newRemaining, 0, remaining.length);
+            remaining = newRemaining;
+            final int[] newElementOids = new int[elementOids.length << 1];
+            System.arraycopy(elementOids, 0, newElementOids, 0, elementOids.length);
+            elementOids = newElementOids;
+        } /* else -- there is room */
+        kinds[depth] = kind;
+        remaining[depth] = valueCount;
+    }
+}
@@ -16,14 +16,18 @@ package net.agkn.field_stripe.record.reader;
  * limitations under the License. 
  */
 
+import static net.agkn.field_stripe.record.writer.PGTextRecordWriter.BYTEA_HEX_PREFIX;
+
 import java.io.IOException;
 import java.io.PushbackReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.Stack;
 
 import net.agkn.field_stripe.exception.DeveloperException;
 import net.agkn.field_stripe.exception.InvalidDataException;
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.HexBytes;
 import net.jcip.annotations.NotThreadSafe;
 
 import org.apache.commons.lang.mutable.MutableBoolean;
@@ -357,6 +361,25 @@ public class PGTextRecordReader implements IRecordReader {
         return fieldString;
     }
 
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readBytesField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public ByteBuffer readBytesField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final String fieldString = readStringField();
+        if((fieldString == null) || (fieldString.length() == 0)) {
+            isSet.setValue(false/*not set*/);
+            return null/*any value allowed*/;
+        } /* else -- a non-null value */
+
+        // NOTE:  only the 'hex' bytea format ("\x" followed by hexadecimal
+        //        digits) is supported (not the legacy 'escape' format)
+        if(!fieldString.startsWith(BYTEA_HEX_PREFIX)) throw new InvalidDataException("Expected a (hex format) bytea field but found \"" + fieldString + "\".");
+        isSet.setValue(true/*set*/);
+        return HexBytes.fromHex(fieldString.substring(BYTEA_HEX_PREFIX.length()));
+    }
+
     // ........................................................................
     /* (non-Javadoc)
      * @see net.agkn.field_stripe.record.reader.IRecordReader#readStringField()
@@ -0,0 +1,924 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.HexBytes;
+import net.jcip.annotations.NotThreadSafe;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+
+/**
+ * A {@link IRecordReader reader} for records that are in the PostgreSQL 'text'
+ * COPY format that performs no per-record or per-field allocations (other
+ * than the <code>String</code> returned from {@link #readStringField(MutableBoolean)}).
+ * The <code>ByteBuffer</code> returned from {@link #readBytesField(MutableBoolean)}
+ * is reused.
+ * It accepts the same input as {@link PGTextRecordReader}. See <a href="http://www.postgresql.org/docs/9.0/static/sql-copy.html"><code>COPY</code></a>
+ * for more information on the format.<p/>
+ *
+ * The differences from {@link PGTextRecordReader} are:
+ * <ul>
+ *   <li>the input is read into a reused <code>char[]</code> buffer rather than
+ *       through a <code>PushbackReader</code>;</li>
+ *   <li>each record is read into a reused <code>char[]</code> rather than a
+ *       new <code>StringBuilder</code>;</li>
+ *   <li>there is one pooled {@link State state} per nesting depth (each with
+ *       its own reused field buffer) rather than a new state object per nested
+ *       value;</li>
+ *   <li>numeric values are parsed directly from the field buffer range;</li>
+ *   <li>octal (<code>\digits</code>) and hex (<code>\xdigits</code>) escapes
+ *       are supported.</li>
+ * </ul>
+ *
+ * Note that this parser is <i>not</i> thread-safe. Also note that no exceptions
+ * are logged.
+ *
+ * @author rgrzywinski
+ * @see PGTextRecordReader
+ */
+@NotThreadSafe
+public class PooledPGTextRecordReader implements IRecordReader {
+    // NOTE: from T&E with PostgreSQL's COPY FROM, there cannot be any blank
+    //       records (records that only contain the newline or carriage return
+    //       character)
+
+    // the default size (in chars) of the read buffer
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    // the initial nesting depth and field size (both grown as needed)
+    private static final int INITIAL_DEPTH = 8;
+    private static final int INITIAL_FIELD_SIZE = 256;
+
+    // ------------------------------------------------------------------------
+    private static final int EOS = -1/*end-of-stream*/;
+
+    private static final int CR = '\r';
+    private static final int LF = '\n';
+
+    // ************************************************************************
+    private final Reader reader;
+    private boolean isClosed = false/*by default not closed*/;
+
+    // the buffer of characters read from the reader. 'bufferPosition' is the
+    // index of the next character to be read and 'bufferLimit' is one past
+    // the last valid character.
+    private final char[] buffer;
+    private int bufferPosition = 0;
+    private int bufferLimit = 0;
+
+    // the current record (without its end-of-record separator)
+    private char[] record = new char[INITIAL_FIELD_SIZE];
+    private int recordLength = 0;
+
+    // ------------------------------------------------------------------------
+    // the pooled states (one per nesting depth) and the current depth (-1 if
+    // no record has been started)
+    private State[] states = new State[INITIAL_DEPTH];
+    private int depth = -1/*no record to start*/;
+
+    private final NumberParser numberParser = new NumberParser();
+
+    // the (reused) value of bytes fields (grown as needed)
+    private byte[] bytes = new byte[INITIAL_FIELD_SIZE];
+    private ByteBuffer bytesValue = ByteBuffer.wrap(bytes);
+
+    // ========================================================================
+    /**
+     * Uses a buffer of {@link #DEFAULT_BUFFER_SIZE} characters.
+     *
+     * @param  reader the <code>Reader</code> from which the record is read.
+     *         This cannot be <code>null</code>.
+     * @see #PooledPGTextRecordReader(Reader, int)
+     */
+    public PooledPGTextRecordReader(final Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param  reader the <code>Reader</code> from which the record is read.
+     *         This cannot be <code>null</code>. It does not need to be buffered.
+     * @param  bufferSize the size (in characters) of the read buffer. This
+     *         must be greater than zero.
+     */
+    public PooledPGTextRecordReader(final Reader reader, final int bufferSize) {
+        if(bufferSize < 1) throw new IllegalArgumentException("The buffer size must be greater than zero (" + bufferSize + ").");
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+        for(int i=0; i<states.length; i++)
+            states[i] = new State();
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startRecord()
+     */
+    @Override
+    public final void startRecord()
+            throws IllegalStateException, OperationFailedException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth >= 0) throw new IllegalStateException("A record has already been started in the record reader.")/*by contract*/;
+
+        readRecord();
+        pushState().initialize(Kind.RECORD, record, 0/*start*/, recordLength);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endRecord()
+     */
+    @Override
+    public final void endRecord()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if((depth < 0) || (states[depth].kind != Kind.RECORD)) throw new IllegalStateException("A record has not been started or is nested in the record reader.")/*by contract*/;
+        final State state = states[depth--]/*pop*/;
+
+        // ensure that the end-of-record was reached
+        if(state.position < state.end) throw new InvalidDataException("The end-of-record has not yet been reached.");
+        // NOTE:  there is no worry about trailing space, etc as the previous
+        //        call to #readField() would have consumed it
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreRecords()
+     */
+    @Override
+    public final boolean hasMoreRecords()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth >= 0) throw new IllegalStateException("A record has been started in the record reader. This can only be called after a record has finished.")/*by contract*/;
+
+        // peek ahead at the next character. If it is EOS then there are no more
+        // records. If it is a newline or carriage return then an error is thrown.
+        final int character = peek();
+        if(character == EOS) return false/*no more records*/;
+        if( (character == CR) || (character == LF) ) throw new InvalidDataException("Encountered unexpected newline or carriage return.");
+        return true/*there are more records*/;
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startStructure()
+     */
+    @Override
+    public final boolean startStructure()
+            throws IllegalStateException, InvalidDataException {
+        final State parent = currentState();
+        if(!parent.readField()) return false/*by contract*/;
+
+        // consume any leading whitespace and look for the leading '('
+        final State state = pushState();
+        state.initialize(Kind.STRUCTURE, parent.field, 0/*start*/, parent.fieldLength);
+        state.skipWhitespace();
+        if((state.position >= state.end) || (state.source[state.position++] != '(')) throw new InvalidDataException("Malformed structure does not start with '('.");
+
+        return true/*non-null structure*/;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endStructure()
+     */
+    @Override
+    public final void endStructure()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if((depth < 0) || (states[depth].kind != Kind.STRUCTURE)) throw new IllegalStateException("A record has not been started or nested in the record reader.")/*by contract*/;
+        final State state = states[depth--]/*pop*/;
+
+        // there should be more characters and the next character must be
+        // the end-of-structure character
+        // SEE:  PostgreSQL src: src/backend/utils/adt/rowtypes.c: record_in()
+        if(state.position >= state.end) throw new InvalidDataException("End of structure reached without finding the ')' delimiter.");
+        final char character = state.source[state.position++];
+        if(character != ')') throw new InvalidDataException("Expected the end-of-structure delimiter but found '" + character + "'.");
+
+        // consume any remaining whitespace
+        state.skipWhitespace();
+        if(state.position < state.end) throw new InvalidDataException("Non-whitespace found after end-of-structure delimiter ')'.");
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startArray()
+     */
+    @Override
+    public final boolean startArray()
+            throws IllegalStateException, InvalidDataException {
+        final State parent = currentState();
+        if(!parent.readField()) {
+            pushState().initialize(Kind.EMPTY_ARRAY, null/*no source*/, 0, 0);
+            return false/*by contract*/;
+        } /* else -- there is a field that contains the array */
+
+        // consume any leading whitespace and look for the leading '{'
+        final State state = pushState();
+        state.initialize(Kind.ARRAY, parent.field, 0/*start*/, parent.fieldLength);
+        state.skipWhitespace();
+        if((state.position >= state.end) || (state.source[state.position++] != '{')) throw new InvalidDataException("Malformed array does not start with '{'.");
+
+        return true/*non-null array*/;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreElements()
+     */
+    @Override
+    public final boolean hasMoreElements()
+            throws IllegalStateException, InvalidDataException {
+        final State state = currentArrayState();
+        if(state.kind == Kind.EMPTY_ARRAY) return false/*by definition*/;
+
+        // consume any leading whitespace
+        // NOTE: it's OK to consume this here since #readField() would
+        //       consume and disregard anyway
+        state.skipWhitespace();
+        if(state.position >= state.end) throw new InvalidDataException("End of array reached without finding the '}' delimiter.");
+
+        // The possible next states are: '}' (no elements) or any non-whitespace
+        // char (there are more elements) excluding ',' (which is an error
+        // since blank fields are not allowed in arrays)
+        final char character = state.source[state.position/*peek ahead*/];
+        if(character == '}')
+            return false/*no elements (specifically, an empty array)*/;
+        else if(character == ',')
+            throw new InvalidDataException("Empty elements are not allowed in an array.");
+        else /*some non-whitespace char that is not '}' or ','*/
+            return true/*must be an element*/;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endArray()
+     */
+    @Override
+    public final void endArray()
+            throws IllegalStateException, InvalidDataException {
+        final State state = currentArrayState();
+        depth--/*pop*/;
+        if(state.kind == Kind.EMPTY_ARRAY) return/*nothing to do since always at the end*/;
+
+        // there should be more characters and the next character must be
+        // the end-of-array character
+        // SEE:  PostgreSQL src: src/backend/utils/adt/arrayfuncs.c: array_in()
+        if(state.position >= state.end) throw new InvalidDataException("End of array reached without finding the '}' delimiter.");
+        final char character = state.source[state.position++];
+        if(character != '}') throw new InvalidDataException("Expected the end-of-array delimiter but found '" + character + "'.");
+
+        // consume any remaining whitespace
+        state.skipWhitespace();
+        if(state.position < state.end) throw new InvalidDataException("Non-whitespace found after end-of-array delimiter '}'.");
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readByteField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public byte readByteField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final State state = readPrimitiveField(isSet);
+        if(state == null) return -1/*any value allowed*/;
+        final long value = parseLong(state, "a byte");
+        if((value < Byte.MIN_VALUE) || (value > Byte.MAX_VALUE)) throw new InvalidDataException("Could not convert \"" + state.fieldString() + "\" to a byte.");
+        return (byte)value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readShortField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public short readShortField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final State state = readPrimitiveField(isSet);
+        if(state == null) return -1/*any value allowed*/;
+        final long value = parseLong(state, "a short");
+        if((value < Short.MIN_VALUE) || (value > Short.MAX_VALUE)) throw new InvalidDataException("Could not convert \"" + state.fieldString() + "\" to a short.");
+        return (short)value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readIntField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public int readIntField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final State state = readPrimitiveField(isSet);
+        if(state == null) return -1/*any value allowed*/;
+        final long value = parseLong(state, "an integer");
+        if((value < Integer.MIN_VALUE) || (value > Integer.MAX_VALUE)) throw new InvalidDataException("Could not convert \"" + state.fieldString() + "\" to an integer.");
+        return (int)value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readLongField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public long readLongField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final State state = readPrimitiveField(isSet);
+        if(state == null) return -1L/*any value allowed*/;
+        return parseLong(state, "a long");
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readFloatField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public float readFloatField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final State state = readPrimitiveField(isSet);
+        if(state == null) return -1.0f/*any value allowed*/;
+        try {
+            return numberParser.parseFloat(state.field, 0, state.fieldLength);
+        } catch(final NumberFormatException nfe) {
+            throw new InvalidDataException("Could not convert \"" + state.fieldString() + "\" to a float.", nfe);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readDoubleField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public double readDoubleField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final State state = readPrimitiveField(isSet);
+        if(state == null) return -1.0/*any value allowed*/;
+        try {
+            return numberParser.parseDouble(state.field, 0, state.fieldLength);
+        } catch(final NumberFormatException nfe) {
+            throw new InvalidDataException("Could not convert \"" + state.fieldString() + "\" to a double.", nfe);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readBooleanField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public boolean readBooleanField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final State state = readPrimitiveField(isSet);
+        if(state == null) return false/*any value allowed*/;
+
+        // NOTE:  matches Boolean#parseBoolean() (case-insensitive "true")
+        // CHECK:  are there more values that PG allows for "true"?
+        if(state.fieldLength != 4/*length("true")*/) return false;
+        final char[] field = state.field/*for convenience*/;
+        return (((field[0] == 't') || (field[0] == 'T')) &&
+                ((field[1] == 'r') || (field[1] == 'R')) &&
+                ((field[2] == 'u') || (field[2] == 'U')) &&
+                ((field[3] == 'e') || (field[3] == 'E')));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readStringField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public String readStringField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final State state = readPrimitiveField(isSet);
+        if(state == null) return ""/*any value allowed*/;
+        return state.fieldString();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readBytesField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public ByteBuffer readBytesField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final State state = readPrimitiveField(isSet);
+        if(state == null) return null/*any value allowed*/;
+
+        // NOTE:  only the 'hex' bytea format ("\x" followed by hexadecimal
+        //        digits) is supported (not the legacy 'escape' format). The
+        //        digits are decoded directly from the field buffer into the
+        //        reused bytes buffer.
+        final char[] field = state.field/*for convenience*/;
+        if((state.fieldLength < 2) || (field[0] != '\\') || (field[1] != 'x')) throw new InvalidDataException("Expected a (hex format) bytea field but found \"" + state.fieldString() + "\".");
+        final int digitCount = (state.fieldLength - 2/*"\x"*/);
+        if(bytes.length < (digitCount >> 1)) {
+            bytes = new byte[Math.max((digitCount >> 1), (bytes.length << 1))];
+            bytesValue = ByteBuffer.wrap(bytes);
+        } /* else -- there is sufficient space */
+        final int byteCount = HexBytes.fromHex(field, 2/*after "\x"*/, digitCount, bytes);
+        bytesValue.clear();
+        bytesValue.limit(byteCount);
+        return bytesValue;
+    }
+
+    // ........................................................................
+    /**
+     * Reads the next field from the current state. A <code>null</code> or
+     * empty field is considered unset (as in {@link PGTextRecordReader}).
+     *
+     * @return the current {@link State} whose field buffer contains the field
+     *         or <code>null</code> if the field was unset. <code>isSet</code>
+     *         is updated accordingly.
+     */
+    private State readPrimitiveField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final State state = currentState();
+        if(!state.readField() || (state.fieldLength == 0)) {
+            isSet.setValue(false/*not set*/);
+            return null/*unset*/;
+        } /* else -- a non-null value */
+        isSet.setValue(true/*set*/);
+        return state;
+    }
+
+    /**
+     * Parses the field of the specified state as a <code>long</code>.
+     *
+     * @param  typeDescription the description of the type used in the exception
+     *         message (e.g. "an integer")
+     */
+    private static long parseLong(final State state, final String typeDescription)
+            throws InvalidDataException {
+        try {
+            return NumberParser.parseLong(state.field, 0, state.fieldLength);
+        } catch(final NumberFormatException nfe) {
+            throw new InvalidDataException("Could not convert \"" + state.fieldString() + "\" to " + typeDescription + ".", nfe);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#skipField()
+     */
+    @Override
+    public void skipField()
+            throws IllegalStateException, InvalidDataException {
+        // retrieve the field and do nothing with it
+        currentState().readField();
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#close()
+     */
+    @Override
+    public void close()
+            throws OperationFailedException {
+        if(isClosed) return/*by contract*/;
+        isClosed = true/*by definition*/;
+
+        try {
+            reader.close();
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    // ========================================================================
+    // state
+    /**
+     * @return the current (top-most) {@link State}. This will never be <code>null</code>.
+     * @throws IllegalStateException if the reader is closed or no record has
+     *         been started.
+     */
+    private State currentState()
+            throws IllegalStateException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth < 0) throw new IllegalStateException("A record has not been started in the record reader.")/*by contract*/;
+        return states[depth];
+    }
+
+    /**
+     * @return the current (top-most) {@link State} which must be an array (or
+     *         empty array). This will never be <code>null</code>.
+     * @throws IllegalStateException if the reader is closed or an array has
+     *         not been started.
+     */
+    private State currentArrayState()
+            throws IllegalStateException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if((depth < 0) || ((states[depth].kind != Kind.ARRAY) && (states[depth].kind != Kind.EMPTY_ARRAY))) throw new IllegalStateException("An array has not been started in the record reader.")/*by contract*/;
+        return states[depth];
+    }
+
+    /**
+     * Advances the depth and returns the pooled {@link State} for that depth
+     * (growing the pool if necessary). The caller must initialize the state.
+     */
+    private State pushState() {
+        depth++;
+        if(depth == states.length) {
+            final State[] newStates = new State[states.length << 1];
+            System.arraycopy(states, 0, newStates, 0, states.length);
+            for(int i=states.length; i<newStates.length; i++)
+                newStates[i] = new State();
+            states = newStates;
+        } /* else -- there is a pooled state for the depth */
+        return states[depth];
+    }
+
+    // ========================================================================
+    // record
+    /**
+     * Reads an entire record into {@link #record}. The end-of-record separator
+     * is read but not added to the record.
+     */
+    // SEE:  PostgreSQL src: src/backend/commands/copy.c: CopyFrom(), CopyReadLine(), CopyReadLineText()
+    private void readRecord()
+            throws OperationFailedException {
+        recordLength = 0;
+        if(peek() == EOS) throw new InvalidDataException("There are no more records.");
+
+        // read until a newline ('\r' and/or '\n') or the end-of-copy marker
+        // ('\.') is detected
+        // NOTE:  there is a ton of logic around '\.' (end-of-copy) that is
+        //        *not* replicated here
+        while(true) {
+            if((bufferPosition == bufferLimit) && !fill()) return/*end-of-stream*/;
+
+            // bulk-copy the run of characters up to the end-of-record separator
+            int index = bufferPosition;
+            while(index < bufferLimit) {
+                final char character = buffer[index];
+                if((character == CR) || (character == LF)) break;
+                index++;
+            }
+            appendToRecord(bufferPosition, (index - bufferPosition));
+            bufferPosition = index;
+            if(bufferPosition == bufferLimit) continue/*refill*/;
+
+            final char character = buffer[bufferPosition++];
+            if(character == CR) {
+                // peek ahead for '\n' (for "\r\n")
+                if(peek() == LF) bufferPosition++/*"\r\n"*/;
+                /* else -- just '\r' */
+            } /* else -- just '\n' */
+            return;
+        }
+    }
+
+    /**
+     * Appends the specified range of {@link #buffer} to {@link #record} growing
+     * the record as necessary.
+     */
+    private void appendToRecord(final int start, final int length) {
+        if((recordLength + length) > record.length) {
+            final char[] newRecord = new char[Math.max((record.length << 1), (recordLength + length))];
+            System.arraycopy(record, 0, newRecord, 0, recordLength);
+            record = newRecord;
+        } /* else -- there is room */
+        System.arraycopy(buffer, start, record, recordLength, length);
+        recordLength += length;
+    }
+
+    /**
+     * @return the next character without consuming it or {@link #EOS} if there
+     *         are no more characters.
+     */
+    private int peek()
+            throws InvalidDataException {
+        if((bufferPosition == bufferLimit) && !fill()) return EOS;
+        return buffer[bufferPosition];
+    }
+
+    /**
+     * Refills the buffer. This may only be called when the buffer has been
+     * fully consumed.
+     *
+     * @return <code>true</code> if at least one character was read and <code>false</code>
+     *         if the end of the input has been reached.
+     */
+    private boolean fill()
+            throws InvalidDataException {
+        try {
+            int count;
+            do {
+                count = reader.read(buffer, 0, buffer.length);
+            } while(count == 0)/*by contract of Reader#read() this should not occur*/;
+            if(count < 0) {
+                bufferPosition = bufferLimit = 0/*empty*/;
+                return false/*end-of-stream*/;
+            } /* else -- characters were read */
+            bufferPosition = 0;
+            bufferLimit = count;
+            return true;
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not read the next character.", ioe);
+        }
+    }
+
+    // ************************************************************************
+    /**
+     * The kind of nesting that a {@link State} represents.
+     */
+    private static enum Kind { RECORD, STRUCTURE, ARRAY, EMPTY_ARRAY };
+
+    /**
+     * The pooled state of a record, structure or array. A state parses fields
+     * from a range of a source buffer (the record for the record state and the
+     * parent's field buffer for nested states) into its own field buffer. The
+     * field buffer remains valid (and is used as the source of any nested
+     * state) until the next field is read from this state.
+     */
+    private static final class State {
+        public Kind kind;
+
+        // the source range being parsed
+        public char[] source;
+        public int position;
+        public int end;
+
+        // the last field that was read
+        public char[] field = new char[INITIAL_FIELD_SIZE];
+        public int fieldLength;
+
+        // set to true after reading first field (structures only)
+        public boolean consumeComma;
+
+        // --------------------------------------------------------------------
+        /**
+         * Resets this state to parse the specified range.
+         */
+        public void initialize(final Kind kind, final char[] source, final int start, final int end) {
+            this.kind = kind;
+            this.source = source;
+            this.position = start;
+            this.end = end;
+            this.fieldLength = 0;
+            this.consumeComma = false;
+        }
+
+        /**
+         * Reads the next field into {@link #field}.
+         *
+         * @return <code>false</code> if the field was null and <code>true</code>
+         *         otherwise.
+         * @throws InvalidDataException if there were no more fields to read.
+         */
+        public boolean readField()
+                throws InvalidDataException {
+            fieldLength = 0/*clear*/;
+            switch(kind) {
+                case RECORD:
+                    return readRecordField();
+                case STRUCTURE:
+                    return readStructureField();
+                case ARRAY:
+                    return readArrayField();
+
+                default/*EMPTY_ARRAY*/:
+                    throw new IllegalStateException("There are no fields in an empty array.");
+            }
+        }
+
+        /**
+         * @return the current field as a <code>String</code>
+         */
+        public String fieldString() {
+            return new String(field, 0, fieldLength);
+        }
+
+        // --------------------------------------------------------------------
+        // SEE:  PGTextRecordReader.RecordState#readField()
+        private boolean readRecordField()
+                throws InvalidDataException {
+            final int startPosition = position;
+
+            // SEE:  PostgreSQL src: src/backend/commands/copy.c: CopyReadAttributesText()
+            int endPosition = startPosition/*start at starting position*/;
+            if(position >= end) throw new InvalidDataException("There are no more fields to read.");
+            while(position < end) {
+                char character = source[position++];
+                if(character == ','/*field delimiter*/)
+                    break/*end-of-field reached*/;
+                else if(character == '\\'/*escape*/) {
+                    //     \b   Backspace (ASCII 8)
+                    //     \f  Form feed (ASCII 12)
+                    //     \n  Newline (ASCII 10)
+                    //     \r  Carriage return (ASCII 13)
+                    //     \t  Tab (ASCII 9)
+                    //     \v  Vertical tab (ASCII 11)
+                    //     \digits Backslash followed by one to three octal
+                    //             digits specifies the character with that
+                    //             numeric code
+                    //     \xdigits Backslash x followed by one or two hex digits
+                    //              specifies the character with that numeric code
+                    // "Any other backslashed character that is not mentioned
+                    //  in the above table will be taken to represent itself."
+                    // SEE:  http://www.postgresql.org/docs/9.0/static/sql-copy.html
+                    if(position >= end) break/*end-of-field -- escape is ignored*/;
+                    character = source[position++];
+                    switch(character) {
+                        case '0':
+                        case '1':
+                        case '2':
+                        case '3':
+                        case '4':
+                        case '5':
+                        case '6':
+                        case '7': {
+                            int value = character - '0';
+                            for(int i=1; (i<3) && (position < end) && (source[position] >= '0') && (source[position] <= '7'); i++)
+                                value = (value << 3) + (source[position++] - '0');
+                            append((char)value);
+                            break;
+                        }
+
+                        case 'x': {
+                            int digit;
+                            if((position < end) && ((digit = Character.digit(source[position], 16/*hex*/)) >= 0)) {
+                                position++;
+                                int value = digit;
+                                if((position < end) && ((digit = Character.digit(source[position], 16/*hex*/)) >= 0)) {
+                                    position++;
+                                    value = (value << 4) + digit;
+                                } /* else -- a single hex digit */
+                                append((char)value);
+                            } else /*not followed by a hex digit so it represents itself*/
+                                append(character);
+                            break;
+                        }
+
+                        case 'b':
+                            append('\b');
+                            break;
+                        case 'f':
+                            append('\f');
+                            break;
+                        case 'n':
+                            append('\n');
+                            break;
+                        case 'r':
+                            append('\r');
+                            break;
+                        case 't':
+                            append('\t');
+                            break;
+                        case 'v':
+                            append((char)0x0B/*vertical tab*/);
+                            break;
+
+                        // NOTE:  '\N' *within* a string is to be treated literally
+                        //        (i.e. as simply 'N')
+
+                        // any other character is to be treated as a literal
+                        default:
+                            append(character);
+                            break;
+                    }
+                } else/*not ',' and not '\\'*/
+                    append(character);
+
+                endPosition = position/*get position before next char*/;
+            }
+
+            // now that the extent of the field has been found, determine if the
+            // *raw* field was null (i.e. was exactly "\N")
+            if( (endPosition - startPosition) == 2/*length("\N")*/) {
+                if( (source[startPosition] == '\\') && (source[startPosition + 1] == 'N') )
+                    return false/*the literal null ("\N") was found*/;
+                /* else -- some other characters made up the field */
+            } /* else -- could not have contained the null string ("\N") */
+
+            return true;
+        }
+
+        // SEE:  PGTextRecordReader.StructureState#readField()
+        private boolean readStructureField()
+                throws InvalidDataException {
+            // SEE:  PostgreSQL src: src/backend/utils/adt/rowtypes.c: record_in()
+            if(position >= end) throw new InvalidDataException("There are no more structure fields to read.");
+            if(consumeComma) {
+                if(source[position] == ',')
+                    position++;
+                else /*not the field delimiter ','*/
+                    throw new InvalidDataException("Expected end-of-field delimiter ','. Found field data.");
+            } /* else -- the field delimiter (comma) does not need to be consumed */
+
+            boolean inQuote = false/*true if in double quotes*/;
+            final int startPosition = position/*start of this field*/;
+            while(position < end) {
+                final char character = source[position/*peek ahead but don't advance before check*/];
+                if(!inQuote && ((character == ',') || (character == ')')))
+                    break/*end-of-field delimiter found*/;
+                /* else -- either in quotes or not the end-of-field delimiter */
+                position++/*advance*/;
+
+                if(character == '\\') {
+                    if(position >= end) throw new InvalidDataException("Invalid escape sequence at unexpected end of field.");
+                    append(source[position++]);
+                } else if(character == '\"') {
+                    if(!inQuote)
+                        inQuote = true/*by definition*/;
+                    else if((position < end) && (source[position] == '\"')) {
+                        // escaped double quote (double double-quote)
+                        append(source[position++]);
+                    } else /*end-of-record or next char was not double quote*/
+                        inQuote = false/*by definition*/;
+                } else /*not end-of-field, backslash or double quote*/
+                    append(character);
+            }
+
+            // flag that a field has been read
+            consumeComma = true/*by definition*/;
+
+            // an empty field translates to 'null'
+            return (position != startPosition);
+        }
+
+        // SEE:  PGTextRecordReader.ArrayState#readField()
+        private boolean readArrayField()
+                throws InvalidDataException {
+            // SEE:  PostgreSQL src: src/backend/utils/adt/arrayfuncs.c: ArrayCount()
+            // SEE:  PostgreSQL src: src/backend/utils/adt/arrayfuncs.c: ReadArrayStr()
+
+            // leading whitespace is ignored on each field
+            skipWhitespace();
+            if(position >= end) throw new InvalidDataException("End of array reached without finding the '}' delimiter.");
+
+            boolean inQuote = false/*true if in double quotes*/;
+            boolean startedValue = false/*true after first non-whitespace (prevents double quotes after field start)*/;
+            boolean canBeNull = true/*false if '\' or '"' is encountered (which precludes from being literal "NULL")*/;
+            while(position < end) {
+                final char character = source[position/*peek ahead but don't advance before check*/];
+                if(!inQuote && ((character == ',') || (character == '}')))
+                    break/*end-of-field delimiter found*/;
+                /* else -- either in quotes or not the end-of-field delimiter */
+                position++/*advance*/;
+
+                if(character == '\\') {
+                    // the character after a backslash is taken literally
+                    if(position >= end) throw new InvalidDataException("Invalid escape sequence at unexpected end of array field.");
+                    append(source[position++]);
+
+                    startedValue = true/*non-whitespace found*/;
+                    canBeNull = false/*backslash implies cannot be null*/;
+                } else if(character == '\"') {
+                    if(!inQuote && startedValue) throw new InvalidDataException("Array field cannot contain embedded double quotes.");
+                    inQuote = !inQuote/*swap state*/;
+                    startedValue = true/*non-whitespace found*/;
+                    canBeNull = false/*double quote implies cannot be null*/;
+                } else { /*not end-of-field, backslash or double quote*/
+                    if(inQuote)
+                        append(character);
+                    else if(Character.isWhitespace(character))/*not in double quotes and is whitespace*/
+                        break/*end of non-quoted field (that has trailing whitespace)*/;
+                    else {/*not in double quotes and is not whitespace*/
+                        append(character);
+                        startedValue = true/*non-whitespace found*/;
+                    }
+                }
+            }
+
+            // trailing whitespace is ignored
+            if(position >= end) throw new InvalidDataException("End of array reached without finding the '}' delimiter.");
+            skipWhitespace();
+            if(position >= end) throw new InvalidDataException("End of array reached without finding the '}' delimiter.");
+
+            final char character = source[position];
+            if(character == ',') position++/*consume it*/;
+            else if(character != '}') throw new InvalidDataException("Encountered '" + character + "' after end of array field.");
+
+            if(canBeNull && (fieldLength == 4/*length("NULL")*/) &&
+               (field[0] == 'N') && (field[1] == 'U') && (field[2] == 'L') && (field[3] == 'L'))
+                return false/*the literal null ("NULL") was found*/;
+            /* else -- some other characters made up the field */
+
+            return true;
+        }
+
+        // --------------------------------------------------------------------
+        /**
+         * Consumes any whitespace in the source range.
+         */
+        public void skipWhitespace() {
+            while((position < end) && Character.isWhitespace(source[position]))
+                position++;
+        }
+
+        /**
+         * Appends the specified character to the field (growing it as needed).
+         */
+        private void append(final char character) {
+            if(fieldLength == field.length) {
+                final char[] newField = new char[field.length << 1];
+                System.arraycopy(field, 0, newField, 0, fieldLength);
+                field = newField;
+            } /* else -- there is room */
+            field[fieldLength++] = character;
+        }
+    }
+}
@@ -0,0 +1,729 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.EnumSymbolTable;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.protobuf.ProtobufType;
+import net.jcip.annotations.NotThreadSafe;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+
+import com.google.protobuf.CodedInputStream;
+
+/**
+ * A {@link IRecordReader reader} for length-delimited Protobuf binary messages
+ * (i.e. each message is prefixed by its varint-encoded length as written by
+ * <code>MessageLite#writeDelimitedTo()</code>). The {@link ICompositeType schema}
+ * must be the one from which the messages were serialized (typically built by
+ * {@link net.agkn.field_stripe.record.protobuf.ProtobufFieldTypeFactory}).<p/>
+ *
+ * Since the wire format does not guarantee that fields are in any order (nor
+ * that repeated values are contiguous), each record is read in its entirety
+ * into a reused buffer and is indexed in a single pass with a {@link CodedInputStream}.
+ * The index (of every field occurrence at every nesting level) is then walked
+ * in schema order as fields are read. Packed repeated fields are expanded into
+ * individual occurrences as the record is indexed. Fields that are not in the
+ * schema are skipped.<p/>
+ *
+ * Protobuf cannot distinguish an empty repeated field from an absent one so
+ * {@link #startArray()} never reports an unset array. A singular field that
+ * occurs more than once takes its last value. (For singular messages this
+ * means that the last occurrence is used rather than merging the occurrences.)<p/>
+ *
+ * Note that this reader is <i>not</i> thread-safe. Also note that no exceptions
+ * are logged.
+ *
+ * @author rgrzywinski
+ * @see ProtobufType#forField(IField)
+ */
+@NotThreadSafe
+public class ProtobufRecordReader implements IRecordReader {
+    // the initial sizes of the record buffer, occurrence index and nesting
+    // depth (all grown as needed)
+    private static final int INITIAL_RECORD_SIZE = 1024;
+    private static final int INITIAL_OCCURRENCE_COUNT = 64;
+    private static final int INITIAL_DEPTH = 8;
+
+    private static final int EOS = -1/*end-of-stream*/;
+    private static final int NONE = -1/*no occurrence*/;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // ************************************************************************
+    private final ICompositeType schema;
+    private final InputStream inputStream;
+    private boolean isClosed = false/*by default not closed*/;
+
+    // the current record (without its length prefix). 'isRecordRead' is true
+    // if the next record has been read (by #hasMoreRecords()) but not started.
+    private byte[] record = new byte[INITIAL_RECORD_SIZE];
+    private int recordLength = 0;
+    private boolean isRecordRead = false;
+
+    // ------------------------------------------------------------------------
+    // the index of the field occurrences of the current record. For each
+    // occurrence: its field number, its value (a varint or fixed value, or for
+    // strings and bytes the offset into the record), its length (strings and
+    // bytes only) and the index of its next sibling (one past all of its
+    // children for messages).
+    private int[] fieldNumbers = new int[INITIAL_OCCURRENCE_COUNT];
+    private long[] values = new long[INITIAL_OCCURRENCE_COUNT];
+    private int[] lengths = new int[INITIAL_OCCURRENCE_COUNT];
+    private int[] nextSiblings = new int[INITIAL_OCCURRENCE_COUNT];
+    private int occurrenceCount = 0;
+
+    // ------------------------------------------------------------------------
+    // the pooled frames (one per nesting depth) and the current depth (-1 if
+    // no record has been started)
+    private Frame[] frames = new Frame[INITIAL_DEPTH];
+    private int depth = -1/*no record to start*/;
+
+    // the Protobuf type of the value that is currently being read
+    private ProtobufType valueType;
+
+    // ========================================================================
+    /**
+     * @param  schema the schema of the messages. This cannot be <code>null</code>.
+     * @param  inputStream the <code>InputStream</code> from which the records
+     *         are read. This cannot be <code>null</code>. It does not need to
+     *         be buffered.
+     */
+    public ProtobufRecordReader(final ICompositeType schema, final InputStream inputStream) {
+        this.schema = schema;
+        this.inputStream = new BufferedInputStream(inputStream);
+        for(int i=0; i<frames.length; i++)
+            frames[i] = new Frame();
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startRecord()
+     */
+    @Override
+    public final void startRecord()
+            throws IllegalStateException, OperationFailedException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth >= 0) throw new IllegalStateException("A record has already been started in the record reader.")/*by contract*/;
+        if(!hasMoreRecords()) throw new InvalidDataException("There are no more records.");
+        isRecordRead = false/*the record is consumed*/;
+
+        occurrenceCount = 0/*reset*/;
+        try {
+            final CodedInputStream input = CodedInputStream.newInstance(record, 0, recordLength);
+            input.setSizeLimit(Integer.MAX_VALUE)/*the record is already bounded*/;
+            index(input, schema);
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Malformed Protobuf message.", ioe);
+        }
+        pushFrame(schema, 0/*start*/, occurrenceCount);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endRecord()
+     */
+    @Override
+    public final void endRecord()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth != 0) throw new IllegalStateException("A record has not been started or is nested in the record reader.")/*by contract*/;
+
+        final Frame frame = frames[depth];
+        if(frame.fieldPosition < frame.fields.size()) throw new InvalidDataException("The end-of-record has not yet been reached.");
+        depth--;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreRecords()
+     */
+    @Override
+    public final boolean hasMoreRecords()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth >= 0) throw new IllegalStateException("A record has been started in the record reader. This can only be called after a record has finished.")/*by contract*/;
+        if(isRecordRead) return true/*already read*/;
+
+        isRecordRead = readRecord();
+        return isRecordRead;
+    }
+
+    // ........................................................................
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startStructure()
+     */
+    @Override
+    public final boolean startStructure()
+            throws IllegalStateException, InvalidDataException {
+        final Frame frame = currentFrame();
+        final int occurrence = nextValue(frame);
+        if(valueType != ProtobufType.MESSAGE) throw new InvalidDataException("Expected a structure but found a " + valueType + " field.");
+        if(occurrence == NONE) return false/*unset*/;
+
+        pushFrame((ICompositeType)frame.valueField.getType(), (occurrence + 1)/*first child*/, nextSiblings[occurrence]);
+        return true/*set*/;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endStructure()
+     */
+    @Override
+    public final void endStructure()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth < 1) throw new IllegalStateException("A record has not been started or nested in the record reader.")/*by contract*/;
+
+        final Frame frame = frames[depth];
+        if(frame.fieldPosition < frame.fields.size()) throw new InvalidDataException("The end-of-structure has not yet been reached.");
+        depth--;
+    }
+
+    // ........................................................................
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startArray()
+     */
+    @Override
+    public final boolean startArray()
+            throws IllegalStateException, InvalidDataException {
+        final Frame frame = currentFrame();
+        if(frame.arrayField != null) throw new InvalidDataException("Protobuf does not support nested arrays.");
+
+        final IField field = frame.nextField();
+        if(!field.getQualifier().isMultiValue()) throw new InvalidDataException("Expected an array but found non-repeated field \"" + field.getName() + "\".");
+        frame.arrayField = field;
+        frame.arrayCursor = frame.findOccurrence(field.getIndex(), frame.start);
+        return (frame.arrayCursor != NONE);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreElements()
+     */
+    @Override
+    public final boolean hasMoreElements()
+            throws IllegalStateException, InvalidDataException {
+        return (currentArrayFrame().arrayCursor != NONE);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endArray()
+     */
+    @Override
+    public final void endArray()
+            throws IllegalStateException, InvalidDataException {
+        final Frame frame = currentArrayFrame();
+        if(frame.arrayCursor != NONE) throw new InvalidDataException("The end of the array has not yet been reached.");
+        frame.arrayField = null/*no longer in the array*/;
+    }
+
+    // ........................................................................
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readByteField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public byte readByteField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long value = readIntegralValue(isSet);
+        if((value < Byte.MIN_VALUE) || (value > Byte.MAX_VALUE)) throw new InvalidDataException("Could not convert \"" + value + "\" to a byte.");
+        return (byte)value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readShortField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public short readShortField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long value = readIntegralValue(isSet);
+        if((value < Short.MIN_VALUE) || (value > Short.MAX_VALUE)) throw new InvalidDataException("Could not convert \"" + value + "\" to a short.");
+        return (short)value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readIntField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public int readIntField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final long value = readIntegralValue(isSet);
+        if((value < Integer.MIN_VALUE) || (value > Integer.MAX_VALUE)) throw new InvalidDataException("Could not convert \"" + value + "\" to an integer.");
+        return (int)value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readLongField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public long readLongField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        return readIntegralValue(isSet);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readFloatField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public float readFloatField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int occurrence = readValue(isSet);
+        if(occurrence == NONE) return -1/*any value*/;
+        switch(valueType) {
+            case FLOAT:
+                return Float.intBitsToFloat((int)values[occurrence]);
+            case DOUBLE:
+                return (float)Double.longBitsToDouble(values[occurrence]);
+            default:
+                throw new InvalidDataException("Could not convert a " + valueType + " field to a float.");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readDoubleField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public double readDoubleField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int occurrence = readValue(isSet);
+        if(occurrence == NONE) return -1/*any value*/;
+        switch(valueType) {
+            case FLOAT:
+                return Float.intBitsToFloat((int)values[occurrence]);
+            case DOUBLE:
+                return Double.longBitsToDouble(values[occurrence]);
+            default:
+                throw new InvalidDataException("Could not convert a " + valueType + " field to a double.");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readBooleanField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public boolean readBooleanField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int occurrence = readValue(isSet);
+        if(occurrence == NONE) return false/*any value*/;
+        if(valueType != ProtobufType.BOOL) throw new InvalidDataException("Could not convert a " + valueType + " field to a boolean.");
+        return (values[occurrence] != 0L);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readStringField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public String readStringField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int occurrence = readValue(isSet);
+        if(occurrence == NONE) return null/*any value*/;
+        if(valueType == ProtobufType.ENUM) {
+            // the value of an enum is the name of the symbol with the number
+            final EnumSymbolTable enumSymbolTable = currentFrame().valueField.getEnumSymbolTable();
+            final int ordinal = enumSymbolTable.getOrdinalForNumber((int)values[occurrence]);
+            if(ordinal == EnumSymbolTable.NONE) throw new InvalidDataException("Unknown number " + (int)values[occurrence] + " for enum field \"" + currentFrame().valueField.getName() + "\".");
+            return enumSymbolTable.getName(ordinal);
+        } /* else -- not an enum */
+        if(valueType != ProtobufType.STRING) throw new InvalidDataException("Could not convert a " + valueType + " field to a string.");
+        return new String(record, (int)values[occurrence], lengths[occurrence], UTF8);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#readBytesField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public ByteBuffer readBytesField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int occurrence = readValue(isSet);
+        if(occurrence == NONE) return null/*any value*/;
+        if(valueType != ProtobufType.BYTES) throw new InvalidDataException("Could not convert a " + valueType + " field to bytes.");
+        // NOTE:  a (read-only) view of the record buffer rather than a copy.
+        //        It is valid until the next record is read.
+        return ByteBuffer.wrap(record, (int)values[occurrence], lengths[occurrence]).slice().asReadOnlyBuffer();
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#skipField()
+     */
+    @Override
+    public void skipField()
+            throws IllegalStateException, InvalidDataException {
+        // retrieve the field (or element) and do nothing with it
+        nextValue(currentFrame());
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#close()
+     */
+    @Override
+    public void close()
+            throws OperationFailedException {
+        if(isClosed) return/*by contract*/;
+        isClosed = true/*by definition*/;
+
+        try {
+            inputStream.close();
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    // ========================================================================
+    // value
+    /**
+     * Reads the next primitive value (field or array element) and sets the
+     * specified {@link MutableBoolean} accordingly.
+     *
+     * @return the occurrence of the value or {@link #NONE} if the value is unset
+     */
+    private int readValue(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int occurrence = nextValue(currentFrame());
+        if(valueType == ProtobufType.MESSAGE) throw new InvalidDataException("Expected a primitive but found a structure.");
+        isSet.setValue(occurrence != NONE);
+        return occurrence;
+    }
+
+    /**
+     * Reads the next integral value (field or array element) taking into
+     * account the zig-zag and unsigned encodings.
+     *
+     * @return the value. If <code>isSet</code> is <code>false</code> then this
+     *         value has no meaning.
+     */
+    private long readIntegralValue(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int occurrence = readValue(isSet);
+        if(occurrence == NONE) return -1/*any value*/;
+
+        final long value = values[occurrence];
+        switch(valueType) {
+            case INT32:
+            case UINT32/*values above Integer.MAX_VALUE wrap as in Protobuf*/:
+            case FIXED32:
+            case SFIXED32:
+                return (int)value;
+            case SINT32:
+                return CodedInputStream.decodeZigZag32((int)value);
+            case INT64:
+            case UINT64:
+            case FIXED64:
+            case SFIXED64:
+                return value;
+            case SINT64:
+                return CodedInputStream.decodeZigZag64(value);
+            default:
+                throw new InvalidDataException("Could not convert a " + valueType + " field to an integral value.");
+        }
+    }
+
+    /**
+     * Advances to the next value in the specified frame. If the frame is within
+     * an array then this is the next element of the array otherwise it is the
+     * next field. {@link #valueType} is set to the type of the value.
+     *
+     * @return the occurrence of the value or {@link #NONE} if the value is unset
+     * @throws InvalidDataException if there are no more fields or elements
+     */
+    private int nextValue(final Frame frame)
+            throws InvalidDataException {
+        final int occurrence;
+        if(frame.arrayField != null) { /*array element*/
+            if(frame.arrayCursor == NONE) throw new InvalidDataException("There are no more elements to read.");
+            occurrence = frame.arrayCursor;
+            frame.arrayCursor = frame.findOccurrence(frame.arrayField.getIndex(), nextSiblings[occurrence]);
+            frame.valueField = frame.arrayField;
+        } else /*field*/ {
+            frame.valueField = frame.nextField();
+            occurrence = frame.findLastOccurrence(frame.valueField.getIndex());
+        }
+        valueType = ProtobufType.forField(frame.valueField);
+        return occurrence;
+    }
+
+    // ========================================================================
+    // record
+    /**
+     * Reads the next length-delimited record into {@link #record}.
+     *
+     * @return <code>true</code> if a record was read. <code>false</code> if
+     *         the end of the stream was reached.
+     * @throws InvalidDataException if the stream ends within a record or the
+     *         stream could not be read for any reason.
+     */
+    private boolean readRecord()
+            throws InvalidDataException {
+        try {
+            // read the varint length prefix
+            int length = 0;
+            for(int shift=0; ; shift+=7) {
+                final int value = inputStream.read();
+                if(value == EOS) {
+                    if(shift == 0) return false/*no more records*/;
+                    throw new InvalidDataException("Truncated Protobuf message length.");
+                } /* else -- there is more data */
+                if(shift >= 32) throw new InvalidDataException("Malformed Protobuf message length.");
+                length |= (value & 0x7F) << shift;
+                if((value & 0x80) == 0) break/*end of varint*/;
+            }
+            if(length < 0) throw new InvalidDataException("Malformed Protobuf message length.");
+
+            // read the record itself
+            if(record.length < length) record = new byte[Math.max(length, (record.length << 1))];
+            int position = 0;
+            while(position < length) {
+                final int count = inputStream.read(record, position, (length - position));
+                if(count == EOS) throw new InvalidDataException("Truncated Protobuf message.");
+                position += count;
+            }
+            recordLength = length;
+            return true;
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not read the next record.", ioe);
+        }
+    }
+
+    /**
+     * Indexes the occurrences of the fields of the specified type from the
+     * specified input (up to its limit). Messages are indexed recursively.
+     */
+    private void index(final CodedInputStream input, final ICompositeType type)
+            throws IOException, InvalidDataException {
+        final List<IField> fields = type.getFields();
+        int fieldHint = 0/*fields are typically in index order*/;
+        while(!input.isAtEnd()) {
+            final int tag = input.readTag();
+            final int fieldNumber = tag >>> ProtobufType.TAG_TYPE_BITS;
+            final int wireType = tag & ProtobufType.TAG_TYPE_MASK;
+
+            // find the field in the schema (starting at the hint)
+            final int fieldPosition = findField(fields, fieldNumber, fieldHint);
+            if(fieldPosition < 0) {
+                input.skipField(tag)/*not in the schema*/;
+                continue;
+            } /* else -- the field is in the schema */
+            fieldHint = fieldPosition;
+            final IField field = fields.get(fieldPosition);
+            final ProtobufType protobufType = ProtobufType.forField(field);
+
+            if(wireType == protobufType.getWireType()) {
+                if(protobufType == ProtobufType.MESSAGE) {
+                    final int occurrence = addOccurrence(fieldNumber, 0L/*no value*/, 0/*no length*/);
+                    final int oldLimit = input.pushLimit(input.readRawVarint32());
+                    index(input, (ICompositeType)field.getType());
+                    input.popLimit(oldLimit);
+                    nextSiblings[occurrence] = occurrenceCount/*after all children*/;
+                } else if((protobufType == ProtobufType.STRING) || (protobufType == ProtobufType.BYTES)) {
+                    final int length = input.readRawVarint32();
+                    addOccurrence(fieldNumber, input.getTotalBytesRead()/*offset*/, length);
+                    input.skipRawBytes(length);
+                } else /*scalar*/
+                    addOccurrence(fieldNumber, readScalar(input, wireType), 0/*no length*/);
+            } else if((wireType == ProtobufType.WIRETYPE_LENGTH_DELIMITED) && field.getQualifier().isMultiValue() &&
+                      (protobufType.getWireType() != ProtobufType.WIRETYPE_LENGTH_DELIMITED)) {
+                // packed repeated scalars are expanded into individual occurrences
+                final int oldLimit = input.pushLimit(input.readRawVarint32());
+                while(input.getBytesUntilLimit() > 0)
+                    addOccurrence(fieldNumber, readScalar(input, protobufType.getWireType()), 0/*no length*/);
+                input.popLimit(oldLimit);
+            } else
+                throw new InvalidDataException("Field \"" + field.getName() + "\" has wire type " + wireType + " but expected wire type " + protobufType.getWireType() + ".");
+        }
+    }
+
+    /**
+     * @return the raw (undecoded) value of the specified scalar wire type
+     */
+    private static long readScalar(final CodedInputStream input, final int wireType)
+            throws IOException, InvalidDataException {
+        switch(wireType) {
+            case ProtobufType.WIRETYPE_VARINT:
+                return input.readRawVarint64();
+            case ProtobufType.WIRETYPE_FIXED32:
+                return input.readRawLittleEndian32();
+            case ProtobufType.WIRETYPE_FIXED64:
+                return input.readRawLittleEndian64();
+            default:
+                throw new InvalidDataException("Unexpected scalar wire type " + wireType + ".");
+        }
+    }
+
+    /**
+     * @return the position of the field with the specified field number in the
+     *         specified list of fields or <code>-1</code> if there is no such
+     *         field. The search starts at the specified hint and wraps.
+     */
+    private static int findField(final List<IField> fields, final int fieldNumber, final int hint) {
+        final int fieldCount = fields.size();
+        for(int i=0; i<fieldCount; i++) {
+            final int position = (hint + i) % fieldCount;
+            if(fields.get(position).getIndex() == fieldNumber) return position;
+        }
+        return -1/*not found*/;
+    }
+
+    /**
+     * Adds an occurrence to the index (growing it as necessary).
+     *
+     * @return the index of the added occurrence
+     */
+    private int addOccurrence(final int fieldNumber, final long value, final int length) {
+        if(occurrenceCount == fieldNumbers.length) {
+            final int size = (fieldNumbers.length << 1);
+            fieldNumbers = copyOf(fieldNumbers, size);
+            lengths = copyOf(lengths, size);
+            nextSiblings = copyOf(nextSiblings, size);
+            final long[] newValues = new long[size];
+            System.arraycopy(values, 0, newValues, 0, occurrenceCount);
+            values = newValues;
+        } /* else -- there is room */
+
+        final int occurrence = occurrenceCount++;
+        fieldNumbers[occurrence] = fieldNumber;
+        values[occurrence] = value;
+        lengths[occurrence] = length;
+        nextSiblings[occurrence] = occurrence + 1/*no children*/;
+        return occurrence;
+    }
+
+    // ========================================================================
+    // frame
+    /**
+     * @return the current (top-most) {@link Frame}. This will never be <code>null</code>.
+     * @throws IllegalStateException if the reader is closed or no record has
+     *         been started.
+     */
+    private Frame currentFrame()
+            throws IllegalStateException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth < 0) throw new IllegalStateException("A record has not been started in the record reader.")/*by contract*/;
+        return frames[depth];
+    }
+
+    /**
+     * @return the current {@link Frame} which must be within an array. This
+     *         will never be <code>null</code>.
+     * @throws IllegalStateException if the reader is closed or the current
+     *         frame is not within an array.
+     */
+    private Frame currentArrayFrame()
+            throws IllegalStateException {
+        final Frame frame = currentFrame();
+        if(frame.arrayField == null) throw new IllegalStateException("An array has not been started in the record reader.")/*by contract*/;
+        return frame;
+    }
+
+    /**
+     * Pushes a new frame for the specified type and occurrence range (growing
+     * the pool as necessary).
+     */
+    private void pushFrame(final ICompositeType type, final int start, final int end) {
+        depth++;
+        if(depth == frames.length) {
+            final Frame[] newFrames = new Frame[frames.length << 1];
+            System.arraycopy(frames, 0, newFrames, 0, frames.length);
+            for(int i=frames.length; i<newFrames.length; i++)
+                newFrames[i] = new Frame();
+            frames = newFrames;
+        } /* else -- there is a pooled frame */
+        frames[depth].initialize(type, start, end);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return a copy of the specified array with the specified size
+     */
+    private static int[] copyOf(final int[] array, final int size) {
+        final int[] copy = new int[size];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, size));
+        return copy;
+    }
+
+    // ************************************************************************
+    /**
+     * The position within a (nested) message: the schema fields of the message,
+     * the range of its occurrences in the index and the current array (if any).
+     */
+    private final class Frame {
+        public List<IField> fields;
+        public int fieldPosition;
+
+        // the range of the occurrences of the message's fields
+        public int start;
+        public int end;
+
+        // the repeated field that is currently being read and the occurrence
+        // of its next element ({@link #NONE} if there are no more). 'arrayField'
+        // is null if the frame is not within an array.
+        public IField arrayField;
+        public int arrayCursor;
+
+        // the field of the value that was last read
+        public IField valueField;
+
+        // --------------------------------------------------------------------
+        public void initialize(final ICompositeType type, final int start, final int end) {
+            this.fields = type.getFields();
+            this.fieldPosition = 0;
+            this.start = start;
+            this.end = end;
+            this.arrayField = null;
+            this.arrayCursor = NONE;
+            this.valueField = null;
+        }
+
+        /**
+         * @return the next schema field of this message
+         * @throws InvalidDataException if there are no more fields
+         */
+        public IField nextField()
+                throws InvalidDataException {
+            if(fieldPosition >= fields.size()) throw new InvalidDataException("There are no more fields to read.");
+            return fields.get(fieldPosition++);
+        }
+
+        /**
+         * @return the first occurrence (at or after the specified occurrence)
+         *         of the specified field number within this message or {@link #NONE}
+         *         if there is none
+         */
+        public int findOccurrence(final int fieldNumber, int occurrence) {
+            for(; occurrence<end; occurrence=nextSiblings[occurrence])
+                if(fieldNumbers[occurrence] == fieldNumber) return occurrence;
+            return NONE;
+        }
+
+        /**
+         * @return the last occurrence of the specified field number within this
+         *         message or {@link #NONE} if there is none
+         */
+        public int findLastOccurrence(final int fieldNumber) {
+            int lastOccurrence = NONE;
+            for(int occurrence=start; occurrence<end; occurrence=nextSiblings[occurrence])
+                if(fieldNumbers[occurrence] == fieldNumber) lastOccurrence = occurrence;
+            return lastOccurrence;
+        }
+    }
+}
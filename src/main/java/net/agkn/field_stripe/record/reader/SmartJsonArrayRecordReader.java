@@ -22,11 +22,13 @@ import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import net.agkn.field_stripe.exception.DeveloperException;
 import net.agkn.field_stripe.exception.InvalidDataException;
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.HexBytes;
 import net.jcip.annotations.NotThreadSafe;
 import net.minidev.json.parser.JSONParser;
 import net.minidev.json.parser.ParseException;
@@ -400,6 +402,26 @@ public class SmartJsonArrayRecordReader implements IRecordReader {
         return (String)jsonObject;
     }
 
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readBytesField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public ByteBuffer readBytesField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(stack.isEmpty()) throw new IllegalStateException("A record has not been started in the record reader.")/*by contract*/;
+
+        final Object jsonObject = currentState.getField();
+        if(jsonObject == null) {
+            isSet.setValue(false/*not set*/);
+            return null/*any value allowed*/;
+        } /* else -- a non-null value */
+        // NOTE:  bytes are represented as hexadecimal strings
+        if(!(jsonObject instanceof String)) throw new InvalidDataException("Expected a (hexadecimal) bytes field but found \"" + jsonObject + "\".");
+        isSet.setValue(true/*set*/);
+        return HexBytes.fromHex((String)jsonObject);
+    }
+
     // ------------------------------------------------------------------------
     /* (non-Javadoc)
      * @see net.agkn.summarizer.event.parser.IInputEventParser#skipField()
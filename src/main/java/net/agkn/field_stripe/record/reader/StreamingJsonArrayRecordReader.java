@@ -0,0 +1,730 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.HexBytes;
+import net.jcip.annotations.NotThreadSafe;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+
+/**
+ * A {@link IRecordReader reader} for records that are in JSON-array format
+ * that tokenizes the input as the read methods are called rather than parsing
+ * each record into an intermediate object model (as {@link SmartJsonArrayRecordReader}
+ * does). All structures are represented as JSON arrays and <i>not</i> JSON
+ * objects (or JSON structures).<p/>
+ *
+ * Characters are pulled from a fixed-size buffer and numbers are parsed
+ * directly into primitives. The only state that is retained across calls is
+ * the nesting depth and the number of values read at each depth, therefore
+ * records of any size may be read as long as any single field's value fits
+ * within RAM. Records are separated by whitespace (typically a newline) and
+ * a record may span multiple lines.<p/>
+ *
+ * Note that this parser is <i>not</i> thread-safe. Also note that no exceptions
+ * are logged.
+ *
+ * @author rgrzywinski
+ * @see SmartJsonArrayRecordReader
+ */
+@NotThreadSafe
+public class StreamingJsonArrayRecordReader implements IRecordReader {
+    // the default size (in chars) of the read buffer
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    // the initial maximum nesting depth (grown as needed)
+    private static final int INITIAL_DEPTH = 16;
+
+    // end-of-stream (returned by #peek())
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private boolean isClosed = false/*by default not closed*/;
+
+    // the buffer of characters read from the reader. 'position' is the index
+    // of the next character to be read and 'limit' is one past the last valid
+    // character.
+    private final char[] buffer;
+    private int position = 0;
+    private int limit = 0;
+
+    // the current nesting depth (-1 if a record has not been started). For
+    // each depth the number of values that have been read (which determines
+    // if a separator is expected) and if the level is a null array (which
+    // has no elements and no closing bracket) are tracked.
+    private int depth = -1/*no record to start*/;
+    private int[] valueCounts = new int[INITIAL_DEPTH];
+    private boolean[] isNullLevel = new boolean[INITIAL_DEPTH];
+
+    // reused buffers for string and numeric tokens
+    private final StringBuilder stringBuilder = new StringBuilder();
+    private char[] numberBuffer = new char[32];
+    private int numberLength = 0;
+    private final NumberParser numberParser = new NumberParser();
+
+    // ========================================================================
+    /**
+     * Uses a buffer of {@link #DEFAULT_BUFFER_SIZE} characters.
+     *
+     * @param  reader the <code>Reader</code> from which the record is read.
+     *         This cannot be <code>null</code>.
+     * @see #StreamingJsonArrayRecordReader(Reader, int)
+     */
+    public StreamingJsonArrayRecordReader(final Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param  reader the <code>Reader</code> from which the record is read.
+     *         This cannot be <code>null</code>. It does not need to be buffered.
+     * @param  bufferSize the size (in characters) of the read buffer. This
+     *         must be greater than zero.
+     */
+    public StreamingJsonArrayRecordReader(final Reader reader, final int bufferSize) {
+        if(bufferSize < 1) throw new IllegalArgumentException("The buffer size must be greater than zero (" + bufferSize + ").");
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startRecord()
+     */
+    @Override
+    public final void startRecord()
+            throws IllegalStateException, InvalidDataException {
+        if(!hasMoreRecords()) throw new InvalidDataException("There are no more records to read.");
+
+        // NOTE:  #hasMoreRecords() skipped any leading whitespace
+        if(peek() != '[') throw new InvalidDataException("Expected the record to start with a JSON array.");
+        position++/*consume '['*/;
+        pushLevel(false/*not null*/);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endRecord()
+     */
+    @Override
+    public final void endRecord()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth < 0) throw new IllegalStateException("A record has not been started in the record reader.")/*by contract*/;
+        if(depth > 0) throw new IllegalStateException("Improperly nested record.");
+        if(!reachedEnd()) throw new InvalidDataException("The end of the record has not been reached.");
+
+        popLevel();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreRecords()
+     */
+    @Override
+    public final boolean hasMoreRecords()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth >= 0) throw new IllegalStateException("A record has already been started in the record reader.")/*by contract*/;
+
+        return (skipWhitespace() != EOF);
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startStructure()
+     */
+    @Override
+    public final boolean startStructure()
+            throws IllegalStateException, InvalidDataException {
+        // NOTE:  structures are arrays
+        // there are three options for the field at this point:
+        // 1.  null (allowed);
+        // 2.  not an array (error);
+        // 3.  an array (expected);
+        final int c = startValue();
+        if(c == 'n') {
+            consumeLiteral("null");
+            return false/*by contract*/;
+        } /* else -- not null */
+        if(c != '[') throw new InvalidDataException("Expected a JSON array but found " + describe(c) + ".");
+        position++/*consume '['*/;
+        pushLevel(false/*not null*/);
+
+        return true/*by contract*/;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endStructure()
+     */
+    @Override
+    public final void endStructure()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth < 0) throw new IllegalStateException("A record has not been started in the record reader.")/*by contract*/;
+        if(depth == 0) throw new IllegalStateException("Improperly nested record.");
+        if(!reachedEnd()) throw new InvalidDataException("Expected the structure to end with a JSON array.");
+
+        popLevel();
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#startArray()
+     */
+    @Override
+    public final boolean startArray()
+            throws IllegalStateException, InvalidDataException {
+        // there are three options for the field at this point:
+        // 1.  null (allowed);
+        // 2.  not an array (error);
+        // 3.  an array (expected);
+        final int c = startValue();
+        if(c == 'n') {
+            consumeLiteral("null");
+            pushLevel(true/*null*/);
+            return false/*by contract*/;
+        } /* else -- not null */
+        if(c != '[') throw new InvalidDataException("Expected a JSON array but found " + describe(c) + ".");
+        position++/*consume '['*/;
+        pushLevel(false/*not null*/);
+
+        return true/*by contract*/;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#hasMoreElements()
+     */
+    @Override
+    public final boolean hasMoreElements()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth < 0) throw new IllegalStateException("A record has not been started in the record reader.")/*by contract*/;
+
+        if(isNullLevel[depth]) return false/*by definition*/;
+        final int c = skipWhitespace();
+        if(c == EOF) throw new InvalidDataException("Unexpected end of input within a record.");
+        return (c != ']');
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#endArray()
+     */
+    @Override
+    public final void endArray()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth < 0) throw new IllegalStateException("A record has not been started in the record reader.")/*by contract*/;
+        if(depth == 0) throw new IllegalStateException("Improperly nested event.");
+        if(!reachedEnd()) throw new InvalidDataException("Expected the array to end with a JSON array.");
+
+        popLevel();
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readByteField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public byte readByteField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readNumberToken(isSet, "a byte")) return -1/*any value allowed*/;
+        return (byte)integralNumberValue();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readShortField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public short readShortField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readNumberToken(isSet, "a short")) return -1/*any value allowed*/;
+        return (short)integralNumberValue();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readIntField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public int readIntField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readNumberToken(isSet, "an integer")) return -1/*any value allowed*/;
+        return (int)integralNumberValue();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readLongField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public long readLongField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readNumberToken(isSet, "a long")) return -1L/*any value allowed*/;
+        return integralNumberValue();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readFloatField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public float readFloatField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readNumberToken(isSet, "a float")) return -1.0f/*any value allowed*/;
+        // NOTE:  narrowed from a double to match SmartJsonArrayRecordReader
+        return (float)floatingPointNumberValue();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readDoubleField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public double readDoubleField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        if(!readNumberToken(isSet, "a double")) return -1.0/*any value allowed*/;
+        return floatingPointNumberValue();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readBooleanField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public boolean readBooleanField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int c = startValue();
+        switch(c) {
+            case 'n':
+                consumeLiteral("null");
+                isSet.setValue(false/*not set*/);
+                return false/*any value allowed*/;
+            case 't':
+                consumeLiteral("true");
+                isSet.setValue(true/*set*/);
+                return true;
+            case 'f':
+                consumeLiteral("false");
+                isSet.setValue(true/*set*/);
+                return false;
+
+            default:
+                throw new InvalidDataException("Expected a boolean field but found " + describe(c) + ".");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readStringField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public String readStringField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int c = startValue();
+        if(c == 'n') {
+            consumeLiteral("null");
+            isSet.setValue(false/*not set*/);
+            return ""/*any value allowed*/;
+        } /* else -- a non-null value */
+        if(c != '"') throw new InvalidDataException("Expected a string field but found " + describe(c) + ".");
+        readString();
+        isSet.setValue(true/*set*/);
+        return stringBuilder.toString();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IRecordReader#readBytesField(org.apache.commons.lang.mutable.MutableBoolean)
+     */
+    @Override
+    public ByteBuffer readBytesField(final MutableBoolean isSet)
+            throws IllegalStateException, InvalidDataException {
+        final int c = startValue();
+        if(c == 'n') {
+            consumeLiteral("null");
+            isSet.setValue(false/*not set*/);
+            return null/*any value allowed*/;
+        } /* else -- a non-null value */
+        // NOTE:  bytes are represented as hexadecimal strings which are
+        //        decoded directly from the (reused) builder
+        if(c != '"') throw new InvalidDataException("Expected a (hexadecimal) bytes field but found " + describe(c) + ".");
+        readString();
+        isSet.setValue(true/*set*/);
+        return HexBytes.fromHex(stringBuilder);
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#skipField()
+     */
+    @Override
+    public final void skipField()
+            throws InvalidDataException {
+        skipValue(startValue());
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.reader.IRecordReader#close()
+     */
+    @Override
+    public void close()
+            throws OperationFailedException {
+        if(isClosed) return/*by contract*/;
+        isClosed = true/*by definition*/;
+
+        try {
+            reader.close();
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    // ========================================================================
+    // nesting
+    /**
+     * Pushes a new nesting level (growing the level arrays if necessary).
+     *
+     * @param  isNull <code>true</code> if the level is a null array (which
+     *         has no elements) and <code>false</code> otherwise.
+     */
+    private void pushLevel(final boolean isNull) {
+        depth++;
+        if(depth == valueCounts.length) {
+            final int[] newValueCounts = new int[valueCounts.length << 1];
+            System.arraycopy(valueCounts, 0, newValueCounts, 0, valueCounts.length);
+            valueCounts = newValueCounts;
+            final boolean[] newIsNullLevel = new boolean[isNullLevel.length << 1];
+            System.arraycopy(isNullLevel, 0, newIsNullLevel, 0, isNullLevel.length);
+            isNullLevel = newIsNullLevel;
+        } /* else -- there is room for the level */
+        valueCounts[depth] = 0/*no values read*/;
+        isNullLevel[depth] = isNull;
+    }
+
+    /**
+     * Pops the current nesting level consuming the closing bracket (if the
+     * level is not a null level). {@link #reachedEnd()} must have returned
+     * <code>true</code>.
+     */
+    private void popLevel() {
+        if(!isNullLevel[depth]) position++/*consume ']' (see #reachedEnd())*/;
+        depth--;
+    }
+
+    /**
+     * @return <code>true</code> if and only if the current level is a null
+     *         level or if the next non-whitespace character closes the level.
+     *         The closing bracket is <i>not</i> consumed.
+     */
+    private boolean reachedEnd()
+            throws InvalidDataException {
+        if(isNullLevel[depth]) return true/*by definition*/;
+        return (skipWhitespace() == ']');
+    }
+
+    /**
+     * Validates the state of the reader and positions it at the first character
+     * of the next value in the current level, consuming any value separator.
+     *
+     * @return the first character of the value. This is never {@link #EOF}.
+     * @throws InvalidDataException if there are no more values in the current
+     *         level or if the separator is not found.
+     */
+    private int startValue()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record reader has already been closed.")/*by contract*/;
+        if(depth < 0) throw new IllegalStateException("A record has not been started in the record reader.")/*by contract*/;
+        if(isNullLevel[depth]) throw new InvalidDataException("There are no more fields to read.");
+
+        int c = skipWhitespace();
+        if(c == ']') throw new InvalidDataException("There are no more fields to read.");
+        if(valueCounts[depth] > 0) {
+            if(c != ',') throw new InvalidDataException("Expected ',' between values but found " + describe(c) + ".");
+            position++/*consume ','*/;
+            c = skipWhitespace();
+        } /* else -- the first value has no separator */
+        if(c == EOF) throw new InvalidDataException("Unexpected end of input within a record.");
+        valueCounts[depth]++;
+        return c;
+    }
+
+    // ========================================================================
+    // tokens
+    /**
+     * Reads the numeric token at the current position into {@link #numberBuffer}.
+     *
+     * @param  isSet set to <code>false</code> if the value is a JSON null and
+     *         <code>true</code> otherwise
+     * @param  typeDescription the description of the expected type used in
+     *         any exception message (e.g. "an integer")
+     * @return <code>true</code> if a number was read and <code>false</code>
+     *         if the value was null.
+     */
+    private boolean readNumberToken(final MutableBoolean isSet, final String typeDescription)
+            throws IllegalStateException, InvalidDataException {
+        final int c = startValue();
+        if(c == 'n') {
+            consumeLiteral("null");
+            isSet.setValue(false/*not set*/);
+            return false;
+        } /* else -- a non-null value */
+        if((c != '-') && ((c < '0') || (c > '9'))) throw new InvalidDataException("Expected " + typeDescription + " field but found " + describe(c) + ".");
+
+        numberLength = 0;
+        for(int n=c; isNumberCharacter(n); n=peek()) {
+            if(numberLength == numberBuffer.length) {
+                final char[] newNumberBuffer = new char[numberBuffer.length << 1];
+                System.arraycopy(numberBuffer, 0, newNumberBuffer, 0, numberLength);
+                numberBuffer = newNumberBuffer;
+            } /* else -- there is room for the character */
+            numberBuffer[numberLength++] = (char)n;
+            position++;
+        }
+        isSet.setValue(true/*set*/);
+        return true;
+    }
+
+    /**
+     * @return the integral value of {@link #numberBuffer}. Non-integral values
+     *         are truncated (as with {@link Number#longValue()}).
+     */
+    private long integralNumberValue()
+            throws InvalidDataException {
+        try {
+            if(NumberParser.isIntegral(numberBuffer, 0, numberLength))
+                return NumberParser.parseLong(numberBuffer, 0, numberLength);
+            /* else -- the number has a fraction or exponent */
+            return (long)numberParser.parseDouble(numberBuffer, 0, numberLength);
+        } catch(final NumberFormatException nfe) {
+            throw new InvalidDataException(nfe.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @return the floating-point value of {@link #numberBuffer}.
+     */
+    private double floatingPointNumberValue()
+            throws InvalidDataException {
+        try {
+            return numberParser.parseDouble(numberBuffer, 0, numberLength);
+        } catch(final NumberFormatException nfe) {
+            throw new InvalidDataException(nfe.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the specified character may be part of a
+     *         JSON number and <code>false</code> otherwise.
+     */
+    private static boolean isNumberCharacter(final int c) {
+        return (((c >= '0') && (c <= '9')) || (c == '-') || (c == '+') || (c == '.') || (c == 'e') || (c == 'E'));
+    }
+
+    /**
+     * Reads the JSON string at the current position (which must be the opening
+     * quote) into {@link #stringBuilder} resolving any escapes.
+     */
+    private void readString()
+            throws InvalidDataException {
+        stringBuilder.setLength(0/*clear*/);
+        position++/*consume opening '"'*/;
+        while(true) {
+            if((position == limit) && !fill()) throw new InvalidDataException("Unexpected end of input within a string.");
+
+            // bulk-copy the run of unescaped characters
+            int index = position;
+            while(index < limit) {
+                final char c = buffer[index];
+                if((c == '"') || (c == '\\')) break;
+                if(c < 0x20) throw new InvalidDataException("Unescaped control character (0x" + Integer.toHexString(c) + ") within a string.");
+                index++;
+            }
+            stringBuilder.append(buffer, position, (index - position));
+            position = index;
+            if(position == limit) continue/*refill*/;
+
+            final char c = buffer[position++];
+            if(c == '"') return/*end of string*/;
+            /* else -- an escape */
+            stringBuilder.append(readEscape());
+        }
+    }
+
+    /**
+     * @return the character represented by the escape sequence at the current
+     *         position (the escape character has already been consumed).
+     */
+    private char readEscape()
+            throws InvalidDataException {
+        final int c = next();
+        switch(c) {
+            case '"':  return '"';
+            case '\\': return '\\';
+            case '/':  return '/';
+            case 'b':  return '\b';
+            case 'f':  return '\f';
+            case 'n':  return '\n';
+            case 'r':  return '\r';
+            case 't':  return '\t';
+            case 'u': {
+                int value = 0;
+                for(int i=0; i<4; i++) {
+                    final int digit = Character.digit(next(), 16/*hex*/);
+                    if(digit < 0) throw new InvalidDataException("Invalid unicode escape within a string.");
+                    value = (value << 4) | digit;
+                }
+                return (char)value;
+            }
+
+            default:
+                throw new InvalidDataException("Invalid escape " + describe(c) + " within a string.");
+        }
+    }
+
+    /**
+     * Consumes the specified literal (e.g. <code>null</code>) from the current
+     * position.
+     *
+     * @throws InvalidDataException if the input does not match the literal.
+     */
+    private void consumeLiteral(final String literal)
+            throws InvalidDataException {
+        for(int i=0; i<literal.length(); i++) {
+            final int c = next();
+            if(c != literal.charAt(i)) throw new InvalidDataException("Expected \"" + literal + "\" but found " + describe(c) + ".");
+        }
+    }
+
+    /**
+     * Skips the value whose first character is specified (and is at the
+     * current position). Nested arrays are skipped without being parsed.
+     */
+    private void skipValue(final int c)
+            throws InvalidDataException {
+        switch(c) {
+            case 'n':
+                consumeLiteral("null");
+                return;
+            case 't':
+                consumeLiteral("true");
+                return;
+            case 'f':
+                consumeLiteral("false");
+                return;
+            case '"':
+                readString();
+                return;
+            case '[': {
+                position++/*consume '['*/;
+                int n = skipWhitespace();
+                if(n == ']') {
+                    position++/*consume ']'*/;
+                    return;
+                } /* else -- non-empty array */
+                while(true) {
+                    if(n == EOF) throw new InvalidDataException("Unexpected end of input within a record.");
+                    skipValue(n);
+                    n = skipWhitespace();
+                    if(n == ']') {
+                        position++/*consume ']'*/;
+                        return;
+                    } /* else -- more elements */
+                    if(n != ',') throw new InvalidDataException("Expected ',' between values but found " + describe(n) + ".");
+                    position++/*consume ','*/;
+                    n = skipWhitespace();
+                }
+            }
+
+            default:
+                if((c != '-') && ((c < '0') || (c > '9'))) throw new InvalidDataException("Unexpected " + describe(c) + " in record.");
+                for(int n=c; isNumberCharacter(n); n=peek())
+                    position++;
+                return;
+        }
+    }
+
+    // ========================================================================
+    // buffer
+    /**
+     * @return the next character without consuming it or {@link #EOF} if there
+     *         are no more characters.
+     */
+    private int peek()
+            throws InvalidDataException {
+        if((position == limit) && !fill()) return EOF;
+        return buffer[position];
+    }
+
+    /**
+     * @return the next character (consuming it) or {@link #EOF} if there are
+     *         no more characters.
+     */
+    private int next()
+            throws InvalidDataException {
+        if((position == limit) && !fill()) return EOF;
+        return buffer[position++];
+    }
+
+    /**
+     * Skips any whitespace.
+     *
+     * @return the next non-whitespace character (which is not consumed) or
+     *         {@link #EOF} if there are no more characters.
+     */
+    private int skipWhitespace()
+            throws InvalidDataException {
+        while(true) {
+            if((position == limit) && !fill()) return EOF;
+            final char c = buffer[position];
+            if((c != ' ') && (c != '\n') && (c != '\r') && (c != '\t')) return c;
+            position++;
+        }
+    }
+
+    /**
+     * Refills the buffer. This may only be called when the buffer has been
+     * fully consumed.
+     *
+     * @return <code>true</code> if at least one character was read and <code>false</code>
+     *         if the end of the input has been reached.
+     */
+    private boolean fill()
+            throws InvalidDataException {
+        try {
+            int count;
+            do {
+                count = reader.read(buffer, 0, buffer.length);
+            } while(count == 0)/*by contract of Reader#read() this should not occur*/;
+            if(count < 0) {
+                position = limit = 0/*empty*/;
+                return false/*end-of-stream*/;
+            } /* else -- characters were read */
+            position = 0;
+            limit = count;
+            return true;
+        } catch(final IOException ioe) {
+            throw new InvalidDataException(ioe.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @return a human readable description of the specified character for
+     *         use in exception messages
+     */
+    private static String describe(final int c) {
+        if(c == EOF) return "end of input";
+        return "'" + (char)c + "'";
+    }
+}
@@ -16,9 +16,12 @@ package net.agkn.field_stripe.record.writer;
  * limitations under the License. 
  */
 
+import java.nio.ByteBuffer;
+
 import net.agkn.field_stripe.exception.InvalidDataException;
 import net.agkn.field_stripe.exception.OperationFailedException;
 import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.PrimitiveType;
 import net.agkn.field_stripe.record.reader.IRecordReader;
 
 /**
@@ -240,6 +243,24 @@ public interface IRecordWriter {
     void writeField(IField field, String value)
         throws IllegalStateException, OperationFailedException;
 
+    /**
+     * Writes the next {@link PrimitiveType#BYTES bytes} field (column) to the
+     * record.
+     * 
+     * @param  field the <code>IField</code> whose value is being written. This 
+     *         cannot be <code>null</code>.
+     * @param  value the next field value to be written. The bytes between its
+     *         position and its limit are written. Its position is not changed
+     *         and it is not retained. This cannot be <code>null</code>.
+     * @throws IllegalStateException if called after {@link #close()} has been
+     *         called or if called before the {@link #startRecord() record has been started}. 
+     * @throws OperationFailedException if the field could not be written for 
+     *         any reason.
+     * @see #writeUnsetField(IField)
+     */
+    void writeField(IField field, ByteBuffer value)
+        throws IllegalStateException, OperationFailedException;
+
     // ========================================================================
     /**
      * Flushes and closes this writer. The writer cannot be used after it has
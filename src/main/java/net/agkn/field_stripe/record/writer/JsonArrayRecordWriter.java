@@ -19,10 +19,12 @@ package net.agkn.field_stripe.record.writer;
 import java.io.BufferedWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.Stack;
 
 import net.agkn.field_stripe.exception.InvalidDataException;
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.HexBytes;
 import net.agkn.field_stripe.record.IField;
 import net.jcip.annotations.NotThreadSafe;
 import net.minidev.json.JSONStyle;
@@ -337,6 +339,27 @@ public class JsonArrayRecordWriter implements IRecordWriter {
         writer.append('\"');
     }
 
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, java.nio.ByteBuffer)
+     */
+    @Override
+    public void writeField(final IField field, final ByteBuffer value)
+            throws IllegalStateException, OperationFailedException {
+        if(isClosed) throw new IllegalStateException("The record writer has already been closed.")/*by contract*/;
+        if(nestingStack.isEmpty()) throw new IllegalStateException("A record has not been started in the record writer.")/*by contract*/;
+        final State state = nestingStack.peek();
+
+        if(state.appendComma) writer.print(',');
+        state.appendComma = true/*by definition*/;
+
+        // NOTE:  bytes are written as a hexadecimal string (which never needs
+        //        to be escaped)
+        if(prettyPrint) indent(true/*prepend newline*/);
+        writer.append('\"');
+            writer.append(HexBytes.toHex(value));
+        writer.append('\"');
+    }
+
     // ========================================================================
     /**
      * Intents (writes spaces to the {@link java.io.Writer writer}) based on 
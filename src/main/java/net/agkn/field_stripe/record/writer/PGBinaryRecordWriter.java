@@ -0,0 +1,624 @@
+package net.agkn.field_stripe.record.writer;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import net.agkn.field_stripe.exception.DeveloperException;
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.agkn.field_stripe.record.reader.PGBinaryRecordReader;
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A {@link IRecordWriter writer} for records that are in the PostgreSQL 'binary'
+ * COPY format. See <a href="http://www.postgresql.org/docs/9.0/static/sql-copy.html"><code>COPY</code></a>
+ * for more information on the format. Unlike the {@link PGTextRecordWriter 'text'
+ * format} no values are escaped, quoted or converted to text: each value is
+ * written in PostgreSQL's network-order <code>send</code> representation.
+ * Structures are written as anonymous records (<code>record_send()</code>)
+ * and arrays as single-dimension arrays (<code>array_send()</code>).<p/>
+ *
+ * The {@link PrimitiveType types} are mapped to PostgreSQL types as:
+ * <code>BOOLEAN</code> to <code>bool</code>, <code>BYTE</code> and
+ * <code>SHORT</code> to <code>int2</code>, <code>INT</code> to <code>int4</code>,
+ * <code>LONG</code> to <code>int8</code>, <code>FLOAT</code> to <code>float4</code>,
+ * <code>DOUBLE</code> to <code>float8</code>, <code>STRING</code> to
+ * (UTF-8) <code>text</code> and <code>BYTES</code> to <code>bytea</code>.<p/>
+ *
+ * Each record is written into a reused buffer. Since the length of a structure
+ * or array (and the number of its columns or elements) is not known until it
+ * has ended, the fixed-width length and count are back-patched into the buffer
+ * when it ends. The header is written before the first record and the trailer
+ * when the writer is {@link #close() closed}.<p/>
+ *
+ * Note that this writer is <i>not</i> thread-safe. Also note that no exceptions
+ * are logged.
+ *
+ * @author rgrzywinski
+ * @see PGBinaryRecordReader
+ */
+// NOTE:  PostgreSQL checks the OID of each column of a composite (and the
+//        element OID of an array) against the target type. Since the OIDs
+//        of named composite types are only known to the database, structures
+//        are written as 'record' which can only be loaded through a cast.
+// SEE:  PostgreSQL src: src/backend/commands/copy.c: CopyOneRowTo()
+// SEE:  PostgreSQL src: src/backend/utils/adt/rowtypes.c: record_send()
+// SEE:  PostgreSQL src: src/backend/utils/adt/arrayfuncs.c: array_send()
+@NotThreadSafe
+public class PGBinaryRecordWriter implements IRecordWriter {
+    /**
+     * The signature that starts the header of the binary COPY format.
+     */
+    public static final byte[] SIGNATURE = { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte)0xFF, '\r', '\n', 0 };
+
+    /**
+     * The field count that marks the end of the binary COPY format.
+     */
+    public static final short TRAILER = -1;
+
+    /**
+     * The length that represents a <code>NULL</code> value.
+     */
+    public static final int NULL_LENGTH = -1;
+
+    // OIDs of the element types
+    // SEE:  PostgreSQL src: src/include/catalog/pg_type.h
+    public static final int BOOL_OID = 16;
+    public static final int BYTEA_OID = 17;
+    public static final int INT8_OID = 20;
+    public static final int INT2_OID = 21;
+    public static final int INT4_OID = 23;
+    public static final int TEXT_OID = 25;
+    public static final int FLOAT4_OID = 700;
+    public static final int FLOAT8_OID = 701;
+    public static final int RECORD_OID = 2249;
+
+    // OIDs of the array types
+    public static final int BOOL_ARRAY_OID = 1000;
+    public static final int INT2_ARRAY_OID = 1005;
+    public static final int INT4_ARRAY_OID = 1007;
+    public static final int INT8_ARRAY_OID = 1016;
+    public static final int FLOAT4_ARRAY_OID = 1021;
+    public static final int FLOAT8_ARRAY_OID = 1022;
+    public static final int TEXT_ARRAY_OID = 1009;
+    public static final int BYTEA_ARRAY_OID = 1001;
+    public static final int RECORD_ARRAY_OID = 2287;
+
+    // ------------------------------------------------------------------------
+    // the size of the output buffer
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    // the initial nesting depth (grown as needed)
+    private static final int INITIAL_DEPTH = 8;
+
+    // the offsets from the length of an array of its header fields
+    private static final int ARRAY_NDIM_OFFSET = 4;
+    private static final int ARRAY_HAS_NULL_OFFSET = 8;
+    private static final int ARRAY_DIMENSION_OFFSET = 16;
+    private static final int ARRAY_DIMENSION_SIZE = 8/*dimension and lower bound*/;
+
+    // ************************************************************************
+    private final OutputStream outputStream;
+    private boolean isHeaderWritten = false/*by default the header is written with the first record*/;
+    private boolean isClosed = false/*by default not closed*/;
+
+    // the current record
+    private final RecordBuffer record = new RecordBuffer();
+
+    // ------------------------------------------------------------------------
+    // the kind of each nesting level, the position in the record of its
+    // (reserved) length and the number of values (columns or elements) that
+    // have been written to it. The depth is -1 if no record has been started.
+    private static enum Kind { RECORD, STRUCTURE, ARRAY };
+    private Kind[] kinds = new Kind[INITIAL_DEPTH];
+    private int[] lengthPositions = new int[INITIAL_DEPTH];
+    private int[] counts = new int[INITIAL_DEPTH];
+    private int depth = -1/*no record to start*/;
+
+    // ========================================================================
+    /**
+     * @param  outputStream the <code>OutputStream</code> to which the records
+     *         are written. This cannot be <code>null</code>. It does not need
+     *         to be buffered.
+     */
+    public PGBinaryRecordWriter(final OutputStream outputStream) {
+        this.outputStream = new BufferedOutputStream(outputStream, OUTPUT_BUFFER_SIZE);
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#startRecord()
+     */
+    @Override
+    public void startRecord()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record writer has already been closed.")/*by contract*/;
+        if(depth >= 0) throw new IllegalStateException("A record has already been started in the record writer.")/*by contract*/;
+        push(Kind.RECORD);
+        record.reset();
+        record.writeShort(0/*field count (back-patched)*/);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#endRecord()
+     */
+    @Override
+    public void endRecord()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record writer has already been closed.")/*by contract*/;
+        if((depth != 0) || (kinds[depth] != Kind.RECORD)) throw new IllegalStateException("A record has not been started or is nested in the record writer.")/*by contract*/;
+        final int fieldCount = counts[depth--];
+        if(fieldCount > Short.MAX_VALUE) throw new InvalidDataException("A record cannot have more than " + Short.MAX_VALUE + " fields (" + fieldCount + ").");
+        record.putShort(0, fieldCount);
+
+        try {
+            writeHeader();
+            outputStream.write(record.buffer(), 0, record.size());
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not write the record.", ioe);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#startStructure(net.agkn.field_stripe.record.IField)
+     */
+    @Override
+    public void startStructure(final IField field)
+            throws IllegalStateException, InvalidDataException {
+        checkStarted();
+        writeValuePrefix(RECORD_OID);
+        final int lengthPosition = record.size();
+        record.writeInt(0/*length (back-patched)*/);
+        record.writeInt(0/*column count (back-patched)*/);
+        push(Kind.STRUCTURE);
+        lengthPositions[depth] = lengthPosition;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#endStructure()
+     */
+    @Override
+    public void endStructure()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record writer has already been closed.")/*by contract*/;
+        if((depth < 0) || (kinds[depth] != Kind.STRUCTURE)) throw new IllegalStateException("A record has not been started or nested in the record writer.")/*by contract*/;
+        final int lengthPosition = lengthPositions[depth];
+        final int columnCount = counts[depth--];
+
+        record.putInt(lengthPosition + 4/*length*/, columnCount);
+        record.patchLength(lengthPosition);
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#startArray(net.agkn.field_stripe.record.IField)
+     */
+    @Override
+    public void startArray(final IField field)
+            throws IllegalStateException, InvalidDataException {
+        checkStarted();
+        writeValuePrefix(getArrayOid(field));
+        final int lengthPosition = record.size();
+        record.writeInt(0/*length (back-patched)*/);
+        record.writeInt(1/*number of dimensions*/);
+        record.writeInt(0/*has nulls (back-patched)*/);
+        record.writeInt(getElementOid(field));
+        record.writeInt(0/*dimension (back-patched)*/);
+        record.writeInt(1/*lower bound*/);
+        push(Kind.ARRAY);
+        lengthPositions[depth] = lengthPosition;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#endArray()
+     */
+    @Override
+    public void endArray()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record writer has already been closed.")/*by contract*/;
+        if((depth < 0) || (kinds[depth] != Kind.ARRAY)) throw new IllegalStateException("An array has not been started in the record writer.")/*by contract*/;
+        final int lengthPosition = lengthPositions[depth];
+        final int elementCount = counts[depth--];
+
+        if(elementCount > 0) {
+            record.putInt(lengthPosition + ARRAY_DIMENSION_OFFSET, elementCount);
+        } else/*an empty array*/ {
+            // PostgreSQL represents an empty array with zero dimensions (and
+            // therefore no dimension or lower bound)
+            record.putInt(lengthPosition + ARRAY_NDIM_OFFSET, 0/*no dimensions*/);
+            record.truncate(record.size() - ARRAY_DIMENSION_SIZE);
+        }
+        record.patchLength(lengthPosition);
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeUnsetField(net.agkn.field_stripe.record.IField)
+     */
+    @Override
+    public void writeUnsetField(final IField field)
+            throws IllegalStateException, OperationFailedException {
+        checkStarted();
+        if(kinds[depth] == Kind.ARRAY) record.putInt(lengthPositions[depth] + ARRAY_HAS_NULL_OFFSET, 1/*has nulls*/);
+        writeValuePrefix(field.getQualifier().isMultiValue() ? getArrayOid(field) : getElementOid(field));
+        record.writeInt(NULL_LENGTH);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, byte)
+     */
+    @Override
+    public void writeField(final IField field, final byte value)
+            throws IllegalStateException, OperationFailedException {
+        writeField(field, (short)value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, short)
+     */
+    @Override
+    public void writeField(final IField field, final short value)
+            throws IllegalStateException, OperationFailedException {
+        checkStarted();
+        writeValuePrefix(INT2_OID);
+        record.writeInt(2/*length*/);
+        record.writeShort(value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, int)
+     */
+    @Override
+    public void writeField(final IField field, final int value)
+            throws IllegalStateException, OperationFailedException {
+        checkStarted();
+        writeValuePrefix(INT4_OID);
+        record.writeInt(4/*length*/);
+        record.writeInt(value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, long)
+     */
+    @Override
+    public void writeField(final IField field, final long value)
+            throws IllegalStateException, OperationFailedException {
+        checkStarted();
+        writeValuePrefix(INT8_OID);
+        record.writeInt(8/*length*/);
+        record.writeLong(value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, float)
+     */
+    @Override
+    public void writeField(final IField field, final float value)
+            throws IllegalStateException, OperationFailedException {
+        checkStarted();
+        writeValuePrefix(FLOAT4_OID);
+        record.writeInt(4/*length*/);
+        record.writeInt(Float.floatToRawIntBits(value));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, double)
+     */
+    @Override
+    public void writeField(final IField field, final double value)
+            throws IllegalStateException, OperationFailedException {
+        checkStarted();
+        writeValuePrefix(FLOAT8_OID);
+        record.writeInt(8/*length*/);
+        record.writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, boolean)
+     */
+    @Override
+    public void writeField(final IField field, final boolean value)
+            throws IllegalStateException, OperationFailedException {
+        checkStarted();
+        writeValuePrefix(BOOL_OID);
+        record.writeInt(1/*length*/);
+        record.write(value ? 1 : 0);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, java.lang.String)
+     */
+    @Override
+    public void writeField(final IField field, final String value)
+            throws IllegalStateException, OperationFailedException {
+        if(value == null) {
+            writeUnsetField(field);
+            return/*nothing else to write*/;
+        } /* else -- the value is not null */
+        checkStarted();
+        writeValuePrefix(TEXT_OID);
+        final int lengthPosition = record.size();
+        record.writeInt(0/*length (back-patched)*/);
+        record.writeUtf8(value);
+        record.patchLength(lengthPosition);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, java.nio.ByteBuffer)
+     */
+    @Override
+    public void writeField(final IField field, final ByteBuffer value)
+            throws IllegalStateException, OperationFailedException {
+        if(value == null) {
+            writeUnsetField(field);
+            return/*nothing else to write*/;
+        } /* else -- the value is not null */
+        checkStarted();
+        writeValuePrefix(BYTEA_OID);
+        record.writeInt(value.remaining());
+        record.write(value);
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#close()
+     */
+    @Override
+    public void close() {
+        if(isClosed) return/*by contract*/;
+        isClosed = true/*by definition*/;
+
+        if(depth >= 0) throw new IllegalStateException("A record, structure or array has been impropertly nested in the record writer.")/*by contract*/;
+        try {
+            writeHeader()/*in case there were no records*/;
+            outputStream.write((TRAILER >>> 8) & 0xFF);
+            outputStream.write(TRAILER & 0xFF);
+            outputStream.close();
+        } catch(final IOException ioe) {
+            // CHECK:  what's the best way to report this since #close() cannot
+            //         throw a checked exception?
+            throw new IllegalStateException("The record writer could not be flushed.", ioe);
+        }
+    }
+
+    // ========================================================================
+    /**
+     * Writes the header (signature, flags and an empty header extension) if
+     * it has not already been written.
+     */
+    private void writeHeader()
+            throws IOException {
+        if(isHeaderWritten) return/*nothing to do*/;
+        isHeaderWritten = true/*by definition*/;
+
+        outputStream.write(SIGNATURE);
+        outputStream.write(new byte[4/*flags*/ + 4/*header extension length*/]);
+    }
+
+    /**
+     * Accounts for a value (column or element) in the current nesting level
+     * and writes the OID that precedes a column of a structure.
+     */
+    private void writeValuePrefix(final int oid) {
+        counts[depth]++;
+        if(kinds[depth] == Kind.STRUCTURE) record.writeInt(oid);
+        /* else -- only the columns of a structure have an OID */
+    }
+
+    /**
+     * @return the OID of the specified field's type (or of its elements if
+     *         the field is repeated)
+     */
+    private static int getElementOid(final IField field) {
+        if(field.getType().isComposite()) return RECORD_OID;
+        switch((PrimitiveType)field.getType()) {
+            case BOOLEAN:
+                return BOOL_OID;
+            case BYTE:
+            case SHORT:
+                return INT2_OID;
+            case INT:
+                return INT4_OID;
+            case LONG:
+                return INT8_OID;
+            case FLOAT:
+                return FLOAT4_OID;
+            case DOUBLE:
+                return FLOAT8_OID;
+            case STRING:
+                return TEXT_OID;
+            case BYTES:
+                return BYTEA_OID;
+
+            default:
+                throw new DeveloperException("Unknown primitive type \"" + field.getType() + "\".");
+        }
+    }
+
+    /**
+     * @return the OID of an array of the specified field's type
+     */
+    private static int getArrayOid(final IField field) {
+        switch(getElementOid(field)) {
+            case BOOL_OID:
+                return BOOL_ARRAY_OID;
+            case INT2_OID:
+                return INT2_ARRAY_OID;
+            case INT4_OID:
+                return INT4_ARRAY_OID;
+            case INT8_OID:
+                return INT8_ARRAY_OID;
+            case FLOAT4_OID:
+                return FLOAT4_ARRAY_OID;
+            case FLOAT8_OID:
+                return FLOAT8_ARRAY_OID;
+            case TEXT_OID:
+                return TEXT_ARRAY_OID;
+            case BYTEA_OID:
+                return BYTEA_ARRAY_OID;
+            case RECORD_OID:
+                return RECORD_ARRAY_OID;
+
+            default:
+                throw new DeveloperException("Unknown element OID for field \"" + field.getName() + "\".");
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @throws IllegalStateException if the writer is closed or no record has
+     *         been started.
+     */
+    private void checkStarted()
+            throws IllegalStateException {
+        if(isClosed) throw new IllegalStateException("The record writer has already been closed.")/*by contract*/;
+        if(depth < 0) throw new IllegalStateException("A record has not been started in the record writer.")/*by contract*/;
+    }
+
+    /**
+     * Pushes the specified kind of nesting (growing the stack as necessary).
+     */
+    private void push(final Kind kind) {
+        depth++;
+        if(depth == kinds.length) {
+            final Kind[] newKinds = new Kind[kinds.length << 1];
+            System.arraycopy(kinds, 0, newKinds, 0, kinds.length);
+            kinds = newKinds;
+            final int[] newLengthPositions = new int[lengthPositions.length << 1];
+            System.arraycopy(lengthPositions, 0, newLengthPositions, 0, lengthPositions.length);
+            lengthPositions = newLengthPositions;
+            final int[] newCounts = new int[counts.length << 1];
+            System.arraycopy(counts, 0, newCounts, 0, counts.length);
+            counts = newCounts;
+        } /* else -- there is room */
+        kinds[depth] = kind;
+        counts[depth] = 0;
+    }
+
+    // ************************************************************************
+    /**
+     * A reused, growable buffer for a record that writes in network (big-endian)
+     * order and allows for fixed-width values to be back-patched.
+     */
+    private static final class RecordBuffer {
+        private byte[] buffer = new byte[1024/*initial size*/];
+        private int count = 0;
+
+        /**
+         * @return the internal buffer. Only the first {@link #size()} bytes
+         *         are valid.
+         */
+        public byte[] buffer() { return buffer; }
+        public int size() { return count; }
+        public void reset() { count = 0; }
+        public void truncate(final int size) { count = size; }
+
+        public void write(final int value) {
+            ensureCapacity(1);
+            buffer[count++] = (byte)value;
+        }
+        public void writeShort(final int value) {
+            ensureCapacity(2);
+            putShort(count, value);
+            count += 2;
+        }
+        public void writeInt(final int value) {
+            ensureCapacity(4);
+            putInt(count, value);
+            count += 4;
+        }
+        public void writeLong(final long value) {
+            writeInt((int)(value >>> 32));
+            writeInt((int)value);
+        }
+
+        /**
+         * Writes the bytes between the position and limit of the specified
+         * buffer. Its position is not changed.
+         */
+        public void write(final ByteBuffer value) {
+            final int length = value.remaining();
+            ensureCapacity(length);
+            value.duplicate().get(buffer, count, length)/*position unchanged*/;
+            count += length;
+        }
+
+        /**
+         * Writes the UTF-8 encoding of the specified value directly into the
+         * buffer. Unpaired surrogates are replaced with '?' (as is done by
+         * {@link String#getBytes(String)}).
+         */
+        public void writeUtf8(final String value) {
+            final int length = value.length();
+            ensureCapacity(length * 3/*worst case*/);
+            for(int i=0; i<length; i++) {
+                final char character = value.charAt(i);
+                if(character < 0x80) {
+                    buffer[count++] = (byte)character;
+                } else if(character < 0x800) {
+                    buffer[count++] = (byte)(0xC0 | (character >> 6));
+                    buffer[count++] = (byte)(0x80 | (character & 0x3F));
+                } else if(Character.isHighSurrogate(character) && (i + 1 < length) && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(character, value.charAt(++i));
+                    buffer[count++] = (byte)(0xF0 | (codePoint >> 18));
+                    buffer[count++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[count++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[count++] = (byte)(0x80 | (codePoint & 0x3F));
+                } else if(Character.isHighSurrogate(character) || Character.isLowSurrogate(character)) {
+                    buffer[count++] = '?'/*unpaired surrogate*/;
+                } else {
+                    buffer[count++] = (byte)(0xE0 | (character >> 12));
+                    buffer[count++] = (byte)(0x80 | ((character >> 6) & 0x3F));
+                    buffer[count++] = (byte)(0x80 | (character & 0x3F));
+                }
+            }
+        }
+
+        public void putShort(final int position, final int value) {
+            buffer[position] = (byte)(value >>> 8);
+            buffer[position + 1] = (byte)value;
+        }
+        public void putInt(final int position, final int value) {
+            buffer[position] = (byte)(value >>> 24);
+            buffer[position + 1] = (byte)(value >>> 16);
+            buffer[position + 2] = (byte)(value >>> 8);
+            buffer[position + 3] = (byte)value;
+        }
+
+        /**
+         * Writes the length of the value that starts after the (reserved)
+         * length at the specified position and runs to the end of the buffer.
+         */
+        public void patchLength(final int position) {
+            putInt(position, count - (position + 4/*length*/));
+        }
+
+        private void ensureCapacity(final int additional) {
+            if(count + additional <= buffer.length) return/*there is room*/;
+            final byte[] newBuffer = new byte[Math.max(buffer.length << 1, count + additional)];
+            System.arraycopy(buffer, 0, newBuffer, 0, count);
+            buffer = newBuffer;
+        }
+    }
+}
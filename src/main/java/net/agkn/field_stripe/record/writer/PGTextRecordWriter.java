@@ -18,10 +18,12 @@ package net.agkn.field_stripe.record.writer;
 
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.Stack;
 
 import net.agkn.field_stripe.exception.InvalidDataException;
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.HexBytes;
 import net.agkn.field_stripe.record.IField;
 import net.agkn.field_stripe.record.reader.PGTextRecordReader;
 import net.jcip.annotations.NotThreadSafe;
@@ -43,6 +45,14 @@ import net.jcip.annotations.NotThreadSafe;
  */
 @NotThreadSafe
 public class PGTextRecordWriter implements IRecordWriter {
+    /**
+     * The prefix of a {@link net.agkn.field_stripe.record.PrimitiveType#BYTES bytes}
+     * value which is written in the 'hex' <code>bytea</code> format (before
+     * the backslash is escaped).
+     */
+    public static final String BYTEA_HEX_PREFIX = "\\x";
+
+    // ************************************************************************
     private final PrintWriter writer;
     private boolean isClosed = false/*by default not closed*/;
 
@@ -275,6 +285,26 @@ public class PGTextRecordWriter implements IRecordWriter {
         state.add(value);
     }
 
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, java.nio.ByteBuffer)
+     */
+    @Override
+    public void writeField(final IField field, final ByteBuffer value)
+            throws IllegalStateException, OperationFailedException {
+        if(isClosed) throw new IllegalStateException("The snapshot writer has already been closed.")/*by contract*/;
+        if(nestingStack.isEmpty()) throw new IllegalStateException("A record has not been started in the snapshot writer.")/*by contract*/;
+        final State state = nestingStack.peek();
+
+        if(value == null) {
+            state.addNull();
+            return/*nothing else to write*/;
+        } /* else -- the value is not null */
+        final StringBuilder hexValue = new StringBuilder(BYTEA_HEX_PREFIX.length() + (value.remaining() << 1));
+        hexValue.append(BYTEA_HEX_PREFIX);
+        HexBytes.appendHex(hexValue, value);
+        state.add(hexValue);
+    }
+
     // ========================================================================
     /* (non-Javadoc)
      * @see net.agkn.field_stripe.record.writer.IRecordWriter#close()
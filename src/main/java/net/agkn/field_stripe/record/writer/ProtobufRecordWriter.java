@@ -0,0 +1,477 @@
+package net.agkn.field_stripe.record.writer;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.EnumSymbolTable;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.protobuf.ProtobufType;
+import net.agkn.field_stripe.record.reader.ProtobufRecordReader;
+import net.jcip.annotations.NotThreadSafe;
+
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * A {@link IRecordWriter writer} for records as length-delimited Protobuf
+ * binary messages (i.e. each message is prefixed by its varint-encoded length
+ * as read by <code>MessageLite.Builder#mergeDelimitedFrom()</code>). The field
+ * numbers and wire encodings are taken from the {@link IField fields} that
+ * are written (see {@link ProtobufType#forField(IField)}).<p/>
+ *
+ * Each record is encoded with a {@link CodedOutputStream} into a reused buffer.
+ * Since the length of a nested message is not known until it has ended, the
+ * length is back-patched into the buffer when the message ends. (A single byte
+ * is reserved for the length so the buffer only needs to be shifted for nested
+ * messages of 128 bytes or more.) Unset fields are not written. Repeated
+ * fields are written unpacked as that is the Protobuf 2 default.<p/>
+ *
+ * Note that this writer is <i>not</i> thread-safe. Also note that no exceptions
+ * are logged.
+ *
+ * @author rgrzywinski
+ * @see ProtobufRecordReader
+ */
+@NotThreadSafe
+public class ProtobufRecordWriter implements IRecordWriter {
+    // the initial nesting depth (grown as needed)
+    private static final int INITIAL_DEPTH = 8;
+
+    // ------------------------------------------------------------------------
+    private final CodedOutputStream output;
+    private final OutputStream outputStream;
+    private boolean isClosed = false/*by default not closed*/;
+
+    // the current record and the CodedOutputStream that encodes into it
+    private final RecordBuffer record = new RecordBuffer();
+    private final CodedOutputStream recordOutput = CodedOutputStream.newInstance(record);
+
+    // a reused array for bytes values that are not backed by an accessible array
+    private byte[] scratch = new byte[0]/*grown as needed*/;
+
+    // ------------------------------------------------------------------------
+    // the kind of each nesting level and, for structures, the position in the
+    // record of the (reserved) length. The depth is -1 if no record has been
+    // started.
+    private static enum Kind { RECORD, STRUCTURE, ARRAY };
+    private Kind[] kinds = new Kind[INITIAL_DEPTH];
+    private int[] lengthPositions = new int[INITIAL_DEPTH];
+    private int depth = -1/*no record to start*/;
+
+    // ========================================================================
+    /**
+     * @param  outputStream the <code>OutputStream</code> to which the records
+     *         are written. This cannot be <code>null</code>. It does not need
+     *         to be buffered.
+     */
+    public ProtobufRecordWriter(final OutputStream outputStream) {
+        this.outputStream = outputStream;
+        this.output = CodedOutputStream.newInstance(outputStream);
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#startRecord()
+     */
+    @Override
+    public void startRecord()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record writer has already been closed.")/*by contract*/;
+        if(depth >= 0) throw new IllegalStateException("A record has already been started in the record writer.")/*by contract*/;
+        push(Kind.RECORD);
+        record.reset();
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#endRecord()
+     */
+    @Override
+    public void endRecord()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record writer has already been closed.")/*by contract*/;
+        if((depth != 0) || (kinds[depth] != Kind.RECORD)) throw new IllegalStateException("A record has not been started or is nested in the record writer.")/*by contract*/;
+        depth--;
+
+        try {
+            recordOutput.flush()/*into the record buffer*/;
+            output.writeRawVarint32(record.size());
+            output.writeRawBytes(record.buffer(), 0, record.size());
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not write the record.", ioe);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#startStructure(net.agkn.field_stripe.record.IField)
+     */
+    @Override
+    public void startStructure(final IField field)
+            throws IllegalStateException, InvalidDataException {
+        checkStarted();
+        try {
+            recordOutput.writeTag(field.getIndex(), ProtobufType.WIRETYPE_LENGTH_DELIMITED);
+            recordOutput.writeRawByte(0/*reserved for the length*/);
+            recordOutput.flush()/*so that the position is known*/;
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not write the structure.", ioe);
+        }
+        push(Kind.STRUCTURE);
+        lengthPositions[depth] = record.size() - 1/*the reserved byte*/;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#endStructure()
+     */
+    @Override
+    public void endStructure()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record writer has already been closed.")/*by contract*/;
+        if((depth < 0) || (kinds[depth] != Kind.STRUCTURE)) throw new IllegalStateException("A record has not been started or nested in the record writer.")/*by contract*/;
+        final int lengthPosition = lengthPositions[depth--];
+
+        try {
+            recordOutput.flush()/*so that the length is known*/;
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not write the structure.", ioe);
+        }
+        record.patchLength(lengthPosition);
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#startArray(net.agkn.field_stripe.record.IField)
+     */
+    @Override
+    public void startArray(final IField field)
+            throws IllegalStateException, InvalidDataException {
+        checkStarted();
+        push(Kind.ARRAY);
+
+        // NOTE:  each element is written with the field's tag so there is
+        //        nothing to write for the array itself
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#endArray()
+     */
+    @Override
+    public void endArray()
+            throws IllegalStateException, InvalidDataException {
+        if(isClosed) throw new IllegalStateException("The record writer has already been closed.")/*by contract*/;
+        if((depth < 0) || (kinds[depth] != Kind.ARRAY)) throw new IllegalStateException("An array has not been started in the record writer.")/*by contract*/;
+        depth--;
+    }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeUnsetField(net.agkn.field_stripe.record.IField)
+     */
+    @Override
+    public void writeUnsetField(final IField field)
+            throws IllegalStateException, OperationFailedException {
+        checkStarted();
+
+        // NOTE:  an unset field is simply absent from a Protobuf message
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, byte)
+     */
+    @Override
+    public void writeField(final IField field, final byte value)
+            throws IllegalStateException, OperationFailedException {
+        writeIntegral(field, value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, short)
+     */
+    @Override
+    public void writeField(final IField field, final short value)
+            throws IllegalStateException, OperationFailedException {
+        writeIntegral(field, value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, int)
+     */
+    @Override
+    public void writeField(final IField field, final int value)
+            throws IllegalStateException, OperationFailedException {
+        writeIntegral(field, value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, long)
+     */
+    @Override
+    public void writeField(final IField field, final long value)
+            throws IllegalStateException, OperationFailedException {
+        writeIntegral(field, value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, float)
+     */
+    @Override
+    public void writeField(final IField field, final float value)
+            throws IllegalStateException, OperationFailedException {
+        writeField(field, (double)value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, double)
+     */
+    @Override
+    public void writeField(final IField field, final double value)
+            throws IllegalStateException, OperationFailedException {
+        final ProtobufType protobufType = writeTag(field);
+        try {
+            switch(protobufType) {
+                case FLOAT:
+                    recordOutput.writeFloatNoTag((float)value);
+                    break;
+                case DOUBLE:
+                    recordOutput.writeDoubleNoTag(value);
+                    break;
+                default:
+                    throw new InvalidDataException("Cannot write a floating-point value to " + protobufType + " field \"" + field.getName() + "\".");
+            }
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not write field \"" + field.getName() + "\".", ioe);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, boolean)
+     */
+    @Override
+    public void writeField(final IField field, final boolean value)
+            throws IllegalStateException, OperationFailedException {
+        final ProtobufType protobufType = writeTag(field);
+        if(protobufType != ProtobufType.BOOL) throw new InvalidDataException("Cannot write a boolean value to " + protobufType + " field \"" + field.getName() + "\".");
+        try {
+            recordOutput.writeBoolNoTag(value);
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not write field \"" + field.getName() + "\".", ioe);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, java.lang.String)
+     */
+    @Override
+    public void writeField(final IField field, final String value)
+            throws IllegalStateException, OperationFailedException {
+        final ProtobufType protobufType = writeTag(field);
+        try {
+            if(protobufType == ProtobufType.ENUM) {
+                // the value of an enum is the name of the symbol whose number is written
+                final EnumSymbolTable enumSymbolTable = field.getEnumSymbolTable();
+                final int ordinal = enumSymbolTable.getOrdinalForName(value);
+                if(ordinal == EnumSymbolTable.NONE) throw new InvalidDataException("Unknown symbol \"" + value + "\" for enum field \"" + field.getName() + "\".");
+                recordOutput.writeEnumNoTag(enumSymbolTable.getNumber(ordinal));
+                return;
+            } /* else -- not an enum */
+            if(protobufType != ProtobufType.STRING) throw new InvalidDataException("Cannot write a string value to " + protobufType + " field \"" + field.getName() + "\".");
+            recordOutput.writeStringNoTag(value);
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not write field \"" + field.getName() + "\".", ioe);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#writeField(net.agkn.field_stripe.record.IField, java.nio.ByteBuffer)
+     */
+    @Override
+    public void writeField(final IField field, final ByteBuffer value)
+            throws IllegalStateException, OperationFailedException {
+        final ProtobufType protobufType = writeTag(field);
+        if(protobufType != ProtobufType.BYTES) throw new InvalidDataException("Cannot write a bytes value to " + protobufType + " field \"" + field.getName() + "\".");
+        try {
+            final int length = value.remaining();
+            recordOutput.writeRawVarint32(length);
+            if(value.hasArray())
+                recordOutput.writeRawBytes(value.array(), (value.arrayOffset() + value.position()), length);
+            else {/*direct or read-only*/
+                // NOTE:  CodedOutputStream cannot write from a ByteBuffer so the
+                //        bytes are copied into a reused scratch array
+                if(scratch.length < length) scratch = new byte[Math.max(length, scratch.length << 1)];
+                value.duplicate().get(scratch, 0, length)/*position unchanged*/;
+                recordOutput.writeRawBytes(scratch, 0, length);
+            }
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not write field \"" + field.getName() + "\".", ioe);
+        }
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.writer.IRecordWriter#close()
+     */
+    @Override
+    public void close() {
+        if(isClosed) return/*by contract*/;
+        isClosed = true/*by definition*/;
+
+        if(depth >= 0) throw new IllegalStateException("A record, structure or array has been impropertly nested in the record writer.")/*by contract*/;
+        try {
+            output.flush();
+            outputStream.close();
+        } catch(final IOException ioe) {
+            // CHECK:  what's the best way to report this since #close() cannot
+            //         throw a checked exception?
+            throw new IllegalStateException("The record writer could not be flushed.", ioe);
+        }
+    }
+
+    // ========================================================================
+    /**
+     * Writes the specified integral value to the specified field using the
+     * field's encoding.
+     */
+    private void writeIntegral(final IField field, final long value)
+            throws IllegalStateException, OperationFailedException {
+        final ProtobufType protobufType = writeTag(field);
+        try {
+            switch(protobufType) {
+                case INT32:
+                    recordOutput.writeInt32NoTag((int)value);
+                    break;
+                case UINT32:
+                    recordOutput.writeUInt32NoTag((int)value);
+                    break;
+                case SINT32:
+                    recordOutput.writeSInt32NoTag((int)value);
+                    break;
+                case FIXED32:
+                case SFIXED32:
+                    recordOutput.writeRawLittleEndian32((int)value);
+                    break;
+                case INT64:
+                case UINT64:
+                    recordOutput.writeRawVarint64(value);
+                    break;
+                case SINT64:
+                    recordOutput.writeSInt64NoTag(value);
+                    break;
+                case FIXED64:
+                case SFIXED64:
+                    recordOutput.writeRawLittleEndian64(value);
+                    break;
+                default:
+                    throw new InvalidDataException("Cannot write an integral value to " + protobufType + " field \"" + field.getName() + "\".");
+            }
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not write field \"" + field.getName() + "\".", ioe);
+        }
+    }
+
+    /**
+     * Writes the tag of the specified (primitive) field.
+     *
+     * @return the {@link ProtobufType} of the field. This will never be <code>null</code>.
+     */
+    private ProtobufType writeTag(final IField field)
+            throws IllegalStateException, OperationFailedException {
+        checkStarted();
+        final ProtobufType protobufType = ProtobufType.forField(field);
+        try {
+            recordOutput.writeTag(field.getIndex(), protobufType.getWireType());
+        } catch(final IOException ioe) {
+            throw new InvalidDataException("Could not write field \"" + field.getName() + "\".", ioe);
+        }
+        return protobufType;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @throws IllegalStateException if the writer is closed or no record has
+     *         been started.
+     */
+    private void checkStarted()
+            throws IllegalStateException {
+        if(isClosed) throw new IllegalStateException("The record writer has already been closed.")/*by contract*/;
+        if(depth < 0) throw new IllegalStateException("A record has not been started in the record writer.")/*by contract*/;
+    }
+
+    /**
+     * Pushes the specified kind of nesting (growing the stack as necessary).
+     */
+    private void push(final Kind kind) {
+        depth++;
+        if(depth == kinds.length) {
+            final Kind[] newKinds = new Kind[kinds.length << 1];
+            System.arraycopy(kinds, 0, newKinds, 0, kinds.length);
+            kinds = newKinds;
+            final int[] newLengthPositions = new int[lengthPositions.length << 1];
+            System.arraycopy(lengthPositions, 0, newLengthPositions, 0, lengthPositions.length);
+            lengthPositions = newLengthPositions;
+        } /* else -- there is room */
+        kinds[depth] = kind;
+    }
+
+    // ************************************************************************
+    /**
+     * A reused buffer for a record that exposes its contents and allows for
+     * the length of a nested message to be back-patched.
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+        public RecordBuffer() { super(1024/*initial size*/); }
+
+        /**
+         * @return the internal buffer. Only the first {@link #size()} bytes
+         *         are valid.
+         */
+        public byte[] buffer() { return buf; }
+
+        /**
+         * Writes the length of the message that starts after the specified
+         * (reserved) position and runs to the end of the buffer as a varint
+         * at the specified position. The message is shifted if the varint
+         * requires more than the one reserved byte.
+         */
+        public void patchLength(final int position) {
+            final int length = count - (position + 1);
+            final int varintSize = CodedOutputStream.computeRawVarint32Size(length);
+            if(varintSize > 1) {
+                final int shift = varintSize - 1;
+                if((count + shift) > buf.length) {
+                    final byte[] newBuffer = new byte[Math.max((buf.length << 1), (count + shift))];
+                    System.arraycopy(buf, 0, newBuffer, 0, count);
+                    buf = newBuffer;
+                } /* else -- there is room */
+                System.arraycopy(buf, (position + 1), buf, (position + 1 + shift), length);
+                count += shift;
+            } /* else -- the length fits in the reserved byte */
+
+            int value = length;
+            int index = position;
+            while((value & ~0x7F) != 0) {
+                buf[index++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[index] = (byte)value;
+        }
+    }
+}
@@ -16,11 +16,16 @@ package net.agkn.field_stripe.stripe;
  * limitations under the License. 
  */
 
+import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.ENUM_TYPE;
 import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.EXTENSION;
+import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.FIXED_WIDTH;
 import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.MAGIC;
 import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.REPEATED_PARENT;
 import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.REPEATED_VALUE;
+import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.REPEATED_VALUES;
+import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.STRUCTURE_TYPE;
 import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.UNSET;
+import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.UNSIGNED;
 import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.UNSET_PARENT;
 import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.VALUE;
 import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.VERSION;
@@ -37,12 +42,16 @@ import java.util.Map;
 import net.agkn.field_stripe.exception.DeveloperException;
 import net.agkn.field_stripe.exception.InvalidDataException;
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.jfr.FlightRecorderEvents;
 import net.agkn.field_stripe.record.FieldQualifier;
 import net.agkn.field_stripe.record.IField;
 import net.agkn.field_stripe.record.Path;
 import net.agkn.field_stripe.record.PrimitiveType;
 import net.agkn.field_stripe.stripe.Instruction.Kind;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.WireFormat;
 
@@ -53,11 +62,20 @@ import com.google.protobuf.WireFormat;
  * @author rgrzywinski
  * @see BinaryVLenFieldStripeWriter
  */
-public class BinaryVLenFieldStripeReader implements IFieldStripeReader {
+public class BinaryVLenFieldStripeReader implements IFieldStripeReader, IRepeatedValueReader, IByteCounted {
     // TODO:  more intelligently use CodedInputStream's size limits to ensure
     //        that no record / instruction blows out the size limit
 
+    // the (only) value instruction of a structure field-stripe
+    private static final Instruction STRUCTURE_VALUE = new Instruction(Kind.VALUE, Boolean.TRUE/*present*/);
+
+    // returned from #readRepeatedValues() if there are no remaining values
+    private static final Object[] NO_VALUES = new Object[0];
+
     private final CodedInputStream protobufInput;
+    private final CountingInputStream inputStream/*the underlying stream*/;
+    private boolean ended = false/*not ended until the end-of-stream is read*/;
+    private boolean closed = false;
 
     // ........................................................................
     // the field for which this is a reader and the primitive type of the field
@@ -75,6 +93,29 @@ public class BinaryVLenFieldStripeReader implements IFieldStripeReader {
     // no meta-data).
     private final boolean requiredOnly;
 
+    // identifies if the associated field is a structure field in which case
+    // there are no values (only the instructions)
+    private final boolean structure;
+
+    // identifies if the int and long values are fixed-width or unsigned vlen
+    // (from the header)
+    private final boolean fixedWidth;
+    private final boolean unsigned;
+
+    // the names of the symbols of an enumerated field (from the header) in
+    // ordinal order. This is null if the field is not enumerated.
+    private final String[] enumSymbols;
+
+    // ........................................................................
+    // the remaining values of the current run of repeated values (i.e. those
+    // after the first) and the index of the next value. The values are null if
+    // there is no run.
+    private Object[] runValues = null/*no run*/;
+    private int runIndex;
+    // true if the repeated value instruction that precedes the next value of
+    // the run has been returned
+    private boolean runRepeated;
+
     // ========================================================================
     /**
      * @param  fsPath the base path to where the field-stripes are. The path 
@@ -86,41 +127,165 @@ public class BinaryVLenFieldStripeReader implements IFieldStripeReader {
      */
     public static IFieldStripeReaderFactory createFactory(final File fsPath) 
             throws OperationFailedException {
+        return createFactory(fsPath, null/*read synchronously*/);
+    }
+
+    /**
+     * @param  fsPath the base path to where the field-stripes are. The path
+     *         must exist. This cannot be <code>null</code>
+     * @param  readAheadExecutor the {@link ReadAheadExecutor} that reads the
+     *         field-stripes ahead of the readers. If <code>null</code> then
+     *         the field-stripes are read synchronously as they are decoded.
+     * @return a {@link IFieldStripeReaderFactory} that reads binary field-stripe
+     *         files in the specified path. This will never be <code>null</code>.
+     * @throws OperationFailedException if the specified path does not exist
+     *         or is a file.
+     */
+    public static IFieldStripeReaderFactory createFactory(final File fsPath, final ReadAheadExecutor readAheadExecutor)
+            throws OperationFailedException {
         // ensure that the path exists and is a directory
         if(!fsPath.isDirectory()) throw new OperationFailedException("The path does not exist or is file: " + fsPath);
 
         return new IFieldStripeReaderFactory() {
             private final Map<IField, IFieldStripeReader> fieldToReaderMap = new HashMap<IField, IFieldStripeReader>();
+            // NOTE:  sibling leaves share their parent directories so each is
+            //        only resolved (and checked) once rather than once per leaf
+            private final Map<Path, File> pathToDirectoryMap = new HashMap<Path, File>();
             @Override
             public IFieldStripeReader createFieldStripeReader(final IField field)
                     throws OperationFailedException {
                 if(fieldToReaderMap.containsKey(field)) throw new OperationFailedException("A reader already exists for field " + field + ".");
 
-                // walk the parent path to get to the field stripe
-                final Path parentFieldPath = field.getPath().getParentPath();
-                File fieldStripeFSPath = fsPath;
-                for(final IField pathField : parentFieldPath) {
-                    fieldStripeFSPath = new File(fieldStripeFSPath, pathField.getName());
-                    if(!fieldStripeFSPath.exists())
-                        fieldStripeFSPath.mkdir();
-                    /* else -- the path exists */
-                    if(!fieldStripeFSPath.isDirectory()) throw new OperationFailedException("The field stripe path does not exist or is file: " + fsPath);
-                }
+                File fieldStripeFSPath = getDirectory(field.getPath().getParentPath());
                 fieldStripeFSPath = new File(fieldStripeFSPath, (field.getName() + EXTENSION));
                 if(!fieldStripeFSPath.exists()) throw new OperationFailedException("The field stripe does not exist: " + fsPath);
                 if(fieldStripeFSPath.isDirectory()) throw new OperationFailedException("The field stripe is not a file: " + fsPath);
 
-                try {
-                    final IFieldStripeReader reader = new BinaryVLenFieldStripeReader(new FileInputStream(fieldStripeFSPath), field);
-                    fieldToReaderMap.put(field, reader);
-                    return reader;
-                } catch(final IOException ioe) {
-                    throw new OperationFailedException(ioe);
-                }
+                final IFieldStripeReader reader = openReader(fieldStripeFSPath, field, readAheadExecutor);
+                fieldToReaderMap.put(field, reader);
+                return reader;
+            }
+
+            @Override
+            public void closeAllReaders() throws OperationFailedException {
+                closeReaders(fieldToReaderMap.values());
+            }
+
+            /**
+             * Walks the specified (parent) path to get to the directory of the
+             * field stripes of the path.
+             */
+            private File getDirectory(final Path path)
+                    throws OperationFailedException {
+                if(path.getDepth() == 0) return fsPath/*root*/;
+                File directory = pathToDirectoryMap.get(path);
+                if(directory != null) return directory/*already resolved*/;
+
+                directory = new File(getDirectory(path.getParentPath()), path.getField(path.getDepth() - 1/*last*/).getName());
+                if(!directory.exists())
+                    directory.mkdir();
+                /* else -- the path exists */
+                if(!directory.isDirectory()) throw new OperationFailedException("The field stripe path does not exist or is file: " + fsPath);
+                pathToDirectoryMap.put(path, directory);
+                return directory;
             }
         };
     }
 
+    /**
+     * Opens the specified field-stripe file and reads its header. The file is
+     * closed if the header cannot be read.
+     *
+     * @param  file the field-stripe file to be opened. This cannot be <code>null</code>.
+     * @param  field the {@link IField} of the field-stripe. This cannot be
+     *         <code>null</code>.
+     * @param  readAheadExecutor the {@link ReadAheadExecutor} that reads the
+     *         file ahead. If <code>null</code> then the file is read directly.
+     * @return the reader of the field-stripe. This will never be <code>null</code>.
+     * @throws OperationFailedException if the file could not be opened or its
+     *         header does not match the field. Subclasses may provide more
+     *         information as to the nature of the failure.
+     */
+    /*package*/ static BinaryVLenFieldStripeReader openReader(final File file, final IField field, final ReadAheadExecutor readAheadExecutor)
+            throws OperationFailedException {
+        final InputStream inputStream;
+        try {
+            inputStream = openFieldStripe(file, readAheadExecutor);
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+        boolean opened = false/*until the header is read*/;
+        try {
+            final BinaryVLenFieldStripeReader reader = new BinaryVLenFieldStripeReader(inputStream, field);
+            opened = true;
+            return reader;
+        } finally {
+            if(!opened) IOUtils.closeQuietly(inputStream);
+            /* else -- the stream is closed with the reader */
+        }
+    }
+
+    /**
+     * Closes each of the specified readers even if another fails to close.
+     *
+     * @param  readers the {@link IFieldStripeReader readers} to be closed. This
+     *         cannot be <code>null</code>.
+     * @throws OperationFailedException the first failure to close a reader
+     */
+    /*package*/ static void closeReaders(final Iterable<IFieldStripeReader> readers)
+            throws OperationFailedException {
+        OperationFailedException failure = null/*none to start*/;
+        for(final IFieldStripeReader reader : readers) {
+            try {
+                reader.close();
+            } catch(final OperationFailedException ofe) {
+                if(failure == null) failure = ofe;
+            }
+        }
+        if(failure != null) throw failure;
+    }
+
+    /**
+     * @param  file the field-stripe file to be opened. This cannot be <code>null</code>.
+     * @param  readAheadExecutor the {@link ReadAheadExecutor} that reads the
+     *         file ahead. If <code>null</code> then the file is read directly.
+     * @return the stream of the contents of the specified file. This will never
+     *         be <code>null</code>.
+     * @throws IOException if the file could not be opened.
+     */
+    /*package*/ static InputStream openFieldStripe(final File file, final ReadAheadExecutor readAheadExecutor)
+            throws IOException {
+        if(readAheadExecutor == null) return new FileInputStream(file);
+        return readAheadExecutor.createInputStream(file);
+    }
+
+    /**
+     * Reads the {@link StripeStatistics statistics} of the field-stripe of the
+     * specified field without reading the field-stripe itself.
+     *
+     * @param  fsPath the base path to where the field-stripes are. The path
+     *         must exist. This cannot be <code>null</code>
+     * @param  field the {@link IField} whose statistics are read. This cannot
+     *         be <code>null</code> and its type must be a {@link PrimitiveType}.
+     * @return the statistics of the field-stripe. This will never be <code>null</code>.
+     * @throws OperationFailedException if the statistics do not exist, cannot
+     *         be read or do not match the type of the specified field.
+     *         Subclasses may provide more information as to the nature of the
+     *         failure.
+     */
+    public static StripeStatistics readStatistics(final File fsPath, final IField field)
+            throws OperationFailedException {
+        File statisticsFSPath = fsPath;
+        for(final IField pathField : field.getPath().getParentPath())
+            statisticsFSPath = new File(statisticsFSPath, pathField.getName());
+        statisticsFSPath = new File(statisticsFSPath, (field.getName() + StripeStatistics.EXTENSION));
+        if(!statisticsFSPath.isFile()) throw new OperationFailedException("The field stripe statistics do not exist or are not a file: " + statisticsFSPath);
+
+        final StripeStatistics statistics = StripeStatistics.read(statisticsFSPath);
+        if(statistics.getType() != field.getType()) throw new InvalidDataException("Unexpected field type (" + statistics.getType() + " != " + field.getType() + ").");
+        return statistics;
+    }
+
     // ========================================================================
     /**
      * The header is read and parsed and compared with the specified field.
@@ -137,7 +302,10 @@ public class BinaryVLenFieldStripeReader implements IFieldStripeReader {
     // NOTE:  constructed from the factory (and package for testing)
     /*package*/ BinaryVLenFieldStripeReader(final InputStream inputStream, final IField field) 
             throws OperationFailedException {
-        this.protobufInput = CodedInputStream.newInstance(inputStream);
+        // NOTE:  the count is only updated when the (buffered) protobuf input
+        //        is refilled so it costs nothing per instruction
+        this.inputStream = new CountingInputStream(FlightRecorderEvents.instrument(inputStream, field));
+        this.protobufInput = CodedInputStream.newInstance(this.inputStream);
 
         this.field = field;
         this.fieldType = (PrimitiveType)field.getType();
@@ -147,58 +315,127 @@ public class BinaryVLenFieldStripeReader implements IFieldStripeReader {
                               fieldPath.getParentQualifierCount(FieldQualifier.ZERO_OR_ONE/*optional*/);
 
         this.requiredOnly = ((field.getQualifier() == FieldQualifier.ONE) && (unsetOffset == fieldPath.getParentPath().getDepth())/*only 'required' in parent path*/);
+        this.structure = (field instanceof StructureField);
 
         // TODO:  set the CodedInputStream's size limit so that at most the
         //        header's data will fit (which guarantees that the instructions
         //        will fit)
 
-        readValidateHeader();
+        final Object event = FlightRecorderEvents.STRIPE_OPEN.begin();
+        final int typeFlags = readValidateHeader(protobufInput, field);
+        this.fixedWidth = ((typeFlags & FIXED_WIDTH) != 0);
+        this.unsigned = ((typeFlags & UNSIGNED) != 0);
+        this.enumSymbols = (field.getEnumSymbolTable() != null) ? readEnumSymbols(protobufInput) : null/*not enumerated*/;
+        FlightRecorderEvents.STRIPE_OPEN.commit(event, field.getPath().toString(), FlightRecorderEvents.READ);
     }
 
     /**
-     * Reads and validates that the header matches the {@link IField field}
-     * associated with this reader.
+     * Reads and validates that the header read from the specified input matches
+     * the specified {@link IField field}.
      * 
+     * @return the flags ({@link BinaryVLenFieldStripeWriter#FIXED_WIDTH} and
+     *         {@link BinaryVLenFieldStripeWriter#UNSIGNED}) of the type constant.
      * @throws OperationFailedException if the field-stripe header cannot be
      *         read or its contents does not match that of the specified field.
      *         Subclasses may provide more information as to the nature of the 
      *         failure.
      * @see BinaryVLenFieldStripeWriter
      */
-    private void readValidateHeader() 
+    /*package*/ static int readValidateHeader(final CodedInputStream protobufInput, final IField field) 
             throws OperationFailedException {
         try {
             final byte[] magicNumber = protobufInput.readRawBytes(MAGIC.length/*length*/);
             if(!Arrays.equals(magicNumber, MAGIC)) throw new InvalidDataException("Unexpected file-stripe header: " + magicNumber[0] + " " + magicNumber[1] + " " + magicNumber[2] + " " + magicNumber[3] + " " + magicNumber[4]);
             final int version = protobufInput.readRawByte();
-            if(version != VERSION) throw new InvalidDataException("Unknown version number (" + version + " != " + VERSION + ").");
+            if((version < 1) || (version > VERSION)) throw new InvalidDataException("Unknown version number (" + version + " > " + VERSION + ").");
 
             final Path fieldPath = field.getPath()/*for convenience*/;
             final int qualifierOrdinal = protobufInput.readRawByte();
             if(qualifierOrdinal != field.getQualifier().ordinal()) throw new InvalidDataException("Unexpected field qualifier ordinal (" + qualifierOrdinal + " != " + field.getQualifier().ordinal() + ").");
-            final int primitiveTypeConstant = protobufInput.readRawByte();
-            if(primitiveTypeConstant != primitiveTypeToConstantMap.get(field.getType()).ordinal()) throw new InvalidDataException();
+            // NOTE:  the symbols of an enumerated field-stripe follow the
+            //        header (see #readEnumSymbols())
+            final int typeFlags = validateTypeConstant(field, protobufInput.readRawByte());
             final int depth = protobufInput.readInt32();
             if(depth != fieldPath.getDepth()) throw new InvalidDataException("Unexpected path depth (" + depth + " != " + fieldPath.getDepth() + ").");
             final int repeatedParentCount = protobufInput.readInt32();
             if(repeatedParentCount != fieldPath.getParentQualifierCount(FieldQualifier.ZERO_OR_MORE/*repeated*/)) throw new InvalidDataException("Unexpected repeated parent count (" + repeatedParentCount + ").");
             final int repeatedOptionalParentCount = protobufInput.readInt32();
             if(repeatedOptionalParentCount != fieldPath.getParentQualifierCount(FieldQualifier.ZERO_OR_ONE/*optional*/)) throw new InvalidDataException("Unexpected repeated-and-optional parent count (" + repeatedOptionalParentCount + ").");
+            return typeFlags;
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
     }
 
+    /**
+     * Validates that the specified type constant (from a field-stripe header)
+     * can be that of the specified {@link IField field}.
+     *
+     * @return the flags ({@link BinaryVLenFieldStripeWriter#FIXED_WIDTH} and
+     *         {@link BinaryVLenFieldStripeWriter#UNSIGNED}) of the type constant.
+     * @throws InvalidDataException if the type constant is not that of the
+     *         specified field or has flags that the field cannot have.
+     * @see BinaryVLenFieldStripeWriter#getTypeConstant(IField, int)
+     */
+    /*package*/ static int validateTypeConstant(final IField field, final int typeConstant)
+            throws InvalidDataException {
+        if(field instanceof StructureField) {
+            // NOTE:  a structure field-stripe has no values and so no flags
+            if(typeConstant != STRUCTURE_TYPE) throw new InvalidDataException("Unexpected type constant (" + typeConstant + " != " + STRUCTURE_TYPE + ").");
+            return 0/*none*/;
+        } else if(field.getEnumSymbolTable() != null) {
+            if(typeConstant != ENUM_TYPE) throw new InvalidDataException("Unexpected type constant (" + typeConstant + " != " + ENUM_TYPE + ").");
+            return 0/*none*/;
+        } /* else -- primitive */
+        final int typeFlags = (typeConstant & (FIXED_WIDTH | UNSIGNED));
+        final int primitiveTypeConstant = (typeConstant & ~(FIXED_WIDTH | UNSIGNED));
+        final int expectedTypeConstant = primitiveTypeToConstantMap.get(field.getType()).ordinal();
+        if(primitiveTypeConstant != expectedTypeConstant) throw new InvalidDataException("Unexpected type constant (" + primitiveTypeConstant + " != " + expectedTypeConstant + ").");
+
+        final PrimitiveType type = (PrimitiveType)field.getType();
+        final boolean integral = (type == PrimitiveType.INT) || (type == PrimitiveType.LONG);
+        if(((typeFlags & FIXED_WIDTH) != 0) && !integral && (type != PrimitiveType.FLOAT) && (type != PrimitiveType.DOUBLE)) throw new InvalidDataException("Field \"" + field.getName() + "\" cannot be fixed-width.");
+        if(((typeFlags & UNSIGNED) != 0) && (!integral || ((typeFlags & FIXED_WIDTH) != 0))) throw new InvalidDataException("Field \"" + field.getName() + "\" cannot be unsigned.");
+        return typeFlags;
+    }
+
     // ========================================================================
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IByteCounted#getByteCount()
+     */
+    @Override
+    public long getByteCount() {
+        return inputStream.getByteCount();
+    }
+
     /* (non-Javadoc)
      * @see net.agkn.field_stripe.stripe.IFieldStripeReader#readInstruction()
      */
     @Override
     public Instruction readInstruction() 
             throws OperationFailedException {
+        // the remaining values of a run are returned as the equivalent
+        // repeated value and value instructions
+        if(runValues != null) {
+            if(!runRepeated) {
+                runRepeated = true/*the value follows*/;
+                return Instruction.REPEATED_VALUE;
+            } /* else -- the repeated value has been returned so the value follows */
+            runRepeated = false/*reset for next value*/;
+            final Object value = runValues[runIndex++];
+            if(runIndex == runValues.length) runValues = null/*end of run*/;
+            return new Instruction(Kind.VALUE, value);
+        } /* else -- there is no run */
+
         protobufInput.resetSizeCounter()/*reset for each instruction (see TODO at top)*/;
         try {
-            if(protobufInput.isAtEnd()) return null/*end-of-stream (by contract)*/;
+            if(protobufInput.isAtEnd()) {
+                if(!ended) {
+                    ended = true/*only record the end once*/;
+                    FlightRecorderEvents.STRIPE_CLOSE.commit(FlightRecorderEvents.STRIPE_CLOSE.begin(), field.getPath().toString(), FlightRecorderEvents.READ, getByteCount());
+                } /* else -- the end has already been recorded */
+                return null/*end-of-stream (by contract)*/;
+            } /* else -- there is another instruction */
 
             // two modes: either requiredOnly is true and all entries are simply
             // values (with no meta-data) or it is false and a read is needed 
@@ -213,6 +450,7 @@ public class BinaryVLenFieldStripeReader implements IFieldStripeReader {
                 case UNSET:
                     return Instruction.UNSET;
                 case VALUE:
+                    if(structure) return STRUCTURE_VALUE/*no value to read*/;
                     return new Instruction(Kind.VALUE/*by definition*/, readValue());
                 case REPEATED_VALUE:
                     return Instruction.REPEATED_VALUE;
@@ -220,6 +458,17 @@ public class BinaryVLenFieldStripeReader implements IFieldStripeReader {
                     return new Instruction(Kind.REPEATED_PARENT, (instructionValue + repeatedOffset));
                 case UNSET_PARENT:
                     return new Instruction(Kind.UNSET_PARENT, (instructionValue + unsetOffset));
+                case REPEATED_VALUES: {
+                    if(instructionValue < 2) throw new InvalidDataException("Unexpected number of repeated values (" + instructionValue + ") for field " + field.getName() + ".");
+                    final Object firstValue = readValue();
+                    final Object[] values = new Object[instructionValue - 1/*first value*/];
+                    for(int i=0; i<values.length; i++)
+                        values[i] = readValue();
+                    runValues = values;
+                    runIndex = 0/*first remaining value*/;
+                    runRepeated = false/*by definition*/;
+                    return new Instruction(Kind.VALUE/*by definition*/, firstValue);
+                }
 
                 default:
                     throw new OperationFailedException("Unknown instruction kind " + instructionKind + " for field " + field.getName() + "."); 
@@ -229,21 +478,73 @@ public class BinaryVLenFieldStripeReader implements IFieldStripeReader {
         }
     }
 
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IRepeatedValueReader#readRepeatedValues()
+     */
+    @Override
+    public Object[] readRepeatedValues() {
+        if(runValues == null) return NO_VALUES/*no run*/;
+
+        final Object[] values = (runIndex == 0) ? runValues : Arrays.copyOfRange(runValues, runIndex, runValues.length);
+        runValues = null/*run consumed*/;
+        return values;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeReader#close()
+     */
+    @Override
+    public void close()
+            throws OperationFailedException {
+        if(closed) return/*by contract*/;
+        closed = true/*by definition*/;
+        try {
+            inputStream.close()/*closes the underlying stream*/;
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    /**
+     * Reads the symbol table of an enumerated field-stripe which directly follows
+     * the header.
+     *
+     * @return the names of the symbols in ordinal order. This will never be
+     *         <code>null</code> or empty.
+     * @throws OperationFailedException if the symbol table cannot be read.
+     *         Subclasses may provide more information as to the nature of the
+     *         failure.
+     */
+    private static String[] readEnumSymbols(final CodedInputStream protobufInput)
+            throws OperationFailedException {
+        try {
+            final int symbolCount = protobufInput.readRawVarint32();
+            if(symbolCount < 1) throw new InvalidDataException("An enum must have at least one symbol (" + symbolCount + ").");
+            final String[] symbols = new String[symbolCount];
+            for(int i=0; i<symbolCount; i++)
+                symbols[i] = protobufInput.readString();
+            return symbols;
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
     /**
      * Reads and returns the next value based on the {@link IField field's} 
      * {@link IField#getType() type}.
      */
     private Object readValue() 
-            throws IOException {
+            throws IOException, InvalidDataException {
+        if(structure) return Boolean.TRUE/*no value is written*/;
         switch(fieldType) {
             case BYTE:
                 return (byte)protobufInput.readSInt32()/*encoded as an v-sint32*/;
             case SHORT:
                 return (short)protobufInput.readSInt32()/*encoded as an v-sint32*/;
             case INT:
-                return protobufInput.readSInt32();
+                return fixedWidth ? protobufInput.readSFixed32() : (unsigned ? protobufInput.readUInt32() : protobufInput.readSInt32());
             case LONG:
-                return protobufInput.readSInt64();
+                return fixedWidth ? protobufInput.readSFixed64() : (unsigned ? protobufInput.readUInt64() : protobufInput.readSInt64());
             case FLOAT:
                 return protobufInput.readFloat();
             case DOUBLE:
@@ -251,7 +552,16 @@ public class BinaryVLenFieldStripeReader implements IFieldStripeReader {
             case BOOLEAN:
                 return protobufInput.readBool();
             case STRING:
+                if(enumSymbols != null) {
+                    final int ordinal = protobufInput.readUInt32();
+                    if((ordinal < 0) || (ordinal >= enumSymbols.length)) throw new InvalidDataException("Unknown enum ordinal " + ordinal + " in field \"" + field.getName() + "\".");
+                    return enumSymbols[ordinal];
+                } /* else -- not enumerated */
                 return protobufInput.readString();
+            case BYTES:
+                // NOTE:  the bytes are copied once out of the stream's buffer
+                //        and the returned buffer is a view of that copy
+                return protobufInput.readBytes().asReadOnlyByteBuffer();
 
             default:
                 throw new DeveloperException("Unknown field type in field \"" + field.getName() + ".");
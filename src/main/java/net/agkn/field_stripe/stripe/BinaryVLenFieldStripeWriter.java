@@ -20,17 +20,24 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.HashMap;
 import java.util.Map;
 
+import net.agkn.field_stripe.exception.InvalidDataException;
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.jfr.FlightRecorderEvents;
+import net.agkn.field_stripe.record.EnumSymbolTable;
 import net.agkn.field_stripe.record.FieldQualifier;
 import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.IFieldType;
+import net.agkn.field_stripe.record.IntegerEncoding;
 import net.agkn.field_stripe.record.Path;
 import net.agkn.field_stripe.record.PrimitiveType;
 import net.agkn.field_stripe.stripe.Instruction.Kind;
 
-import com.google.protobuf.CodedOutputStream;
+import org.apache.commons.io.IOUtils;
 
 /**
  * A variable length (v-len) binary field-stripe writer. {@link #createFactory(File)}
@@ -42,10 +49,15 @@ import com.google.protobuf.CodedOutputStream;
  *   5 bytes: magic number ('fstrp')
  *   1 byte: version number (0 is reserved)
  *   1 byte: 0x00=required, 0x01=optional, 0x02=repeated
- *   1 byte: {@link PrimitiveType} ordinal (from TypeConstant)
+ *   1 byte: {@link PrimitiveType} ordinal (from TypeConstant), {@link #STRUCTURE_TYPE}
+ *           or {@link #ENUM_TYPE}
+ *           (with {@link #FIXED_WIDTH} set if the values are fixed-width and
+ *           {@link #UNSIGNED} set if the values are unsigned vlen)
  *   vlen uint32: total path length (including this field)
  *   vlen uint32: number of repeated parents (not including this field)
  *   vlen uint32: number of optional parents (not including this field)
+ *   if {@link #ENUM_TYPE}: vlen uint32: number of symbols
+ *                          for each symbol: string: name
  * </pre>
  * 
  * The {@link Instruction instruction} encoding is:<p/>
@@ -55,20 +67,64 @@ import com.google.protobuf.CodedOutputStream;
  *   <li>{@link Kind#REPEATED_VALUE} (2): &lt;vlen uint32&gt;</li>
  *   <li>{@link Kind#REPEATED_PARENT} (3): &lt;vlen uint32 ((number-of-repeated-parents << 3) | 3bits)&gt;</li>
  *   <li>{@link Kind#UNSET_PARENT} (4): &lt;vlen uint32 ((number-of-repeated-or-optional-parents << 3) | 3bits)&gt;</li>
+ *   <li>repeated values (5): &lt;vlen uint32 ((number-of-values << 3) | 3bits)&gt; &lt;each value in field type&gt;</li>
  * </ul>
  * 
+ * The values of a repeated field are length encoded: rather than a {@link Kind#REPEATED_VALUE}
+ * preceding each repeated value, the two or more values of an occurrence of
+ * the field are written as their count followed by the values back to back.
+ * (A single value is written as a {@link Kind#VALUE}.) The values are read
+ * back as the equivalent {@link Kind#VALUE} and {@link Kind#REPEATED_VALUE}
+ * instructions or all at once using {@link IRepeatedValueReader}. Version 1
+ * field-stripes (which have no repeated values instructions) are still read.<p/>
+ * 
+ * A {@link StructureField structure} field-stripe only records the structure
+ * (presence, absence and repetition) of a sparse node. Its type is {@link #STRUCTURE_TYPE}
+ * and each {@link Kind#VALUE} is written as only its &lt;vlen uint32&gt; (i.e.
+ * without a value) since by definition the value is always <code>true</code>.<p/>
+ * 
+ * The int and long values of a field are written in the cheapest encoding for
+ * the field's declared {@link IField#getIntegerEncoding() integer encoding}:
+ * {@link IntegerEncoding#SIGNED signed} values as (zigzag) vlen sint32 and
+ * sint64, {@link IntegerEncoding#UNSIGNED unsigned} values as vlen uint32 and
+ * uint64 (with {@link #UNSIGNED} set) and {@link IntegerEncoding#FIXED fixed}
+ * values as little-endian sfixed32 and sfixed64 (with {@link #FIXED_WIDTH} set).
+ * (For example, a hash declared as Protobuf <code>fixed64</code> takes 8 bytes
+ * rather than the 10 that a vlen would need.)<p/>
+ * 
+ * A {@link PrimitiveType#BYTES bytes} value is written as its length (vlen
+ * uint32) followed by the bytes themselves (i.e. as a Protobuf <code>bytes</code>).<p/>
+ * 
+ * The values of an {@link IField#getEnumSymbolTable() enumerated} field are the
+ * names of its symbols. Rather than writing each name, the symbol table (the
+ * names in ordinal order) is written once in the header and each value is
+ * written as the ordinal of its symbol as a vlen uint32 (one byte for up to
+ * 128 symbols). Since the symbol table is in the header, the field-stripe is
+ * read back using its own symbols even if the enum has since changed.<p/>
+ * 
+ * A field-stripe may optionally be {@link #supportsFixedWidth(IField) fixed-width}:
+ * if the field is required and has only required parents then the stripe has
+ * no meta-data and, when fixed-width, its int and long values are written as
+ * little-endian sfixed32 and sfixed64 (float and double values are always
+ * fixed-width). The offset of each value (and therefore each record) can then
+ * be computed which allows for random access (see {@link FixedWidthFieldStripe}).<p/>
+ * 
  * All values except the magic number and version number are written using the
- * <a href="https://developers.google.com/protocol-buffers/docs/encoding">Protobuf encoding format</a>.
+ * <a href="https://developers.google.com/protocol-buffers/docs/encoding">Protobuf encoding format</a>.<p/>
+ * 
+ * The {@link StripeStatistics statistics} of the stripe are collected as it is
+ * written and are written to a separate stream (a file with the {@link StripeStatistics#EXTENSION statistics extension}
+ * alongside the stripe when created from the factory) on {@link #close()}.
  *
  * @author rgrzywinski
  * @see BinaryVLenFieldStripeReader
  */
-public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
+public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter, IByteCounted {
     // the magic number used to identify binary file-stripes
     public static final byte[] MAGIC = { 'f', 's', 't', 'r', 'p' };
 
     // the version of this writer
-    public static final byte VERSION = 1/*0 is reserved*/;
+    public static final byte VERSION = 2/*0 is reserved, 1 has no repeated values*/;
 
     // ------------------------------------------------------------------------
     // types for the instructions
@@ -77,9 +133,10 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
     public static final int REPEATED_VALUE = 2;
     public static final int REPEATED_PARENT = 3;
     public static final int UNSET_PARENT = 4;
+    public static final int REPEATED_VALUES = 5;
 
     // constants for types
-    public static enum TypeConstant { BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, BOOLEAN, STRING };
+    public static enum TypeConstant { BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, BOOLEAN, STRING, BYTES };
     @SuppressWarnings("serial")
     public static final Map<PrimitiveType, TypeConstant> primitiveTypeToConstantMap = new HashMap<PrimitiveType, TypeConstant>() {{
         put(PrimitiveType.BYTE, TypeConstant.BYTE);
@@ -90,17 +147,47 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
         put(PrimitiveType.DOUBLE, TypeConstant.DOUBLE);
         put(PrimitiveType.BOOLEAN, TypeConstant.BOOLEAN);
         put(PrimitiveType.STRING, TypeConstant.STRING);
+        put(PrimitiveType.BYTES, TypeConstant.BYTES);
     }};
 
+    // the type of a structure field-stripe. This is not a TypeConstant since
+    // there are no values (and therefore no statistics) of the type.
+    public static final int STRUCTURE_TYPE = 0x3F/*FIXED_WIDTH not set*/;
+    // the type of an enumerated field-stripe whose values are the ordinals of
+    // the symbols in the header. This is not a TypeConstant since the values
+    // (and therefore the statistics) are the names of the symbols (strings).
+    public static final int ENUM_TYPE = 0x3E/*FIXED_WIDTH not set*/;
+    // the flag set on the type constant of a field-stripe whose values are
+    // fixed-width
+    public static final int FIXED_WIDTH = 0x40;
+    // the flag set on the type constant of a field-stripe whose int or long
+    // values are unsigned vlen
+    // NOTE:  STRUCTURE_TYPE and ENUM_TYPE are matched before any flags are
+    //        considered
+    public static final int UNSIGNED = 0x20;
+
     // ------------------------------------------------------------------------
     // the name of the file extension
     public static final String EXTENSION = ".fstrp";
 
+    // the default size in bytes of the output buffer of each field-stripe.
+    // NOTE:  there is one buffer per leaf field (which may number in the
+    //        hundreds) so this is moderate. Larger buffers (e.g. 1MB) mean
+    //        fewer writes.
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // the initial size in bytes of the (growable) buffer of a run
+    private static final int INITIAL_RUN_BUFFER_SIZE = 256;
+
     // ************************************************************************
-    private final CodedOutputStream protobufOutput;
-    private final OutputStream outputStream/*the underlying stream*/;
+    private final BufferedChannelOutput protobufOutput;
     private boolean closed = false/*not closed until #close()*/;
 
+    // the statistics of the stripe and the stream to which they are written
+    // on close (null if they are not written)
+    private final StripeStatistics.Collector statistics;
+    private final OutputStream statisticsOutputStream;
+
     // ........................................................................
     private final IField field; 
 
@@ -114,6 +201,29 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
     // optional parent. If false, no meta-data is added before a value is written.
     private final boolean notRequiredOnly;
 
+    // identifies if the associated field is a structure field in which case
+    // values are not written (only the instruction)
+    private final boolean structure;
+
+    // ........................................................................
+    // the run of values of an occurrence of a repeated field. The values are
+    // buffered until the run ends (any instruction other than a repeated value)
+    // at which point the count and the values are written. The buffer is
+    // null if the field is not repeated.
+    private final BufferedChannelOutput runOutput;
+    private int runCount = 0/*no values in the run*/;
+    // true if a repeated value was written and its value is expected
+    private boolean runContinued = false/*no repeated value*/;
+
+    // identifies if the int and long values are written as fixed-width or as
+    // unsigned vlen (otherwise they are signed vlen)
+    private final boolean fixedWidth;
+    private final boolean unsigned;
+
+    // the symbols of an enumerated field. This is null if the field is not
+    // enumerated.
+    private final EnumSymbolTable enumSymbolTable;
+
     // ========================================================================
     /**
      * @param  fsPath the base path to where the field-stripes are to be created.
@@ -123,33 +233,118 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
      *         files in the specified path. This will never be <code>null</code>.
      * @throws OperationFailedException if the specified path does not exist 
      *         or is a file.
+     * @see #createFactory(File, boolean, int, boolean)
      */
     public static IFieldStripeWriterFactory createFactory(final File fsPath) 
             throws OperationFailedException {
+        return createFactory(fsPath, false/*not fixed-width*/);
+    }
+
+    /**
+     * @param  fsPath the base path to where the field-stripes are to be created.
+     *         The path must exist. A directory is created for each node field 
+     *         and a file is created for each leaf field. This cannot be <code>null</code>
+     * @param  fixedWidth if <code>true</code> then the field-stripes of the
+     *         fields that {@link #supportsFixedWidth(IField) support it} are
+     *         written fixed-width. Other field-stripes are unaffected.
+     * @return a {@link IFieldStripeWriterFactory} that creates binary field-stripe
+     *         files in the specified path. This will never be <code>null</code>.
+     * @throws OperationFailedException if the specified path does not exist 
+     *         or is a file.
+     * @see #createFactory(File, boolean, int, boolean)
+     */
+    public static IFieldStripeWriterFactory createFactory(final File fsPath, final boolean fixedWidth) 
+            throws OperationFailedException {
+        return createFactory(fsPath, fixedWidth, DEFAULT_BUFFER_SIZE, false/*heap*/);
+    }
+
+    /**
+     * @param  fsPath the base path to where the field-stripes are to be created.
+     *         The path must exist. A directory is created for each node field 
+     *         and a file is created for each leaf field. This cannot be <code>null</code>
+     * @param  fixedWidth if <code>true</code> then the field-stripes of the
+     *         fields that {@link #supportsFixedWidth(IField) support it} are
+     *         written fixed-width. Other field-stripes are unaffected.
+     * @param  bufferSize the size in bytes of the output buffer of each
+     *         field-stripe. This must be at least {@link BufferedChannelOutput#MINIMUM_BUFFER_SIZE}.
+     * @param  directBuffers if <code>true</code> then the output buffers are
+     *         direct (which the file channels write without copying them).
+     *         Direct buffers are allocated outside of the heap.
+     * @return a {@link IFieldStripeWriterFactory} that creates binary field-stripe
+     *         files in the specified path. This will never be <code>null</code>.
+     * @throws OperationFailedException if the specified path does not exist 
+     *         or is a file.
+     * @see #createFactory(File, boolean, WriteBufferPool)
+     */
+    public static IFieldStripeWriterFactory createFactory(final File fsPath, final boolean fixedWidth, final int bufferSize, final boolean directBuffers) 
+            throws OperationFailedException {
+        // NOTE:  the buffers are fixed-size (and unbounded in total) but they
+        //        are reused as writers are closed
+        return createFactory(fsPath, fixedWidth, new WriteBufferPool(Long.MAX_VALUE/*unbounded*/, bufferSize, bufferSize, directBuffers));
+    }
+
+    /**
+     * @param  fsPath the base path to where the field-stripes are to be created.
+     *         The path must exist. A directory is created for each node field 
+     *         and a file is created for each leaf field. This cannot be <code>null</code>
+     * @param  fixedWidth if <code>true</code> then the field-stripes of the
+     *         fields that {@link #supportsFixedWidth(IField) support it} are
+     *         written fixed-width. Other field-stripes are unaffected.
+     * @param  bufferPool the {@link WriteBufferPool} from which the output
+     *         buffers of all of the field-stripes are taken. This bounds their
+     *         total memory. This cannot be <code>null</code>.
+     * @return a {@link IFieldStripeWriterFactory} that creates binary field-stripe
+     *         files in the specified path. This will never be <code>null</code>.
+     * @throws OperationFailedException if the specified path does not exist 
+     *         or is a file.
+     * @see #createFactory(File, boolean, WriteBufferPool, WriteBehindExecutor)
+     */
+    public static IFieldStripeWriterFactory createFactory(final File fsPath, final boolean fixedWidth, final WriteBufferPool bufferPool) 
+            throws OperationFailedException {
+        return createFactory(fsPath, fixedWidth, bufferPool, null/*synchronous*/);
+    }
+
+    /**
+     * @param  fsPath the base path to where the field-stripes are to be created.
+     *         The path must exist. A directory is created for each node field 
+     *         and a file is created for each leaf field. This cannot be <code>null</code>
+     * @param  fixedWidth if <code>true</code> then the field-stripes of the
+     *         fields that {@link #supportsFixedWidth(IField) support it} are
+     *         written fixed-width. Other field-stripes are unaffected.
+     * @param  bufferPool the {@link WriteBufferPool} from which the output
+     *         buffers of all of the field-stripes are taken. This bounds their
+     *         total memory. This cannot be <code>null</code>.
+     * @param  writeBehindExecutor the {@link WriteBehindExecutor} whose I/O
+     *         threads write the full buffers while the encoding continues. If
+     *         <code>null</code> then the buffers are written synchronously.
+     *         {@link IFieldStripeWriterFactory#closeAllWriters()} waits for
+     *         the buffers to be written and throws any failure to write them.
+     * @return a {@link IFieldStripeWriterFactory} that creates binary field-stripe
+     *         files in the specified path. This will never be <code>null</code>.
+     * @throws OperationFailedException if the specified path does not exist 
+     *         or is a file.
+     */
+    public static IFieldStripeWriterFactory createFactory(final File fsPath, final boolean fixedWidth, final WriteBufferPool bufferPool, final WriteBehindExecutor writeBehindExecutor) 
+            throws OperationFailedException {
         // ensure that the path exists and is a directory
         if(!fsPath.isDirectory()) throw new OperationFailedException("The path does not exist or is file: " + fsPath);
 
         return new IFieldStripeWriterFactory() {
             private final Map<IField, IFieldStripeWriter> fieldToWriterMap = new HashMap<IField, IFieldStripeWriter>();
+            // NOTE:  sibling leaves share their parent directories so each is
+            //        only created (and checked) once rather than once per leaf
+            private final Map<Path, File> pathToDirectoryMap = new HashMap<Path, File>();
             @Override
             public IFieldStripeWriter createFieldStripeWriter(final IField field)
                     throws OperationFailedException {
                 if(fieldToWriterMap.containsKey(field)) throw new OperationFailedException("A writer already exists for field " + field + ".");
 
-                // walk the parent path and create the necessary directories
-                final Path parentFieldPath = field.getPath().getParentPath();
-                File fieldStripeFSPath = fsPath;
-                for(final IField pathField : parentFieldPath) {
-                    fieldStripeFSPath = new File(fieldStripeFSPath, pathField.getName());
-                    if(!fieldStripeFSPath.exists())
-                        fieldStripeFSPath.mkdir();
-                    /* else -- the path exists */
-                    if(!fieldStripeFSPath.isDirectory()) throw new OperationFailedException("The path does not exist or is file: " + fsPath);
-                }
+                File fieldStripeFSPath = createDirectories(field.getPath().getParentPath());
+                final File statisticsFSPath = new File(fieldStripeFSPath, (field.getName() + StripeStatistics.EXTENSION));
                 fieldStripeFSPath = new File(fieldStripeFSPath, (field.getName() + EXTENSION));
 
                 try {
-                    final IFieldStripeWriter writer = new BinaryVLenFieldStripeWriter(new FileOutputStream(fieldStripeFSPath), field);
+                    final IFieldStripeWriter writer = new BinaryVLenFieldStripeWriter(new FileOutputStream(fieldStripeFSPath).getChannel(), new FileOutputStream(statisticsFSPath), field, fixedWidth, bufferPool, writeBehindExecutor);
                     fieldToWriterMap.put(field, writer);
                     return writer;
                 } catch(final IOException ioe) {
@@ -159,12 +354,83 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
 
             @Override
             public void closeAllWriters() throws OperationFailedException {
-                for(final IFieldStripeWriter writer : fieldToWriterMap.values()) 
-                    writer.close();
+                // NOTE:  every writer is closed (so that its buffers are
+                //        written) even if another fails. The first failure
+                //        is thrown.
+                OperationFailedException failure = null/*none to start*/;
+                for(final IFieldStripeWriter writer : fieldToWriterMap.values()) {
+                    try {
+                        writer.close();
+                    } catch(final OperationFailedException ofe) {
+                        if(failure == null) failure = ofe;
+                    }
+                }
+                if(failure != null) throw failure;
+            }
+
+            /**
+             * Walks the specified (parent) path and creates the necessary 
+             * directories returning the directory for the path.
+             */
+            private File createDirectories(final Path path)
+                    throws OperationFailedException {
+                if(path.getDepth() == 0) return fsPath/*root*/;
+                File directory = pathToDirectoryMap.get(path);
+                if(directory != null) return directory/*already created*/;
+
+                directory = new File(createDirectories(path.getParentPath()), path.getField(path.getDepth() - 1/*last*/).getName());
+                if(!directory.exists())
+                    directory.mkdir();
+                /* else -- the path exists */
+                if(!directory.isDirectory()) throw new OperationFailedException("The path does not exist or is file: " + fsPath);
+                pathToDirectoryMap.put(path, directory);
+                return directory;
             }
         };
     }
 
+    /**
+     * @param  field the {@link IField} to test. This cannot be <code>null</code>.
+     * @return <code>true</code> if and only if the field-stripe of the specified
+     *         field can be fixed-width. It must be an int, long, float or double
+     *         field that is required and has only required parents (i.e. it
+     *         has exactly one value per record and no meta-data).
+     */
+    public static boolean supportsFixedWidth(final IField field) {
+        if(field instanceof StructureField) return false/*never required*/;
+        final Path fieldPath = field.getPath()/*for convenience*/;
+        if((field.getQualifier() != FieldQualifier.ONE) || (fieldPath.getParentQualifierCount(FieldQualifier.ONE/*required*/) != fieldPath.getParentPath().getDepth()))
+            return false/*not required-only*/;
+        final IFieldType type = field.getType();
+        return (type == PrimitiveType.INT) || (type == PrimitiveType.LONG) || (type == PrimitiveType.FLOAT) || (type == PrimitiveType.DOUBLE);
+    }
+
+    /**
+     * @param  field the {@link IField} of a field-stripe. This cannot be <code>null</code>.
+     * @param  typeFlags the flags ({@link #FIXED_WIDTH} and {@link #UNSIGNED})
+     *         of the field-stripe's values. These are ignored for a {@link StructureField structure}
+     *         or enumerated field.
+     * @return the type constant (with the flags set) that is written in the
+     *         header of the field-stripe of the specified field
+     */
+    public static int getTypeConstant(final IField field, final int typeFlags) {
+        if(field instanceof StructureField) return STRUCTURE_TYPE;
+        if(field.getEnumSymbolTable() != null) return ENUM_TYPE;
+        return (primitiveTypeToConstantMap.get(field.getType()).ordinal() | (typeFlags & (FIXED_WIDTH | UNSIGNED)));
+    }
+
+    /**
+     * @param  field the {@link IField} to test. This cannot be <code>null</code>.
+     * @return <code>true</code> if and only if the specified field is an int
+     *         or long field (i.e. its {@link IField#getIntegerEncoding() integer encoding}
+     *         applies).
+     */
+    public static boolean isIntegral(final IField field) {
+        if(field instanceof StructureField) return false/*no values*/;
+        final IFieldType type = field.getType();
+        return (type == PrimitiveType.INT) || (type == PrimitiveType.LONG);
+    }
+
     // ========================================================================
     /**
      * The file-stripe header is written on construction.
@@ -179,12 +445,98 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
      *         written for any reason. Subclasses may contain additional  
      *         information as to the nature of the failure. 
      */
-    // NOTE:  constructed from the factory (and package for testing)
+    // NOTE:  package for testing
     /*package*/ BinaryVLenFieldStripeWriter(final OutputStream outputStream, final IField field) 
             throws OperationFailedException {
-        this.outputStream = outputStream;
-        // CHECK:  is the default buffer size (4096) a good choice? 
-        this.protobufOutput = CodedOutputStream.newInstance(outputStream);
+        this(outputStream, null/*statistics not written*/, field);
+    }
+
+    /**
+     * The file-stripe header is written on construction.
+     * 
+     * @param  writer the {@link OutputStream} to which the field-stripe is written. 
+     *         This cannot be <code>null</code>. The data is only guaranteed to 
+     *         be completely written after {@link #close()} is called.
+     * @param  statisticsOutputStream the {@link OutputStream} to which the 
+     *         {@link StripeStatistics statistics} are written (and which is 
+     *         closed) on {@link #close()}. If <code>null</code> then the
+     *         statistics are not written (though they are still {@link #getStatistics() available}).
+     * @param  field the {@link IField} for which this is a writer. This cannot
+     *         be <code>null</code> and its {@link IField#getType() type} must
+     *         be {@link PrimitiveType}.
+     * @throws OperationFailedException if the file-stripe header could not be
+     *         written for any reason. Subclasses may contain additional  
+     *         information as to the nature of the failure. 
+     */
+    // NOTE:  package for testing
+    /*package*/ BinaryVLenFieldStripeWriter(final OutputStream outputStream, final OutputStream statisticsOutputStream, final IField field) 
+            throws OperationFailedException {
+        this(outputStream, statisticsOutputStream, field, false/*not fixed-width*/);
+    }
+
+    /**
+     * The file-stripe header is written on construction.
+     * 
+     * @param  writer the {@link OutputStream} to which the field-stripe is written. 
+     *         This cannot be <code>null</code>. The data is only guaranteed to 
+     *         be completely written after {@link #close()} is called.
+     * @param  statisticsOutputStream the {@link OutputStream} to which the 
+     *         {@link StripeStatistics statistics} are written (and which is 
+     *         closed) on {@link #close()}. If <code>null</code> then the
+     *         statistics are not written.
+     * @param  field the {@link IField} for which this is a writer. This cannot
+     *         be <code>null</code> and its {@link IField#getType() type} must
+     *         be {@link PrimitiveType}.
+     * @param  fixedWidth if <code>true</code> and the field {@link #supportsFixedWidth(IField) supports it}
+     *         then the field-stripe is written fixed-width.
+     * @throws OperationFailedException if the file-stripe header could not be
+     *         written for any reason. Subclasses may contain additional  
+     *         information as to the nature of the failure. 
+     */
+    /*package*/ BinaryVLenFieldStripeWriter(final OutputStream outputStream, final OutputStream statisticsOutputStream, final IField field, final boolean fixedWidth) 
+            throws OperationFailedException {
+        this(BufferedChannelOutput.newChannel(outputStream), statisticsOutputStream, field, fixedWidth, null/*not pooled*/, null/*synchronous*/);
+    }
+
+    /**
+     * The file-stripe header is written on construction.
+     * 
+     * @param  channel the {@link WritableByteChannel} to which the field-stripe
+     *         is written. This cannot be <code>null</code>. The data is only
+     *         guaranteed to be completely written after {@link #close()} is 
+     *         called.
+     * @param  statisticsOutputStream the {@link OutputStream} to which the 
+     *         {@link StripeStatistics statistics} are written (and which is 
+     *         closed) on {@link #close()}. If <code>null</code> then the
+     *         statistics are not written.
+     * @param  field the {@link IField} for which this is a writer. This cannot
+     *         be <code>null</code> and its {@link IField#getType() type} must
+     *         be {@link PrimitiveType}.
+     * @param  fixedWidth if <code>true</code> and the field {@link #supportsFixedWidth(IField) supports it}
+     *         then the field-stripe is written fixed-width.
+     * @param  bufferPool the {@link WriteBufferPool} from which the output
+     *         buffer is taken. If <code>null</code> then the output has its
+     *         own heap buffer of {@link #DEFAULT_BUFFER_SIZE}.
+     * @param  writeBehindExecutor the {@link WriteBehindExecutor} that writes
+     *         the full (pooled) buffers. If <code>null</code> (or if the
+     *         buffer pool is <code>null</code>) then the buffers are written
+     *         synchronously.
+     * @throws OperationFailedException if the file-stripe header could not be
+     *         written for any reason. Subclasses may contain additional  
+     *         information as to the nature of the failure. 
+     */
+    // NOTE:  constructed from the factory
+    /*package*/ BinaryVLenFieldStripeWriter(final WritableByteChannel channel, final OutputStream statisticsOutputStream, final IField field, final boolean fixedWidth, final WriteBufferPool bufferPool, final WriteBehindExecutor writeBehindExecutor) 
+            throws OperationFailedException {
+        this.statistics = new StripeStatistics.Collector((PrimitiveType)field.getType());
+        this.statisticsOutputStream = statisticsOutputStream;
+        // NOTE:  the output counts the bytes as its buffer is written so the
+        //        count costs nothing per instruction
+        final WritableByteChannel instrumentedChannel = FlightRecorderEvents.instrument(channel, field);
+        if(bufferPool == null)
+            this.protobufOutput = new BufferedChannelOutput(instrumentedChannel, DEFAULT_BUFFER_SIZE, false/*heap*/);
+        else/*pooled*/
+            this.protobufOutput = new BufferedChannelOutput(instrumentedChannel, bufferPool, writeBehindExecutor);
         this.field = field;
         final Path fieldPath = field.getPath()/*for convenience*/;
         this.unsetOffset = fieldPath.getParentQualifierCount(FieldQualifier.ONE/*required*/);
@@ -192,12 +544,23 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
                               fieldPath.getParentQualifierCount(FieldQualifier.ZERO_OR_ONE/*optional*/);
 
         this.notRequiredOnly = !((field.getQualifier() == FieldQualifier.ONE) && (unsetOffset == fieldPath.getParentPath().getDepth())/*only 'required' in parent path*/);
-
+        this.structure = (field instanceof StructureField);
+        this.enumSymbolTable = field.getEnumSymbolTable();
+        final IntegerEncoding integerEncoding = isIntegral(field) ? field.getIntegerEncoding() : IntegerEncoding.SIGNED/*not applicable*/;
+        this.fixedWidth = (fixedWidth && supportsFixedWidth(field)) || (integerEncoding == IntegerEncoding.FIXED);
+        this.unsigned = !this.fixedWidth && (integerEncoding == IntegerEncoding.UNSIGNED);
+        if(field.getQualifier() == FieldQualifier.ZERO_OR_MORE)
+            this.runOutput = new BufferedChannelOutput(INITIAL_RUN_BUFFER_SIZE)/*in-memory*/;
+        else/*not repeated*/
+            this.runOutput = null/*no runs*/;
+
+        final Object event = FlightRecorderEvents.STRIPE_OPEN.begin();
         try {
             writeHeader();
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
+        FlightRecorderEvents.STRIPE_OPEN.commit(event, fieldPath.toString(), FlightRecorderEvents.WRITE);
     }
 
     /**
@@ -210,10 +573,15 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
 
         final Path fieldPath = field.getPath()/*for convenience*/;
         protobufOutput.writeRawByte(field.getQualifier().ordinal());
-        protobufOutput.writeRawByte(primitiveTypeToConstantMap.get(field.getType()).ordinal());
+        protobufOutput.writeRawByte(getTypeConstant(field, (fixedWidth ? FIXED_WIDTH : (unsigned ? UNSIGNED : 0/*no flags*/))));
         protobufOutput.writeInt32NoTag(fieldPath.getDepth());
         protobufOutput.writeInt32NoTag(fieldPath.getParentQualifierCount(FieldQualifier.ZERO_OR_MORE/*repeated*/));
         protobufOutput.writeInt32NoTag(fieldPath.getParentQualifierCount(FieldQualifier.ZERO_OR_ONE/*optional*/));
+        if(enumSymbolTable != null) {
+            protobufOutput.writeUInt32NoTag(enumSymbolTable.getSymbolCount());
+            for(final String name : enumSymbolTable.getNames())
+                protobufOutput.writeStringNoTag(name);
+        } /* else -- not enumerated */
     }
 
     // ========================================================================
@@ -226,16 +594,55 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
     public void close() 
             throws OperationFailedException {
         if(closed) return;
+        final Object event = FlightRecorderEvents.STRIPE_CLOSE.begin();
+        boolean flushed = false/*until the remainder is written*/;
         try {
-            protobufOutput.flush()/*write remainder to output stream*/;
-            outputStream.close();
+            flushRun();
+            protobufOutput.close()/*writes the remainder to the channel*/;
+            flushed = true;
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         } finally {
             this.closed = true/*by definition*/;
+            // NOTE:  the statistics of a stripe that could not be written are
+            //        not written but their stream is still closed
+            if(!flushed) IOUtils.closeQuietly(statisticsOutputStream)/*null-safe*/;
+            /* else -- the statistics are written below */
+        }
+        FlightRecorderEvents.STRIPE_CLOSE.commit(event, field.getPath().toString(), FlightRecorderEvents.WRITE, getByteCount());
+
+        if(statisticsOutputStream == null) return/*statistics not written*/;
+        boolean written = false/*until the statistics are written*/;
+        try {
+            getStatistics().write(statisticsOutputStream);
+            statisticsOutputStream.close();
+            written = true;
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        } finally {
+            if(!written) IOUtils.closeQuietly(statisticsOutputStream);
+            /* else -- closed above */
         }
     }
 
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IByteCounted#getByteCount()
+     */
+    @Override
+    public long getByteCount() {
+        return protobufOutput.getByteCount();
+    }
+
+    /**
+     * @return the {@link StripeStatistics statistics} of the instructions that
+     *         have been written. The byte count only includes the data that
+     *         has been flushed to the underlying stream (i.e. it is complete
+     *         after {@link #close()}). This will never be <code>null</code>.
+     */
+    public StripeStatistics getStatistics() {
+        return statistics.toStatistics(getByteCount());
+    }
+
     // ========================================================================
     // meta-data
 
@@ -247,7 +654,9 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
             throws IllegalStateException, OperationFailedException {
         if(closed) throw new IllegalStateException("The binary field stripe writer has already been closed.")/*by contract*/;
         try {
+            flushRun();
             protobufOutput.writeTag(0/*not used*/, UNSET);
+            statistics.instruction(Kind.UNSET);
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
@@ -261,7 +670,9 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
             throws IllegalStateException, OperationFailedException {
         if(closed) throw new IllegalStateException("The binary field stripe writer has already been closed.")/*by contract*/;
         try {
+            flushRun();
             protobufOutput.writeTag((fieldDepth - unsetOffset), UNSET_PARENT);
+            statistics.instruction(Kind.UNSET_PARENT);
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
@@ -275,7 +686,11 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
             throws IllegalStateException, OperationFailedException {
         if(closed) throw new IllegalStateException("The binary field stripe writer has already been closed.")/*by contract*/;
         try {
-            protobufOutput.writeTag(0/*not used*/, REPEATED_VALUE);
+            if(runOutput != null)
+                runContinued = true/*the value is added to the run*/;
+            else/*not a repeated field*/
+                protobufOutput.writeTag(0/*not used*/, REPEATED_VALUE);
+            statistics.instruction(Kind.REPEATED_VALUE);
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
@@ -289,7 +704,9 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
             throws IllegalStateException, OperationFailedException {
         if(closed) throw new IllegalStateException("The binary field stripe writer has already been closed.")/*by contract*/;
         try {
+            flushRun();
             protobufOutput.writeTag((fieldDepth - repeatedOffset), REPEATED_PARENT);
+            statistics.instruction(Kind.REPEATED_PARENT);
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
@@ -324,8 +741,14 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
             throws IllegalStateException, OperationFailedException {
         if(closed) throw new IllegalStateException("The binary field stripe writer has already been closed.")/*by contract*/;
         try {
-            if(notRequiredOnly) protobufOutput.writeTag(0/*not used*/, VALUE);
-            protobufOutput.writeSInt32NoTag(value);
+            final BufferedChannelOutput output = startValue();
+            if(fixedWidth)
+                output.writeSFixed32NoTag(value);
+            else if(unsigned)
+                output.writeUInt32NoTag(value);
+            else/*signed var-len*/
+                output.writeSInt32NoTag(value);
+            statistics.value(value);
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
@@ -339,8 +762,14 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
             throws IllegalStateException, OperationFailedException {
         if(closed) throw new IllegalStateException("The binary field stripe writer has already been closed.")/*by contract*/;
         try {
-            if(notRequiredOnly) protobufOutput.writeTag(0/*not used*/, VALUE);
-            protobufOutput.writeSInt64NoTag(value);
+            final BufferedChannelOutput output = startValue();
+            if(fixedWidth)
+                output.writeSFixed64NoTag(value);
+            else if(unsigned)
+                output.writeUInt64NoTag(value);
+            else/*signed var-len*/
+                output.writeSInt64NoTag(value);
+            statistics.value(value);
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
@@ -354,8 +783,9 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
             throws IllegalStateException, OperationFailedException {
         if(closed) throw new IllegalStateException("The binary field stripe writer has already been closed.")/*by contract*/;
         try {
-            if(notRequiredOnly) protobufOutput.writeTag(0/*not used*/, VALUE);
-            protobufOutput.writeFloatNoTag(value);
+            final BufferedChannelOutput output = startValue();
+            output.writeFloatNoTag(value);
+            statistics.value(value);
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
@@ -369,8 +799,9 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
             throws IllegalStateException, OperationFailedException {
         if(closed) throw new IllegalStateException("The binary field stripe writer has already been closed.")/*by contract*/;
         try {
-            if(notRequiredOnly) protobufOutput.writeTag(0/*not used*/, VALUE);
-            protobufOutput.writeDoubleNoTag(value);
+            final BufferedChannelOutput output = startValue();
+            output.writeDoubleNoTag(value);
+            statistics.value(value);
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
@@ -384,8 +815,12 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
             throws IllegalStateException, OperationFailedException {
         if(closed) throw new IllegalStateException("The binary field stripe writer has already been closed.")/*by contract*/;
         try {
-            if(notRequiredOnly) protobufOutput.writeTag(0/*not used*/, VALUE);
-            protobufOutput.writeBoolNoTag(value);
+            final BufferedChannelOutput output = startValue();
+            // NOTE:  by contract only 'true' is written to a structure field
+            //        (which by definition is never required) so the instruction
+            //        alone is sufficient
+            if(!structure) output.writeBoolNoTag(value);
+            statistics.value(value ? 1L : 0L);
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
@@ -399,10 +834,69 @@ public class BinaryVLenFieldStripeWriter implements IFieldStripeWriter {
             throws IllegalStateException, OperationFailedException {
         if(closed) throw new IllegalStateException("The binary field stripe writer has already been closed.")/*by contract*/;
         try {
-            if(notRequiredOnly) protobufOutput.writeTag(0/*not used*/, VALUE);
-            protobufOutput.writeStringNoTag(value);
+            if(enumSymbolTable != null) {
+                final int ordinal = enumSymbolTable.getOrdinalForName(value);
+                if(ordinal == EnumSymbolTable.NONE) throw new InvalidDataException("Unknown symbol \"" + value + "\" for enum field \"" + field.getName() + "\".");
+                startValue().writeUInt32NoTag(ordinal);
+            } else/*not enumerated*/
+                startValue().writeStringNoTag(value);
+            statistics.value(value);
         } catch(final IOException ioe) {
             throw new OperationFailedException(ioe);
         }
     }
-}
\ No newline at end of file
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeValue(java.nio.ByteBuffer)
+     */
+    @Override
+    public void writeValue(final ByteBuffer value)
+            throws IllegalStateException, OperationFailedException {
+        if(closed) throw new IllegalStateException("The binary field stripe writer has already been closed.")/*by contract*/;
+        try {
+            final BufferedChannelOutput output = startValue();
+            output.writeUInt32NoTag(value.remaining());
+            output.writeRawBytes(value)/*position unchanged*/;
+            statistics.value(value);
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    // ========================================================================
+    // runs
+
+    /**
+     * Starts writing a value and returns the {@link BufferedChannelOutput} to which
+     * the value itself is written. The value of a repeated field is added to
+     * the current run (a new run is started if the value isn't a repeated value).
+     */
+    private BufferedChannelOutput startValue()
+            throws IOException {
+        if(runOutput == null) {/*not a repeated field*/
+            if(notRequiredOnly) protobufOutput.writeTag(0/*not used*/, VALUE);
+            return protobufOutput;
+        } /* else -- the field is repeated */
+
+        if(!runContinued) flushRun()/*the value starts a new run*/;
+        runContinued = false/*reset for next value*/;
+        runCount++;
+        return runOutput;
+    }
+
+    /**
+     * Writes the current run (if there is one) to the field-stripe. A run of a
+     * single value is written as a {@link Kind#VALUE}.
+     */
+    private void flushRun()
+            throws IOException {
+        if(runCount == 0) return/*no run*/;
+
+        if(runCount == 1)
+            protobufOutput.writeTag(0/*not used*/, VALUE);
+        else/*repeated values*/
+            protobufOutput.writeTag(runCount, REPEATED_VALUES);
+        runOutput.writeTo(protobufOutput)/*and discarded*/;
+        runCount = 0/*by definition*/;
+    }
+}
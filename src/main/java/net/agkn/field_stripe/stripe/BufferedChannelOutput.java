@@ -0,0 +1,600 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A buffered output to a {@link WritableByteChannel} that encodes values in the
+ * <a href="https://developers.google.com/protocol-buffers/docs/encoding">Protobuf encoding format</a>
+ * (the subset of <code>CodedOutputStream</code> that the field-stripe writers
+ * use) directly into its buffer. Nothing is allocated per value (including
+ * strings which are UTF-8 encoded directly into the buffer).<p/>
+ *
+ * The buffer is written to the channel only when it is full (or on {@link #flush()}
+ * or {@link #close()}) so the size of the buffer determines the number of
+ * writes. The buffer may be direct in which case the channel (e.g. a <code>FileChannel</code>)
+ * does not need to copy it before writing it. A value that is larger than half
+ * of the buffer and does not fit into it is not copied: it is written along
+ * with the buffer in a single gathering write (if the channel supports it).<p/>
+ *
+ * An output without a channel is an in-memory buffer that grows as needed.
+ * Its contents are moved to another output with {@link #writeTo(BufferedChannelOutput)}.
+ * An output may instead take its buffer from a {@link WriteBufferPool} in
+ * which case the buffer grows (when full) as long as the pool's budget allows.
+ * A pooled output may also write behind: its full buffers are written by the
+ * I/O threads of a {@link WriteBehindExecutor} while it fills another buffer
+ * (so that the encoding thread does not wait for the disk).
+ *
+ * @author rgrzywinski
+ * @see BinaryVLenFieldStripeWriter
+ */
+@NotThreadSafe
+public class BufferedChannelOutput {
+    // the smallest buffer size. Any single varint, fixed-width value or UTF-8
+    // encoded character must fit into the buffer.
+    public static final int MINIMUM_BUFFER_SIZE = 16;
+
+    // ************************************************************************
+    // the channel to which the buffer is written. This is null if the output
+    // is in-memory (in which case the buffer grows).
+    private final WritableByteChannel channel;
+    private final GatheringByteChannel gatheringChannel/*null if not gathering*/;
+
+    // the pool of the buffer (null if the buffer is not pooled)
+    private final WriteBufferPool pool;
+
+    // the buffers that are written behind and the maximum number of buffers
+    // (including the one being filled). The queue is null if the buffers are
+    // written synchronously.
+    private final WriteBehindQueue writeBehind;
+    private final int writeBehindDepth;
+
+    // the buffer in write mode (position is the next byte to be written). The
+    // buffer is little-endian for the fixed-width values.
+    private ByteBuffer buffer;
+
+    // the reused pair of buffers of a gathering write
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+
+    // the number of bytes written to the channel
+    private long byteCount = 0L;
+
+    // ========================================================================
+    /**
+     * @param  channel the <code>WritableByteChannel</code> to which the bytes
+     *         are written. This cannot be <code>null</code>.
+     * @param  bufferSize the size of the buffer in bytes. This must be at least
+     *         {@link #MINIMUM_BUFFER_SIZE}.
+     * @param  direct <code>true</code> if the buffer is a direct <code>ByteBuffer</code>.
+     *         <code>false</code> for a heap buffer.
+     */
+    public BufferedChannelOutput(final WritableByteChannel channel, final int bufferSize, final boolean direct) {
+        if(bufferSize < MINIMUM_BUFFER_SIZE) throw new IllegalArgumentException("The buffer size must be at least " + MINIMUM_BUFFER_SIZE + " bytes (" + bufferSize + ").");
+        this.channel = channel;
+        this.gatheringChannel = (channel instanceof GatheringByteChannel) ? (GatheringByteChannel)channel : null/*not gathering*/;
+        this.pool = null/*not pooled*/;
+        this.writeBehind = null/*synchronous*/;
+        this.writeBehindDepth = 1/*only the buffer being filled*/;
+        this.buffer = (direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @param  channel the <code>WritableByteChannel</code> to which the bytes
+     *         are written. This cannot be <code>null</code>.
+     * @param  pool the {@link WriteBufferPool} from which the buffer is taken
+     *         (and to which it is returned on {@link #close()}). This cannot
+     *         be <code>null</code>.
+     */
+    public BufferedChannelOutput(final WritableByteChannel channel, final WriteBufferPool pool) {
+        this(channel, pool, null/*synchronous*/);
+    }
+
+    /**
+     * @param  channel the <code>WritableByteChannel</code> to which the bytes
+     *         are written. This cannot be <code>null</code>.
+     * @param  pool the {@link WriteBufferPool} from which the buffers are taken
+     *         (and to which they are returned on {@link #close()}). This cannot
+     *         be <code>null</code>.
+     * @param  writeBehindExecutor the {@link WriteBehindExecutor} that writes
+     *         the full buffers to the channel. If <code>null</code> then the
+     *         buffers are written synchronously.
+     */
+    public BufferedChannelOutput(final WritableByteChannel channel, final WriteBufferPool pool, final WriteBehindExecutor writeBehindExecutor) {
+        this.channel = channel;
+        this.gatheringChannel = (channel instanceof GatheringByteChannel) ? (GatheringByteChannel)channel : null/*not gathering*/;
+        this.pool = pool;
+        if(writeBehindExecutor != null) {
+            this.writeBehind = writeBehindExecutor.createQueue(channel);
+            this.writeBehindDepth = writeBehindExecutor.getDepth();
+        } else {/*synchronous*/
+            this.writeBehind = null/*synchronous*/;
+            this.writeBehindDepth = 1/*only the buffer being filled*/;
+        }
+        this.buffer = pool.open(this);
+    }
+
+    /**
+     * An in-memory output whose (heap) buffer grows as needed.
+     *
+     * @param  initialSize the initial size of the buffer in bytes. This must
+     *         be at least {@link #MINIMUM_BUFFER_SIZE}.
+     */
+    public BufferedChannelOutput(final int initialSize) {
+        this(null/*in-memory*/, initialSize, false/*heap*/);
+    }
+
+    /**
+     * @param  outputStream the <code>OutputStream</code> to be adapted. This
+     *         cannot be <code>null</code>.
+     * @return a <code>WritableByteChannel</code> that writes to the specified
+     *         stream. Unlike <code>Channels.newChannel()</code> each write
+     *         of a heap buffer is a single write to the stream (without a
+     *         copy). This will never be <code>null</code>.
+     */
+    public static WritableByteChannel newChannel(final OutputStream outputStream) {
+        return new OutputStreamChannel(outputStream);
+    }
+
+    // ========================================================================
+    /**
+     * @return the number of bytes that have been written to the channel. This
+     *         does not include the bytes that are buffered (or that are being
+     *         written behind).
+     */
+    public long getByteCount() {
+        return (writeBehind == null) ? byteCount : (byteCount + writeBehind.getByteCount());
+    }
+
+    /**
+     * @return the number of bytes that are buffered (i.e. that have not been
+     *         written to the channel)
+     */
+    public int getBufferedByteCount() { return buffer.position(); }
+
+    /**
+     * @return the size of the buffer in bytes
+     */
+    /*package*/ int getBufferCapacity() { return buffer.capacity(); }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Writes the buffered bytes to the channel (waiting for the buffers that
+     * are being written behind). This has no effect on an in-memory output.
+     *
+     * @throws IOException if the bytes could not be written to the channel
+     *         (including a failure to write behind)
+     */
+    public void flush()
+            throws IOException {
+        if(channel == null) return/*in-memory*/;
+        drainWriteBehind();
+        buffer.flip();
+        while(buffer.hasRemaining())
+            byteCount += channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * {@link #flush() Flushes} the buffer and closes the channel. A pooled
+     * buffer is returned to its pool. Any failure to write behind is thrown.
+     *
+     * @throws IOException if the bytes could not be written or the channel
+     *         could not be closed
+     */
+    public void close()
+            throws IOException {
+        if(channel == null) return/*in-memory*/;
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                if(pool != null) {
+                    pool.close(this, buffer);
+                    // NOTE:  the output may no longer write to the buffer but
+                    //        an empty buffer ensures that a write fails
+                    buffer = ByteBuffer.allocate(0);
+                } /* else -- the buffer is not pooled */
+            }
+        }
+    }
+
+    /**
+     * {@link #flush() Flushes} the (pooled) buffer and replaces it with the
+     * specified smaller buffer. The buffer is returned to the pool.
+     *
+     * @param  smallerBuffer the buffer (in write mode and empty) that replaces
+     *         the current buffer. This cannot be <code>null</code>.
+     * @throws IOException if the bytes could not be written to the channel
+     * @see WriteBufferPool#grow(ByteBuffer)
+     */
+    /*package*/ void spill(final ByteBuffer smallerBuffer)
+            throws IOException {
+        flush();
+        pool.free(buffer);
+        buffer = smallerBuffer;
+    }
+
+    /**
+     * Writes the full buffer to the channel. If writing behind then the buffer
+     * is handed to the I/O threads and is replaced by a buffer of the same
+     * size (waiting for one to be written if all of the buffers are in use).
+     */
+    private void writeBuffer()
+            throws IOException {
+        if(writeBehind == null) {
+            flush();
+            return;
+        } /* else -- write behind */
+
+        final int capacity = buffer.capacity();
+        writeBehind.submit(buffer);
+        while(true) {
+            ByteBuffer nextBuffer = writeBehind.poll();
+            if(nextBuffer == null) {
+                // NOTE:  the pool only allocates a buffer within its budget
+                if((writeBehind.getOutstandingCount() + 1/*the next buffer*/) < writeBehindDepth)
+                    nextBuffer = pool.tryAcquire(capacity);
+                /* else -- all of the buffers are in use */
+                if(nextBuffer == null) nextBuffer = writeBehind.take()/*wait*/;
+            } /* else -- a buffer was written */
+
+            if(nextBuffer.capacity() == capacity) {
+                buffer = nextBuffer;
+                return;
+            } /* else -- the buffer is from before the buffer grew or shrank */
+            pool.free(nextBuffer);
+        }
+    }
+
+    /**
+     * Waits for all of the buffers that are being written behind to be written
+     * and frees them.
+     */
+    private void drainWriteBehind()
+            throws IOException {
+        if(writeBehind == null) return/*synchronous*/;
+        while(writeBehind.getOutstandingCount() > 0)
+            pool.free(writeBehind.take());
+    }
+
+    /**
+     * Writes the buffered bytes of this (typically in-memory) output to the
+     * specified output and then discards them.
+     *
+     * @param  output the output to which the bytes are written. This cannot be
+     *         <code>null</code> or this output.
+     * @throws IOException if the bytes could not be written
+     */
+    public void writeTo(final BufferedChannelOutput output)
+            throws IOException {
+        buffer.flip();
+        output.writeRawBytes(buffer);
+        buffer.clear();
+    }
+
+    // ========================================================================
+    // raw
+
+    /**
+     * Writes a single byte.
+     */
+    public void writeRawByte(final int value)
+            throws IOException {
+        ensureRemaining(1);
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Writes the specified bytes.
+     */
+    public void writeRawBytes(final byte[] value)
+            throws IOException {
+        writeRawBytes(value, 0, value.length);
+    }
+
+    /**
+     * Writes the specified range of bytes.
+     */
+    public void writeRawBytes(final byte[] value, final int offset, final int length)
+            throws IOException {
+        if(length <= buffer.remaining()) {
+            buffer.put(value, offset, length);
+            return;
+        } /* else -- the bytes do not fit */
+        if((channel == null) || (length < (buffer.capacity() >>> 1))) {/*in-memory or small*/
+            ensureRemaining(length);
+            buffer.put(value, offset, length);
+            return;
+        } /* else -- large */
+
+        // NOTE:  only a large value is wrapped (the wrapper is small compared
+        //        to the copy that it saves)
+        if(writeBehind == null)
+            writeThrough(ByteBuffer.wrap(value, offset, length));
+        else/*write behind*/
+            putChunked(ByteBuffer.wrap(value, offset, length));
+    }
+
+    /**
+     * Writes the bytes between the position and limit of the specified buffer.
+     * Its position is not changed.
+     */
+    public void writeRawBytes(final ByteBuffer value)
+            throws IOException {
+        final int position = value.position();
+        final int length = value.remaining();
+        if((length <= buffer.remaining()) || (channel == null) || (length < (buffer.capacity() >>> 1))) {/*fits, in-memory or small*/
+            ensureRemaining(length);
+            buffer.put(value);
+        } else if(writeBehind == null)/*large*/
+            writeThrough(value);
+        else/*large and written behind*/
+            putChunked(value);
+        value.position(position)/*by contract*/;
+    }
+
+    /**
+     * Copies the specified (large) value into the buffer writing the buffer
+     * each time that it is full. This is used when writing behind (since the
+     * value cannot be written while earlier buffers are being written).
+     */
+    private void putChunked(final ByteBuffer value)
+            throws IOException {
+        final int limit = value.limit();
+        while(value.hasRemaining()) {
+            if(!buffer.hasRemaining()) writeBuffer();
+            value.limit(Math.min(limit, (value.position() + buffer.remaining())));
+            buffer.put(value);
+            value.limit(limit);
+        }
+    }
+
+    /**
+     * Writes the buffered bytes and then the specified (large) value without
+     * copying the value into the buffer. The buffer is empty afterwards.
+     */
+    private void writeThrough(final ByteBuffer value)
+            throws IOException {
+        buffer.flip();
+        if(gatheringChannel != null) {
+            gather[0] = buffer;
+            gather[1] = value;
+            while(value.hasRemaining())
+                byteCount += gatheringChannel.write(gather);
+            gather[1] = null/*do not retain the value*/;
+        } else {/*not gathering*/
+            while(buffer.hasRemaining())
+                byteCount += channel.write(buffer);
+            while(value.hasRemaining())
+                byteCount += channel.write(value);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Ensures that there are at least the specified number of bytes remaining
+     * in the buffer by flushing it (or growing it if in-memory or if the pool
+     * allows).
+     */
+    private void ensureRemaining(final int length)
+            throws IOException {
+        if(buffer.remaining() >= length) return/*there is room*/;
+        if(pool != null) {
+            final ByteBuffer largerBuffer = pool.grow(buffer);
+            if(largerBuffer != null) {
+                buffer.flip();
+                largerBuffer.put(buffer);
+                pool.free(buffer);
+                buffer = largerBuffer;
+                if(buffer.remaining() >= length) return/*there is now room*/;
+            } /* else -- the buffer cannot grow */
+        } /* else -- the buffer is not pooled */
+        if(channel != null) {
+            writeBuffer();
+            if(buffer.remaining() >= length) return/*there is now room*/;
+            /* else -- larger than the buffer (only possible for raw bytes) */
+        } /* else -- in-memory */
+
+        final ByteBuffer newBuffer = ByteBuffer.allocate(Math.max((buffer.capacity() << 1), (buffer.position() + length))).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Writes the specified value as a varint. A negative value is treated as
+     * unsigned (i.e. it takes 5 bytes).
+     */
+    public void writeRawVarint32(int value)
+            throws IOException {
+        ensureRemaining(5/*max length*/);
+        while((value & ~0x7F) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Writes the specified value as a varint. A negative value is treated as
+     * unsigned (i.e. it takes 10 bytes).
+     */
+    public void writeRawVarint64(long value)
+            throws IOException {
+        ensureRemaining(10/*max length*/);
+        while((value & ~0x7FL) != 0L) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    // ========================================================================
+    // Protobuf
+
+    /**
+     * Writes the tag of the specified field number and wire type.
+     */
+    public void writeTag(final int fieldNumber, final int wireType)
+            throws IOException {
+        writeRawVarint32((fieldNumber << 3) | wireType);
+    }
+
+    /**
+     * Writes an int32 (a negative value is sign-extended to 10 bytes).
+     */
+    public void writeInt32NoTag(final int value)
+            throws IOException {
+        if(value >= 0)
+            writeRawVarint32(value);
+        else/*negative*/
+            writeRawVarint64(value);
+    }
+
+    public void writeUInt32NoTag(final int value) throws IOException { writeRawVarint32(value); }
+    public void writeSInt32NoTag(final int value) throws IOException { writeRawVarint32((value << 1) ^ (value >> 31)/*zigzag*/); }
+    public void writeUInt64NoTag(final long value) throws IOException { writeRawVarint64(value); }
+    public void writeSInt64NoTag(final long value) throws IOException { writeRawVarint64((value << 1) ^ (value >> 63)/*zigzag*/); }
+    public void writeBoolNoTag(final boolean value) throws IOException { writeRawByte(value ? 1 : 0); }
+
+    public void writeSFixed32NoTag(final int value)
+            throws IOException {
+        ensureRemaining(4);
+        buffer.putInt(value)/*little-endian*/;
+    }
+    public void writeSFixed64NoTag(final long value)
+            throws IOException {
+        ensureRemaining(8);
+        buffer.putLong(value)/*little-endian*/;
+    }
+    public void writeFloatNoTag(final float value)
+            throws IOException {
+        ensureRemaining(4);
+        buffer.putFloat(value)/*little-endian*/;
+    }
+    public void writeDoubleNoTag(final double value)
+            throws IOException {
+        ensureRemaining(8);
+        buffer.putDouble(value)/*little-endian*/;
+    }
+
+    /**
+     * Writes the specified string as its UTF-8 length (varint) followed by its
+     * UTF-8 encoding. The encoding is written directly into the buffer. Unpaired
+     * surrogates are replaced with '?' (as is done by {@link String#getBytes(String)}).
+     */
+    public void writeStringNoTag(final String value)
+            throws IOException {
+        final int length = value.length();
+        writeRawVarint32(utf8Length(value));
+        for(int i=0; i<length; i++) {
+            ensureRemaining(4/*max length*/);
+            final char character = value.charAt(i);
+            if(character < 0x80) {
+                buffer.put((byte)character);
+            } else if(character < 0x800) {
+                buffer.put((byte)(0xC0 | (character >> 6)));
+                buffer.put((byte)(0x80 | (character & 0x3F)));
+            } else if(Character.isHighSurrogate(character) && (i + 1 < length) && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(character, value.charAt(++i));
+                buffer.put((byte)(0xF0 | (codePoint >> 18)));
+                buffer.put((byte)(0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte)(0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte)(0x80 | (codePoint & 0x3F)));
+            } else if(Character.isHighSurrogate(character) || Character.isLowSurrogate(character)) {
+                buffer.put((byte)'?'/*unpaired surrogate*/);
+            } else {
+                buffer.put((byte)(0xE0 | (character >> 12)));
+                buffer.put((byte)(0x80 | ((character >> 6) & 0x3F)));
+                buffer.put((byte)(0x80 | (character & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * @return the length of the UTF-8 encoding of the specified string (as
+     *         written by {@link #writeStringNoTag(String)})
+     */
+    private static int utf8Length(final String value) {
+        final int length = value.length();
+        int utf8Length = length/*at least one byte per character*/;
+        for(int i=0; i<length; i++) {
+            final char character = value.charAt(i);
+            if(character < 0x80) continue/*one byte*/;
+            if(character < 0x800)
+                utf8Length += 1;
+            else if(Character.isHighSurrogate(character) && (i + 1 < length) && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 2/*four bytes for two characters*/;
+                i++;
+            } else if(Character.isHighSurrogate(character) || Character.isLowSurrogate(character))
+                continue/*'?'*/;
+            else
+                utf8Length += 2;
+        }
+        return utf8Length;
+    }
+
+    // ************************************************************************
+    /**
+     * A <code>WritableByteChannel</code> that writes to an <code>OutputStream</code>.
+     * A heap buffer is written directly from its array. Other buffers are
+     * copied through a reused array.
+     */
+    private static final class OutputStreamChannel implements WritableByteChannel {
+        private final OutputStream outputStream;
+        private byte[] scratch = new byte[0]/*grown as needed*/;
+        private boolean open = true;
+
+        public OutputStreamChannel(final OutputStream outputStream) { this.outputStream = outputStream; }
+
+        @Override
+        public int write(final ByteBuffer source)
+                throws IOException {
+            final int length = source.remaining();
+            if(source.hasArray())
+                outputStream.write(source.array(), (source.arrayOffset() + source.position()), length);
+            else {/*direct or read-only*/
+                if(scratch.length < length) scratch = new byte[length];
+                source.duplicate().get(scratch, 0, length);
+                outputStream.write(scratch, 0, length);
+            }
+            source.position(source.limit())/*all bytes written*/;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() { return open; }
+
+        @Override
+        public void close()
+                throws IOException {
+            open = false;
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.protobuf.CompiledSchemaCache;
+import net.jcip.annotations.Immutable;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * The manifest of a data set that was encoded in chunks (see {@link net.agkn.field_stripe.encode.ParallelRecordEncoder}).
+ * Each chunk is its own stripe set (with its own {@link StripeSetManifest manifest})
+ * in a sub-directory of the base path. This manifest is written in the base
+ * path (as {@link #FILENAME}) once all of the chunks are encoded. It contains
+ * the resolved schema, whether the chunks were encoded with sparse subtrees,
+ * the total number of records and the location and number of records of each
+ * chunk in record order so that the chunks can be decoded as one data set.<p/>
+ *
+ * The structure of the manifest is:<p/>
+ * <pre>
+ *   5 bytes: magic number ('fschk')
+ *   1 byte: version number (0 is reserved)
+ *   bytes (vlen uint32 length): the schema (see {@link CompiledSchemaCache#write(ICompositeType, OutputStream)})
+ *   1 byte: 1 if the chunks were encoded with sparse subtrees, 0 otherwise
+ *   vlen uint64: number of records
+ *   vlen uint32: number of chunks
+ *   for each chunk (in record order):
+ *     string: the location of the chunk's stripe set relative to the base path
+ *     vlen uint64: the number of records in the chunk
+ * </pre>
+ *
+ * All values are written using the <a href="https://developers.google.com/protocol-buffers/docs/encoding">Protobuf encoding format</a>.
+ *
+ * @author rgrzywinski
+ * @see StripeSetManifest
+ */
+@Immutable
+public class ChunkSetManifest {
+    // the magic number used to identify chunk manifests
+    public static final byte[] MAGIC = { 'f', 's', 'c', 'h', 'k' };
+
+    // the version of the manifest
+    public static final byte VERSION = 1/*0 is reserved*/;
+
+    // the name of the manifest file in the base path of the data set
+    // NOTE:  this differs from StripeSetManifest#FILENAME so that a path is
+    //        either a stripe set or a set of chunks
+    public static final String FILENAME = "chunks.fsmanifest";
+
+    // ************************************************************************
+    /**
+     * A chunk (stripe set) of the data set.
+     */
+    @Immutable
+    public static class Chunk {
+        private final String location;
+        private final long recordCount;
+
+        /*package*/ Chunk(final String location, final long recordCount) {
+            this.location = location;
+            this.recordCount = recordCount;
+        }
+
+        /**
+         * @return the location of the chunk's stripe set relative to the base
+         *         path of the data set. This will never be <code>null</code>.
+         */
+        public String getLocation() { return location; }
+
+        /**
+         * @return the number of records in the chunk
+         */
+        public long getRecordCount() { return recordCount; }
+
+        /**
+         * @param  fsPath the base path of the data set. This cannot be <code>null</code>.
+         * @return the base path of the chunk's stripe set. This will never be
+         *         <code>null</code>.
+         */
+        public File getPath(final File fsPath) { return new File(fsPath, location); }
+    }
+
+    // ************************************************************************
+    private final ICompositeType schema;
+    private final boolean sparseSubtrees;
+    private final List<Chunk> chunks;
+
+    // ========================================================================
+    /*package*/ ChunkSetManifest(final ICompositeType schema, final boolean sparseSubtrees, final List<Chunk> chunks) {
+        this.schema = schema;
+        this.sparseSubtrees = sparseSubtrees;
+        this.chunks = Collections.unmodifiableList(new ArrayList<Chunk>(chunks));
+    }
+
+    /**
+     * Creates the manifest of the specified chunks from the {@link StripeSetManifest manifest}
+     * of each.
+     *
+     * @param  fsPath the base path of the data set. This cannot be <code>null</code>.
+     * @param  schema the schema of the records in the chunks. This cannot be
+     *         <code>null</code>.
+     * @param  sparseSubtrees <code>true</code> if and only if the chunks were
+     *         encoded with sparse subtrees
+     * @param  locations the locations of the stripe sets of the chunks relative
+     *         to the base path in record order. This cannot be <code>null</code>
+     *         but may be empty.
+     * @return the manifest. This will never be <code>null</code>.
+     * @throws OperationFailedException if the manifest of any chunk does not
+     *         exist, could not be read or has structure stripes when the
+     *         chunks are not sparse.
+     */
+    public static ChunkSetManifest create(final File fsPath, final ICompositeType schema, final boolean sparseSubtrees, final List<String> locations)
+            throws OperationFailedException {
+        final List<Chunk> chunks = new ArrayList<Chunk>(locations.size());
+        for(final String location : locations) {
+            final StripeSetManifest manifest = StripeSetManifest.read(new File(fsPath, location));
+            // NOTE:  a stripe set is only known to be sparse if its schema has
+            //        a sparse node (see StripeSetManifest#isSparseSubtrees())
+            if(manifest.isSparseSubtrees() && !sparseSubtrees) throw new InvalidDataException("Unexpected structure stripes in chunk \"" + location + "\" that is not sparse.");
+            chunks.add(new Chunk(location, manifest.getRecordCount()));
+        }
+        return new ChunkSetManifest(schema, sparseSubtrees, chunks);
+    }
+
+    // ========================================================================
+    /**
+     * @return the resolved schema of the records in the data set. This will
+     *         never be <code>null</code>.
+     */
+    public ICompositeType getSchema() { return schema; }
+
+    /**
+     * @return <code>true</code> if and only if the chunks were encoded with
+     *         sparse subtrees
+     * @see StripeSetManifest#isSparseSubtrees()
+     */
+    public boolean isSparseSubtrees() { return sparseSubtrees; }
+
+    /**
+     * @return the chunks of the data set in record order. This will never be
+     *         <code>null</code>.
+     */
+    public List<Chunk> getChunks() { return chunks; }
+
+    /**
+     * @return the total number of records in all of the chunks
+     */
+    public long getRecordCount() {
+        long recordCount = 0L;
+        for(final Chunk chunk : chunks)
+            recordCount += chunk.getRecordCount();
+        return recordCount;
+    }
+
+    // ========================================================================
+    /**
+     * Reads the {@link StripeSetManifest manifest} of the specified chunk and
+     * {@link StripeSetManifest#validate(File) validates} it against this
+     * manifest.
+     *
+     * @param  fsPath the base path of the data set. This cannot be <code>null</code>.
+     * @param  chunk the chunk (of this manifest) whose manifest is read. This
+     *         cannot be <code>null</code>.
+     * @return the manifest of the chunk's stripe set. This will never be <code>null</code>.
+     * @throws OperationFailedException if the manifest of the chunk could not
+     *         be read or if it or any of its stripes do not match.
+     */
+    public StripeSetManifest readChunkManifest(final File fsPath, final Chunk chunk)
+            throws OperationFailedException {
+        final File chunkPath = chunk.getPath(fsPath);
+        final StripeSetManifest manifest = StripeSetManifest.read(chunkPath);
+        if(manifest.getRecordCount() != chunk.getRecordCount()) throw new InvalidDataException("Unexpected number of records in chunk \"" + chunk.getLocation() + "\" (" + manifest.getRecordCount() + " != " + chunk.getRecordCount() + ").");
+        if(manifest.isSparseSubtrees() && !sparseSubtrees) throw new InvalidDataException("Unexpected structure stripes in chunk \"" + chunk.getLocation() + "\" that is not sparse.");
+        manifest.validate(chunkPath);
+        return manifest;
+    }
+
+    // ========================================================================
+    /**
+     * @param  fsPath the base path of a data set. This cannot be <code>null</code>.
+     * @return <code>true</code> if and only if the data set in the specified
+     *         path was encoded in chunks (and has a chunk manifest)
+     */
+    public static boolean exists(final File fsPath) {
+        return new File(fsPath, FILENAME).isFile();
+    }
+
+    /**
+     * Writes this manifest into the base path of the data set.
+     *
+     * @param  fsPath the base path of the data set. This cannot be <code>null</code>.
+     * @throws OperationFailedException if the manifest could not be written for
+     *         any reason. Subclasses may contain additional information as to
+     *         the nature of the failure.
+     */
+    public void write(final File fsPath)
+            throws OperationFailedException {
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(new File(fsPath, FILENAME));
+            write(outputStream);
+            outputStream.close();
+            outputStream = null/*closed*/;
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        } finally {
+            IOUtils.closeQuietly(outputStream);
+        }
+    }
+
+    /**
+     * Writes this manifest to the specified stream. The stream is flushed but
+     * not closed.
+     *
+     * @param  outputStream the stream to which the manifest is written. This
+     *         cannot be <code>null</code>.
+     * @throws OperationFailedException if the manifest could not be written for
+     *         any reason. Subclasses may contain additional information as to
+     *         the nature of the failure.
+     */
+    public void write(final OutputStream outputStream)
+            throws OperationFailedException {
+        final ByteArrayOutputStream schemaOutputStream = new ByteArrayOutputStream();
+        CompiledSchemaCache.write(schema, schemaOutputStream);
+
+        final CodedOutputStream protobufOutput = CodedOutputStream.newInstance(outputStream);
+        try {
+            protobufOutput.writeRawBytes(MAGIC);
+            protobufOutput.writeRawByte(VERSION);
+            final byte[] schemaBytes = schemaOutputStream.toByteArray();
+            protobufOutput.writeRawVarint32(schemaBytes.length);
+            protobufOutput.writeRawBytes(schemaBytes);
+            protobufOutput.writeRawByte(sparseSubtrees ? 1 : 0);
+            protobufOutput.writeUInt64NoTag(getRecordCount());
+            protobufOutput.writeUInt32NoTag(chunks.size());
+            for(final Chunk chunk : chunks) {
+                protobufOutput.writeStringNoTag(chunk.getLocation());
+                protobufOutput.writeUInt64NoTag(chunk.getRecordCount());
+            }
+            protobufOutput.flush();
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @param  fsPath the base path of the data set. This cannot be <code>null</code>.
+     * @return the chunk manifest of the data set in the specified path. This
+     *         will never be <code>null</code>.
+     * @throws OperationFailedException if the manifest does not exist or could
+     *         not be read for any reason. Subclasses may contain additional
+     *         information as to the nature of the failure.
+     */
+    public static ChunkSetManifest read(final File fsPath)
+            throws OperationFailedException {
+        final File manifestFile = new File(fsPath, FILENAME);
+        if(!manifestFile.isFile()) throw new OperationFailedException("The chunk manifest does not exist or is not a file: " + manifestFile);
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(manifestFile);
+            return read(inputStream);
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * @param  inputStream the stream from which the manifest is read. This
+     *         cannot be <code>null</code>. It is not closed.
+     * @return the manifest read from the specified stream. This will never be
+     *         <code>null</code>.
+     * @throws OperationFailedException if the manifest could not be read for
+     *         any reason or is inconsistent. Subclasses may contain additional
+     *         information as to the nature of the failure.
+     */
+    public static ChunkSetManifest read(final InputStream inputStream)
+            throws OperationFailedException {
+        final CodedInputStream protobufInput = CodedInputStream.newInstance(inputStream);
+        try {
+            final byte[] magicNumber = protobufInput.readRawBytes(MAGIC.length/*length*/);
+            if(!Arrays.equals(magicNumber, MAGIC)) throw new InvalidDataException("Unexpected chunk manifest header.");
+            final int version = protobufInput.readRawByte();
+            if(version != VERSION) throw new InvalidDataException("Unknown version number (" + version + " != " + VERSION + ").");
+
+            final byte[] schemaBytes = protobufInput.readRawBytes(protobufInput.readRawVarint32());
+            final ICompositeType schema = CompiledSchemaCache.read(new ByteArrayInputStream(schemaBytes));
+            final boolean sparseSubtrees = (protobufInput.readRawByte() != 0);
+            final long recordCount = protobufInput.readRawVarint64();
+            final int chunkCount = protobufInput.readRawVarint32();
+            final List<Chunk> chunks = new ArrayList<Chunk>(chunkCount);
+            for(int i=0; i<chunkCount; i++) {
+                final String location = protobufInput.readString();
+                final long chunkRecordCount = protobufInput.readRawVarint64();
+                chunks.add(new Chunk(location, chunkRecordCount));
+            }
+            final ChunkSetManifest manifest = new ChunkSetManifest(schema, sparseSubtrees, chunks);
+            if(manifest.getRecordCount() != recordCount) throw new InvalidDataException("Unexpected number of records (" + manifest.getRecordCount() + " != " + recordCount + ").");
+            return manifest;
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.EXTENSION;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import net.agkn.field_stripe.exception.DeveloperException;
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.jcip.annotations.NotThreadSafe;
+
+import com.google.protobuf.CodedInputStream;
+
+/**
+ * Random access to the values of a {@link BinaryVLenFieldStripeWriter#supportsFixedWidth(IField) fixed-width}
+ * binary field-stripe. Since the field is required and has only required
+ * parents, there is exactly one value per record and the index of a value is
+ * the index of its record. The field-stripe is memory mapped and each value
+ * is read in constant time without reading any other values.<p/>
+ *
+ * The int and long field-stripes must be written {@link BinaryVLenFieldStripeWriter#FIXED_WIDTH fixed-width}
+ * (e.g. with <code>-Dnet.agkn.field_stripe.fixedWidth=true</code>) since their
+ * values are otherwise var-len. The float and double values of a required-only
+ * field are always written raw so their field-stripes are fixed-width either way.<p/>
+ *
+ * Field-stripes larger than 2GB are not supported.
+ *
+ * @author rgrzywinski
+ * @see BinaryVLenFieldStripeWriter#createFactory(File, boolean)
+ */
+// NOTE:  not thread-safe only because the underlying ByteBuffer is not
+@NotThreadSafe
+public class FixedWidthFieldStripe {
+    // the maximum length of the field-stripe header (magic number, version,
+    // qualifier, type and three vlen uint32's)
+    private static final int MAX_HEADER_LENGTH = BinaryVLenFieldStripeWriter.MAGIC.length + 3 + (3 * 5);
+
+    // ************************************************************************
+    private final IField field;
+    private final PrimitiveType type;
+
+    // the (little-endian) values of the field-stripe (i.e. without the header)
+    private final ByteBuffer values;
+
+    // the width of each value in bytes and the number of values
+    private final int width;
+    private final int valueCount;
+
+    // ========================================================================
+    /**
+     * Opens the field-stripe of the specified field in the specified path
+     * (as written by {@link BinaryVLenFieldStripeWriter#createFactory(File, boolean)}).
+     *
+     * @param  fsPath the base path to where the field-stripes are. This cannot
+     *         be <code>null</code>.
+     * @param  field the {@link IField} whose field-stripe is opened. This cannot
+     *         be <code>null</code>.
+     * @return the random access field-stripe. This will never be <code>null</code>.
+     * @throws OperationFailedException if the field-stripe does not exist, cannot
+     *         be read, does not match the field or is not fixed-width.
+     *         Subclasses may provide more information as to the nature of the
+     *         failure.
+     */
+    public static FixedWidthFieldStripe open(final File fsPath, final IField field)
+            throws OperationFailedException {
+        File fieldStripeFSPath = fsPath;
+        for(final IField pathField : field.getPath().getParentPath())
+            fieldStripeFSPath = new File(fieldStripeFSPath, pathField.getName());
+        fieldStripeFSPath = new File(fieldStripeFSPath, (field.getName() + EXTENSION));
+        if(!fieldStripeFSPath.isFile()) throw new OperationFailedException("The field stripe does not exist or is not a file: " + fieldStripeFSPath);
+
+        return new FixedWidthFieldStripe(fieldStripeFSPath, field);
+    }
+
+    // ========================================================================
+    /**
+     * The header is read and validated and the values are mapped.
+     *
+     * @param  fieldStripeFile the field-stripe file. This cannot be <code>null</code>.
+     * @param  field the {@link IField} of the field-stripe. This cannot be
+     *         <code>null</code>.
+     * @throws OperationFailedException if the field-stripe cannot be read,
+     *         does not match the field or is not fixed-width. Subclasses may
+     *         provide more information as to the nature of the failure.
+     */
+    public FixedWidthFieldStripe(final File fieldStripeFile, final IField field)
+            throws OperationFailedException {
+        this.field = field;
+        this.type = (PrimitiveType)field.getType();
+        switch(type) {
+            case INT:
+            case FLOAT:
+                width = 4/*bytes*/;
+                break;
+            case LONG:
+            case DOUBLE:
+                width = 8/*bytes*/;
+                break;
+            default:
+                throw new OperationFailedException("Field \"" + field.getName() + "\" cannot be fixed-width.");
+        }
+
+        final ByteBuffer buffer;
+        try {
+            final RandomAccessFile file = new RandomAccessFile(fieldStripeFile, "r");
+            try {
+                final FileChannel channel = file.getChannel();
+                if(channel.size() > Integer.MAX_VALUE) throw new OperationFailedException("The field stripe is too large to be mapped: " + fieldStripeFile);
+                // NOTE:  the mapping remains valid after the file is closed
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+            } finally {
+                file.close();
+            }
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+
+        // read the header from its bytes to determine its length
+        final byte[] header = new byte[Math.min(MAX_HEADER_LENGTH, buffer.remaining())];
+        buffer.get(header);
+        final CodedInputStream protobufInput = CodedInputStream.newInstance(header);
+        // NOTE:  the values of a field that is not required-only may be
+        //        fixed-width (e.g. a Protobuf fixed64) but they cannot be
+        //        randomly accessed
+        if(!BinaryVLenFieldStripeWriter.supportsFixedWidth(field)) throw new InvalidDataException("The field stripe of field \"" + field.getName() + "\" is not fixed-width.");
+        final int typeFlags = BinaryVLenFieldStripeReader.readValidateHeader(protobufInput, field);
+        // NOTE:  required-only float and double values are written raw (and
+        //        without any meta-data) whether or not FIXED_WIDTH is set
+        if(((typeFlags & BinaryVLenFieldStripeWriter.FIXED_WIDTH) == 0) && (type != PrimitiveType.FLOAT) && (type != PrimitiveType.DOUBLE))
+            throw new InvalidDataException("The field stripe of field \"" + field.getName() + "\" is not fixed-width.");
+        /* else -- the values are fixed-width */
+
+        buffer.position(protobufInput.getTotalBytesRead());
+        this.values = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if((values.remaining() % width) != 0) throw new InvalidDataException("The field stripe of field \"" + field.getName() + "\" is truncated.");
+        this.valueCount = (values.remaining() / width);
+    }
+
+    // ========================================================================
+    /**
+     * @return the {@link IField field} of the field-stripe. This will never
+     *         be <code>null</code>.
+     */
+    public IField getField() { return field; }
+
+    /**
+     * @return the number of values (which is the number of records) in the
+     *         field-stripe.
+     */
+    public int getValueCount() { return valueCount; }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @param  recordIndex the 0-based index of the record whose value is returned.
+     *         This must be less than the {@link #getValueCount() value count}.
+     * @return the value of the specified record. The field must be an int field.
+     */
+    public int getInt(final int recordIndex) {
+        checkType(PrimitiveType.INT);
+        return values.getInt(recordIndex * width);
+    }
+
+    /**
+     * @param  recordIndex the 0-based index of the record whose value is returned.
+     *         This must be less than the {@link #getValueCount() value count}.
+     * @return the value of the specified record. The field must be an int or
+     *         long field.
+     */
+    public long getLong(final int recordIndex) {
+        if(type == PrimitiveType.INT) return getInt(recordIndex);
+        checkType(PrimitiveType.LONG);
+        return values.getLong(recordIndex * width);
+    }
+
+    /**
+     * @param  recordIndex the 0-based index of the record whose value is returned.
+     *         This must be less than the {@link #getValueCount() value count}.
+     * @return the value of the specified record. The field must be a float field.
+     */
+    public float getFloat(final int recordIndex) {
+        checkType(PrimitiveType.FLOAT);
+        return values.getFloat(recordIndex * width);
+    }
+
+    /**
+     * @param  recordIndex the 0-based index of the record whose value is returned.
+     *         This must be less than the {@link #getValueCount() value count}.
+     * @return the value of the specified record. The field must be a float or
+     *         double field.
+     */
+    public double getDouble(final int recordIndex) {
+        if(type == PrimitiveType.FLOAT) return getFloat(recordIndex);
+        checkType(PrimitiveType.DOUBLE);
+        return values.getDouble(recordIndex * width);
+    }
+
+    /**
+     * Ensures that the field is of the specified type.
+     */
+    private void checkType(final PrimitiveType expectedType) {
+        if(type != expectedType) throw new DeveloperException("Field \"" + field.getName() + "\" is of type " + type + " not " + expectedType + ".");
+    }
+}
@@ -0,0 +1,199 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A HyperLogLog sketch that estimates the number of distinct values that have
+ * been {@link #add(long) added} to it. The sketch has 2<sup>log2m</sup> one-byte
+ * registers and a relative standard error of approximately 1.04 / sqrt(2<sup>log2m</sup>)
+ * (e.g. 2.3% for the {@link #DEFAULT_LOG2M default} of 2048 registers).
+ * Small cardinalities are estimated with linear counting.<p/>
+ *
+ * Values are added as 64-bit hashes which are computed with {@link #hash(long)}
+ * or {@link #hash(String)}.
+ *
+ * @author rgrzywinski
+ * @see StripeStatistics
+ */
+@NotThreadSafe
+public class HyperLogLog {
+    // the supported range of log2(number of registers)
+    public static final int MIN_LOG2M = 4;
+    public static final int MAX_LOG2M = 16;
+    public static final int DEFAULT_LOG2M = 11;
+
+    // ************************************************************************
+    private final int log2m;
+    private final byte[] registers;
+
+    // ========================================================================
+    /**
+     * Creates an empty sketch with the {@link #DEFAULT_LOG2M default} number
+     * of registers.
+     */
+    public HyperLogLog() {
+        this(DEFAULT_LOG2M);
+    }
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param  log2m the log-base-2 of the number of registers. This must be
+     *         between {@link #MIN_LOG2M} and {@link #MAX_LOG2M} inclusive.
+     */
+    public HyperLogLog(final int log2m) {
+        this(log2m, new byte[1 << validateLog2m(log2m)]);
+    }
+
+    /**
+     * @param  log2m the log-base-2 of the number of registers. This must be
+     *         between {@link #MIN_LOG2M} and {@link #MAX_LOG2M} inclusive.
+     * @param  registers the registers of the sketch. This cannot be <code>null</code>
+     *         and its length must be 2<sup>log2m</sup>. It is not copied.
+     */
+    /*package*/ HyperLogLog(final int log2m, final byte[] registers) {
+        validateLog2m(log2m);
+        if(registers.length != (1 << log2m)) throw new IllegalArgumentException("The number of registers (" + registers.length + ") does not match log2m (" + log2m + ").");
+        this.log2m = log2m;
+        this.registers = registers;
+    }
+
+    /**
+     * @return the specified log2m if it is valid
+     * @throws IllegalArgumentException if the specified log2m is not valid
+     */
+    private static int validateLog2m(final int log2m) {
+        if((log2m < MIN_LOG2M) || (log2m > MAX_LOG2M)) throw new IllegalArgumentException("The log2m must be between " + MIN_LOG2M + " and " + MAX_LOG2M + " (" + log2m + ").");
+        return log2m;
+    }
+
+    // ========================================================================
+    /**
+     * @param  value the value to be hashed
+     * @return a well-distributed 64-bit hash of the specified value (the
+     *         MurmurHash3 64-bit finalizer)
+     */
+    public static long hash(final long value) {
+        long hash = value;
+        hash ^= (hash >>> 33);
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= (hash >>> 33);
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= (hash >>> 33);
+        return hash;
+    }
+
+    /**
+     * @param  value the value to be hashed. This cannot be <code>null</code>.
+     * @return a well-distributed 64-bit hash of the specified value
+     */
+    public static long hash(final String value) {
+        // FNV-1a over the characters then finalized since FNV alone has poor
+        // avalanche in the high bits (which select the register)
+        long hash = 0xCBF29CE484222325L;
+        for(int i=0; i<value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash(hash ^ value.length());
+    }
+
+    /**
+     * @param  value the bytes to be hashed (those between the position and the
+     *         limit). This cannot be <code>null</code>. Its position is not
+     *         changed.
+     * @return a well-distributed 64-bit hash of the specified bytes
+     */
+    public static long hash(final ByteBuffer value) {
+        // NOTE:  see #hash(String)
+        long hash = 0xCBF29CE484222325L;
+        final int limit = value.limit();
+        for(int i=value.position(); i<limit; i++) {
+            hash ^= (value.get(i) & 0xFF);
+            hash *= 0x100000001B3L;
+        }
+        return hash(hash ^ value.remaining());
+    }
+
+    // ========================================================================
+    /**
+     * @param  hash the 64-bit {@link #hash(long) hash} of the value to add
+     */
+    public void add(final long hash) {
+        final int index = (int)(hash >>> (64 - log2m));
+        // NOTE:  the sentinel bit bounds the run of zeros by the number of
+        //        remaining bits
+        final int rank = Long.numberOfLeadingZeros((hash << log2m) | (1L << (log2m - 1))) + 1;
+        if(rank > registers[index]) registers[index] = (byte)rank;
+        /* else -- the register already has a greater rank */
+    }
+
+    /**
+     * Adds all of the values of the specified sketch to this sketch.
+     *
+     * @param  sketch the sketch to be merged into this sketch. This cannot be
+     *         <code>null</code> and must have the same number of registers.
+     */
+    public void merge(final HyperLogLog sketch) {
+        if(sketch.log2m != log2m) throw new IllegalArgumentException("Sketches must have the same log2m (" + sketch.log2m + " != " + log2m + ").");
+        for(int i=0; i<registers.length; i++)
+            if(sketch.registers[i] > registers[i]) registers[i] = sketch.registers[i];
+    }
+
+    /**
+     * @return the estimated number of distinct values that have been added
+     */
+    public long cardinality() {
+        final int registerCount = registers.length;
+        double sum = 0.0;
+        int zeroCount = 0;
+        for(final byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if(register == 0) zeroCount++;
+        }
+        final double alpha = 0.7213 / (1.0 + 1.079 / registerCount);
+        final double estimate = alpha * registerCount * registerCount / sum;
+        if((estimate <= (2.5 * registerCount)) && (zeroCount > 0))
+            return Math.round(registerCount * Math.log((double)registerCount / zeroCount))/*linear counting*/;
+        /* else -- the raw estimate is accurate */
+        return Math.round(estimate);
+    }
+
+    // ========================================================================
+    /**
+     * @return the log-base-2 of the number of registers
+     */
+    public int getLog2m() { return log2m; }
+
+    /**
+     * @return the registers of this sketch. This will never be <code>null</code>.
+     *         This is not a copy and must not be modified.
+     */
+    /*package*/ byte[] getRegisters() { return registers; }
+
+    /**
+     * @return a copy of this sketch. This will never be <code>null</code>.
+     */
+    public HyperLogLog copy() {
+        return new HyperLogLog(log2m, Arrays.copyOf(registers, registers.length));
+    }
+}
@@ -0,0 +1,34 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Implemented by {@link IFieldStripeWriter field-stripe writers} and 
+ * {@link IFieldStripeReader readers} that know the number of bytes that they
+ * have written to or read from their underlying storage.
+ *
+ * @author rgrzywinski
+ */
+public interface IByteCounted {
+    /**
+     * @return the number of bytes written to (or read from) the underlying
+     *         storage. Buffered data is not included until it is flushed 
+     *         (e.g. when a writer is closed) or, for readers, data that has
+     *         been buffered but not yet read is included.
+     */
+    long getByteCount();
+}
@@ -49,4 +49,16 @@ public interface IFieldStripeReader {
      */
     Instruction readInstruction()
         throws OperationFailedException;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Closes this reader (and its underlying resources). The reader cannot be
+     * used after it has been closed. Closing a closed reader has no effect.
+     * 
+     * @throws OperationFailedException if the reader could not be closed for
+     *         any reason. Subclasses may provide more information as to the
+     *         nature of the failure.
+     */
+    void close()
+        throws OperationFailedException;
 }
\ No newline at end of file
@@ -41,4 +41,19 @@ public interface IFieldStripeReaderFactory {
      */
     IFieldStripeReader createFieldStripeReader(IField field)
         throws OperationFailedException;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Closes all {@link IFieldStripeReader field-stripe readers} that have been
+     * {@link #createFieldStripeReader(IField) created} by this factory and haven't
+     * already been closed. Closing a closed reader has no effect. This should
+     * be called once the readers have been read (e.g. once a stripe set has
+     * been decoded) so that their underlying resources are not held until
+     * they are garbage collected.
+     * 
+     * @see #createFieldStripeReader(IField)
+     * @see IFieldStripeReader#close()
+     */
+    void closeAllReaders()
+        throws OperationFailedException;
 }
\ No newline at end of file
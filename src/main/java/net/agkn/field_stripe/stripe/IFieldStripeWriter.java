@@ -16,8 +16,11 @@ package net.agkn.field_stripe.stripe;
  * limitations under the License. 
  */
 
+import java.nio.ByteBuffer;
+
 import net.agkn.field_stripe.encode.IFieldStripeEncoder;
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.PrimitiveType;
 
 /**
  * A writer for field stripes. The interface exposes all possible instructions
@@ -199,5 +202,18 @@ public interface IFieldStripeWriter {
     void writeValue(String value)
         throws IllegalStateException, OperationFailedException;
 
-    // CHECK:  provide for a byte blob?
+    /**
+     * @param  value the {@link PrimitiveType#BYTES bytes} value to be written.
+     *         The bytes between its position and its limit are written. Its
+     *         position is not changed and it is not retained (so it may be a
+     *         view of a reader's buffer). It cannot be <code>null</code> (in
+     *         which case {@link #writeUnset()} must be used).
+     * @throws IllegalStateException if called after {@link #close()} has been
+     *         called.
+     * @throws OperationFailedException if the value could not be written for
+     *         any reason. Subclasses may contain additional information as to
+     *         the nature of the failure.
+     */
+    void writeValue(ByteBuffer value)
+        throws IllegalStateException, OperationFailedException;
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import net.agkn.field_stripe.exception.OperationFailedException;
+
+/**
+ * Implemented by {@link IFieldStripeReader field-stripe readers} whose
+ * field-stripes store the values of an occurrence of a repeated field as a
+ * count followed by the values. This allows all of the remaining values of
+ * the occurrence to be read at once rather than as a series of {@link Instruction.Kind#REPEATED_VALUE}
+ * and {@link Instruction.Kind#VALUE} instructions.
+ *
+ * @author rgrzywinski
+ * @see BinaryVLenFieldStripeWriter
+ */
+public interface IRepeatedValueReader {
+    /**
+     * Reads the values that remain in the occurrence of the repeated field
+     * whose {@link Instruction.Kind#VALUE value} was just {@link IFieldStripeReader#readInstruction() read}.
+     * The next instruction read is the one that follows the last of these
+     * values. This must only be called directly after a value instruction
+     * is read.
+     *
+     * @return the remaining values of the occurrence. This will never be
+     *         <code>null</code> but may be empty if the field-stripe has no
+     *         remaining values (e.g. they are written as instructions).
+     * @throws OperationFailedException if the values could not be read.
+     *         Subclasses may contain additional information as to the nature
+     *         of the failure.
+     */
+    Object[] readRepeatedValues()
+        throws OperationFailedException;
+}
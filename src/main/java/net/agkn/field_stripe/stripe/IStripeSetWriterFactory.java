@@ -0,0 +1,48 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+
+import net.agkn.field_stripe.exception.OperationFailedException;
+
+/**
+ * A factory for the {@link IFieldStripeWriterFactory field-stripe writer factory}
+ * of each of many stripe sets (e.g. one per {@link net.agkn.field_stripe.record.reader.FileChunk chunk}
+ * of a large record file). This allows the same writer options (e.g. fixed-width
+ * stripes or {@link WriteBufferPool pooled buffers}) to be used for every stripe
+ * set.<p/>
+ *
+ * Implementations must be thread-safe as the writer factories of different
+ * stripe sets may be created (and used) on different threads.
+ *
+ * @author rgrzywinski
+ * @see net.agkn.field_stripe.encode.ParallelRecordEncoder
+ */
+public interface IStripeSetWriterFactory {
+    /**
+     * @param  fsPath the base path of the stripe set. This will never be
+     *         <code>null</code> and will exist.
+     * @return the {@link IFieldStripeWriterFactory} that writes the stripe set
+     *         in the specified path. This will never be <code>null</code>.
+     * @throws OperationFailedException if the writer factory could not be
+     *         created for any reason. Subclasses may provide more information
+     *         as to the nature of the failure.
+     */
+    IFieldStripeWriterFactory createWriterFactory(File fsPath)
+        throws OperationFailedException;
+}
@@ -0,0 +1,143 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * The background I/O threads that read ahead the field-stripes of the readers
+ * of a {@link IFieldStripeReaderFactory factory}. Rather than each reader
+ * reading small blocks from its file as it decodes (which, since decoding
+ * moves round-robin across all of the projected leaves, the disk sees as
+ * small interleaved reads) each field-stripe is read in large chunks into a
+ * bounded queue that the reader consumes.<p/>
+ *
+ * Reads are coalesced by directory: the field-stripes of sibling leaves
+ * (those stored in the same directory) are read ahead together by one
+ * thread at a time which fills the queue of each in turn so that the disk
+ * sees a few long sequential reads per file rather than many short ones. The
+ * field-stripes of different directories are read in parallel.<p/>
+ *
+ * Each field-stripe has at most depth chunks of the chunk size in memory (so
+ * the memory used is at most the number of projected leaves times the depth
+ * times the chunk size). Reading ahead begins as soon as a reader is created.<p/>
+ *
+ * The threads are daemon threads. {@link #shutdown()} should be called once
+ * the records are decoded.
+ *
+ * @author rgrzywinski
+ * @see BinaryVLenFieldStripeReader#createFactory(File, ReadAheadExecutor)
+ */
+@ThreadSafe
+public class ReadAheadExecutor {
+    // the default size in bytes of each chunk that is read ahead
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    // the default number of chunks per field-stripe (one being consumed and
+    // one being read)
+    public static final int DEFAULT_DEPTH = 2;
+
+    // ************************************************************************
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final int depth;
+
+    // the group of the field-stripes in each directory
+    // NOTE:  guarded by itself
+    private final Map<File, ReadAheadGroup> directoryToGroupMap = new HashMap<File, ReadAheadGroup>();
+
+    // ========================================================================
+    /**
+     * @param  threadCount the number of I/O threads. This must be greater than
+     *         zero.
+     * @param  chunkSize the size in bytes of each chunk that is read ahead.
+     *         This must be greater than zero.
+     * @param  depth the number of chunks per field-stripe. This must be at least
+     *         1.
+     */
+    public ReadAheadExecutor(final int threadCount, final int chunkSize, final int depth) {
+        if(threadCount < 1) throw new IllegalArgumentException("There must be at least one I/O thread (" + threadCount + ").");
+        if(chunkSize < 1) throw new IllegalArgumentException("The chunk size must be greater than zero (" + chunkSize + ").");
+        if(depth < 1) throw new IllegalArgumentException("The depth must be at least 1 (" + depth + ").");
+        this.chunkSize = chunkSize;
+        this.depth = depth;
+        this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "field-stripe-read-ahead-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true)/*does not prevent exit*/;
+                return thread;
+            }
+        });
+    }
+
+    // ========================================================================
+    /**
+     * @return the size in bytes of each chunk that is read ahead. This will be
+     *         greater than zero.
+     */
+    public int getChunkSize() { return chunkSize; }
+
+    /**
+     * @return the number of chunks per field-stripe. This will be at least 1.
+     */
+    public int getDepth() { return depth; }
+
+    /**
+     * Opens the specified field-stripe file and begins to read it ahead.
+     *
+     * @param  file the field-stripe file to be read. This cannot be <code>null</code>.
+     * @return the stream of the (read ahead) contents of the file. This will
+     *         never be <code>null</code>.
+     * @throws IOException if the file could not be opened.
+     */
+    /*package*/ InputStream createInputStream(final File file)
+            throws IOException {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        ReadAheadGroup group;
+        synchronized(directoryToGroupMap) {
+            group = directoryToGroupMap.get(directory);
+            if(group == null) {
+                group = new ReadAheadGroup(executor);
+                directoryToGroupMap.put(directory, group);
+            } /* else -- a sibling has already been opened */
+        }
+
+        final ReadAheadInputStream inputStream = new ReadAheadInputStream(new FileInputStream(file).getChannel(), group, chunkSize, depth);
+        group.add(inputStream)/*schedules the first read*/;
+        return inputStream;
+    }
+
+    /**
+     * Stops the I/O threads. Any field-stripes that have not been fully read
+     * can no longer be read.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,100 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * The {@link ReadAheadInputStream streams} of the field-stripes in one directory
+ * that are read ahead together by a {@link ReadAheadExecutor}. When any of the
+ * streams has room for a chunk the group is scheduled and the I/O thread fills
+ * each of the streams in turn (in the order in which they were opened) so that
+ * the reads of each file are consecutive. At most one I/O thread reads the
+ * group at a time.
+ *
+ * @author rgrzywinski
+ */
+@ThreadSafe
+/*package*/ class ReadAheadGroup implements Runnable {
+    private final Executor executor;
+
+    private final List<ReadAheadInputStream> inputStreams = new CopyOnWriteArrayList<ReadAheadInputStream>();
+
+    // true if this group is scheduled on (or running on) an I/O thread
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    // true if a stream has had room for a chunk since the group last started
+    // a pass over its streams
+    private final AtomicBoolean requested = new AtomicBoolean(false);
+
+    // ========================================================================
+    /**
+     * @param  executor the <code>Executor</code> of the I/O threads. This
+     *         cannot be <code>null</code>.
+     */
+    public ReadAheadGroup(final Executor executor) {
+        this.executor = executor;
+    }
+
+    // ========================================================================
+    /**
+     * Adds the specified stream to this group and schedules it to be read.
+     *
+     * @param  inputStream the stream to be read ahead. This cannot be <code>null</code>.
+     */
+    public void add(final ReadAheadInputStream inputStream) {
+        inputStreams.add(inputStream);
+        schedule();
+    }
+
+    /**
+     * Schedules this group to be read (if it is not already scheduled). This
+     * is called when a stream has room for another chunk.
+     */
+    public void schedule() {
+        requested.set(true);
+        if(scheduled.compareAndSet(false, true)) executor.execute(this);
+        /* else -- the I/O thread will make another pass */
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        while(true) {
+            while(requested.getAndSet(false)) {
+                for(final ReadAheadInputStream inputStream : inputStreams) {
+                    while(inputStream.fill())/*read the file until its queue is full*/;
+                    if(inputStream.isEnded()) inputStreams.remove(inputStream)/*nothing more to read*/;
+                    /* else -- there is more to be read once a chunk is consumed */
+                }
+            }
+
+            scheduled.set(false);
+            // NOTE:  a stream may have requested a chunk after the pass but
+            //        before the group was unscheduled
+            if(!requested.get() || !scheduled.compareAndSet(false, true)) return;
+            /* else -- there was a request and this is (re)scheduled */
+        }
+    }
+}
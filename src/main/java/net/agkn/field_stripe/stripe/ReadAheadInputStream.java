@@ -0,0 +1,249 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * An <code>InputStream</code> of a field-stripe file whose chunks are read
+ * ahead by the I/O thread of its {@link ReadAheadGroup group} into a bounded
+ * queue. The decoding thread consumes the chunks in order and returns each
+ * consumed chunk (which is then refilled). The decoding thread only waits if
+ * the queue is empty.<p/>
+ *
+ * If a read fails (with any <code>Throwable</code>) then the failure is thrown
+ * to the decoding thread once it has consumed the chunks that were read before
+ * the failure. The file is
+ * closed once its end is read (or on failure).
+ *
+ * @author rgrzywinski
+ */
+// NOTE:  the InputStream methods are only called by the decoding thread and
+//        #fill() is only called by the I/O thread of the group (which,
+//        though it may be a different thread each time the group is
+//        scheduled, is never more than one at a time). The queues hand the
+//        chunks (and their contents) between the threads.
+@ThreadSafe
+/*package*/ class ReadAheadInputStream extends InputStream {
+    // the chunk that marks the end of the chunks (or a failure)
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    // ........................................................................
+    private final ReadableByteChannel channel;
+    private final ReadAheadGroup group;
+    private final int chunkSize;
+    private final int depth;
+
+    // the chunks (flipped) that have been read and those that have been
+    // consumed (cleared)
+    private final BlockingQueue<ByteBuffer> filledChunks = new LinkedBlockingQueue<ByteBuffer>();
+    private final Queue<ByteBuffer> consumedChunks = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private volatile IOException failure/*null if no read has failed*/;
+    private volatile boolean closed = false;
+
+    // I/O thread: the number of chunks that have been allocated and true once
+    // the end of the file is read (or a read failed)
+    private int chunkCount = 0;
+    private boolean endOfFile = false;
+
+    // decoding thread: the chunk being consumed and true once the end of the
+    // chunks is consumed
+    private ByteBuffer chunk = null/*none*/;
+    private boolean ended = false;
+
+    // ========================================================================
+    /**
+     * @param  channel the channel of the field-stripe file. This cannot be
+     *         <code>null</code>.
+     * @param  group the {@link ReadAheadGroup} that reads the channel. This
+     *         cannot be <code>null</code>. This stream must be added to the
+     *         group once constructed.
+     * @param  chunkSize the size in bytes of each chunk. This must be greater
+     *         than zero.
+     * @param  depth the maximum number of chunks. This must be at least 1.
+     */
+    public ReadAheadInputStream(final ReadableByteChannel channel, final ReadAheadGroup group, final int chunkSize, final int depth) {
+        this.channel = channel;
+        this.group = group;
+        this.chunkSize = chunkSize;
+        this.depth = depth;
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see java.io.InputStream#read()
+     */
+    @Override
+    public int read()
+            throws IOException {
+        if(!hasRemaining()) return -1/*end-of-stream (by contract)*/;
+        return (chunk.get() & 0xFF);
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length)
+            throws IOException {
+        if(length == 0) return 0/*by contract*/;
+        if(!hasRemaining()) return -1/*end-of-stream (by contract)*/;
+        final int count = Math.min(length, chunk.remaining());
+        chunk.get(bytes, offset, count);
+        return count;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#available()
+     */
+    @Override
+    public int available() {
+        return (chunk == null) ? 0 : chunk.remaining();
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#close()
+     */
+    @Override
+    public void close()
+            throws IOException {
+        if(closed) return/*already closed*/;
+        closed = true/*the I/O thread stops reading*/;
+        ended = true;
+        chunk = null/*no longer consumed*/;
+        channel.close();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Ensures that there is a chunk with remaining bytes (if there are any)
+     * returning the consumed chunk and waiting for the next chunk if necessary.
+     *
+     * @return <code>false</code> if the end of the stream has been reached.
+     *         <code>true</code> otherwise.
+     * @throws IOException if a read failed or if the thread was interrupted
+     *         while waiting
+     */
+    private boolean hasRemaining()
+            throws IOException {
+        if((chunk != null) && chunk.hasRemaining()) return true;
+        if(ended) return false/*end of the chunks already consumed*/;
+
+        if(chunk != null) {
+            chunk.clear();
+            consumedChunks.add(chunk);
+            chunk = null/*consumed*/;
+            try {
+                group.schedule()/*there is room for another chunk*/;
+            } catch(final RejectedExecutionException ree) {
+                throw new IOException("The field stripe can no longer be read ahead.", ree);
+            }
+        } /* else -- no chunk has been consumed */
+
+        final ByteBuffer nextChunk;
+        try {
+            nextChunk = filledChunks.take();
+        } catch(final InterruptedException ie) {
+            Thread.currentThread().interrupt()/*preserve the interrupt*/;
+            throw new InterruptedIOException("Interrupted while waiting for a field stripe to be read.");
+        }
+        if(nextChunk == END) {
+            ended = true/*nothing more will be read*/;
+            final IOException failure = this.failure;
+            if(failure != null) throw new IOException("Reading a field stripe failed.", failure);
+            return false/*end-of-stream*/;
+        } /* else -- there is another chunk */
+        chunk = nextChunk;
+        return true;
+    }
+
+    // ========================================================================
+    /**
+     * Reads the next chunk of the file (on the I/O thread) if there is room for
+     * it.
+     *
+     * @return <code>true</code> if a chunk was read (and so another might be).
+     *         <code>false</code> if there is no room for a chunk or nothing
+     *         more is to be read.
+     * @see #isEnded()
+     */
+    public boolean fill() {
+        if(endOfFile) return false/*nothing more to read*/;
+        if(closed) {
+            endOfFile = true/*nothing more will be read*/;
+            return false;
+        } /* else -- the stream is being consumed */
+
+        ByteBuffer nextChunk = consumedChunks.poll();
+        try {
+            if(nextChunk == null) {
+                if(chunkCount >= depth) return false/*the queue is full*/;
+                nextChunk = ByteBuffer.allocate(chunkSize);
+                chunkCount++;
+            } /* else -- a consumed chunk is reused */
+
+            while(nextChunk.hasRemaining()) {
+                if(channel.read(nextChunk) < 0) {
+                    endOfFile = true;
+                    break;
+                } /* else -- there may be more to read */
+            }
+        } catch(final IOException ioe) {
+            if(!closed) failure = ioe;
+            /* else -- the read was interrupted by closing */
+            endOfFile = true;
+        } catch(final Throwable t) {
+            // NOTE:  any failure (including an Error) ends the chunks so that
+            //        the decoding thread is never left waiting
+            failure = new IOException(t);
+            endOfFile = true;
+        }
+
+        if((failure == null) && (nextChunk.position() > 0)) {
+            nextChunk.flip();
+            filledChunks.add(nextChunk);
+        } /* else -- nothing was read or the read failed */
+        if(endOfFile) {
+            try {
+                channel.close();
+            } catch(final IOException ioe) {
+                /* ignore -- the contents have been read */
+            } finally {
+                filledChunks.add(END)/*always posted*/;
+            }
+        } /* else -- there is more to read */
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if nothing more is to be read (on the I/O
+     *         thread). <code>false</code> otherwise.
+     */
+    public boolean isEnded() { return endOfFile; }
+}
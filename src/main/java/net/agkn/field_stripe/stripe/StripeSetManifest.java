@@ -0,0 +1,583 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.IntegerEncoding;
+import net.agkn.field_stripe.record.protobuf.CompiledSchemaCache;
+import net.jcip.annotations.Immutable;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * The manifest of a set of {@link BinaryVLenFieldStripeWriter binary field-stripes}
+ * (the stripes of all of the leaf fields of a schema in a single base path).
+ * The manifest is written in the base path (as {@link #FILENAME}) after the
+ * stripes are closed. It contains the resolved schema, the number of records
+ * and the location, encoding, type and size of each leaf stripe so that a stripe set
+ * can be decoded without the IDL, validated without opening any stripe and
+ * projections can be planned without reading the stripe headers.<p/>
+ *
+ * If the stripes were encoded with sparse subtrees (see {@link StructureField})
+ * then the structure stripe of each sparse node is also a leaf of the manifest
+ * (with the node's path) and precedes the leaves of the node's children. A 
+ * manifest has either all or none of the structure stripes of its schema.<p/>
+ *
+ * The structure of the manifest is:<p/>
+ * <pre>
+ *   5 bytes: magic number ('fsman')
+ *   1 byte: version number (0 is reserved)
+ *   bytes (vlen uint32 length): the schema (see {@link CompiledSchemaCache#write(ICompositeType, OutputStream)})
+ *   vlen uint64: number of records
+ *   vlen uint32: number of leaves
+ *   for each leaf (in schema order):
+ *     string: the dot-separated path of the leaf field (or sparse node)
+ *     string: the location of the stripe relative to the base path ('/'-separated)
+ *     string: the encoding of the stripe (e.g. {@link #BINARY_VLEN_ENCODING})
+ *     1 byte: the version of the encoding
+ *     1 byte: the type constant of the stripe (see {@link BinaryVLenFieldStripeWriter#getTypeConstant(IField, int)})
+ *     vlen uint64: the number of bytes in the stripe
+ * </pre>
+ *
+ * The type constant (as in the stripe header) distinguishes the stripes of
+ * fixed-width, unsigned and enumerated values from the vlen ones. A version 1
+ * manifest has no type constants (see {@link #UNKNOWN_TYPE_CONSTANT}).<p/>
+ *
+ * All values are written using the <a href="https://developers.google.com/protocol-buffers/docs/encoding">Protobuf encoding format</a>.
+ *
+ * @author rgrzywinski
+ */
+@Immutable
+public class StripeSetManifest {
+    // the magic number used to identify manifests
+    public static final byte[] MAGIC = { 'f', 's', 'm', 'a', 'n' };
+
+    // the version of the manifest
+    public static final byte VERSION = 2/*0 is reserved, 1 has no type constants*/;
+
+    // the name of the manifest file in the base path of the stripe set
+    // NOTE:  stripes and their statistics have extensions and directories are
+    //        named by fields so this can never conflict
+    public static final String FILENAME = "manifest.fsmanifest";
+
+    // the encoding of BinaryVLenFieldStripeWriter stripes
+    public static final String BINARY_VLEN_ENCODING = "binary-vlen";
+
+    // the type constant of the leaves of a version 1 manifest
+    public static final int UNKNOWN_TYPE_CONSTANT = -1;
+
+    // ************************************************************************
+    /**
+     * A leaf stripe of the stripe set.
+     */
+    @Immutable
+    public static class Leaf {
+        private final IField field;
+        private final String location;
+        private final String encoding;
+        private final int encodingVersion;
+        private final int typeConstant;
+        private final long byteCount;
+
+        /*package*/ Leaf(final IField field, final String location, final String encoding, final int encodingVersion, final int typeConstant, final long byteCount) {
+            this.field = field;
+            this.location = location;
+            this.encoding = encoding;
+            this.encodingVersion = encodingVersion;
+            this.typeConstant = typeConstant;
+            this.byteCount = byteCount;
+        }
+
+        /**
+         * @return the leaf {@link IField field} (in the manifest's {@link StripeSetManifest#getSchema() schema})
+         *         or the {@link StructureField} of a sparse node. This will 
+         *         never be <code>null</code>.
+         */
+        public IField getField() { return field; }
+
+        /**
+         * @return the dot-separated path of the leaf field. This will never
+         *         be <code>null</code>.
+         */
+        public String getPath() { return field.getPath().toString(); }
+
+        /**
+         * @return the location of the stripe relative to the base path of the
+         *         stripe set ('/'-separated). This will never be <code>null</code>.
+         */
+        public String getLocation() { return location; }
+
+        /**
+         * @return the encoding of the stripe (e.g. {@link StripeSetManifest#BINARY_VLEN_ENCODING}).
+         *         This will never be <code>null</code>.
+         */
+        public String getEncoding() { return encoding; }
+
+        /**
+         * @return the version of the {@link #getEncoding() encoding} of the stripe
+         */
+        public int getEncodingVersion() { return encodingVersion; }
+
+        /**
+         * @return the type constant of the stripe (with the {@link BinaryVLenFieldStripeWriter#FIXED_WIDTH}
+         *         or {@link BinaryVLenFieldStripeWriter#UNSIGNED} flag set if
+         *         the values are fixed-width or unsigned) or {@link StripeSetManifest#UNKNOWN_TYPE_CONSTANT}
+         *         if the manifest does not record it
+         * @see BinaryVLenFieldStripeWriter#getTypeConstant(IField, int)
+         */
+        public int getTypeConstant() { return typeConstant; }
+
+        /**
+         * @return <code>true</code> if and only if the values of the stripe
+         *         are fixed-width. (If the stripe is {@link BinaryVLenFieldStripeWriter#supportsFixedWidth(IField) required-only}
+         *         then it can be read with {@link FixedWidthFieldStripe}.)
+         */
+        public boolean isFixedWidth() {
+            // NOTE:  STRUCTURE_TYPE and ENUM_TYPE never have FIXED_WIDTH set
+            return (typeConstant != UNKNOWN_TYPE_CONSTANT) && ((typeConstant & BinaryVLenFieldStripeWriter.FIXED_WIDTH) != 0);
+        }
+
+        /**
+         * @return the number of bytes in the stripe
+         */
+        public long getByteCount() { return byteCount; }
+
+        /**
+         * @param  fsPath the base path of the stripe set. This cannot be <code>null</code>.
+         * @return the stripe file. This will never be <code>null</code>.
+         */
+        public File getFile(final File fsPath) { return new File(fsPath, location.replace('/', File.separatorChar)); }
+    }
+
+    // ************************************************************************
+    private final ICompositeType schema;
+    private final long recordCount;
+    private final List<Leaf> leaves;
+    private final Map<String, Leaf> pathToLeafMap = new HashMap<String, Leaf>();
+    private final boolean sparseSubtrees;
+
+    // ========================================================================
+    /*package*/ StripeSetManifest(final ICompositeType schema, final long recordCount, final List<Leaf> leaves) {
+        this.schema = schema;
+        this.recordCount = recordCount;
+        this.leaves = Collections.unmodifiableList(new ArrayList<Leaf>(leaves));
+        boolean sparseSubtrees = false/*until a structure stripe is found*/;
+        for(final Leaf leaf : leaves) {
+            pathToLeafMap.put(leaf.getPath(), leaf);
+            sparseSubtrees |= (leaf.getField() instanceof StructureField);
+        }
+        this.sparseSubtrees = sparseSubtrees;
+    }
+
+    /**
+     * Creates the manifest of the closed stripes of the specified schema in
+     * the specified path. The size of each stripe is the size of its file.
+     *
+     * @param  fsPath the base path of the stripe set (as was given to
+     *         {@link BinaryVLenFieldStripeWriter#createFactory(File)}). This
+     *         cannot be <code>null</code>.
+     * @param  schema the schema of the records in the stripe set. This cannot
+     *         be <code>null</code>.
+     * @param  recordCount the number of records in the stripe set
+     * @return the manifest. This will never be <code>null</code>.
+     * @throws OperationFailedException if the stripe of any leaf does not exist.
+     */
+    public static StripeSetManifest create(final File fsPath, final ICompositeType schema, final long recordCount)
+            throws OperationFailedException {
+        return create(fsPath, schema, recordCount, false/*not sparse*/);
+    }
+
+    /**
+     * Creates the manifest of the closed stripes of the specified schema in
+     * the specified path. The size of each stripe is the size of its file.
+     *
+     * @param  fsPath the base path of the stripe set (as was given to
+     *         {@link BinaryVLenFieldStripeWriter#createFactory(File)}). This
+     *         cannot be <code>null</code>.
+     * @param  schema the schema of the records in the stripe set. This cannot
+     *         be <code>null</code>.
+     * @param  recordCount the number of records in the stripe set
+     * @param  sparseSubtrees <code>true</code> if and only if the stripes were
+     *         encoded with sparse subtrees (and therefore have {@link StructureField structure stripes})
+     * @return the manifest. This will never be <code>null</code>.
+     * @throws OperationFailedException if the stripe of any leaf does not exist.
+     */
+    public static StripeSetManifest create(final File fsPath, final ICompositeType schema, final long recordCount, final boolean sparseSubtrees)
+            throws OperationFailedException {
+        final List<Leaf> leaves = new ArrayList<Leaf>();
+        addLeaves(fsPath, schema, sparseSubtrees, leaves);
+        return new StripeSetManifest(schema, recordCount, leaves);
+    }
+
+    /**
+     * Recursively adds the leaves of the specified type (in order) to the
+     * specified list.
+     */
+    private static void addLeaves(final File fsPath, final ICompositeType type, final boolean sparseSubtrees, final List<Leaf> leaves)
+            throws OperationFailedException {
+        for(final IField field : type.getFields()) {
+            if(field.getType().isComposite()) {
+                if(sparseSubtrees && StructureField.isSparse(field))
+                    addLeaf(fsPath, new StructureField(field), leaves);
+                /* else -- the node has no stripe */
+                addLeaves(fsPath, (ICompositeType)field.getType(), sparseSubtrees, leaves);
+            } else/*a leaf*/
+                addLeaf(fsPath, field, leaves);
+        }
+    }
+
+    /**
+     * Adds the leaf for the stripe of the specified field to the specified list.
+     */
+    private static void addLeaf(final File fsPath, final IField field, final List<Leaf> leaves)
+            throws OperationFailedException {
+        // NOTE:  the layout matches BinaryVLenFieldStripeWriter#createFactory()
+        final StringBuilder location = new StringBuilder();
+        for(final IField pathField : field.getPath().getParentPath())
+            location.append(pathField.getName()).append('/');
+        location.append(field.getName()).append(BinaryVLenFieldStripeWriter.EXTENSION);
+
+        final File stripeFile = new File(fsPath, location.toString().replace('/', File.separatorChar));
+        if(!stripeFile.isFile()) throw new OperationFailedException("The field stripe does not exist or is not a file: " + stripeFile);
+
+        // NOTE:  the flags of the type constant depend on the options of the
+        //        writer so they are read from the stripe's header
+        final int typeFlags;
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(stripeFile);
+            typeFlags = BinaryVLenFieldStripeReader.readValidateHeader(CodedInputStream.newInstance(inputStream), field);
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+        leaves.add(new Leaf(field, location.toString(), BINARY_VLEN_ENCODING, BinaryVLenFieldStripeWriter.VERSION, BinaryVLenFieldStripeWriter.getTypeConstant(field, typeFlags), stripeFile.length()));
+    }
+
+    // ========================================================================
+    /**
+     * @return the resolved schema of the records in the stripe set. This will
+     *         never be <code>null</code>.
+     */
+    public ICompositeType getSchema() { return schema; }
+
+    /**
+     * @return the number of records in the stripe set
+     */
+    public long getRecordCount() { return recordCount; }
+
+    /**
+     * @return the leaves of the stripe set in schema order. This will never
+     *         be <code>null</code>.
+     */
+    public List<Leaf> getLeaves() { return leaves; }
+
+    /**
+     * @return <code>true</code> if and only if the stripes were encoded with
+     *         sparse subtrees (i.e. the leaves include {@link StructureField structure stripes})
+     * @see net.agkn.field_stripe.decode.FieldStripeDecoderFactory#FieldStripeDecoderFactory(IFieldStripeReaderFactory, boolean)
+     */
+    public boolean isSparseSubtrees() { return sparseSubtrees; }
+
+    /**
+     * @param  path the dot-separated path of a leaf field (or of a sparse node
+     *         for its structure stripe). This cannot be <code>null</code>.
+     * @return the leaf with the specified path or <code>null</code> if there
+     *         is no such leaf
+     */
+    public Leaf getLeaf(final String path) { return pathToLeafMap.get(path); }
+
+    /**
+     * @return the total number of bytes in all of the stripes
+     */
+    public long getByteCount() {
+        long byteCount = 0L;
+        for(final Leaf leaf : leaves)
+            byteCount += leaf.getByteCount();
+        return byteCount;
+    }
+
+    // ========================================================================
+    /**
+     * Validates that each stripe of this manifest exists and has the expected
+     * size and that its type constant is that of its field. The stripes are
+     * not opened.
+     *
+     * @param  fsPath the base path of the stripe set. This cannot be <code>null</code>.
+     * @throws InvalidDataException if any stripe is missing or has an unexpected
+     *         size, encoding or type.
+     */
+    public void validate(final File fsPath)
+            throws InvalidDataException {
+        for(final Leaf leaf : leaves) {
+            if(!BINARY_VLEN_ENCODING.equals(leaf.getEncoding()) || (leaf.getEncodingVersion() < 1) || (leaf.getEncodingVersion() > BinaryVLenFieldStripeWriter.VERSION)) throw new InvalidDataException("Unsupported encoding of field stripe \"" + leaf.getPath() + "\" (" + leaf.getEncoding() + " version " + leaf.getEncodingVersion() + ").");
+            if(leaf.getTypeConstant() != UNKNOWN_TYPE_CONSTANT) validateTypeConstant(leaf);
+            /* else -- a version 1 manifest */
+            final File stripeFile = leaf.getFile(fsPath);
+            if(!stripeFile.isFile()) throw new InvalidDataException("The field stripe \"" + leaf.getPath() + "\" does not exist or is not a file: " + stripeFile);
+            if(stripeFile.length() != leaf.getByteCount()) throw new InvalidDataException("Unexpected size of field stripe \"" + leaf.getPath() + "\" (" + stripeFile.length() + " != " + leaf.getByteCount() + ").");
+        }
+    }
+
+    /**
+     * Validates that the type constant of the specified leaf can be that of
+     * its field and that its flags match the field's {@link IntegerEncoding integer encoding}
+     * (i.e. the encoding in the manifest's schema that the stripe was written
+     * with).
+     */
+    private static void validateTypeConstant(final Leaf leaf)
+            throws InvalidDataException {
+        final IField field = leaf.getField();
+        final int typeFlags = BinaryVLenFieldStripeReader.validateTypeConstant(field, leaf.getTypeConstant());
+        final boolean fixedWidth = ((typeFlags & BinaryVLenFieldStripeWriter.FIXED_WIDTH) != 0);
+        final IntegerEncoding integerEncoding = BinaryVLenFieldStripeWriter.isIntegral(field) ? field.getIntegerEncoding() : IntegerEncoding.SIGNED/*not applicable*/;
+        // NOTE:  only fixed integer values and (if enabled) required-only
+        //        values are fixed-width
+        if(fixedWidth ? ((integerEncoding != IntegerEncoding.FIXED) && !BinaryVLenFieldStripeWriter.supportsFixedWidth(field)) : (integerEncoding == IntegerEncoding.FIXED))
+            throw new InvalidDataException("Unexpected fixed-width of field stripe \"" + leaf.getPath() + "\" (" + fixedWidth + ").");
+        final boolean unsigned = ((typeFlags & BinaryVLenFieldStripeWriter.UNSIGNED) != 0);
+        if(unsigned != (!fixedWidth && (integerEncoding == IntegerEncoding.UNSIGNED)))
+            throw new InvalidDataException("Unexpected unsigned values of field stripe \"" + leaf.getPath() + "\" (" + unsigned + ").");
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @param  fsPath the base path of the stripe set. This cannot be <code>null</code>.
+     * @return a {@link IFieldStripeReaderFactory} that reads the stripes of
+     *         the fields of this manifest's {@link #getSchema() schema} from
+     *         the locations in this manifest. This will never be <code>null</code>.
+     */
+    public IFieldStripeReaderFactory createReaderFactory(final File fsPath) {
+        return createReaderFactory(fsPath, null/*read synchronously*/);
+    }
+
+    /**
+     * @param  fsPath the base path of the stripe set. This cannot be <code>null</code>.
+     * @param  readAheadExecutor the {@link ReadAheadExecutor} that reads the
+     *         stripes ahead of the readers. If <code>null</code> then the
+     *         stripes are read synchronously as they are decoded.
+     * @return a {@link IFieldStripeReaderFactory} that reads the stripes of
+     *         the fields of this manifest's {@link #getSchema() schema} from
+     *         the locations in this manifest. This will never be <code>null</code>.
+     */
+    public IFieldStripeReaderFactory createReaderFactory(final File fsPath, final ReadAheadExecutor readAheadExecutor) {
+        return new IFieldStripeReaderFactory() {
+            private final Map<IField, IFieldStripeReader> fieldToReaderMap = new HashMap<IField, IFieldStripeReader>();
+            @Override
+            public IFieldStripeReader createFieldStripeReader(final IField field)
+                    throws OperationFailedException {
+                if(fieldToReaderMap.containsKey(field)) throw new OperationFailedException("A reader already exists for field " + field + ".");
+
+                final Leaf leaf = getLeaf(field.getPath().toString());
+                if(leaf == null) throw new OperationFailedException("The field \"" + field.getPath() + "\" is not in the manifest.");
+                final IFieldStripeReader reader = BinaryVLenFieldStripeReader.openReader(leaf.getFile(fsPath), field, readAheadExecutor);
+                fieldToReaderMap.put(field, reader);
+                return reader;
+            }
+
+            @Override
+            public void closeAllReaders() throws OperationFailedException {
+                BinaryVLenFieldStripeReader.closeReaders(fieldToReaderMap.values());
+            }
+        };
+    }
+
+    // ========================================================================
+    /**
+     * @param  fsPath the base path of a stripe set. This cannot be <code>null</code>.
+     * @return <code>true</code> if and only if the stripe set in the specified
+     *         path has a manifest
+     */
+    public static boolean exists(final File fsPath) {
+        return new File(fsPath, FILENAME).isFile();
+    }
+
+    /**
+     * Writes this manifest into the base path of the stripe set.
+     *
+     * @param  fsPath the base path of the stripe set. This cannot be <code>null</code>.
+     * @throws OperationFailedException if the manifest could not be written for
+     *         any reason. Subclasses may contain additional information as to
+     *         the nature of the failure.
+     */
+    public void write(final File fsPath)
+            throws OperationFailedException {
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(new File(fsPath, FILENAME));
+            write(outputStream);
+            outputStream.close();
+            outputStream = null/*closed*/;
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        } finally {
+            IOUtils.closeQuietly(outputStream);
+        }
+    }
+
+    /**
+     * Writes this manifest to the specified stream. The stream is flushed but
+     * not closed.
+     *
+     * @param  outputStream the stream to which the manifest is written. This
+     *         cannot be <code>null</code>.
+     * @throws OperationFailedException if the manifest could not be written for
+     *         any reason. Subclasses may contain additional information as to
+     *         the nature of the failure.
+     */
+    public void write(final OutputStream outputStream)
+            throws OperationFailedException {
+        // NOTE:  the schema is length-delimited so that it can be read from
+        //        its own stream
+        final ByteArrayOutputStream schemaOutputStream = new ByteArrayOutputStream();
+        CompiledSchemaCache.write(schema, schemaOutputStream);
+
+        final CodedOutputStream protobufOutput = CodedOutputStream.newInstance(outputStream);
+        try {
+            protobufOutput.writeRawBytes(MAGIC);
+            protobufOutput.writeRawByte(VERSION);
+            final byte[] schemaBytes = schemaOutputStream.toByteArray();
+            protobufOutput.writeRawVarint32(schemaBytes.length);
+            protobufOutput.writeRawBytes(schemaBytes);
+            protobufOutput.writeUInt64NoTag(recordCount);
+            protobufOutput.writeUInt32NoTag(leaves.size());
+            for(final Leaf leaf : leaves) {
+                protobufOutput.writeStringNoTag(leaf.getPath());
+                protobufOutput.writeStringNoTag(leaf.getLocation());
+                protobufOutput.writeStringNoTag(leaf.getEncoding());
+                protobufOutput.writeRawByte(leaf.getEncodingVersion());
+                protobufOutput.writeRawByte(leaf.getTypeConstant());
+                protobufOutput.writeUInt64NoTag(leaf.getByteCount());
+            }
+            protobufOutput.flush();
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @param  fsPath the base path of the stripe set. This cannot be <code>null</code>.
+     * @return the manifest of the stripe set in the specified path. This will
+     *         never be <code>null</code>.
+     * @throws OperationFailedException if the manifest does not exist or could
+     *         not be read for any reason. Subclasses may contain additional
+     *         information as to the nature of the failure.
+     */
+    public static StripeSetManifest read(final File fsPath)
+            throws OperationFailedException {
+        final File manifestFile = new File(fsPath, FILENAME);
+        if(!manifestFile.isFile()) throw new OperationFailedException("The stripe set manifest does not exist or is not a file: " + manifestFile);
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(manifestFile);
+            return read(inputStream);
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * @param  inputStream the stream from which the manifest is read. This
+     *         cannot be <code>null</code>. It is not closed.
+     * @return the manifest read from the specified stream. This will never be
+     *         <code>null</code>.
+     * @throws OperationFailedException if the manifest could not be read for
+     *         any reason or it does not match its schema. Subclasses may contain
+     *         additional information as to the nature of the failure.
+     */
+    public static StripeSetManifest read(final InputStream inputStream)
+            throws OperationFailedException {
+        final CodedInputStream protobufInput = CodedInputStream.newInstance(inputStream);
+        try {
+            final byte[] magicNumber = protobufInput.readRawBytes(MAGIC.length/*length*/);
+            if(!Arrays.equals(magicNumber, MAGIC)) throw new InvalidDataException("Unexpected stripe set manifest header.");
+            final int version = protobufInput.readRawByte();
+            if((version < 1) || (version > VERSION)) throw new InvalidDataException("Unknown version number (" + version + " > " + VERSION + ").");
+
+            final byte[] schemaBytes = protobufInput.readRawBytes(protobufInput.readRawVarint32());
+            final ICompositeType schema = CompiledSchemaCache.read(new ByteArrayInputStream(schemaBytes));
+            final Map<String, IField> pathToLeafFieldMap = new HashMap<String, IField>();
+            final Map<String, IField> pathToStructureFieldMap = new HashMap<String, IField>();
+            addLeafFields(schema, pathToLeafFieldMap, pathToStructureFieldMap);
+
+            final long recordCount = protobufInput.readRawVarint64();
+            final int leafCount = protobufInput.readRawVarint32();
+            // NOTE:  either all or none of the structure stripes are present
+            final boolean sparseSubtrees = (leafCount != pathToLeafFieldMap.size());
+            final int expectedLeafCount = pathToLeafFieldMap.size() + (sparseSubtrees ? pathToStructureFieldMap.size() : 0/*not sparse*/);
+            if(leafCount != expectedLeafCount) throw new InvalidDataException("Unexpected number of leaves (" + leafCount + " != " + expectedLeafCount + ").");
+            final List<Leaf> leaves = new ArrayList<Leaf>(leafCount);
+            for(int i=0; i<leafCount; i++) {
+                final String path = protobufInput.readString();
+                IField field = pathToLeafFieldMap.get(path);
+                if((field == null) && sparseSubtrees) field = pathToStructureFieldMap.get(path);
+                if(field == null) throw new InvalidDataException("The leaf \"" + path + "\" is not in the schema.");
+                final String location = protobufInput.readString();
+                final String encoding = protobufInput.readString();
+                final int encodingVersion = protobufInput.readRawByte();
+                final int typeConstant = (version > 1) ? protobufInput.readRawByte() : UNKNOWN_TYPE_CONSTANT;
+                final long byteCount = protobufInput.readRawVarint64();
+                leaves.add(new Leaf(field, location, encoding, encodingVersion, typeConstant, byteCount));
+            }
+            return new StripeSetManifest(schema, recordCount, leaves);
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    /**
+     * Recursively adds the leaf fields and the {@link StructureField structure fields}
+     * of the sparse nodes of the specified type to the specified maps by their
+     * dot-separated path.
+     */
+    private static void addLeafFields(final ICompositeType type, final Map<String, IField> pathToLeafFieldMap, final Map<String, IField> pathToStructureFieldMap) {
+        for(final IField field : type.getFields()) {
+            if(field.getType().isComposite()) {
+                if(StructureField.isSparse(field))
+                    pathToStructureFieldMap.put(field.getPath().toString(), new StructureField(field));
+                /* else -- the node never has a stripe */
+                addLeafFields((ICompositeType)field.getType(), pathToLeafFieldMap, pathToStructureFieldMap);
+            } else/*leaf*/
+                pathToLeafFieldMap.put(field.getPath().toString(), field);
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.primitiveTypeToConstantMap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import net.agkn.field_stripe.exception.DeveloperException;
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter.TypeConstant;
+import net.agkn.field_stripe.stripe.Instruction.Kind;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * The statistics of a {@link BinaryVLenFieldStripeWriter binary field-stripe}:
+ * the number of instructions of each {@link Kind}, the minimum and maximum
+ * values, an estimate of the number of distinct values (from a {@link HyperLogLog}
+ * sketch) and the number of bytes in the stripe. The statistics are written
+ * by the writer when it is {@link BinaryVLenFieldStripeWriter#close() closed}
+ * to a small file alongside the stripe (with the {@link #EXTENSION statistics extension})
+ * so that they can be read without reading the stripe.<p/>
+ *
+ * The structure of the statistics file is:<p/>
+ * <pre>
+ *   5 bytes: magic number ('fstat')
+ *   1 byte: version number (0 is reserved)
+ *   1 byte: {@link PrimitiveType} ordinal (from TypeConstant)
+ *   vlen uint64: number of bytes in the stripe
+ *   vlen uint64 (x5): number of instructions of each {@link Kind} (by ordinal)
+ *   1 byte: 0x00=no min / max (no values or bytes values), 0x01=min / max follow
+ *   [min value in field type] [max value in field type]
+ *   1 byte: log2m of the HyperLogLog sketch
+ *   2^log2m bytes: the registers of the HyperLogLog sketch
+ * </pre>
+ *
+ * Values are encoded as they are in the stripe and all values are written using
+ * the <a href="https://developers.google.com/protocol-buffers/docs/encoding">Protobuf encoding format</a>.
+ *
+ * @author rgrzywinski
+ * @see BinaryVLenFieldStripeWriter#getStatistics()
+ * @see BinaryVLenFieldStripeReader#readStatistics(File, net.agkn.field_stripe.record.IField)
+ */
+@Immutable
+public class StripeStatistics {
+    // the magic number used to identify field-stripe statistics
+    public static final byte[] MAGIC = { 'f', 's', 't', 'a', 't' };
+
+    // the version of the statistics
+    public static final byte VERSION = 1/*0 is reserved*/;
+
+    // the name of the file extension
+    public static final String EXTENSION = ".fstats";
+
+    // ************************************************************************
+    private final PrimitiveType type;
+    private final long byteCount;
+    private final long[] instructionCounts/*indexed by Kind#ordinal()*/;
+    private final Object minValue/*null if there are no values*/;
+    private final Object maxValue/*null if there are no values*/;
+    private final HyperLogLog distinctSketch;
+
+    // ========================================================================
+    /*package*/ StripeStatistics(final PrimitiveType type, final long byteCount, final long[] instructionCounts, final Object minValue, final Object maxValue, final HyperLogLog distinctSketch) {
+        this.type = type;
+        this.byteCount = byteCount;
+        this.instructionCounts = instructionCounts;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.distinctSketch = distinctSketch;
+    }
+
+    // ========================================================================
+    /**
+     * @return the {@link PrimitiveType type} of the values of the stripe. This
+     *         will never be <code>null</code>.
+     */
+    public PrimitiveType getType() { return type; }
+
+    /**
+     * @return the number of bytes in the stripe
+     */
+    public long getByteCount() { return byteCount; }
+
+    /**
+     * @param  kind the {@link Kind} of instruction for which the count is
+     *         desired. This cannot be <code>null</code>.
+     * @return the number of instructions of the specified kind
+     */
+    public long getInstructionCount(final Kind kind) { return instructionCounts[kind.ordinal()]; }
+
+    /**
+     * @return the total number of instructions in the stripe
+     */
+    public long getInstructionCount() {
+        long count = 0L;
+        for(final long instructionCount : instructionCounts)
+            count += instructionCount;
+        return count;
+    }
+
+    /**
+     * @return the number of {@link Kind#VALUE values}
+     */
+    public long getValueCount() { return getInstructionCount(Kind.VALUE); }
+
+    /**
+     * @return the number of unset values (both {@link Kind#UNSET unset fields}
+     *         and {@link Kind#UNSET_PARENT unset parents})
+     */
+    public long getNullCount() { return getInstructionCount(Kind.UNSET) + getInstructionCount(Kind.UNSET_PARENT); }
+
+    /**
+     * @return the minimum value in the type of the stripe (e.g. <code>Long</code>
+     *         for {@link PrimitiveType#LONG}) or <code>null</code> if there are
+     *         no values (or the stripe is {@link PrimitiveType#BYTES}). <code>NaN</code>s
+     *         are ignored.
+     */
+    public Object getMinValue() { return minValue; }
+
+    /**
+     * @return the maximum value in the type of the stripe (e.g. <code>Long</code>
+     *         for {@link PrimitiveType#LONG}) or <code>null</code> if there are
+     *         no values (or the stripe is {@link PrimitiveType#BYTES}). <code>NaN</code>s
+     *         are ignored.
+     */
+    public Object getMaxValue() { return maxValue; }
+
+    /**
+     * @return the estimated number of distinct values
+     */
+    public long getDistinctCount() { return distinctSketch.cardinality(); }
+
+    /**
+     * @return a copy of the sketch of the distinct values (for example, to be
+     *         merged with the sketches of other stripes). This will never be
+     *         <code>null</code>.
+     */
+    public HyperLogLog getDistinctSketch() { return distinctSketch.copy(); }
+
+    // ========================================================================
+    /**
+     * Writes these statistics to the specified stream. The stream is flushed
+     * but not closed.
+     *
+     * @param  outputStream the stream to which the statistics are written. This
+     *         cannot be <code>null</code>.
+     * @throws OperationFailedException if the statistics could not be written
+     *         for any reason. Subclasses may contain additional information as
+     *         to the nature of the failure.
+     */
+    public void write(final OutputStream outputStream)
+            throws OperationFailedException {
+        final CodedOutputStream protobufOutput = CodedOutputStream.newInstance(outputStream);
+        try {
+            protobufOutput.writeRawBytes(MAGIC);
+            protobufOutput.writeRawByte(VERSION);
+            protobufOutput.writeRawByte(primitiveTypeToConstantMap.get(type).ordinal());
+            protobufOutput.writeUInt64NoTag(byteCount);
+            for(final long instructionCount : instructionCounts)
+                protobufOutput.writeUInt64NoTag(instructionCount);
+            if(minValue == null)
+                protobufOutput.writeRawByte(0x00/*no min / max*/);
+            else/*there are values*/ {
+                protobufOutput.writeRawByte(0x01/*min / max follow*/);
+                writeValue(protobufOutput, minValue);
+                writeValue(protobufOutput, maxValue);
+            }
+            protobufOutput.writeRawByte(distinctSketch.getLog2m());
+            protobufOutput.writeRawBytes(distinctSketch.getRegisters());
+            protobufOutput.flush();
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    /**
+     * Writes the specified value in the type of the stripe.
+     */
+    private void writeValue(final CodedOutputStream protobufOutput, final Object value)
+            throws IOException {
+        switch(primitiveTypeToConstantMap.get(type)) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                protobufOutput.writeSInt64NoTag(((Number)value).longValue());
+                return;
+            case FLOAT:
+                protobufOutput.writeFloatNoTag((Float)value);
+                return;
+            case DOUBLE:
+                protobufOutput.writeDoubleNoTag((Double)value);
+                return;
+            case BOOLEAN:
+                protobufOutput.writeBoolNoTag((Boolean)value);
+                return;
+            case STRING:
+                protobufOutput.writeStringNoTag((String)value);
+                return;
+            case BYTES:
+                throw new DeveloperException("Bytes values have no min / max.");
+            default:
+                throw new DeveloperException("Unknown field type: " + type);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @param  file the statistics file (with the {@link #EXTENSION statistics extension})
+     *         to be read. This cannot be <code>null</code>.
+     * @return the statistics read from the specified file. This will never be
+     *         <code>null</code>.
+     * @throws OperationFailedException if the statistics could not be read for
+     *         any reason (including if the file does not exist). Subclasses may
+     *         contain additional information as to the nature of the failure.
+     */
+    public static StripeStatistics read(final File file)
+            throws OperationFailedException {
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            return read(inputStream);
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        } finally {
+            try {
+                if(inputStream != null) inputStream.close();
+            } catch(final IOException ioe) {
+                /* ignore -- nothing can be done */
+            }
+        }
+    }
+
+    /**
+     * @param  inputStream the stream from which the statistics are read. This
+     *         cannot be <code>null</code>. It is not closed.
+     * @return the statistics read from the specified stream. This will never
+     *         be <code>null</code>.
+     * @throws OperationFailedException if the statistics could not be read for
+     *         any reason. Subclasses may contain additional information as to
+     *         the nature of the failure.
+     */
+    public static StripeStatistics read(final InputStream inputStream)
+            throws OperationFailedException {
+        final CodedInputStream protobufInput = CodedInputStream.newInstance(inputStream);
+        try {
+            final byte[] magicNumber = protobufInput.readRawBytes(MAGIC.length/*length*/);
+            if(!Arrays.equals(magicNumber, MAGIC)) throw new InvalidDataException("Unexpected field-stripe statistics header.");
+            final int version = protobufInput.readRawByte();
+            if(version != VERSION) throw new InvalidDataException("Unknown version number (" + version + " != " + VERSION + ").");
+
+            final int typeConstantOrdinal = protobufInput.readRawByte();
+            if((typeConstantOrdinal < 0) || (typeConstantOrdinal >= TypeConstant.values().length)) throw new InvalidDataException("Unknown type constant (" + typeConstantOrdinal + ").");
+            final TypeConstant typeConstant = TypeConstant.values()[typeConstantOrdinal];
+            final PrimitiveType type = PrimitiveType.valueOf(typeConstant.name())/*by definition the names match*/;
+
+            final long byteCount = protobufInput.readRawVarint64();
+            final long[] instructionCounts = new long[Kind.values().length];
+            for(int i=0; i<instructionCounts.length; i++)
+                instructionCounts[i] = protobufInput.readRawVarint64();
+
+            final Object minValue, maxValue;
+            final int hasMinMax = protobufInput.readRawByte();
+            if(hasMinMax == 0x00) {
+                minValue = null/*no values*/;
+                maxValue = null/*no values*/;
+            } else if(hasMinMax == 0x01) {
+                minValue = readValue(protobufInput, typeConstant);
+                maxValue = readValue(protobufInput, typeConstant);
+            } else
+                throw new InvalidDataException("Unexpected min / max marker (" + hasMinMax + ").");
+
+            final int log2m = protobufInput.readRawByte();
+            if((log2m < HyperLogLog.MIN_LOG2M) || (log2m > HyperLogLog.MAX_LOG2M)) throw new InvalidDataException("Unexpected sketch size (" + log2m + ").");
+            final HyperLogLog distinctSketch = new HyperLogLog(log2m, protobufInput.readRawBytes(1 << log2m));
+
+            return new StripeStatistics(type, byteCount, instructionCounts, minValue, maxValue, distinctSketch);
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    /**
+     * @return the value read in the specified type
+     */
+    private static Object readValue(final CodedInputStream protobufInput, final TypeConstant typeConstant)
+            throws IOException, InvalidDataException {
+        switch(typeConstant) {
+            case BYTE:
+                return (byte)protobufInput.readSInt64();
+            case SHORT:
+                return (short)protobufInput.readSInt64();
+            case INT:
+                return (int)protobufInput.readSInt64();
+            case LONG:
+                return protobufInput.readSInt64();
+            case FLOAT:
+                return protobufInput.readFloat();
+            case DOUBLE:
+                return protobufInput.readDouble();
+            case BOOLEAN:
+                return protobufInput.readBool();
+            case STRING:
+                return protobufInput.readString();
+            case BYTES:
+                throw new InvalidDataException("Bytes values have no min / max.");
+            default:
+                throw new DeveloperException("Unknown type constant: " + typeConstant);
+        }
+    }
+
+    // ************************************************************************
+    /**
+     * Collects the statistics of a stripe as it is written. Each method is
+     * called after the corresponding instruction is written.
+     */
+    @NotThreadSafe
+    /*package*/ static class Collector {
+        private final PrimitiveType type;
+        private final long[] instructionCounts = new long[Kind.values().length];
+        private final HyperLogLog distinctSketch = new HyperLogLog();
+
+        // the min / max values by type (only one pair is used)
+        private boolean hasMinMax = false/*no values to start*/;
+        private long minLong, maxLong;
+        private double minDouble, maxDouble;
+        private String minString, maxString;
+
+        // ====================================================================
+        /**
+         * @param  type the {@link PrimitiveType type} of the values of the
+         *         stripe. This cannot be <code>null</code>.
+         */
+        public Collector(final PrimitiveType type) {
+            this.type = type;
+        }
+
+        // ====================================================================
+        /**
+         * @param  kind the {@link Kind} of the instruction that was written.
+         *         Values must use the typed methods (e.g. {@link #value(long)}).
+         */
+        public void instruction(final Kind kind) {
+            instructionCounts[kind.ordinal()]++;
+        }
+
+        /**
+         * An integral or boolean (0 or 1) value was written.
+         */
+        public void value(final long value) {
+            instructionCounts[Kind.VALUE.ordinal()]++;
+            distinctSketch.add(HyperLogLog.hash(value));
+            if(!hasMinMax) {
+                minLong = maxLong = value;
+                hasMinMax = true;
+            } else {
+                if(value < minLong) minLong = value;
+                if(value > maxLong) maxLong = value;
+            }
+        }
+
+        /**
+         * A floating-point value was written.
+         */
+        public void value(final double value) {
+            instructionCounts[Kind.VALUE.ordinal()]++;
+            distinctSketch.add(HyperLogLog.hash(Double.doubleToLongBits(value)));
+            if(Double.isNaN(value)) return/*NaNs are not ordered*/;
+            if(!hasMinMax) {
+                minDouble = maxDouble = value;
+                hasMinMax = true;
+            } else {
+                if(value < minDouble) minDouble = value;
+                if(value > maxDouble) maxDouble = value;
+            }
+        }
+
+        /**
+         * A bytes value was written. Since bytes values are typically opaque
+         * (e.g. serialized blobs or hashes) they have no min / max.
+         */
+        public void value(final ByteBuffer value) {
+            instructionCounts[Kind.VALUE.ordinal()]++;
+            distinctSketch.add(HyperLogLog.hash(value));
+        }
+
+        /**
+         * A string value was written.
+         */
+        public void value(final String value) {
+            instructionCounts[Kind.VALUE.ordinal()]++;
+            distinctSketch.add(HyperLogLog.hash(value));
+            if(!hasMinMax) {
+                minString = maxString = value;
+                hasMinMax = true;
+            } else {
+                if(value.compareTo(minString) < 0) minString = value;
+                if(value.compareTo(maxString) > 0) maxString = value;
+            }
+        }
+
+        // ====================================================================
+        /**
+         * @param  byteCount the number of bytes in the stripe
+         * @return the statistics collected so far. This will never be <code>null</code>.
+         */
+        public StripeStatistics toStatistics(final long byteCount) {
+            return new StripeStatistics(type, byteCount, Arrays.copyOf(instructionCounts, instructionCounts.length), toValue(true/*min*/), toValue(false/*max*/), distinctSketch.copy());
+        }
+
+        /**
+         * @return the min or max value in the type of the stripe or <code>null</code>
+         *         if there are no values
+         */
+        private Object toValue(final boolean min) {
+            if(!hasMinMax) return null/*no values*/;
+            switch(type) {
+                case BYTE:
+                    return (byte)(min ? minLong : maxLong);
+                case SHORT:
+                    return (short)(min ? minLong : maxLong);
+                case INT:
+                    return (int)(min ? minLong : maxLong);
+                case LONG:
+                    return (min ? minLong : maxLong);
+                case FLOAT:
+                    return (float)(min ? minDouble : maxDouble);
+                case DOUBLE:
+                    return (min ? minDouble : maxDouble);
+                case BOOLEAN:
+                    return ((min ? minLong : maxLong) != 0L);
+                case STRING:
+                    return (min ? minString : maxString);
+                case BYTES:
+                    throw new DeveloperException("Bytes values have no min / max.")/*hasMinMax is never set*/;
+                default:
+                    throw new DeveloperException("Unknown field type: " + type);
+            }
+        }
+    }
+}
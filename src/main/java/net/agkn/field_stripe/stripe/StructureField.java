@@ -0,0 +1,131 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import net.agkn.field_stripe.record.EnumSymbolTable;
+import net.agkn.field_stripe.record.FieldQualifier;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.IFieldType;
+import net.agkn.field_stripe.record.IntegerEncoding;
+import net.agkn.field_stripe.record.Path;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.jcip.annotations.Immutable;
+
+/**
+ * The {@link IField field} of the <i>structure</i> field-stripe of a sparse
+ * node field (an optional or repeated field whose type is {@link ICompositeType}).
+ * When sparse subtrees are enabled, the presence, absence and repetition of
+ * the node is written once to its structure stripe rather than being propagated
+ * to every leaf stripe beneath it. The leaves beneath the node then only have
+ * instructions for the occurrences of the node that exist.<p/>
+ *
+ * The structure stripe is an ordinary {@link PrimitiveType#BOOLEAN boolean}
+ * field-stripe at the position of the node (it has the node's name, path and
+ * qualifier) in which each value marks an occurrence of the node. It is
+ * therefore written and read by any {@link IFieldStripeWriter} / {@link IFieldStripeReader}
+ * and (for the file-based factories) is named after the node alongside the
+ * directory of the node's children. Since the value is always <code>true</code>,
+ * {@link BinaryVLenFieldStripeWriter} writes only the instructions (the
+ * repetition and definition levels of the node) and no values.
+ *
+ * @author rgrzywinski
+ */
+@Immutable
+public class StructureField implements IField {
+    private final IField nodeField;
+
+    // ========================================================================
+    /**
+     * @param  nodeField the node field whose structure stripe this is a field
+     *         for. This cannot be <code>null</code> and must be {@link #isSparse(IField) sparse}.
+     */
+    public StructureField(final IField nodeField) {
+        this.nodeField = nodeField;
+    }
+
+    // ========================================================================
+    /**
+     * @param  field the field to test. This cannot be <code>null</code>.
+     * @return <code>true</code> if and only if the specified field has a
+     *         structure stripe when sparse subtrees are enabled (i.e. it is a
+     *         composite field that can be absent or repeated). Required nodes
+     *         are only absent or repeated if a parent is and are therefore
+     *         never sparse.
+     */
+    public static boolean isSparse(final IField field) {
+        return field.getType().isComposite() && (field.getQualifier() != FieldQualifier.ONE);
+    }
+
+    // ========================================================================
+    /**
+     * @return the node field whose structure stripe this is a field for. This
+     *         will never be <code>null</code>.
+     */
+    public IField getNodeField() { return nodeField; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IField#getPath()
+     */
+    @Override
+    public Path getPath() { return nodeField.getPath(); }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IField#getIndex()
+     */
+    @Override
+    public int getIndex() { return nodeField.getIndex(); }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IField#getQualifier()
+     */
+    @Override
+    public FieldQualifier getQualifier() { return nodeField.getQualifier(); }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IField#getType()
+     */
+    @Override
+    public IFieldType getType() { return PrimitiveType.BOOLEAN/*presence*/; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IField#getName()
+     */
+    @Override
+    public String getName() { return nodeField.getName(); }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IField#getIntegerEncoding()
+     */
+    @Override
+    public IntegerEncoding getIntegerEncoding() { return IntegerEncoding.SIGNED/*not integral*/; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.record.IField#getEnumSymbolTable()
+     */
+    @Override
+    public EnumSymbolTable getEnumSymbolTable() { return null/*not an enum*/; }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "StructureField [nodeField=" + nodeField + "]";
+    }
+}
@@ -0,0 +1,100 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * The background I/O threads that write the full buffers of the {@link BufferedChannelOutput outputs}
+ * of the field-stripe writers of a {@link IFieldStripeWriterFactory factory}
+ * (write-behind). A full buffer is handed to these threads and the encoding
+ * thread continues to fill another buffer so that it does not wait for the
+ * disk unless all of the buffers of an output are being written. The buffers
+ * of an output are always written in order (by one thread at a time) though
+ * the buffers of different outputs are written in parallel.<p/>
+ *
+ * The depth is the number of buffers per output: 2 for double buffering (one
+ * being filled and one being written) or 3 for triple buffering (one being
+ * filled and two queued to be written). The buffers are taken from the
+ * {@link WriteBufferPool} of the outputs and are within its budget.<p/>
+ *
+ * The threads are daemon threads. {@link #shutdown()} should be called once
+ * the writers are closed.
+ *
+ * @author rgrzywinski
+ * @see BinaryVLenFieldStripeWriter#createFactory(java.io.File, boolean, WriteBufferPool, WriteBehindExecutor)
+ */
+@ThreadSafe
+public class WriteBehindExecutor {
+    // the default number of buffers per output (double buffering)
+    public static final int DEFAULT_DEPTH = 2;
+
+    // ************************************************************************
+    private final ExecutorService executor;
+    private final int depth;
+
+    // ========================================================================
+    /**
+     * @param  threadCount the number of I/O threads. This must be greater than
+     *         zero.
+     * @param  depth the number of buffers per output. This must be at least 2.
+     */
+    public WriteBehindExecutor(final int threadCount, final int depth) {
+        if(threadCount < 1) throw new IllegalArgumentException("There must be at least one I/O thread (" + threadCount + ").");
+        if(depth < 2) throw new IllegalArgumentException("The depth must be at least 2 (" + depth + ").");
+        this.depth = depth;
+        this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "field-stripe-write-behind-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true)/*does not prevent exit*/;
+                return thread;
+            }
+        });
+    }
+
+    // ========================================================================
+    /**
+     * @return the number of buffers per output. This will be at least 2.
+     */
+    public int getDepth() { return depth; }
+
+    /**
+     * @param  channel the channel to which the buffers are written. This cannot
+     *         be <code>null</code>.
+     * @return the queue of the buffers that are written behind to the specified
+     *         channel by this executor. This will never be <code>null</code>.
+     */
+    /*package*/ WriteBehindQueue createQueue(final WritableByteChannel channel) {
+        return new WriteBehindQueue(channel, executor);
+    }
+
+    /**
+     * Stops the I/O threads once the buffers that have been handed to them
+     * are written. No more buffers may be written behind.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,206 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * The buffers of a {@link BufferedChannelOutput} that are written behind to
+ * its channel by a {@link WriteBehindExecutor}. Buffers are {@link #submit(ByteBuffer) submitted}
+ * by the encoding thread and, once written, are returned to it (cleared) by
+ * {@link #poll()} or {@link #take()}. The buffers are written in the order in
+ * which they were submitted by at most one I/O thread at a time.<p/>
+ *
+ * If a write fails (with any <code>Throwable</code>) then the remaining buffers
+ * are not written (but are still returned) and the failure is thrown to the
+ * encoding thread the next time that it takes a buffer. If the buffers can
+ * no longer be written behind (i.e. the executor was shut down) then the
+ * submitted buffer is returned unwritten and the failure is thrown at once.
+ *
+ * @author rgrzywinski
+ */
+// NOTE:  the submitting and taking methods are only called by the encoding
+//        thread. The queues hand the buffers (and their contents) between
+//        the threads.
+@ThreadSafe
+/*package*/ class WriteBehindQueue implements Runnable {
+    private final WritableByteChannel channel;
+    private final Executor executor;
+
+    // the buffers (flipped) that are to be written in order and those that
+    // have been written (cleared)
+    private final Queue<ByteBuffer> pendingBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final BlockingQueue<ByteBuffer> writtenBuffers = new LinkedBlockingQueue<ByteBuffer>();
+
+    // true if this queue is scheduled on (or running on) an I/O thread
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final AtomicLong byteCount = new AtomicLong(0L);
+    private volatile IOException failure/*null if no write has failed*/;
+
+    // the number of buffers that have been submitted and not taken back
+    // NOTE:  only accessed by the encoding thread
+    private int outstandingCount = 0;
+
+    // ========================================================================
+    /**
+     * @param  channel the channel to which the buffers are written. This cannot
+     *         be <code>null</code>.
+     * @param  executor the <code>Executor</code> of the I/O threads. This
+     *         cannot be <code>null</code>.
+     */
+    public WriteBehindQueue(final WritableByteChannel channel, final Executor executor) {
+        this.channel = channel;
+        this.executor = executor;
+    }
+
+    // ========================================================================
+    /**
+     * @return the number of bytes that have been written to the channel
+     */
+    public long getByteCount() { return byteCount.get(); }
+
+    /**
+     * @return the number of buffers that have been submitted and that have
+     *         not been taken back (whether or not they have been written)
+     */
+    public int getOutstandingCount() { return outstandingCount; }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Submits the specified (full) buffer to be written. The buffer is flipped
+     * and may not be used until it is taken back.
+     *
+     * @param  buffer the buffer (in write mode) to be written. This cannot be
+     *         <code>null</code>.
+     * @throws IOException if an earlier write failed or if the buffer cannot
+     *         be written behind
+     */
+    public void submit(final ByteBuffer buffer)
+            throws IOException {
+        checkFailure();
+        buffer.flip();
+        pendingBuffers.add(buffer);
+        outstandingCount++;
+        if(!scheduled.compareAndSet(false, true)) return/*the I/O thread will write the buffer after the earlier ones*/;
+        try {
+            executor.execute(this);
+        } catch(final RejectedExecutionException ree) {
+            // NOTE:  nothing is running so the buffer is returned (unwritten)
+            //        as any buffer is after a failure
+            failure = new IOException(ree);
+            if(pendingBuffers.remove(buffer)) {
+                buffer.clear();
+                writtenBuffers.add(buffer);
+            } /* else -- a running I/O thread took the buffer */
+            scheduled.set(false);
+            checkFailure()/*throws*/;
+        }
+    }
+
+    /**
+     * @return a written buffer (cleared) or <code>null</code> if there is none
+     *         without waiting
+     * @throws IOException if a write failed
+     */
+    public ByteBuffer poll()
+            throws IOException {
+        final ByteBuffer buffer = writtenBuffers.poll();
+        if(buffer != null) outstandingCount--;
+        checkFailure();
+        return buffer;
+    }
+
+    /**
+     * Waits for a buffer to be written. There must be an {@link #getOutstandingCount() outstanding}
+     * buffer.
+     *
+     * @return the written buffer (cleared). This will never be <code>null</code>.
+     * @throws IOException if a write failed or if the thread was interrupted
+     *         while waiting
+     */
+    public ByteBuffer take()
+            throws IOException {
+        final ByteBuffer buffer;
+        try {
+            buffer = writtenBuffers.take();
+        } catch(final InterruptedException ie) {
+            Thread.currentThread().interrupt()/*preserve the interrupt*/;
+            throw new InterruptedIOException("Interrupted while waiting for a field stripe buffer to be written.");
+        }
+        outstandingCount--;
+        checkFailure();
+        return buffer;
+    }
+
+    /**
+     * @throws IOException if a write failed
+     */
+    private void checkFailure()
+            throws IOException {
+        final IOException failure = this.failure;
+        if(failure != null) throw new IOException("Writing a field stripe buffer failed.", failure);
+        /* else -- no write has failed */
+    }
+
+    // ========================================================================
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        while(true) {
+            ByteBuffer buffer;
+            while((buffer = pendingBuffers.poll()) != null) {
+                try {
+                    if(failure == null) {
+                        while(buffer.hasRemaining())
+                            byteCount.addAndGet(channel.write(buffer));
+                    } /* else -- an earlier write failed so the buffer is not written */
+                } catch(final IOException ioe) {
+                    failure = ioe;
+                } catch(final Throwable t) {
+                    // NOTE:  any failure (including an Error) is thrown to the
+                    //        encoding thread rather than leaving it waiting
+                    failure = new IOException(t);
+                } finally {
+                    buffer.clear();
+                    writtenBuffers.add(buffer)/*always returned*/;
+                }
+            }
+
+            scheduled.set(false);
+            // NOTE:  a buffer may have been submitted after the queue was
+            //        found to be empty but before it was unscheduled
+            if(pendingBuffers.isEmpty() || !scheduled.compareAndSet(false, true)) return;
+            /* else -- there are more buffers and this is (re)scheduled */
+        }
+    }
+}
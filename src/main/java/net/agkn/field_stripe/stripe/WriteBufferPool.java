@@ -0,0 +1,334 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A pool of the (optionally direct) buffers of the {@link BufferedChannelOutput outputs}
+ * of the field-stripe writers of a {@link IFieldStripeWriterFactory factory}
+ * with a total memory budget. This bounds the memory of the buffers of a wide
+ * schema (with thousands of leaf fields) regardless of the number of leaves.<p/>
+ *
+ * Each output starts with a buffer of the minimum size. When the buffer is
+ * full it is replaced by one of twice the size (up to the maximum size) rather
+ * than being flushed so that the buffers of the busy field-stripes grow while
+ * those of the sparse field-stripes stay small. If growing would exceed the
+ * budget then the free buffers are discarded and then the largest buffers
+ * (those larger than the size to which the buffer would grow) are flushed and
+ * shrunk to the minimum size, largest first. If there is still not enough
+ * memory then the buffer is flushed rather than grown. (Buffers of the same
+ * size never flush each other so that they cannot thrash.)<p/>
+ *
+ * Every output always has a buffer of at least the minimum size so the budget
+ * must be at least the minimum size times the number of field-stripes. (The
+ * minimum buffers are always allocated.) Buffers are reused when their output
+ * is closed. A discarded direct buffer is only freed when it is garbage
+ * collected.<p/>
+ *
+ * The pool is used by a single (encoding) thread but its {@link WriteBufferPoolMBean statistics}
+ * may be read by any thread (e.g. through JMX).
+ *
+ * @author rgrzywinski
+ * @see BinaryVLenFieldStripeWriter#createFactory(File, boolean, WriteBufferPool)
+ */
+@NotThreadSafe
+public class WriteBufferPool implements WriteBufferPoolMBean {
+    // the default minimum buffer size
+    public static final int DEFAULT_MINIMUM_BUFFER_SIZE = 4 * 1024;
+
+    // ************************************************************************
+    private final long budget;
+    private final int minimumBufferSize;
+    private final int maximumBufferSize;
+    private final boolean direct;
+
+    // the outputs that have a buffer from the pool
+    private final Set<BufferedChannelOutput> outputs = Collections.newSetFromMap(new IdentityHashMap<BufferedChannelOutput, Boolean>());
+
+    // the free buffers by size (largest last)
+    private final TreeMap<Integer, ArrayDeque<ByteBuffer>> freeBuffers = new TreeMap<Integer, ArrayDeque<ByteBuffer>>();
+
+    // ........................................................................
+    // NOTE:  only updated by the (single) encoding thread so volatile suffices
+    //        for the readers of the statistics
+    private volatile long allocatedBytes = 0L;
+    private volatile long peakAllocatedBytes = 0L;
+    private volatile long growCount = 0L;
+    private volatile long spillCount = 0L;
+    private volatile long deniedCount = 0L;
+
+    // ========================================================================
+    /**
+     * @param  budget the total size in bytes of the buffers. This must be at
+     *         least the minimum buffer size.
+     * @param  minimumBufferSize the size in bytes of the buffer with which each
+     *         output starts (and to which it is shrunk). This must be at least
+     *         {@link BufferedChannelOutput#MINIMUM_BUFFER_SIZE}.
+     * @param  maximumBufferSize the size in bytes that a buffer can grow to.
+     *         This must be at least the minimum buffer size. If it is the
+     *         minimum buffer size then the buffers never grow.
+     * @param  direct <code>true</code> if the buffers are direct (off-heap).
+     *         <code>false</code> for heap buffers.
+     */
+    public WriteBufferPool(final long budget, final int minimumBufferSize, final int maximumBufferSize, final boolean direct) {
+        if(minimumBufferSize < BufferedChannelOutput.MINIMUM_BUFFER_SIZE) throw new IllegalArgumentException("The minimum buffer size must be at least " + BufferedChannelOutput.MINIMUM_BUFFER_SIZE + " bytes (" + minimumBufferSize + ").");
+        if(maximumBufferSize < minimumBufferSize) throw new IllegalArgumentException("The maximum buffer size must be at least the minimum buffer size (" + maximumBufferSize + " < " + minimumBufferSize + ").");
+        if(budget < minimumBufferSize) throw new IllegalArgumentException("The budget must be at least the minimum buffer size (" + budget + " < " + minimumBufferSize + ").");
+        this.budget = budget;
+        this.minimumBufferSize = minimumBufferSize;
+        this.maximumBufferSize = maximumBufferSize;
+        this.direct = direct;
+    }
+
+    // ========================================================================
+    /**
+     * Registers the specified output with the pool.
+     *
+     * @return the minimum-sized buffer of the output (in write mode). This
+     *         will never be <code>null</code>.
+     */
+    /*package*/ ByteBuffer open(final BufferedChannelOutput output) {
+        outputs.add(output);
+        return acquire(minimumBufferSize);
+    }
+
+    /**
+     * Unregisters the specified (closed) output from the pool and frees its
+     * buffer.
+     */
+    /*package*/ void close(final BufferedChannelOutput output, final ByteBuffer buffer) {
+        if(!outputs.remove(output)) return/*already closed*/;
+        free(buffer);
+    }
+
+    /**
+     * Replaces the specified full buffer of an output with a larger one if
+     * the buffer is not at the maximum size and there is room within the budget
+     * (possibly by flushing the largest buffers of the other outputs).
+     *
+     * @param  buffer the (full) buffer of the output. This cannot be <code>null</code>.
+     * @return the larger buffer (in write mode and empty) or <code>null</code>
+     *         if the buffer cannot grow (in which case the output must flush
+     *         its buffer). The caller must {@link #free(ByteBuffer) free} the
+     *         full buffer once its contents have been copied.
+     * @throws IOException if another output could not be flushed
+     */
+    /*package*/ ByteBuffer grow(final ByteBuffer buffer)
+            throws IOException {
+        final int size = (int)Math.min(((long)buffer.capacity() << 1), maximumBufferSize);
+        if(size <= buffer.capacity()) return null/*already the maximum size*/;
+
+        while(true) {
+            final ByteBuffer freeBuffer = takeFree(size);
+            if(freeBuffer != null) {
+                growCount++;
+                return freeBuffer;
+            } /* else -- there is no free buffer of the size */
+
+            if((allocatedBytes + size) <= budget) {
+                growCount++;
+                return allocate(size);
+            } /* else -- over budget */
+
+            if(!freeBuffers.isEmpty()) {
+                discardLargestFree();
+                continue/*try again*/;
+            } /* else -- there are no free buffers to discard */
+
+            final BufferedChannelOutput largestOutput = findLargest(size);
+            if(largestOutput == null) {
+                deniedCount++;
+                return null/*there are no larger buffers to flush*/;
+            } /* else -- flush the largest and shrink it */
+            largestOutput.spill(acquire(minimumBufferSize));
+            spillCount++;
+        }
+    }
+
+    /**
+     * Frees the specified buffer (that was acquired from this pool) for reuse.
+     */
+    /*package*/ void free(final ByteBuffer buffer) {
+        buffer.clear();
+        ArrayDeque<ByteBuffer> buffers = freeBuffers.get(buffer.capacity());
+        if(buffers == null) {
+            buffers = new ArrayDeque<ByteBuffer>();
+            freeBuffers.put(buffer.capacity(), buffers);
+        } /* else -- there are other free buffers of the size */
+        buffers.push(buffer);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return a free buffer of the specified size or a newly allocated one if
+     *         it is within the budget. <code>null</code> if there is no free
+     *         buffer and allocating one would exceed the budget. (No buffers
+     *         are flushed.)
+     */
+    /*package*/ ByteBuffer tryAcquire(final int size) {
+        final ByteBuffer freeBuffer = takeFree(size);
+        if(freeBuffer != null) return freeBuffer;
+        while(((allocatedBytes + size) > budget) && !freeBuffers.isEmpty())
+            discardLargestFree();
+        return ((allocatedBytes + size) <= budget) ? allocate(size) : null/*over budget*/;
+    }
+
+    /**
+     * @return a free buffer of the specified size or a newly allocated one.
+     *         The buffer is allocated regardless of the budget.
+     */
+    private ByteBuffer acquire(final int size) {
+        final ByteBuffer freeBuffer = takeFree(size);
+        return (freeBuffer != null) ? freeBuffer : allocate(size);
+    }
+
+    /**
+     * @return a (new) buffer of the specified size that is accounted for
+     */
+    private ByteBuffer allocate(final int size) {
+        allocatedBytes += size;
+        if(allocatedBytes > peakAllocatedBytes) peakAllocatedBytes = allocatedBytes;
+        return (direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return a free buffer of the specified size or <code>null</code> if
+     *         there is none
+     */
+    private ByteBuffer takeFree(final int size) {
+        final ArrayDeque<ByteBuffer> buffers = freeBuffers.get(size);
+        if(buffers == null) return null/*none of the size*/;
+        final ByteBuffer buffer = buffers.pop();
+        if(buffers.isEmpty()) freeBuffers.remove(size);
+        return buffer;
+    }
+
+    /**
+     * Discards (i.e. leaves to the garbage collector) one of the largest free
+     * buffers.
+     */
+    private void discardLargestFree() {
+        final Map.Entry<Integer, ArrayDeque<ByteBuffer>> entry = freeBuffers.lastEntry();
+        entry.getValue().pop();
+        if(entry.getValue().isEmpty()) freeBuffers.remove(entry.getKey());
+        allocatedBytes -= entry.getKey();
+    }
+
+    /**
+     * @return the output with the largest buffer that is larger than the
+     *         specified size or <code>null</code> if there is none
+     */
+    // NOTE:  this is linear in the number of outputs but it is only called
+    //        when the budget is exhausted
+    private BufferedChannelOutput findLargest(final int size) {
+        BufferedChannelOutput largestOutput = null;
+        int largestSize = size;
+        for(final BufferedChannelOutput output : outputs) {
+            final int capacity = output.getBufferCapacity();
+            if(capacity <= largestSize) continue/*not larger*/;
+            largestOutput = output;
+            largestSize = capacity;
+        }
+        return largestOutput;
+    }
+
+    // ========================================================================
+    // statistics
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.WriteBufferPoolMBean#getBudget()
+     */
+    @Override
+    public long getBudget() { return budget; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.WriteBufferPoolMBean#getMinimumBufferSize()
+     */
+    @Override
+    public int getMinimumBufferSize() { return minimumBufferSize; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.WriteBufferPoolMBean#getMaximumBufferSize()
+     */
+    @Override
+    public int getMaximumBufferSize() { return maximumBufferSize; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.WriteBufferPoolMBean#isDirect()
+     */
+    @Override
+    public boolean isDirect() { return direct; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.WriteBufferPoolMBean#getAllocatedBytes()
+     */
+    @Override
+    public long getAllocatedBytes() { return allocatedBytes; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.WriteBufferPoolMBean#getPeakAllocatedBytes()
+     */
+    @Override
+    public long getPeakAllocatedBytes() { return peakAllocatedBytes; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.WriteBufferPoolMBean#getOutputCount()
+     */
+    // NOTE:  the size of the set may be read by any thread (though it may be
+    //        slightly stale)
+    @Override
+    public int getOutputCount() { return outputs.size(); }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.WriteBufferPoolMBean#getGrowCount()
+     */
+    @Override
+    public long getGrowCount() { return growCount; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.WriteBufferPoolMBean#getSpillCount()
+     */
+    @Override
+    public long getSpillCount() { return spillCount; }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.WriteBufferPoolMBean#getDeniedCount()
+     */
+    @Override
+    public long getDeniedCount() { return deniedCount; }
+
+    // ------------------------------------------------------------------------
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "WriteBufferPool[budget=" + budget + ", allocated=" + allocatedBytes + ", peak=" + peakAllocatedBytes + ", outputs=" + getOutputCount() +
+               ", grows=" + growCount + ", spills=" + spillCount + ", denied=" + deniedCount + "]";
+    }
+}
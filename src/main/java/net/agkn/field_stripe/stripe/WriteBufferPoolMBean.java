@@ -0,0 +1,72 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The JMX management interface (and statistics) of {@link WriteBufferPool}.
+ * All sizes are in bytes.
+ *
+ * @author rgrzywinski
+ */
+public interface WriteBufferPoolMBean {
+    /**
+     * @return the total memory budget of the buffers
+     */
+    long getBudget();
+
+    int getMinimumBufferSize();
+    int getMaximumBufferSize();
+    boolean isDirect();
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the memory of all buffers that the pool holds (both those in
+     *         use and those that are free)
+     */
+    long getAllocatedBytes();
+
+    /**
+     * @return the largest value of {@link #getAllocatedBytes()}
+     */
+    long getPeakAllocatedBytes();
+
+    /**
+     * @return the number of outputs (i.e. open field-stripes) that currently
+     *         use a buffer from the pool
+     */
+    int getOutputCount();
+
+    // ------------------------------------------------------------------------
+    /**
+     * @return the number of times that a full buffer was replaced by a larger
+     *         one (rather than being flushed)
+     */
+    long getGrowCount();
+
+    /**
+     * @return the number of times that a buffer was flushed early (and shrunk
+     *         to the minimum size) so that another buffer could grow within
+     *         the budget
+     */
+    long getSpillCount();
+
+    /**
+     * @return the number of times that a buffer could not grow within the
+     *         budget (and was flushed instead)
+     */
+    long getDeniedCount();
+}
@@ -22,6 +22,7 @@ import java.io.Reader;
 
 import net.agkn.field_stripe.exception.DeveloperException;
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.HexBytes;
 import net.agkn.field_stripe.record.IField;
 import net.agkn.field_stripe.record.PrimitiveType;
 import net.agkn.field_stripe.stripe.Instruction.Kind;
@@ -101,6 +102,20 @@ public class XMLFieldStripeReader implements IFieldStripeReader {
             throw new OperationFailedException("Unknown instruction in field \"" + field.getName() + "\": " + elementName);
     }
 
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeReader#close()
+     */
+    @Override
+    public void close()
+            throws OperationFailedException {
+        try {
+            reader.close()/*closing a closed reader has no effect*/;
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+
+    // ------------------------------------------------------------------------
     /**
      * Extracts and returns the value from the specified XML instruction string.
      */
@@ -119,7 +134,8 @@ public class XMLFieldStripeReader implements IFieldStripeReader {
      * Parses the specified non-<code>null</code> string value into the appropriate
      * type based on the {@link IField field's} {@link IField#getType() type}.
      */
-    private Object parseValue(final String stringValue) {
+    private Object parseValue(final String stringValue)
+            throws OperationFailedException {
         switch(fieldType) {
             case BYTE:
                 return Byte.parseByte(stringValue);
@@ -137,6 +153,8 @@ public class XMLFieldStripeReader implements IFieldStripeReader {
                 return Boolean.parseBoolean(stringValue);
             case STRING:
                 return StringEscapeUtils.unescapeXml(stringValue);
+            case BYTES:
+                return HexBytes.fromHex(stringValue);
             
             default:
                 throw new DeveloperException("Unknown field type in field \"" + field.getName() + ".");
@@ -18,8 +18,10 @@ package net.agkn.field_stripe.stripe;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 
 import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.HexBytes;
 
 import org.apache.commons.lang.StringEscapeUtils;
 
@@ -285,4 +287,21 @@ public class XMLFieldStripeWriter implements IFieldStripeWriter {
             throw new OperationFailedException(ioe);
         }
     }
-}
\ No newline at end of file
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeWriter#writeValue(java.nio.ByteBuffer)
+     */
+    @Override
+    public void writeValue(final ByteBuffer value)
+            throws IllegalStateException, OperationFailedException {
+        if(closed) throw new IllegalStateException("The XML field stripe writer has already been closed.")/*by contract*/;
+        try {
+            writer.write(VALUE_START);
+            writer.write(HexBytes.toHex(value));
+            writer.write(VALUE_END);
+            writer.write('\n');
+        } catch(final IOException ioe) {
+            throw new OperationFailedException(ioe);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package net.agkn.field_stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.agkn.field_stripe.encode.ParallelRecordEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.reader.FileChunk;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.IRecordReaderFactory;
+import net.agkn.field_stripe.record.reader.MappedFileChunker;
+import net.agkn.field_stripe.record.reader.StreamingJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.IRecordWriter;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+import net.agkn.field_stripe.stripe.ChunkSetManifest;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link FileRecordDecoder}.
+ *
+ * @author rgrzywinski
+ */
+public class FileRecordDecoderTest {
+    // the open file descriptors of this process (Linux only)
+    private static final File FILE_DESCRIPTORS = new File("/proc/self/fd");
+
+    /**
+     * Decodes a chunk set of several chunks and asserts that the records are
+     * the encoded records and that no stripe of any chunk is left open.
+     */
+    @Test
+    public void decodeChunksTest() throws Exception {
+        if(!FILE_DESCRIPTORS.isDirectory()) throw new SkipException("The open files of the process cannot be listed.");
+
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required int64    int64_field = 1;\n" +
+            "    repeated string   string_field = 2;\n" +
+            "    message Nested {\n" +
+            "        optional int32    int32_field = 1;\n" +
+            "        optional bool     bool_field = 2;\n" +
+            "    }\n" +
+            "    optional Nested   nested_field = 3;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final StringBuilder input = new StringBuilder();
+        for(int i=0; i<100; i++)
+            input.append("[" + i + ",[\"s" + i + "\"]," + (((i % 3) == 0) ? "null" : ("[" + i + ",true]")) + "]\n");
+
+        final File inputFile = File.createTempFile("decoder", ".json");
+        final File outputPath = new File(inputFile.getPath() + ".out");
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            FileUtils.writeStringToFile(inputFile, input.toString(), "UTF-8");
+            assertTrue(outputPath.mkdir(), "Output path created");
+            final List<FileChunk> chunks = MappedFileChunker.split(inputFile, 256L/*several chunks*/);
+            assertTrue(chunks.size() > 3, Integer.toString(chunks.size()));
+            final IRecordReaderFactory recordReaderFactory = new IRecordReaderFactory() {
+                @Override
+                public IRecordReader createRecordReader(final Reader reader) {
+                    return new StreamingJsonArrayRecordReader(reader);
+                }
+            };
+            new ParallelRecordEncoder(schema, recordReaderFactory, Charset.forName("UTF-8"), executor).encode(chunks, outputPath);
+
+            final StringWriter output = new StringWriter();
+            final IRecordWriter recordWriter = new JsonArrayRecordWriter(output, false/*no pretty-print*/);
+            FileRecordDecoder.decodeChunks(outputPath, ChunkSetManifest.read(outputPath), null/*read synchronously*/, recordWriter);
+            recordWriter.close();
+            assertEquals(output.toString(), input.toString().trim()/*the writer only separates records*/);
+
+            assertEquals(getOpenFiles(outputPath), new ArrayList<String>(), "Open stripes");
+        } finally {
+            executor.shutdown();
+            FileUtils.deleteQuietly(inputFile);
+            FileUtils.deleteQuietly(outputPath);
+        }
+    }
+
+    // ************************************************************************
+    /**
+     * @return the paths of the files beneath the specified directory that are
+     *         open by this process. This will never be <code>null</code>.
+     */
+    private static List<String> getOpenFiles(final File directory) throws IOException {
+        final String directoryPath = directory.getCanonicalPath() + File.separator;
+        final List<String> openFiles = new ArrayList<String>();
+        final File[] fileDescriptors = FILE_DESCRIPTORS.listFiles();
+        if(fileDescriptors == null) return openFiles/*none listed*/;
+        for(final File fileDescriptor : fileDescriptors) {
+            final String path;
+            try {
+                path = fileDescriptor.getCanonicalPath()/*the open file*/;
+            } catch(final IOException ioe) {
+                continue/*closed while listing*/;
+            }
+            if(path.startsWith(directoryPath)) openFiles.add(path);
+            /* else -- not a stripe */
+        }
+        return openFiles;
+    }
+}
@@ -272,7 +272,15 @@ public class FieldStripeDecoderFactoryTest {
             return new IFieldStripeReader() {
                 @Override
                 public Instruction readInstruction() { throw new DeveloperException("Called readInstruction() on a mock IFieldStripeReader."); }
+                @Override
+                public void close() {/*nothing to close*/}
             };
         }
+
+        /* (non-Javadoc)
+         * @see net.agkn.field_stripe.stripe.IFieldStripeReaderFactory#closeAllReaders()
+         */
+        @Override
+        public void closeAllReaders() {/*nothing to close*/}
     }
 }
\ No newline at end of file
@@ -163,4 +163,65 @@ public class NoRepeatedParentStripeDecoderTest {
         assertEquals(recordDecodeCount, recordCount, "Decoded record count");
         assertEquals(records.toString(), jsonRecord, "Decoded records");
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests decoding the (dense) field stripes of set nodes (including the root)
+     * whose first child is an unset optional node. The unset parent depth of
+     * the first child is then deeper than the node which must not be taken to
+     * mean that the node itself is unset.
+     */
+    @Test
+    public void unsetFirstChildNodeTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" + 
+            "    message InnerMessage {\n" +
+            "        optional int32    int32_field = 1;\n" +
+            "    }\n" +
+            "    message OuterMessage {\n" +
+            "        optional InnerMessage inner_message_field = 1;\n" +
+            "        required int64    int64_field = 2;\n" +
+            "    }\n" +
+            "    optional InnerMessage inner_message_field = 1;\n" +
+            "    required OuterMessage outer_message_required_field = 2;\n" +
+            "    optional OuterMessage outer_message_optional_field = 3;\n" +
+            "}\n";
+        final SchemaBuilder schemaBuilder = new SchemaBuilder();
+        final ICompositeType schema = schemaBuilder.createSchema(protobufText, "Message");
+
+        // ....................................................................
+        final TestXMLFieldStripeWriterFactory fieldStripeWriterFactory = new TestXMLFieldStripeWriterFactory();
+        final FieldStripeEncoderFactory encoderFactory = new FieldStripeEncoderFactory(fieldStripeWriterFactory);
+        final RootFieldStripeEncoder rootEncoder = encoderFactory.createEncoderTree(schema);
+        assertNotNull(rootEncoder, "Root field stripe encoder");
+
+        // ....................................................................
+        // stripe a series of records (JSON-array-based)
+        final String jsonRecord = 
+            "[null,[null,121],[null,131]]\n"/*unset first child of the root and of each set node*/ +
+            "[[211],[[221],222],null]\n" +
+            "[null,[[null],321],[[331],332]]";
+        final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(jsonRecord));
+        int recordCount = 0/*none to start*/;
+        while(rootEncoder.encode(recordReader))
+            recordCount++;
+
+        // ....................................................................
+        final TestXMLFieldStripeReaderFactory fieldStripeReaderFactory = TestXMLFieldStripeReaderFactory.createReaderFactory(schema, fieldStripeWriterFactory);
+        final FieldStripeDecoderFactory decoderFactory = new FieldStripeDecoderFactory(fieldStripeReaderFactory);
+        final RootFieldStripeDecoder rootDecoder = decoderFactory.createDecoderTree(schema);
+        assertNotNull(rootEncoder, "Root field stripe decoder");
+
+        // ....................................................................
+        // decode the stripes into records and validate the number of records
+        // and their contents
+        final StringWriter records = new StringWriter();
+        final IRecordWriter recordWriter = new JsonArrayRecordWriter(records, false/*no pretty-print*/);
+        int recordDecodeCount = 0/*none to start*/;
+        while(rootDecoder.decode(recordWriter)) 
+            recordDecodeCount++;
+        recordWriter.close()/*by contract*/;
+        assertEquals(recordDecodeCount, recordCount, "Decoded record count");
+        assertEquals(records.toString(), jsonRecord, "Decoded records");
+    }
+}
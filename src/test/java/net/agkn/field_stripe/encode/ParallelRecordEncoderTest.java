@@ -0,0 +1,328 @@
+package net.agkn.field_stripe.encode;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.reader.FileChunk;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.IRecordReaderFactory;
+import net.agkn.field_stripe.record.reader.MappedFileChunker;
+import net.agkn.field_stripe.record.reader.StreamingJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.IRecordWriter;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+import net.agkn.field_stripe.stripe.BinaryVLenFieldStripeReader;
+import net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter;
+import net.agkn.field_stripe.stripe.ChunkSetManifest;
+import net.agkn.field_stripe.stripe.FixedWidthFieldStripe;
+import net.agkn.field_stripe.stripe.IFieldStripeWriter;
+import net.agkn.field_stripe.stripe.IFieldStripeWriterFactory;
+import net.agkn.field_stripe.stripe.IStripeSetWriterFactory;
+import net.agkn.field_stripe.stripe.StripeSetManifest;
+import net.agkn.field_stripe.stripe.WriteBufferPool;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link ParallelRecordEncoder}. The encoded chunks are
+ * decoded and compared against the input.
+ *
+ * @author rgrzywinski
+ */
+public class ParallelRecordEncoderTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final IRecordReaderFactory JSON_READER_FACTORY = new IRecordReaderFactory() {
+        @Override
+        public IRecordReader createRecordReader(final Reader reader) {
+            return new StreamingJsonArrayRecordReader(reader);
+        }
+    };
+
+    /**
+     * Encodes a multi-chunk file and decodes each chunk in chunk order.
+     */
+    @Test
+    public void roundTripTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required int32    int32_field = 1;\n" +
+            "    repeated string   string_field = 2;\n" +
+            "}\n";
+        final SchemaBuilder schemaBuilder = new SchemaBuilder();
+        final ICompositeType schema = schemaBuilder.createSchema(protobufText, "Message");
+
+        final StringBuilder input = new StringBuilder();
+        for(int i=0; i<100; i++)
+            input.append("[").append(i).append(",[\"a").append(i).append("\",\"b\"]]\n");
+        final File inputFile = File.createTempFile("parallel", ".json");
+        final File outputPath = new File(inputFile.getPath() + ".out");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FileUtils.writeStringToFile(inputFile, input.toString(), "UTF-8");
+            assertEquals(outputPath.mkdir(), true, "Output path created");
+
+            final List<FileChunk> chunks = MappedFileChunker.split(inputFile, 128L);
+            assertEquals(chunks.size() > 1, true, "Multiple chunks");
+
+            final ParallelRecordEncoder encoder = new ParallelRecordEncoder(schema, JSON_READER_FACTORY, UTF8, executor);
+            assertEquals(encoder.encode(chunks, outputPath), 100L);
+
+            // decode each chunk in order and compare to the input
+            final StringWriter output = new StringWriter();
+            final IRecordWriter recordWriter = new JsonArrayRecordWriter(output, false/*no pretty-print*/);
+            for(final FileChunk chunk : chunks) {
+                final File chunkPath = new File(outputPath, ParallelRecordEncoder.getChunkDirectoryName(chunk.getIndex()));
+                final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(BinaryVLenFieldStripeReader.createFactory(chunkPath)).createDecoderTree(schema);
+                while(rootDecoder.decode(recordWriter));
+            }
+            recordWriter.close();
+            assertEquals(output.toString(), input.toString().trim()/*the writer only separates records*/);
+        } finally {
+            executor.shutdown();
+            FileUtils.deleteQuietly(inputFile);
+            FileUtils.deleteQuietly(outputPath);
+        }
+    }
+
+    /**
+     * Encodes a multi-chunk file with sparse subtrees and fixed-width stripes
+     * and asserts that each chunk is written with those options.
+     */
+    @Test
+    public void optionsTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required int32    int32_field = 1;\n" +
+            "    optional Nested   nested_field = 2;\n" +
+            "}\n" +
+            "message Nested {\n" +
+            "    optional string   string_field = 1;\n" +
+            "}\n";
+        final SchemaBuilder schemaBuilder = new SchemaBuilder();
+        final ICompositeType schema = schemaBuilder.createSchema(protobufText, "Message");
+
+        final StringBuilder input = new StringBuilder();
+        for(int i=0; i<100; i++)
+            input.append("[").append(i).append(",").append(((i % 3) == 0) ? "[\"s" + i + "\"]" : "null").append("]\n");
+        final File inputFile = File.createTempFile("parallel", ".json");
+        final File outputPath = new File(inputFile.getPath() + ".out");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FileUtils.writeStringToFile(inputFile, input.toString(), "UTF-8");
+            assertEquals(outputPath.mkdir(), true, "Output path created");
+
+            final List<FileChunk> chunks = MappedFileChunker.split(inputFile, 128L);
+            assertEquals(chunks.size() > 1, true, "Multiple chunks");
+
+            final IStripeSetWriterFactory stripeSetWriterFactory = new IStripeSetWriterFactory() {
+                @Override
+                public IFieldStripeWriterFactory createWriterFactory(final File fsPath)
+                        throws OperationFailedException {
+                    // NOTE:  a pool is used by a single thread so each chunk
+                    //        has its own
+                    return BinaryVLenFieldStripeWriter.createFactory(fsPath, true/*fixed-width*/, new WriteBufferPool(1024/*budget*/, 16, 64, false/*heap*/));
+                }
+            };
+            final ParallelRecordEncoder encoder = new ParallelRecordEncoder(schema, JSON_READER_FACTORY, UTF8, stripeSetWriterFactory, true/*sparse subtrees*/, executor);
+            assertEquals(encoder.encode(chunks, outputPath), 100L);
+
+            // decode each chunk from its manifest in order and compare to the input
+            final StringWriter output = new StringWriter();
+            final IRecordWriter recordWriter = new JsonArrayRecordWriter(output, false/*no pretty-print*/);
+            for(final FileChunk chunk : chunks) {
+                final File chunkPath = new File(outputPath, ParallelRecordEncoder.getChunkDirectoryName(chunk.getIndex()));
+                final StripeSetManifest manifest = StripeSetManifest.read(chunkPath);
+                assertEquals(manifest.isSparseSubtrees(), true, "Sparse subtrees");
+                assertEquals(FixedWidthFieldStripe.open(chunkPath, schema.getFields().get(0)/*int32_field*/).getValueCount(), manifest.getRecordCount(), "Fixed-width");
+                final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(manifest.createReaderFactory(chunkPath), true/*sparse subtrees*/).createDecoderTree(schema);
+                while(rootDecoder.decode(recordWriter));
+            }
+            recordWriter.close();
+            assertEquals(output.toString(), input.toString().trim()/*the writer only separates records*/);
+        } finally {
+            executor.shutdown();
+            FileUtils.deleteQuietly(inputFile);
+            FileUtils.deleteQuietly(outputPath);
+        }
+    }
+
+    /**
+     * Encodes many chunks concurrently and decodes them through the {@link ChunkSetManifest}
+     * that lists them.
+     */
+    @Test
+    public void chunkManifestTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required int64    int64_field = 1;\n" +
+            "    repeated string   string_field = 2;\n" +
+            "    optional bytes    bytes_field = 3;\n" +
+            "}\n";
+        final SchemaBuilder schemaBuilder = new SchemaBuilder();
+        final ICompositeType schema = schemaBuilder.createSchema(protobufText, "Message");
+
+        // NOTE:  the values alternate between set and unset so that a chunk
+        //        that is affected by the encoding of another is detected
+        final StringBuilder input = new StringBuilder();
+        for(int i=0; i<20000; i++) {
+            input.append("[").append(i).append(",[");
+            for(int j=0; j<(i % 4); j++)
+                input.append((j > 0) ? "," : "").append("\"t").append(j).append("\"");
+            input.append("],").append(((i % 2) == 0) ? String.format("\"%08x\"", i) : "null").append("]\n");
+        }
+        final File inputFile = File.createTempFile("parallel", ".json");
+        final File outputPath = new File(inputFile.getPath() + ".out");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FileUtils.writeStringToFile(inputFile, input.toString(), "UTF-8");
+            assertEquals(outputPath.mkdir(), true, "Output path created");
+
+            final List<FileChunk> chunks = MappedFileChunker.split(inputFile, 65536L);
+            final ParallelRecordEncoder encoder = new ParallelRecordEncoder(schema, JSON_READER_FACTORY, UTF8, executor);
+            assertEquals(encoder.encode(chunks, outputPath), 20000L);
+
+            assertEquals(ChunkSetManifest.exists(outputPath), true, "Chunk manifest written");
+            final ChunkSetManifest chunkManifest = ChunkSetManifest.read(outputPath);
+            assertEquals(chunkManifest.getChunks().size(), chunks.size());
+            assertEquals(chunkManifest.getRecordCount(), 20000L);
+
+            // decode the chunks in the order of the chunk manifest and compare
+            // to the input
+            final StringWriter output = new StringWriter();
+            final IRecordWriter recordWriter = new JsonArrayRecordWriter(output, false/*no pretty-print*/);
+            for(final ChunkSetManifest.Chunk chunk : chunkManifest.getChunks()) {
+                final StripeSetManifest manifest = chunkManifest.readChunkManifest(outputPath, chunk);
+                final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(manifest.createReaderFactory(chunk.getPath(outputPath)), chunkManifest.isSparseSubtrees()).createDecoderTree(chunkManifest.getSchema());
+                while(rootDecoder.decode(recordWriter));
+            }
+            recordWriter.close();
+            assertEquals(output.toString(), input.toString().trim()/*the writer only separates records*/);
+        } finally {
+            executor.shutdown();
+            FileUtils.deleteQuietly(inputFile);
+            FileUtils.deleteQuietly(outputPath);
+        }
+    }
+
+    /**
+     * Tests that the names of the chunk directories sort in chunk order.
+     */
+    @Test
+    public void chunkDirectoryNameTest() throws Exception {
+        final int[] chunkIndexes = { 0, 1, 9, 10, 99999, 100000, 1000000, Integer.MAX_VALUE };
+        for(int i=1; i<chunkIndexes.length; i++) {
+            final String previousName = ParallelRecordEncoder.getChunkDirectoryName(chunkIndexes[i - 1]);
+            final String name = ParallelRecordEncoder.getChunkDirectoryName(chunkIndexes[i]);
+            assertTrue(previousName.compareTo(name) < 0, previousName + " < " + name);
+        }
+    }
+
+    /**
+     * Tests that the failure of a chunk is reported and that a failure to close
+     * the writers of a chunk is only reported if the chunk was otherwise encoded.
+     */
+    @Test
+    public void failureTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required int32    int32_field = 1;\n" +
+            "}\n";
+        final SchemaBuilder schemaBuilder = new SchemaBuilder();
+        final ICompositeType schema = schemaBuilder.createSchema(protobufText, "Message");
+
+        final File inputFile = File.createTempFile("parallel", ".json");
+        final File outputPath = new File(inputFile.getPath() + ".out");
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            FileUtils.writeStringToFile(inputFile, "[1]\n[2]\n[\"three\"]\n[4]\n", "UTF-8");
+            assertEquals(outputPath.mkdir(), true, "Output path created");
+
+            final List<FileChunk> chunks = MappedFileChunker.split(inputFile, 1L);
+            final ParallelRecordEncoder encoder = new ParallelRecordEncoder(schema, JSON_READER_FACTORY, UTF8, executor);
+            try {
+                encoder.encode(chunks, outputPath);
+                assert false : "Expected an exception.";
+            } catch(final InvalidDataException ide) {
+                /* expected */
+            }
+
+            // writers that fail to close
+            final IStripeSetWriterFactory failingStripeSetWriterFactory = new IStripeSetWriterFactory() {
+                @Override
+                public IFieldStripeWriterFactory createWriterFactory(final File fsPath)
+                        throws OperationFailedException {
+                    final IFieldStripeWriterFactory writerFactory = BinaryVLenFieldStripeWriter.createFactory(fsPath, false/*not fixed-width*/);
+                    return new IFieldStripeWriterFactory() {
+                        @Override
+                        public IFieldStripeWriter createFieldStripeWriter(final IField field)
+                                throws OperationFailedException {
+                            return writerFactory.createFieldStripeWriter(field);
+                        }
+                        @Override
+                        public void closeAllWriters()
+                                throws OperationFailedException {
+                            writerFactory.closeAllWriters();
+                            throw new OperationFailedException("Close failed.");
+                        }
+                    };
+                }
+            };
+            final ParallelRecordEncoder failingEncoder = new ParallelRecordEncoder(schema, JSON_READER_FACTORY, UTF8, failingStripeSetWriterFactory, false/*not sparse*/, executor);
+            FileUtils.writeStringToFile(inputFile, "[\"three\"]\n"/*the only chunk fails*/, "UTF-8");
+            try {
+                failingEncoder.encode(MappedFileChunker.split(inputFile, 1L), outputPath);
+                assert false : "Expected an exception.";
+            } catch(final InvalidDataException ide) {
+                /* expected -- the parse failure rather than the close failure */
+            }
+
+            FileUtils.writeStringToFile(inputFile, "[1]\n[2]\n", "UTF-8");
+            try {
+                failingEncoder.encode(MappedFileChunker.split(inputFile, 1L), outputPath);
+                assert false : "Expected an exception.";
+            } catch(final OperationFailedException ofe) {
+                /* expected -- the chunks were encoded so the close failure is reported */
+                assertEquals(ofe.getMessage(), "Close failed.");
+            }
+        } finally {
+            executor.shutdown();
+            FileUtils.deleteQuietly(inputFile);
+            FileUtils.deleteQuietly(outputPath);
+        }
+    }
+}
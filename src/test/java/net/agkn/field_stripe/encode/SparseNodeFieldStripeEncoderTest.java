@@ -0,0 +1,233 @@
+package net.agkn.field_stripe.encode;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.powermock.reflect.Whitebox.getInternalState;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.record.FieldQualifier;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.generator.RecordTranscoder;
+import net.agkn.field_stripe.record.generator.SyntheticRecordConfig;
+import net.agkn.field_stripe.record.generator.SyntheticRecordReader;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+import net.agkn.field_stripe.stripe.BinaryVLenFieldStripeReader;
+import net.agkn.field_stripe.stripe.BinaryVLenFieldStripeWriter;
+import net.agkn.field_stripe.stripe.IFieldStripeReaderFactory;
+import net.agkn.field_stripe.stripe.IFieldStripeWriterFactory;
+import net.agkn.field_stripe.stripe.Instruction.Kind;
+import net.agkn.field_stripe.stripe.StripeSetManifest;
+import net.agkn.field_stripe.stripe.StripeStatistics;
+import net.agkn.field_stripe.stripe.StructureField;
+import net.agkn.field_stripe.stripe.TestXMLFieldStripeWriterFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link SparseNodeFieldStripeEncoder} (and the corresponding
+ * {@link net.agkn.field_stripe.decode.SparseNodeFieldStripeDecoder decoder}).
+ *
+ * @author rgrzywinski
+ */
+public class SparseNodeFieldStripeEncoderTest {
+    private static final String PROTOBUF_TEXT =
+        "package package_name;\n"/*required by Protostuff*/ +
+        "message Message {\n" +
+        "    required int64    long_field = 1;\n" +
+        "    message InnerMessage {\n" +
+        "        repeated int32    int_field = 1;\n" +
+        "        optional string   string_field = 2;\n" +
+        "    }\n" +
+        "    message OuterMessage {\n" +
+        "        optional InnerMessage optional_inner_field = 1;\n" +
+        "        repeated InnerMessage repeated_inner_field = 2;\n" +
+        "        required int32    count_field = 3;\n" +
+        "    }\n" +
+        "    optional OuterMessage optional_outer_field = 2;\n" +
+        "    repeated OuterMessage repeated_outer_field = 3;\n" +
+        "    required InnerMessage required_inner_field = 4;\n" +
+        "}\n";
+
+    /**
+     * Tests that only the optional and repeated nodes are sparse.
+     */
+    @Test
+    public void encoderTreeTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+
+        final TestXMLFieldStripeWriterFactory fieldStripeWriterFactory = new TestXMLFieldStripeWriterFactory();
+        final RootFieldStripeEncoder root = new FieldStripeEncoderFactory(fieldStripeWriterFactory, true/*sparse*/).createEncoderTree(schema);
+        assertNotNull(root, "Root field stripe encoder");
+
+        final List<IFieldStripeEncoder> childEncoders = getInternalState(root, "childEncoders");
+        assertEquals(childEncoders.size(), 4, "Child fields / encoders");
+        assertTrue(childEncoders.get(0/*long_field*/) instanceof LeafFieldStripeEncoder, "'long_field' is a primitive");
+        assertTrue(childEncoders.get(1/*optional_outer_field*/) instanceof SparseNodeFieldStripeEncoder, "'optional_outer_field' is sparse");
+        assertTrue(childEncoders.get(2/*repeated_outer_field*/) instanceof SparseNodeFieldStripeEncoder, "'repeated_outer_field' is sparse");
+        assertTrue(childEncoders.get(3/*required_inner_field*/) instanceof NodeFieldStripeEncoder, "'required_inner_field' is not sparse");
+
+        final List<IFieldStripeEncoder> outerEncoders = getInternalState(childEncoders.get(1/*optional_outer_field*/), "childEncoders");
+        assertTrue(outerEncoders.get(0/*optional_inner_field*/) instanceof SparseNodeFieldStripeEncoder, "'optional_inner_field' is sparse");
+        assertTrue(outerEncoders.get(1/*repeated_inner_field*/) instanceof SparseNodeFieldStripeEncoder, "'repeated_inner_field' is sparse");
+        assertTrue(outerEncoders.get(2/*count_field*/) instanceof LeafFieldStripeEncoder, "'count_field' is a primitive");
+
+        assertFalse(StructureField.isSparse(schema.getField(0/*long_field*/)), "Leaves are never sparse");
+        assertFalse(StructureField.isSparse(schema.getField(3/*required_inner_field*/)), "Required nodes are never sparse");
+    }
+
+    /**
+     * Tests that sparse and non-sparse field-stripes both decode to the records
+     * that were encoded (as transcoded directly from the same records).
+     */
+    @Test
+    public void roundTripTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+        final SyntheticRecordConfig config = new SyntheticRecordConfig()
+            .setNullRatio(FieldQualifier.ZERO_OR_ONE, 0.5)
+            .setRepetitions(0, 3);
+
+        final File basePath = File.createTempFile("sparse", ".test");
+        try {
+            assertTrue(basePath.delete() && basePath.mkdir(), "Base path created");
+            for(long seed=0; seed<4; seed++) {
+                final File densePath = new File(basePath, "dense-" + seed);
+                final File sparsePath = new File(basePath, "sparse-" + seed);
+                assertEquals(encode(schema, new SyntheticRecordReader(schema, config, seed, 500L/*records*/), densePath, false/*not sparse*/), 500L);
+                assertEquals(encode(schema, new SyntheticRecordReader(schema, config, seed, 500L/*records*/), sparsePath, true/*sparse*/), 500L);
+
+                final StringWriter stringWriter = new StringWriter();
+                final JsonArrayRecordWriter recordWriter = new JsonArrayRecordWriter(stringWriter, false/*no pretty print*/);
+                final RecordTranscoder transcoder = new RecordTranscoder(schema);
+                final IRecordReader recordReader = new SyntheticRecordReader(schema, config, seed, 500L/*records*/);
+                while(transcoder.transcode(recordReader, recordWriter));
+                recordWriter.close();
+                final String records = stringWriter.toString();
+                assertEquals(records.split("\n").length, 500, "Transcoded records");
+
+                assertEquals(decode(schema, BinaryVLenFieldStripeReader.createFactory(densePath), false/*not sparse*/), records, "Dense seed " + seed);
+                assertEquals(decode(schema, BinaryVLenFieldStripeReader.createFactory(sparsePath), true/*sparse*/), records, "Sparse seed " + seed);
+            }
+        } finally {
+            FileUtils.deleteQuietly(basePath);
+        }
+    }
+
+    /**
+     * Tests that the leaves beneath a rarely-present node only have instructions
+     * for the occurrences of the node and that the manifest describes the
+     * structure stripes.
+     */
+    @Test
+    public void sparseStripeTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+        final IField optionalOuterField = schema.getField(1/*optional_outer_field*/);
+        final IField intField = schema.getField(1/*optional_outer_field*/, 0/*optional_inner_field*/, 0/*int_field*/);
+        final IField countField = schema.getField(1/*optional_outer_field*/, 2/*count_field*/);
+
+        // the optional outer field is only present in one of every 100 records
+        final StringBuilder records = new StringBuilder();
+        for(int i=0; i<1000; i++) {
+            if((i % 100) == 0)
+                records.append("[" + i + ",[[[1,2],\"a\"],[]," + i + "],[],[[],null]]\n");
+            else
+                records.append("[" + i + ",null,[[null,[[[3],null]],1],[[[],\"b\"],[],2]],[[4],null]]\n");
+        }
+
+        final File fieldStripePath = File.createTempFile("sparse", ".test");
+        try {
+            assertTrue(fieldStripePath.delete() && fieldStripePath.mkdir(), "Field-stripe path created");
+            final long recordCount = encode(schema, new SmartJsonArrayRecordReader(new StringReader(records.toString())), fieldStripePath, true/*sparse*/);
+            assertEquals(recordCount, 1000L);
+
+            { // structure stripe of the optional outer field
+                final StripeStatistics statistics = BinaryVLenFieldStripeReader.readStatistics(fieldStripePath, new StructureField(optionalOuterField));
+                assertEquals(statistics.getInstructionCount(Kind.VALUE), 10L, "Present");
+                assertEquals(statistics.getInstructionCount(Kind.UNSET), 990L, "Absent");
+                // only the instructions (one byte each) follow the header
+                assertEquals(statistics.getByteCount(), (11L/*header*/ + 1000L), "No values");
+            }
+            { // leaves only have the occurrences
+                final StripeStatistics countStatistics = BinaryVLenFieldStripeReader.readStatistics(fieldStripePath, countField);
+                assertEquals(countStatistics.getInstructionCount(), 10L, "One instruction per occurrence");
+                final StripeStatistics intStatistics = BinaryVLenFieldStripeReader.readStatistics(fieldStripePath, intField);
+                assertEquals(intStatistics.getInstructionCount(Kind.VALUE), 20L/*two per occurrence*/);
+                assertEquals(intStatistics.getInstructionCount(Kind.REPEATED_VALUE), 10L);
+                assertEquals(intStatistics.getInstructionCount(Kind.UNSET_PARENT), 0L, "No unset parents");
+                assertEquals(intStatistics.getInstructionCount(Kind.REPEATED_PARENT), 0L, "No repeated parents");
+            }
+
+            // the manifest includes the structure stripes
+            StripeSetManifest.create(fieldStripePath, schema, recordCount, true/*sparse*/).write(fieldStripePath);
+            final StripeSetManifest manifest = StripeSetManifest.read(fieldStripePath);
+            assertTrue(manifest.isSparseSubtrees(), "Sparse manifest");
+            assertTrue(manifest.getLeaf("optional_outer_field").getField() instanceof StructureField, "Structure stripe");
+            assertEquals(manifest.getLeaves().size(), 19/*13 leaves and 6 sparse nodes*/);
+            manifest.validate(fieldStripePath);
+
+            final String decodedRecords = decode(manifest.getSchema(), manifest.createReaderFactory(fieldStripePath), manifest.isSparseSubtrees());
+            final String[] lines = decodedRecords.split("\n");
+            assertEquals(lines.length, 1000, "Decoded records");
+            assertEquals(lines[0], "[0,[[[1,2],\"a\"],[],0],[],[[],null]]");
+            assertEquals(lines[1], "[1,null,[[null,[[[3],null]],1],[[[],\"b\"],[],2]],[[4],null]]");
+        } finally {
+            FileUtils.deleteQuietly(fieldStripePath);
+        }
+    }
+
+    // ========================================================================
+    /**
+     * Encodes the records of the specified reader into binary field-stripes in
+     * the specified path (which is created) and returns the number of records.
+     */
+    private static long encode(final ICompositeType schema, final IRecordReader recordReader, final File fieldStripePath, final boolean sparseSubtrees) throws Exception {
+        assertTrue(fieldStripePath.isDirectory() || fieldStripePath.mkdir(), "Field-stripe path created");
+        final IFieldStripeWriterFactory writerFactory = BinaryVLenFieldStripeWriter.createFactory(fieldStripePath);
+        final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory, sparseSubtrees).createEncoderTree(schema);
+        long recordCount = 0L;
+        while(rootEncoder.encode(recordReader))
+            recordCount++;
+        writerFactory.closeAllWriters();
+        return recordCount;
+    }
+
+    /**
+     * @return the records decoded from the field-stripes of the specified
+     *         factory as JSON arrays (one per line)
+     */
+    private static String decode(final ICompositeType schema, final IFieldStripeReaderFactory readerFactory, final boolean sparseSubtrees) throws Exception {
+        final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(readerFactory, sparseSubtrees).createDecoderTree(schema);
+        final StringWriter stringWriter = new StringWriter();
+        final JsonArrayRecordWriter recordWriter = new JsonArrayRecordWriter(stringWriter, false/*no pretty print*/);
+        while(rootDecoder.decode(recordWriter));
+        recordWriter.close();
+        return stringWriter.toString();
+    }
+}
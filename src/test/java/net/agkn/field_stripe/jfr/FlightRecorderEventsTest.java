@@ -0,0 +1,206 @@
+package net.agkn.field_stripe.jfr;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+import net.agkn.field_stripe.stripe.TestBinaryVLenFieldStripeReaderFactory;
+import net.agkn.field_stripe.stripe.TestBinaryVLenFieldStripeWriterFactory;
+
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link FlightRecorderEvents}. Since this code is compiled
+ * for JVMs without JFR, the recording is started and read reflectively.
+ *
+ * @author rgrzywinski
+ */
+public class FlightRecorderEventsTest {
+    private static final String PROTOBUF_TEXT =
+        "package package_name;\n"/*required by Protostuff*/ +
+        "message Message {\n" +
+        "    optional int64    long_field = 1;\n" +
+        "    message NestedMessage {\n" +
+        "        repeated int32    int_field = 1;\n" +
+        "    }\n" +
+        "    optional NestedMessage nested_field = 2;\n" +
+        "}\n";
+
+    private static final String JSON_RECORDS =
+        "[1,[[1,2,3]]]\n" +
+        "[null,null]\n" +
+        "[3,[[]]]";
+
+    /**
+     * Tests that nothing is recorded if there is no recording.
+     */
+    @Test
+    public void disabledTest() throws Exception {
+        // NOTE:  no recording is running (by assumption)
+        assertFalse(FlightRecorderEvents.STRIPE_OPEN.isEnabled());
+        assertNull(FlightRecorderEvents.STRIPE_OPEN.begin());
+        FlightRecorderEvents.STRIPE_OPEN.commit(null, "path", FlightRecorderEvents.WRITE)/*no effect*/;
+
+        final RecordEventSampler sampler = new RecordEventSampler(FlightRecorderEvents.RECORD_ENCODE, 2/*sample interval*/);
+        for(int i=0; i<4; i++) {
+            final Object event = sampler.startRecord();
+            assertNull(event);
+            sampler.endRecord(event);
+        }
+
+        try {
+            new RecordEventSampler(FlightRecorderEvents.RECORD_ENCODE, 0/*invalid*/);
+            assert false : "Expected an IllegalArgumentException.";
+        } catch(final IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests the events recorded when encoding and decoding.
+     */
+    @Test
+    public void recordingTest() throws Exception {
+        if(!FlightRecorderEvent.isAvailable()) throw new SkipException("JFR is not available.");
+
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+        final IField longField = schema.getFields().get(0);
+        final IField intField = ((ICompositeType)schema.getFields().get(1).getType()).getFields().get(0);
+
+        final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        final Object recording = recordingClass.newInstance();
+        final Method enable = recordingClass.getMethod("enable", String.class);
+        for(final FlightRecorderEvent eventType : new FlightRecorderEvent[] { FlightRecorderEvents.STRIPE_OPEN, FlightRecorderEvents.STRIPE_CLOSE, FlightRecorderEvents.BLOCK_FLUSH, FlightRecorderEvents.BLOCK_FILL, FlightRecorderEvents.RECORD_ENCODE, FlightRecorderEvents.RECORD_DECODE })
+            enable.invoke(recording, eventType.getName());
+        final Path recordingPath = Files.createTempFile("field_stripe", ".jfr");
+        final List<Object> events;
+        try {
+            recordingClass.getMethod("start").invoke(recording);
+            assertTrue(FlightRecorderEvents.STRIPE_OPEN.isEnabled());
+
+            // encode
+            final TestBinaryVLenFieldStripeWriterFactory writerFactory = new TestBinaryVLenFieldStripeWriterFactory(1024/*buffer size*/);
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(JSON_RECORDS));
+            while(rootEncoder.encode(recordReader));
+            writerFactory.closeAllWriters();
+
+            // decode
+            final Map<IField, InputStream> fieldToInputStreamMap = new HashMap<IField, InputStream>();
+            fieldToInputStreamMap.put(longField, new ByteArrayInputStream(writerFactory.getByteArray(longField)));
+            fieldToInputStreamMap.put(intField, new ByteArrayInputStream(writerFactory.getByteArray(intField)));
+            final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(new TestBinaryVLenFieldStripeReaderFactory(fieldToInputStreamMap)).createDecoderTree(schema);
+            final JsonArrayRecordWriter recordWriter = new JsonArrayRecordWriter(new StringWriter(), false/*no pretty-print*/);
+            while(rootDecoder.decode(recordWriter));
+
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, recordingPath);
+            events = new ArrayList<Object>((List<?>)Class.forName("jdk.jfr.consumer.RecordingFile").getMethod("readAllEvents", Path.class).invoke(null, recordingPath));
+
+            // stripe open and close
+            final long longFieldBytes = writerFactory.getByteArray(longField).length;
+            assertEquals(count(events, FlightRecorderEvents.STRIPE_OPEN, "nested_field.int_field", FlightRecorderEvents.WRITE), 1);
+            assertEquals(count(events, FlightRecorderEvents.STRIPE_OPEN, "nested_field.int_field", FlightRecorderEvents.READ), 1);
+            assertEquals(count(events, FlightRecorderEvents.STRIPE_CLOSE, "long_field", FlightRecorderEvents.WRITE), 1);
+            assertEquals(getLong(find(events, FlightRecorderEvents.STRIPE_CLOSE, "long_field", FlightRecorderEvents.WRITE), "bytes"), longFieldBytes);
+            assertEquals(getLong(find(events, FlightRecorderEvents.STRIPE_CLOSE, "long_field", FlightRecorderEvents.READ), "bytes"), longFieldBytes);
+
+            // blocks (the stripes are smaller than a buffer)
+            assertEquals(getLong(find(events, FlightRecorderEvents.BLOCK_FLUSH, "long_field", null), "bytes"), longFieldBytes);
+            assertEquals(getLong(find(events, FlightRecorderEvents.BLOCK_FILL, "long_field", null), "bytes"), longFieldBytes);
+
+            // records (only the first is sampled)
+            assertEquals(count(events, FlightRecorderEvents.RECORD_ENCODE, null, null), 1);
+            assertEquals(count(events, FlightRecorderEvents.RECORD_DECODE, null, null), 1);
+            assertEquals(getLong(find(events, FlightRecorderEvents.RECORD_ENCODE, null, null), "recordIndex"), 0L);
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            Files.deleteIfExists(recordingPath);
+        }
+    }
+
+    // ========================================================================
+    /**
+     * @return the number of recorded events of the specified type with the
+     *         specified path and operation (either of which may be <code>null</code>
+     *         to match any)
+     */
+    private static int count(final List<Object> events, final FlightRecorderEvent eventType, final String path, final String operation)
+            throws Exception {
+        int count = 0;
+        for(final Object event : events)
+            if(matches(event, eventType, path, operation)) count++;
+        return count;
+    }
+
+    /**
+     * @return the first recorded event of the specified type with the specified
+     *         path and operation (either of which may be <code>null</code> to
+     *         match any). This will never be <code>null</code>.
+     */
+    private static Object find(final List<Object> events, final FlightRecorderEvent eventType, final String path, final String operation)
+            throws Exception {
+        for(final Object event : events)
+            if(matches(event, eventType, path, operation)) return event;
+        throw new AssertionError("No " + eventType.getName() + " event for \"" + path + "\" (" + operation + ").");
+    }
+
+    private static boolean matches(final Object event, final FlightRecorderEvent eventType, final String path, final String operation)
+            throws Exception {
+        final Object type = event.getClass().getMethod("getEventType").invoke(event);
+        if(!eventType.getName().equals(type.getClass().getMethod("getName").invoke(type))) return false;
+        if((path != null) && !path.equals(getString(event, "path"))) return false;
+        if((operation != null) && !operation.equals(getString(event, "operation"))) return false;
+        return true;
+    }
+
+    private static String getString(final Object event, final String name)
+            throws Exception {
+        return (String)event.getClass().getMethod("getString", String.class).invoke(event, name);
+    }
+
+    private static long getLong(final Object event, final String name)
+            throws Exception {
+        return (Long)event.getClass().getMethod("getLong", String.class).invoke(event, name);
+    }
+}
@@ -0,0 +1,178 @@
+package net.agkn.field_stripe.metrics;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.metrics.CodecMetricsSnapshot.FieldStripe;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+import net.agkn.field_stripe.stripe.IFieldStripeWriterFactory;
+import net.agkn.field_stripe.stripe.Instruction.Kind;
+import net.agkn.field_stripe.stripe.TestBinaryVLenFieldStripeReaderFactory;
+import net.agkn.field_stripe.stripe.TestBinaryVLenFieldStripeWriterFactory;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link CodecMetrics}.
+ *
+ * @author rgrzywinski
+ */
+public class CodecMetricsTest {
+    private static final String PROTOBUF_TEXT =
+        "package package_name;\n"/*required by Protostuff*/ +
+        "message Message {\n" +
+        "    optional int64    long_field = 1;\n" +
+        "    message NestedMessage {\n" +
+        "        repeated int32    int_field = 1;\n" +
+        "    }\n" +
+        "    optional NestedMessage nested_field = 2;\n" +
+        "}\n";
+
+    private static final String JSON_RECORDS =
+        "[1,[[1,2,3]]]\n" +
+        "[null,null]\n" +
+        "[3,[[]]]";
+
+    /**
+     * Tests the instruction, record and byte counts of encoding and decoding
+     * and the snapshot of the metrics.
+     */
+    @Test
+    public void encodeDecodeTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+        final IField longField = schema.getFields().get(0);
+        final IField intField = ((ICompositeType)schema.getFields().get(1).getType()).getFields().get(0);
+        final CodecMetrics metrics = new CodecMetrics("encodeDecodeTest");
+
+        // encode
+        final TestBinaryVLenFieldStripeWriterFactory writerFactory = new TestBinaryVLenFieldStripeWriterFactory(1024/*buffer size*/);
+        final IFieldStripeWriterFactory meteredWriterFactory = metrics.decorate(writerFactory);
+        { // locally scoped for sanity
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(meteredWriterFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = metrics.decorate(new SmartJsonArrayRecordReader(new StringReader(JSON_RECORDS)));
+            while(metrics.encode(rootEncoder, recordReader));
+        }
+        { // locally scoped for sanity
+            final CodecMetricsSnapshot snapshot = metrics.snapshot();
+            assertEquals(snapshot.recordsEncoded, 3L);
+            assertEquals(snapshot.recordsDecoded, 0L);
+            assertTrue(snapshot.encodeTimeNanos > 0L);
+            assertTrue(snapshot.readerParseTimeNanos > 0L);
+            assertTrue(snapshot.encodeTimeNanos >= snapshot.readerParseTimeNanos + snapshot.stripeWriteTimeNanos);
+            assertEquals(snapshot.fieldStripes.size(), 2);
+
+            final FieldStripe longStripe = snapshot.getFieldStripe("long_field", CodecMetrics.ENCODE);
+            assertEquals(longStripe.getInstructionCount(Kind.VALUE), 2L);
+            assertEquals(longStripe.getInstructionCount(Kind.UNSET), 1L);
+
+            final FieldStripe intStripe = snapshot.getFieldStripe("nested_field.int_field", CodecMetrics.ENCODE);
+            assertEquals(intStripe.getInstructionCount(Kind.VALUE), 3L);
+            assertEquals(intStripe.getInstructionCount(Kind.REPEATED_VALUE), 2L);
+            assertEquals(intStripe.getInstructionCount(Kind.UNSET_PARENT), 1L);
+            assertEquals(intStripe.getInstructionCount(Kind.UNSET), 1L);
+
+            // NOTE:  the bytes are not known until the writers are closed
+            assertEquals(snapshot.bytesWritten, 0L);
+        }
+        meteredWriterFactory.closeAllWriters();
+        { // locally scoped for sanity
+            final CodecMetricsSnapshot snapshot = metrics.snapshot();
+            assertEquals(snapshot.getFieldStripe("long_field", CodecMetrics.ENCODE).byteCount, (long)writerFactory.getByteArray(longField).length);
+            assertEquals(snapshot.getFieldStripe("nested_field.int_field", CodecMetrics.ENCODE).byteCount, (long)writerFactory.getByteArray(intField).length);
+            assertEquals(snapshot.bytesWritten, (long)(writerFactory.getByteArray(longField).length + writerFactory.getByteArray(intField).length));
+        }
+
+        // decode
+        { // locally scoped for sanity
+            final Map<IField, InputStream> fieldToInputStreamMap = new HashMap<IField, InputStream>();
+            fieldToInputStreamMap.put(longField, new ByteArrayInputStream(writerFactory.getByteArray(longField)));
+            fieldToInputStreamMap.put(intField, new ByteArrayInputStream(writerFactory.getByteArray(intField)));
+            final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(metrics.decorate(new TestBinaryVLenFieldStripeReaderFactory(fieldToInputStreamMap))).createDecoderTree(schema);
+            final StringWriter writer = new StringWriter();
+            final JsonArrayRecordWriter recordWriter = new JsonArrayRecordWriter(writer, false/*no pretty-print*/);
+            while(metrics.decode(rootDecoder, recordWriter));
+            recordWriter.close();
+            assertEquals(writer.toString(), "[1,[[1,2,3]]]\n[null,null]\n[3,[[]]]");
+        }
+        { // locally scoped for sanity
+            final CodecMetricsSnapshot snapshot = metrics.snapshot();
+            assertEquals(snapshot.recordsDecoded, 3L);
+            assertTrue(snapshot.decodeTimeNanos >= snapshot.stripeReadTimeNanos);
+            assertEquals(snapshot.fieldStripes.size(), 4);
+            assertEquals(snapshot.getFieldStripe("long_field", CodecMetrics.DECODE).getInstructionCount(Kind.VALUE), 2L);
+            assertEquals(snapshot.getFieldStripe("nested_field.int_field", CodecMetrics.DECODE).getInstructionCount(Kind.VALUE), 3L);
+            assertEquals(snapshot.bytesRead, snapshot.bytesWritten)/*each stripe read to its end*/;
+        }
+    }
+
+    /**
+     * Tests registering the metrics with JMX.
+     */
+    @Test
+    public void jmxTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        final CodecMetrics metrics = new CodecMetrics("jmxTest");
+        final ObjectName codecName = new ObjectName("net.agkn.field_stripe:type=Codec,name=\"jmxTest\"");
+        final ObjectName stripeName = new ObjectName("net.agkn.field_stripe:type=FieldStripe,codec=\"jmxTest\",operation=encode,path=\"long_field\"");
+
+        metrics.register(mBeanServer);
+        try {
+            assertTrue(mBeanServer.isRegistered(codecName));
+
+            // stripes created after registration are registered
+            final TestBinaryVLenFieldStripeWriterFactory writerFactory = new TestBinaryVLenFieldStripeWriterFactory(1024/*buffer size*/);
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(metrics.decorate(writerFactory)).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(JSON_RECORDS));
+            while(metrics.encode(rootEncoder, recordReader));
+            assertTrue(mBeanServer.isRegistered(stripeName));
+
+            assertEquals(mBeanServer.getAttribute(codecName, "RecordsEncoded"), 3L);
+            assertEquals(mBeanServer.getAttribute(stripeName, "ValueCount"), 2L);
+            assertEquals(mBeanServer.getAttribute(stripeName, "UnsetCount"), 1L);
+            assertNotNull(mBeanServer.getAttribute(codecName, "EncoderTraversalTimeNanos"));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(mBeanServer.isRegistered(codecName));
+        assertFalse(mBeanServer.isRegistered(stripeName));
+    }
+}
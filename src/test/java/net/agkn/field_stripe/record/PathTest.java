@@ -377,6 +377,42 @@ public class PathTest {
         }
     }
 
+    /**
+     * Tests that the {@link Path#getParentPath() parent path} of a resolved 
+     * field is the path of its parent field and that it is only computed once.
+     */
+    @SuppressWarnings("serial")
+    @Test
+    public void parentPathTest() {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" + 
+            "    message NestedMessage {\n" +
+            "        message NestedNestedMessage {\n" +
+            "            repeated int32    int32_field = 1;\n" +
+            "        }\n" +
+            "        optional NestedNestedMessage nested_nested_field = 1;\n" +
+            "    }\n" +
+            "    repeated NestedMessage nested_field = 1;\n" +
+            "}\n";
+        final SchemaBuilder schemaBuilder = new SchemaBuilder();
+        final ICompositeType schema = schemaBuilder.createSchema(protobufText, "Message");
+
+        final Path leafPath = schema.getField(0/*nested_field*/, 0/*nested_nested_field*/, 0/*int32_field*/).getPath();
+        assertTrue(leafPath.getParentPath() == schema.getField(0/*nested_field*/, 0/*nested_nested_field*/).getPath(), "Parent path is the parent field's path");
+        assertTrue(leafPath.getParentPath().getParentPath() == schema.getField(0/*nested_field*/).getPath(), "Parent path is the parent field's path");
+        assertEquals(leafPath.getParentPath().getParentPath().getParentPath().getDepth(), 0, "Root path");
+
+        // a path created from a list computes its parent once
+        final Path listPath = new Path(new ArrayList<IField>() {{ for(final IField field : leafPath) add(field); }});
+        assertEquals(listPath, leafPath, "Equal paths");
+        assertTrue(listPath.getParentPath() == listPath.getParentPath(), "Parent path computed once");
+        assertEquals(listPath.getParentPath(), leafPath.getParentPath(), "Equal parent paths");
+        for(final FieldQualifier qualifier : FieldQualifier.values())
+            assertEquals(listPath.getParentQualifierCount(qualifier), leafPath.getParentQualifierCount(qualifier), qualifier.toString());
+        assertEquals(leafPath.toString(), "nested_field.nested_nested_field.int32_field", "Path name");
+    }
+
     // ************************************************************************
     /**
      * Asserts that the specified non-<code>null</code> path has the specified
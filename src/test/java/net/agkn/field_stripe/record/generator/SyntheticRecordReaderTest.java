@@ -0,0 +1,322 @@
+package net.agkn.field_stripe.record.generator;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.record.FieldQualifier;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.IRecordWriter;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+import net.agkn.field_stripe.stripe.TestXMLFieldStripeWriterFactory;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link SyntheticRecordReader} and {@link RecordTranscoder}.
+ *
+ * @author rgrzywinski
+ */
+public class SyntheticRecordReaderTest {
+    private static final String PROTOBUF_TEXT =
+        "package package_name;\n"/*required by Protostuff*/ +
+        "message Message {\n" +
+        "    required int64    long_field = 1;\n" +
+        "    message NestedMessage {\n" +
+        "        required string   string_field = 1;\n" +
+        "        repeated int32    int_field = 2;\n" +
+        "        optional bool     bool_field = 3;\n" +
+        "    }\n" +
+        "    repeated NestedMessage nested_field = 2;\n" +
+        "    optional NestedMessage optional_nested_field = 3;\n" +
+        "    optional double   double_field = 4;\n" +
+        "    optional float    float_field = 5;\n" +
+        "}\n";
+
+    /**
+     * Tests that the same seed always generates the same records, that a
+     * different seed generates different records and that a range of records
+     * can be generated independently.
+     */
+    @Test
+    public void determinismTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+        final SyntheticRecordConfig config = new SyntheticRecordConfig();
+
+        final String records = toJson(schema, new SyntheticRecordReader(schema, config, 42L/*seed*/, 20L/*records*/));
+        final String[] lines = records.split("\n");
+        assertEquals(lines.length, 20);
+
+        // same seed
+        assertEquals(toJson(schema, new SyntheticRecordReader(schema, config, 42L/*seed*/, 20L/*records*/)), records);
+
+        // different seed
+        assertFalse(toJson(schema, new SyntheticRecordReader(schema, config, 43L/*seed*/, 20L/*records*/)).equals(records));
+
+        // a range of records
+        { // locally scoped for sanity
+            final String[] rangeLines = toJson(schema, new SyntheticRecordReader(schema, config, 42L/*seed*/, 15L/*first record*/, 5L/*records*/)).split("\n");
+            assertEquals(rangeLines.length, 5);
+            for(int i=0; i<rangeLines.length; i++)
+                assertEquals(rangeLines[i], lines[15 + i]);
+        }
+
+        // skipping a field does not change the values that follow it
+        { // locally scoped for sanity
+            final MutableBoolean isSet = new MutableBoolean();
+            final SyntheticRecordReader readReader = new SyntheticRecordReader(schema, config, 42L/*seed*/, 5L/*records*/);
+            final SyntheticRecordReader skipReader = new SyntheticRecordReader(schema, config, 42L/*seed*/, 5L/*records*/);
+            while(readReader.hasMoreRecords()) {
+                assertTrue(skipReader.hasMoreRecords());
+                readReader.startRecord();
+                skipReader.startRecord();
+
+                assertEquals(skipReader.readLongField(isSet), readReader.readLongField(isSet));
+                readReader.startArray();
+                while(readReader.hasMoreElements())
+                    readReader.skipField();
+                readReader.endArray();
+                skipReader.skipField()/*nested_field*/;
+                skipReader.skipField()/*optional_nested_field*/;
+                readReader.skipField()/*optional_nested_field*/;
+                final double value = readReader.readDoubleField(isSet);
+                final boolean valueIsSet = isSet.booleanValue();
+                assertEquals(skipReader.readDoubleField(isSet), value);
+                assertEquals(isSet.booleanValue(), valueIsSet);
+                skipReader.skipField()/*float_field*/;
+                readReader.skipField()/*float_field*/;
+
+                readReader.endRecord();
+                skipReader.endRecord();
+            }
+            assertFalse(skipReader.hasMoreRecords());
+        }
+    }
+
+    /**
+     * Tests that the unset ratios, array lengths, value ranges and string
+     * cardinalities are respected.
+     */
+    @Test
+    public void configurationTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+
+        // nothing unset, exactly two elements per array, a single value
+        { // locally scoped for sanity
+            final SyntheticRecordConfig config = new SyntheticRecordConfig()
+                .setNullRatio(FieldQualifier.ZERO_OR_ONE, 0.0)
+                .setNullRatio(FieldQualifier.ZERO_OR_MORE, 0.0)
+                .setRepetitions(2, 2)
+                .setValues(7L, 7L)
+                .setStringCardinality(1L);
+            final String[] lines = toJson(schema, new SyntheticRecordReader(schema, config, 1L/*seed*/, 10L/*records*/)).split("\n");
+            assertEquals(lines.length, 10);
+            for(final String line : lines) {
+                assertTrue(line.startsWith("[7,[[\"string_field-0\",[7,7],"), line);
+                assertTrue(line.endsWith(",7.0,7.0]"), line);
+                assertFalse(line.contains("null"), line);
+            }
+        }
+
+        // everything optional is unset
+        { // locally scoped for sanity
+            final SyntheticRecordConfig config = new SyntheticRecordConfig()
+                .setNullRatio(FieldQualifier.ZERO_OR_ONE, 1.0)
+                .setNullRatio(FieldQualifier.ZERO_OR_MORE, 1.0)
+                .setValues(-3L, -3L);
+            final String[] lines = toJson(schema, new SyntheticRecordReader(schema, config, 1L/*seed*/, 10L/*records*/)).split("\n");
+            assertEquals(lines.length, 10);
+            for(final String line : lines)
+                assertEquals(line, "[-3,[],null,null,null]")/*JSON writes unset arrays as empty*/;
+        }
+
+        // values and array lengths are within range
+        { // locally scoped for sanity
+            final SyntheticRecordConfig config = new SyntheticRecordConfig()
+                .setRepetitions(1, 3)
+                .setRepetitionDistribution(Distribution.UNIFORM)
+                .setValues(-5L, 5L)
+                .setValueDistribution(Distribution.GAUSSIAN)
+                .setStringCardinality(3L);
+            final MutableBoolean isSet = new MutableBoolean();
+            final IRecordReader recordReader = new SyntheticRecordReader(schema, config, 1L/*seed*/, 100L/*records*/);
+            int unsetArrayCount = 0;
+            while(recordReader.hasMoreRecords()) {
+                recordReader.startRecord();
+                final long longValue = recordReader.readLongField(isSet);
+                assertTrue(isSet.booleanValue())/*required*/;
+                assertTrue((longValue >= -5L) && (longValue <= 5L), Long.toString(longValue));
+                if(recordReader.startArray()) {
+                    int elementCount = 0;
+                    while(recordReader.hasMoreElements()) {
+                        elementCount++;
+                        assertTrue(recordReader.startStructure())/*elements are never unset*/;
+                        final String stringValue = recordReader.readStringField(isSet);
+                        assertTrue(isSet.booleanValue())/*required*/;
+                        assertTrue(stringValue.matches("string_field-[0-2]"), stringValue);
+                        recordReader.skipField()/*int_field*/;
+                        recordReader.skipField()/*bool_field*/;
+                        recordReader.endStructure();
+                    }
+                    assertTrue((elementCount >= 1) && (elementCount <= 3), Integer.toString(elementCount));
+                } else
+                    unsetArrayCount++;
+                recordReader.endArray()/*by contract*/;
+                recordReader.skipField()/*optional_nested_field*/;
+                final double doubleValue = recordReader.readDoubleField(isSet);
+                if(isSet.booleanValue()) assertTrue((doubleValue >= -5.0) && (doubleValue <= 5.0), Double.toString(doubleValue));
+                recordReader.skipField()/*float_field*/;
+                recordReader.endRecord();
+            }
+            // NOTE:  10% of 100 arrays are expected to be unset
+            assertTrue((unsetArrayCount > 0) && (unsetArrayCount < 30), Integer.toString(unsetArrayCount));
+        }
+    }
+
+    /**
+     * Tests that the string cardinality and distribution of individual fields
+     * can be overridden by their path (even where the same field appears at
+     * different paths) and that other fields keep the defaults.
+     */
+    @Test
+    public void perFieldStringTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+        final SyntheticRecordConfig config = new SyntheticRecordConfig()
+            .setNullRatio(FieldQualifier.ZERO_OR_ONE, 0.0)
+            .setRepetitions(1, 1)
+            .setStringCardinality(1000L)
+            .setStringDistribution(Distribution.SKEWED)
+            .setStringCardinality(schema.getField(1/*nested_field*/, 0/*string_field*/).getPath(), 2L)
+            .setStringDistribution(schema.getField(2/*optional_nested_field*/, 0/*string_field*/).getPath(), Distribution.GAUSSIAN);
+        assertEquals(config.getStringCardinality(schema.getField(2/*optional_nested_field*/, 0/*string_field*/)), 1000L, "Default cardinality");
+        assertEquals(config.getStringDistribution(schema.getField(1/*nested_field*/, 0/*string_field*/)), Distribution.SKEWED, "Default distribution");
+
+        final MutableBoolean isSet = new MutableBoolean();
+        final IRecordReader recordReader = new SyntheticRecordReader(schema, config, 1L/*seed*/, 1000L/*records*/);
+        final boolean[] nestedIndexes = new boolean[2];
+        long optionalNestedSum = 0L;
+        int optionalNestedCount = 0;
+        while(recordReader.hasMoreRecords()) {
+            recordReader.startRecord();
+            recordReader.skipField()/*long_field*/;
+            if(recordReader.startArray()) {
+                while(recordReader.hasMoreElements()) {
+                    assertTrue(recordReader.startStructure())/*elements are never unset*/;
+                    final String stringValue = recordReader.readStringField(isSet);
+                    assertTrue(stringValue.matches("string_field-[0-1]"), stringValue);
+                    nestedIndexes[Integer.parseInt(stringValue.substring("string_field-".length()))] = true;
+                    recordReader.skipField()/*int_field*/;
+                    recordReader.skipField()/*bool_field*/;
+                    recordReader.endStructure();
+                }
+            } /* else -- unset array */
+            recordReader.endArray()/*by contract*/;
+            assertTrue(recordReader.startStructure())/*never unset*/;
+            final String stringValue = recordReader.readStringField(isSet);
+            optionalNestedSum += Long.parseLong(stringValue.substring("string_field-".length()));
+            optionalNestedCount++;
+            recordReader.skipField()/*int_field*/;
+            recordReader.skipField()/*bool_field*/;
+            recordReader.endStructure();
+            recordReader.skipField()/*double_field*/;
+            recordReader.skipField()/*float_field*/;
+            recordReader.endRecord();
+        }
+        assertTrue(nestedIndexes[0] && nestedIndexes[1], "Both values of the overridden cardinality");
+        // NOTE:  the Gaussian mean is the middle of the range whereas the
+        //        (default) skewed mean is a quarter of it
+        final double optionalNestedMean = (double)optionalNestedSum / optionalNestedCount;
+        assertTrue((optionalNestedMean > 400.0) && (optionalNestedMean < 600.0), Double.toString(optionalNestedMean));
+    }
+
+    /**
+     * Tests that the generated records encode into the same field-stripes as
+     * the same records transcoded to JSON (and read back).
+     */
+    @Test
+    public void encodeTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+        final SyntheticRecordConfig config = new SyntheticRecordConfig();
+        final List<IField> leafFields = new ArrayList<IField>();
+        collectLeafFields(schema, leafFields);
+
+        // generated -> XML field-stripes
+        final TestXMLFieldStripeWriterFactory syntheticWriterFactory = new TestXMLFieldStripeWriterFactory();
+        { // locally scoped for sanity
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(syntheticWriterFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SyntheticRecordReader(schema, config, 7L/*seed*/, 50L/*records*/);
+            int recordCount = 0;
+            while(rootEncoder.encode(recordReader))
+                recordCount++;
+            assertEquals(recordCount, 50);
+        }
+
+        // generated -> JSON -> XML field-stripes
+        final TestXMLFieldStripeWriterFactory jsonWriterFactory = new TestXMLFieldStripeWriterFactory();
+        { // locally scoped for sanity
+            final String jsonRecords = toJson(schema, new SyntheticRecordReader(schema, config, 7L/*seed*/, 50L/*records*/));
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(jsonWriterFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(jsonRecords));
+            while(rootEncoder.encode(recordReader));
+        }
+
+        for(final IField field : leafFields) {
+            final String stripe = syntheticWriterFactory.getStringWriter(field).toString();
+            assertTrue(stripe.length() > 0, "'" + field.getName() + "' stripe");
+            assertEquals(stripe, jsonWriterFactory.getStringWriter(field).toString(), "'" + field.getName() + "' stripe");
+        }
+    }
+
+    // ************************************************************************
+    /**
+     * Transcodes all records from the specified reader to JSON.
+     */
+    private static String toJson(final ICompositeType schema, final IRecordReader recordReader) throws Exception {
+        final StringWriter writer = new StringWriter();
+        final IRecordWriter recordWriter = new JsonArrayRecordWriter(writer, false/*no pretty-print*/);
+        final RecordTranscoder transcoder = new RecordTranscoder(schema);
+        while(transcoder.transcode(recordReader, recordWriter));
+        recordWriter.close();
+        return writer.toString();
+    }
+
+    /**
+     * Recursively collects the leaf (primitive) fields of the specified type.
+     */
+    private static void collectLeafFields(final ICompositeType type, final List<IField> leafFields) {
+        for(final IField field : type.getFields()) {
+            if(field.getType().isComposite())
+                collectLeafFields((ICompositeType)field.getType(), leafFields);
+            else
+                leafFields.add(field);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package net.agkn.field_stripe.record.protobuf;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link CompiledSchemaCache}.
+ *
+ * @author rgrzywinski
+ */
+public class CompiledSchemaCacheTest {
+    private static final String PROTOBUF_TEXT =
+        "package package_name;\n"/*required by Protostuff*/ +
+        "message Message {\n" +
+        "    required sint64   long_field = 1;\n" +
+        "    message NestedMessage {\n" +
+        "        repeated int32    int_field = 1;\n" +
+        "        optional string   string_field = 3;\n" +
+        "    }\n" +
+        "    repeated NestedMessage nested_field = 2;\n" +
+        "    optional fixed32  fixed_field = 7;\n" +
+        "    enum Color { RED = 1; GREEN = 2; BLUE = 4; }\n" +
+        "    repeated Color    color_field = 8;\n" +
+        "}\n";
+
+    /**
+     * Tests the keys, caching and reading of a schema.
+     */
+    @Test
+    public void cacheTest() throws Exception {
+        final File basePath = File.createTempFile("schema", ".test");
+        try {
+            assertTrue(basePath.delete() && basePath.mkdir(), "Base path created");
+            final File protobufPath = new File(basePath, "idl");
+            final File protobufFile = new File(new File(protobufPath, "package_name"), "message.proto");
+            FileUtils.writeStringToFile(protobufFile, PROTOBUF_TEXT, "UTF-8");
+            final CompiledSchemaCache cache = new CompiledSchemaCache(new File(basePath, "cache")/*created on first put*/);
+
+            // keys
+            final String key = cache.computeKey(protobufPath, "package_name.Message");
+            assertEquals(cache.computeKey(protobufPath, "package_name.Message"), key, "Stable key");
+            assertFalse(cache.computeKey(protobufPath, "package_name.Message.NestedMessage").equals(key), "Key depends on message");
+            assertNull(cache.get(key), "Cache miss");
+
+            // put and get
+            final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+            cache.put(key, schema);
+            final ICompositeType cachedSchema = cache.get(key);
+            assertNotNull(cachedSchema, "Cache hit");
+            assertSchemaEquals(cachedSchema, schema);
+
+            // a change to the IDL is a new key
+            FileUtils.writeStringToFile(protobufFile, PROTOBUF_TEXT.replace("fixed32", "sfixed32"), "UTF-8");
+            final String changedKey = cache.computeKey(protobufPath, "package_name.Message");
+            assertFalse(changedKey.equals(key), "Key depends on IDL contents");
+            assertNull(cache.get(changedKey), "Cache miss");
+
+            // an additional file is a new key
+            FileUtils.writeStringToFile(protobufFile, PROTOBUF_TEXT, "UTF-8");
+            assertEquals(cache.computeKey(protobufPath, "package_name.Message"), key, "Restored IDL");
+            FileUtils.writeStringToFile(new File(protobufPath, "other.proto"), "package other;\nmessage Other { optional int32 field = 1; }\n", "UTF-8");
+            assertFalse(cache.computeKey(protobufPath, "package_name.Message").equals(key), "Key depends on all IDL files");
+
+            // a corrupt cached schema is a miss
+            final File cacheFile = new File(new File(basePath, "cache"), (key + CompiledSchemaCache.EXTENSION));
+            assertTrue(cacheFile.isFile(), "Cached schema file");
+            FileUtils.writeStringToFile(cacheFile, "corrupt", "UTF-8");
+            assertNull(cache.get(key), "Corrupt cache file");
+        } finally {
+            FileUtils.deleteQuietly(basePath);
+        }
+    }
+
+    /**
+     * Tests that a cache that is not owned by the current user is neither read
+     * nor written and that the default cache is in the user's home directory.
+     */
+    @Test
+    public void ownerTest() throws Exception {
+        final File basePath = File.createTempFile("schema", ".test");
+        final String userName = System.getProperty("user.name");
+        try {
+            assertTrue(basePath.delete() && basePath.mkdir(), "Base path created");
+            final File protobufPath = new File(basePath, "idl");
+            FileUtils.writeStringToFile(new File(new File(protobufPath, "package_name"), "message.proto"), PROTOBUF_TEXT, "UTF-8");
+            final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+            final File cachePath = new File(basePath, "cache");
+            final CompiledSchemaCache cache = new CompiledSchemaCache(cachePath);
+            final String key = cache.computeKey(protobufPath, "package_name.Message");
+
+            assertTrue(CompiledSchemaCache.isOwnedByCurrentUser(basePath), "Owned by the current user");
+            cache.put(key, schema);
+            assertNotNull(cache.get(key), "Cache hit");
+
+            // NOTE:  the cache (and the schema in it) is owned by another user
+            //        from the perspective of the renamed user
+            System.setProperty("user.name", (userName + "-other"));
+            assertFalse(CompiledSchemaCache.isOwnedByCurrentUser(basePath), "Owned by another user");
+            assertNull(cache.get(key), "Untrusted cache is not read");
+            FileUtils.deleteQuietly(cachePath);
+            cache.put(key, schema);
+            assertFalse(new File(cachePath, (key + CompiledSchemaCache.EXTENSION)).exists(), "Untrusted cache is not written");
+        } finally {
+            System.setProperty("user.name", userName);
+            FileUtils.deleteQuietly(basePath);
+        }
+
+        // the default is per-user
+        final String cachePathname = System.getProperty(CompiledSchemaCache.CACHE_PATH_PROPERTY);
+        try {
+            System.clearProperty(CompiledSchemaCache.CACHE_PATH_PROPERTY);
+            final CompiledSchemaCache defaultCache = CompiledSchemaCache.createDefault();
+            assertEquals(defaultCache.getCachePath(), new File(System.getProperty("user.home"), CompiledSchemaCache.DEFAULT_CACHE_DIRECTORY), "Default cache path");
+            System.setProperty(CompiledSchemaCache.CACHE_PATH_PROPERTY, ""/*disabled*/);
+            assertNull(CompiledSchemaCache.createDefault(), "Disabled cache");
+        } finally {
+            if(cachePathname == null)
+                System.clearProperty(CompiledSchemaCache.CACHE_PATH_PROPERTY);
+            else
+                System.setProperty(CompiledSchemaCache.CACHE_PATH_PROPERTY, cachePathname);
+        }
+    }
+
+    // ========================================================================
+    /**
+     * Recursively asserts that the fields (including their paths and Protobuf
+     * types) of the specified schemas are equal.
+     */
+    private static void assertSchemaEquals(final ICompositeType actual, final ICompositeType expected) {
+        assertEquals(actual.getName(), expected.getName());
+        assertEquals(actual.getFields().size(), expected.getFields().size());
+        for(int i=0; i<expected.getFields().size(); i++) {
+            final IField actualField = actual.getFields().get(i);
+            final IField expectedField = expected.getFields().get(i);
+            assertEquals(actualField.getName(), expectedField.getName());
+            assertEquals(actualField.getIndex(), expectedField.getIndex());
+            assertEquals(actualField.getQualifier(), expectedField.getQualifier());
+            assertEquals(ProtobufType.forField(actualField), ProtobufType.forField(expectedField));
+            assertEquals(actualField.getPath().toString(), expectedField.getPath().toString());
+            assertEquals(actualField.getPath().getDepth(), expectedField.getPath().getDepth());
+            assertEquals(actualField.getPath().getField(actualField.getPath().getDepth() - 1), actualField, "Path includes the field");
+            if(expectedField.getType().isComposite())
+                assertSchemaEquals((ICompositeType)actualField.getType(), (ICompositeType)expectedField.getType());
+            else/*primitive*/
+                assertEquals(actualField.getType(), expectedField.getType());
+            if(expectedField.getEnumSymbolTable() == null)
+                assertNull(actualField.getEnumSymbolTable());
+            else/*enum*/ {
+                assertEquals(actualField.getEnumSymbolTable().getNames(), expectedField.getEnumSymbolTable().getNames());
+                for(int j=0; j<expectedField.getEnumSymbolTable().getSymbolCount(); j++)
+                    assertEquals(actualField.getEnumSymbolTable().getNumber(j), expectedField.getEnumSymbolTable().getNumber(j));
+            }
+        }
+    }
+}
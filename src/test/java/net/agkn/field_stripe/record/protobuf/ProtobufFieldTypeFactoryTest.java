@@ -21,9 +21,11 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import net.agkn.field_stripe.record.EnumSymbolTable;
 import net.agkn.field_stripe.record.FieldQualifier;
 import net.agkn.field_stripe.record.ICompositeType;
 import net.agkn.field_stripe.record.IField;
@@ -258,6 +260,44 @@ public class ProtobufFieldTypeFactoryTest {
         }
     }
 
+    /**
+     * Validates the construction of enum fields (both of a nested and of a
+     * top-level enum definition).
+     */
+    @Test
+    public void enumDefinitionTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n" +
+            "enum Size {\n" +
+            "    SMALL = 0;\n" +
+            "    LARGE = 10;\n" +
+            "}\n" +
+            "message Message {\n" + 
+            "    enum Color {\n" +
+            "        RED = 1;\n" +
+            "        GREEN = 2;\n" +
+            "        BLUE = -4;\n" +
+            "    }\n" +
+            "    optional Color    color_field = 1;\n" +
+            "    repeated Size     size_field = 2;\n" +
+            "}\n";
+        final Proto protobufDefinition = StringProtoLoader.parseProto(protobufText);
+        final ICompositeType compositeType = (ICompositeType)new ProtobufFieldTypeFactory().createFieldType(Collections.singletonList(protobufDefinition), "package_name.Message");
+        assertEquals(compositeType.getFields().size(), 2, "Number of fields");
+
+        assertPrimitiveField(compositeType.getField(0), 1/*index*/, FieldQualifier.ZERO_OR_ONE, PrimitiveType.STRING, "color_field");
+        assertEquals(ProtobufType.forField(compositeType.getField(0)), ProtobufType.ENUM);
+        final EnumSymbolTable colorSymbols = compositeType.getField(0).getEnumSymbolTable();
+        assertEquals(colorSymbols.getNames(), Arrays.asList("RED", "GREEN", "BLUE"), "Symbols in declaration order");
+        assertEquals(colorSymbols.getNumber(2/*BLUE*/), -4);
+        assertEquals(colorSymbols.getOrdinalForName("GREEN"), 1);
+        assertEquals(colorSymbols.getOrdinalForNumber(-4), 2/*BLUE*/);
+        assertEquals(colorSymbols.getOrdinalForName("PURPLE"), EnumSymbolTable.NONE);
+
+        assertPrimitiveField(compositeType.getField(1), 2/*index*/, FieldQualifier.ZERO_OR_MORE, PrimitiveType.STRING, "size_field");
+        assertEquals(compositeType.getField(1).getEnumSymbolTable().getNames(), Arrays.asList("SMALL", "LARGE"));
+    }
+
     // TODO:  a test based on messages defined in two different Protobuf files
 
     // ************************************************************************
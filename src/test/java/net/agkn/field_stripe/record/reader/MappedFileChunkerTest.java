@@ -0,0 +1,149 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.mutable.MutableBoolean;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link MappedFileChunker} and {@link FileChunk}.
+ *
+ * @author rgrzywinski
+ */
+public class MappedFileChunkerTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Tests that chunks are split only on unescaped record boundaries and that
+     * the chunks are contiguous.
+     */
+    @Test
+    public void splitTest() throws Exception {
+        // empty file
+        { // locally scoped for sanity
+            final File file = createFile("");
+            try {
+                assertEquals(MappedFileChunker.split(file, 1L).size(), 0);
+            } finally {
+                file.delete();
+            }
+        }
+
+        // every record in its own chunk (a chunk size of one splits at the
+        // first boundary after the first byte)
+        { // locally scoped for sanity
+            final File file = createFile("1,a\n22,b\r\n333,c\r4444,d");
+            try {
+                assertEquals(readChunks(MappedFileChunker.split(file, 1L)), new String[] { "1,a\n", "22,b\r\n", "333,c\r", "4444,d" });
+            } finally {
+                file.delete();
+            }
+        }
+
+        // escaped newlines are data and do not split (one backslash escapes,
+        // two backslashes are an escaped backslash)
+        { // locally scoped for sanity
+            final File file = createFile("1,a\\\nb\n2,c\\\\\n3,\\\r\n");
+            try {
+                assertEquals(readChunks(MappedFileChunker.split(file, 1L)), new String[] { "1,a\\\nb\n", "2,c\\\\\n", "3,\\\r\n" });
+            } finally {
+                file.delete();
+            }
+        }
+
+        // a chunk size larger than the file results in a single chunk
+        { // locally scoped for sanity
+            final File file = createFile("1\n2\n3\n");
+            try {
+                assertEquals(readChunks(MappedFileChunker.split(file, 1024L)), new String[] { "1\n2\n3\n" });
+            } finally {
+                file.delete();
+            }
+        }
+
+        // multi-byte characters are never split
+        { // locally scoped for sanity
+            final File file = createFile("\u00e9\u00e9\u00e9\n\u20ac\u20ac\n");
+            try {
+                assertEquals(readChunks(MappedFileChunker.split(file, 2L)), new String[] { "\u00e9\u00e9\u00e9\n", "\u20ac\u20ac\n" });
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Tests that each chunk can be read by its own {@link IRecordReader}.
+     */
+    @Test
+    public void readerTest() throws Exception {
+        final File file = createFile("[1]\n[2]\n[3]\n[4]\n");
+        try {
+            final List<FileChunk> chunks = MappedFileChunker.split(file, 6L);
+            assertEquals(chunks.size(), 2);
+
+            int expectedValue = 1;
+            for(final FileChunk chunk : chunks) {
+                final IRecordReader recordReader = new StreamingJsonArrayRecordReader(chunk.openReader(UTF8));
+                while(recordReader.hasMoreRecords()) {
+                    recordReader.startRecord();
+                    assertEquals(recordReader.readIntField(new MutableBoolean()), expectedValue++);
+                    recordReader.endRecord();
+                }
+            }
+            assertEquals(expectedValue, 5);
+        } finally {
+            file.delete();
+        }
+    }
+
+    // ************************************************************************
+    /**
+     * Creates a temporary file with the specified UTF-8 contents.
+     */
+    private static File createFile(final String contents) throws Exception {
+        final File file = File.createTempFile("chunker", ".txt");
+        FileUtils.writeStringToFile(file, contents, "UTF-8");
+        return file;
+    }
+
+    /**
+     * Reads each of the specified chunks in its entirety.
+     */
+    private static String[] readChunks(final List<FileChunk> chunks) throws Exception {
+        final String[] contents = new String[chunks.size()];
+        for(int i=0; i<contents.length; i++) {
+            assertEquals(chunks.get(i).getIndex(), i);
+            final Reader reader = chunks.get(i).openReader(UTF8);
+            try {
+                contents[i] = IOUtils.toString(reader);
+            } finally {
+                reader.close();
+            }
+        }
+        return contents;
+    }
+}
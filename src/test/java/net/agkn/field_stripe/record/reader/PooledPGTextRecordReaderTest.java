@@ -0,0 +1,323 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.record.HexBytes;
+import net.agkn.field_stripe.record.writer.IRecordWriter;
+import net.agkn.field_stripe.record.writer.PGTextRecordWriter;
+import net.agkn.field_stripe.record.writer.PGTextRecordWriterTest;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link PooledPGTextRecordReader} -- an allocation-free
+ * {@link IRecordReader} for PostgreSQL 'text' COPY format records. Where
+ * possible the results are compared against {@link PGTextRecordReader}.
+ *
+ * @author rgrzywinski
+ * @see PGTextRecordWriterTest
+ */
+public class PooledPGTextRecordReaderTest {
+    /**
+     * Tests multiple records (flat structure for simplicity) with each of the
+     * end-of-record separators.
+     */
+    @Test
+    public void multipleRecordTest() throws Exception {
+        // no record
+        { // locally scoped for sanity
+            final IRecordReader recordReader = new PooledPGTextRecordReader(new StringReader(""/*no record*/));
+            assertFalse(recordReader.hasMoreRecords(), "No records to read");
+            assertFalse(recordReader.hasMoreRecords(), "No records to read")/*called again for sanity*/;
+            try {
+                recordReader.startRecord();
+                assert false : "Expected an exception.";
+            } catch(final InvalidDataException ide) {
+                assertEquals(ide.getLocalizedMessage(), "There are no more records.");
+            }
+        }
+
+        // multiple records with different separators (and a single character
+        // buffer to exercise the refill)
+        { // locally scoped for sanity
+            final String input = "1\n" +
+                                 "\\N\r\n" +
+                                 "3\r" +
+                                 "4";
+            final IRecordReader recordReader = new PooledPGTextRecordReader(new StringReader(input), 1/*buffer size*/);
+
+            final MutableBoolean isSet = new MutableBoolean();
+            assertTrue(recordReader.hasMoreRecords(), "There is a record to read");
+            recordReader.startRecord();
+                assertEquals(recordReader.readIntField(isSet), 1); assertEquals(isSet.booleanValue(), true/*is set*/);
+            recordReader.endRecord();
+            assertTrue(recordReader.hasMoreRecords(), "There is a record to read");
+            recordReader.startRecord();
+                assertEquals(recordReader.readIntField(isSet), -1/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset*/);
+            recordReader.endRecord();
+            assertTrue(recordReader.hasMoreRecords(), "There is a record to read");
+            recordReader.startRecord();
+                assertEquals(recordReader.readIntField(isSet), 3); assertEquals(isSet.booleanValue(), true/*is set*/);
+            recordReader.endRecord();
+            assertTrue(recordReader.hasMoreRecords(), "There is a record to read");
+            recordReader.startRecord();
+                assertEquals(recordReader.readIntField(isSet), 4); assertEquals(isSet.booleanValue(), true/*is set*/);
+            recordReader.endRecord();
+            assertFalse(recordReader.hasMoreRecords(), "No more records to read");
+        }
+    }
+
+    /**
+     * Tests all primitive values in a flat structure.
+     *
+     * @see PGTextRecordWriterTest#flatTest()
+     */
+    @Test
+    public void flatTest() throws Exception {
+        final String input = "1,2,3,4,5.01,6.01,true,string\n" +
+                             "1,\\N,3,\\N,5.01,\\N,TRUE,\\N\n" +
+                             "-128,-32768,-2147483648,-9223372036854775808,1e10,-0.0,false,\\\\N\n";
+        final IRecordReader recordReader = new PooledPGTextRecordReader(new StringReader(input));
+
+        final MutableBoolean isSet = new MutableBoolean();
+        recordReader.startRecord();
+            assertEquals(recordReader.readByteField(isSet), 1); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readShortField(isSet), 2); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readIntField(isSet), 3); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readLongField(isSet), 4L); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readFloatField(isSet), 5.01f); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readDoubleField(isSet), 6.01); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readBooleanField(isSet), true); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readStringField(isSet), "string"); assertEquals(isSet.booleanValue(), true/*is set*/);
+        recordReader.endRecord();
+
+        recordReader.startRecord();
+            assertEquals(recordReader.readByteField(isSet), 1); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readShortField(isSet), -1/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset*/);
+            assertEquals(recordReader.readIntField(isSet), 3); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readLongField(isSet), -1L/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset*/);
+            assertEquals(recordReader.readFloatField(isSet), 5.01f); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readDoubleField(isSet), -1.0/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset*/);
+            assertEquals(recordReader.readBooleanField(isSet), true); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readStringField(isSet), ""/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset*/);
+        recordReader.endRecord();
+
+        recordReader.startRecord();
+            assertEquals(recordReader.readByteField(isSet), Byte.MIN_VALUE); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readShortField(isSet), Short.MIN_VALUE); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readIntField(isSet), Integer.MIN_VALUE); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readLongField(isSet), Long.MIN_VALUE); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readFloatField(isSet), 1e10f); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(Double.doubleToLongBits(recordReader.readDoubleField(isSet)), Double.doubleToLongBits(-0.0)); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readBooleanField(isSet), false); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readStringField(isSet), "\\N"/*escaped backslash*/); assertEquals(isSet.booleanValue(), true/*is set*/);
+        recordReader.endRecord();
+        assertFalse(recordReader.hasMoreRecords(), "No more records to read");
+    }
+
+    /**
+     * Tests that numeric values outside of the range of their type are rejected.
+     */
+    @Test
+    public void outOfRangeTest() throws Exception {
+        final MutableBoolean isSet = new MutableBoolean();
+        final IRecordReader recordReader = new PooledPGTextRecordReader(new StringReader("128,2147483648,abc\n"));
+        recordReader.startRecord();
+        try {
+            recordReader.readByteField(isSet);
+            assert false : "Expected an exception.";
+        } catch(final InvalidDataException ide) {
+            assertEquals(ide.getLocalizedMessage(), "Could not convert \"128\" to a byte.");
+        }
+        try {
+            recordReader.readIntField(isSet);
+            assert false : "Expected an exception.";
+        } catch(final InvalidDataException ide) {
+            assertEquals(ide.getLocalizedMessage(), "Could not convert \"2147483648\" to an integer.");
+        }
+        try {
+            recordReader.readDoubleField(isSet);
+            assert false : "Expected an exception.";
+        } catch(final InvalidDataException ide) {
+            assertEquals(ide.getLocalizedMessage(), "Could not convert \"abc\" to a double.");
+        }
+    }
+
+    /**
+     * Tests escape sequences (including octal and hex escapes which {@link PGTextRecordReader}
+     * does not support).
+     */
+    @Test
+    public void escapeTest() throws Exception {
+        final String input = "a\\tb\\nc\\\\d\\,e,\\101\\x42\\x4,\\N\\N\n";
+        final IRecordReader recordReader = new PooledPGTextRecordReader(new StringReader(input));
+
+        final MutableBoolean isSet = new MutableBoolean();
+        recordReader.startRecord();
+            assertEquals(recordReader.readStringField(isSet), "a\tb\nc\\d,e"); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readStringField(isSet), "AB\u0004"); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readStringField(isSet), "NN"/*'\N' within a string is literal*/); assertEquals(isSet.booleanValue(), true/*is set*/);
+        recordReader.endRecord();
+    }
+
+    /**
+     * Tests that 'hex' format <code>bytea</code> values (as written by {@link PGTextRecordWriter})
+     * are read by both this and {@link PGTextRecordReader}.
+     */
+    @Test
+    public void byteaTest() throws Exception {
+        final StringWriter output = new StringWriter();
+        final IRecordWriter recordWriter = new PGTextRecordWriter(output);
+        recordWriter.startRecord();
+            recordWriter.writeField(null/*not used*/, ByteBuffer.wrap(new byte[] { 0x00, 0x2C/*','*/, (byte)0xFF }));
+            recordWriter.writeField(null/*not used*/, (ByteBuffer)null);
+            recordWriter.writeField(null/*not used*/, ByteBuffer.allocate(0));
+        recordWriter.endRecord();
+        recordWriter.close();
+        assertEquals(output.toString(), "\\\\x002cff,\\N,\\\\x\n");
+
+        final MutableBoolean isSet = new MutableBoolean();
+        for(final IRecordReader recordReader : new IRecordReader[] { new PooledPGTextRecordReader(new StringReader(output.toString())), new PGTextRecordReader(new StringReader(output.toString())) }) {
+            recordReader.startRecord();
+                assertEquals(HexBytes.toArray(recordReader.readBytesField(isSet)), new byte[] { 0x00, 0x2C, (byte)0xFF }); assertEquals(isSet.booleanValue(), true/*is set*/);
+                recordReader.readBytesField(isSet); assertEquals(isSet.booleanValue(), false/*not set*/);
+                assertEquals(recordReader.readBytesField(isSet).remaining(), 0); assertEquals(isSet.booleanValue(), true/*is set*/);
+            recordReader.endRecord();
+        }
+
+        // only the 'hex' format is supported
+        final IRecordReader recordReader = new PooledPGTextRecordReader(new StringReader("abc\n"));
+        recordReader.startRecord();
+        try {
+            recordReader.readBytesField(isSet);
+            assert false : "Expected an InvalidDataException.";
+        } catch(final InvalidDataException ide) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests all primitive values each in their own array.
+     *
+     * @see PGTextRecordWriterTest#arrayTest()
+     */
+    @Test
+    public void arrayTest() throws Exception {
+        final String input = "{111\\,112},{121\\,122},{\"string181\"\\, string182 },\\N,{},{NULL}\n";
+        final IRecordReader recordReader = new PooledPGTextRecordReader(new StringReader(input));
+
+        final MutableBoolean isSet = new MutableBoolean();
+        recordReader.startRecord();
+            assertTrue(recordReader.startArray());
+                assertTrue(recordReader.hasMoreElements());
+                assertEquals(recordReader.readByteField(isSet), 111); assertEquals(isSet.booleanValue(), true/*is set*/);
+                assertTrue(recordReader.hasMoreElements());
+                assertEquals(recordReader.readByteField(isSet), 112); assertEquals(isSet.booleanValue(), true/*is set*/);
+                assertFalse(recordReader.hasMoreElements());
+            recordReader.endArray();
+
+            assertTrue(recordReader.startArray());
+                assertTrue(recordReader.hasMoreElements());
+                assertEquals(recordReader.readLongField(isSet), 121L); assertEquals(isSet.booleanValue(), true/*is set*/);
+                assertTrue(recordReader.hasMoreElements());
+                assertEquals(recordReader.readLongField(isSet), 122L); assertEquals(isSet.booleanValue(), true/*is set*/);
+                assertFalse(recordReader.hasMoreElements());
+            recordReader.endArray();
+
+            assertTrue(recordReader.startArray());
+                assertTrue(recordReader.hasMoreElements());
+                assertEquals(recordReader.readStringField(isSet), "string181"); assertEquals(isSet.booleanValue(), true/*is set*/);
+                assertTrue(recordReader.hasMoreElements());
+                assertEquals(recordReader.readStringField(isSet), "string182"); assertEquals(isSet.booleanValue(), true/*is set*/);
+                assertFalse(recordReader.hasMoreElements());
+            recordReader.endArray();
+
+            assertFalse(recordReader.startArray());
+                assertFalse(recordReader.hasMoreElements());
+            recordReader.endArray();
+
+            assertTrue(recordReader.startArray());
+                assertFalse(recordReader.hasMoreElements());
+            recordReader.endArray();
+
+            assertTrue(recordReader.startArray());
+                assertTrue(recordReader.hasMoreElements());
+                assertEquals(recordReader.readIntField(isSet), -1/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset*/);
+                assertFalse(recordReader.hasMoreElements());
+            recordReader.endArray();
+        recordReader.endRecord();
+    }
+
+    /**
+     * Tests nested structures and arrays in structures. The same input is read
+     * with {@link PGTextRecordReader} to ensure that the results match.
+     */
+    @Test
+    public void structureTest() throws Exception {
+        // NOTE:  nested structures and arrays are quoted (as PostgreSQL does)
+        final String input = "(1\\,\"a \"\"b\"\"\"\\,\"(2\\,\"\"{3\\,4}\"\")\"\\,),\\N\n" +
+                             "(\\,\\,\\,),(5\\,\"\")\n";
+        final IRecordReader[] recordReaders = new IRecordReader[] { new PooledPGTextRecordReader(new StringReader(input)),
+                                                                    new PGTextRecordReader(new StringReader(input)) };
+        for(final IRecordReader recordReader : recordReaders) {
+            final MutableBoolean isSet = new MutableBoolean();
+            recordReader.startRecord();
+                assertTrue(recordReader.startStructure());
+                    assertEquals(recordReader.readIntField(isSet), 1); assertEquals(isSet.booleanValue(), true/*is set*/);
+                    assertEquals(recordReader.readStringField(isSet), "a \"b\""); assertEquals(isSet.booleanValue(), true/*is set*/);
+                    assertTrue(recordReader.startStructure());
+                        assertEquals(recordReader.readIntField(isSet), 2); assertEquals(isSet.booleanValue(), true/*is set*/);
+                        assertTrue(recordReader.startArray());
+                            assertTrue(recordReader.hasMoreElements());
+                            assertEquals(recordReader.readIntField(isSet), 3); assertEquals(isSet.booleanValue(), true/*is set*/);
+                            assertTrue(recordReader.hasMoreElements());
+                            assertEquals(recordReader.readIntField(isSet), 4); assertEquals(isSet.booleanValue(), true/*is set*/);
+                            assertFalse(recordReader.hasMoreElements());
+                        recordReader.endArray();
+                    recordReader.endStructure();
+                    assertFalse(recordReader.startStructure());
+                recordReader.endStructure();
+                assertFalse(recordReader.startStructure());
+            recordReader.endRecord();
+
+            assertTrue(recordReader.hasMoreRecords());
+            recordReader.startRecord();
+                assertTrue(recordReader.startStructure());
+                    assertEquals(recordReader.readIntField(isSet), -1/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset*/);
+                    assertEquals(recordReader.readIntField(isSet), -1/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset*/);
+                    assertEquals(recordReader.readIntField(isSet), -1/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset*/);
+                    assertEquals(recordReader.readIntField(isSet), -1/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset*/);
+                recordReader.endStructure();
+                assertTrue(recordReader.startStructure());
+                    assertEquals(recordReader.readIntField(isSet), 5); assertEquals(isSet.booleanValue(), true/*is set*/);
+                    assertEquals(recordReader.readStringField(isSet), ""/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset (empty)*/);
+                recordReader.endStructure();
+            recordReader.endRecord();
+            assertFalse(recordReader.hasMoreRecords());
+        }
+    }
+}
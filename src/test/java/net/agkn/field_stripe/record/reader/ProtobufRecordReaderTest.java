@@ -0,0 +1,369 @@
+package net.agkn.field_stripe.record.reader;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.protobuf.ProtobufField;
+import net.agkn.field_stripe.record.protobuf.ProtobufType;
+import net.agkn.field_stripe.stripe.TestXMLFieldStripeWriterFactory;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+import org.testng.annotations.Test;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * Unit tests for {@link ProtobufRecordReader}. The Protobuf messages are
+ * written by hand with a {@link CodedOutputStream} (rather than generated
+ * classes) so that the wire format can be precisely controlled.
+ *
+ * @author rgrzywinski
+ */
+public class ProtobufRecordReaderTest {
+    private static final String PROTOBUF_TEXT =
+        "package package_name;\n"/*required by Protostuff*/ +
+        "message Message {\n" +
+        "    required int32    int32_field = 1;\n" +
+        "    optional sint32   sint32_field = 2;\n" +
+        "    optional sfixed32 sfixed32_field = 3;\n" +
+        "    optional int64    int64_field = 4;\n" +
+        "    optional sint64   sint64_field = 5;\n" +
+        "    optional fixed64  fixed64_field = 6;\n" +
+        "    optional float    float_field = 7;\n" +
+        "    optional double   double_field = 8;\n" +
+        "    optional bool     bool_field = 9;\n" +
+        "    optional string   string_field = 10;\n" +
+        "    repeated int32    repeated_field = 11;\n" +
+        "    message NestedMessage {\n" +
+        "        optional string   nested_string_field = 1;\n" +
+        "        repeated sint64   nested_repeated_field = 2;\n" +
+        "    }\n" +
+        "    optional NestedMessage nested_field = 12;\n" +
+        "    repeated NestedMessage nested_repeated_field = 13;\n" +
+        "}\n";
+
+    /**
+     * Tests that the Protobuf types are carried onto the schema fields.
+     */
+    @Test
+    public void protobufTypeTest() {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+        assertEquals(protobufType(schema, 0), ProtobufType.INT32);
+        assertEquals(protobufType(schema, 1), ProtobufType.SINT32);
+        assertEquals(protobufType(schema, 2), ProtobufType.SFIXED32);
+        assertEquals(protobufType(schema, 5), ProtobufType.FIXED64);
+        assertEquals(protobufType(schema, 9), ProtobufType.STRING);
+        assertEquals(protobufType(schema, 11), ProtobufType.MESSAGE);
+        assertEquals(protobufType(schema, 11, 1), ProtobufType.SINT64);
+    }
+
+    /**
+     * Tests reading all scalar types, unset fields, multiple records and
+     * fields that are out of order or not in the schema.
+     */
+    @Test
+    public void flatTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+
+        // no records
+        { // locally scoped for sanity
+            final IRecordReader recordReader = new ProtobufRecordReader(schema, new ByteArrayInputStream(new byte[0]));
+            assertFalse(recordReader.hasMoreRecords(), "No records to read");
+            try {
+                recordReader.startRecord();
+                assert false : "Expected an exception.";
+            } catch(final InvalidDataException ide) {
+                assertEquals(ide.getLocalizedMessage(), "There are no more records.");
+            }
+        }
+
+        final ByteArrayOutputStream input = new ByteArrayOutputStream();
+        { // all fields set (in reverse order and with an unknown field)
+            final ByteArrayOutputStream message = new ByteArrayOutputStream();
+            final CodedOutputStream output = CodedOutputStream.newInstance(message);
+            output.writeString(10, "string\u00e9");
+            output.writeBool(9, true);
+            output.writeDouble(8, 1.5);
+            output.writeFloat(7, -2.5f);
+            output.writeString(99/*unknown*/, "unknown");
+            output.writeFixed64(6, Long.MAX_VALUE);
+            output.writeSInt64(5, Long.MIN_VALUE);
+            output.writeInt64(4, -4L);
+            output.writeSFixed32(3, -3);
+            output.writeSInt32(2, -2);
+            output.writeInt32(1, -1);
+            output.flush();
+            writeDelimited(input, message.toByteArray());
+        }
+        { // only the required field (twice -- the last one wins)
+            final ByteArrayOutputStream message = new ByteArrayOutputStream();
+            final CodedOutputStream output = CodedOutputStream.newInstance(message);
+            output.writeInt32(1, 1);
+            output.writeInt32(1, 2);
+            output.flush();
+            writeDelimited(input, message.toByteArray());
+        }
+
+        final IRecordReader recordReader = new ProtobufRecordReader(schema, new ByteArrayInputStream(input.toByteArray()));
+        final MutableBoolean isSet = new MutableBoolean();
+        assertTrue(recordReader.hasMoreRecords(), "There is a record to read");
+        assertTrue(recordReader.hasMoreRecords(), "There is a record to read")/*called again for sanity*/;
+        recordReader.startRecord();
+            assertEquals(recordReader.readIntField(isSet), -1); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readIntField(isSet), -2); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readIntField(isSet), -3); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readLongField(isSet), -4L); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readLongField(isSet), Long.MIN_VALUE); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readLongField(isSet), Long.MAX_VALUE); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readFloatField(isSet), -2.5f); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readDoubleField(isSet), 1.5); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readBooleanField(isSet), true); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertEquals(recordReader.readStringField(isSet), "string\u00e9"); assertEquals(isSet.booleanValue(), true/*is set*/);
+            assertFalse(recordReader.startArray(), "Empty repeated field");
+            recordReader.endArray();
+            assertFalse(recordReader.startStructure(), "Unset nested message");
+            assertFalse(recordReader.startArray(), "Empty repeated nested message");
+            recordReader.endArray();
+        recordReader.endRecord();
+
+        assertTrue(recordReader.hasMoreRecords(), "There is a record to read");
+        recordReader.startRecord();
+            assertEquals(recordReader.readIntField(isSet), 2); assertEquals(isSet.booleanValue(), true/*is set*/);
+            recordReader.readIntField(isSet); assertEquals(isSet.booleanValue(), false/*is unset*/);
+            for(int i=0; i<8; i++) recordReader.skipField();
+            recordReader.startArray();
+            recordReader.endArray();
+            try {
+                recordReader.endRecord();
+                assert false : "Expected an exception.";
+            } catch(final InvalidDataException ide) {
+                assertEquals(ide.getLocalizedMessage(), "The end-of-record has not yet been reached.");
+            }
+            recordReader.skipField();
+            recordReader.skipField();
+        recordReader.endRecord();
+        assertFalse(recordReader.hasMoreRecords(), "No more records to read");
+    }
+
+    /**
+     * Tests packed and unpacked repeated fields (including interleaved with
+     * other fields) and nested messages.
+     */
+    @Test
+    public void nestedTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+
+        final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        final CodedOutputStream output = CodedOutputStream.newInstance(message);
+        output.writeInt32(11, 1)/*unpacked*/;
+        output.writeInt32(1, 42);
+        writePacked(output, 11, 2, 3)/*packed*/;
+        output.writeInt32(11, 4)/*unpacked*/;
+        { // nested message
+            final ByteArrayOutputStream nested = new ByteArrayOutputStream();
+            final CodedOutputStream nestedOutput = CodedOutputStream.newInstance(nested);
+            nestedOutput.writeSInt64(2, -1L);
+            nestedOutput.writeString(1, "nested");
+            nestedOutput.writeSInt64(2, -2L);
+            nestedOutput.flush();
+            output.writeBytes(12, ByteString.copyFrom(nested.toByteArray()));
+        }
+        output.writeBytes(13, ByteString.EMPTY)/*empty element*/;
+        { // second element
+            final ByteArrayOutputStream nested = new ByteArrayOutputStream();
+            final CodedOutputStream nestedOutput = CodedOutputStream.newInstance(nested);
+            nestedOutput.writeString(1, "element");
+            nestedOutput.flush();
+            output.writeBytes(13, ByteString.copyFrom(nested.toByteArray()));
+        }
+        output.flush();
+        final ByteArrayOutputStream input = new ByteArrayOutputStream();
+        writeDelimited(input, message.toByteArray());
+
+        final IRecordReader recordReader = new ProtobufRecordReader(schema, new ByteArrayInputStream(input.toByteArray()));
+        final MutableBoolean isSet = new MutableBoolean();
+        recordReader.startRecord();
+            assertEquals(recordReader.readIntField(isSet), 42); assertEquals(isSet.booleanValue(), true/*is set*/);
+            for(int i=0; i<9; i++) recordReader.skipField();
+            assertTrue(recordReader.startArray(), "Non-empty repeated field");
+            for(int i=1; i<=4; i++) {
+                assertTrue(recordReader.hasMoreElements(), "More elements");
+                assertEquals(recordReader.readIntField(isSet), i); assertEquals(isSet.booleanValue(), true/*is set*/);
+            }
+            assertFalse(recordReader.hasMoreElements(), "No more elements");
+            recordReader.endArray();
+
+            assertTrue(recordReader.startStructure(), "Set nested message");
+                assertEquals(recordReader.readStringField(isSet), "nested"); assertEquals(isSet.booleanValue(), true/*is set*/);
+                assertTrue(recordReader.startArray(), "Non-empty repeated field");
+                    assertEquals(recordReader.readLongField(isSet), -1L);
+                    assertEquals(recordReader.readLongField(isSet), -2L);
+                    assertFalse(recordReader.hasMoreElements(), "No more elements");
+                recordReader.endArray();
+            recordReader.endStructure();
+
+            assertTrue(recordReader.startArray(), "Non-empty repeated nested message");
+                assertTrue(recordReader.startStructure(), "Empty element is set");
+                    recordReader.readStringField(isSet); assertEquals(isSet.booleanValue(), false/*is unset*/);
+                    assertFalse(recordReader.startArray(), "Empty repeated field");
+                    recordReader.endArray();
+                recordReader.endStructure();
+                assertTrue(recordReader.startStructure(), "Element is set");
+                    assertEquals(recordReader.readStringField(isSet), "element"); assertEquals(isSet.booleanValue(), true/*is set*/);
+                    recordReader.skipField();
+                recordReader.endStructure();
+                assertFalse(recordReader.hasMoreElements(), "No more elements");
+            recordReader.endArray();
+        recordReader.endRecord();
+        assertFalse(recordReader.hasMoreRecords(), "No more records to read");
+    }
+
+    /**
+     * Tests that encoding from Protobuf produces the same field-stripes as
+     * encoding the equivalent JSON.
+     */
+    @Test
+    public void encodeTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    optional sint32   int_field = 1;\n" +
+            "    message NestedMessage {\n" +
+            "        repeated string   string_field = 1;\n" +
+            "    }\n" +
+            "    repeated NestedMessage nested_field = 2;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+
+        final ByteArrayOutputStream input = new ByteArrayOutputStream();
+        { // [-1,[["a","b"],[]]]
+            final ByteArrayOutputStream message = new ByteArrayOutputStream();
+            final CodedOutputStream output = CodedOutputStream.newInstance(message);
+            output.writeSInt32(1, -1);
+            final ByteArrayOutputStream nested = new ByteArrayOutputStream();
+            final CodedOutputStream nestedOutput = CodedOutputStream.newInstance(nested);
+            nestedOutput.writeString(1, "a");
+            nestedOutput.writeString(1, "b");
+            nestedOutput.flush();
+            output.writeBytes(2, ByteString.copyFrom(nested.toByteArray()));
+            output.writeBytes(2, ByteString.EMPTY);
+            output.flush();
+            writeDelimited(input, message.toByteArray());
+        }
+        writeDelimited(input, new byte[0])/*[null,[]]*/;
+
+        final TestXMLFieldStripeWriterFactory protobufWriterFactory = new TestXMLFieldStripeWriterFactory();
+        { // locally scoped for sanity
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(protobufWriterFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new ProtobufRecordReader(schema, new ByteArrayInputStream(input.toByteArray()));
+            while(rootEncoder.encode(recordReader));
+        }
+        final TestXMLFieldStripeWriterFactory jsonWriterFactory = new TestXMLFieldStripeWriterFactory();
+        { // locally scoped for sanity
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(jsonWriterFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader("[-1,[[[\"a\",\"b\"]],[[]]]]\n[null,[]]"));
+            while(rootEncoder.encode(recordReader));
+        }
+
+        final IField intField = schema.getField(0);
+        assertEquals(protobufWriterFactory.getStringWriter(intField).toString(), jsonWriterFactory.getStringWriter(intField).toString());
+        final IField stringField = schema.getField(1, 0);
+        assertEquals(protobufWriterFactory.getStringWriter(stringField).toString(), jsonWriterFactory.getStringWriter(stringField).toString());
+    }
+
+    /**
+     * Tests malformed and mismatched messages.
+     */
+    @Test
+    public void malformedTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+
+        // truncated message
+        { // locally scoped for sanity
+            final IRecordReader recordReader = new ProtobufRecordReader(schema, new ByteArrayInputStream(new byte[] { 5, 8, 1 }));
+            try {
+                recordReader.hasMoreRecords();
+                assert false : "Expected an exception.";
+            } catch(final InvalidDataException ide) {
+                assertEquals(ide.getLocalizedMessage(), "Truncated Protobuf message.");
+            }
+        }
+
+        // wire type that doesn't match the schema (a string for the int32)
+        { // locally scoped for sanity
+            final ByteArrayOutputStream message = new ByteArrayOutputStream();
+            final CodedOutputStream output = CodedOutputStream.newInstance(message);
+            output.writeString(1, "one");
+            output.flush();
+            final ByteArrayOutputStream input = new ByteArrayOutputStream();
+            writeDelimited(input, message.toByteArray());
+
+            final IRecordReader recordReader = new ProtobufRecordReader(schema, new ByteArrayInputStream(input.toByteArray()));
+            try {
+                recordReader.startRecord();
+                assert false : "Expected an exception.";
+            } catch(final InvalidDataException ide) {
+                assertEquals(ide.getLocalizedMessage(), "Field \"int32_field\" has wire type 2 but expected wire type 0.");
+            }
+        }
+    }
+
+    // ************************************************************************
+    /**
+     * @return the {@link ProtobufType} of the field at the specified path
+     */
+    private static ProtobufType protobufType(final ICompositeType schema, final int... path) {
+        return ((ProtobufField)schema.getField(path)).getProtobufType();
+    }
+
+    /**
+     * Writes the specified message prefixed by its varint length.
+     */
+    private static void writeDelimited(final ByteArrayOutputStream input, final byte[] message) throws Exception {
+        final CodedOutputStream output = CodedOutputStream.newInstance(input);
+        output.writeRawVarint32(message.length);
+        output.writeRawBytes(message);
+        output.flush();
+    }
+
+    /**
+     * Writes the specified int32 values as a packed repeated field.
+     */
+    private static void writePacked(final CodedOutputStream output, final int fieldNumber, final int... values) throws Exception {
+        int length = 0;
+        for(final int value : values)
+            length += CodedOutputStream.computeInt32SizeNoTag(value);
+        output.writeTag(fieldNumber, ProtobufType.WIRETYPE_LENGTH_DELIMITED);
+        output.writeRawVarint32(length);
+        for(final int value : values)
+            output.writeInt32NoTag(value);
+    }
+}
@@ -21,8 +21,16 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
 
 import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.record.FieldQualifier;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.agkn.field_stripe.record.protobuf.ProtobufField;
+import net.agkn.field_stripe.record.writer.IRecordWriter;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
 import net.agkn.field_stripe.record.writer.JsonArrayRecordWriterTest;
 
 import org.apache.commons.lang.mutable.MutableBoolean;
@@ -324,5 +332,59 @@ public class SmartJsonArrayRecordReaderTest {
         }
     }
 
+    /**
+     * Tests bytes values (read from hexadecimal strings) including an empty
+     * value and a value that was written from a direct buffer that has no
+     * backing array.
+     * 
+     * @see JsonArrayRecordWriterTest#bytesTest()
+     */
+    @Test
+    public void bytesTest() throws Exception {
+        final ByteBuffer directValue = ByteBuffer.allocateDirect(4);
+        directValue.put(new byte[] { 0x00, 0x01, (byte)0x80, (byte)0xFF }).flip();
+        final ByteBuffer emptyValue = ByteBuffer.allocate(0);
+
+        // round trip the values through JsonArrayRecordWriter
+        final IField bytesField = new ProtobufField(0/*index*/, FieldQualifier.ONE, PrimitiveType.BYTES, "bytes_field");
+        final StringWriter writer = new StringWriter();
+        final IRecordWriter recordWriter = new JsonArrayRecordWriter(writer, false/*no pretty-print*/);
+        recordWriter.startRecord();
+            recordWriter.writeField(bytesField, directValue);
+            recordWriter.writeField(bytesField, emptyValue);
+            recordWriter.writeUnsetField(bytesField);
+            recordWriter.startArray(bytesField);
+                recordWriter.writeField(bytesField, emptyValue);
+                recordWriter.writeField(bytesField, directValue);
+            recordWriter.endArray();
+        recordWriter.endRecord();
+        recordWriter.close()/*by contract*/;
+
+        // SEE:  matches JsonArrayRecordWriterTest#bytesTest()
+        final String input = writer.toString() + "\n" +
+                             "[\"000180FF\",\"\",null,[]]"/*either case*/;
+        final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(input));
+
+        final MutableBoolean isSet = new MutableBoolean();
+        for(int i=0; i<2; i++) {
+            assertTrue(recordReader.hasMoreRecords());
+            recordReader.startRecord();
+                assertEquals(recordReader.readBytesField(isSet), directValue); assertEquals(isSet.booleanValue(), true/*is set*/);
+                assertEquals(recordReader.readBytesField(isSet), emptyValue); assertEquals(isSet.booleanValue(), true/*empty is set*/);
+                assertEquals(recordReader.readBytesField(isSet), null/*any value*/); assertEquals(isSet.booleanValue(), false/*is unset*/);
+                assertTrue(recordReader.startArray());
+                    if(i == 0) {
+                        assertTrue(recordReader.hasMoreElements());
+                        assertEquals(recordReader.readBytesField(isSet), emptyValue); assertEquals(isSet.booleanValue(), true/*is set*/);
+                        assertTrue(recordReader.hasMoreElements());
+                        assertEquals(recordReader.readBytesField(isSet), directValue); assertEquals(isSet.booleanValue(), true/*is set*/);
+                    } /* else -- an empty array */
+                    assertFalse(recordReader.hasMoreElements());
+                recordReader.endArray();
+            recordReader.endRecord();
+        }
+        assertFalse(recordReader.hasMoreRecords());
+    }
+
     // TODO:  array + structure (and structure + array) tests
 }
\ No newline at end of file
@@ -17,8 +17,10 @@ package net.agkn.field_stripe.record.writer;
  */
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import net.agkn.field_stripe.record.FieldQualifier;
@@ -316,6 +318,44 @@ public class JsonArrayRecordWriterTest {
         }
     }
 
+    /**
+     * Tests bytes values (written as hexadecimal strings) including an empty
+     * value and a direct buffer that has no backing array.
+     * 
+     * @see SmartJsonArrayRecordReaderTest#bytesTest()
+     */
+    @Test
+    public void bytesTest() throws Exception {
+        // dummy fields for testing
+        final IField bytesField = new ProtobufField(0/*index*/, FieldQualifier.ONE, PrimitiveType.BYTES, "bytes_field");
+        final IField emptyBytesField = new ProtobufField(1/*index*/, FieldQualifier.ZERO_OR_ONE, PrimitiveType.BYTES, "empty_bytes_field");
+        final IField unsetBytesField = new ProtobufField(2/*index*/, FieldQualifier.ZERO_OR_ONE, PrimitiveType.BYTES, "unset_bytes_field");
+        final IField bytesArrayField = new ProtobufField(3/*index*/, FieldQualifier.ZERO_OR_MORE, PrimitiveType.BYTES, "bytes_array_field");
+
+        final ByteBuffer directValue = ByteBuffer.allocateDirect(4);
+        directValue.put(new byte[] { 0x00, 0x01, (byte)0x80, (byte)0xFF }).flip();
+        assertFalse(directValue.hasArray(), "Not array-backed");
+        final ByteBuffer emptyValue = ByteBuffer.allocate(0);
+
+        // SEE:  matches SmartJsonArrayRecordReaderTest#bytesTest()
+        final StringWriter writer = new StringWriter();
+        final IRecordWriter recordWriter = new JsonArrayRecordWriter(writer, false/*no pretty-print*/);
+        recordWriter.startRecord();
+            recordWriter.writeField(bytesField, directValue);
+            recordWriter.writeField(emptyBytesField, emptyValue);
+            recordWriter.writeUnsetField(unsetBytesField);
+            recordWriter.startArray(bytesArrayField);
+                recordWriter.writeField(bytesArrayField, emptyValue);
+                recordWriter.writeField(bytesArrayField, directValue);
+            recordWriter.endArray();
+        recordWriter.endRecord();
+        recordWriter.close()/*by contract*/;
+
+        final String expectedJson = "[\"000180ff\",\"\",null,[\"\",\"000180ff\"]]";
+        assertEquals(writer.toString(), expectedJson);
+        assertEquals(directValue.position(), 0, "Position unchanged");
+    }
+
     // TODO:  array + structure (and structure + array) tests
 
     // TODO:  negative tests (missing end, etc)
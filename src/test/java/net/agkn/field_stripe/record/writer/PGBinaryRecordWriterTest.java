@@ -0,0 +1,391 @@
+package net.agkn.field_stripe.record.writer;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.record.FieldQualifier;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.agkn.field_stripe.record.protobuf.ProtobufCompositeType;
+import net.agkn.field_stripe.record.protobuf.ProtobufField;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.PGBinaryRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.stripe.TestBinaryVLenFieldStripeReaderFactory;
+import net.agkn.field_stripe.stripe.TestBinaryVLenFieldStripeWriterFactory;
+import net.agkn.field_stripe.stripe.TestXMLFieldStripeWriterFactory;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link PGBinaryRecordWriter} and {@link PGBinaryRecordReader}
+ * -- {@link IRecordWriter} and {@link IRecordReader} for PG 'binary' based
+ * records.
+ *
+ * @author rgrzywinski
+ */
+public class PGBinaryRecordWriterTest {
+    /**
+     * Tests that the written bytes match the binary COPY format for primitive,
+     * unset, structure and array values.
+     */
+    @Test
+    public void binaryTest() throws Exception {
+        // dummy fields for testing
+        final IField shortField = new ProtobufField(0/*index*/, FieldQualifier.ONE, PrimitiveType.SHORT, "short_field");
+        final IField stringField = new ProtobufField(1/*index*/, FieldQualifier.ZERO_OR_ONE, PrimitiveType.STRING, "string_field");
+        final IField intArrayField = new ProtobufField(2/*index*/, FieldQualifier.ZERO_OR_MORE, PrimitiveType.INT, "int_array_field");
+        final IField booleanField = new ProtobufField(0/*index*/, FieldQualifier.ONE, PrimitiveType.BOOLEAN, "boolean_field");
+        final IField longArrayField = new ProtobufField(1/*index*/, FieldQualifier.ZERO_OR_MORE, PrimitiveType.LONG, "long_array_field");
+        final IField structureField = new ProtobufField(3/*index*/, FieldQualifier.ONE, new ProtobufCompositeType("structure", Arrays.asList(booleanField, longArrayField)), "structure_field");
+
+        // no records
+        { // locally scoped for sanity
+            final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            final IRecordWriter recordWriter = new PGBinaryRecordWriter(actual);
+            recordWriter.close()/*by contract*/;
+
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            final DataOutputStream output = new DataOutputStream(expected);
+            writeHeader(output);
+            output.writeShort(-1/*trailer*/);
+            assertEquals(actual.toByteArray(), expected.toByteArray());
+        }
+
+        // primitives, unset values, an array and a structure (with a NULL
+        // and an empty array)
+        { // locally scoped for sanity
+            final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            final IRecordWriter recordWriter = new PGBinaryRecordWriter(actual);
+            recordWriter.startRecord();
+                recordWriter.writeField(shortField, (short)-2);
+                recordWriter.writeField(stringField, "\u00e9");
+                recordWriter.startArray(intArrayField);
+                    recordWriter.writeField(intArrayField, 1);
+                    recordWriter.writeUnsetField(intArrayField);
+                recordWriter.endArray();
+                recordWriter.startStructure(structureField);
+                    recordWriter.writeField(booleanField, true);
+                    recordWriter.startArray(longArrayField);
+                    recordWriter.endArray();
+                recordWriter.endStructure();
+            recordWriter.endRecord();
+            recordWriter.startRecord();
+                recordWriter.writeField(shortField, (short)3);
+                recordWriter.writeUnsetField(stringField);
+                recordWriter.writeUnsetField(intArrayField);
+                recordWriter.writeUnsetField(structureField);
+            recordWriter.endRecord();
+            recordWriter.close()/*by contract*/;
+
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            final DataOutputStream output = new DataOutputStream(expected);
+            writeHeader(output);
+            output.writeShort(4/*field count*/);
+                output.writeInt(2); output.writeShort(-2);
+                output.writeInt(2); output.write(new byte[] { (byte)0xC3, (byte)0xA9 });
+                output.writeInt(20 + 8 + 4);
+                    output.writeInt(1/*ndim*/); output.writeInt(1/*has nulls*/); output.writeInt(PGBinaryRecordWriter.INT4_OID);
+                    output.writeInt(2/*dimension*/); output.writeInt(1/*lower bound*/);
+                    output.writeInt(4); output.writeInt(1);
+                    output.writeInt(-1);
+                output.writeInt(4 + (8 + 1) + (8 + 12));
+                    output.writeInt(2/*column count*/);
+                    output.writeInt(PGBinaryRecordWriter.BOOL_OID); output.writeInt(1); output.writeByte(1);
+                    output.writeInt(PGBinaryRecordWriter.INT8_ARRAY_OID); output.writeInt(12);
+                        output.writeInt(0/*ndim*/); output.writeInt(0/*has nulls*/); output.writeInt(PGBinaryRecordWriter.INT8_OID);
+            output.writeShort(4/*field count*/);
+                output.writeInt(2); output.writeShort(3);
+                output.writeInt(-1);
+                output.writeInt(-1);
+                output.writeInt(-1);
+            output.writeShort(-1/*trailer*/);
+            assertEquals(actual.toByteArray(), expected.toByteArray());
+
+            // read back
+            final IRecordReader recordReader = new PGBinaryRecordReader(new ByteArrayInputStream(actual.toByteArray()));
+            final MutableBoolean isSet = new MutableBoolean();
+            assertTrue(recordReader.hasMoreRecords());
+            recordReader.startRecord();
+                assertEquals(recordReader.readShortField(isSet), -2); assertTrue(isSet.booleanValue());
+                assertEquals(recordReader.readStringField(isSet), "\u00e9");
+                assertTrue(recordReader.startArray());
+                    assertTrue(recordReader.hasMoreElements());
+                    assertEquals(recordReader.readIntField(isSet), 1); assertTrue(isSet.booleanValue());
+                    assertTrue(recordReader.hasMoreElements());
+                    recordReader.readIntField(isSet); assertFalse(isSet.booleanValue());
+                    assertFalse(recordReader.hasMoreElements());
+                recordReader.endArray();
+                assertTrue(recordReader.startStructure());
+                    assertEquals(recordReader.readBooleanField(isSet), true);
+                    assertTrue(recordReader.startArray());
+                        assertFalse(recordReader.hasMoreElements());
+                    recordReader.endArray();
+                recordReader.endStructure();
+            recordReader.endRecord();
+            assertTrue(recordReader.hasMoreRecords());
+            recordReader.startRecord();
+                recordReader.skipField();
+                recordReader.readStringField(isSet); assertFalse(isSet.booleanValue());
+                assertFalse(recordReader.startArray());
+                recordReader.endArray()/*by contract*/;
+                assertFalse(recordReader.startStructure());
+            recordReader.endRecord();
+            assertFalse(recordReader.hasMoreRecords());
+            recordReader.close();
+        }
+    }
+
+    /**
+     * Tests that <code>bytea</code> values (including an empty value and a
+     * direct buffer that has no backing array) round trip through the writer
+     * and the reader.
+     */
+    @Test
+    public void bytesTest() throws Exception {
+        // dummy fields for testing
+        final IField bytesField = new ProtobufField(0/*index*/, FieldQualifier.ONE, PrimitiveType.BYTES, "bytes_field");
+        final IField emptyBytesField = new ProtobufField(1/*index*/, FieldQualifier.ZERO_OR_ONE, PrimitiveType.BYTES, "empty_bytes_field");
+        final IField unsetBytesField = new ProtobufField(2/*index*/, FieldQualifier.ZERO_OR_ONE, PrimitiveType.BYTES, "unset_bytes_field");
+        final IField bytesArrayField = new ProtobufField(3/*index*/, FieldQualifier.ZERO_OR_MORE, PrimitiveType.BYTES, "bytes_array_field");
+
+        final ByteBuffer directValue = ByteBuffer.allocateDirect(4);
+        directValue.put(new byte[] { 0x00, 0x01, (byte)0x80, (byte)0xFF }).flip();
+        assertFalse(directValue.hasArray(), "Not array-backed");
+        final ByteBuffer emptyValue = ByteBuffer.allocate(0);
+
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        final IRecordWriter recordWriter = new PGBinaryRecordWriter(actual);
+        recordWriter.startRecord();
+            recordWriter.writeField(bytesField, directValue);
+            recordWriter.writeField(emptyBytesField, emptyValue);
+            recordWriter.writeUnsetField(unsetBytesField);
+            recordWriter.startArray(bytesArrayField);
+                recordWriter.writeField(bytesArrayField, emptyValue);
+                recordWriter.writeField(bytesArrayField, directValue);
+            recordWriter.endArray();
+        recordWriter.endRecord();
+        recordWriter.close()/*by contract*/;
+        assertEquals(directValue.position(), 0, "Position unchanged");
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(expected);
+        writeHeader(output);
+        output.writeShort(4/*field count*/);
+            output.writeInt(4); output.write(new byte[] { 0x00, 0x01, (byte)0x80, (byte)0xFF });
+            output.writeInt(0);
+            output.writeInt(-1);
+            output.writeInt(20 + 4 + (4 + 4));
+                output.writeInt(1/*ndim*/); output.writeInt(0/*has nulls*/); output.writeInt(PGBinaryRecordWriter.BYTEA_OID);
+                output.writeInt(2/*dimension*/); output.writeInt(1/*lower bound*/);
+                output.writeInt(0);
+                output.writeInt(4); output.write(new byte[] { 0x00, 0x01, (byte)0x80, (byte)0xFF });
+        output.writeShort(-1/*trailer*/);
+        assertEquals(actual.toByteArray(), expected.toByteArray());
+
+        // read back
+        final IRecordReader recordReader = new PGBinaryRecordReader(new ByteArrayInputStream(actual.toByteArray()));
+        final MutableBoolean isSet = new MutableBoolean();
+        assertTrue(recordReader.hasMoreRecords());
+        recordReader.startRecord();
+            assertEquals(recordReader.readBytesField(isSet), directValue); assertTrue(isSet.booleanValue());
+            assertEquals(recordReader.readBytesField(isSet), emptyValue); assertTrue(isSet.booleanValue()/*empty is not unset*/);
+            recordReader.readBytesField(isSet); assertFalse(isSet.booleanValue());
+            assertTrue(recordReader.startArray());
+                assertTrue(recordReader.hasMoreElements());
+                assertEquals(recordReader.readBytesField(isSet), emptyValue); assertTrue(isSet.booleanValue());
+                assertTrue(recordReader.hasMoreElements());
+                assertEquals(recordReader.readBytesField(isSet), directValue); assertTrue(isSet.booleanValue());
+                assertFalse(recordReader.hasMoreElements());
+            recordReader.endArray();
+        recordReader.endRecord();
+        assertFalse(recordReader.hasMoreRecords());
+        recordReader.close();
+    }
+
+    /**
+     * Decodes field-stripes into PG binary, re-encodes that binary using
+     * {@link PGBinaryRecordReader} and asserts that the resulting stripes
+     * match those encoded directly from JSON.
+     */
+    @Test
+    @SuppressWarnings("serial")
+    public void roundTripTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    optional int64    long_field = 1;\n" +
+            "    message NestedMessage {\n" +
+            "        required string   string_field = 1;\n" +
+            "        repeated int32    int_field = 2;\n" +
+            "    }\n" +
+            "    repeated NestedMessage nested_field = 2;\n" +
+            "    optional NestedMessage single_nested_field = 3;\n" +
+            "    optional double   double_field = 4;\n" +
+            "    optional float    float_field = 5;\n" +
+            "    optional bool     bool_field = 6;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final List<IField> leafFields = new ArrayList<IField>();
+        collectLeafFields(schema, leafFields);
+
+        final String jsonRecords =
+            "[-9223372036854775808,[[\"a\",[1,2,3]],[\"b c\",null]],[\"d\\\"\",[-1]],1.25,0.5,false]\n" +
+            "[null,null,null,null,null,null]\n" +
+            "[42,[[\"\",[2147483647]]],null,-0.0,null,true]";
+
+        // JSON -> binary field-stripes
+        final TestBinaryVLenFieldStripeWriterFactory binaryWriterFactory = new TestBinaryVLenFieldStripeWriterFactory(4096/*buffer size*/);
+        { // locally scoped for sanity
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(binaryWriterFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(jsonRecords));
+            while(rootEncoder.encode(recordReader));
+            binaryWriterFactory.closeAllWriters();
+        }
+
+        // binary field-stripes -> PG binary
+        final ByteArrayOutputStream pgBinary = new ByteArrayOutputStream();
+        { // locally scoped for sanity
+            final Map<IField, InputStream> fieldToInputStreamMap = new HashMap<IField, InputStream>() {{
+                for(final IField field : leafFields)
+                    put(field, new ByteArrayInputStream(binaryWriterFactory.getByteArray(field)));
+            }};
+            final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(new TestBinaryVLenFieldStripeReaderFactory(fieldToInputStreamMap)).createDecoderTree(schema);
+            final IRecordWriter recordWriter = new PGBinaryRecordWriter(pgBinary);
+            int recordCount = 0;
+            while(rootDecoder.decode(recordWriter))
+                recordCount++;
+            recordWriter.close();
+            assertEquals(recordCount, 3);
+        }
+
+        // PG binary -> XML field-stripes and JSON -> XML field-stripes
+        final TestXMLFieldStripeWriterFactory pgBinaryWriterFactory = new TestXMLFieldStripeWriterFactory();
+        { // locally scoped for sanity
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(pgBinaryWriterFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new PGBinaryRecordReader(new ByteArrayInputStream(pgBinary.toByteArray()));
+            while(rootEncoder.encode(recordReader));
+        }
+        final TestXMLFieldStripeWriterFactory jsonWriterFactory = new TestXMLFieldStripeWriterFactory();
+        { // locally scoped for sanity
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(jsonWriterFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(jsonRecords));
+            while(rootEncoder.encode(recordReader));
+        }
+        for(final IField field : leafFields)
+            assertEquals(pgBinaryWriterFactory.getStringWriter(field).toString(), jsonWriterFactory.getStringWriter(field).toString(), "'" + field.getName() + "' stripe");
+    }
+
+    /**
+     * Tests that malformed input is reported.
+     */
+    @Test
+    public void malformedTest() throws Exception {
+        final MutableBoolean isSet = new MutableBoolean();
+
+        // not the binary COPY format
+        { // locally scoped for sanity
+            final IRecordReader recordReader = new PGBinaryRecordReader(new ByteArrayInputStream("1\t2\n".getBytes("UTF-8")));
+            try {
+                recordReader.hasMoreRecords();
+                fail("Expected an InvalidDataException.");
+            } catch(final InvalidDataException ide) {
+                /* expected */
+            }
+        }
+
+        // a value whose width does not match the type that is read
+        { // locally scoped for sanity
+            final IField intField = new ProtobufField(0/*index*/, FieldQualifier.ONE, PrimitiveType.INT, "int_field");
+            final ByteArrayOutputStream pgBinary = new ByteArrayOutputStream();
+            final IRecordWriter recordWriter = new PGBinaryRecordWriter(pgBinary);
+            recordWriter.startRecord();
+                recordWriter.writeField(intField, 1);
+            recordWriter.endRecord();
+            recordWriter.close();
+
+            final IRecordReader recordReader = new PGBinaryRecordReader(new ByteArrayInputStream(pgBinary.toByteArray()));
+            recordReader.startRecord();
+            try {
+                recordReader.readLongField(isSet);
+                fail("Expected an InvalidDataException.");
+            } catch(final InvalidDataException ide) {
+                /* expected */
+            }
+        }
+
+        // a missing trailer
+        { // locally scoped for sanity
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            final DataOutputStream output = new DataOutputStream(expected);
+            writeHeader(output);
+            final IRecordReader recordReader = new PGBinaryRecordReader(new ByteArrayInputStream(expected.toByteArray()));
+            try {
+                recordReader.hasMoreRecords();
+                fail("Expected an InvalidDataException.");
+            } catch(final InvalidDataException ide) {
+                /* expected */
+            }
+        }
+    }
+
+    // ************************************************************************
+    /**
+     * Writes the binary COPY header (with no flags or extension).
+     */
+    private static void writeHeader(final DataOutputStream output) throws Exception {
+        output.write(new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte)0xFF, '\r', '\n', 0 });
+        output.writeInt(0/*flags*/);
+        output.writeInt(0/*header extension length*/);
+    }
+
+    /**
+     * Recursively collects the leaf (primitive) fields of the specified type.
+     */
+    private static void collectLeafFields(final ICompositeType type, final List<IField> leafFields) {
+        for(final IField field : type.getFields()) {
+            if(field.getType().isComposite())
+                collectLeafFields((ICompositeType)field.getType(), leafFields);
+            else
+                leafFields.add(field);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package net.agkn.field_stripe.record.writer;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.record.HexBytes;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.ProtobufRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.stripe.TestBinaryVLenFieldStripeReaderFactory;
+import net.agkn.field_stripe.stripe.TestBinaryVLenFieldStripeWriterFactory;
+import net.agkn.field_stripe.stripe.TestXMLFieldStripeWriterFactory;
+
+import org.apache.commons.lang.mutable.MutableBoolean;
+import org.testng.annotations.Test;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * Unit tests for {@link ProtobufRecordWriter}.
+ *
+ * @author rgrzywinski
+ * @see ProtobufRecordReader
+ */
+public class ProtobufRecordWriterTest {
+    private static final String PROTOBUF_TEXT =
+        "package package_name;\n"/*required by Protostuff*/ +
+        "message Message {\n" +
+        "    optional sint64   long_field = 1;\n" +
+        "    message NestedMessage {\n" +
+        "        required string   string_field = 1;\n" +
+        "        repeated fixed32  int_field = 2;\n" +
+        "    }\n" +
+        "    repeated NestedMessage nested_field = 2;\n" +
+        "    optional double   double_field = 3;\n" +
+        "    optional bool     bool_field = 4;\n" +
+        "}\n";
+
+    /**
+     * Tests that the written bytes match those written directly with a
+     * {@link CodedOutputStream} including a nested message that is long
+     * enough that its length requires more than one byte.
+     */
+    @Test
+    public void binaryTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+        final IField longField = schema.getField(0);
+        final IField nestedField = schema.getField(1);
+        final IField stringField = schema.getField(1, 0);
+        final IField intField = schema.getField(1, 1);
+        final IField doubleField = schema.getField(2);
+        final IField boolField = schema.getField(3);
+
+        final StringBuilder longString = new StringBuilder();
+        for(int i=0; i<200; i++) longString.append('x');
+
+        // ....................................................................
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        final IRecordWriter recordWriter = new ProtobufRecordWriter(actual);
+        recordWriter.startRecord();
+            recordWriter.writeField(longField, -1L);
+            recordWriter.startArray(nestedField);
+                recordWriter.startStructure(nestedField);
+                    recordWriter.writeField(stringField, "short");
+                    recordWriter.startArray(intField);
+                        recordWriter.writeField(intField, 1);
+                        recordWriter.writeField(intField, -1);
+                    recordWriter.endArray();
+                recordWriter.endStructure();
+                recordWriter.startStructure(nestedField);
+                    recordWriter.writeField(stringField, longString.toString());
+                    recordWriter.writeUnsetField(intField);
+                recordWriter.endStructure();
+            recordWriter.endArray();
+            recordWriter.writeUnsetField(doubleField);
+            recordWriter.writeField(boolField, true);
+        recordWriter.endRecord();
+        recordWriter.startRecord();
+            recordWriter.writeUnsetField(longField);
+            recordWriter.writeUnsetField(nestedField);
+            recordWriter.writeField(doubleField, 1.5);
+            recordWriter.writeUnsetField(boolField);
+        recordWriter.endRecord();
+        recordWriter.close();
+
+        // ....................................................................
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        { // locally scoped for sanity
+            final ByteArrayOutputStream firstNested = new ByteArrayOutputStream();
+            final CodedOutputStream firstNestedOutput = CodedOutputStream.newInstance(firstNested);
+            firstNestedOutput.writeString(1, "short");
+            firstNestedOutput.writeFixed32(2, 1);
+            firstNestedOutput.writeFixed32(2, -1);
+            firstNestedOutput.flush();
+
+            final ByteArrayOutputStream secondNested = new ByteArrayOutputStream();
+            final CodedOutputStream secondNestedOutput = CodedOutputStream.newInstance(secondNested);
+            secondNestedOutput.writeString(1, longString.toString());
+            secondNestedOutput.flush();
+
+            final ByteArrayOutputStream message = new ByteArrayOutputStream();
+            final CodedOutputStream messageOutput = CodedOutputStream.newInstance(message);
+            messageOutput.writeSInt64(1, -1L);
+            writeNested(messageOutput, 2, firstNested.toByteArray());
+            writeNested(messageOutput, 2, secondNested.toByteArray());
+            messageOutput.writeBool(4, true);
+            messageOutput.flush();
+            writeDelimited(expected, message.toByteArray());
+        }
+        { // locally scoped for sanity
+            final ByteArrayOutputStream message = new ByteArrayOutputStream();
+            final CodedOutputStream messageOutput = CodedOutputStream.newInstance(message);
+            messageOutput.writeDouble(3, 1.5);
+            messageOutput.flush();
+            writeDelimited(expected, message.toByteArray());
+        }
+
+        assertEquals(actual.toByteArray(), expected.toByteArray());
+    }
+
+    /**
+     * Decodes field-stripes into Protobuf binary, re-encodes that binary
+     * using {@link ProtobufRecordReader} and asserts that the resulting stripes
+     * match those encoded directly from JSON.
+     */
+    @Test
+    @SuppressWarnings("serial")
+    public void roundTripTest() throws Exception {
+        final ICompositeType schema = new SchemaBuilder().createSchema(PROTOBUF_TEXT, "Message");
+        final List<IField> leafFields = new ArrayList<IField>();
+        collectLeafFields(schema, leafFields);
+
+        // NOTE:  Protobuf does not distinguish an empty repeated field from an
+        //        unset one so only empty arrays are used
+        final String jsonRecords =
+            "[-9223372036854775808,[[\"a\",[1,2,3]],[\"b\",[]]],1.25,false]\n" +
+            "[null,[],null,null]\n" +
+            "[42,[[\"c\",[-1]]],null,true]";
+
+        // JSON -> binary field-stripes
+        final TestBinaryVLenFieldStripeWriterFactory binaryWriterFactory = new TestBinaryVLenFieldStripeWriterFactory(4096/*buffer size*/);
+        { // locally scoped for sanity
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(binaryWriterFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(jsonRecords));
+            while(rootEncoder.encode(recordReader));
+            binaryWriterFactory.closeAllWriters();
+        }
+
+        // binary field-stripes -> Protobuf
+        final ByteArrayOutputStream protobuf = new ByteArrayOutputStream();
+        { // locally scoped for sanity
+            final Map<IField, InputStream> fieldToInputStreamMap = new HashMap<IField, InputStream>() {{
+                for(final IField field : leafFields)
+                    put(field, new ByteArrayInputStream(binaryWriterFactory.getByteArray(field)));
+            }};
+            final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(new TestBinaryVLenFieldStripeReaderFactory(fieldToInputStreamMap)).createDecoderTree(schema);
+            final IRecordWriter recordWriter = new ProtobufRecordWriter(protobuf);
+            int recordCount = 0;
+            while(rootDecoder.decode(recordWriter))
+                recordCount++;
+            recordWriter.close();
+            assertEquals(recordCount, 3);
+        }
+
+        // Protobuf -> XML field-stripes and JSON -> XML field-stripes
+        final TestXMLFieldStripeWriterFactory protobufWriterFactory = new TestXMLFieldStripeWriterFactory();
+        { // locally scoped for sanity
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(protobufWriterFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new ProtobufRecordReader(schema, new ByteArrayInputStream(protobuf.toByteArray()));
+            while(rootEncoder.encode(recordReader));
+        }
+        final TestXMLFieldStripeWriterFactory jsonWriterFactory = new TestXMLFieldStripeWriterFactory();
+        { // locally scoped for sanity
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(jsonWriterFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(jsonRecords));
+            while(rootEncoder.encode(recordReader));
+        }
+        for(final IField field : leafFields)
+            assertEquals(protobufWriterFactory.getStringWriter(field).toString(), jsonWriterFactory.getStringWriter(field).toString(), "'" + field.getName() + "' stripe");
+    }
+
+    /**
+     * Tests that the names of enum symbols are written as their numbers and
+     * are read back (by {@link ProtobufRecordReader}) as their names.
+     */
+    @Test
+    public void enumTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    enum Color { RED = 1; GREEN = 2; BLUE = -4; }\n" +
+            "    optional Color    color_field = 1;\n" +
+            "    repeated Color    colors_field = 2;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final IField colorField = schema.getField(0);
+        final IField colorsField = schema.getField(1);
+
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        final IRecordWriter recordWriter = new ProtobufRecordWriter(actual);
+        recordWriter.startRecord();
+            recordWriter.writeField(colorField, "BLUE");
+            recordWriter.startArray(colorsField);
+                recordWriter.writeField(colorsField, "GREEN");
+                recordWriter.writeField(colorsField, "RED");
+            recordWriter.endArray();
+        recordWriter.endRecord();
+        recordWriter.close();
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        { // locally scoped for sanity
+            final ByteArrayOutputStream message = new ByteArrayOutputStream();
+            final CodedOutputStream messageOutput = CodedOutputStream.newInstance(message);
+            messageOutput.writeEnum(1, -4);
+            messageOutput.writeEnum(2, 2);
+            messageOutput.writeEnum(2, 1);
+            messageOutput.flush();
+            writeDelimited(expected, message.toByteArray());
+        }
+        assertEquals(actual.toByteArray(), expected.toByteArray());
+
+        final IRecordReader recordReader = new ProtobufRecordReader(schema, new ByteArrayInputStream(actual.toByteArray()));
+        final MutableBoolean isSet = new MutableBoolean();
+        recordReader.startRecord();
+            assertEquals(recordReader.readStringField(isSet), "BLUE");
+            recordReader.startArray();
+                assertEquals(recordReader.readStringField(isSet), "GREEN");
+                assertEquals(recordReader.readStringField(isSet), "RED");
+            recordReader.endArray();
+        recordReader.endRecord();
+
+        { // an unknown symbol cannot be written
+            final IRecordWriter unknownRecordWriter = new ProtobufRecordWriter(new ByteArrayOutputStream());
+            unknownRecordWriter.startRecord();
+            try {
+                unknownRecordWriter.writeField(colorField, "PURPLE");
+                assert false : "Expected an InvalidDataException.";
+            } catch(final InvalidDataException ide) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Tests that bytes fields are written from (array-backed, read-only and
+     * direct) <code>ByteBuffer</code>s and are read back as views of the record.
+     */
+    @Test
+    public void bytesTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    optional bytes    bytes_field = 1;\n" +
+            "    repeated bytes    repeated_bytes_field = 2;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final IField bytesField = schema.getField(0);
+        final IField repeatedBytesField = schema.getField(1);
+        assertEquals(bytesField.getType(), PrimitiveType.BYTES);
+
+        final byte[] bytes = { 0x00, 0x01, (byte)0xFE, (byte)0xFF, 0x7F };
+        final ByteBuffer directBuffer = ByteBuffer.allocateDirect(2);
+        directBuffer.put((byte)0x0A).put((byte)0x0B).flip();
+
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        final IRecordWriter recordWriter = new ProtobufRecordWriter(actual);
+        recordWriter.startRecord();
+            recordWriter.writeField(bytesField, ByteBuffer.wrap(bytes, 1, 3)/*array-backed with an offset*/);
+            recordWriter.startArray(repeatedBytesField);
+                recordWriter.writeField(repeatedBytesField, ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+                recordWriter.writeField(repeatedBytesField, directBuffer);
+                recordWriter.writeField(repeatedBytesField, ByteBuffer.allocate(0)/*empty*/);
+            recordWriter.endArray();
+        recordWriter.endRecord();
+        recordWriter.close();
+        assertEquals(directBuffer.position(), 0, "Position unchanged");
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        { // locally scoped for sanity
+            final ByteArrayOutputStream message = new ByteArrayOutputStream();
+            final CodedOutputStream messageOutput = CodedOutputStream.newInstance(message);
+            messageOutput.writeBytes(1, ByteString.copyFrom(bytes, 1, 3));
+            messageOutput.writeBytes(2, ByteString.copyFrom(bytes));
+            messageOutput.writeBytes(2, ByteString.copyFrom(new byte[] { 0x0A, 0x0B }));
+            messageOutput.writeBytes(2, ByteString.EMPTY);
+            messageOutput.flush();
+            writeDelimited(expected, message.toByteArray());
+        }
+        assertEquals(actual.toByteArray(), expected.toByteArray());
+
+        final IRecordReader recordReader = new ProtobufRecordReader(schema, new ByteArrayInputStream(actual.toByteArray()));
+        final MutableBoolean isSet = new MutableBoolean();
+        recordReader.startRecord();
+            final ByteBuffer value = recordReader.readBytesField(isSet);
+            assertTrue(isSet.booleanValue());
+            assertTrue(value.isReadOnly(), "View of the record");
+            assertEquals(HexBytes.toArray(value), new byte[] { 0x01, (byte)0xFE, (byte)0xFF });
+            recordReader.startArray();
+                assertEquals(HexBytes.toArray(recordReader.readBytesField(isSet)), bytes);
+                assertEquals(HexBytes.toArray(recordReader.readBytesField(isSet)), new byte[] { 0x0A, 0x0B });
+                assertEquals(recordReader.readBytesField(isSet).remaining(), 0);
+            recordReader.endArray();
+        recordReader.endRecord();
+    }
+
+    // ************************************************************************
+    /**
+     * Recursively collects the leaf (primitive) fields of the specified type.
+     */
+    private static void collectLeafFields(final ICompositeType type, final List<IField> leafFields) {
+        for(final IField field : type.getFields()) {
+            if(field.getType().isComposite())
+                collectLeafFields((ICompositeType)field.getType(), leafFields);
+            else
+                leafFields.add(field);
+        }
+    }
+
+    /**
+     * Writes the specified bytes as a nested message field.
+     */
+    private static void writeNested(final CodedOutputStream output, final int fieldNumber, final byte[] message) throws Exception {
+        output.writeTag(fieldNumber, 2/*length-delimited*/);
+        output.writeRawVarint32(message.length);
+        output.writeRawBytes(message);
+    }
+
+    /**
+     * Writes the specified message prefixed by its varint length.
+     */
+    private static void writeDelimited(final ByteArrayOutputStream output, final byte[] message) throws Exception {
+        final CodedOutputStream codedOutput = CodedOutputStream.newInstance(output);
+        codedOutput.writeRawVarint32(message.length);
+        codedOutput.writeRawBytes(message);
+        codedOutput.flush();
+    }
+}
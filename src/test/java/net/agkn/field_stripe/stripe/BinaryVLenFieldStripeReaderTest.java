@@ -18,9 +18,11 @@ package net.agkn.field_stripe.stripe;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -34,6 +36,7 @@ import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
 import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
 import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
 import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.exception.InvalidDataException;
 import net.agkn.field_stripe.record.FieldQualifier;
 import net.agkn.field_stripe.record.ICompositeType;
 import net.agkn.field_stripe.record.IField;
@@ -45,6 +48,7 @@ import net.agkn.field_stripe.record.reader.IRecordReader;
 import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
 import net.agkn.field_stripe.record.writer.IRecordWriter;
 import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+import net.agkn.field_stripe.stripe.Instruction.Kind;
 
 import org.testng.annotations.Test;
 
@@ -298,4 +302,226 @@ public class BinaryVLenFieldStripeReaderTest {
         assertEquals(recordDecodeCount, recordCount, "Decoded record count");
         assertEquals(records.toString(), jsonRecord, "Decoded records");
     }
-}
\ No newline at end of file
+
+    // ========================================================================
+    /**
+     * Tests that the length encoded values of a repeated field are read both
+     * as instructions and all at once.
+     */
+    @Test
+    @SuppressWarnings("serial")
+    public void repeatedValuesTest() throws Exception {
+        final ProtobufCompositeType schema = new ProtobufCompositeType("Message", new ArrayList<IField>() {{
+            add(new ProtobufField(1/*index*/, FieldQualifier.ZERO_OR_MORE/*repeated*/, PrimitiveType.INT, "int_field"));
+        }});
+        schema.resolve(new Path()/*root*/)/*resolve by contract*/;
+        final IField field = schema.getField(0/*int_field*/);
+
+        // [1,2,3], [], [4], [5,6]
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final BinaryVLenFieldStripeWriter writer = new BinaryVLenFieldStripeWriter(outputStream, field);
+        writer.writeValue(1);
+        writer.writeRepeated();
+        writer.writeValue(2);
+        writer.writeRepeated();
+        writer.writeValue(3);
+        writer.writeUnset();
+        writer.writeValue(4);
+        writer.writeValue(5);
+        writer.writeRepeated();
+        writer.writeValue(6);
+        writer.close();
+
+        { // as instructions
+            final BinaryVLenFieldStripeReader reader = new BinaryVLenFieldStripeReader(new ByteArrayInputStream(outputStream.toByteArray()), field);
+            assertValue(reader.readInstruction(), 1);
+            assertEquals(reader.readInstruction().kind, Kind.REPEATED_VALUE);
+            assertValue(reader.readInstruction(), 2);
+            assertEquals(reader.readInstruction().kind, Kind.REPEATED_VALUE);
+            assertValue(reader.readInstruction(), 3);
+            assertEquals(reader.readInstruction().kind, Kind.UNSET);
+            assertValue(reader.readInstruction(), 4);
+            assertValue(reader.readInstruction(), 5);
+            assertEquals(reader.readInstruction().kind, Kind.REPEATED_VALUE);
+            assertValue(reader.readInstruction(), 6);
+            assertNull(reader.readInstruction(), "End of stripe");
+        }
+        { // all at once
+            final BinaryVLenFieldStripeReader reader = new BinaryVLenFieldStripeReader(new ByteArrayInputStream(outputStream.toByteArray()), field);
+            assertValue(reader.readInstruction(), 1);
+            assertEquals(reader.readRepeatedValues(), new Object[] { 2, 3 });
+            assertEquals(reader.readInstruction().kind, Kind.UNSET);
+            assertValue(reader.readInstruction(), 4);
+            assertEquals(reader.readRepeatedValues().length, 0, "No repeated values");
+            assertValue(reader.readInstruction(), 5);
+            assertEquals(reader.readInstruction().kind, Kind.REPEATED_VALUE)/*partially read*/;
+            assertValue(reader.readInstruction(), 6);
+            assertEquals(reader.readRepeatedValues().length, 0, "No repeated values");
+            assertNull(reader.readInstruction(), "End of stripe");
+        }
+    }
+
+    /**
+     * Tests that the values of int and long fields are written in the encoding
+     * of their declared Protobuf type and are read back as written.
+     */
+    @Test
+    public void declaredIntegerEncodingTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required fixed64  fixed64_field = 1;\n" +
+            "    required sfixed32 sfixed32_field = 2;\n" +
+            "    required uint32   uint32_field = 3;\n" +
+            "    required uint64   uint64_field = 4;\n" +
+            "    required int64    int64_field = 5;\n" +
+            "    optional fixed64  optional_field = 6;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final int headerLength = 11/*magic, version, qualifier, type and three 1-byte vlens*/;
+
+        // NOTE:  a large long takes 8 bytes fixed-width rather than 10 as a vlen
+        assertIntegerEncoding(schema.getField(0/*fixed64_field*/), Long.MAX_VALUE, BinaryVLenFieldStripeWriter.FIXED_WIDTH, (headerLength + 8));
+        assertIntegerEncoding(schema.getField(1/*sfixed32_field*/), -1, BinaryVLenFieldStripeWriter.FIXED_WIDTH, (headerLength + 4));
+        // NOTE:  100 takes 1 byte unsigned rather than 2 zigzag'd
+        assertIntegerEncoding(schema.getField(2/*uint32_field*/), 100, BinaryVLenFieldStripeWriter.UNSIGNED, (headerLength + 1));
+        assertIntegerEncoding(schema.getField(3/*uint64_field*/), 100L, BinaryVLenFieldStripeWriter.UNSIGNED, (headerLength + 1));
+        assertIntegerEncoding(schema.getField(4/*int64_field*/), -1L, 0/*signed*/, (headerLength + 1));
+        // NOTE:  an optional field is fixed-width but has meta-data (a 1-byte
+        //        instruction per value)
+        assertIntegerEncoding(schema.getField(5/*optional_field*/), Long.MIN_VALUE, BinaryVLenFieldStripeWriter.FIXED_WIDTH, (headerLength + 1 + 8));
+    }
+
+    /**
+     * Writes the specified int or long value to the field-stripe of the 
+     * specified field and asserts its type flags and length and that the
+     * value is read back.
+     */
+    private static void assertIntegerEncoding(final IField field, final Number value, final int expectedTypeFlags, final int expectedLength) 
+            throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final BinaryVLenFieldStripeWriter writer = new BinaryVLenFieldStripeWriter(outputStream, field);
+        if(value instanceof Integer)
+            writer.writeValue(value.intValue());
+        else/*long*/
+            writer.writeValue(value.longValue());
+        writer.close();
+        final byte[] fieldStripe = outputStream.toByteArray();
+        assertEquals(fieldStripe.length, expectedLength, field.getName() + " length");
+        assertEquals((fieldStripe[7/*type*/] & (BinaryVLenFieldStripeWriter.FIXED_WIDTH | BinaryVLenFieldStripeWriter.UNSIGNED)), expectedTypeFlags, field.getName() + " type flags");
+
+        final BinaryVLenFieldStripeReader reader = new BinaryVLenFieldStripeReader(new ByteArrayInputStream(fieldStripe), field);
+        assertValue(reader.readInstruction(), value);
+        assertNull(reader.readInstruction(), "End of stripe");
+    }
+
+    /**
+     * Tests that the values of enum fields are written as the ordinals of their
+     * symbols and are decoded back into the names of the symbols.
+     */
+    @Test
+    public void enumTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    enum Color { RED = 1; GREEN = 2; BLUE = 4; }\n" +
+            "    required Color    color_field = 1;\n" +
+            "    repeated Color    colors_field = 2;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final IField colorField = schema.getField(0/*color_field*/);
+        final IField colorsField = schema.getField(1/*colors_field*/);
+
+        final TestBinaryVLenFieldStripeWriterFactory fieldStripeWriterFactory = new TestBinaryVLenFieldStripeWriterFactory(4096/*bufferSize*/);
+        final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(fieldStripeWriterFactory).createEncoderTree(schema);
+        final String jsonRecord =
+            "[\"RED\",[\"GREEN\",\"BLUE\"]]\n" +
+            "[\"BLUE\",[]]\n" +
+            "[\"GREEN\",[\"RED\"]]";
+        final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(jsonRecord));
+        while(rootEncoder.encode(recordReader));
+        fieldStripeWriterFactory.closeAllWriters()/*by contract*/;
+
+        // the header is followed by the symbol table and then a 1-byte ordinal
+        // per value (since the field is required-only)
+        final int symbolTableLength = 1/*count*/ + (1 + 3)/*RED*/ + (1 + 5)/*GREEN*/ + (1 + 4)/*BLUE*/;
+        final byte[] colorStripe = fieldStripeWriterFactory.getByteArray(colorField);
+        assertEquals(colorStripe[7/*type*/], BinaryVLenFieldStripeWriter.ENUM_TYPE);
+        assertEquals(colorStripe.length, (11/*header*/ + symbolTableLength + 3/*values*/));
+
+        @SuppressWarnings("serial")
+        final Map<IField, InputStream> fieldToInputStreamMap = new HashMap<IField, InputStream>() {{
+            put(colorField, new ByteArrayInputStream(fieldStripeWriterFactory.getByteArray(colorField)));
+            put(colorsField, new ByteArrayInputStream(fieldStripeWriterFactory.getByteArray(colorsField)));
+        }};
+        final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(new TestBinaryVLenFieldStripeReaderFactory(fieldToInputStreamMap)).createDecoderTree(schema);
+        final StringWriter records = new StringWriter();
+        final IRecordWriter recordWriter = new JsonArrayRecordWriter(records, false/*no pretty-print*/);
+        while(rootDecoder.decode(recordWriter));
+        recordWriter.close()/*by contract*/;
+        assertEquals(records.toString(), jsonRecord, "Decoded records");
+
+        { // an unknown symbol cannot be written
+            final BinaryVLenFieldStripeWriter writer = new BinaryVLenFieldStripeWriter(new ByteArrayOutputStream(), colorField);
+            try {
+                writer.writeValue("PURPLE");
+                assert false : "Expected an InvalidDataException.";
+            } catch(final InvalidDataException ide) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Tests that bytes fields are written as length-prefixed raw bytes and are
+     * decoded back to the original (hexadecimal JSON) records.
+     */
+    @Test
+    public void bytesTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required bytes    bytes_field = 1;\n" +
+            "    repeated bytes    repeated_bytes_field = 2;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final IField bytesField = schema.getField(0/*bytes_field*/);
+        final IField repeatedBytesField = schema.getField(1/*repeated_bytes_field*/);
+
+        final TestBinaryVLenFieldStripeWriterFactory fieldStripeWriterFactory = new TestBinaryVLenFieldStripeWriterFactory(4096/*bufferSize*/);
+        final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(fieldStripeWriterFactory).createEncoderTree(schema);
+        final String jsonRecord =
+            "[\"00ff\",[\"0a0b0c\",\"\"]]\n" +
+            "[\"\",[]]\n" +
+            "[\"deadbeef\",[\"7f\"]]";
+        final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(jsonRecord));
+        while(rootEncoder.encode(recordReader));
+        fieldStripeWriterFactory.closeAllWriters()/*by contract*/;
+
+        // the header is followed by a length-prefixed value per record (since
+        // the field is required-only)
+        final byte[] bytesStripe = fieldStripeWriterFactory.getByteArray(bytesField);
+        assertEquals(bytesStripe[7/*type*/], (byte)PrimitiveType.BYTES.ordinal());
+        assertEquals(bytesStripe.length, (11/*header*/ + (1 + 2) + (1 + 0) + (1 + 4)/*values*/));
+
+        @SuppressWarnings("serial")
+        final Map<IField, InputStream> fieldToInputStreamMap = new HashMap<IField, InputStream>() {{
+            put(bytesField, new ByteArrayInputStream(fieldStripeWriterFactory.getByteArray(bytesField)));
+            put(repeatedBytesField, new ByteArrayInputStream(fieldStripeWriterFactory.getByteArray(repeatedBytesField)));
+        }};
+        final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(new TestBinaryVLenFieldStripeReaderFactory(fieldToInputStreamMap)).createDecoderTree(schema);
+        final StringWriter records = new StringWriter();
+        final IRecordWriter recordWriter = new JsonArrayRecordWriter(records, false/*no pretty-print*/);
+        while(rootDecoder.decode(recordWriter));
+        recordWriter.close()/*by contract*/;
+        assertEquals(records.toString(), jsonRecord, "Decoded records");
+    }
+
+    /**
+     * Asserts that the specified instruction is a value with the specified value.
+     */
+    private static void assertValue(final Instruction instruction, final Object value) {
+        assertEquals(instruction.kind, Kind.VALUE);
+        assertEquals(instruction.value, value);
+    }
+}
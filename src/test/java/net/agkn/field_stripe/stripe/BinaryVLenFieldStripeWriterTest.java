@@ -20,13 +20,18 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
 
 import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
 import net.agkn.field_stripe.encode.RepeatedParentStripeEncoderTest;
 import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
 import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.exception.OperationFailedException;
 import net.agkn.field_stripe.record.FieldQualifier;
 import net.agkn.field_stripe.record.ICompositeType;
 import net.agkn.field_stripe.record.IField;
@@ -95,7 +100,7 @@ public class BinaryVLenFieldStripeWriterTest {
             final byte[] fieldStripe = getFieldStripe(fieldStripeWriterFactory, schema, 0/*byte_field*/);
             assertEquals(fieldStripe.length, 12, "Written bytes");
             assertSlice(fieldStripe,  0/*start*/, 5/*len*/, new byte[] { 'f', 's', 't', 'r', 'p'})/*magic number*/;
-            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 1 })/*version*/;
+            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 2 })/*version*/;
             assertSlice(fieldStripe,  6/*start*/, 1/*len*/, new byte[] { 0/*required*/ })/*field qualifier*/;
             assertSlice(fieldStripe,  7/*start*/, 1/*len*/, new byte[] { 0/*byte*/ })/*field type*/;
             assertSlice(fieldStripe,  8/*start*/, 1/*len*/, new byte[] { 1 })/*path length*/;
@@ -108,7 +113,7 @@ public class BinaryVLenFieldStripeWriterTest {
             final byte[] fieldStripe = getFieldStripe(fieldStripeWriterFactory, schema, 1/*short_field*/);
             assertEquals(fieldStripe.length, 13, "Written bytes");
             assertSlice(fieldStripe,  0/*start*/, 5/*len*/, new byte[] { 'f', 's', 't', 'r', 'p'})/*magic number*/;
-            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 1 })/*version*/;
+            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 2 })/*version*/;
             assertSlice(fieldStripe,  6/*start*/, 1/*len*/, new byte[] { 1/*optional*/ })/*field qualifier*/;
             assertSlice(fieldStripe,  7/*start*/, 1/*len*/, new byte[] { 1/*short*/ })/*field type*/;
             assertSlice(fieldStripe,  8/*start*/, 1/*len*/, new byte[] { 1 })/*path length*/;
@@ -122,7 +127,7 @@ public class BinaryVLenFieldStripeWriterTest {
             final byte[] fieldStripe = getFieldStripe(fieldStripeWriterFactory, schema, 2/*int_field*/);
             assertEquals(fieldStripe.length, 13, "Written bytes");
             assertSlice(fieldStripe,  0/*start*/, 5/*len*/, new byte[] { 'f', 's', 't', 'r', 'p'})/*magic number*/;
-            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 1 })/*version*/;
+            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 2 })/*version*/;
             assertSlice(fieldStripe,  6/*start*/, 1/*len*/, new byte[] { 2/*repeated*/ })/*field qualifier*/;
             assertSlice(fieldStripe,  7/*start*/, 1/*len*/, new byte[] { 2/*int*/ })/*field type*/;
             assertSlice(fieldStripe,  8/*start*/, 1/*len*/, new byte[] { 1 })/*path length*/;
@@ -136,7 +141,7 @@ public class BinaryVLenFieldStripeWriterTest {
             final byte[] fieldStripe = getFieldStripe(fieldStripeWriterFactory, schema, 3/*long_field*/);
             assertEquals(fieldStripe.length, 12, "Written bytes");
             assertSlice(fieldStripe,  0/*start*/, 5/*len*/, new byte[] { 'f', 's', 't', 'r', 'p'})/*magic number*/;
-            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 1 })/*version*/;
+            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 2 })/*version*/;
             assertSlice(fieldStripe,  6/*start*/, 1/*len*/, new byte[] { 0/*required*/ })/*field qualifier*/;
             assertSlice(fieldStripe,  7/*start*/, 1/*len*/, new byte[] { 3/*long*/ })/*field type*/;
             assertSlice(fieldStripe,  8/*start*/, 1/*len*/, new byte[] { 1 })/*path length*/;
@@ -149,7 +154,7 @@ public class BinaryVLenFieldStripeWriterTest {
             final byte[] fieldStripe = getFieldStripe(fieldStripeWriterFactory, schema, 4/*float_field*/);
             assertEquals(fieldStripe.length, 16, "Written bytes");
             assertSlice(fieldStripe,  0/*start*/, 5/*len*/, new byte[] { 'f', 's', 't', 'r', 'p'})/*magic number*/;
-            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 1 })/*version*/;
+            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 2 })/*version*/;
             assertSlice(fieldStripe,  6/*start*/, 1/*len*/, new byte[] { 1/*optional*/ })/*field qualifier*/;
             assertSlice(fieldStripe,  7/*start*/, 1/*len*/, new byte[] { 4/*float*/ })/*field type*/;
             assertSlice(fieldStripe,  8/*start*/, 1/*len*/, new byte[] { 1 })/*path length*/;
@@ -163,7 +168,7 @@ public class BinaryVLenFieldStripeWriterTest {
             final byte[] fieldStripe = getFieldStripe(fieldStripeWriterFactory, schema, 5/*double_field*/);
             assertEquals(fieldStripe.length, 20, "Written bytes");
             assertSlice(fieldStripe,  0/*start*/, 5/*len*/, new byte[] { 'f', 's', 't', 'r', 'p'})/*magic number*/;
-            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 1 })/*version*/;
+            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 2 })/*version*/;
             assertSlice(fieldStripe,  6/*start*/, 1/*len*/, new byte[] { 2/*repeated*/ })/*field qualifier*/;
             assertSlice(fieldStripe,  7/*start*/, 1/*len*/, new byte[] { 5/*double*/ })/*field type*/;
             assertSlice(fieldStripe,  8/*start*/, 1/*len*/, new byte[] { 1 })/*path length*/;
@@ -177,7 +182,7 @@ public class BinaryVLenFieldStripeWriterTest {
             final byte[] fieldStripe = getFieldStripe(fieldStripeWriterFactory, schema, 6/*boolean_field*/);
             assertEquals(fieldStripe.length, 12, "Written bytes");
             assertSlice(fieldStripe,  0/*start*/, 5/*len*/, new byte[] { 'f', 's', 't', 'r', 'p'})/*magic number*/;
-            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 1 })/*version*/;
+            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 2 })/*version*/;
             assertSlice(fieldStripe,  6/*start*/, 1/*len*/, new byte[] { 0/*required*/ })/*field qualifier*/;
             assertSlice(fieldStripe,  7/*start*/, 1/*len*/, new byte[] { 6/*boolean*/ })/*field type*/;
             assertSlice(fieldStripe,  8/*start*/, 1/*len*/, new byte[] { 1 })/*path length*/;
@@ -190,7 +195,7 @@ public class BinaryVLenFieldStripeWriterTest {
             final byte[] fieldStripe = getFieldStripe(fieldStripeWriterFactory, schema, 7/*string_field*/);
             assertEquals(fieldStripe.length, 19, "Written bytes");
             assertSlice(fieldStripe,  0/*start*/, 5/*len*/, new byte[] { 'f', 's', 't', 'r', 'p'})/*magic number*/;
-            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 1 })/*version*/;
+            assertSlice(fieldStripe,  5/*start*/, 1/*len*/, new byte[] { 2 })/*version*/;
             assertSlice(fieldStripe,  6/*start*/, 1/*len*/, new byte[] { 1/*optional*/ })/*field qualifier*/;
             assertSlice(fieldStripe,  7/*start*/, 1/*len*/, new byte[] { 7/*string*/ })/*field type*/;
             assertSlice(fieldStripe,  8/*start*/, 1/*len*/, new byte[] { 1 })/*path length*/;
@@ -565,7 +570,7 @@ public class BinaryVLenFieldStripeWriterTest {
         }
         { // Dept.Loc.Floor
             final byte[] fieldStripe = getFieldStripe(fieldStripeWriterFactory, schema, 2/*Dept*/, 2/*Loc*/, 1/*Floor*/);
-            assertEquals(fieldStripe.length, 69, "Written bytes");
+            assertEquals(fieldStripe.length, 65, "Written bytes");
 
             assertSlice(fieldStripe, 11/*start*/, 1/*len*/, new byte[] { 0x0C/*1=depth, 4=ParentUnset*/ })/*meta-data*/;
             assertSlice(fieldStripe, 12/*start*/, 1/*len*/, new byte[] { 0x14/*2=depth, 4=ParentUnset*/ })/*meta-data*/;
@@ -573,29 +578,64 @@ public class BinaryVLenFieldStripeWriterTest {
             assertSlice(fieldStripe, 14/*start*/, 4/*len*/, new byte[] { 0x01, (byte)0xB2, (byte)0xD3, 0x34/*zigzag(431321)*/ })/*value*/;
             assertSlice(fieldStripe, 18/*start*/, 5/*len*/, new byte[] { 0x01, (byte)0xF6, (byte)0xCA, (byte)0x88, 0x05/*zigzag(5313211)*/ })/*value*/;
             assertSlice(fieldStripe, 23/*start*/, 1/*len*/, new byte[] { 0x13/*2=depth, 3=RepeatedParent*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 24/*start*/, 5/*len*/, new byte[] { 0x01, (byte)0xF6, (byte)0xCA, (byte)0x88, 0x05/*zigzag(5313211)*/ })/*value*/;
-            assertSlice(fieldStripe, 29/*start*/, 1/*len*/, new byte[] { 0x02/*RepeatedValue*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 30/*start*/, 5/*len*/, new byte[] { 0x01, (byte)0xF8, (byte)0xCA, (byte)0x88, 0x05/*zigzag(5313212)*/ })/*value*/;
-            assertSlice(fieldStripe, 35/*start*/, 4/*len*/, new byte[] { 0x01, (byte)0xB2, (byte)0x88, 0x4D/*zigzag(631321)*/ })/*value*/;
-            assertSlice(fieldStripe, 39/*start*/, 1/*len*/, new byte[] { 0x0B/*1=depth, 3=RepeatedParent*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 40/*start*/, 1/*len*/, new byte[] { 0x14/*2=depth, 4=ParentUnset*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 41/*start*/, 4/*len*/, new byte[] { 0x01, (byte)0xF2, (byte)0xA2, 0x59/*zigzag(731321)*/ })/*value*/;
-            assertSlice(fieldStripe, 45/*start*/, 1/*len*/, new byte[] { 0x0B/*1=depth, 3=RepeatedParent*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 46/*start*/, 1/*len*/, new byte[] { 0x00/*Unset*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 47/*start*/, 4/*len*/, new byte[] { 0x01, (byte)0xB2, (byte)0xBD, 0x65/*zigzag(831321)*/ })/*value*/;
-            assertSlice(fieldStripe, 51/*start*/, 1/*len*/, new byte[] { 0x0B/*1=depth, 3=RepeatedParent*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 52/*start*/, 4/*len*/, new byte[] { 0x01, (byte)0x82, (byte)0xCD, 0x65/*zigzag(832321)*/ })/*value*/;
+            assertSlice(fieldStripe, 24/*start*/, 1/*len*/, new byte[] { 0x15/*2=count, 5=RepeatedValues*/ })/*meta-data*/;
+            assertSlice(fieldStripe, 25/*start*/, 4/*len*/, new byte[] { (byte)0xF6, (byte)0xCA, (byte)0x88, 0x05/*zigzag(5313211)*/ })/*value*/;
+            assertSlice(fieldStripe, 29/*start*/, 4/*len*/, new byte[] { (byte)0xF8, (byte)0xCA, (byte)0x88, 0x05/*zigzag(5313212)*/ })/*value*/;
+            assertSlice(fieldStripe, 33/*start*/, 4/*len*/, new byte[] { 0x01, (byte)0xB2, (byte)0x88, 0x4D/*zigzag(631321)*/ })/*value*/;
+            assertSlice(fieldStripe, 37/*start*/, 1/*len*/, new byte[] { 0x0B/*1=depth, 3=RepeatedParent*/ })/*meta-data*/;
+            assertSlice(fieldStripe, 38/*start*/, 1/*len*/, new byte[] { 0x14/*2=depth, 4=ParentUnset*/ })/*meta-data*/;
+            assertSlice(fieldStripe, 39/*start*/, 4/*len*/, new byte[] { 0x01, (byte)0xF2, (byte)0xA2, 0x59/*zigzag(731321)*/ })/*value*/;
+            assertSlice(fieldStripe, 43/*start*/, 1/*len*/, new byte[] { 0x0B/*1=depth, 3=RepeatedParent*/ })/*meta-data*/;
+            assertSlice(fieldStripe, 44/*start*/, 1/*len*/, new byte[] { 0x00/*Unset*/ })/*meta-data*/;
+            assertSlice(fieldStripe, 45/*start*/, 4/*len*/, new byte[] { 0x01, (byte)0xB2, (byte)0xBD, 0x65/*zigzag(831321)*/ })/*value*/;
+            assertSlice(fieldStripe, 49/*start*/, 1/*len*/, new byte[] { 0x0B/*1=depth, 3=RepeatedParent*/ })/*meta-data*/;
+            assertSlice(fieldStripe, 50/*start*/, 4/*len*/, new byte[] { 0x01, (byte)0x82, (byte)0xCD, 0x65/*zigzag(832321)*/ })/*value*/;
+            assertSlice(fieldStripe, 54/*start*/, 1/*len*/, new byte[] { 0x00/*Unset*/ })/*meta-data*/;
+            assertSlice(fieldStripe, 55/*start*/, 1/*len*/, new byte[] { 0x13/*2=depth, 3=RepeatedParent*/ })/*meta-data*/;
             assertSlice(fieldStripe, 56/*start*/, 1/*len*/, new byte[] { 0x00/*Unset*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 57/*start*/, 1/*len*/, new byte[] { 0x13/*2=depth, 3=RepeatedParent*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 58/*start*/, 1/*len*/, new byte[] { 0x00/*Unset*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 59/*start*/, 1/*len*/, new byte[] { 0x0B/*1=depth, 3=RepeatedParent*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 60/*start*/, 4/*len*/, new byte[] { 0x01, (byte)0xC2, (byte)0xE7, 0x71/*zigzag(932321)*/ })/*value*/;
-            assertSlice(fieldStripe, 64/*start*/, 1/*len*/, new byte[] { 0x02/*RepeatedValue*/ })/*meta-data*/;
-            assertSlice(fieldStripe, 65/*start*/, 4/*len*/, new byte[] { 0x01, (byte)0xC4, (byte)0xE7, 0x71/*zigzag(932322)*/ })/*value*/;
+            assertSlice(fieldStripe, 57/*start*/, 1/*len*/, new byte[] { 0x0B/*1=depth, 3=RepeatedParent*/ })/*meta-data*/;
+            assertSlice(fieldStripe, 58/*start*/, 1/*len*/, new byte[] { 0x15/*2=count, 5=RepeatedValues*/ })/*meta-data*/;
+            assertSlice(fieldStripe, 59/*start*/, 3/*len*/, new byte[] { (byte)0xC2, (byte)0xE7, 0x71/*zigzag(932321)*/ })/*value*/;
+            assertSlice(fieldStripe, 62/*start*/, 3/*len*/, new byte[] { (byte)0xC4, (byte)0xE7, 0x71/*zigzag(932322)*/ })/*value*/;
         }
         // NOTE:  nothing new to be learned from BonusRate, FirstName or LastName so skipped
     }
     
+    /**
+     * Tests that the statistics stream of a field-stripe is closed even if the
+     * field-stripe itself cannot be written when closed.
+     */
+    @Test
+    public void closeFailureTest() throws Exception {
+        final IField field = new ProtobufField(1/*index*/, FieldQualifier.ONE/*required*/, PrimitiveType.LONG, "long_field");
+        final ProtobufCompositeType schema = new ProtobufCompositeType("Message", Collections.singletonList(field));
+        schema.resolve(new Path()/*root*/)/*resolve by contract*/;
+
+        final OutputStream failingOutputStream = new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("Write failed.");
+            }
+        };
+        final boolean[] statisticsClosed = { false };
+        final OutputStream statisticsOutputStream = new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                statisticsClosed[0] = true;
+                super.close();
+            }
+        };
+        final BinaryVLenFieldStripeWriter writer = new BinaryVLenFieldStripeWriter(failingOutputStream, statisticsOutputStream, field);
+        writer.writeValue(1L);
+        try {
+            writer.close()/*writes the buffered stripe*/;
+            assert false : "Expected an exception.";
+        } catch(final OperationFailedException ofe) {
+            /* expected */
+        }
+        assertTrue(statisticsClosed[0], "Statistics stream closed");
+    }
+
     // ************************************************************************
     /**
      * Retrieves the field-stripe <code>byte</code> array from the specified
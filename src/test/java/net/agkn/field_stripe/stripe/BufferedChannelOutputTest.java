@@ -0,0 +1,169 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * Unit tests for {@link BufferedChannelOutput}. The output must be byte-for-byte
+ * that of <code>CodedOutputStream</code> regardless of the buffer size, the
+ * type of buffer or the channel.
+ *
+ * @author rgrzywinski
+ */
+public class BufferedChannelOutputTest {
+    // values that cover each varint length and each UTF-8 encoding length
+    private static final int[] INTS = { 0, 1, -1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Integer.MIN_VALUE };
+    private static final long[] LONGS = { 0L, 1L, -1L, 127L, 128L, (1L << 35), Long.MAX_VALUE, Long.MIN_VALUE };
+    private static final String[] STRINGS = { "", "ascii", "\u00e9t\u00e9", "\u20ac100", "\ud83d\ude00", "unpaired \ud83d!", "\ude00" };
+
+    /**
+     * Asserts that each value is encoded as <code>CodedOutputStream</code> encodes
+     * it with buffers that are smaller than, and larger than, the output.
+     */
+    @Test
+    public void encodingTest() throws Exception {
+        final byte[] expected = encodeExpected();
+        for(final int bufferSize : new int[] { BufferedChannelOutput.MINIMUM_BUFFER_SIZE, 17, 1024, 64 * 1024 }) {
+            for(final boolean direct : new boolean[] { false, true }) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final BufferedChannelOutput output = new BufferedChannelOutput(BufferedChannelOutput.newChannel(bytes), bufferSize, direct);
+                encode(output);
+                output.close();
+                assertEquals(bytes.toByteArray(), expected, "Buffer size " + bufferSize + (direct ? " (direct)" : " (heap)"));
+                assertEquals(output.getByteCount(), expected.length);
+            }
+        }
+
+        // in-memory (growing) output
+        final BufferedChannelOutput memoryOutput = new BufferedChannelOutput(BufferedChannelOutput.MINIMUM_BUFFER_SIZE);
+        encode(memoryOutput);
+        assertEquals(memoryOutput.getBufferedByteCount(), expected.length);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final BufferedChannelOutput output = new BufferedChannelOutput(BufferedChannelOutput.newChannel(bytes), 1024, false/*heap*/);
+        memoryOutput.writeTo(output);
+        output.close();
+        assertEquals(memoryOutput.getBufferedByteCount(), 0, "Written bytes are discarded");
+        assertEquals(bytes.toByteArray(), expected);
+    }
+
+    /**
+     * Asserts that values larger than the buffer (which are written through
+     * rather than copied) are written in order on a gathering channel (a file)
+     * and that the position of a written buffer is unchanged.
+     */
+    @Test
+    public void largeValueTest() throws Exception {
+        final byte[] large = new byte[1000];
+        for(int i=0; i<large.length; i++)
+            large[i] = (byte)i;
+        final ByteBuffer direct = ByteBuffer.allocateDirect(large.length);
+        direct.put(large).position(10)/*a partial view*/;
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final CodedOutputStream protobufOutput = CodedOutputStream.newInstance(expected);
+        protobufOutput.writeRawByte(42);
+        protobufOutput.writeRawBytes(large);
+        protobufOutput.writeRawBytes(large, 10, large.length - 10);
+        protobufOutput.writeStringNoTag("after");
+        protobufOutput.flush();
+
+        final File file = File.createTempFile("buffered", ".test");
+        try {
+            final BufferedChannelOutput output = new BufferedChannelOutput(new FileOutputStream(file).getChannel(), 64, true/*direct*/);
+            output.writeRawByte(42);
+            output.writeRawBytes(large);
+            output.writeRawBytes(direct);
+            assertEquals(direct.position(), 10, "Position unchanged");
+            output.writeStringNoTag("after");
+            output.close();
+
+            assertEquals(FileUtils.readFileToByteArray(file), expected.toByteArray());
+            assertEquals(output.getByteCount(), file.length());
+        } finally {
+            file.delete();
+        }
+    }
+
+    // ************************************************************************
+    /**
+     * @return the expected encoding of the test values
+     */
+    private static byte[] encodeExpected() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        output.writeTag(3, 0/*varint*/);
+        output.writeTag(1000, 2/*length-delimited*/);
+        for(final int value : INTS) {
+            output.writeInt32NoTag(value);
+            output.writeUInt32NoTag(value);
+            output.writeSInt32NoTag(value);
+            output.writeSFixed32NoTag(value);
+            output.writeFloatNoTag(value);
+        }
+        for(final long value : LONGS) {
+            output.writeUInt64NoTag(value);
+            output.writeSInt64NoTag(value);
+            output.writeSFixed64NoTag(value);
+            output.writeDoubleNoTag(value);
+        }
+        for(final String value : STRINGS)
+            output.writeStringNoTag(value);
+        output.writeBoolNoTag(true);
+        output.writeBoolNoTag(false);
+        output.writeRawBytes(new byte[] { 1, 2, 3 });
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes the test values to the specified output.
+     */
+    private static void encode(final BufferedChannelOutput output) throws IOException {
+        output.writeTag(3, 0/*varint*/);
+        output.writeTag(1000, 2/*length-delimited*/);
+        for(final int value : INTS) {
+            output.writeInt32NoTag(value);
+            output.writeUInt32NoTag(value);
+            output.writeSInt32NoTag(value);
+            output.writeSFixed32NoTag(value);
+            output.writeFloatNoTag(value);
+        }
+        for(final long value : LONGS) {
+            output.writeUInt64NoTag(value);
+            output.writeSInt64NoTag(value);
+            output.writeSFixed64NoTag(value);
+            output.writeDoubleNoTag(value);
+        }
+        for(final String value : STRINGS)
+            output.writeStringNoTag(value);
+        output.writeBoolNoTag(true);
+        output.writeBoolNoTag(false);
+        output.writeRawBytes(ByteBuffer.wrap(new byte[] { 0, 1, 2, 3 }, 1, 3));
+    }
+}
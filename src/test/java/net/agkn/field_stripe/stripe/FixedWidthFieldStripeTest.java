@@ -0,0 +1,172 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.exception.OperationFailedException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link FixedWidthFieldStripe} (and fixed-width {@link BinaryVLenFieldStripeWriter}
+ * field-stripes).
+ *
+ * @author rgrzywinski
+ */
+public class FixedWidthFieldStripeTest {
+    /**
+     * Tests that fixed-width field-stripes are written for the supported fields,
+     * that they can be decoded and that their values can be randomly accessed.
+     */
+    @Test
+    public void fixedWidthTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required int64    long_field = 1;\n" +
+            "    required double   double_field = 2;\n" +
+            "    message NestedMessage {\n" +
+            "        required int32    int_field = 1;\n" +
+            "    }\n" +
+            "    required NestedMessage nested_field = 3;\n" +
+            "    optional int64    optional_field = 4;\n" +
+            "    required string   string_field = 5;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        assertTrue(BinaryVLenFieldStripeWriter.supportsFixedWidth(schema.getField(0/*long_field*/)), "Required long");
+        assertTrue(BinaryVLenFieldStripeWriter.supportsFixedWidth(schema.getField(1/*double_field*/)), "Required double");
+        assertTrue(BinaryVLenFieldStripeWriter.supportsFixedWidth(schema.getField(2/*nested_field*/, 0/*int_field*/)), "Required int with required parent");
+        assertFalse(BinaryVLenFieldStripeWriter.supportsFixedWidth(schema.getField(3/*optional_field*/)), "Optional");
+        assertFalse(BinaryVLenFieldStripeWriter.supportsFixedWidth(schema.getField(4/*string_field*/)), "String");
+
+        final StringBuilder records = new StringBuilder();
+        for(int i=0; i<100; i++)
+            records.append("[" + (i * 1000000000L) + "," + (i + 0.5) + ",[" + -i + "]," + ((i % 2 == 0) ? "null" : Integer.toString(i)) + ",\"s" + i + "\"]\n");
+
+        final File fieldStripePath = File.createTempFile("fixed", ".test");
+        try {
+            assertTrue(fieldStripePath.delete() && fieldStripePath.mkdir(), "Field-stripe path created");
+
+            final IFieldStripeWriterFactory writerFactory = BinaryVLenFieldStripeWriter.createFactory(fieldStripePath, true/*fixed-width*/);
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(records.toString()));
+            while(rootEncoder.encode(recordReader));
+            writerFactory.closeAllWriters();
+
+            { // random access
+                final FixedWidthFieldStripe longStripe = FixedWidthFieldStripe.open(fieldStripePath, schema.getField(0/*long_field*/));
+                final FixedWidthFieldStripe doubleStripe = FixedWidthFieldStripe.open(fieldStripePath, schema.getField(1/*double_field*/));
+                final FixedWidthFieldStripe intStripe = FixedWidthFieldStripe.open(fieldStripePath, schema.getField(2/*nested_field*/, 0/*int_field*/));
+                assertEquals(longStripe.getValueCount(), 100);
+                assertEquals(doubleStripe.getValueCount(), 100);
+                assertEquals(intStripe.getValueCount(), 100);
+                for(int i=99; i>=0; i-=7) {
+                    assertEquals(longStripe.getLong(i), (i * 1000000000L));
+                    assertEquals(doubleStripe.getDouble(i), (i + 0.5));
+                    assertEquals(intStripe.getInt(i), -i);
+                    assertEquals(intStripe.getLong(i), -i)/*widened*/;
+                }
+            }
+            { // only fixed-width field-stripes can be opened
+                try {
+                    FixedWidthFieldStripe.open(fieldStripePath, schema.getField(3/*optional_field*/));
+                    assert false : "Expected an OperationFailedException.";
+                } catch(final OperationFailedException ofe) {
+                    // expected
+                }
+            }
+            { // the field-stripes decode to the original records
+                final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(BinaryVLenFieldStripeReader.createFactory(fieldStripePath)).createDecoderTree(schema);
+                final StringWriter stringWriter = new StringWriter();
+                final JsonArrayRecordWriter recordWriter = new JsonArrayRecordWriter(stringWriter, false/*no pretty print*/);
+                while(rootDecoder.decode(recordWriter));
+                recordWriter.close();
+                assertEquals(stringWriter.toString().trim(), records.toString().trim());
+            }
+        } finally {
+            FileUtils.deleteQuietly(fieldStripePath);
+        }
+    }
+
+    /**
+     * Tests that the float and double field-stripes of required-only fields
+     * can be randomly accessed even if they were not written fixed-width
+     * (since their values are raw) but that the int and long field-stripes
+     * (whose values are var-len) cannot.
+     */
+    @Test
+    public void rawFloatingPointTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required int64    long_field = 1;\n" +
+            "    required double   double_field = 2;\n" +
+            "    required float    float_field = 3;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+
+        final StringBuilder records = new StringBuilder();
+        for(int i=0; i<100; i++)
+            records.append("[" + i + "," + (i + 0.5) + "," + (i + 0.25) + "]\n");
+
+        final File fieldStripePath = File.createTempFile("fixed", ".test");
+        try {
+            assertTrue(fieldStripePath.delete() && fieldStripePath.mkdir(), "Field-stripe path created");
+
+            final IFieldStripeWriterFactory writerFactory = BinaryVLenFieldStripeWriter.createFactory(fieldStripePath, false/*not fixed-width*/);
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(records.toString()));
+            while(rootEncoder.encode(recordReader));
+            writerFactory.closeAllWriters();
+
+            final FixedWidthFieldStripe doubleStripe = FixedWidthFieldStripe.open(fieldStripePath, schema.getField(1/*double_field*/));
+            final FixedWidthFieldStripe floatStripe = FixedWidthFieldStripe.open(fieldStripePath, schema.getField(2/*float_field*/));
+            assertEquals(doubleStripe.getValueCount(), 100);
+            assertEquals(floatStripe.getValueCount(), 100);
+            for(int i=99; i>=0; i-=7) {
+                assertEquals(doubleStripe.getDouble(i), (i + 0.5));
+                assertEquals(floatStripe.getFloat(i), (i + 0.25f));
+            }
+
+            try {
+                FixedWidthFieldStripe.open(fieldStripePath, schema.getField(0/*long_field*/));
+                assert false : "Expected an OperationFailedException.";
+            } catch(final OperationFailedException ofe) {
+                // expected
+            }
+        } finally {
+            FileUtils.deleteQuietly(fieldStripePath);
+        }
+    }
+}
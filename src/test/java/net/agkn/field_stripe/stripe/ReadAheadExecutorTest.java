@@ -0,0 +1,193 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link ReadAheadExecutor} and the {@link ReadAheadInputStream streams}
+ * that it reads ahead.
+ *
+ * @author rgrzywinski
+ */
+public class ReadAheadExecutorTest {
+    /**
+     * Asserts that sibling files (including an empty one) that are read ahead
+     * in chunks that are smaller than the files are read in full and in order.
+     */
+    @Test
+    public void streamTest() throws Exception {
+        final File directory = File.createTempFile("readahead", ".test");
+        final ReadAheadExecutor executor = new ReadAheadExecutor(2/*threads*/, 64/*chunk size*/, 2/*depth*/);
+        try {
+            assertTrue(directory.delete() && directory.mkdir(), "Directory created");
+            final int[] sizes = { 0, 63, 64, 1000, 10000 };
+            final byte[][] contents = new byte[sizes.length][];
+            for(int i=0; i<sizes.length; i++) {
+                contents[i] = new byte[sizes[i]];
+                for(int j=0; j<sizes[i]; j++)
+                    contents[i][j] = (byte)((j * 31) + i);
+                FileUtils.writeByteArrayToFile(new File(directory, "stripe" + i), contents[i]);
+            }
+
+            // NOTE:  all are opened (and so are read ahead) before any is read
+            final InputStream[] inputStreams = new InputStream[sizes.length];
+            for(int i=0; i<sizes.length; i++)
+                inputStreams[i] = executor.createInputStream(new File(directory, "stripe" + i));
+
+            // read round-robin (as the decoder does) alternating single-byte
+            // and bulk reads
+            final ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[sizes.length];
+            for(int i=0; i<sizes.length; i++)
+                outputs[i] = new ByteArrayOutputStream();
+            final byte[] bytes = new byte[100];
+            boolean remaining = true;
+            while(remaining) {
+                remaining = false;
+                for(int i=0; i<sizes.length; i++) {
+                    final int value = inputStreams[i].read();
+                    if(value < 0) continue/*ended*/;
+                    outputs[i].write(value);
+                    final int count = inputStreams[i].read(bytes, 0, bytes.length);
+                    if(count > 0) outputs[i].write(bytes, 0, count);
+                    remaining = true;
+                }
+            }
+            for(int i=0; i<sizes.length; i++) {
+                assertEquals(outputs[i].toByteArray(), contents[i], "stripe" + i);
+                assertEquals(inputStreams[i].read(), -1, "stripe" + i + " ended");
+                inputStreams[i].close();
+            }
+        } finally {
+            executor.shutdown();
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    /**
+     * Asserts that an <code>Error</code> while reading ahead is thrown to the
+     * decoding thread (after the chunks read before it) rather than leaving it
+     * waiting for the next chunk.
+     */
+    @Test(timeOut=10000L/*a hang is a failure*/)
+    public void errorTest() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final ReadableByteChannel channel = new ReadableByteChannel() {
+                private int remainingReads = 2;
+                @Override
+                public int read(final ByteBuffer destination) {
+                    if(remainingReads-- <= 0) throw new OutOfMemoryError("Direct buffer memory");
+                    final int length = destination.remaining();
+                    destination.position(destination.limit())/*zeros*/;
+                    return length;
+                }
+                @Override
+                public boolean isOpen() { return true; }
+                @Override
+                public void close() {}
+            };
+            final ReadAheadGroup group = new ReadAheadGroup(executor);
+            final ReadAheadInputStream inputStream = new ReadAheadInputStream(channel, group, 64/*chunk size*/, 2/*depth*/);
+            group.add(inputStream);
+
+            final byte[] bytes = new byte[64];
+            assertEquals(inputStream.read(bytes, 0, bytes.length), 64, "First chunk");
+            assertEquals(inputStream.read(bytes, 0, bytes.length), 64, "Second chunk");
+            try {
+                inputStream.read(bytes, 0, bytes.length);
+                fail("Expected the read failure to be thrown");
+            } catch(final IOException ioe) {
+                // expected
+                assertTrue(ioe.getCause().getCause() instanceof OutOfMemoryError, ioe.toString());
+            }
+            assertEquals(inputStream.read(), -1, "Ended");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Decodes records whose field-stripes are read ahead and asserts that they
+     * are the encoded records.
+     */
+    @Test
+    public void factoryTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required int64    long_field = 1;\n" +
+            "    repeated string   string_field = 2;\n" +
+            "    optional Nested   nested_field = 3;\n" +
+            "}\n" +
+            "message Nested {\n" +
+            "    optional int32    int_field = 1;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final StringBuilder records = new StringBuilder();
+        for(int i=0; i<1000; i++)
+            records.append("[" + (i * 1000000000L) + ",[\"s" + i + "\",\"t" + i + "\"]," + ((i % 2 == 0) ? "null" : ("[" + i + "]")) + "]\n");
+
+        final File fieldStripePath = File.createTempFile("readahead", ".test");
+        final ReadAheadExecutor executor = new ReadAheadExecutor(2/*threads*/, 128/*chunk size*/, 3/*depth*/);
+        try {
+            assertTrue(fieldStripePath.delete() && fieldStripePath.mkdir(), "Field-stripe path created");
+
+            final IFieldStripeWriterFactory writerFactory = BinaryVLenFieldStripeWriter.createFactory(fieldStripePath, false/*not fixed-width*/);
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(records.toString()));
+            while(rootEncoder.encode(recordReader));
+            writerFactory.closeAllWriters();
+
+            final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(BinaryVLenFieldStripeReader.createFactory(fieldStripePath, executor)).createDecoderTree(schema);
+            final StringWriter stringWriter = new StringWriter();
+            final JsonArrayRecordWriter recordWriter = new JsonArrayRecordWriter(stringWriter, false/*no pretty print*/);
+            while(rootDecoder.decode(recordWriter));
+            recordWriter.close();
+            assertEquals(stringWriter.toString().trim(), records.toString().trim());
+        } finally {
+            executor.shutdown();
+            FileUtils.deleteQuietly(fieldStripePath);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.exception.InvalidDataException;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link StripeSetManifest}.
+ *
+ * @author rgrzywinski
+ */
+public class StripeSetManifestTest {
+    /**
+     * Tests creating, writing, reading and validating a manifest and decoding
+     * the stripe set using only the manifest.
+     */
+    @Test
+    public void manifestTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    optional int64    long_field = 1;\n" +
+            "    message NestedMessage {\n" +
+            "        repeated int32    int_field = 1;\n" +
+            "    }\n" +
+            "    optional NestedMessage nested_field = 2;\n" +
+            "    optional string   string_field = 3;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final String records = "[1,[[1,2,3]],\"a\"]\n[null,null,null]\n[3,[[]],\"c\"]";
+
+        final File fieldStripePath = File.createTempFile("manifest", ".out");
+        try {
+            assertTrue(fieldStripePath.delete() && fieldStripePath.mkdir(), "Field-stripe path created");
+            assertFalse(StripeSetManifest.exists(fieldStripePath), "No manifest");
+
+            final IFieldStripeWriterFactory writerFactory = BinaryVLenFieldStripeWriter.createFactory(fieldStripePath);
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(records));
+            long recordCount = 0L;
+            while(rootEncoder.encode(recordReader))
+                recordCount++;
+            writerFactory.closeAllWriters();
+
+            StripeSetManifest.create(fieldStripePath, schema, recordCount).write(fieldStripePath);
+            assertTrue(StripeSetManifest.exists(fieldStripePath), "Manifest written");
+
+            final StripeSetManifest manifest = StripeSetManifest.read(fieldStripePath);
+            assertEquals(manifest.getRecordCount(), 3L);
+            assertEquals(manifest.getSchema().getName(), schema.getName());
+            assertEquals(manifest.getLeaves().size(), 3);
+            assertEquals(manifest.getLeaves().get(0).getPath(), "long_field");
+            assertEquals(manifest.getLeaves().get(1).getPath(), "nested_field.int_field");
+            assertEquals(manifest.getLeaves().get(2).getPath(), "string_field");
+            long byteCount = 0L;
+            for(final StripeSetManifest.Leaf leaf : manifest.getLeaves()) {
+                assertEquals(leaf.getEncoding(), StripeSetManifest.BINARY_VLEN_ENCODING);
+                assertEquals(leaf.getEncodingVersion(), BinaryVLenFieldStripeWriter.VERSION);
+                assertEquals(leaf.getByteCount(), leaf.getFile(fieldStripePath).length());
+                byteCount += leaf.getByteCount();
+            }
+            assertEquals(manifest.getByteCount(), byteCount);
+            assertEquals(manifest.getLeaf("nested_field.int_field").getLocation(), "nested_field/int_field" + BinaryVLenFieldStripeWriter.EXTENSION);
+            assertNull(manifest.getLeaf("nested_field"), "Only leaves");
+            manifest.validate(fieldStripePath);
+
+            { // decode using only the manifest
+                final FieldStripeDecoderFactory decoderFactory = new FieldStripeDecoderFactory(manifest.createReaderFactory(fieldStripePath));
+                final RootFieldStripeDecoder rootDecoder = decoderFactory.createDecoderTree(manifest.getSchema());
+                final StringWriter stringWriter = new StringWriter();
+                final JsonArrayRecordWriter recordWriter = new JsonArrayRecordWriter(stringWriter, false/*no pretty print*/);
+                long decodedCount = 0L;
+                while(rootDecoder.decode(recordWriter))
+                    decodedCount++;
+                recordWriter.close();
+                assertEquals(decodedCount, manifest.getRecordCount());
+                assertEquals(stringWriter.toString().trim(), records);
+            }
+
+            { // a truncated stripe fails validation
+                final RandomAccessFile stripeFile = new RandomAccessFile(manifest.getLeaf("string_field").getFile(fieldStripePath), "rw");
+                stripeFile.setLength(stripeFile.length() - 1);
+                stripeFile.close();
+                try {
+                    manifest.validate(fieldStripePath);
+                    assert false : "Expected an InvalidDataException.";
+                } catch(final InvalidDataException ide) {
+                    // expected
+                }
+            }
+        } finally {
+            FileUtils.deleteQuietly(fieldStripePath);
+        }
+    }
+
+    /**
+     * Tests that the manifest records the type of each stripe (so that fixed-
+     * width, unsigned and enumerated stripes are distinguished) and that
+     * validation checks it.
+     */
+    @Test
+    public void typeConstantTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required int64    long_field = 1;\n" +
+            "    optional fixed64  fixed_field = 2;\n" +
+            "    optional uint32   unsigned_field = 3;\n" +
+            "    enum Color { RED = 1; GREEN = 2; }\n" +
+            "    optional Color    enum_field = 4;\n" +
+            "    optional int32    int_field = 5;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final String records = "[1,2,3,\"RED\",4]\n[5,null,null,null,null]";
+
+        final File fieldStripePath = File.createTempFile("manifest", ".out");
+        try {
+            assertTrue(fieldStripePath.delete() && fieldStripePath.mkdir(), "Field-stripe path created");
+
+            final IFieldStripeWriterFactory writerFactory = BinaryVLenFieldStripeWriter.createFactory(fieldStripePath, true/*fixed-width*/);
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(records));
+            long recordCount = 0L;
+            while(rootEncoder.encode(recordReader))
+                recordCount++;
+            writerFactory.closeAllWriters();
+
+            StripeSetManifest.create(fieldStripePath, schema, recordCount).write(fieldStripePath);
+            final StripeSetManifest manifest = StripeSetManifest.read(fieldStripePath);
+            final int longType = BinaryVLenFieldStripeWriter.primitiveTypeToConstantMap.get(PrimitiveType.LONG).ordinal();
+            final int intType = BinaryVLenFieldStripeWriter.primitiveTypeToConstantMap.get(PrimitiveType.INT).ordinal();
+            assertEquals(manifest.getLeaf("long_field").getTypeConstant(), (longType | BinaryVLenFieldStripeWriter.FIXED_WIDTH), "Fixed-width (required-only)");
+            assertEquals(manifest.getLeaf("fixed_field").getTypeConstant(), (longType | BinaryVLenFieldStripeWriter.FIXED_WIDTH), "Fixed-width (fixed64)");
+            assertEquals(manifest.getLeaf("unsigned_field").getTypeConstant(), (intType | BinaryVLenFieldStripeWriter.UNSIGNED), "Unsigned");
+            assertEquals(manifest.getLeaf("enum_field").getTypeConstant(), BinaryVLenFieldStripeWriter.ENUM_TYPE, "Enumerated");
+            assertEquals(manifest.getLeaf("int_field").getTypeConstant(), intType, "Signed vlen");
+            assertTrue(manifest.getLeaf("long_field").isFixedWidth(), "Fixed-width");
+            assertFalse(manifest.getLeaf("unsigned_field").isFixedWidth(), "Not fixed-width");
+            manifest.validate(fieldStripePath);
+
+            // a leaf whose type is not that of its field fails validation
+            final int[][] invalidTypes = { { 0/*long_field*/, longType/*not fixed-width*/ },
+                                           { 1/*fixed_field*/, longType/*not fixed-width*/ },
+                                           { 2/*unsigned_field*/, intType/*signed*/ },
+                                           { 3/*enum_field*/, BinaryVLenFieldStripeWriter.primitiveTypeToConstantMap.get(PrimitiveType.STRING).ordinal() },
+                                           { 4/*int_field*/, (intType | BinaryVLenFieldStripeWriter.FIXED_WIDTH)/*optional*/ } };
+            for(final int[] invalidType : invalidTypes) {
+                final List<StripeSetManifest.Leaf> leaves = new ArrayList<StripeSetManifest.Leaf>(manifest.getLeaves());
+                final StripeSetManifest.Leaf leaf = leaves.get(invalidType[0]);
+                leaves.set(invalidType[0], new StripeSetManifest.Leaf(leaf.getField(), leaf.getLocation(), leaf.getEncoding(), leaf.getEncodingVersion(), invalidType[1], leaf.getByteCount()));
+                try {
+                    new StripeSetManifest(manifest.getSchema(), manifest.getRecordCount(), leaves).validate(fieldStripePath);
+                    assert false : "Expected an InvalidDataException for " + leaf.getPath() + ".";
+                } catch(final InvalidDataException ide) {
+                    // expected
+                }
+            }
+        } finally {
+            FileUtils.deleteQuietly(fieldStripePath);
+        }
+    }
+}
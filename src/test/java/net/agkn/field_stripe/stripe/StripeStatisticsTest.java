@@ -0,0 +1,203 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringReader;
+
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.IField;
+import net.agkn.field_stripe.record.PrimitiveType;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.stripe.Instruction.Kind;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link StripeStatistics} and {@link HyperLogLog}.
+ *
+ * @author rgrzywinski
+ */
+public class StripeStatisticsTest {
+    /**
+     * Tests the statistics written alongside the field-stripes created by the
+     * {@link BinaryVLenFieldStripeWriter#createFactory(File) file factory} and
+     * read with {@link BinaryVLenFieldStripeReader#readStatistics(File, IField)}.
+     */
+    @Test
+    public void fileStatisticsTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    optional int64    long_field = 1;\n" +
+            "    message NestedMessage {\n" +
+            "        repeated int32    int_field = 1;\n" +
+            "    }\n" +
+            "    optional NestedMessage nested_field = 2;\n" +
+            "    optional string   string_field = 3;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final IField longField = schema.getFields().get(0);
+        final IField intField = ((ICompositeType)schema.getFields().get(1).getType()).getFields().get(0);
+        final IField stringField = schema.getFields().get(2);
+
+        final File fieldStripePath = File.createTempFile("statistics", ".out");
+        try {
+            assertTrue(fieldStripePath.delete() && fieldStripePath.mkdir(), "Field-stripe path created");
+
+            final IFieldStripeWriterFactory writerFactory = BinaryVLenFieldStripeWriter.createFactory(fieldStripePath);
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader("[1,[[1,2,3]],null]\n[null,null,null]\n[3,[[]],null]"));
+            while(rootEncoder.encode(recordReader));
+            writerFactory.closeAllWriters();
+
+            { // long_field
+                final StripeStatistics statistics = BinaryVLenFieldStripeReader.readStatistics(fieldStripePath, longField);
+                assertEquals(statistics.getType(), PrimitiveType.LONG);
+                assertEquals(statistics.getByteCount(), new File(fieldStripePath, "long_field" + BinaryVLenFieldStripeWriter.EXTENSION).length());
+                assertEquals(statistics.getInstructionCount(), 3L);
+                assertEquals(statistics.getValueCount(), 2L);
+                assertEquals(statistics.getNullCount(), 1L);
+                assertEquals(statistics.getMinValue(), 1L);
+                assertEquals(statistics.getMaxValue(), 3L);
+                assertEquals(statistics.getDistinctCount(), 2L);
+            }
+            { // nested_field.int_field
+                final StripeStatistics statistics = BinaryVLenFieldStripeReader.readStatistics(fieldStripePath, intField);
+                assertEquals(statistics.getType(), PrimitiveType.INT);
+                assertEquals(statistics.getByteCount(), new File(new File(fieldStripePath, "nested_field"), "int_field" + BinaryVLenFieldStripeWriter.EXTENSION).length());
+                assertEquals(statistics.getInstructionCount(Kind.VALUE), 3L);
+                assertEquals(statistics.getInstructionCount(Kind.REPEATED_VALUE), 2L);
+                assertEquals(statistics.getInstructionCount(Kind.REPEATED_PARENT), 0L);
+                assertEquals(statistics.getInstructionCount(Kind.UNSET), 1L);
+                assertEquals(statistics.getInstructionCount(Kind.UNSET_PARENT), 1L);
+                assertEquals(statistics.getMinValue(), 1);
+                assertEquals(statistics.getMaxValue(), 3);
+                assertEquals(statistics.getDistinctCount(), 3L);
+            }
+            { // string_field (no values)
+                final StripeStatistics statistics = BinaryVLenFieldStripeReader.readStatistics(fieldStripePath, stringField);
+                assertEquals(statistics.getValueCount(), 0L);
+                assertEquals(statistics.getNullCount(), 3L);
+                assertNull(statistics.getMinValue());
+                assertNull(statistics.getMaxValue());
+                assertEquals(statistics.getDistinctCount(), 0L);
+            }
+        } finally {
+            FileUtils.deleteQuietly(fieldStripePath);
+        }
+    }
+
+    /**
+     * Tests writing and reading the statistics of each type of value.
+     */
+    @Test
+    public void roundTripTest() throws Exception {
+        { // string
+            final StripeStatistics.Collector collector = new StripeStatistics.Collector(PrimitiveType.STRING);
+            collector.value("b");
+            collector.value("a");
+            collector.value("c");
+            collector.instruction(Kind.UNSET);
+            final StripeStatistics statistics = roundTrip(collector.toStatistics(42L));
+            assertEquals(statistics.getType(), PrimitiveType.STRING);
+            assertEquals(statistics.getByteCount(), 42L);
+            assertEquals(statistics.getInstructionCount(), 4L);
+            assertEquals(statistics.getMinValue(), "a");
+            assertEquals(statistics.getMaxValue(), "c");
+            assertEquals(statistics.getDistinctCount(), 3L);
+        }
+        { // double (NaN is ignored for min / max)
+            final StripeStatistics.Collector collector = new StripeStatistics.Collector(PrimitiveType.DOUBLE);
+            collector.value(Double.NaN);
+            collector.value(-1.5);
+            collector.value(2.5);
+            final StripeStatistics statistics = roundTrip(collector.toStatistics(0L));
+            assertEquals(statistics.getMinValue(), -1.5);
+            assertEquals(statistics.getMaxValue(), 2.5);
+            assertEquals(statistics.getDistinctCount(), 3L);
+        }
+        { // boolean
+            final StripeStatistics.Collector collector = new StripeStatistics.Collector(PrimitiveType.BOOLEAN);
+            collector.value(1L/*true*/);
+            collector.value(1L/*true*/);
+            final StripeStatistics statistics = roundTrip(collector.toStatistics(0L));
+            assertEquals(statistics.getMinValue(), true);
+            assertEquals(statistics.getMaxValue(), true);
+            assertEquals(statistics.getDistinctCount(), 1L);
+        }
+        { // short
+            final StripeStatistics.Collector collector = new StripeStatistics.Collector(PrimitiveType.SHORT);
+            collector.value(-7L);
+            collector.value(Short.MAX_VALUE);
+            final StripeStatistics statistics = roundTrip(collector.toStatistics(0L));
+            assertEquals(statistics.getMinValue(), (short)-7);
+            assertEquals(statistics.getMaxValue(), Short.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Tests the accuracy of the distinct count estimate and merging sketches.
+     */
+    @Test
+    public void hyperLogLogTest() throws Exception {
+        final HyperLogLog sketch = new HyperLogLog();
+        final HyperLogLog otherSketch = new HyperLogLog();
+        for(long i=0; i<100000L; i++) {
+            sketch.add(HyperLogLog.hash(i));
+            sketch.add(HyperLogLog.hash(i))/*duplicates are not counted*/;
+            otherSketch.add(HyperLogLog.hash(i + 50000L));
+        }
+        // NOTE:  the standard error is 2.3% so 3 standard errors is ~7%
+        assertEquals(sketch.cardinality(), 100000.0, 7000.0);
+        sketch.merge(otherSketch);
+        assertEquals(sketch.cardinality(), 150000.0, 10500.0);
+
+        final HyperLogLog stringSketch = new HyperLogLog();
+        for(int i=0; i<1000; i++)
+            stringSketch.add(HyperLogLog.hash("value-" + i));
+        assertEquals(stringSketch.cardinality(), 1000.0, 70.0);
+
+        try {
+            sketch.merge(new HyperLogLog(HyperLogLog.MIN_LOG2M));
+            assert false : "Expected an IllegalArgumentException.";
+        } catch(final IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    // ========================================================================
+    /**
+     * @return the specified statistics after being written and read
+     */
+    private static StripeStatistics roundTrip(final StripeStatistics statistics) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        statistics.write(outputStream);
+        return StripeStatistics.read(new ByteArrayInputStream(outputStream.toByteArray()));
+    }
+}
@@ -17,7 +17,9 @@ package net.agkn.field_stripe.stripe;
  */
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.agkn.field_stripe.exception.NoSuchObjectException;
@@ -34,6 +36,8 @@ import net.agkn.field_stripe.record.IField;
  */
 public class TestBinaryVLenFieldStripeReaderFactory implements IFieldStripeReaderFactory {
     private final Map<IField, InputStream> fieldToInputStreamMap = new HashMap<IField, InputStream>();
+    // the readers that have been created (and are closed by #closeAllReaders())
+    private final List<IFieldStripeReader> createdReaders = new ArrayList<IFieldStripeReader>();
 
     // ========================================================================
     /**
@@ -58,6 +62,17 @@ public class TestBinaryVLenFieldStripeReaderFactory implements IFieldStripeReade
             throws OperationFailedException {
         final InputStream inputStream = fieldToInputStreamMap.get(field);
         if(inputStream == null) throw new NoSuchObjectException("There is no input stream for field \"" + field.getName() + "\".");
-        return new BinaryVLenFieldStripeReader(inputStream, field);
+        final IFieldStripeReader fieldStripeReader = new BinaryVLenFieldStripeReader(inputStream, field);
+        createdReaders.add(fieldStripeReader);
+        return fieldStripeReader;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeReaderFactory#closeAllReaders()
+     */
+    @Override
+    public void closeAllReaders()
+            throws OperationFailedException {
+        BinaryVLenFieldStripeReader.closeReaders(createdReaders);
     }
 }
\ No newline at end of file
@@ -19,7 +19,9 @@ package net.agkn.field_stripe.stripe;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.agkn.field_stripe.exception.NoSuchObjectException;
@@ -37,6 +39,8 @@ import net.agkn.field_stripe.record.IField;
  */
 public class TestXMLFieldStripeReaderFactory implements IFieldStripeReaderFactory {
     private final Map<IField, Reader> fieldToReaderMap = new HashMap<IField, Reader>();
+    // the readers that have been created (and are closed by #closeAllReaders())
+    private final List<IFieldStripeReader> createdReaders = new ArrayList<IFieldStripeReader>();
 
     // ========================================================================
     /**
@@ -61,7 +65,18 @@ public class TestXMLFieldStripeReaderFactory implements IFieldStripeReaderFactor
             throws OperationFailedException {
         final Reader reader = fieldToReaderMap.get(field);
         if(reader == null) throw new NoSuchObjectException("There is no reader for field \"" + field.getName() + "\".");
-        return new XMLFieldStripeReader(field, reader);
+        final IFieldStripeReader fieldStripeReader = new XMLFieldStripeReader(field, reader);
+        createdReaders.add(fieldStripeReader);
+        return fieldStripeReader;
+    }
+
+    /* (non-Javadoc)
+     * @see net.agkn.field_stripe.stripe.IFieldStripeReaderFactory#closeAllReaders()
+     */
+    @Override
+    public void closeAllReaders()
+            throws OperationFailedException {
+        BinaryVLenFieldStripeReader.closeReaders(createdReaders);
     }
 
     // ************************************************************************
@@ -0,0 +1,265 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link WriteBehindExecutor} and the {@link BufferedChannelOutput outputs}
+ * that write behind.
+ *
+ * @author rgrzywinski
+ */
+public class WriteBehindExecutorTest {
+    /**
+     * Asserts that the buffers that are written behind (including those of a
+     * value that is larger than the buffer) are written in order.
+     */
+    @Test
+    public void orderTest() throws Exception {
+        final WriteBehindExecutor executor = new WriteBehindExecutor(2/*threads*/, 3/*triple buffering*/);
+        try {
+            final WriteBufferPool pool = new WriteBufferPool(Long.MAX_VALUE/*unbounded*/, 16/*minimum*/, 64/*maximum*/, true/*direct*/);
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final BufferedChannelOutput expectedOutput = new BufferedChannelOutput(BufferedChannelOutput.newChannel(expected), 16, false/*heap*/);
+            final BufferedChannelOutput output = new BufferedChannelOutput(new SlowChannel(BufferedChannelOutput.newChannel(bytes)), pool, executor);
+
+            final byte[] large = new byte[1000];
+            for(int i=0; i<large.length; i++)
+                large[i] = (byte)(i * 7);
+            for(int i=0; i<1000; i++) {
+                expectedOutput.writeSInt64NoTag(i * 1000003L);
+                output.writeSInt64NoTag(i * 1000003L);
+                expectedOutput.writeStringNoTag("value" + i);
+                output.writeStringNoTag("value" + i);
+                if((i % 100) == 0) {
+                    expectedOutput.writeRawBytes(large);
+                    output.writeRawBytes(large);
+                } /* else -- only occasionally large */
+            }
+            expectedOutput.close();
+            output.close();
+
+            assertEquals(bytes.toByteArray(), expected.toByteArray());
+            assertEquals(output.getByteCount(), expected.size());
+            assertEquals(pool.getOutputCount(), 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Asserts that a failure to write behind is thrown to the encoding thread
+     * (at the latest on close).
+     */
+    @Test
+    public void failureTest() throws Exception {
+        final WriteBehindExecutor executor = new WriteBehindExecutor(1/*thread*/, WriteBehindExecutor.DEFAULT_DEPTH);
+        try {
+            final WriteBufferPool pool = new WriteBufferPool(Long.MAX_VALUE/*unbounded*/, 16/*minimum*/, 16/*maximum*/, false/*heap*/);
+            final BufferedChannelOutput output = new BufferedChannelOutput(new FailingChannel(3/*writes*/), pool, executor);
+            try {
+                for(int i=0; i<100; i++)
+                    output.writeSFixed64NoTag(i);
+                output.close();
+                fail("Expected the write failure to be thrown");
+            } catch(final IOException ioe) {
+                // expected
+                assertTrue(ioe.getCause() instanceof IOException, ioe.toString());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Asserts that an <code>Error</code> while writing behind is thrown to the
+     * encoding thread rather than leaving it waiting for the buffer.
+     */
+    @Test(timeOut=10000L/*a hang is a failure*/)
+    public void errorTest() throws Exception {
+        final WriteBehindExecutor executor = new WriteBehindExecutor(1/*thread*/, WriteBehindExecutor.DEFAULT_DEPTH);
+        try {
+            final WriteBufferPool pool = new WriteBufferPool(Long.MAX_VALUE/*unbounded*/, 16/*minimum*/, 16/*maximum*/, false/*heap*/);
+            final BufferedChannelOutput output = new BufferedChannelOutput(new FailingChannel(3/*writes*/, new OutOfMemoryError("Direct buffer memory")), pool, executor);
+            try {
+                for(int i=0; i<100; i++)
+                    output.writeSFixed64NoTag(i);
+                output.close();
+                fail("Expected the write failure to be thrown");
+            } catch(final IOException ioe) {
+                // expected
+                assertTrue(ioe.getCause() instanceof IOException, ioe.toString());
+                assertTrue(ioe.getCause().getCause() instanceof OutOfMemoryError, ioe.toString());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Asserts that writing behind once the executor is shut down fails at once.
+     */
+    @Test(timeOut=10000L/*a hang is a failure*/)
+    public void shutdownTest() throws Exception {
+        final WriteBehindExecutor executor = new WriteBehindExecutor(1/*thread*/, WriteBehindExecutor.DEFAULT_DEPTH);
+        final WriteBufferPool pool = new WriteBufferPool(Long.MAX_VALUE/*unbounded*/, 16/*minimum*/, 16/*maximum*/, false/*heap*/);
+        final BufferedChannelOutput output = new BufferedChannelOutput(new FailingChannel(Integer.MAX_VALUE/*never fails*/), pool, executor);
+        executor.shutdown();
+        try {
+            for(int i=0; i<100; i++)
+                output.writeSFixed64NoTag(i);
+            fail("Expected the rejected write to be thrown");
+        } catch(final IOException ioe) {
+            // expected
+            assertTrue(ioe.getCause() instanceof IOException, ioe.toString());
+        }
+        try {
+            output.close();
+            fail("Expected the rejected write to be thrown on close");
+        } catch(final IOException ioe) {
+            // expected
+        }
+    }
+
+    /**
+     * Encodes records with all writers writing behind within a small budget
+     * and asserts that they decode to the same records.
+     */
+    @Test
+    public void factoryTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required int64    long_field = 1;\n" +
+            "    repeated string   string_field = 2;\n" +
+            "    optional bytes    bytes_field = 3;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final StringBuilder records = new StringBuilder();
+        for(int i=0; i<1000; i++)
+            records.append("[" + (i * 1000000000L) + ",[\"s" + i + "\",\"t" + i + "\"]," + ((i % 2 == 0) ? "null" : ("\"" + Integer.toHexString(0x10000000 + i) + "\"")) + "]\n");
+
+        final File fieldStripePath = File.createTempFile("writebehind", ".test");
+        final WriteBehindExecutor executor = new WriteBehindExecutor(2/*threads*/, 3/*triple buffering*/);
+        try {
+            assertTrue(fieldStripePath.delete() && fieldStripePath.mkdir(), "Field-stripe path created");
+
+            final WriteBufferPool pool = new WriteBufferPool(2048/*budget*/, 64/*minimum*/, 256/*maximum*/, false/*heap*/);
+            final IFieldStripeWriterFactory writerFactory = BinaryVLenFieldStripeWriter.createFactory(fieldStripePath, false/*not fixed-width*/, pool, executor);
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(records.toString()));
+            while(rootEncoder.encode(recordReader));
+            writerFactory.closeAllWriters();
+            assertEquals(pool.getOutputCount(), 0);
+            assertTrue(pool.getPeakAllocatedBytes() <= (pool.getBudget() + pool.getMinimumBufferSize()), pool.toString());
+
+            final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(BinaryVLenFieldStripeReader.createFactory(fieldStripePath)).createDecoderTree(schema);
+            final StringWriter stringWriter = new StringWriter();
+            final JsonArrayRecordWriter recordWriter = new JsonArrayRecordWriter(stringWriter, false/*no pretty print*/);
+            while(rootDecoder.decode(recordWriter));
+            recordWriter.close();
+            assertEquals(stringWriter.toString().trim(), records.toString().trim());
+        } finally {
+            executor.shutdown();
+            FileUtils.deleteQuietly(fieldStripePath);
+        }
+    }
+
+    // ************************************************************************
+    /**
+     * A channel that is slow to write (so that buffers queue behind it).
+     */
+    private static final class SlowChannel implements WritableByteChannel {
+        private final WritableByteChannel channel;
+
+        public SlowChannel(final WritableByteChannel channel) { this.channel = channel; }
+
+        @Override
+        public int write(final ByteBuffer source)
+                throws IOException {
+            Thread.yield()/*let the encoding thread get ahead*/;
+            return channel.write(source);
+        }
+
+        @Override
+        public boolean isOpen() { return channel.isOpen(); }
+
+        @Override
+        public void close()
+                throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * A channel that fails (with an <code>IOException</code> or the specified
+     * <code>Error</code>) after a number of writes.
+     */
+    private static final class FailingChannel implements WritableByteChannel {
+        private final Error error/*null to throw an IOException*/;
+        private int remainingWrites;
+
+        public FailingChannel(final int writeCount) { this(writeCount, null/*IOException*/); }
+        public FailingChannel(final int writeCount, final Error error) {
+            this.remainingWrites = writeCount;
+            this.error = error;
+        }
+
+        @Override
+        public int write(final ByteBuffer source)
+                throws IOException {
+            if(remainingWrites-- <= 0) {
+                if(error != null) throw error;
+                throw new IOException("Disk full");
+            } /* else -- the write succeeds */
+            final int length = source.remaining();
+            source.position(source.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() { return true; }
+
+        @Override
+        public void close() {}
+    }
+}
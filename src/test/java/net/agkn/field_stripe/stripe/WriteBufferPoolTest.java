@@ -0,0 +1,142 @@
+package net.agkn.field_stripe.stripe;
+
+/*
+ * Copyright 2012 Aggregate Knowledge, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import net.agkn.field_stripe.decode.FieldStripeDecoderFactory;
+import net.agkn.field_stripe.decode.RootFieldStripeDecoder;
+import net.agkn.field_stripe.encode.FieldStripeEncoderFactory;
+import net.agkn.field_stripe.encode.RootFieldStripeEncoder;
+import net.agkn.field_stripe.encode.SchemaBuilder;
+import net.agkn.field_stripe.record.ICompositeType;
+import net.agkn.field_stripe.record.reader.IRecordReader;
+import net.agkn.field_stripe.record.reader.SmartJsonArrayRecordReader;
+import net.agkn.field_stripe.record.writer.JsonArrayRecordWriter;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link WriteBufferPool}.
+ *
+ * @author rgrzywinski
+ */
+public class WriteBufferPoolTest {
+    /**
+     * Asserts that buffers grow when full, that the largest buffers are flushed
+     * (spilled) first when the budget is reached and that the written bytes
+     * are unaffected.
+     */
+    @Test
+    public void budgetTest() throws Exception {
+        final WriteBufferPool pool = new WriteBufferPool(208/*budget*/, 16/*minimum*/, 128/*maximum*/, false/*heap*/);
+        final ByteArrayOutputStream bytesA = new ByteArrayOutputStream();
+        final ByteArrayOutputStream bytesB = new ByteArrayOutputStream();
+        final BufferedChannelOutput outputA = new BufferedChannelOutput(BufferedChannelOutput.newChannel(bytesA), pool);
+        final BufferedChannelOutput outputB = new BufferedChannelOutput(BufferedChannelOutput.newChannel(bytesB), pool);
+        assertEquals(pool.getOutputCount(), 2);
+        assertEquals(pool.getAllocatedBytes(), 32L);
+
+        // A grows to the maximum without flushing
+        for(int i=0; i<100; i++)
+            outputA.writeRawByte(i);
+        assertEquals(outputA.getBufferCapacity(), 128);
+        assertEquals(outputA.getByteCount(), 0L, "Nothing flushed");
+        assertEquals(pool.getGrowCount(), 3L);
+        assertEquals(pool.getSpillCount(), 0L);
+
+        // B cannot grow to 64 bytes within the budget so A (the largest) is
+        // spilled
+        for(int i=0; i<50; i++)
+            outputB.writeRawByte(i);
+        assertEquals(outputB.getBufferCapacity(), 64);
+        assertEquals(outputA.getBufferCapacity(), 16, "A shrunk to the minimum");
+        assertEquals(outputA.getByteCount(), 100L, "A flushed");
+        assertEquals(pool.getSpillCount(), 1L);
+        assertTrue(pool.getPeakAllocatedBytes() <= pool.getBudget(), pool.toString());
+
+        // both write more than the budget
+        for(int i=0; i<1000; i++) {
+            outputA.writeRawByte(i);
+            outputB.writeRawByte(i);
+        }
+        assertTrue(pool.getDeniedCount() > 0L, pool.toString());
+        assertTrue(pool.getPeakAllocatedBytes() <= (pool.getBudget() + pool.getMinimumBufferSize()), pool.toString());
+
+        outputA.close();
+        outputB.close();
+        assertEquals(pool.getOutputCount(), 0);
+        final byte[] writtenA = bytesA.toByteArray();
+        final byte[] writtenB = bytesB.toByteArray();
+        assertEquals(writtenA.length, 1100);
+        assertEquals(writtenB.length, 1050);
+        for(int i=0; i<1000; i++) {
+            assertEquals(writtenA[100 + i], (byte)i);
+            assertEquals(writtenB[50 + i], (byte)i);
+        }
+    }
+
+    /**
+     * Encodes records with all writers sharing a small pool and asserts that
+     * they decode to the same records.
+     */
+    @Test
+    public void factoryTest() throws Exception {
+        final String protobufText =
+            "package package_name;\n"/*required by Protostuff*/ +
+            "message Message {\n" +
+            "    required int64    long_field = 1;\n" +
+            "    repeated string   string_field = 2;\n" +
+            "    optional int32    int_field = 3;\n" +
+            "}\n";
+        final ICompositeType schema = new SchemaBuilder().createSchema(protobufText, "Message");
+        final StringBuilder records = new StringBuilder();
+        for(int i=0; i<1000; i++)
+            records.append("[" + (i * 1000000000L) + ",[\"s" + i + "\",\"t" + i + "\"]," + ((i % 2 == 0) ? "null" : Integer.toString(i)) + "]\n");
+
+        final File fieldStripePath = File.createTempFile("pool", ".test");
+        try {
+            assertTrue(fieldStripePath.delete() && fieldStripePath.mkdir(), "Field-stripe path created");
+
+            final WriteBufferPool pool = new WriteBufferPool(1024/*budget*/, 64/*minimum*/, 512/*maximum*/, true/*direct*/);
+            final IFieldStripeWriterFactory writerFactory = BinaryVLenFieldStripeWriter.createFactory(fieldStripePath, false/*not fixed-width*/, pool);
+            final RootFieldStripeEncoder rootEncoder = new FieldStripeEncoderFactory(writerFactory).createEncoderTree(schema);
+            final IRecordReader recordReader = new SmartJsonArrayRecordReader(new StringReader(records.toString()));
+            while(rootEncoder.encode(recordReader));
+            writerFactory.closeAllWriters();
+            assertEquals(pool.getOutputCount(), 0);
+            assertTrue((pool.getSpillCount() + pool.getDeniedCount()) > 0L, "Budget reached: " + pool);
+            assertTrue(pool.getPeakAllocatedBytes() <= (pool.getBudget() + pool.getMinimumBufferSize()), pool.toString());
+
+            final RootFieldStripeDecoder rootDecoder = new FieldStripeDecoderFactory(BinaryVLenFieldStripeReader.createFactory(fieldStripePath)).createDecoderTree(schema);
+            final StringWriter stringWriter = new StringWriter();
+            final JsonArrayRecordWriter recordWriter = new JsonArrayRecordWriter(stringWriter, false/*no pretty print*/);
+            while(rootDecoder.decode(recordWriter));
+            recordWriter.close();
+            assertEquals(stringWriter.toString().trim(), records.toString().trim());
+        } finally {
+            FileUtils.deleteQuietly(fieldStripePath);
+        }
+    }
+}
@@ -17,10 +17,13 @@ package net.agkn.field_stripe.stripe;
  */
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
 
 import net.agkn.field_stripe.record.FieldQualifier;
 import net.agkn.field_stripe.record.IField;
@@ -31,7 +34,7 @@ import net.agkn.field_stripe.stripe.Instruction.Kind;
 import org.testng.annotations.Test;
 
 /**
- * Unit tests for {@link XMLFieldStripeReader}.
+ * Unit tests for {@link XMLFieldStripeReader} (and {@link XMLFieldStripeWriter}).
  *
  * @author rgrzywinski
  */
@@ -148,6 +151,50 @@ public class XMLFieldStripeReaderTest {
         }
     }
 
+    /**
+     * Tests that bytes values (including an empty value and a direct buffer
+     * that has no backing array) written by a {@link XMLFieldStripeWriter} are
+     * read back.
+     */
+    @Test
+    public void bytesTest() throws Exception {
+        final IField bytesField = new ProtobufField(0/*index*/, FieldQualifier.ZERO_OR_MORE, PrimitiveType.BYTES, "bytes_field");
+
+        final ByteBuffer directValue = ByteBuffer.allocateDirect(4);
+        directValue.put(new byte[] { 0x00, 0x01, (byte)0x80, (byte)0xFF }).flip();
+        assertFalse(directValue.hasArray(), "Not array-backed");
+        final ByteBuffer emptyValue = ByteBuffer.allocate(0);
+
+        final StringWriter writer = new StringWriter();
+        final IFieldStripeWriter fieldStripeWriter = new XMLFieldStripeWriter(writer);
+        fieldStripeWriter.writeValue(directValue);
+        fieldStripeWriter.writeValue(emptyValue);
+        fieldStripeWriter.writeUnset();
+        fieldStripeWriter.writeValue(emptyValue);
+        fieldStripeWriter.writeRepeated();
+        fieldStripeWriter.writeValue(directValue);
+        fieldStripeWriter.close();
+        assertEquals(directValue.position(), 0, "Position unchanged");
+
+        final String xmlFieldStripe =
+            "<Value>000180ff</Value>\n" +
+            "<Value></Value>\n" +
+            "<Unset/>\n" +
+            "<Value></Value>\n" +
+            "<RepeatedValue/>\n" +
+            "<Value>000180ff</Value>\n";
+        assertEquals(writer.toString(), xmlFieldStripe);
+
+        final IFieldStripeReader fieldStripeReader = new XMLFieldStripeReader(bytesField, new StringReader(writer.toString()));
+        assertValueInstruction(fieldStripeReader.readInstruction(), directValue);
+        assertValueInstruction(fieldStripeReader.readInstruction(), emptyValue);
+        assertInstruction(fieldStripeReader.readInstruction(), Kind.UNSET);
+        assertValueInstruction(fieldStripeReader.readInstruction(), emptyValue);
+        assertInstruction(fieldStripeReader.readInstruction(), Kind.REPEATED_VALUE);
+        assertValueInstruction(fieldStripeReader.readInstruction(), directValue);
+        assertNull(fieldStripeReader.readInstruction(), "No next instruction");
+    }
+
     // CHECK:  are there any negative tests?
 
     // ************************************************************************